@@ -0,0 +1,1063 @@
+/*
+ *  Copyright (C) 2010 Przemek Kryger
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.kenai.weathericm.app;
+
+import com.kenai.weathericm.app.transport.ConnectorTransport;
+import com.kenai.weathericm.app.transport.Transport;
+import com.kenai.weathericm.domain.DownloadCheckpoint;
+import com.kenai.weathericm.domain.DownloadSample;
+import com.kenai.weathericm.domain.HttpValidator;
+import com.kenai.weathericm.domain.MeteorogramType;
+import com.kenai.weathericm.repository.DownloadCheckpointDao;
+import com.kenai.weathericm.repository.HttpValidatorDao;
+import com.kenai.weathericm.util.AbstractStatusReporter;
+import com.kenai.weathericm.util.Adler32;
+import com.kenai.weathericm.util.BufferPool;
+import com.kenai.weathericm.util.Status;
+import java.io.DataInputStream;
+import java.io.IOException;
+import javax.microedition.io.HttpConnection;
+//#mdebug
+import net.sf.microlog.core.Logger;
+import net.sf.microlog.core.LoggerFactory;
+//#enddebug
+
+/**
+ * This is the common download engine for downloaders that use {@link Transport}
+ * and {@link HttpConnection} stuff. The data is read in blocks of
+ * {@value #BLOCK_SIZE} bytes into a single buffer. When the length of the
+ * content is known the buffer is allocated with exactly that size, otherwise
+ * a buffer from {@link BufferPool} is used and it's size is doubled each time
+ * it gets full. The progress is reported once per block. Implementations can
+ * inspect each block as it arrives and stop the download early. When a
+ * {@link HttpValidatorDao} is set, the downloads can be revalidated with
+ * {@code ETag} and {@code Last-Modified} validators. When a
+ * {@link DownloadCheckpointDao} is set, resumable downloads checkpoint the
+ * received data every {@value #CHECKPOINT_INTERVAL} bytes and when they are
+ * interrupted, and the next download of the same URL continues from the
+ * checkpoint with a {@code Range} request. When a {@link DownloadPolicy} is
+ * set, each phase of the download has a deadline enforced by the
+ * {@link DownloadWatchdog}, and the attempts that failed for a transient
+ * reason are retried after a back off. Every download ends with a
+ * {@link DownloadOutcome}. When a {@link DownloadTelemetry} is set, each
+ * download that received data is recorded as a {@link DownloadSample}, and the
+ * length of the data the server doesn't report is estimated from the samples.
+ * The connections are opened with {@link ConnectorTransport} unless another
+ * {@link Transport} is set. The {@link Adler32} checksum of the data is
+ * computed block by block while it is received.
+ * @author Przemek Kryger
+ */
+public abstract class AbstractConnectorDownloader extends AbstractStatusReporter {
+
+//#mdebug
+    /**
+     * The logger for the class
+     */
+    private final static Logger log = LoggerFactory.getLogger(AbstractConnectorDownloader.class);
+//#enddebug
+    /**
+     * The maximum number of bytes read in one go.
+     */
+    public final static int BLOCK_SIZE = 1024;
+    /**
+     * The request header used to send {@code ETag} validator.
+     */
+    public final static String IF_NONE_MATCH = "If-None-Match";
+    /**
+     * The request header used to send {@code Last-Modified} validator.
+     */
+    public final static String IF_MODIFIED_SINCE = "If-Modified-Since";
+    /**
+     * The response header with {@code ETag} validator.
+     */
+    public final static String ETAG = "ETag";
+    /**
+     * The response header with {@code Last-Modified} validator.
+     */
+    public final static String LAST_MODIFIED = "Last-Modified";
+    /**
+     * The request header used to ask for the remaining part of the data.
+     */
+    public final static String RANGE = "Range";
+    /**
+     * The request header used to make the {@code Range} conditional.
+     */
+    public final static String IF_RANGE = "If-Range";
+    /**
+     * The response header with the range of the partial data.
+     */
+    public final static String CONTENT_RANGE = "Content-Range";
+    /**
+     * The unit of ranges used in {@code Range} and {@code Content-Range} headers.
+     */
+    public final static String BYTES_UNIT = "bytes";
+    /**
+     * The number of bytes received between two checkpoints.
+     */
+    public final static int CHECKPOINT_INTERVAL = 4 * BLOCK_SIZE;
+    /**
+     * The phase of a download that lasts until the response headers arrive.
+     */
+    public final static String CONNECT_PHASE = "connect";
+    /**
+     * The phase of a download that lasts until the first byte of data arrives.
+     */
+    public final static String FIRST_BYTE_PHASE = "first byte";
+    /**
+     * The phase of a download that lasts until all the data arrives.
+     */
+    public final static String TRANSFER_PHASE = "transfer";
+    /**
+     * The DAO used to keep validators between downloads. When it is {@code null}
+     * conditional requests are not used.
+     */
+    private static HttpValidatorDao httpValidatorDao = null;
+    /**
+     * The DAO used to keep partial data between downloads. When it is
+     * {@code null} downloads are not resumed.
+     */
+    private static DownloadCheckpointDao downloadCheckpointDao = null;
+    /**
+     * The deadlines and retry settings of downloads. When it is {@code null}
+     * there are no deadlines and the downloads are not retried.
+     */
+    private static DownloadPolicy downloadPolicy = null;
+    /**
+     * The telemetry that records downloads and estimates lengths. When it is
+     * {@code null} the downloads are not recorded.
+     */
+    private static DownloadTelemetry downloadTelemetry = null;
+    /**
+     * The transport used when none has been set.
+     */
+    private final static Transport defaultTransport = new ConnectorTransport();
+    /**
+     * Indicates if the download shall be canceled.
+     */
+    private boolean cancelled = false;
+    /**
+     * Indicates if the server reported that the data hasn't been modified
+     * since the last download.
+     */
+    private boolean notModified = false;
+    /**
+     * The outcome of the last download.
+     */
+    private DownloadOutcome outcome = null;
+    /**
+     * Indicates if the last attempt has failed for a reason that may go away.
+     */
+    private boolean transientFailure = false;
+    /**
+     * The {@link DownloadWatchdog.Watch} of the current attempt or {@code null}.
+     */
+    private DownloadWatchdog.Watch watch = null;
+    /**
+     * The model the data is downloaded for or {@code null}.
+     */
+    private MeteorogramType meteorogramType = null;
+    /**
+     * The time the first byte of data has arrived at in the current attempt.
+     */
+    private long firstByteTime = 0L;
+    /**
+     * The transport used to open connections.
+     */
+    private Transport transport = defaultTransport;
+    /**
+     * The checksum of the data received by the last download.
+     */
+    private long checksum = -1L;
+    /**
+     * The pool the instance is given back to when it's no longer used or
+     * {@code null} if it's not pooled.
+     */
+    private DownloaderPool pool = null;
+
+    /**
+     * Sets the DAO used to keep validators between downloads.
+     * @param dao the {@link HttpValidatorDao} to use, or {@code null} to disable
+     *        conditional requests.
+     */
+    public static void setHttpValidatorDao(HttpValidatorDao dao) {
+        httpValidatorDao = dao;
+    }
+
+    /**
+     * Gets the DAO used to keep validators between downloads.
+     * @return the {@link HttpValidatorDao} or {@code null}.
+     */
+    public static HttpValidatorDao getHttpValidatorDao() {
+        return httpValidatorDao;
+    }
+
+    /**
+     * Sets the DAO used to keep partial data between downloads.
+     * @param dao the {@link DownloadCheckpointDao} to use, or {@code null} to
+     *        disable resuming downloads.
+     */
+    public static void setDownloadCheckpointDao(DownloadCheckpointDao dao) {
+        downloadCheckpointDao = dao;
+    }
+
+    /**
+     * Gets the DAO used to keep partial data between downloads.
+     * @return the {@link DownloadCheckpointDao} or {@code null}.
+     */
+    public static DownloadCheckpointDao getDownloadCheckpointDao() {
+        return downloadCheckpointDao;
+    }
+
+    /**
+     * Sets the deadlines and retry settings of downloads.
+     * @param policy the {@link DownloadPolicy} to use, or {@code null} to
+     *        disable deadlines and retries.
+     */
+    public static void setDownloadPolicy(DownloadPolicy policy) {
+        downloadPolicy = policy;
+    }
+
+    /**
+     * Gets the deadlines and retry settings of downloads.
+     * @return the {@link DownloadPolicy} or {@code null}.
+     */
+    public static DownloadPolicy getDownloadPolicy() {
+        return downloadPolicy;
+    }
+
+    /**
+     * Sets the telemetry that records downloads and estimates lengths.
+     * @param telemetry the {@link DownloadTelemetry} to use, or {@code null}
+     *        to disable recording downloads.
+     */
+    public static void setDownloadTelemetry(DownloadTelemetry telemetry) {
+        downloadTelemetry = telemetry;
+    }
+
+    /**
+     * Gets the telemetry that records downloads and estimates lengths.
+     * @return the {@link DownloadTelemetry} or {@code null}.
+     */
+    public static DownloadTelemetry getDownloadTelemetry() {
+        return downloadTelemetry;
+    }
+
+    /**
+     * Sets the model the data is downloaded for, so the downloads can be
+     * told apart by {@link DownloadTelemetry}.
+     * @param type the {@link MeteorogramType} or {@code null} if it's not known.
+     */
+    public void setMeteorogramType(MeteorogramType type) {
+        meteorogramType = type;
+    }
+
+    /**
+     * Sets the transport used to open connections.
+     * @param transport the {@link Transport} to use, or {@code null} to use
+     *        {@link ConnectorTransport}.
+     */
+    public void setTransport(Transport transport) {
+        this.transport = transport == null ? defaultTransport : transport;
+    }
+
+    /**
+     * Gets the transport used to open connections.
+     * @return the {@link Transport}.
+     */
+    public Transport getTransport() {
+        return transport;
+    }
+
+    /**
+     * Downloads the data from the given {@code url} without conditional request.
+     * @param url the {@link String} with URL to download data from.
+     * @param defaultLength the {@code int} with the expected length of the data
+     * used when the server does not report it.
+     * @return {@code true} if the data has been downloaded, {@code false} otherwise.
+     * @see #download(String, int, String)
+     */
+    protected boolean download(String url, int defaultLength) {
+        return download(url, defaultLength, null);
+    }
+
+    /**
+     * Downloads the data from the given {@code url}. When all the data has been
+     * read it is passed to {@link #dataReceived(byte[], int, boolean)} and then
+     * the {@link Status#FINISHED} is reported. When anything goes wrong the
+     * {@link Status#CANCELLED} is reported.
+     * When {@code validatorKey} is given, the validators stored under that key
+     * are sent with the request. If the server answers with
+     * {@code 304 Not Modified} no data is transfered,
+     * {@link #notModified(HttpValidator)} is called instead and the
+     * {@link Status#FINISHED} is reported. Validators received with the data
+     * are stored under {@code validatorKey} for the next download.
+     * When the downloader {@link #isResumable()} and there is a
+     * {@link DownloadCheckpoint} for the {@code url}, only the remaining part
+     * of the data is requested. If the server sends the whole data instead,
+     * the checkpoint is dropped. The checkpoint is kept after a successful
+     * download, until it is discarded by the owner of the data.
+     * @param url the {@link String} with URL to download data from.
+     * @param defaultLength the {@code int} with the expected length of the data
+     * used when the server does not report it.
+     * @param validatorKey the {@link String} with the key of validators, or
+     *        {@code null} if conditional request shall not be used.
+     * When a {@link DownloadPolicy} is set, the attempts that timed out, failed
+     * to transfer data or got a server error are retried after a back off.
+     * The {@link #getOutcome()} tells how the download has ended.
+     * @return {@code true} if the data has been downloaded or hasn't been
+     *         modified, {@code false} otherwise.
+     * @see #download(String, int, String, boolean)
+     */
+    protected boolean download(String url, int defaultLength, String validatorKey) {
+        return download(url, defaultLength, validatorKey, true);
+    }
+
+    /**
+     * Downloads the data from the given {@code url} like
+     * {@link #download(String, int, String)} does, but the validators stored
+     * under {@code validatorKey} are sent only when {@code revalidate} is
+     * {@code true}. The validators received with the data are stored anyway,
+     * so the next download can be conditional.
+     * @param url the {@link String} with URL to download data from.
+     * @param defaultLength the {@code int} with the expected length of the data
+     * used when the server does not report it.
+     * @param validatorKey the {@link String} with the key of validators, or
+     *        {@code null} if validators shall not be used.
+     * @param revalidate tells if the request shall be conditional.
+     * @return {@code true} if the data has been downloaded or hasn't been
+     *         modified, {@code false} otherwise.
+     */
+    protected boolean download(String url, int defaultLength, String validatorKey,
+            boolean revalidate) {
+        notModified = false;
+        outcome = null;
+        checksum = -1L;
+        if (cancelled) {
+//#mdebug
+            log.info(this + " has been interrupted!");
+//#enddebug
+            outcome = DownloadOutcome.CANCELLED;
+            fireStatusUpdate(Status.CANCELLED);
+            return false;
+        }
+        fireStatusUpdate(Status.STARTED);
+        DownloadPolicy policy = downloadPolicy;
+        int attempts = policy == null ? 1 : policy.getMaxAttempts();
+        DownloadOutcome result = null;
+        for (int attempt = 1;; attempt++) {
+            result = attempt(url, defaultLength, validatorKey, revalidate, policy);
+            if (result == DownloadOutcome.SUCCEEDED || !transientFailure
+                    || attempt >= attempts) {
+                break;
+            }
+            if (!backOff(policy.getBackoff(attempt))) {
+                result = DownloadOutcome.CANCELLED;
+                break;
+            }
+//#mdebug
+            log.info(this + ": Retrying after " + result + ", attempt " + (attempt + 1));
+//#enddebug
+        }
+        outcome = result;
+        if (result == DownloadOutcome.SUCCEEDED) {
+            fireStatusUpdate(Status.FINISHED);
+            return true;
+        }
+        fireStatusUpdate(Status.CANCELLED);
+        return false;
+    }
+
+    /**
+     * Makes a single attempt to download the data from the given {@code url}.
+     * @param url the {@link String} with URL to download data from.
+     * @param defaultLength the {@code int} with the expected length of the data
+     * used when the server does not report it.
+     * @param validatorKey the {@link String} with the key of validators, or
+     *        {@code null} if validators shall not be used.
+     * @param revalidate tells if the request shall be conditional.
+     * @param policy the {@link DownloadPolicy} with deadlines or {@code null}.
+     * @return the {@link DownloadOutcome} of the attempt.
+     */
+    private DownloadOutcome attempt(String url, int defaultLength, String validatorKey,
+            boolean revalidate, DownloadPolicy policy) {
+        HttpConnection connection = null;
+        DataInputStream dis = null;
+        DownloadWatchdog.Watch currentWatch = null;
+        DownloadOutcome retValue = null;
+        transientFailure = false;
+        notModified = false;
+        long started = System.currentTimeMillis();
+        firstByteTime = 0L;
+        attemptStarted();
+        try {
+            if (policy != null) {
+                currentWatch = DownloadWatchdog.getInstance().watch(policy.getTotalTimeout());
+                currentWatch.startPhase(CONNECT_PHASE, policy.getConnectTimeout());
+                setWatch(currentWatch);
+            }
+            connection = transport.open(url);
+            if (currentWatch != null) {
+                currentWatch.setConnection(connection);
+            }
+            if (cancelled) {
+                throw new InterruptedException();
+            }
+            HttpValidator validator = revalidate
+                    ? prepareRequest(connection, url, validatorKey) : null;
+            DownloadCheckpoint checkpoint = prepareRange(connection, url);
+            int responseCode = connection.getResponseCode();
+            if (validator != null
+                    && responseCode == HttpConnection.HTTP_NOT_MODIFIED) {
+//#mdebug
+                log.info(this + ": Data not modified since last download: " + url);
+//#enddebug
+                notModified = true;
+                notModified(validator);
+                if (checkpoint != null) {
+                    downloadCheckpointDao.delete(url);
+                }
+            } else if (responseCode >= HttpConnection.HTTP_BAD_REQUEST
+                    && !(checkpoint != null
+                    && responseCode == HttpConnection.HTTP_UNSUPPORTED_RANGE)) {
+//#mdebug
+                log.warn(this + ": Server responded with " + responseCode + " for: " + url);
+//#enddebug
+                transientFailure = responseCode >= HttpConnection.HTTP_INTERNAL_ERROR
+                        || responseCode == HttpConnection.HTTP_CLIENT_TIMEOUT;
+                return DownloadOutcome.HTTP_ERROR;
+            } else {
+                if (checkpoint != null) {
+                    checkpoint = checkRange(connection, responseCode, checkpoint);
+                }
+                dis = connection.openDataInputStream();
+                if (currentWatch != null) {
+                    currentWatch.setStream(dis);
+                    currentWatch.startPhase(FIRST_BYTE_PHASE, policy.getFirstByteTimeout());
+                }
+                if (cancelled) {
+                    throw new InterruptedException();
+                }
+                int count = readData(dis, connection.getLength(), estimateLength(defaultLength),
+                        createCheckpoint(connection, url), checkpoint);
+                saveValidator(connection, url, validatorKey);
+                recordSample(count, checkpoint == null ? count : count - checkpoint.getLength(),
+                        started);
+            }
+            retValue = DownloadOutcome.SUCCEEDED;
+        } catch (InterruptedException ex) {
+//#mdebug
+            log.info(this + " has been interrupted!");
+//#enddebug
+            retValue = DownloadOutcome.CANCELLED;
+        } catch (IOException ex) {
+//#mdebug
+            log.warn(this + " has an exception!", ex);
+//#enddebug
+            retValue = classifyFailure(currentWatch);
+        } catch (IllegalArgumentException ex) {
+//#mdebug
+            log.warn(this + " has an exception!", ex);
+//#enddebug
+            retValue = DownloadOutcome.IO_ERROR;
+        } catch (SecurityException ex) {
+//#mdebug
+            log.warn(this + " has an exception!", ex);
+//#enddebug
+            retValue = DownloadOutcome.IO_ERROR;
+        } finally {
+            if (currentWatch != null) {
+                setWatch(null);
+                DownloadWatchdog.getInstance().unwatch(currentWatch);
+            }
+            if (dis != null) {
+                try {
+                    dis.close();
+                } catch (IOException ex) {
+//#mdebug
+                    log.debug("Error occurred while closing stream: ", ex);
+//#enddebug
+                }
+            }
+            if (connection != null) {
+                try {
+                    connection.close();
+                } catch (IOException ex) {
+//#mdebug
+                    log.debug("Error occurred while closing connection: ", ex);
+//#enddebug
+                }
+            }
+        }
+        return retValue;
+    }
+
+    /**
+     * Tells why an attempt has failed with {@link IOException}. An attempt
+     * that has been cancelled or has timed out is unblocked this way.
+     * @param currentWatch the {@link DownloadWatchdog.Watch} of the attempt or {@code null}.
+     * @return the {@link DownloadOutcome} of the attempt.
+     */
+    private DownloadOutcome classifyFailure(DownloadWatchdog.Watch currentWatch) {
+        if (cancelled) {
+            return DownloadOutcome.CANCELLED;
+        }
+        transientFailure = true;
+        if (currentWatch != null && currentWatch.isExpired()) {
+//#mdebug
+            log.warn(this + ": Timed out in phase: " + currentWatch.getExpiredPhase());
+//#enddebug
+            return DownloadOutcome.TIMED_OUT;
+        }
+        return DownloadOutcome.IO_ERROR;
+    }
+
+    /**
+     * Waits for the {@code backoff} before the next attempt. The wait ends
+     * early when the download is cancelled.
+     * @param backoff the {@code long} with time to wait in milliseconds.
+     * @return {@code true} if the next attempt shall be made, {@code false}
+     *         if the download has been cancelled.
+     */
+    private synchronized boolean backOff(long backoff) {
+//#mdebug
+        log.debug(this + ": Backing off for " + backoff + " ms");
+//#enddebug
+        long end = System.currentTimeMillis() + backoff;
+        long now = System.currentTimeMillis();
+        try {
+            while (!cancelled && now < end) {
+                wait(end - now);
+                now = System.currentTimeMillis();
+            }
+        } catch (InterruptedException ex) {
+//#mdebug
+            log.info(this + " has been interrupted while backing off!");
+//#enddebug
+            return false;
+        }
+        return !cancelled;
+    }
+
+    /**
+     * Sets the watch of the current attempt, so it can be aborted on cancel.
+     * @param watch the {@link DownloadWatchdog.Watch} or {@code null}.
+     */
+    private synchronized void setWatch(DownloadWatchdog.Watch watch) {
+        this.watch = watch;
+    }
+
+    /**
+     * Reads all the data from {@code dis} and passes it to
+     * {@link #dataReceived(byte[], int, boolean)}. When {@code resumed} is
+     * given, it's data is put in front of the data read. The data received so
+     * far is stored in {@code progress} every {@value #CHECKPOINT_INTERVAL}
+     * bytes and when the reading fails.
+     * @param dis the {@link DataInputStream} to read data from.
+     * @param length the {@code long} length reported by the server.
+     * @param defaultLength the {@code int} length to use when the {@code length}
+     *        is unknown.
+     * @param progress the {@link DownloadCheckpoint} to store the data in, or
+     *        {@code null} if checkpoints are not used.
+     * @param resumed the {@link DownloadCheckpoint} with data received before,
+     *        or {@code null} if the data is read from the beginning.
+     * @return the {@code int} with number of bytes of the data.
+     * @throws IOException if the data cannot be read.
+     * @throws InterruptedException if the download has been cancelled.
+     */
+    private int readData(DataInputStream dis, long length, int defaultLength,
+            DownloadCheckpoint progress, DownloadCheckpoint resumed)
+            throws IOException, InterruptedException {
+        byte[] buffer = null;
+        boolean pooled = false;
+        int resumedBytes = resumed == null ? 0 : resumed.getLength();
+        int count = 0;
+        int checkpointed = 0;
+        boolean completed = false;
+        Adler32 adler32 = new Adler32();
+        try {
+            int totalBytes;
+            if (length > 0L && length <= Integer.MAX_VALUE - resumedBytes) {
+                totalBytes = (int) length + resumedBytes;
+                buffer = new byte[totalBytes];
+            } else {
+                totalBytes = Math.max(defaultLength, resumedBytes);
+//#mdebug
+                log.debug("Setting totalBytes to default = " + totalBytes);
+//#enddebug
+                buffer = BufferPool.getInstance().obtain(totalBytes);
+                pooled = true;
+            }
+            if (resumedBytes > 0) {
+                System.arraycopy(resumed.getData(), 0, buffer, 0, resumedBytes);
+                count = resumedBytes;
+                checkpointed = resumedBytes;
+                adler32.update(buffer, 0, resumedBytes);
+            }
+            int percent = 0;
+            boolean firstBlock = true;
+            while (true) {
+                int blockStart = count;
+                if (count == buffer.length) {
+                    int readByte = dis.read();
+                    if (readByte == -1) {
+                        break;
+                    }
+                    byte[] grown = BufferPool.getInstance().obtain(buffer.length * 2);
+                    System.arraycopy(buffer, 0, grown, 0, count);
+                    if (pooled) {
+                        BufferPool.getInstance().release(buffer);
+                    }
+                    buffer = grown;
+                    pooled = true;
+//#mdebug
+                    log.debug(this + ": Buffer grown to " + buffer.length);
+//#enddebug
+                    buffer[count++] = (byte) readByte;
+                }
+                int read = dis.read(buffer, count, Math.min(BLOCK_SIZE, buffer.length - count));
+                if (read != -1) {
+                    count += read;
+                }
+                if (firstBlock) {
+                    firstBlock = false;
+                    transferStarted();
+                }
+                adler32.update(buffer, blockStart, count - blockStart);
+                if (count > blockStart
+                        && blockReceived(buffer, blockStart, count - blockStart)) {
+//#mdebug
+                    log.info(this + ": Got all the needed data, closing connection");
+//#enddebug
+                    break;
+                }
+                if (read == -1) {
+                    break;
+                }
+                int currentPercent = totalBytes > 0
+                        ? (int) ((long) count * 100L / (long) totalBytes) : 100;
+                if (currentPercent > 100) {
+                    currentPercent = 100;
+                }
+                if (currentPercent > percent) {
+                    percent = currentPercent;
+                    reportProgress(percent);
+                }
+                if (progress != null && count - checkpointed >= CHECKPOINT_INTERVAL) {
+                    saveCheckpoint(progress, buffer, count);
+                    checkpointed = count;
+                }
+                DownloadScheduler.getInstance().throttle();
+                if (cancelled) {
+                    throw new InterruptedException();
+                }
+            }
+            completed = true;
+//#mdebug
+            log.info(this + ": Received " + count + " bytes");
+//#enddebug
+            checksum = adler32.getValue();
+            dataReceived(buffer, count, !pooled);
+            return count;
+        } finally {
+            if (!completed && progress != null && count > checkpointed) {
+                saveCheckpoint(progress, buffer, count);
+            }
+            if (pooled) {
+                BufferPool.getInstance().release(buffer);
+            }
+        }
+    }
+
+    /**
+     * Adds the conditional request headers to the {@code connection} if there
+     * are validators stored under the {@code validatorKey} for the same {@code url}.
+     * @param connection the {@link HttpConnection} to prepare.
+     * @param url the {@link String} with URL to download data from.
+     * @param validatorKey the {@link String} with the key of validators or {@code null}.
+     * @return the {@link HttpValidator} that has been used or {@code null}.
+     * @throws IOException if the headers cannot be set.
+     */
+    private HttpValidator prepareRequest(HttpConnection connection, String url,
+            String validatorKey) throws IOException {
+        HttpValidatorDao dao = httpValidatorDao;
+        if (validatorKey == null || dao == null) {
+            return null;
+        }
+        HttpValidator validator = dao.read(validatorKey);
+        if (validator == null || !validator.isUsable() || !url.equals(validator.getUrl())) {
+            return null;
+        }
+        if (validator.getETag() != null) {
+            connection.setRequestProperty(IF_NONE_MATCH, validator.getETag());
+        }
+        if (validator.getLastModified() != null) {
+            connection.setRequestProperty(IF_MODIFIED_SINCE, validator.getLastModified());
+        }
+//#mdebug
+        log.debug(this + ": Sending conditional request with " + validator);
+//#enddebug
+        return validator;
+    }
+
+    /**
+     * Asks for the remaining part of the data if there is a {@link DownloadCheckpoint}
+     * for the {@code url}. The validator of the checkpoint is sent with
+     * {@code If-Range} header, so the server sends the whole data if it has changed.
+     * @param connection the {@link HttpConnection} to prepare.
+     * @param url the {@link String} with URL to download data from.
+     * @return the {@link DownloadCheckpoint} that has been used or {@code null}.
+     * @throws IOException if the headers cannot be set.
+     */
+    private DownloadCheckpoint prepareRange(HttpConnection connection, String url)
+            throws IOException {
+        DownloadCheckpointDao dao = downloadCheckpointDao;
+        if (dao == null || !isResumable()) {
+            return null;
+        }
+        DownloadCheckpoint checkpoint = dao.read(url);
+        if (checkpoint == null || checkpoint.getLength() == 0) {
+            return null;
+        }
+        connection.setRequestProperty(RANGE, BYTES_UNIT + "=" + checkpoint.getLength() + "-");
+        if (checkpoint.getETag() != null) {
+            connection.setRequestProperty(IF_RANGE, checkpoint.getETag());
+        } else if (checkpoint.getLastModified() != null) {
+            connection.setRequestProperty(IF_RANGE, checkpoint.getLastModified());
+        }
+//#mdebug
+        log.debug(this + ": Resuming download from " + checkpoint);
+//#enddebug
+        return checkpoint;
+    }
+
+    /**
+     * Checks if the server sent the remaining part of the data for the
+     * {@code checkpoint}. If the server sent the whole data instead, the
+     * {@code checkpoint} is dropped.
+     * @param connection the {@link HttpConnection} with the response.
+     * @param responseCode the {@code int} with the response code.
+     * @param checkpoint the {@link DownloadCheckpoint} sent with the request.
+     * @return the {@code checkpoint} if the remaining part is sent, or {@code null}
+     *         if the whole data is sent.
+     * @throws IOException if the server cannot send the requested range.
+     */
+    private DownloadCheckpoint checkRange(HttpConnection connection, int responseCode,
+            DownloadCheckpoint checkpoint) throws IOException {
+        if (responseCode == HttpConnection.HTTP_PARTIAL) {
+            String contentRange = connection.getHeaderField(CONTENT_RANGE);
+            String expected = BYTES_UNIT + " " + checkpoint.getLength() + "-";
+            if (contentRange != null && contentRange.startsWith(expected)) {
+                return checkpoint;
+            }
+//#mdebug
+            log.warn(this + ": Unexpected range received: " + contentRange);
+//#enddebug
+            downloadCheckpointDao.delete(checkpoint.getUrl());
+            throw new IOException("Unexpected range received: " + contentRange);
+        }
+        downloadCheckpointDao.delete(checkpoint.getUrl());
+        if (responseCode == HttpConnection.HTTP_UNSUPPORTED_RANGE) {
+//#mdebug
+            log.warn(this + ": Cannot resume download from " + checkpoint);
+//#enddebug
+            throw new IOException("Cannot resume download from checkpoint!");
+        }
+//#mdebug
+        log.info(this + ": Range ignored, downloading whole data: " + checkpoint.getUrl());
+//#enddebug
+        return null;
+    }
+
+    /**
+     * Creates the {@link DownloadCheckpoint} to store the data received
+     * from the {@code connection}.
+     * @param connection the {@link HttpConnection} with the response.
+     * @param url the {@link String} with URL to download data from.
+     * @return the {@link DownloadCheckpoint} or {@code null} if checkpoints
+     *         are not used.
+     * @throws IOException if the headers cannot be read.
+     */
+    private DownloadCheckpoint createCheckpoint(HttpConnection connection, String url)
+            throws IOException {
+        if (downloadCheckpointDao == null || !isResumable()) {
+            return null;
+        }
+        DownloadCheckpoint checkpoint = new DownloadCheckpoint(url);
+        checkpoint.setETag(connection.getHeaderField(ETAG));
+        checkpoint.setLastModified(connection.getHeaderField(LAST_MODIFIED));
+        return checkpoint;
+    }
+
+    /**
+     * Stores the first {@code count} bytes of {@code buffer} in the {@code checkpoint}.
+     * @param checkpoint the {@link DownloadCheckpoint} to be stored.
+     * @param buffer the {@code byte[]} with the data received so far.
+     * @param count the {@code int} with number of valid bytes in {@code buffer}.
+     */
+    private void saveCheckpoint(DownloadCheckpoint checkpoint, byte[] buffer, int count) {
+        DownloadCheckpointDao dao = downloadCheckpointDao;
+        if (dao == null) {
+            return;
+        }
+        byte[] data = new byte[count];
+        System.arraycopy(buffer, 0, data, 0, count);
+        checkpoint.setData(data);
+        dao.createOrUpdate(checkpoint);
+//#mdebug
+        log.debug(this + ": Checkpoint saved at " + count + " bytes");
+//#enddebug
+    }
+
+    /**
+     * Stores the validators received with the response under {@code validatorKey}.
+     * @param connection the {@link HttpConnection} with the response.
+     * @param url the {@link String} with URL the data has been downloaded from.
+     * @param validatorKey the {@link String} with the key of validators or {@code null}.
+     * @throws IOException if the headers cannot be read.
+     */
+    private void saveValidator(HttpConnection connection, String url,
+            String validatorKey) throws IOException {
+        HttpValidatorDao dao = httpValidatorDao;
+        if (validatorKey == null || dao == null) {
+            return;
+        }
+        HttpValidator validator = new HttpValidator(validatorKey, url);
+        validator.setETag(connection.getHeaderField(ETAG));
+        validator.setLastModified(connection.getHeaderField(LAST_MODIFIED));
+        if (validator.isUsable() && storeValidator(validator)) {
+            dao.createOrUpdate(validator);
+        } else {
+            dao.delete(validatorKey);
+        }
+    }
+
+    /**
+     * Called each time a block of data has been read. The default implementation
+     * does nothing. Implementations may return {@code true} to stop the download
+     * early and close the connection, in which case only the data received so
+     * far is passed to {@link #dataReceived(byte[], int, boolean)}.
+     * @param data the {@code byte[]} with downloaded data.
+     * @param offset the {@code int} index of the first byte of the block.
+     * @param length the {@code int} with number of bytes in the block.
+     * @return {@code true} if no more data is needed, {@code false} otherwise.
+     */
+    protected boolean blockReceived(byte[] data, int offset, int length) {
+        return false;
+    }
+
+    /**
+     * Called before each attempt to download the data, so the state built from
+     * the blocks received by a failed attempt can be dropped, as the next one
+     * receives the data from its beginning. The default implementation does
+     * nothing.
+     */
+    protected void attemptStarted() {
+    }
+
+    /**
+     * Called when all the data has been downloaded. Only the first {@code length}
+     * bytes of {@code data} are valid. The {@code data} can be kept by the
+     * implementation only when {@code owned} is {@code true}, otherwise it is
+     * given back to the {@link BufferPool} as soon as this method returns.
+     * @param data the {@code byte[]} with downloaded data.
+     * @param length the {@code int} with number of valid bytes in {@code data}.
+     * @param owned indicates if the {@code data} may be kept by the implementation.
+     */
+    protected abstract void dataReceived(byte[] data, int length, boolean owned);
+
+    /**
+     * Called when the server reported that the data hasn't been modified since
+     * the {@code validator} has been stored. The default implementation does nothing.
+     * @param validator the {@link HttpValidator} sent with the request.
+     */
+    protected void notModified(HttpValidator validator) {
+    }
+
+    /**
+     * Called before the {@code validator} received with the data is stored.
+     * Implementations may fill the {@link HttpValidator#setValue(String)} in
+     * or veto storing by returning {@code false}. The default implementation
+     * returns {@code true}.
+     * @param validator the {@link HttpValidator} to be stored.
+     * @return {@code true} if the {@code validator} shall be stored.
+     */
+    protected boolean storeValidator(HttpValidator validator) {
+        return true;
+    }
+
+    /**
+     * Checks if the downloads can be resumed from a {@link DownloadCheckpoint}.
+     * It shall be {@code true} only for downloaders that need all the data.
+     * The default implementation returns {@code false}.
+     * @return {@code true} if the downloads can be resumed.
+     */
+    protected boolean isResumable() {
+        return false;
+    }
+
+    /**
+     * Moves the watch of the current attempt to the transfer phase, which is
+     * limited only by the deadline of the whole attempt. The time of the first
+     * byte is remembered for {@link DownloadTelemetry}.
+     */
+    private void transferStarted() {
+        firstByteTime = System.currentTimeMillis();
+        DownloadWatchdog.Watch currentWatch = null;
+        synchronized (this) {
+            currentWatch = watch;
+        }
+        if (currentWatch != null) {
+            currentWatch.startPhase(TRANSFER_PHASE, 0L);
+        }
+    }
+
+    /**
+     * Gets the kind of downloads used by {@link DownloadTelemetry}. The
+     * default implementation returns {@code null}, so the downloads are not
+     * recorded.
+     * @return the {@link String} with kind of downloads or {@code null}.
+     */
+    protected String getTelemetryKind() {
+        return null;
+    }
+
+    /**
+     * Estimates the length of the data with {@link DownloadTelemetry}.
+     * @param defaultLength the {@code int} with the expected length used when
+     *        nothing is known.
+     * @return the {@code int} with the estimated length.
+     */
+    private int estimateLength(int defaultLength) {
+        DownloadTelemetry telemetry = downloadTelemetry;
+        String kind = getTelemetryKind();
+        if (telemetry == null || kind == null) {
+            return defaultLength;
+        }
+        return telemetry.estimateLength(kind, meteorogramType, defaultLength);
+    }
+
+    /**
+     * Records the current attempt with {@link DownloadTelemetry}.
+     * @param length the {@code int} with number of bytes of the data.
+     * @param transferred the {@code int} with number of bytes received.
+     * @param started the {@code long} with time the attempt has started at.
+     */
+    private void recordSample(int length, int transferred, long started) {
+        DownloadTelemetry telemetry = downloadTelemetry;
+        String kind = getTelemetryKind();
+        if (telemetry == null || kind == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        DownloadSample sample = new DownloadSample(kind, meteorogramType);
+        sample.setLength(length);
+        sample.setTransferred(transferred);
+        sample.setTimeToFirstByte(firstByteTime == 0L ? now - started : firstByteTime - started);
+        sample.setDuration(now - started);
+        sample.setTimestamp(now);
+        telemetry.record(sample);
+    }
+
+    /**
+     * Gets the outcome of the last download.
+     * @return the {@link DownloadOutcome} or {@code null} if nothing has been
+     *         downloaded yet.
+     */
+    public DownloadOutcome getOutcome() {
+        return outcome;
+    }
+
+    /**
+     * Checks if the server reported during the last download that the data
+     * hasn't been modified.
+     * @return {@code true} if the data hasn't been modified, {@code false} otherwise.
+     */
+    public boolean isNotModified() {
+        return notModified;
+    }
+
+    /**
+     * Gets the {@link Adler32} checksum of the data received by the last download.
+     * @return the {@code long} with checksum or {@code -1} if no data has been
+     *         received.
+     */
+    public long getChecksum() {
+        return checksum;
+    }
+
+    /**
+     * Aborts the download operation.
+     * @return {@code true} if canceled succeed, {@code false} otherwise.
+     */
+    public synchronized boolean cancel() {
+        cancelled = true;
+        if (watch != null) {
+            watch.abort();
+        }
+        notifyAll();
+        return true;
+    }
+
+    /**
+     * Sets the pool the instance is given back to by {@link #recycle()}.
+     * @param pool the {@link DownloaderPool} or {@code null} if it's not pooled.
+     */
+    synchronized void setPool(DownloaderPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Gives the instance back to the pool it has been taken from. It does
+     * nothing if the instance is not pooled. The instance shall not be used
+     * by the caller afterwards.
+     */
+    public void recycle() {
+        DownloaderPool owner = null;
+        synchronized (this) {
+            owner = pool;
+        }
+        if (owner != null) {
+            owner.release(this);
+        }
+    }
+
+    /**
+     * Brings the instance back to the state it has been created with, so it
+     * can be reused by the next download. The transport is kept. Subclasses
+     * that keep a state of the download shall reset it too.
+     */
+    protected synchronized void reset() {
+        cancelled = false;
+        notModified = false;
+        outcome = null;
+        transientFailure = false;
+        watch = null;
+        meteorogramType = null;
+        firstByteTime = 0L;
+        checksum = -1L;
+        removeAllListeners();
+    }
+
+    /**
+     * Reports the passed in {@code progress} to all listeners.
+     * @param progress the {@code int} to be reported.
+     */
+    protected void reportProgress(int progress) {
+        fireProgressUpdate(progress);
+    }
+}
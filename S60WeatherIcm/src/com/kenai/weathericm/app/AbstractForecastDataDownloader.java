@@ -17,6 +17,7 @@
  */
 package com.kenai.weathericm.app;
 
+import com.kenai.weathericm.util.ProgressListener;
 import com.kenai.weathericm.util.StatusListener;
 import com.kenai.weathericm.util.AbstractStatusReporter;
 import com.kenai.weathericm.util.Status;
@@ -26,6 +27,7 @@ import net.sf.microlog.core.LoggerFactory;
 //#enddebug
 import com.kenai.weathericm.domain.ForecastData;
 import com.kenai.weathericm.domain.MeteorogramInfo;
+import com.kenai.weathericm.domain.MeteorogramType;
 import com.kenai.weathericm.util.Properties;
 import com.kenai.weathericm.util.PropertiesRepository;
 import com.kenai.weathericm.util.StatusReporter;
@@ -36,10 +38,17 @@ import com.kenai.weathericm.util.StatusReporter;
  * The status is sent to all registered listeners using {@link Status}
  * objects.
  * Note: upon the registration of the listener this task status is sent to the listener.
+ * When a legend downloader is set and the legend of the meteorogram's type
+ * hasn't been refreshed yet, the legend is downloaded into {@link LegendCache}
+ * at the same time as the forecast. The task waits for the legend only for
+ * {@value #LEGEND_WAIT_TIME} milliseconds once the forecast is done, and a
+ * slower legend download goes on after the task has finished.
+ * Unless the task runs in the background of {@link DownloadScheduler}, it's a
+ * foreground one and the background downloads give way to it.
  * @author Przemek Kryger
  */
 public abstract class AbstractForecastDataDownloader extends AbstractStatusReporter
-        implements ForecastDataDownloader, StatusListener {
+        implements ForecastDataDownloader, ProgressListener {
 
     /**
      * The key used to obtaining the URL for model start data. This value 
@@ -71,6 +80,21 @@ public abstract class AbstractForecastDataDownloader extends AbstractStatusRepor
      * The key used to obtaining the URL for forecast image.
      */
     public final static String IMAGE_URL_PREFIX_KEY = "image.url.prefix";
+    /**
+     * The key used to obtaining the URL for legend image.
+     */
+    public final static String LEGEND_URL_KEY = "legend.url";
+    /**
+     * The prefix of the key used to store validators of model result for
+     * a {@link MeteorogramInfo}. The key is followed by the info's id.
+     */
+    public final static String MODEL_RESULT_VALIDATOR_PREFIX = "info.";
+    /**
+     * The time in milliseconds that the task waits for the refresh of the
+     * legend before it ends. The refresh that takes longer is left running,
+     * and the legend is shown once it's in {@link LegendCache}.
+     */
+    public final static long LEGEND_WAIT_TIME = 1000L;
 //#mdebug
     /**
      * The logger for the class.
@@ -116,6 +140,15 @@ public abstract class AbstractForecastDataDownloader extends AbstractStatusRepor
      * This will be used to determine if model downloading is needed.
      */
     private ModelDownloadChecker modelDownloadChecker;
+    /**
+     * This will be used to refresh the legend in {@link LegendCache}, or
+     * {@code null} if legends are not downloaded.
+     */
+    private ModelResultDownloader legendDownloader = null;
+    /**
+     * The {@link Thread} that refreshes the legend, or {@code null}.
+     */
+    private Thread legendThread = null;
     /**
      * The total amount of chunk size that {@value #startDateDownloader}
      * or {@value #modelResultDownloader} will advance the progress.
@@ -126,6 +159,28 @@ public abstract class AbstractForecastDataDownloader extends AbstractStatusRepor
      * has been actually started.
      */
     private int chunkStart;
+    /**
+     * Indicates if a new {@link ForecastData} has been set for the {@value #info}.
+     */
+    private boolean forecastDataChanged = false;
+    /**
+     * Indicates if the downloaded model result is the same as the one that
+     * {@value #info} already has.
+     */
+    private boolean modelResultDuplicate = false;
+    /**
+     * The URL the model result has been downloaded from.
+     */
+    private String modelResultUrl = null;
+    /**
+     * The outcome of the download.
+     */
+    private DownloadOutcome outcome = null;
+    /**
+     * The time this download has started as a foreground one, or {@code -1}
+     * if it runs in the background.
+     */
+    private long foregroundStarted = -1L;
 
     /**
      * Adds a listener and afterwards, if tasks is in progress notifies it about
@@ -135,9 +190,13 @@ public abstract class AbstractForecastDataDownloader extends AbstractStatusRepor
     public void addListener(StatusListener listener) {
         super.addListener(listener);
         if (progress != -1) {
-            Status status = new Status();
-            status.setProgress(progress);
-            listener.statusUpdate(this, status);
+            if (listener instanceof ProgressListener) {
+                ((ProgressListener) listener).progressUpdate(this, progress);
+            } else {
+                Status status = new Status();
+                status.setProgress(progress);
+                listener.statusUpdate(this, status);
+            }
         }
     }
 
@@ -175,6 +234,9 @@ public abstract class AbstractForecastDataDownloader extends AbstractStatusRepor
                 log.error("Cannot cancel model result downloader - it is null!");
 //#enddebug
             }
+            if (legendDownloader != null) {
+                legendDownloader.cancel();
+            }
             myThread.interrupt();
             return true;
         } else {
@@ -193,12 +255,23 @@ public abstract class AbstractForecastDataDownloader extends AbstractStatusRepor
                         + "started. Waiting for it to finish.");
 //#enddebug
                 if (myThread != null) {
+                    DownloadScheduler scheduler = DownloadScheduler.getInstance();
+                    long started = -1L;
+                    if (!scheduler.isBackground()) {
+                        started = scheduler.beginForeground();
+                        scheduler.promote(myThread);
+                        setPriority(myThread, false);
+                    }
                     try {
                         myThread.join();
                     } catch (InterruptedException ex) {
 //#mdebug
                         log.debug("The other thread has been interrupted");
 //#enddebug
+                    } finally {
+                        if (started != -1L) {
+                            scheduler.endForeground(started);
+                        }
                     }
                 } else {
 //#mdebug
@@ -212,14 +285,11 @@ public abstract class AbstractForecastDataDownloader extends AbstractStatusRepor
 //#enddebug
                 progress = 0;
                 myThread = Thread.currentThread();
-                int priority = (Thread.NORM_PRIORITY - 1) > Thread.MIN_PRIORITY
-                        ? Thread.NORM_PRIORITY - 1 : Thread.MIN_PRIORITY;
-                try {
-                    myThread.setPriority(priority);
-                } catch (SecurityException ex) {
-//#mdebug
-                    log.warn("Cannot lower myThread priority!", ex);
-//#enddebug
+                DownloadScheduler scheduler = DownloadScheduler.getInstance();
+                boolean background = scheduler.isBackground();
+                setPriority(myThread, background);
+                if (!background) {
+                    foregroundStarted = scheduler.beginForeground();
                 }
                 fireStatusUpdate(Status.STARTED);
             }
@@ -233,6 +303,7 @@ public abstract class AbstractForecastDataDownloader extends AbstractStatusRepor
             throw new NullPointerException("Internal state is broken for downloader!");
         }
         try {
+            DownloadScheduler.getInstance().awaitForeground();
             if (cancelled) {
                 throw new InterruptedException();
             }
@@ -249,75 +320,248 @@ public abstract class AbstractForecastDataDownloader extends AbstractStatusRepor
 //#enddebug
                 throw new IllegalArgumentException("URL for start data is invalid!");
             }
+            startLegendRefresh(typeProperties);
 //#mdebug
             log.info(this + ": Reading start data...");
 //#enddebug
             chunkStart = progress;
             chunkSize = 8 - progress;
+            startDateDownloader.setMeteorogramType(info.getType());
             startDateDownloader.addListener(this);
-            String dateBuffer = startDateDownloader.downloadStartDate(startUrl);
+            String modelStartDate = ModelRunResolver.getInstance().resolveStartDate(
+                    info.getType(), typeProperties, startUrl, startDateDownloader);
             startDateDownloader.removeListener(this);
-            if (!Status.FINISHED.equals(downloaderStatus)) {
-                throw new InterruptedException();
-            }
             downloaderStatus = null;
+            if (modelStartDate == null) {
+//#mdebug
+                log.error(this + ": Cannot find start date in data");
+//#enddebug
+                throw new NullPointerException("Cannot find start date in data");
+            }
 //#mdebug
-            log.info(this + ": Parsing received start data...");
+            log.debug("Extracted start date = " + modelStartDate);
 //#enddebug
-            String modelStartDate = parseStartDate(dateBuffer, typeProperties);
             ForecastData forecastData = new ForecastData(modelStartDate);
             if (modelDownloadChecker.isDownloadNeeded(info, forecastData)) {
-                dateBuffer = null;
                 String imageUrl = createForecastDataUrl(modelStartDate, typeProperties);
+                modelResultUrl = imageUrl;
                 setProgress(9);
+                DownloadScheduler.getInstance().awaitForeground();
                 if (cancelled) {
                     throw new InterruptedException();
                 }
                 Thread.yield();
                 chunkStart = progress;
                 chunkSize = 99 - chunkStart;
+                modelResultDownloader.setMeteorogramType(info.getType());
                 modelResultDownloader.addListener(this);
-                byte[] modelResult = modelResultDownloader.downloadModelResult(imageUrl);
+                byte[] modelResult = modelResultDownloader.downloadModelResult(imageUrl,
+                        getModelResultValidatorKey(forecastData),
+                        isModelResultRevalidated(forecastData));
                 modelResultDownloader.removeListener(this);
                 if (!Status.FINISHED.equals(downloaderStatus)) {
                     throw new InterruptedException();
                 }
                 downloaderStatus = null;
-                if (modelResult == null) {
+                if (modelResultDownloader.isNotModified()) {
+//#mdebug
+                    log.info(this + ": Image data hasn't been modified: " + imageUrl);
+//#enddebug
+                } else if (modelResult == null) {
 //#mdebug
                     log.error("Cannot download image data from: " + imageUrl);
 //#enddebug
                     throw new NullPointerException("Image download failed!");
+                } else {
+                    forecastData.setModelResult(modelResult, modelResultDownloader.getChecksum());
+                    if (forecastData.hasSameModelResult(info.getForecastData())) {
+//#mdebug
+                        log.info(this + ": Image data is the same as current one: " + imageUrl);
+//#enddebug
+                        modelResultDuplicate = true;
+                    } else {
+                        info.setForecastData(forecastData);
+                        forecastDataChanged = true;
+                    }
                 }
-                forecastData.setModelResult(modelResult);
-                info.setForecastData(forecastData);
             }
+            awaitLegendRefresh();
             setProgress(progress = 100);
             Thread.yield();
             if (cancelled) {
                 throw new InterruptedException();
             }
+            outcome = DownloadOutcome.SUCCEEDED;
             fireStatusUpdate(Status.FINISHED);
         } catch (InterruptedException ex) {
 //#mdebug
             log.info(this + " has been interrupted!");
 //#enddebug
+            outcome = getFailureOutcome();
             fireStatusUpdate(Status.CANCELLED);
         } catch (RuntimeException ex) {
 //#mdebug
             log.warn(this + " has an exception!", ex);
 //#enddebug
+            outcome = getFailureOutcome();
             fireStatusUpdate(Status.CANCELLED);
             throw ex;
         } finally {
             startDateDownloader.removeListener(this);
             modelResultDownloader.removeListener(this);
+            long started = -1L;
             synchronized (this) {
                 myThread = null;
+                if (legendThread == null) {
+                    recycleLegendDownloader();
+                }
+                started = foregroundStarted;
+                foregroundStarted = -1L;
+            }
+            if (started != -1L) {
+                DownloadScheduler.getInstance().endForeground(started);
             }
+            recycle(startDateDownloader);
+            recycle(modelResultDownloader);
         }
     }
 
+    /**
+     * Sets the priority of the {@code thread} that runs a download. It's lower
+     * than the normal one, so the UI stays responsive, and it's the lowest one
+     * for the background downloads.
+     * @param thread the {@link Thread} that runs a download.
+     * @param background tells if the download runs in the background.
+     */
+    private static void setPriority(Thread thread, boolean background) {
+        int priority = (Thread.NORM_PRIORITY - 1) > Thread.MIN_PRIORITY
+                ? Thread.NORM_PRIORITY - 1 : Thread.MIN_PRIORITY;
+        try {
+            thread.setPriority(background ? Thread.MIN_PRIORITY : priority);
+        } catch (SecurityException ex) {
+//#mdebug
+            log.warn("Cannot set priority of " + thread, ex);
+//#enddebug
+        }
+    }
+
+    /**
+     * Gives the {@code downloader} back to its pool, if it's pooled. It's
+     * done once the task has ended, so it cannot be cancelled afterwards.
+     * @param downloader the downloader that won't be used by this task.
+     */
+    private static void recycle(Object downloader) {
+        if (downloader instanceof AbstractConnectorDownloader) {
+            ((AbstractConnectorDownloader) downloader).recycle();
+        }
+    }
+
+    /**
+     * Starts the refresh of the legend in a separate {@link Thread}, unless
+     * there is no legend downloader or the legend has been already refreshed.
+     * @param typeProperties the {@link Properties} with {@value #LEGEND_URL_KEY}.
+     */
+    private void startLegendRefresh(Properties typeProperties) {
+        final ModelResultDownloader downloader = legendDownloader;
+        final MeteorogramType type = info.getType();
+        if (downloader == null || !LegendCache.getInstance().isRefreshNeeded(type)) {
+            return;
+        }
+        final String legendUrl = typeProperties.getProperty(LEGEND_URL_KEY);
+        if (legendUrl == null || legendUrl.indexOf("http://") != 0) {
+//#mdebug
+            log.warn(this + ": The legend URL is invalid: " + legendUrl);
+//#enddebug
+            return;
+        }
+//#mdebug
+        log.info(this + ": Refreshing legend from: " + legendUrl);
+//#enddebug
+        Thread thread = new Thread() {
+
+            public void run() {
+                try {
+                    LegendCache.getInstance().refresh(type, legendUrl, downloader);
+                } catch (RuntimeException ex) {
+//#mdebug
+                    log.warn("Legend refresh failed for " + type, ex);
+//#enddebug
+                } finally {
+                    legendRefreshEnded();
+                }
+            }
+        };
+        synchronized (this) {
+            legendThread = thread;
+        }
+        thread.start();
+    }
+
+    /**
+     * Marks the refresh of the legend as ended and wakes up the task waiting
+     * for it. The legend downloader is recycled here if the task has already
+     * ended, otherwise the task recycles it.
+     */
+    private synchronized void legendRefreshEnded() {
+        legendThread = null;
+        if (myThread == null) {
+            recycleLegendDownloader();
+        }
+        notifyAll();
+    }
+
+    /**
+     * Gives the legend downloader back to its pool and forgets it, so it
+     * cannot be cancelled by this task anymore.
+     */
+    private synchronized void recycleLegendDownloader() {
+        recycle(legendDownloader);
+        legendDownloader = null;
+    }
+
+    /**
+     * Waits at most {@value #LEGEND_WAIT_TIME} milliseconds until the refresh
+     * of the legend ends. A failed refresh doesn't fail the download, the
+     * legend is refreshed next time.
+     * @throws InterruptedException if the task has been cancelled while waiting.
+     */
+    private synchronized void awaitLegendRefresh() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + LEGEND_WAIT_TIME;
+        long remaining = LEGEND_WAIT_TIME;
+        while (legendThread != null && remaining > 0) {
+            wait(remaining);
+            remaining = deadline - System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Tells why the download has failed. It's the outcome of the downloader
+     * that has failed, unless the download has been cancelled.
+     * @return the {@link DownloadOutcome} of the failed download.
+     */
+    private DownloadOutcome getFailureOutcome() {
+        if (cancelled) {
+            return DownloadOutcome.CANCELLED;
+        }
+        DownloadOutcome failure = modelResultDownloader.getOutcome();
+        if (failure == null || failure == DownloadOutcome.SUCCEEDED) {
+            failure = startDateDownloader.getOutcome();
+        }
+        if (failure == null || failure == DownloadOutcome.SUCCEEDED) {
+            failure = DownloadOutcome.IO_ERROR;
+        }
+        return failure;
+    }
+
+    /**
+     * Gets the outcome of the download.
+     * @return the {@link DownloadOutcome} or {@code null} if the download
+     *         hasn't ended yet.
+     */
+    public DownloadOutcome getOutcome() {
+        return outcome;
+    }
+
     /**
      * Sets the new progress and notifies all the listeners.
      * @param progress the {@code int} to set.
@@ -327,9 +571,7 @@ public abstract class AbstractForecastDataDownloader extends AbstractStatusRepor
         log.debug(this + ": Setting progress to: " + progress);
 //#enddebug
         this.progress = progress;
-        Status status = new Status();
-        status.setProgress(progress);
-        fireStatusUpdate(status);
+        fireProgressUpdate(progress);
     }
 
     /**
@@ -349,6 +591,8 @@ public abstract class AbstractForecastDataDownloader extends AbstractStatusRepor
     /**
      * Parses {@code dataBuffer} into format acceptable for {@link ForecastData}
      * constructor (yyyymmddhh). It uses properties from {@code PARSE}* members.
+     * The start data downloaded by {@link StartDateDownloader} is matched while
+     * it arrives, this one is meant for the data that is already at hand.
      * @param dataBuffer the {@link String} to be parsed.
      * @param properties the {@link Properties} to look the parsing constants.
      * @return the {@link String} date to be used for {@link ForecastData}.
@@ -362,83 +606,76 @@ public abstract class AbstractForecastDataDownloader extends AbstractStatusRepor
 //#enddebug
             throw new NullPointerException("Cannot parse nulls!");
         }
-        StringBuffer buffer = new StringBuffer(10);
 //#mdebug
         log.info("Beginning of buffer is: " + dataBuffer.substring(0, dataBuffer.length() > 50 ? 50 : dataBuffer.length()));
 //#enddebug
-        String parseYear = properties.getProperty(PARSE_YEAR_KEY);
-        if (parseYear == null) {
-//#mdebug
-            log.error(this + ": Cannot load property for " + PARSE_YEAR_KEY);
-//#enddebug
-            throw new NullPointerException("Cannot load property for " + PARSE_YEAR_KEY);
-        }
-        String parseMonth = properties.getProperty(PARSE_MONTH_KEY);
-        if (parseMonth == null) {
-//#mdebug
-            log.error(this + ": Cannot load property for " + PARSE_MONTH_KEY);
-//#enddebug
-            throw new NullPointerException("Cannot load property for " + PARSE_MONTH_KEY);
-        }
-        String parseDay = properties.getProperty(PARSE_DAY_KEY);
-        if (parseDay == null) {
-//#mdebug
-            log.error(this + ": Cannot load property for " + PARSE_DAY_KEY);
-//#enddebug
-            throw new NullPointerException("Cannot load property for " + PARSE_DAY_KEY);
-        }
-        String parseHour = properties.getProperty(PARSE_HOUR_KEY);
-        if (parseHour == null) {
-//#mdebug
-            log.error(this + ": Cannot load property for " + PARSE_HOUR_KEY);
-//#enddebug
-            throw new NullPointerException("Cannot load property for " + PARSE_HOUR_KEY);
+        StartDateMatcher matcher = new StartDateScanner(properties).createMatcher();
+        for (int i = 0; i < dataBuffer.length(); i++) {
+            if (matcher.feed(dataBuffer.charAt(i))) {
+                break;
+            }
         }
-        int idxYear = dataBuffer.indexOf(parseYear);
-        if (idxYear == -1) {
+        if (!matcher.isCaptured(StartDateScanner.YEAR)) {
 //#mdebug
             log.error(this + ": Cannot find year in data");
 //#enddebug
             throw new NullPointerException("Cannot find year in data");
         }
-        int idxMonth = dataBuffer.indexOf(parseMonth);
-        if (idxMonth == -1) {
+        if (!matcher.isCaptured(StartDateScanner.MONTH)) {
 //#mdebug
             log.error(this + ": Cannot find month in data");
 //#enddebug
             throw new NullPointerException("Cannot find month in data");
         }
-        int idxDay = dataBuffer.indexOf(parseDay);
-        if (idxDay == -1) {
+        if (!matcher.isCaptured(StartDateScanner.DAY)) {
 //#mdebug
             log.error(this + ": Cannot find day in data");
 //#enddebug
             throw new NullPointerException("Cannot find day in data");
         }
-        int idxHour = dataBuffer.indexOf(parseHour);
-        if (idxHour == -1) {
+        if (!matcher.isCaptured(StartDateScanner.HOUR)) {
 //#mdebug
             log.error(this + ": Cannot find hour in data");
 //#enddebug
             throw new NullPointerException("Cannot find hour in data");
         }
-        String extracted;
-        idxYear += parseYear.length();
-        extracted = dataBuffer.substring(idxYear, idxYear + 4);
-        buffer.append(extracted);
-        idxMonth += parseMonth.length();
-        extracted = dataBuffer.substring(idxMonth, idxMonth + 2);
-        buffer.append(extracted);
-        idxDay += parseDay.length();
-        extracted = dataBuffer.substring(idxDay, idxDay + 2);
-        buffer.append(extracted);
-        idxHour += parseHour.length();
-        extracted = dataBuffer.substring(idxHour, idxHour + 2);
-        buffer.append(extracted);
-//#mdebug
-        log.debug("Extracted start date = " + buffer.toString());
+        String startDate = matcher.getStartDate();
+//#mdebug
+        log.debug("Extracted start date = " + startDate);
 //#enddebug
-        return buffer.toString();
+        return startDate;
+    }
+
+    /**
+     * Gets the key of validators of the model result of the {@link #info}.
+     * The validators are stored under it with each downloaded model result,
+     * so the next download of the same model run can be revalidated.
+     * @param forecastData the {@link ForecastData} that is to be downloaded.
+     * @return the {@link String} key or {@code null} if the {@link #info}
+     *         hasn't been stored yet.
+     * @see #isModelResultRevalidated(ForecastData)
+     */
+    protected String getModelResultValidatorKey(ForecastData forecastData) {
+        if (info.getId() == null) {
+            return null;
+        }
+        return MODEL_RESULT_VALIDATOR_PREFIX + info.getId();
+    }
+
+    /**
+     * Checks if the model result can be revalidated, that is if the
+     * {@link #info} already has the model result for the same model start as
+     * {@code forecastData}. Otherwise the model result is downloaded
+     * unconditionally, since there would be nothing to keep on
+     * {@code 304 Not Modified}.
+     * @param forecastData the {@link ForecastData} that is to be downloaded.
+     * @return {@code true} if the request for model result shall be conditional.
+     */
+    protected boolean isModelResultRevalidated(ForecastData forecastData) {
+        ForecastData current = info.getForecastData();
+        return info.getId() != null && current != null && current.hasModelResult()
+                && current.getModelStart() != null
+                && current.getModelStart().equals(forecastData.getModelStart());
     }
 
     /**
@@ -544,6 +781,15 @@ public abstract class AbstractForecastDataDownloader extends AbstractStatusRepor
         this.modelResultDownloader = modelResultDownloader;
     }
 
+    /**
+     * Sets the downloader used to refresh the legend in {@link LegendCache}.
+     * @param legendDownloader the {@link ModelResultDownloader} to be used, or
+     *        {@code null} to not download legends.
+     */
+    public void setLegendDownloader(ModelResultDownloader legendDownloader) {
+        this.legendDownloader = legendDownloader;
+    }
+
     /**
      * Sets the instance of {@link ModelDownloadChecker} to be used to determine if
      * downloading model result is really needed.
@@ -561,6 +807,34 @@ public abstract class AbstractForecastDataDownloader extends AbstractStatusRepor
         this.modelDownloadChecker = modelDownloadChecker;
     }
 
+    /**
+     * Checks if the download has set a new {@link ForecastData} for the {@value #info}.
+     * @return {@code true} if a new {@link ForecastData} has been set,
+     *         {@code false} otherwise.
+     */
+    public boolean isForecastDataChanged() {
+        return forecastDataChanged;
+    }
+
+    /**
+     * Checks if the downloaded model result is the same as the one the
+     * {@value #info} already has, so the {@link ForecastData} hasn't been set.
+     * @return {@code true} if the downloaded model result is a duplicate,
+     *         {@code false} otherwise.
+     */
+    public boolean isModelResultDuplicate() {
+        return modelResultDuplicate;
+    }
+
+    /**
+     * Gets the URL the model result has been downloaded from.
+     * @return the {@link String} with URL of the model result, or {@code null}
+     *         if the model result hasn't been downloaded.
+     */
+    public String getModelResultUrl() {
+        return modelResultUrl;
+    }
+
     /**
      * Handles the status updates from either {@value #startDateDownloader} or
      * {@value #modelResultDownloader}. It uses current settings of
@@ -586,14 +860,48 @@ public abstract class AbstractForecastDataDownloader extends AbstractStatusRepor
 //#enddebug
             throw new IllegalArgumentException("Cannot update status with unknown source!");
         }
-        int currentProgress = (int) ((double) chunkSize / 100d
-                * (double) status.getProgress()) + chunkStart;
-        if (currentProgress > progress) {
-            setProgress(currentProgress);
-        }
+        advanceProgress(status.getProgress());
         if (status.equals(Status.CANCELLED) || status.equals(Status.FINISHED)) {
             source.removeListener(this);
         }
         downloaderStatus = status;
     }
+
+    /**
+     * Handles the progress updates from either {@value #startDateDownloader} or
+     * {@value #modelResultDownloader}.
+     * @param source the {@link StatusReporter} that triggered the event.
+     * @param progress the {@code int} with progress of the {@code source}.
+     * @throws NullPointerException if {@code source} is {@code null}.
+     * @throws IllegalArgumentException if source is neither {@value #startDateDownloader}
+     *         nor {@value #modelResultDownloader}.
+     */
+    public void progressUpdate(StatusReporter source, int progress) {
+        if (source == null) {
+//#mdebug
+            log.error(this + "Cannot update progress of null source!");
+//#enddebug
+            throw new NullPointerException("Cannot update progress if source is null!");
+        }
+        if (source != startDateDownloader && source != modelResultDownloader) {
+//#mdebug
+            log.error("Cannot update progress with unknown source = " + source);
+//#enddebug
+            throw new IllegalArgumentException("Cannot update progress with unknown source!");
+        }
+        advanceProgress(progress);
+    }
+
+    /**
+     * Advances the progress of this task by the part of the current chunk
+     * that the downloader has done.
+     * @param downloaderProgress the {@code int} with progress of the downloader.
+     */
+    private void advanceProgress(int downloaderProgress) {
+        int currentProgress = (int) ((double) chunkSize / 100d
+                * (double) downloaderProgress) + chunkStart;
+        if (currentProgress > progress) {
+            setProgress(currentProgress);
+        }
+    }
 }
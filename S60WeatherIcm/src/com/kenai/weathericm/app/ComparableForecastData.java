@@ -80,6 +80,57 @@ public class ComparableForecastData extends ForecastData {
         decorated.setModelResult(modelResult);
     }
 
+    /**
+     * @param modelResult the {@code byte[]} array for forecast model result to set.
+     * @param checksum the {@code long} with checksum of the {@code modelResult}.
+     */
+    public void setModelResult(byte[] modelResult, long checksum) {
+        decorated.setModelResult(modelResult, checksum);
+    }
+
+    /**
+     * @return the {@code long} with checksum of the model result.
+     */
+    public long getChecksum() {
+        return decorated.getChecksum();
+    }
+
+    /**
+     * @param length the {@code int} with length of the model result.
+     * @param checksum the {@code long} with checksum of the model result.
+     */
+    public void setModelResultHeader(int length, long checksum) {
+        decorated.setModelResultHeader(length, checksum);
+    }
+
+    /**
+     * Drops the model result of the decorated instance.
+     */
+    public void unloadModelResult() {
+        decorated.unloadModelResult();
+    }
+
+    /**
+     * @return {@code true} if there is a model result, loaded or not.
+     */
+    public boolean hasModelResult() {
+        return decorated.hasModelResult();
+    }
+
+    /**
+     * @return {@code true} if the model result is held in the memory.
+     */
+    public boolean isModelResultLoaded() {
+        return decorated.isModelResultLoaded();
+    }
+
+    /**
+     * @return the {@code int} with length of the model result, loaded or not.
+     */
+    public int getModelResultLength() {
+        return decorated.getModelResultLength();
+    }
+
     /**
      * Converts this instance into {@link String}.
      * @return the {@link String} representing this instance.
@@ -0,0 +1,205 @@
+/*
+ *  Copyright (C) 2010 Przemek Kryger
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.kenai.weathericm.app;
+
+import com.kenai.weathericm.app.transport.ConnectorTransport;
+import java.util.Hashtable;
+//#mdebug
+import net.sf.microlog.core.Logger;
+import net.sf.microlog.core.LoggerFactory;
+//#enddebug
+
+/**
+ * This is the registry of {@link ComponentFactory}s for the implementations
+ * named in {@code ForecastDataDownloaderFactory.properties}. The implementations
+ * shipped with the application are created without reflection. Any other
+ * implementation is looked up with {@link Class#forName(String)} only once
+ * and the found {@link Class} is used to create its instances.
+ * @author Przemek Kryger
+ */
+public class ComponentRegistry {
+
+//#mdebug
+    /**
+     * The logger for the class.
+     */
+    private final static Logger log = LoggerFactory.getLogger(ComponentRegistry.class);
+//#enddebug
+    /**
+     * The singleton instance.
+     */
+    private final static ComponentRegistry instance = new ComponentRegistry();
+    /**
+     * The {@link ComponentFactory}s keyed by names of implementations.
+     */
+    private final Hashtable factories = new Hashtable();
+
+    /**
+     * Private constructor for singleton. Registers factories for the
+     * implementations shipped with the application.
+     */
+    private ComponentRegistry() {
+        register("com.kenai.weathericm.app.ForecastDataDownloaderCancellableTask",
+                new ComponentFactory() {
+
+                    public Object create() {
+                        return new ForecastDataDownloaderCancellableTask();
+                    }
+                });
+        register("com.kenai.weathericm.app.ConnectorStartDateDownloader",
+                new ComponentFactory() {
+
+                    public Object create() {
+                        return new ConnectorStartDateDownloader();
+                    }
+                });
+        register("com.kenai.weathericm.app.ConnectorModelResultDownloader",
+                new ComponentFactory() {
+
+                    public Object create() {
+                        return new ConnectorModelResultDownloader();
+                    }
+                });
+        register("com.kenai.weathericm.app.ConnectorLegendDownloader",
+                new ComponentFactory() {
+
+                    public Object create() {
+                        return new ConnectorLegendDownloader();
+                    }
+                });
+        register("com.kenai.weathericm.app.ForcedModelDownloadChecker",
+                new ComponentFactory() {
+
+                    public Object create() {
+                        return new ForcedModelDownloadChecker();
+                    }
+                });
+        register("com.kenai.weathericm.app.SmartModelDownloadChecker",
+                new ComponentFactory() {
+
+                    public Object create() {
+                        return new SmartModelDownloadChecker();
+                    }
+                });
+        register("com.kenai.weathericm.app.transport.ConnectorTransport",
+                new ComponentFactory() {
+
+                    public Object create() {
+                        return new ConnectorTransport();
+                    }
+                });
+//#mdebug
+        log.info("Created component registry");
+//#enddebug
+    }
+
+    /**
+     * Getter for the {@link ComponentRegistry} singleton instance.
+     * @return the singleton instance.
+     */
+    public static ComponentRegistry getInstance() {
+        return instance;
+    }
+
+    /**
+     * Registers the {@code factory} for the {@code implementation}. It replaces
+     * the factory registered before.
+     * @param implementation the {@link String} with fully qualified class name.
+     * @param factory the {@link ComponentFactory} that creates instances of the
+     *        {@code implementation}.
+     * @throws NullPointerException if either {@code implementation} or
+     *         {@code factory} is {@code null}.
+     */
+    public synchronized void register(String implementation, ComponentFactory factory) {
+        if (implementation == null || factory == null) {
+//#mdebug
+            log.error("Cannot register factory = " + factory + " for " + implementation);
+//#enddebug
+            throw new NullPointerException("Cannot register null implementation or factory!");
+        }
+        factories.put(implementation, factory);
+    }
+
+    /**
+     * Gets the factory for the {@code implementation}. When there is no
+     * factory registered, the class is looked up and the factory that uses it
+     * is registered for the next calls.
+     * @param implementation the {@link String} with fully qualified class name.
+     * @return the {@link ComponentFactory} or {@code null} if the
+     *         {@code implementation} is {@code null} or cannot be found.
+     */
+    public synchronized ComponentFactory getFactory(String implementation) {
+        if (implementation == null) {
+            return null;
+        }
+        ComponentFactory factory = (ComponentFactory) factories.get(implementation);
+        if (factory == null) {
+            try {
+                factory = new ClassFactory(Class.forName(implementation));
+                factories.put(implementation, factory);
+//#mdebug
+                log.info("Resolved class for " + implementation);
+//#enddebug
+            } catch (ClassNotFoundException ex) {
+//#mdebug
+                log.fatal("Cannot find a class for " + implementation, ex);
+//#enddebug
+            }
+        }
+        return factory;
+    }
+
+    /**
+     * This is the {@link ComponentFactory} for the implementations that are
+     * not registered. It creates instances of the resolved {@link Class}.
+     */
+    private static class ClassFactory implements ComponentFactory {
+
+        /**
+         * The class of created instances.
+         */
+        private final Class type;
+
+        /**
+         * Creates the factory of {@code type} instances.
+         * @param type the {@link Class} of created instances.
+         */
+        public ClassFactory(Class type) {
+            this.type = type;
+        }
+
+        /**
+         * Creates the new instance of the {@value #type}.
+         * @return the new instance or {@code null} if it cannot be created.
+         */
+        public Object create() {
+            try {
+                return type.newInstance();
+            } catch (IllegalAccessException ex) {
+//#mdebug
+                log.fatal("Cannot acces class for " + type.getName(), ex);
+//#enddebug
+            } catch (InstantiationException ex) {
+//#mdebug
+                log.fatal("Cannot instantiate " + type.getName(), ex);
+//#enddebug
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ *  Copyright (C) 2010 Przemek Kryger
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.kenai.weathericm.app;
+
+/**
+ * This downloader gets the legend of meteorograms. It works like
+ * {@link ConnectorModelResultDownloader}, but the legend is small, so it's
+ * not resumed from a checkpoint, and it's recorded by {@link DownloadTelemetry}
+ * apart from model results.
+ * @author Przemek Kryger
+ */
+public class ConnectorLegendDownloader extends ConnectorModelResultDownloader {
+
+    /**
+     * The legend is downloaded again rather than resumed.
+     * @return {@code false}.
+     */
+    protected boolean isResumable() {
+        return false;
+    }
+
+    /**
+     * Legends are recorded by {@link DownloadTelemetry} as
+     * {@value DownloadTelemetry#LEGEND_KIND}.
+     * @return the {@link String} with kind of downloads.
+     */
+    protected String getTelemetryKind() {
+        return DownloadTelemetry.LEGEND_KIND;
+    }
+}
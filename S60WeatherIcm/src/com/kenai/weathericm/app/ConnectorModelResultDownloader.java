@@ -17,35 +17,25 @@
  */
 package com.kenai.weathericm.app;
 
-import com.kenai.weathericm.util.AbstractStatusReporter;
-import com.kenai.weathericm.util.Status;
-import java.io.DataInputStream;
-import java.io.IOException;
-import java.util.Vector;
 import javax.microedition.io.Connector;
 import javax.microedition.io.HttpConnection;
-//#mdebug
-import net.sf.microlog.core.Logger;
-import net.sf.microlog.core.LoggerFactory;
-//#enddebug
 
 /**
  * This downloader uses {@link Connector} and {@link HttpConnection} stuff to get
  * model result from the given URL.
  * @author Przemek Kryger
  */
-public class ConnectorModelResultDownloader extends AbstractStatusReporter implements ModelResultDownloader {
+public class ConnectorModelResultDownloader extends AbstractConnectorDownloader implements ModelResultDownloader {
 
-//#mdebug
     /**
-     * The logger for the class
+     * Image is 19800(UM) or 23500(COAMPS) bytes by default. It is used until
+     * {@link DownloadTelemetry} learns the length.
      */
-    private final static Logger log = LoggerFactory.getLogger(ConnectorModelResultDownloader.class);
-//#enddebug
+    private final static int DEFAULT_LENGTH = 23500;
     /**
-     * Indicates if the download shall be canceled.
+     * The data received by the last download.
      */
-    private boolean cancelled = false;
+    private byte[] modelResult = null;
 
     /**
      * Downloads the data from the given {@code url}.
@@ -53,116 +43,79 @@ public class ConnectorModelResultDownloader extends AbstractStatusReporter imple
      * @return the downloaded data
      */
     public byte[] downloadModelResult(String url) {
-        HttpConnection connection = null;
-        DataInputStream dis = null;
-        byte[] retValue = null;
-        try {
-            if (cancelled) {
-                throw new InterruptedException();
-            }
-            fireStatusUpdate(Status.STARTED);
-            connection = (HttpConnection) Connector.open(url);
-            dis = connection.openDataInputStream();
-            if (cancelled) {
-                throw new InterruptedException();
-            }
-            // Image is 19800(UM) or 23500(COAMPS) by default
-            long totalBytes = connection.getLength();
-            if (totalBytes == -1) {
-                totalBytes = 23500L;
-//#mdebug
-                log.debug("Setting totalBytes to default = " + totalBytes);
-//#enddebug
-            }
-            long percentChunk = totalBytes / 100L;
-            long chunkCounter = 0;
-            int percent = 0;
-            int readByte;
-            Vector imageBuffer = new Vector((int) totalBytes);
-            while ((readByte = dis.read()) != -1) {
-                imageBuffer.addElement(new Byte((byte) readByte));
-                if (++chunkCounter >= percentChunk && percent < 100) {
-                    chunkCounter = 0;
-                    reportProgress(++percent);
-                }
-                if (cancelled) {
-                    throw new InterruptedException();
-                }
-            }
-//#mdebug
-            if (chunkCounter >= percentChunk) {
-                log.warn("Last chunkCounter was bigger than percentChunk!"
-                        + " chunkCounter = " + chunkCounter
-                        + ", percentChunk = " + percentChunk);
-            }
-//#enddebug
-            retValue = new byte[imageBuffer.size()];
-//#mdebug
-            log.info(this + ": Parsing received image data...");
-//#enddebug
-            for (int i = 0; i < retValue.length; i++) {
-                retValue[i] = ((Byte) imageBuffer.elementAt(i)).byteValue();
-            }
-            fireStatusUpdate(Status.FINISHED);
-        } catch (InterruptedException ex) {
-//#mdebug
-            log.info(this + " has been interrupted!");
-//#enddebug
-            fireStatusUpdate(Status.CANCELLED);
-        } catch (IOException ex) {
-//#mdebug
-            log.warn(this + " has an exception!", ex);
-//#enddebug
-            fireStatusUpdate(Status.CANCELLED);
-        } catch (IllegalArgumentException ex) {
-//#mdebug
-            log.warn(this + " has an exception!", ex);
-//#enddebug
-            fireStatusUpdate(Status.CANCELLED);
-        } catch (SecurityException ex) {
-//#mdebug
-            log.warn(this + " has an exception!", ex);
-//#enddebug
-            fireStatusUpdate(Status.CANCELLED);
-        } finally {
-            if (dis != null) {
-                try {
-                    dis.close();
-                } catch (IOException ex) {
-//#mdebug
-                    log.debug("Error occurred while closing stream: ", ex);
-//#enddebug
-                }
-            }
-            if (connection != null) {
-                try {
-                    connection.close();
-                } catch (IOException ex) {
-//#mdebug
-                    log.debug("Error occurred while chlosing connection: ", ex);
-//#enddebug
-                }
-            }
-        }
+        return downloadModelResult(url, null);
+    }
+
+    /**
+     * Downloads the data from the given {@code url} unless it hasn't been
+     * modified since the last download with the same {@code validatorKey}.
+     * An interrupted download is resumed from the checkpoint stored for the
+     * {@code url}.
+     * @param url the {@link String} with URL to download data from.
+     * @param validatorKey the {@link String} with the key of validators or {@code null}.
+     * @return the downloaded data or {@code null} if it hasn't been modified.
+     */
+    public byte[] downloadModelResult(String url, String validatorKey) {
+        return downloadModelResult(url, validatorKey, true);
+    }
+
+    /**
+     * Downloads the data from the given {@code url}, conditionally only if
+     * {@code revalidate} is {@code true}. The validators received with the
+     * data are stored under {@code validatorKey}.
+     * An interrupted download is resumed from the checkpoint stored for the
+     * {@code url}.
+     * @param url the {@link String} with URL to download data from.
+     * @param validatorKey the {@link String} with the key of validators or {@code null}.
+     * @param revalidate tells if the request shall be conditional.
+     * @return the downloaded data or {@code null} if it hasn't been modified.
+     */
+    public byte[] downloadModelResult(String url, String validatorKey, boolean revalidate) {
+        modelResult = null;
+        download(url, DEFAULT_LENGTH, validatorKey, revalidate);
+        byte[] retValue = modelResult;
+        modelResult = null;
         return retValue;
     }
 
     /**
-     * Aborts the download operation.
-     * @return {@code true} if canceled succeed, {@code false} otherwise.
+     * The model result is resumed from a checkpoint, as all of it is needed.
+     * @return {@code true}.
      */
-    public synchronized boolean cancel() {
-        cancelled = true;
+    protected boolean isResumable() {
         return true;
     }
 
     /**
-     * Reports the passed in {@code progress} to all listeners.
-     * @param progress the {@code int} to be reported.
+     * Model results are recorded by {@link DownloadTelemetry} as
+     * {@value DownloadTelemetry#MODEL_RESULT_KIND}.
+     * @return the {@link String} with kind of downloads.
+     */
+    protected String getTelemetryKind() {
+        return DownloadTelemetry.MODEL_RESULT_KIND;
+    }
+
+    /**
+     * Forgets the model result of the last download.
      */
-    protected void reportProgress(int progress) {
-        Status status = new Status();
-        status.setProgress(progress);
-        fireStatusUpdate(status);
+    protected synchronized void reset() {
+        super.reset();
+        modelResult = null;
+    }
+
+    /**
+     * Keeps the received data as the model result. The {@code data} is copied
+     * only when it cannot be kept or it's size is not exact.
+     * @param data the {@code byte[]} with downloaded data.
+     * @param length the {@code int} with number of valid bytes in {@code data}.
+     * @param owned indicates if the {@code data} may be kept.
+     */
+    protected void dataReceived(byte[] data, int length, boolean owned) {
+        if (owned && data.length == length) {
+            modelResult = data;
+        } else {
+            modelResult = new byte[length];
+            System.arraycopy(data, 0, modelResult, 0, length);
+        }
     }
 }
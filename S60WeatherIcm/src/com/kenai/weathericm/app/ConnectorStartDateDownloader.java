@@ -17,10 +17,7 @@
  */
 package com.kenai.weathericm.app;
 
-import com.kenai.weathericm.util.AbstractStatusReporter;
-import com.kenai.weathericm.util.Status;
-import java.io.DataInputStream;
-import java.io.IOException;
+import com.kenai.weathericm.domain.HttpValidator;
 import javax.microedition.io.Connector;
 import javax.microedition.io.HttpConnection;
 //#mdebug
@@ -33,7 +30,7 @@ import net.sf.microlog.core.LoggerFactory;
  * start date from the given URL.
  * @author Przemek Kryger
  */
-public class ConnectorStartDateDownloader extends AbstractStatusReporter implements StartDateDownloader {
+public class ConnectorStartDateDownloader extends AbstractConnectorDownloader implements StartDateDownloader {
 
 //#mdebug
     /**
@@ -42,121 +39,112 @@ public class ConnectorStartDateDownloader extends AbstractStatusReporter impleme
     private final static Logger log = LoggerFactory.getLogger(ConnectorStartDateDownloader.class);
 //#enddebug
     /**
-     * Indicates if the download shall be canceled.
+     * Start data is 2170(UM) or 2310(COAMPS) bytes by default. It is used until
+     * {@link DownloadTelemetry} learns how much of it is read.
      */
-    private boolean cancelled = false;
+    private final static int DEFAULT_LENGTH = 2310;
+    /**
+     * The matcher used by the current download.
+     */
+    private StartDateMatcher matcher = null;
+    /**
+     * The start date remembered with the validators, when the start data
+     * hasn't been modified.
+     */
+    private String notModifiedStartDate = null;
 
     /**
-     * Downloads the data from the given {@code url}.
+     * Downloads the data from the given {@code url} until the {@code matcher}
+     * captures the start date. The connection is closed as soon as it happens.
+     * The start data is revalidated with validators stored for the {@code url}.
      * @param url the {@link String} with URL to download data from.
-     * @return the downloaded data
+     * @param matcher the {@link StartDateMatcher} to look for the start date.
+     * @return the {@link String} with start date or {@code null} if it
+     *         hasn't been found.
+     * @throws NullPointerException if the {@code matcher} is {@code null}.
      */
-    public String downloadStartDate(String url) {
-        HttpConnection connection = null;
-        DataInputStream dis = null;
-        String retValue = null;
-        try {
-            if (cancelled) {
-                throw new InterruptedException();
-            }
-            fireStatusUpdate(Status.STARTED);
-            connection = (HttpConnection) Connector.open(url);
-            dis = connection.openDataInputStream();
-            if (cancelled) {
-                throw new InterruptedException();
-            }
-            // Start data is 2170(UM) or 2310(COAMPS) bytes (by default)
-            long totalBytes = connection.getLength();
-            if (totalBytes == -1) {
-                totalBytes = 2310L;
-            }
-//#mdebug
-            log.debug("Setting totalBytes to default = " + totalBytes);
-//#enddebug
-            // Let's leave one percent for parsing.
-            long percentChunk = totalBytes / 100L;
-            long chunkCounter = 0;
-            int readByte;
-            int percent = 0;
-            StringBuffer startDateBuffer = new StringBuffer((int) totalBytes);
-            while ((readByte = dis.read()) != -1) {
-                startDateBuffer.append((char) readByte);
-                if (++chunkCounter >= percentChunk && percent < 100) {
-                    chunkCounter = 0;
-                    reportProgress(++percent);
-                }
-                if (cancelled) {
-                    throw new InterruptedException();
-                }
-            }
-//#mdebug
-            if (chunkCounter >= percentChunk) {
-                log.warn("Last chunkCounter was bigger than percentChunk!"
-                        + " chunkCounter = " + chunkCounter
-                        + ", percentChunk = " + percentChunk);
-            }
-//#enddebug
-            retValue = startDateBuffer.toString();
-            fireStatusUpdate(Status.FINISHED);
-        } catch (InterruptedException ex) {
-//#mdebug
-            log.info(this + " has been interrupted!");
-//#enddebug
-            fireStatusUpdate(Status.CANCELLED);
-        } catch (IOException ex) {
+    public String downloadStartDate(String url, StartDateMatcher matcher) {
+        if (matcher == null) {
 //#mdebug
-            log.warn(this + " has an exception!", ex);
+            log.error("Cannot download start date with null matcher!");
 //#enddebug
-            fireStatusUpdate(Status.CANCELLED);
-        } catch (IllegalArgumentException ex) {
-//#mdebug
-            log.warn(this + " has an exception!", ex);
-//#enddebug
-            fireStatusUpdate(Status.CANCELLED);
-        } catch (SecurityException ex) {
-//#mdebug
-            log.warn(this + " has an exception!", ex);
-//#enddebug
-            fireStatusUpdate(Status.CANCELLED);
+            throw new NullPointerException("Cannot download start date without matcher!");
+        }
+        this.matcher = matcher;
+        notModifiedStartDate = null;
+        try {
+            download(url, DEFAULT_LENGTH, url);
         } finally {
-            if (dis != null) {
-                try {
-                    dis.close();
-                } catch (IOException ex) {
-//#mdebug
-                    log.debug("Error occurred while closing stream: ", ex);
-//#enddebug
-                }
-            }
-            if (connection != null) {
-                try {
-                    connection.close();
-                } catch (IOException ex) {
-//#mdebug
-                    log.debug("Error occurred while chlosing connection: ", ex);
-//#enddebug
-                }
-            }
+            this.matcher = null;
         }
-        return retValue;
+        return isNotModified() ? notModifiedStartDate : matcher.getStartDate();
     }
 
     /**
-     * Aborts the download operation.
-     * @return {@code true} if canceled succeed, {@code false} otherwise.
+     * Resets the {@link #matcher}, so the fields captured partially by a failed
+     * attempt are not completed with the data of the next one.
      */
-    public synchronized boolean cancel() {
-        cancelled = true;
+    protected void attemptStarted() {
+        matcher.reset();
+    }
+
+    /**
+     * Takes the start date remembered with the {@code validator}.
+     * @param validator the {@link HttpValidator} sent with the request.
+     */
+    protected void notModified(HttpValidator validator) {
+        notModifiedStartDate = validator.getValue();
+    }
+
+    /**
+     * Remembers the captured start date with the {@code validator}, so it can
+     * be used when the start data hasn't been modified.
+     * @param validator the {@link HttpValidator} to be stored.
+     * @return {@code true} if the start date has been captured, {@code false} otherwise.
+     */
+    protected boolean storeValidator(HttpValidator validator) {
+        if (!matcher.isComplete()) {
+            return false;
+        }
+        validator.setValue(matcher.getStartDate());
         return true;
     }
 
     /**
-     * Reports the passed in {@code progress} to all listeners.
-     * @param progress the {@code int} to be reported.
+     * Passes the received block to the {@link #matcher}.
+     * @param data the {@code byte[]} with downloaded data.
+     * @param offset the {@code int} index of the first byte of the block.
+     * @param length the {@code int} with number of bytes in the block.
+     * @return {@code true} if the start date has been captured.
+     */
+    protected boolean blockReceived(byte[] data, int offset, int length) {
+        return matcher.feed(data, offset, length);
+    }
+
+    /**
+     * Start data is recorded by {@link DownloadTelemetry} as
+     * {@value DownloadTelemetry#START_DATE_KIND}.
+     * @return the {@link String} with kind of downloads.
+     */
+    protected String getTelemetryKind() {
+        return DownloadTelemetry.START_DATE_KIND;
+    }
+
+    /**
+     * Forgets the matcher and the start date of the last download.
+     */
+    protected synchronized void reset() {
+        super.reset();
+        matcher = null;
+        notModifiedStartDate = null;
+    }
+
+    /**
+     * Does nothing, as the start date is captured while the data arrives.
+     * @param data the {@code byte[]} with downloaded data.
+     * @param length the {@code int} with number of valid bytes in {@code data}.
+     * @param owned indicates if the {@code data} may be kept.
      */
-    protected void reportProgress(int progress) {
-        Status status = new Status();
-        status.setProgress(progress);
-        fireStatusUpdate(status);
+    protected void dataReceived(byte[] data, int length, boolean owned) {
     }
 }
@@ -0,0 +1,71 @@
+/*
+ *  Copyright (C) 2010 Przemek Kryger
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.kenai.weathericm.app;
+
+/**
+ * This is a simple enumeration of the ways a download can end.
+ * @author Przemek Kryger
+ */
+public class DownloadOutcome {
+
+    public final static int SUCCEEDED_VALUE = 0;
+    public final static DownloadOutcome SUCCEEDED = new DownloadOutcome("Succeeded", SUCCEEDED_VALUE);
+    public final static int TIMED_OUT_VALUE = 1;
+    public final static DownloadOutcome TIMED_OUT = new DownloadOutcome("Timed out", TIMED_OUT_VALUE);
+    public final static int HTTP_ERROR_VALUE = 2;
+    public final static DownloadOutcome HTTP_ERROR = new DownloadOutcome("HTTP error", HTTP_ERROR_VALUE);
+    public final static int IO_ERROR_VALUE = 3;
+    public final static DownloadOutcome IO_ERROR = new DownloadOutcome("I/O error", IO_ERROR_VALUE);
+    public final static int CANCELLED_VALUE = 4;
+    public final static DownloadOutcome CANCELLED = new DownloadOutcome("Cancelled", CANCELLED_VALUE);
+
+    /**
+     * Creates a new {@link DownloadOutcome} with {@code displayString}
+     * as a presentation name.
+     * @param displayString the {@link String} to be used as a presentation name.
+     */
+    private DownloadOutcome(String displayString, int value) {
+        this.displayString = displayString;
+        this.value = value;
+    }
+    /**
+     * This outcome display string used to present it by {@value #toString()}
+     */
+    private String displayString;
+    /**
+     * The instance value
+     */
+    private int value;
+
+    /**
+     * @return this instance {@value #value}.
+     */
+    public int getValue() {
+        return value;
+    }
+
+    /**
+     * Gives this {@link DownloadOutcome} display string.
+     * @return the {@link String} to be used as a presentation name.
+     */
+    public String toString() {
+        StringBuffer buffer = new StringBuffer(displayString);
+        buffer.append(" [").append(value).append("]");
+        return buffer.toString();
+    }
+}
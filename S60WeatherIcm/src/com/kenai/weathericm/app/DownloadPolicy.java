@@ -0,0 +1,215 @@
+/*
+ *  Copyright (C) 2010 Przemek Kryger
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.kenai.weathericm.app;
+
+import java.util.Random;
+//#mdebug
+import net.sf.microlog.core.Logger;
+import net.sf.microlog.core.LoggerFactory;
+//#enddebug
+
+/**
+ * This holds the deadlines and the retry settings for downloads done by
+ * {@link AbstractConnectorDownloader}. All the times are in milliseconds and
+ * a timeout of {@code 0} means there is no deadline for the phase. The failed
+ * attempts are retried after a back off that doubles with each attempt, up to
+ * the {@value #maxBackoff}. The back off is jittered, so downloads that failed
+ * together don't retry together.
+ * @author Przemek Kryger
+ */
+public class DownloadPolicy {
+
+//#mdebug
+    /**
+     * The logger for the class.
+     */
+    private final static Logger log = LoggerFactory.getLogger(DownloadPolicy.class);
+//#enddebug
+    /**
+     * The default time to get the response headers.
+     */
+    public final static long DEFAULT_CONNECT_TIMEOUT = 30000L;
+    /**
+     * The default time to get the first byte of data once the response has arrived.
+     */
+    public final static long DEFAULT_FIRST_BYTE_TIMEOUT = 20000L;
+    /**
+     * The default time of a whole attempt.
+     */
+    public final static long DEFAULT_TOTAL_TIMEOUT = 120000L;
+    /**
+     * The default number of attempts.
+     */
+    public final static int DEFAULT_MAX_ATTEMPTS = 3;
+    /**
+     * The default back off after the first failed attempt.
+     */
+    public final static long DEFAULT_INITIAL_BACKOFF = 2000L;
+    /**
+     * The default maximum back off.
+     */
+    public final static long DEFAULT_MAX_BACKOFF = 16000L;
+    /**
+     * The time to get the response headers.
+     */
+    private long connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+    /**
+     * The time to get the first byte of data once the response has arrived.
+     */
+    private long firstByteTimeout = DEFAULT_FIRST_BYTE_TIMEOUT;
+    /**
+     * The time of a whole attempt.
+     */
+    private long totalTimeout = DEFAULT_TOTAL_TIMEOUT;
+    /**
+     * The number of attempts.
+     */
+    private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+    /**
+     * The back off after the first failed attempt.
+     */
+    private long initialBackoff = DEFAULT_INITIAL_BACKOFF;
+    /**
+     * The maximum back off.
+     */
+    private long maxBackoff = DEFAULT_MAX_BACKOFF;
+    /**
+     * The source of the jitter.
+     */
+    private final Random random = new Random();
+
+    /**
+     * Gets the back off before the next attempt. It is a random value between
+     * half and whole of the initial back off doubled for each failed
+     * attempt, but not more than the maximum back off.
+     * @param failedAttempts the {@code int} with number of failed attempts.
+     * @return the {@code long} with back off in milliseconds.
+     * @throws IllegalArgumentException if {@code failedAttempts} is not positive.
+     */
+    public long getBackoff(int failedAttempts) {
+        if (failedAttempts <= 0) {
+//#mdebug
+            log.error("Cannot back off after " + failedAttempts + " attempts");
+//#enddebug
+            throw new IllegalArgumentException("Cannot back off after: " + failedAttempts);
+        }
+        long backoff = initialBackoff;
+        for (int i = 1; i < failedAttempts && backoff < maxBackoff; i++) {
+            backoff *= 2;
+        }
+        if (backoff > maxBackoff) {
+            backoff = maxBackoff;
+        }
+        long half = backoff / 2;
+        if (half == 0) {
+            return backoff;
+        }
+        return backoff - half + (random.nextLong() & Long.MAX_VALUE) % (half + 1);
+    }
+
+    /**
+     * @return the connectTimeout
+     */
+    public long getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    /**
+     * @param connectTimeout the connectTimeout to set
+     */
+    public void setConnectTimeout(long connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    /**
+     * @return the firstByteTimeout
+     */
+    public long getFirstByteTimeout() {
+        return firstByteTimeout;
+    }
+
+    /**
+     * @param firstByteTimeout the firstByteTimeout to set
+     */
+    public void setFirstByteTimeout(long firstByteTimeout) {
+        this.firstByteTimeout = firstByteTimeout;
+    }
+
+    /**
+     * @return the totalTimeout
+     */
+    public long getTotalTimeout() {
+        return totalTimeout;
+    }
+
+    /**
+     * @param totalTimeout the totalTimeout to set
+     */
+    public void setTotalTimeout(long totalTimeout) {
+        this.totalTimeout = totalTimeout;
+    }
+
+    /**
+     * @return the maxAttempts
+     */
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * @param maxAttempts the maxAttempts to set
+     * @throws IllegalArgumentException if {@code maxAttempts} is not positive.
+     */
+    public void setMaxAttempts(int maxAttempts) {
+        if (maxAttempts <= 0) {
+//#mdebug
+            log.error("Cannot set max attempts to: " + maxAttempts);
+//#enddebug
+            throw new IllegalArgumentException("Cannot set max attempts to: " + maxAttempts);
+        }
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * @return the initialBackoff
+     */
+    public long getInitialBackoff() {
+        return initialBackoff;
+    }
+
+    /**
+     * @param initialBackoff the initialBackoff to set
+     */
+    public void setInitialBackoff(long initialBackoff) {
+        this.initialBackoff = initialBackoff;
+    }
+
+    /**
+     * @return the maxBackoff
+     */
+    public long getMaxBackoff() {
+        return maxBackoff;
+    }
+
+    /**
+     * @param maxBackoff the maxBackoff to set
+     */
+    public void setMaxBackoff(long maxBackoff) {
+        this.maxBackoff = maxBackoff;
+    }
+}
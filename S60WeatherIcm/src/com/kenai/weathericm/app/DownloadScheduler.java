@@ -0,0 +1,240 @@
+/*
+ *  Copyright (C) 2010 Przemek Kryger
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.kenai.weathericm.app;
+
+import java.util.Hashtable;
+//#mdebug
+import net.sf.microlog.core.Logger;
+import net.sf.microlog.core.LoggerFactory;
+//#enddebug
+
+/**
+ * This gives the downloads the user waits for precedence over the background
+ * ones. A thread that runs background downloads enters the background with
+ * {@link #enterBackground()} before each of them. While there is a foreground
+ * download, the background ones wait at their chunk boundaries in
+ * {@link #awaitForeground()} for at most {@value #MAX_PAUSE} ms, and the
+ * transfers that are already running are throttled in {@link #throttle()} to
+ * one block per {@value #THROTTLE_DELAY} ms. So a foreground download shares
+ * the network with at most one throttled transfer per background worker. The
+ * time the last foreground download took is kept in
+ * {@link #getLastForegroundTime()}.
+ * @author Przemek Kryger
+ */
+public class DownloadScheduler {
+
+    /**
+     * The maximum time in milliseconds a background download waits at a chunk
+     * boundary for the foreground downloads to end.
+     */
+    public final static long MAX_PAUSE = 60000L;
+    /**
+     * The delay in milliseconds of a background transfer after each block
+     * while there is a foreground download.
+     */
+    public final static long THROTTLE_DELAY = 100L;
+//#mdebug
+    /**
+     * The logger for the class.
+     */
+    private final static Logger log = LoggerFactory.getLogger(DownloadScheduler.class);
+//#enddebug
+    /**
+     * The {@link DownloadScheduler} singleton instance.
+     */
+    private static DownloadScheduler instance = null;
+    /**
+     * The {@link Thread}s that run background downloads mapped to
+     * {@link Boolean#TRUE}, or to {@link Boolean#FALSE} when the download
+     * they run has been promoted to the foreground.
+     */
+    private final Hashtable backgroundThreads = new Hashtable();
+    /**
+     * The number of running foreground downloads.
+     */
+    private int foregroundCount = 0;
+    /**
+     * The time in milliseconds the last foreground download took, or
+     * {@code -1} if there was none.
+     */
+    private long lastForegroundTime = -1L;
+
+    /**
+     * Private constructor for singleton safety.
+     */
+    private DownloadScheduler() {
+    }
+
+    /**
+     * Getter for a singleton instance.
+     * @return the {@link DownloadScheduler} instance.
+     */
+    public static synchronized DownloadScheduler getInstance() {
+        if (instance == null) {
+            instance = new DownloadScheduler();
+        }
+        return instance;
+    }
+
+    /**
+     * Marks the current thread as the one that runs a background download.
+     * It's called before each of the downloads, so the promotion of the
+     * previous one doesn't last.
+     */
+    public synchronized void enterBackground() {
+        backgroundThreads.put(Thread.currentThread(), Boolean.TRUE);
+    }
+
+    /**
+     * Marks the current thread as the one that doesn't run background
+     * downloads anymore.
+     */
+    public synchronized void leaveBackground() {
+        backgroundThreads.remove(Thread.currentThread());
+        notifyAll();
+    }
+
+    /**
+     * Checks if the current thread runs a background download that hasn't
+     * been promoted.
+     * @return {@code true} if the current download is a background one.
+     */
+    public boolean isBackground() {
+        return isBackground(Thread.currentThread());
+    }
+
+    /**
+     * Checks if the {@code thread} runs a background download that hasn't
+     * been promoted.
+     * @param thread the {@link Thread} to check.
+     * @return {@code true} if the download is a background one.
+     */
+    private synchronized boolean isBackground(Thread thread) {
+        return Boolean.TRUE.equals(backgroundThreads.get(thread));
+    }
+
+    /**
+     * Promotes the download run by the {@code thread} to the foreground, since
+     * the user waits for it. It has no effect if the {@code thread} doesn't
+     * run a background download.
+     * @param thread the {@link Thread} that runs the download.
+     * @throws NullPointerException if the {@code thread} is {@code null}.
+     */
+    public synchronized void promote(Thread thread) {
+        if (thread == null) {
+//#mdebug
+            log.error("Cannot promote null thread!");
+//#enddebug
+            throw new NullPointerException("Cannot promote null thread!");
+        }
+        if (backgroundThreads.containsKey(thread)) {
+//#mdebug
+            log.info("Promoting download of " + thread + " to the foreground");
+//#enddebug
+            backgroundThreads.put(thread, Boolean.FALSE);
+            notifyAll();
+        }
+    }
+
+    /**
+     * Registers a foreground download. Until it ends, the background
+     * downloads give way to it.
+     * @return the {@code long} with time the download has started, to be
+     *         passed to {@link #endForeground(long)}.
+     */
+    public synchronized long beginForeground() {
+        foregroundCount++;
+//#mdebug
+        log.debug("Foreground downloads: " + foregroundCount);
+//#enddebug
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * Unregisters a foreground download and wakes the background downloads
+     * up if it's the last one.
+     * @param started the {@code long} returned by {@link #beginForeground()}.
+     * @throws IllegalStateException if there is no foreground download.
+     */
+    public synchronized void endForeground(long started) {
+        if (foregroundCount == 0) {
+//#mdebug
+            log.error("Cannot end foreground download, there is none!");
+//#enddebug
+            throw new IllegalStateException("There is no foreground download!");
+        }
+        foregroundCount--;
+        lastForegroundTime = System.currentTimeMillis() - started;
+//#mdebug
+        log.info("Foreground download took " + lastForegroundTime + " ms, "
+                + foregroundCount + " left");
+//#enddebug
+        notifyAll();
+    }
+
+    /**
+     * @return {@code true} if there is a foreground download running.
+     */
+    public synchronized boolean isForegroundActive() {
+        return foregroundCount > 0;
+    }
+
+    /**
+     * @return the {@code long} with time in milliseconds the last foreground
+     *         download took, or {@code -1} if there was none.
+     */
+    public synchronized long getLastForegroundTime() {
+        return lastForegroundTime;
+    }
+
+    /**
+     * Waits at the chunk boundary of a background download until there are
+     * no foreground downloads, the download is promoted or {@value #MAX_PAUSE}
+     * passes. It returns at once for the foreground downloads.
+     * @throws InterruptedException if the download has been cancelled while waiting.
+     */
+    public synchronized void awaitForeground() throws InterruptedException {
+        Thread current = Thread.currentThread();
+        if (foregroundCount == 0 || !isBackground(current)) {
+            return;
+        }
+//#mdebug
+        log.info("Pausing background download of " + current);
+//#enddebug
+        long end = System.currentTimeMillis() + MAX_PAUSE;
+        long now = System.currentTimeMillis();
+        while (foregroundCount > 0 && isBackground(current) && now < end) {
+            wait(end - now);
+            now = System.currentTimeMillis();
+        }
+//#mdebug
+        log.info("Resuming background download of " + current);
+//#enddebug
+    }
+
+    /**
+     * Delays the transfer of a background download by {@value #THROTTLE_DELAY}
+     * ms if there is a foreground download. It returns at once otherwise.
+     * @throws InterruptedException if the download has been cancelled while waiting.
+     */
+    public void throttle() throws InterruptedException {
+        if (isForegroundActive() && isBackground()) {
+            Thread.sleep(THROTTLE_DELAY);
+        }
+    }
+}
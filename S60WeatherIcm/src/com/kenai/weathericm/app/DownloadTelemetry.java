@@ -0,0 +1,230 @@
+/*
+ *  Copyright (C) 2010 Przemek Kryger
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.kenai.weathericm.app;
+
+import com.kenai.weathericm.domain.DownloadSample;
+import com.kenai.weathericm.domain.MeteorogramType;
+import com.kenai.weathericm.repository.DownloadTelemetryDao;
+import java.util.Vector;
+//#mdebug
+import net.sf.microlog.core.Logger;
+import net.sf.microlog.core.LoggerFactory;
+//#enddebug
+
+/**
+ * This keeps the {@link DownloadSample}s of the recent downloads and learns
+ * from them how big the data is, how long the downloads take and how fast the
+ * data arrives. At most {@value #CAPACITY} samples are kept, the oldest one
+ * is dropped when a new one is recorded. The estimates are based on the last
+ * {@value #WINDOW} matching samples. When a {@link DownloadTelemetryDao} is
+ * set, the samples are kept between application runs.
+ * @author Przemek Kryger
+ * @see DownloadTelemetry#getInstance()
+ */
+public class DownloadTelemetry {
+
+    /**
+     * The kind of the start data downloads.
+     */
+    public final static String START_DATE_KIND = "start.date";
+    /**
+     * The kind of the model result downloads.
+     */
+    public final static String MODEL_RESULT_KIND = "model.result";
+    /**
+     * The kind of the legend downloads.
+     */
+    public final static String LEGEND_KIND = "legend";
+    /**
+     * The maximum number of samples kept.
+     */
+    public final static int CAPACITY = 32;
+    /**
+     * The number of the most recent samples used for an estimate.
+     */
+    public final static int WINDOW = 5;
+//#mdebug
+    /**
+     * The logger for the class.
+     */
+    private final static Logger log = LoggerFactory.getLogger(DownloadTelemetry.class);
+//#enddebug
+    /**
+     * The {@link DownloadTelemetry} singleton instance.
+     */
+    private static DownloadTelemetry instance = null;
+    /**
+     * The DAO used to keep samples between runs or {@code null}.
+     */
+    private DownloadTelemetryDao downloadTelemetryDao = null;
+    /**
+     * The recent {@link DownloadSample}s, the oldest first. It is {@code null}
+     * until the samples are read for the first time.
+     */
+    private Vector samples = null;
+
+    /**
+     * Private constructor for singleton safety.
+     */
+    private DownloadTelemetry() {
+    }
+
+    /**
+     * Getter for a singleton instance.
+     * @return the {@link DownloadTelemetry} instance.
+     */
+    public static synchronized DownloadTelemetry getInstance() {
+        if (instance == null) {
+            instance = new DownloadTelemetry();
+        }
+        return instance;
+    }
+
+    /**
+     * Sets the DAO used to keep samples between runs. The samples are read
+     * again from the new DAO.
+     * @param dao the {@link DownloadTelemetryDao} or {@code null}.
+     */
+    public synchronized void setDownloadTelemetryDao(DownloadTelemetryDao dao) {
+        downloadTelemetryDao = dao;
+        samples = null;
+    }
+
+    /**
+     * Gets the DAO used to keep samples between runs.
+     * @return the {@link DownloadTelemetryDao} or {@code null}.
+     */
+    public synchronized DownloadTelemetryDao getDownloadTelemetryDao() {
+        return downloadTelemetryDao;
+    }
+
+    /**
+     * Records the {@code sample} of a finished download.
+     * @param sample the {@link DownloadSample} to be recorded.
+     * @throws NullPointerException if the {@code sample} is {@code null}.
+     */
+    public synchronized void record(DownloadSample sample) {
+        if (sample == null) {
+//#mdebug
+            log.error("Attempt to record null sample!");
+//#enddebug
+            throw new NullPointerException("Cannot record null sample!");
+        }
+        Vector all = getSamples();
+        all.addElement(sample);
+        while (all.size() > CAPACITY) {
+            all.removeElementAt(0);
+        }
+//#mdebug
+        log.debug("Recorded " + sample);
+//#enddebug
+        if (downloadTelemetryDao != null) {
+            downloadTelemetryDao.updateAll(all);
+        }
+    }
+
+    /**
+     * Estimates the length of the data of the given {@code kind} and {@code type}.
+     * @param kind the {@link String} that tells what is downloaded.
+     * @param type the {@link MeteorogramType} of the data or {@code null}.
+     * @param defaultLength the {@code int} to return when nothing is known.
+     * @return the {@code int} with average length of the recent matching
+     *         downloads or {@code defaultLength}.
+     */
+    public synchronized int estimateLength(String kind, MeteorogramType type, int defaultLength) {
+        long total = 0L;
+        int count = 0;
+        Vector all = getSamples();
+        for (int i = all.size() - 1; i >= 0 && count < WINDOW; i--) {
+            DownloadSample sample = (DownloadSample) all.elementAt(i);
+            if (sample.matches(kind, type) && sample.getLength() > 0) {
+                total += sample.getLength();
+                count++;
+            }
+        }
+        return count == 0 ? defaultLength : (int) (total / count);
+    }
+
+    /**
+     * Estimates how long a download of the given {@code kind} and {@code type} takes.
+     * @param kind the {@link String} that tells what is downloaded.
+     * @param type the {@link MeteorogramType} of the data or {@code null}.
+     * @return the {@code long} with average duration in milliseconds of the
+     *         recent matching downloads, or {@code -1} if nothing is known.
+     */
+    public synchronized long estimateDuration(String kind, MeteorogramType type) {
+        long total = 0L;
+        int count = 0;
+        Vector all = getSamples();
+        for (int i = all.size() - 1; i >= 0 && count < WINDOW; i--) {
+            DownloadSample sample = (DownloadSample) all.elementAt(i);
+            if (sample.matches(kind, type)) {
+                total += sample.getDuration();
+                count++;
+            }
+        }
+        return count == 0 ? -1L : total / count;
+    }
+
+    /**
+     * Estimates how fast the data arrives, once it has started to arrive.
+     * @return the {@code long} with bytes per second of the recent downloads,
+     *         or {@code -1} if nothing is known.
+     */
+    public synchronized long getThroughput() {
+        long bytes = 0L;
+        long time = 0L;
+        int count = 0;
+        Vector all = getSamples();
+        for (int i = all.size() - 1; i >= 0 && count < WINDOW; i--) {
+            DownloadSample sample = (DownloadSample) all.elementAt(i);
+            long transferTime = sample.getDuration() - sample.getTimeToFirstByte();
+            if (sample.getTransferred() > 0 && transferTime > 0L) {
+                bytes += sample.getTransferred();
+                time += transferTime;
+                count++;
+            }
+        }
+        return count == 0 ? -1L : bytes * 1000L / time;
+    }
+
+    /**
+     * Gets the recent samples.
+     * @return the {@link Vector} with copy of the recent {@link DownloadSample}s,
+     *         the oldest first.
+     */
+    public synchronized Vector getRecentSamples() {
+        Vector all = getSamples();
+        Vector copy = new Vector(all.size());
+        for (int i = 0; i < all.size(); i++) {
+            copy.addElement(all.elementAt(i));
+        }
+        return copy;
+    }
+
+    /**
+     * Gets the samples, reading them with the DAO if it hasn't been done yet.
+     * @return the {@link Vector} of {@link DownloadSample}s.
+     */
+    private Vector getSamples() {
+        if (samples == null) {
+            samples = downloadTelemetryDao == null ? new Vector() : downloadTelemetryDao.readAll();
+        }
+        return samples;
+    }
+}
@@ -0,0 +1,347 @@
+/*
+ *  Copyright (C) 2010 Przemek Kryger
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.kenai.weathericm.app;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Vector;
+import javax.microedition.io.Connection;
+//#mdebug
+import net.sf.microlog.core.Logger;
+import net.sf.microlog.core.LoggerFactory;
+//#enddebug
+
+/**
+ * This enforces deadlines of downloads. A blocking {@link Connection} or
+ * {@link InputStream} call cannot be interrupted, so when a deadline of a
+ * {@link Watch} passes the watchdog closes the connection and the stream of
+ * the watch. It makes the blocked call throw an {@link IOException}, and the
+ * download can tell that it's timed out with {@link Watch#isExpired()}.
+ * The watchdog thread runs only when there are watches.
+ * @author Przemek Kryger
+ */
+public class DownloadWatchdog implements Runnable {
+
+//#mdebug
+    /**
+     * The logger for the class.
+     */
+    private final static Logger log = LoggerFactory.getLogger(DownloadWatchdog.class);
+//#enddebug
+    /**
+     * The {@link DownloadWatchdog} singleton instance.
+     */
+    private static DownloadWatchdog instance = null;
+    /**
+     * The {@link Watch}es that have deadlines to enforce.
+     */
+    private final Vector watches = new Vector();
+    /**
+     * The watchdog thread, or {@code null} if it's not running.
+     */
+    private Thread thread = null;
+
+    /**
+     * Private constructor for singleton safety.
+     */
+    private DownloadWatchdog() {
+    }
+
+    /**
+     * Getter for a singleton instance.
+     * @return the {@link DownloadWatchdog} instance.
+     */
+    public static synchronized DownloadWatchdog getInstance() {
+        if (instance == null) {
+            instance = new DownloadWatchdog();
+        }
+        return instance;
+    }
+
+    /**
+     * Starts watching a new download.
+     * @param totalTimeout the {@code long} with time in milliseconds the whole
+     *        download may take, or {@code 0} if it's not limited.
+     * @return the {@link Watch} of the download.
+     */
+    public Watch watch(long totalTimeout) {
+        Watch watch = new Watch(this, totalTimeout);
+        synchronized (this) {
+            watches.addElement(watch);
+            if (thread == null) {
+                thread = new Thread(this);
+                thread.start();
+            }
+            notifyAll();
+        }
+        return watch;
+    }
+
+    /**
+     * Stops watching the download.
+     * @param watch the {@link Watch} of the download.
+     */
+    public synchronized void unwatch(Watch watch) {
+        watches.removeElement(watch);
+        notifyAll();
+    }
+
+    /**
+     * Wakes the watchdog up, since a deadline has changed.
+     */
+    synchronized void reschedule() {
+        notifyAll();
+    }
+
+    /**
+     * Expires the watches which deadlines have passed. It runs until there
+     * are no watches left.
+     */
+    public void run() {
+//#mdebug
+        log.debug("Watchdog started");
+//#enddebug
+        while (true) {
+            Vector expired = new Vector();
+            synchronized (this) {
+                if (watches.isEmpty()) {
+                    thread = null;
+//#mdebug
+                    log.debug("Watchdog stopped");
+//#enddebug
+                    return;
+                }
+                long now = System.currentTimeMillis();
+                long next = Long.MAX_VALUE;
+                for (int i = watches.size() - 1; i >= 0; i--) {
+                    Watch watch = (Watch) watches.elementAt(i);
+                    long deadline = watch.getDeadline();
+                    if (deadline <= 0L) {
+                        continue;
+                    }
+                    if (deadline <= now) {
+                        watches.removeElementAt(i);
+                        expired.addElement(watch);
+                    } else if (deadline < next) {
+                        next = deadline;
+                    }
+                }
+                if (expired.isEmpty()) {
+                    try {
+                        if (next == Long.MAX_VALUE) {
+                            wait();
+                        } else {
+                            wait(next - now);
+                        }
+                    } catch (InterruptedException ex) {
+//#mdebug
+                        log.warn("Watchdog has been interrupted", ex);
+//#enddebug
+                    }
+                }
+            }
+            for (int i = 0; i < expired.size(); i++) {
+                ((Watch) expired.elementAt(i)).expire();
+            }
+        }
+    }
+
+    /**
+     * This holds the deadlines and the resources of a single download. The
+     * download goes through phases, each of them with it's own deadline that
+     * cannot be later than the deadline of the whole download.
+     */
+    public static class Watch {
+
+        /**
+         * The {@link DownloadWatchdog} that watches this one.
+         */
+        private final DownloadWatchdog watchdog;
+        /**
+         * The deadline of the whole download or {@code 0}.
+         */
+        private final long totalDeadline;
+        /**
+         * The deadline of the current phase or {@code 0}.
+         */
+        private long phaseDeadline = 0L;
+        /**
+         * The name of the current phase.
+         */
+        private String phase = null;
+        /**
+         * The name of the phase that has expired or {@code null}.
+         */
+        private String expiredPhase = null;
+        /**
+         * Indicates that the resources shall be closed.
+         */
+        private boolean closed = false;
+        /**
+         * The connection of the download or {@code null}.
+         */
+        private Connection connection = null;
+        /**
+         * The stream of the download or {@code null}.
+         */
+        private InputStream stream = null;
+
+        /**
+         * Creates a new watch.
+         * @param watchdog the {@link DownloadWatchdog} that watches this one.
+         * @param totalTimeout the {@code long} with time of the whole download
+         *        or {@code 0} if it's not limited.
+         */
+        private Watch(DownloadWatchdog watchdog, long totalTimeout) {
+            this.watchdog = watchdog;
+            totalDeadline = totalTimeout > 0L ? System.currentTimeMillis() + totalTimeout : 0L;
+        }
+
+        /**
+         * Starts a new phase of the download.
+         * @param phase the {@link String} with name of the phase.
+         * @param timeout the {@code long} with time in milliseconds the phase
+         *        may take, or {@code 0} if only the whole download is limited.
+         */
+        public void startPhase(String phase, long timeout) {
+            synchronized (this) {
+                this.phase = phase;
+                phaseDeadline = timeout > 0L ? System.currentTimeMillis() + timeout : 0L;
+            }
+            watchdog.reschedule();
+        }
+
+        /**
+         * Gets the deadline that comes first.
+         * @return the {@code long} with the deadline or {@code 0} if there is none.
+         */
+        synchronized long getDeadline() {
+            if (phaseDeadline <= 0L) {
+                return totalDeadline;
+            } else if (totalDeadline <= 0L) {
+                return phaseDeadline;
+            }
+            return Math.min(phaseDeadline, totalDeadline);
+        }
+
+        /**
+         * Sets the connection to be closed when the deadline passes. If it
+         * has passed already the {@code connection} is closed at once.
+         * @param connection the {@link Connection} of the download.
+         */
+        public void setConnection(Connection connection) {
+            boolean close = false;
+            synchronized (this) {
+                this.connection = connection;
+                close = closed;
+            }
+            if (close) {
+                close();
+            }
+        }
+
+        /**
+         * Sets the stream to be closed when the deadline passes. If it
+         * has passed already the {@code stream} is closed at once.
+         * @param stream the {@link InputStream} of the download.
+         */
+        public void setStream(InputStream stream) {
+            boolean close = false;
+            synchronized (this) {
+                this.stream = stream;
+                close = closed;
+            }
+            if (close) {
+                close();
+            }
+        }
+
+        /**
+         * Checks if a deadline of the download has passed.
+         * @return {@code true} if the download has timed out.
+         */
+        public synchronized boolean isExpired() {
+            return expiredPhase != null;
+        }
+
+        /**
+         * Gets the phase that has been in progress when the deadline passed.
+         * @return the {@link String} with name of the phase or {@code null}
+         *         if the download hasn't timed out.
+         */
+        public synchronized String getExpiredPhase() {
+            return expiredPhase;
+        }
+
+        /**
+         * Closes the resources to unblock the download, since a deadline
+         * has passed.
+         */
+        void expire() {
+            synchronized (this) {
+                expiredPhase = phase == null ? "" : phase;
+            }
+//#mdebug
+            log.warn("Download has timed out in phase: " + expiredPhase);
+//#enddebug
+            abort();
+        }
+
+        /**
+         * Closes the resources to unblock the download.
+         */
+        public void abort() {
+            synchronized (this) {
+                closed = true;
+            }
+            close();
+        }
+
+        /**
+         * Closes the stream and the connection that are set.
+         */
+        private void close() {
+            InputStream closedStream = null;
+            Connection closedConnection = null;
+            synchronized (this) {
+                closedStream = stream;
+                closedConnection = connection;
+                stream = null;
+                connection = null;
+            }
+            if (closedStream != null) {
+                try {
+                    closedStream.close();
+                } catch (IOException ex) {
+//#mdebug
+                    log.debug("Error occurred while closing stream: ", ex);
+//#enddebug
+                }
+            }
+            if (closedConnection != null) {
+                try {
+                    closedConnection.close();
+                } catch (IOException ex) {
+//#mdebug
+                    log.debug("Error occurred while closing connection: ", ex);
+//#enddebug
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ *  Copyright (C) 2010 Przemek Kryger
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.kenai.weathericm.app;
+
+import java.util.Vector;
+//#mdebug
+import net.sf.microlog.core.Logger;
+import net.sf.microlog.core.LoggerFactory;
+//#enddebug
+
+/**
+ * This is a pool of idle downloaders of one implementation. The instances
+ * that extend {@link AbstractConnectorDownloader} are given back with
+ * {@link AbstractConnectorDownloader#recycle()} and reset before they are
+ * handed out again. The pool keeps at most {@value #MAX_IDLE} idle instances.
+ * @author Przemek Kryger
+ */
+public class DownloaderPool {
+
+//#mdebug
+    /**
+     * The logger for the class.
+     */
+    private final static Logger log = LoggerFactory.getLogger(DownloaderPool.class);
+//#enddebug
+    /**
+     * The maximum number of idle instances kept in the pool.
+     */
+    public final static int MAX_IDLE = 4;
+    /**
+     * The factory of new instances.
+     */
+    private final ComponentFactory factory;
+    /**
+     * The idle instances.
+     */
+    private final Vector idle = new Vector(MAX_IDLE);
+
+    /**
+     * Creates the pool of instances created by the {@code factory}.
+     * @param factory the {@link ComponentFactory} of new instances.
+     * @throws NullPointerException if the {@code factory} is {@code null}.
+     */
+    public DownloaderPool(ComponentFactory factory) {
+        if (factory == null) {
+//#mdebug
+            log.error("Cannot create pool with null factory!");
+//#enddebug
+            throw new NullPointerException("Cannot create pool without factory!");
+        }
+        this.factory = factory;
+    }
+
+    /**
+     * Gets an idle instance or a new one when there is no idle instance.
+     * @return the instance or {@code null} if it cannot be created.
+     */
+    public synchronized Object acquire() {
+        if (!idle.isEmpty()) {
+            Object downloader = idle.lastElement();
+            idle.removeElementAt(idle.size() - 1);
+//#mdebug
+            log.trace("Reusing downloader " + downloader);
+//#enddebug
+            return downloader;
+        }
+        Object downloader = factory.create();
+        if (downloader instanceof AbstractConnectorDownloader) {
+            ((AbstractConnectorDownloader) downloader).setPool(this);
+        }
+//#mdebug
+        log.debug("Created downloader " + downloader);
+//#enddebug
+        return downloader;
+    }
+
+    /**
+     * Resets the {@code downloader} and keeps it for the next {@link #acquire()}.
+     * When the pool is already full the {@code downloader} is dropped.
+     * @param downloader the {@link AbstractConnectorDownloader} that is no
+     *        longer used.
+     */
+    public synchronized void release(AbstractConnectorDownloader downloader) {
+        if (downloader == null || idle.contains(downloader)) {
+            return;
+        }
+        downloader.reset();
+        if (idle.size() < MAX_IDLE) {
+            idle.addElement(downloader);
+        }
+    }
+
+    /**
+     * Gets the number of idle instances.
+     * @return the {@code int} with number of idle instances.
+     */
+    public synchronized int getIdleCount() {
+        return idle.size();
+    }
+
+    /**
+     * Drops all the idle instances, so they can be garbage collected.
+     */
+    public synchronized void clear() {
+        idle.removeAllElements();
+    }
+}
@@ -19,6 +19,7 @@ package com.kenai.weathericm.app;
 
 import com.kenai.weathericm.domain.ForecastData;
 import com.kenai.weathericm.domain.MeteorogramInfo;
+import com.kenai.weathericm.util.Status;
 import com.kenai.weathericm.util.StatusReporter;
 
 /**
@@ -61,6 +62,13 @@ public interface ForecastDataDownloader extends Runnable, StatusReporter {
      */
     void setModelResultDownloader(ModelResultDownloader modelResultDownloader);
 
+    /**
+     * Sets the downloader to refresh the legend in {@link LegendCache}.
+     * @param legendDownloader the {@link ModelResultDownloader} to be used, or
+     *        {@code null} to not download legends.
+     */
+    void setLegendDownloader(ModelResultDownloader legendDownloader);
+
     /**
      * Sets the instance of {@link ModelDownloadChecker} to be used to determine if
      * downloading model result is really needed.
@@ -68,4 +76,38 @@ public interface ForecastDataDownloader extends Runnable, StatusReporter {
      *        to check if downloading is needed.
      */
     void setModelResultDownloadChecker(ModelDownloadChecker modelDownloadChecker);
+
+    /**
+     * Checks if the download has set a new {@link ForecastData} for the
+     * {@link MeteorogramInfo}. It is {@code false} when downloading model
+     * result was not needed or the model result hasn't been modified.
+     * @return {@code true} if a new {@link ForecastData} has been set,
+     *         {@code false} otherwise.
+     */
+    boolean isForecastDataChanged();
+
+    /**
+     * Checks if the model result has been downloaded, but it is the same as
+     * the one the {@link MeteorogramInfo} already has. The {@link ForecastData}
+     * is not changed then and there is nothing to persist nor to display.
+     * @return {@code true} if the downloaded model result is a duplicate,
+     *         {@code false} otherwise.
+     */
+    boolean isModelResultDuplicate();
+
+    /**
+     * Gets the URL the model result has been downloaded from. Any
+     * checkpoint of the download is kept under this URL.
+     * @return the {@link String} with URL of the model result, or {@code null}
+     *         if the model result hasn't been downloaded.
+     */
+    String getModelResultUrl();
+
+    /**
+     * Gets the outcome of the download. When the download has failed, it tells
+     * why the {@link Status#CANCELLED} has been reported.
+     * @return the {@link DownloadOutcome} or {@code null} if the download
+     *         hasn't ended yet.
+     */
+    DownloadOutcome getOutcome();
 }
@@ -41,9 +41,23 @@ public class ForecastDataDownloaderCancellableTask extends AbstractForecastDataD
 
     /**
      * Gets the reason for the failure. In the case there was not any failure, this method should return null.
+     * The reason is based on the {@link DownloadOutcome} of the download.
      * @return A descriptive message of the failure or null if there was no failure.
      */
     public String getFailureMessage() {
-        throw new UnsupportedOperationException("Not supported yet.");
+        DownloadOutcome outcome = getOutcome();
+        if (outcome == null || outcome == DownloadOutcome.SUCCEEDED) {
+            return null;
+        }
+        switch (outcome.getValue()) {
+            case DownloadOutcome.TIMED_OUT_VALUE:
+                return "The server is not responding";
+            case DownloadOutcome.HTTP_ERROR_VALUE:
+                return "The server cannot provide the forecast";
+            case DownloadOutcome.CANCELLED_VALUE:
+                return "The download has been cancelled";
+            default:
+                return "The connection has failed";
+        }
     }
 }
@@ -17,8 +17,11 @@
  */
 package com.kenai.weathericm.app;
 
+import com.kenai.weathericm.app.transport.ConnectorTransport;
+import com.kenai.weathericm.app.transport.Transport;
 import com.kenai.weathericm.util.Properties;
 import com.kenai.weathericm.util.PropertiesRepository;
+import java.util.Hashtable;
 //#mdebug
 import net.sf.microlog.core.Logger;
 import net.sf.microlog.core.LoggerFactory;
@@ -28,6 +31,10 @@ import net.sf.microlog.core.LoggerFactory;
  * This is the factory used to get instances of {@link ForecastDataDownloader}s.
  * It will obtain {@link StartDataDownloader} and {@link ModelResultDownloader}
  * implementations from {@code ForecastDataDownloaderFactory.properties}.
+ * The downloaders that extend {@link AbstractConnectorDownloader} get the
+ * {@link Transport} configured in the same file. The implementations are
+ * resolved only once with {@link ComponentRegistry} and the idle
+ * {@link StartDataDownloader}s and {@link ModelResultDownloader}s are reused.
  * @author Przemek Kryger
  */
 public class ForecastDataDownloaderFactory {
@@ -44,6 +51,11 @@ public class ForecastDataDownloaderFactory {
      * The key for implementation of {@link ModelResultDownloader}.
      */
     public static final String MODEL_RESULT_DOWNLOADER_KEY = "model.result.downloader";
+    /**
+     * The key for implementation of {@link ModelResultDownloader} that is to be
+     * used to download legends. When it's missing legends are not downloaded.
+     */
+    public static final String LEGEND_DOWNLOADER_KEY = "legend.downloader";
     /**
      * The key for implementation of {@link ModelDownloadChecker} that is to be used
      * for 'checked' {@link ForecastDataDownloader}.
@@ -54,6 +66,10 @@ public class ForecastDataDownloaderFactory {
      * for 'forced' {@link ForecastDataDownloader}.
      */
     public static final String FORCED_MODEL_DOWNLOAD_CHECKER_KEY = "model.checker.forced";
+    /**
+     * The key for implementation of {@link Transport} used by the downloaders.
+     */
+    public static final String TRANSPORT_KEY = "transport";
 //#mdebug
     /**
      * The logger for the class.
@@ -64,55 +80,174 @@ public class ForecastDataDownloaderFactory {
      * The holder for properties.
      */
     private static Properties properties = null;
+    /**
+     * The transport shared by the downloaders.
+     */
+    private static Transport transport = null;
+    /**
+     * The factory of {@link ForecastDataDownloader}s or {@code null} if it
+     * cannot be resolved.
+     */
+    private static ComponentFactory forecastDataDownloaders = null;
+    /**
+     * The pool of {@link StartDateDownloader}s or {@code null} if their
+     * factory cannot be resolved.
+     */
+    private static DownloaderPool startDateDownloaders = null;
+    /**
+     * The pool of {@link ModelResultDownloader}s or {@code null} if their
+     * factory cannot be resolved.
+     */
+    private static DownloaderPool modelResultDownloaders = null;
+    /**
+     * The pool of legend downloaders or {@code null} if legends are not
+     * downloaded.
+     */
+    private static DownloaderPool legendDownloaders = null;
+    /**
+     * The {@link ModelDownloadChecker}s keyed by their property keys. The
+     * checkers don't keep any state, so they are shared by all downloaders.
+     */
+    private static final Hashtable modelDownloadCheckers = new Hashtable();
 
     /**
-     * Gets the new instance of {@link ForecastDataDownloader} with property configured
-     * {@link StartDataDownloader}, {@link ModelResultDownloader} and {@link
-     * ModelDownloadChecker} to perform forced download operation.
-     * @return the new {@link ForecastDataDownloader}.
+     * Loads the properties and resolves the configured implementations into
+     * factories. It's done only once.
      */
-    private static ForecastDataDownloader getDownloader(String modelDownloadCheckerKey) {
-        if (properties == null) {
+    private static synchronized void initialize() {
+        if (properties != null) {
+            return;
+        }
 //#mdebug
-            log.info("Instantiating properties");
+        log.info("Instantiating properties");
 //#enddebug
-            properties = PropertiesRepository.getProperties("/ForecastDataDownloaderFactory.properties");
-        }
-        ForecastDataDownloader forecastDataDownloader = null;
-        String implementation = properties.getProperty(FORECAST_DATA_DOWNLOADER_KEY);
-        try {
-            forecastDataDownloader =
-                    (ForecastDataDownloader) Class.forName(implementation).newInstance();
-            implementation =
-                    properties.getProperty(START_DATE_DOWNLOADER_KEY);
-            StartDateDownloader startDateDownloader =
-                    (StartDateDownloader) Class.forName(implementation).newInstance();
-            implementation =
-                    properties.getProperty(MODEL_RESULT_DOWNLOADER_KEY);
-            ModelResultDownloader modelResultDownloader =
-                    (ModelResultDownloader) Class.forName(implementation).newInstance();
-            implementation =
-                    properties.getProperty(modelDownloadCheckerKey);
-            ModelDownloadChecker modelDownloadChecker =
-                    (ModelDownloadChecker) Class.forName(implementation).newInstance();
-            forecastDataDownloader.setStartDateDownloader(startDateDownloader);
-            forecastDataDownloader.setModelResultDownloader(modelResultDownloader);
-            forecastDataDownloader.setModelResultDownloadChecker(modelDownloadChecker);
-        } catch (ClassNotFoundException ex) {
+        Properties loaded = PropertiesRepository.getProperties("/ForecastDataDownloaderFactory.properties");
+        ComponentRegistry registry = ComponentRegistry.getInstance();
+        forecastDataDownloaders =
+                registry.getFactory(loaded.getProperty(FORECAST_DATA_DOWNLOADER_KEY));
+        ComponentFactory factory =
+                registry.getFactory(loaded.getProperty(START_DATE_DOWNLOADER_KEY));
+        startDateDownloaders = factory == null ? null : new DownloaderPool(factory);
+        factory = registry.getFactory(loaded.getProperty(MODEL_RESULT_DOWNLOADER_KEY));
+        modelResultDownloaders = factory == null ? null : new DownloaderPool(factory);
+        factory = registry.getFactory(loaded.getProperty(LEGEND_DOWNLOADER_KEY));
+        legendDownloaders = factory == null ? null : new DownloaderPool(factory);
+        properties = loaded;
+    }
+
+    /**
+     * Gets the transport configured with {@value #TRANSPORT_KEY} property. When
+     * it cannot be created {@link ConnectorTransport} is used.
+     * @return the {@link Transport}.
+     */
+    private static synchronized Transport getTransport() {
+        if (transport == null) {
+            String implementation = properties.getProperty(TRANSPORT_KEY);
+            ComponentFactory factory = ComponentRegistry.getInstance().getFactory(implementation);
+            try {
+                if (factory != null) {
+                    transport = (Transport) factory.create();
+                    if (transport != null) {
+                        transport.configure(properties);
+                    }
+                }
+            } catch (RuntimeException ex) {
 //#mdebug
-            log.fatal("Cannot find a class for " + implementation, ex);
+                log.fatal("Cannot configure " + implementation, ex);
 //#enddebug
-            forecastDataDownloader = null;
-        } catch (IllegalAccessException ex) {
+                transport = null;
+            }
+            if (transport == null) {
+                transport = new ConnectorTransport();
+            }
 //#mdebug
-            log.fatal("Cannot acces class for " + implementation, ex);
+            log.info("Using transport " + transport);
 //#enddebug
-            forecastDataDownloader = null;
-        } catch (InstantiationException ex) {
+        }
+        return transport;
+    }
+
+    /**
+     * Gets the {@link ModelDownloadChecker} configured with the {@code key}.
+     * @param key the {@link String} with the property key of the checker.
+     * @return the {@link ModelDownloadChecker} or {@code null} if it cannot be created.
+     */
+    private static synchronized ModelDownloadChecker getModelDownloadChecker(String key) {
+        ModelDownloadChecker checker = (ModelDownloadChecker) modelDownloadCheckers.get(key);
+        if (checker == null) {
+            ComponentFactory factory =
+                    ComponentRegistry.getInstance().getFactory(properties.getProperty(key));
+            if (factory != null) {
+                checker = (ModelDownloadChecker) factory.create();
+            }
+            if (checker != null) {
+                modelDownloadCheckers.put(key, checker);
+            }
+        }
+        return checker;
+    }
+
+    /**
+     * Gives the {@code downloader} back to its pool, if it's pooled.
+     * @param downloader the downloader that won't be used.
+     */
+    private static void recycle(Object downloader) {
+        if (downloader instanceof AbstractConnectorDownloader) {
+            ((AbstractConnectorDownloader) downloader).recycle();
+        }
+    }
+
+    /**
+     * Gets the new instance of {@link ForecastDataDownloader} with property configured
+     * {@link StartDataDownloader}, {@link ModelResultDownloader} and {@link
+     * ModelDownloadChecker} to perform forced download operation. The
+     * {@link StartDataDownloader} and {@link ModelResultDownloader} are taken
+     * from pools of idle instances.
+     * @return the new {@link ForecastDataDownloader} or {@code null} if any of
+     *         the components cannot be created.
+     */
+    private static ForecastDataDownloader getDownloader(String modelDownloadCheckerKey) {
+        initialize();
+        if (forecastDataDownloaders == null || startDateDownloaders == null
+                || modelResultDownloaders == null) {
 //#mdebug
-            log.fatal("Cannot instantiate " + implementation, ex);
+            log.fatal("Cannot create downloader, the implementations haven't been resolved!");
 //#enddebug
-            forecastDataDownloader = null;
+            return null;
+        }
+        ForecastDataDownloader forecastDataDownloader =
+                (ForecastDataDownloader) forecastDataDownloaders.create();
+        StartDateDownloader startDateDownloader =
+                (StartDateDownloader) startDateDownloaders.acquire();
+        ModelResultDownloader modelResultDownloader =
+                (ModelResultDownloader) modelResultDownloaders.acquire();
+        ModelDownloadChecker modelDownloadChecker =
+                getModelDownloadChecker(modelDownloadCheckerKey);
+        if (forecastDataDownloader == null || startDateDownloader == null
+                || modelResultDownloader == null || modelDownloadChecker == null) {
+//#mdebug
+            log.fatal("Cannot create components of downloader for " + modelDownloadCheckerKey);
+//#enddebug
+            recycle(startDateDownloader);
+            recycle(modelResultDownloader);
+            return null;
+        }
+        forecastDataDownloader.setStartDateDownloader(startDateDownloader);
+        forecastDataDownloader.setModelResultDownloader(modelResultDownloader);
+        forecastDataDownloader.setModelResultDownloadChecker(modelDownloadChecker);
+        if (legendDownloaders != null) {
+            ModelResultDownloader legendDownloader =
+                    (ModelResultDownloader) legendDownloaders.acquire();
+            if (legendDownloader instanceof AbstractConnectorDownloader) {
+                ((AbstractConnectorDownloader) legendDownloader).setTransport(getTransport());
+            }
+            forecastDataDownloader.setLegendDownloader(legendDownloader);
+        }
+        if (startDateDownloader instanceof AbstractConnectorDownloader) {
+            ((AbstractConnectorDownloader) startDateDownloader).setTransport(getTransport());
+        }
+        if (modelResultDownloader instanceof AbstractConnectorDownloader) {
+            ((AbstractConnectorDownloader) modelResultDownloader).setTransport(getTransport());
         }
         return forecastDataDownloader;
     }
@@ -0,0 +1,225 @@
+/*
+ *  Copyright (C) 2010 Przemek Kryger
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.kenai.weathericm.app;
+
+import com.kenai.weathericm.domain.MeteorogramType;
+import com.kenai.weathericm.repository.LegendDao;
+import java.util.Hashtable;
+//#mdebug
+import net.sf.microlog.core.Logger;
+import net.sf.microlog.core.LoggerFactory;
+//#enddebug
+
+/**
+ * This keeps the legend images of meteorograms, one for each
+ * {@link MeteorogramType}. The legends are held in memory once they are read,
+ * and when a {@link LegendDao} is set they are kept between application runs,
+ * so showing a legend never needs the network. A legend is refreshed at most
+ * once per application run for each type. The validators of each downloaded
+ * legend are stored, so when the legend is already held, the refresh is a
+ * conditional request that is answered without the data unless the legend
+ * has been changed.
+ * @author Przemek Kryger
+ * @see LegendCache#getInstance()
+ */
+public class LegendCache {
+
+    /**
+     * The prefix of the key used to store validators of legends. The key is
+     * followed by the {@link MeteorogramType#getName()}.
+     */
+    public final static String LEGEND_VALIDATOR_PREFIX = "legend.";
+//#mdebug
+    /**
+     * The logger for the class.
+     */
+    private final static Logger log = LoggerFactory.getLogger(LegendCache.class);
+//#enddebug
+    /**
+     * The {@link LegendCache} singleton instance.
+     */
+    private static LegendCache instance = null;
+    /**
+     * The DAO used to keep legends between runs or {@code null}.
+     */
+    private LegendDao legendDao = null;
+    /**
+     * Maps {@link MeteorogramType#getValue()} to the legend.
+     */
+    private final Hashtable legends = new Hashtable();
+    /**
+     * The keys of types which legend has been refreshed in this run.
+     */
+    private final Hashtable refreshed = new Hashtable();
+    /**
+     * The keys of types which legend is being refreshed now.
+     */
+    private final Hashtable refreshing = new Hashtable();
+
+    /**
+     * Private constructor for singleton safety.
+     */
+    private LegendCache() {
+//#mdebug
+        log.debug("Created LegendCache instance");
+//#enddebug
+    }
+
+    /**
+     * Gets the singleton instance.
+     * @return the {@link LegendCache} instance.
+     */
+    public static synchronized LegendCache getInstance() {
+        if (instance == null) {
+            instance = new LegendCache();
+        }
+        return instance;
+    }
+
+    /**
+     * Sets the DAO used to keep legends between runs.
+     * @param legendDao the {@link LegendDao} to use or {@code null}.
+     */
+    public synchronized void setLegendDao(LegendDao legendDao) {
+        this.legendDao = legendDao;
+    }
+
+    /**
+     * Gets the DAO used to keep legends between runs.
+     * @return the {@link LegendDao} or {@code null}.
+     */
+    public synchronized LegendDao getLegendDao() {
+        return legendDao;
+    }
+
+    /**
+     * Gets the legend of the given {@code type}. It's read from the
+     * {@link LegendDao} when it's asked for the first time.
+     * @param type the {@link MeteorogramType} of the legend.
+     * @return the {@code byte[]} with legend image or {@code null} if it
+     *         hasn't been downloaded yet.
+     * @throws NullPointerException if the {@code type} is {@code null}.
+     */
+    public synchronized byte[] getLegend(MeteorogramType type) {
+        if (type == null) {
+//#mdebug
+            log.error("Cannot get legend for null type!");
+//#enddebug
+            throw new NullPointerException("Cannot get legend for null type!");
+        }
+        Integer key = getKey(type);
+        byte[] legend = (byte[]) legends.get(key);
+        if (legend == null && legendDao != null) {
+            legend = legendDao.read(type);
+            if (legend != null) {
+                legends.put(key, legend);
+            }
+        }
+        return legend;
+    }
+
+    /**
+     * Checks if the legend of the given {@code type} shall be refreshed. It's
+     * {@code true} until it's been successfully refreshed in this run.
+     * @param type the {@link MeteorogramType} of the legend.
+     * @return {@code true} if the legend shall be refreshed, {@code false} otherwise.
+     */
+    public synchronized boolean isRefreshNeeded(MeteorogramType type) {
+        Integer key = getKey(type);
+        return !refreshed.containsKey(key) && !refreshing.containsKey(key);
+    }
+
+    /**
+     * Refreshes the legend of the given {@code type} from the {@code url}.
+     * When the legend is already stored, it's downloaded only if it has been
+     * modified. Only one refresh of a type is done at a time.
+     * @param type the {@link MeteorogramType} of the legend.
+     * @param url the {@link String} with URL of the legend.
+     * @param downloader the {@link ModelResultDownloader} used to download the legend.
+     * @return {@code true} if the legend is up to date, {@code false} if it
+     *         cannot be refreshed now.
+     * @throws NullPointerException if any of the arguments is {@code null}.
+     */
+    public boolean refresh(MeteorogramType type, String url, ModelResultDownloader downloader) {
+        if (type == null || url == null || downloader == null) {
+//#mdebug
+            log.error("Cannot refresh legend with nulls: type = " + type + ", url = " + url
+                    + ", downloader = " + downloader);
+//#enddebug
+            throw new NullPointerException("Cannot refresh legend with nulls!");
+        }
+        Integer key = getKey(type);
+        String validatorKey = LEGEND_VALIDATOR_PREFIX + type.getName();
+        boolean revalidate = false;
+        synchronized (this) {
+            if (refreshing.containsKey(key)) {
+//#mdebug
+                log.info("Legend for " + type + " is being refreshed already");
+//#enddebug
+                return false;
+            }
+            refreshing.put(key, key);
+            revalidate = getLegend(type) != null;
+        }
+        boolean retValue = false;
+        try {
+            downloader.setMeteorogramType(type);
+            byte[] legend = downloader.downloadModelResult(url, validatorKey, revalidate);
+            if (downloader.isNotModified()) {
+//#mdebug
+                log.info("Legend for " + type + " hasn't been modified");
+//#enddebug
+                retValue = true;
+            } else if (legend != null) {
+//#mdebug
+                log.info("Downloaded legend for " + type + ": " + legend.length + " bytes");
+//#enddebug
+                LegendDao dao = null;
+                synchronized (this) {
+                    legends.put(key, legend);
+                    dao = legendDao;
+                }
+                if (dao != null) {
+                    dao.createOrUpdate(type, legend);
+                }
+                retValue = true;
+            } else {
+//#mdebug
+                log.warn("Cannot download legend for " + type + " from: " + url);
+//#enddebug
+            }
+        } finally {
+            synchronized (this) {
+                refreshing.remove(key);
+                if (retValue) {
+                    refreshed.put(key, key);
+                }
+            }
+        }
+        return retValue;
+    }
+
+    /**
+     * Gets the key of the given {@code type}.
+     * @param type the {@link MeteorogramType} of the legend.
+     * @return the {@link Integer} key.
+     */
+    private Integer getKey(MeteorogramType type) {
+        return new Integer(type.getValue());
+    }
+}
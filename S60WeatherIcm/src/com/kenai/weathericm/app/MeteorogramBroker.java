@@ -19,10 +19,9 @@ package com.kenai.weathericm.app;
 
 import com.kenai.weathericm.domain.Availability;
 import com.kenai.weathericm.domain.ForecastData;
-import com.kenai.weathericm.util.StatusListener;
+import com.kenai.weathericm.util.ProgressListener;
 import com.kenai.weathericm.util.StatusReporter;
 import com.kenai.weathericm.util.Status;
-import java.util.Enumeration;
 import java.util.Hashtable;
 import java.util.Vector;
 //#mdebug
@@ -30,15 +29,21 @@ import net.sf.microlog.core.Logger;
 import net.sf.microlog.core.LoggerFactory;
 //#enddebug
 import com.kenai.weathericm.domain.MeteorogramInfo;
+import com.kenai.weathericm.repository.DownloadCheckpointDao;
 import com.kenai.weathericm.repository.ForecastDataDao;
+import com.kenai.weathericm.repository.ForecastHistoryDao;
+import com.kenai.weathericm.repository.HttpValidatorDao;
 import com.kenai.weathericm.repository.MeteorogramInfoDao;
+import com.kenai.weathericm.repository.MeteorogramInfoReadListener;
 
 /**
  * This is responsible for the controlling the application flow for {@link MeteorogramInfo}
- * persistence, and gathering the meteorogram info data.
+ * persistence, and gathering the meteorogram info data. The infos are read and
+ * written by a single worker of {@link PersistenceQueue}, in the order they
+ * have been requested.
  * @author Przemek Kryger
  */
-public class MeteorogramBroker implements StatusListener {
+public class MeteorogramBroker implements ProgressListener {
 
 //#mdebug
     /**
@@ -59,14 +64,62 @@ public class MeteorogramBroker implements StatusListener {
      */
     private ForecastDataDao forecastDataDao = null;
     /**
-     * All the registered {@link MeteorogramBrokerListener}s instances.
+     * The {@link ForecastHistoryDao} instance or {@code null} if the older
+     * runs are not kept.
      */
-    private final Vector listeners = new Vector();
+    private ForecastHistoryDao forecastHistoryDao = null;
+    /**
+     * The empty array of listeners.
+     */
+    private final static MeteorogramBrokerListener[] NO_LISTENERS =
+            new MeteorogramBrokerListener[0];
+    /**
+     * All the registered {@link MeteorogramBrokerListener}s instances. The
+     * array is never modified, it's replaced when listeners are added or
+     * removed, so it can be iterated without a lock.
+     */
+    private volatile MeteorogramBrokerListener[] listeners = NO_LISTENERS;
+    /**
+     * The lock guarding the replacement of {@value #listeners}.
+     */
+    private final Object listenersLock = new Object();
     /**
      * The map that contains {@link MeteorogramInfo} to a corresponding
      * {@link ForecastDownloader}s mapping.
      */
     private Hashtable infoToDownloadTask = new Hashtable();
+    /**
+     * The default number of concurrent downloads run by {@link #refreshAll(Vector)}.
+     */
+    public final static int DEFAULT_REFRESH_WIDTH = 2;
+    /**
+     * The number of concurrent downloads run by {@link #refreshAll(Vector)},
+     * when the device is connected with WLAN.
+     */
+    public final static int WLAN_REFRESH_WIDTH = 4;
+    /**
+     * The system property that tells the network access used by device.
+     */
+    public final static String NETWORK_ACCESS_PROPERTY = "com.nokia.network.access";
+    /**
+     * The number of {@link MeteorogramInfo}s in batches fired while reading
+     * all infos. The first batch is fired as soon as the first info is read.
+     */
+    public final static int READ_BATCH_SIZE = 5;
+    /**
+     * The number of concurrent downloads run by {@link #refreshAll(Vector)}.
+     * When it is not positive it's determined by the network access.
+     */
+    private int refreshWidth = 0;
+    /**
+     * The queue of persistence operations run by a single worker thread.
+     */
+    private final PersistenceQueue persistenceQueue = new PersistenceQueue() {
+
+        protected void execute(int operation, MeteorogramInfo info) {
+            persist(operation, info);
+        }
+    };
 
     /**
      * Private constructor for singleton safety.
@@ -107,14 +160,10 @@ public class MeteorogramBroker implements StatusListener {
      * @return the {@link Vector} that contains all registered listeners.
      */
     protected Vector getListeners() {
-        Vector retValue = null;
-        synchronized (listeners) {
-            retValue = new Vector(listeners.size());
-            Enumeration listenersEnum = listeners.elements();
-            while (listenersEnum.hasMoreElements()) {
-                Object listener = listenersEnum.nextElement();
-                retValue.addElement(listener);
-            }
+        MeteorogramBrokerListener[] current = listeners;
+        Vector retValue = new Vector(current.length);
+        for (int i = 0; i < current.length; i++) {
+            retValue.addElement(current[i]);
         }
         return retValue;
     }
@@ -127,9 +176,14 @@ public class MeteorogramBroker implements StatusListener {
         if (listener == null) {
             return;
         }
-        synchronized (listeners) {
-            if (!listeners.contains(listener)) {
-                listeners.addElement(listener);
+        synchronized (listenersLock) {
+            MeteorogramBrokerListener[] current = listeners;
+            if (indexOf(current, listener) < 0) {
+                MeteorogramBrokerListener[] updated =
+                        new MeteorogramBrokerListener[current.length + 1];
+                System.arraycopy(current, 0, updated, 0, current.length);
+                updated[current.length] = listener;
+                listeners = updated;
             }
         }
 //#mdebug
@@ -143,9 +197,18 @@ public class MeteorogramBroker implements StatusListener {
      */
     public void removeListener(MeteorogramBrokerListener listener) {
         if (listener != null) {
-            synchronized (listeners) {
-                if (listeners.contains(listener)) {
-                    listeners.removeElement(listener);
+            synchronized (listenersLock) {
+                MeteorogramBrokerListener[] current = listeners;
+                int index = indexOf(current, listener);
+                if (index >= 0) {
+                    MeteorogramBrokerListener[] updated = NO_LISTENERS;
+                    if (current.length > 1) {
+                        updated = new MeteorogramBrokerListener[current.length - 1];
+                        System.arraycopy(current, 0, updated, 0, index);
+                        System.arraycopy(current, index + 1, updated, index,
+                                current.length - index - 1);
+                    }
+                    listeners = updated;
                 }
             }
         }
@@ -154,6 +217,23 @@ public class MeteorogramBroker implements StatusListener {
 //#enddebug
     }
 
+    /**
+     * Finds the {@code listener} in the {@code array}.
+     * @param array the {@link MeteorogramBrokerListener}s to search.
+     * @param listener the {@link MeteorogramBrokerListener} to find.
+     * @return the {@code int} index of the {@code listener} or {@code -1} if
+     *         it's not in the {@code array}.
+     */
+    private static int indexOf(MeteorogramBrokerListener[] array,
+            MeteorogramBrokerListener listener) {
+        for (int i = 0; i < array.length; i++) {
+            if (array[i].equals(listener)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
     /**
      * Notifies all the {@link MeteorogramBrokerListener}s in {@value #listeners}
      * that {@code newCachedMeteorogramInfos} has been read from DAO.
@@ -164,12 +244,26 @@ public class MeteorogramBroker implements StatusListener {
 //#mdebug
         log.info("Notifying: infos have been read from store!");
 //#enddebug
-        synchronized (listeners) {
-            Enumeration e = getListeners().elements();
-            while (e.hasMoreElements()) {
-                MeteorogramBrokerListener listener = (MeteorogramBrokerListener) e.nextElement();
-                listener.readMeteorogramInfo(newCachedMeteorogramInfos);
-            }
+        MeteorogramBrokerListener[] current = listeners;
+        for (int i = 0; i < current.length; i++) {
+            current[i].readMeteorogramInfo(newCachedMeteorogramInfos);
+        }
+    }
+
+    /**
+     * Notifies all the {@link MeteorogramBrokerListener}s in {@value #listeners}
+     * that {@code meteorogramInfosBatch} has been read from DAO.
+     * @param meteorogramInfosBatch the {@link Vector} that contains a batch of
+     *                              read {@link MeteorogramInfo}s.
+     */
+    protected void fireReadMeteorogramInfoBatch(Vector meteorogramInfosBatch) {
+//#mdebug
+        log.info("Notifying: a batch of " + meteorogramInfosBatch.size()
+                + " infos has been read from store!");
+//#enddebug
+        MeteorogramBrokerListener[] current = listeners;
+        for (int i = 0; i < current.length; i++) {
+            current[i].readMeteorogramInfoBatch(meteorogramInfosBatch);
         }
     }
 
@@ -182,12 +276,9 @@ public class MeteorogramBroker implements StatusListener {
 //#mdebug
         log.info("Notifying: info has been added to store");
 //#enddebug
-        synchronized (listeners) {
-            Enumeration e = getListeners().elements();
-            while (e.hasMoreElements()) {
-                MeteorogramBrokerListener listener = (MeteorogramBrokerListener) e.nextElement();
-                listener.addedMeteorogramInfo(addedMeteorogramInfo);
-            }
+        MeteorogramBrokerListener[] current = listeners;
+        for (int i = 0; i < current.length; i++) {
+            current[i].addedMeteorogramInfo(addedMeteorogramInfo);
         }
     }
 
@@ -200,12 +291,9 @@ public class MeteorogramBroker implements StatusListener {
 //#mdebug
         log.info("Notifying: info has been deleted from store");
 //#enddebug
-        synchronized (listeners) {
-            Enumeration e = getListeners().elements();
-            while (e.hasMoreElements()) {
-                MeteorogramBrokerListener listener = (MeteorogramBrokerListener) e.nextElement();
-                listener.deletedMeteorogramInfo(deletedMeteorogramInfo);
-            }
+        MeteorogramBrokerListener[] current = listeners;
+        for (int i = 0; i < current.length; i++) {
+            current[i].deletedMeteorogramInfo(deletedMeteorogramInfo);
         }
     }
 
@@ -218,12 +306,9 @@ public class MeteorogramBroker implements StatusListener {
 //#mdebug
         log.info("Notifying: info has been updated in store");
 //#enddebug
-        synchronized (listeners) {
-            Enumeration e = getListeners().elements();
-            while (e.hasMoreElements()) {
-                MeteorogramBrokerListener listener = (MeteorogramBrokerListener) e.nextElement();
-                listener.updatedMeteorogramInfo(updatedMeteorogramInfo);
-            }
+        MeteorogramBrokerListener[] current = listeners;
+        for (int i = 0; i < current.length; i++) {
+            current[i].updatedMeteorogramInfo(updatedMeteorogramInfo);
         }
     }
 
@@ -231,93 +316,139 @@ public class MeteorogramBroker implements StatusListener {
      * Request for this broker to read all {@link MeteorogramInfo}s from DAO.
      */
     public void readAllMeteorogramInfos() {
-        Thread reader = new Thread() {
+        persistenceQueue.enqueue(PersistenceQueue.READ_ALL, null);
+    }
+
+    /**
+     * Creates the given {@code info} in DAO.
+     * @param info the {@link MeteorogramInfo} to be created.
+     */
+    public void createMeteorogramInfo(MeteorogramInfo info) {
+        persistenceQueue.enqueue(PersistenceQueue.CREATE, info);
+    }
 
-            public void run() {
+    /**
+     * Updates the given {@code info} in DAO. The update is merged with the
+     * update of the same {@code info} that hasn't been written yet.
+     * @param info the {@link MeteorogramInfo} to be updated.
+     */
+    public void updateMeteorogramInfo(MeteorogramInfo info) {
+        persistenceQueue.enqueue(PersistenceQueue.UPDATE, info);
+    }
+
+    /**
+     * Deletes the given {@code info} from DAO. The updates of the {@code info}
+     * that haven't been written yet are dropped.
+     * @param info the {@link MeteorogramInfo} to be delted.
+     */
+    public void deleteMeteorogramInfo(MeteorogramInfo info) {
+        persistenceQueue.enqueue(PersistenceQueue.DELETE, info);
+    }
+
+    /**
+     * Runs the persistence {@code operation} on the {@code info}. It's called
+     * by the worker of {@value #persistenceQueue}.
+     * @param operation the {@code int} with one of {@link PersistenceQueue} operations.
+     * @param info the {@link MeteorogramInfo} to run the operation on.
+     */
+    private void persist(int operation, MeteorogramInfo info) {
+        switch (operation) {
+            case PersistenceQueue.READ_ALL:
+                readAll();
+                break;
+            case PersistenceQueue.CREATE:
+                create(info);
+                break;
+            case PersistenceQueue.UPDATE:
+                update(info);
+                break;
+            case PersistenceQueue.DELETE:
+                delete(info);
+                break;
+            default:
 //#mdebug
-                log.info("Reading all infos from DAO");
+                log.error("Unknown persistence operation: " + operation);
 //#enddebug
-                Vector meteorogramInfos = meteorogramInfoDao.readAll();
-                Enumeration e = meteorogramInfos.elements();
-                while (e.hasMoreElements()) {
-                    MeteorogramInfo info = (MeteorogramInfo) e.nextElement();
-                    if (forecastDataDao.exists(info.getId())) {
-                        ForecastData forecastData = forecastDataDao.read(info.getId());
-                        info.setForecastData(forecastData);
-                    }
-                }
-                fireReadMeteorogramInfo(meteorogramInfos);
-            }
-        };
-        reader.start();
+        }
     }
 
     /**
-     * Creates the given {@code info} in DAO.
-     * @param info the {@link MeteorogramInfo} to be created.
+     * Reads all {@link MeteorogramInfo}s with their {@link ForecastData} from DAO.
+     * Only the headers of {@link ForecastData} are read, the model results are
+     * read by the {@link ModelResultCache} when they are needed. The infos are
+     * fired in batches of {@value #READ_BATCH_SIZE} while they are being read.
      */
-    public void createMeteorogramInfo(final MeteorogramInfo info) {
-        Thread creator = new Thread() {
+    private void readAll() {
+//#mdebug
+        log.info("Reading all infos from DAO");
+//#enddebug
+        ReadBatcher batcher = new ReadBatcher();
+        Vector meteorogramInfos = meteorogramInfoDao.readAll(batcher);
+        batcher.flush();
+        fireReadMeteorogramInfo(meteorogramInfos);
+    }
 
-            public void run() {
+    /**
+     * Creates the {@code info} in DAO.
+     * @param info the {@link MeteorogramInfo} to be created.
+     */
+    private void create(MeteorogramInfo info) {
 //#mdebug
-                log.info("Creating info in DAO: " + info);
+        log.info("Creating info in DAO: " + info);
 //#enddebug
-                meteorogramInfoDao.create(info);
-                if (forecastDataDao.exists(info.getId())) {
+        meteorogramInfoDao.create(info);
+        if (forecastDataDao.exists(info.getId())) {
 //#mdebug
-                    log.warn("The ForecastData already exists for a brand new info, deleting it!");
+            log.warn("The ForecastData already exists for a brand new info, deleting it!");
 //#enddebug
-                    forecastDataDao.delete(info.getId());
-                }
-                fireAddedMeteorogramInfo(info);
-            }
-        };
-        creator.start();
+            forecastDataDao.delete(info.getId());
+        }
+        fireAddedMeteorogramInfo(info);
     }
 
     /**
-     * Updates the given {@code info} in DAO.
+     * Updates the {@code info} in DAO.
      * @param info the {@link MeteorogramInfo} to be updated.
      */
-    public void updateMeteorogramInfo(final MeteorogramInfo info) {
-        Thread updater = new Thread() {
-
-            public void run() {
+    private void update(MeteorogramInfo info) {
 //#mdebug
-                log.info("Updating info in DAO: " + info);
+        log.info("Updating info in DAO: " + info);
 //#enddebug
-                meteorogramInfoDao.update(info);
-                if (info.dataAvailability().equals(Availability.NOT_AVAILABLE)
-                        && forecastDataDao.exists(info.getId())) {
+        meteorogramInfoDao.update(info);
+        if (info.dataAvailability().equals(Availability.NOT_AVAILABLE)
+                && forecastDataDao.exists(info.getId())) {
 //#mdebug
-                    log.debug("The info has no ForecsastData any longer, let's delete it!");
+            log.debug("The info has no ForecsastData any longer, let's delete it!");
 //#enddebug
-                    forecastDataDao.delete(info.getId());
-                }
-                fireUpdatedMeteorogramInfo(info);
-            }
-        };
-        updater.start();
+            forecastDataDao.delete(info.getId());
+            ModelResultCache.getInstance().remove(info);
+            StorageQuotaManager.getInstance().forget(info);
+        }
+        fireUpdatedMeteorogramInfo(info);
     }
 
     /**
-     * Deletes the given {@code info} from DAO.
-     * @param info the {@link MeteorogramInfo} to be delted.
+     * Deletes the {@code info} from DAO.
+     * @param info the {@link MeteorogramInfo} to be deleted.
      */
-    public void deleteMeteorogramInfo(final MeteorogramInfo info) {
-        Thread deleter = new Thread() {
-
-            public void run() {
+    private void delete(MeteorogramInfo info) {
 //#mdebug
-                log.info("Deleting info from DAO: " + info);
+        log.info("Deleting info from DAO: " + info);
 //#enddebug
-                forecastDataDao.delete(info.getId());
-                meteorogramInfoDao.delete(info);
-                fireDeletedMeteorogramInfo(info);
-            }
-        };
-        deleter.start();
+        forecastDataDao.delete(info.getId());
+        ModelResultCache.getInstance().remove(info);
+        StorageQuotaManager.getInstance().forget(info);
+        if (forecastHistoryDao != null) {
+            forecastHistoryDao.delete(info.getId());
+            StorageQuotaManager.getInstance().trackHistory(info, 0);
+        }
+        HttpValidatorDao validatorDao = AbstractConnectorDownloader.getHttpValidatorDao();
+        if (validatorDao != null && info.getId() != null) {
+            validatorDao.delete(AbstractForecastDataDownloader.MODEL_RESULT_VALIDATOR_PREFIX
+                    + info.getId());
+        }
+        meteorogramInfoDao.delete(info);
+        fireDeletedMeteorogramInfo(info);
     }
 
     /**
@@ -328,21 +459,30 @@ public class MeteorogramBroker implements StatusListener {
      * in case there is already a task for the given info, it's returned. It's the caller
      * responsibility with dealing with this.
      * @param info the {@link MeteorogramInfo} that needs a task to perform a download.
-     * @return the {@link ForecastDataDownloader} that performs a download.
+     * @return the {@link ForecastDataDownloader} that performs a download or
+     *         {@code null} if it cannot be created.
      */
     public ForecastDataDownloader getForcedDownloadTask(MeteorogramInfo info) {
 //#mdebug
         log.info("Getting a forced downaload task for info: " + info);
 //#enddebug
-        ForecastDataDownloader task =
-                (ForecastDataDownloader) infoToDownloadTask.get(info);
-        if (task == null) {
+        ForecastDataDownloader task = null;
+        synchronized (infoToDownloadTask) {
+            task = (ForecastDataDownloader) infoToDownloadTask.get(info);
+            if (task == null) {
 //#mdebug
-            log.debug("Creating a new forced download task for info: " + info);
+                log.debug("Creating a new forced download task for info: " + info);
 //#enddebug
-            task = ForecastDataDownloaderFactory.getForcedDownloader();
-            task.setMeteorogramInfo(info);
-            infoToDownloadTask.put(info, task);
+                task = ForecastDataDownloaderFactory.getForcedDownloader();
+                if (task == null) {
+//#mdebug
+                    log.error("Cannot create forced download task for info: " + info);
+//#enddebug
+                    return null;
+                }
+                task.setMeteorogramInfo(info);
+                infoToDownloadTask.put(info, task);
+            }
         }
         task.addListener(this);
         return task;
@@ -356,30 +496,124 @@ public class MeteorogramBroker implements StatusListener {
      * is really needed. However, in case there is already a task for the given info,
      * it's returned. It's the caller responsibility with dealing with this.
      * @param info the {@link MeteorogramInfo} that needs a task to perform a download.
-     * @return the {@link ForecastDataDownloader} that performs a download.
+     * @return the {@link ForecastDataDownloader} that performs a download or
+     *         {@code null} if it cannot be created.
      */
     public ForecastDataDownloader getCheckedDownloadTask(MeteorogramInfo info) {
 //#mdebug
         log.info("Getting a checked downaload task for info: " + info);
 //#enddebug
-        ForecastDataDownloader task =
-                (ForecastDataDownloader) infoToDownloadTask.get(info);
-        if (task == null) {
+        ForecastDataDownloader task = null;
+        synchronized (infoToDownloadTask) {
+            task = (ForecastDataDownloader) infoToDownloadTask.get(info);
+            if (task == null) {
 //#mdebug
-            log.debug("Creating a new checked download task for info: " + info);
+                log.debug("Creating a new checked download task for info: " + info);
 //#enddebug
-            task = ForecastDataDownloaderFactory.getCheckedDownloader();
-            task.setMeteorogramInfo(info);
-            infoToDownloadTask.put(info, task);
+                task = ForecastDataDownloaderFactory.getCheckedDownloader();
+                if (task == null) {
+//#mdebug
+                    log.error("Cannot create checked download task for info: " + info);
+//#enddebug
+                    return null;
+                }
+                task.setMeteorogramInfo(info);
+                infoToDownloadTask.put(info, task);
+            }
         }
         task.addListener(this);
         return task;
     }
 
+    /**
+     * Creates the task that refreshes forecast for a batch of infos. The task
+     * is already started when returned. The stale infos are refreshed first.
+     * The infos that are already being downloaded are skipped.
+     * @param infos the {@link Vector} with {@link MeteorogramInfo}s to refresh.
+     * @return the started {@link RefreshAllTask}.
+     * @throws NullPointerException if {@code infos} is {@code null}.
+     * @see #createRefreshAllTask(Vector)
+     */
+    public RefreshAllTask refreshAll(Vector infos) {
+        RefreshAllTask task = createRefreshAllTask(infos);
+        task.start();
+        return task;
+    }
+
+    /**
+     * Creates the task that refreshes forecast for a batch of infos like
+     * {@link #refreshAll(Vector)}, but it's not started. It lets the caller
+     * register listeners before the task reports anything, then the task is
+     * started with {@link RefreshAllTask#start()}.
+     * @param infos the {@link Vector} with {@link MeteorogramInfo}s to refresh.
+     * @return the {@link RefreshAllTask} that hasn't been started.
+     * @throws NullPointerException if {@code infos} is {@code null}.
+     */
+    public RefreshAllTask createRefreshAllTask(Vector infos) {
+//#mdebug
+        log.info("Refreshing all infos: " + infos);
+//#enddebug
+        return new RefreshAllTask(this, infos, getRefreshWidth());
+    }
+
+    /**
+     * Creates the checked download task for the {@code info} to be run as a
+     * part of batch refresh. The broker is not registered at the task, so it's
+     * the caller responsibility to pass the final status to {@link #statusUpdate}.
+     * @param info the {@link MeteorogramInfo} that needs a task to perform a download.
+     * @return the {@link ForecastDataDownloader} or {@code null} if there
+     *         already is a task for the {@code info}.
+     * @throws IllegalStateException if the task cannot be created.
+     */
+    ForecastDataDownloader createBatchDownloadTask(MeteorogramInfo info) {
+        synchronized (infoToDownloadTask) {
+            if (infoToDownloadTask.containsKey(info)) {
+                return null;
+            }
+//#mdebug
+            log.debug("Creating a new batch download task for info: " + info);
+//#enddebug
+            ForecastDataDownloader task = ForecastDataDownloaderFactory.getCheckedDownloader();
+            if (task == null) {
+//#mdebug
+                log.error("Cannot create batch download task for info: " + info);
+//#enddebug
+                throw new IllegalStateException("Cannot create download task!");
+            }
+            task.setMeteorogramInfo(info);
+            infoToDownloadTask.put(info, task);
+            return task;
+        }
+    }
+
+    /**
+     * Gets the number of concurrent downloads run by {@link #refreshAll(Vector)}.
+     * Unless it has been set it is {@value #WLAN_REFRESH_WIDTH} when the
+     * device is connected with WLAN, and {@value #DEFAULT_REFRESH_WIDTH} otherwise.
+     * @return the refreshWidth
+     */
+    public int getRefreshWidth() {
+        if (refreshWidth > 0) {
+            return refreshWidth;
+        }
+        return "wlan".equals(System.getProperty(NETWORK_ACCESS_PROPERTY))
+                ? WLAN_REFRESH_WIDTH : DEFAULT_REFRESH_WIDTH;
+    }
+
+    /**
+     * @param refreshWidth the refreshWidth to set, or {@code 0} to determine
+     *        it by the network access.
+     */
+    public void setRefreshWidth(int refreshWidth) {
+        this.refreshWidth = refreshWidth;
+    }
+
     /**
      * When one of the {@link ForecastDataDownloader}s finishes it's downloading
      * it's removed from mapping. It's done whenever {@code status} is one of:
-     * {@value Status#CANCELLED} or {@value Status#FINISHED}.
+     * {@value Status#CANCELLED} or {@value Status#FINISHED}. When the task has
+     * downloaded a duplicate of the model result, neither the DAO nor the
+     * listeners are updated.
      * @param source the {@link StatusReporter} that triggered the event.
      * @param status the {@link Status} that describes the status.
      * @throws NullPointerException when either {@code source} or {@code status} is {@code null}.
@@ -400,18 +634,169 @@ public class MeteorogramBroker implements StatusListener {
             ForecastDataDownloader task = (ForecastDataDownloader) source;
             MeteorogramInfo info = task.getMeteorogramInfo();
             if (status == Status.FINISHED) {
-                if (!info.dataAvailability().equals(Availability.NOT_AVAILABLE)) {
-                    forecastDataDao.createOrUpdate(info.getId(), info.getForecastData());
-                } else {
+                boolean updated = true;
+                if (info.dataAvailability().equals(Availability.NOT_AVAILABLE)) {
 //#mdebug
                     log.warn("The download task has finished, but there is no ForecastData! " + source);
 //#enddebug
                     forecastDataDao.delete(info.getId());
+                    StorageQuotaManager.getInstance().forget(info);
+                } else if (task.isModelResultDuplicate()) {
+//#mdebug
+                    log.info("ForecastData is the same as downloaded, skipping update for: " + info);
+//#enddebug
+                    discardCheckpoint(task.getModelResultUrl());
+                    updated = false;
+                } else if (task.isForecastDataChanged()) {
+                    ForecastData replaced = readReplacedRun(info);
+                    if (persistForecastData(info)) {
+                        discardCheckpoint(task.getModelResultUrl());
+                        ModelResultCache.getInstance().add(info);
+                        archiveForecastData(info, replaced);
+                    }
+                } else {
+//#mdebug
+                    log.info("ForecastData hasn't changed, not persisting it for: " + info);
+//#enddebug
+                }
+                if (updated) {
+                    fireUpdatedMeteorogramInfo(info);
                 }
-                fireUpdatedMeteorogramInfo(info);
             }
-            infoToDownloadTask.remove(info);
+            boolean idle = false;
+            synchronized (infoToDownloadTask) {
+                infoToDownloadTask.remove(info);
+                idle = infoToDownloadTask.isEmpty();
+            }
             task.removeListener(this);
+            if (idle) {
+//#mdebug
+                log.debug("No downloads left, reclaiming forecast data storage");
+//#enddebug
+                forecastDataDao.reclaim();
+            }
+        }
+    }
+
+    /**
+     * Persists the {@link ForecastData} of the {@code info}. The archived runs
+     * and the model results of other infos are evicted by
+     * {@link StorageQuotaManager} before, so the new one fits into the budget,
+     * and after each failed write, until there is nothing left to evict. The
+     * evicted infos are updated in DAO.
+     * @param info the {@link MeteorogramInfo} which {@link ForecastData} to persist.
+     * @return {@code true} if the {@link ForecastData} has been persisted,
+     *         {@code false} otherwise.
+     */
+    private boolean persistForecastData(MeteorogramInfo info) {
+        StorageQuotaManager quota = StorageQuotaManager.getInstance();
+        MeteorogramInfo evicted = null;
+        while (!quota.isRoomFor(info) && (evicted = quota.evict(info)) != null) {
+            updateMeteorogramInfo(evicted);
+        }
+        boolean persisted = forecastDataDao.createOrUpdate(info.getId(), info.getForecastData());
+        while (!persisted && (evicted = quota.evict(info)) != null) {
+//#mdebug
+            log.info("Retrying to persist ForecastData after eviction for: " + info);
+//#enddebug
+            updateMeteorogramInfo(evicted);
+            persisted = forecastDataDao.createOrUpdate(info.getId(), info.getForecastData());
+        }
+        if (persisted) {
+            quota.track(info);
+        }
+        return persisted;
+    }
+
+    /**
+     * Reads the persisted {@link ForecastData} of the {@code info} before it's
+     * replaced by the downloaded one, if it's an older run. The header is
+     * compared first, so the model result is read only when it's archived.
+     * @param info the {@link MeteorogramInfo} with the downloaded {@link ForecastData}.
+     * @return the persisted {@link ForecastData} of an older run or {@code null}
+     *         if there is none or there is no history to archive it in.
+     */
+    private ForecastData readReplacedRun(MeteorogramInfo info) {
+        if (forecastHistoryDao == null || info.getId() == null) {
+            return null;
+        }
+        ForecastData header = forecastDataDao.readHeader(info.getId());
+        if (header == null || header.getModelStart().equals(info.getForecastData().getModelStart())) {
+            return null;
+        }
+        return forecastDataDao.read(info.getId());
+    }
+
+    /**
+     * Archives the {@code replaced} run of the {@code info}, that has just
+     * been replaced by a newer one, so it can still be viewed. The archived
+     * runs are tracked by {@link StorageQuotaManager} within the same budget
+     * as the model results.
+     * @param info the {@link MeteorogramInfo} the {@code replaced} run belongs to.
+     * @param replaced the {@link ForecastData} of the replaced run or {@code null}.
+     */
+    private void archiveForecastData(MeteorogramInfo info, ForecastData replaced) {
+        if (replaced == null) {
+            return;
+        }
+        if (!forecastHistoryDao.archive(info.getId(), replaced)) {
+//#mdebug
+            log.warn("Cannot archive replaced ForecastData for: " + info);
+//#enddebug
+        }
+        StorageQuotaManager.getInstance().trackHistory(info,
+                forecastHistoryDao.getSize(info.getId()));
+    }
+
+    /**
+     * Counts the runs of the {@code info} that have been archived and can be
+     * viewed, not including the current one.
+     * @param info the {@link MeteorogramInfo} to count the runs of.
+     * @return the {@code int} with number of archived runs.
+     */
+    public int getRunCount(MeteorogramInfo info) {
+        if (forecastHistoryDao == null || info.getId() == null) {
+            return 0;
+        }
+        return forecastHistoryDao.getRunCount(info.getId());
+    }
+
+    /**
+     * Reads the archived run of the {@code info} that is {@code back} runs
+     * older than the latest archived one, which is the run the current one
+     * has replaced.
+     * @param info the {@link MeteorogramInfo} to read the run of.
+     * @param back the {@code int} with number of runs to go back.
+     * @return the {@link ForecastData} of the run or {@code null} if there is
+     *         no such run.
+     */
+    public ForecastData getRun(MeteorogramInfo info, int back) {
+        if (forecastHistoryDao == null || info.getId() == null) {
+            return null;
+        }
+        return forecastHistoryDao.read(info.getId(), back);
+    }
+
+    /**
+     * Ignores the progress of the download tasks, only their ends matter.
+     * @param source the {@link StatusReporter} that triggered the event.
+     * @param progress the {@code int} with progress of the {@code source}.
+     */
+    public void progressUpdate(StatusReporter source, int progress) {
+    }
+
+    /**
+     * Discards the checkpoint of the model result download, since the model
+     * result has been persisted.
+     * @param url the {@link String} with URL of the model result or {@code null}.
+     */
+    private void discardCheckpoint(String url) {
+        DownloadCheckpointDao checkpointDao = AbstractConnectorDownloader.getDownloadCheckpointDao();
+        if (checkpointDao != null && url != null) {
+//#mdebug
+            log.debug("Discarding checkpoint for: " + url);
+//#enddebug
+            checkpointDao.delete(url);
         }
     }
 
@@ -428,4 +813,68 @@ public class MeteorogramBroker implements StatusListener {
     public void setForecastDataDao(ForecastDataDao forecastDataDao) {
         this.forecastDataDao = forecastDataDao;
     }
+
+    /**
+     * @return the forecastHistoryDao
+     */
+    public ForecastHistoryDao getForecastHistoryDao() {
+        return forecastHistoryDao;
+    }
+
+    /**
+     * @param forecastHistoryDao the forecastHistoryDao to set
+     */
+    public void setForecastHistoryDao(ForecastHistoryDao forecastHistoryDao) {
+        this.forecastHistoryDao = forecastHistoryDao;
+    }
+
+    /**
+     * Collects the {@link MeteorogramInfo}s read from DAO into batches and
+     * fires them. Each info gets the header of its {@link ForecastData} before
+     * it's fired.
+     */
+    private class ReadBatcher implements MeteorogramInfoReadListener {
+
+        /**
+         * The infos read since the last batch has been fired.
+         */
+        private Vector batch = new Vector(READ_BATCH_SIZE);
+        /**
+         * Tells if any batch has been fired already.
+         */
+        private boolean fired = false;
+
+        /**
+         * Adds the {@code info} to the batch and fires the batch when it's the
+         * first info or the batch is full.
+         * @param info the {@link MeteorogramInfo} read from DAO.
+         */
+        public void readMeteorogramInfo(MeteorogramInfo info) {
+            ForecastData forecastData = forecastDataDao.readHeader(info.getId());
+            if (forecastData != null) {
+                info.setForecastData(forecastData);
+                StorageQuotaManager.getInstance().track(info);
+            }
+            if (forecastHistoryDao != null) {
+                StorageQuotaManager.getInstance().trackHistory(info,
+                        forecastHistoryDao.getSize(info.getId()));
+            }
+            batch.addElement(info);
+            if (!fired || batch.size() >= READ_BATCH_SIZE) {
+                flush();
+            }
+        }
+
+        /**
+         * Fires the infos that haven't been fired yet.
+         */
+        public void flush() {
+            if (!batch.isEmpty()) {
+                Vector read = batch;
+                batch = new Vector(READ_BATCH_SIZE);
+                fired = true;
+                fireReadMeteorogramInfoBatch(read);
+            }
+        }
+    }
 }
@@ -26,6 +26,17 @@ import com.kenai.weathericm.domain.MeteorogramInfo;
  */
 public interface MeteorogramBrokerListener {
 
+    /**
+     * Event fired whenever a batch of infos has been read from DAO. The batches
+     * are fired while infos are being read, so they can be shown before all
+     * of them are read. The {@link #readMeteorogramInfo(Vector)} is fired with
+     * all the infos after the last batch.
+     * @param meteorogramInfosBatch the {@link Vector} that contains the
+     *                              {@link MeteorogramInfo}s read since the
+     *                              previous batch.
+     */
+    void readMeteorogramInfoBatch(Vector meteorogramInfosBatch);
+
     /**
      * Event fired whenever all the info has been read from DAO.
      * @param newMeteorogramInfos the {@link Vector} that contains all the read
@@ -0,0 +1,306 @@
+/*
+ *  Copyright (C) 2010 Przemek Kryger
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.kenai.weathericm.app;
+
+import com.kenai.weathericm.domain.ForecastData;
+import com.kenai.weathericm.domain.MeteorogramInfo;
+import com.kenai.weathericm.repository.ForecastDataDao;
+import java.util.Hashtable;
+import java.util.Vector;
+//#mdebug
+import net.sf.microlog.core.Logger;
+import net.sf.microlog.core.LoggerFactory;
+//#enddebug
+
+/**
+ * This keeps the model results of {@link MeteorogramInfo}s in memory within
+ * a budget of bytes. The {@link MeteorogramInfo}s are read with the model
+ * results not loaded, and the model result is read from {@link ForecastDataDao}
+ * when it's needed to be shown. When the budget is exceeded, the model results
+ * of the least recently used {@link MeteorogramInfo}s are unloaded. Only the
+ * model results that are persisted are unloaded, so they can be read again.
+ * @author Przemek Kryger
+ * @see ModelResultCache#getInstance()
+ */
+public class ModelResultCache {
+
+    /**
+     * The default budget in bytes, it's enough for a few meteorograms.
+     */
+    public final static int DEFAULT_BUDGET = 64 * 1024;
+//#mdebug
+    /**
+     * The logger for the class.
+     */
+    private final static Logger log = LoggerFactory.getLogger(ModelResultCache.class);
+//#enddebug
+    /**
+     * The {@link ModelResultCache} singleton instance.
+     */
+    private static ModelResultCache instance = null;
+    /**
+     * The DAO used to read the model results or {@code null}.
+     */
+    private ForecastDataDao forecastDataDao = null;
+    /**
+     * The budget in bytes for loaded model results.
+     */
+    private int budget = DEFAULT_BUDGET;
+    /**
+     * The bytes of the loaded model results that are kept.
+     */
+    private int usedBytes = 0;
+    /**
+     * The ids of {@link MeteorogramInfo}s, the least recently used first.
+     */
+    private final Vector usage = new Vector();
+    /**
+     * Maps ids of {@link MeteorogramInfo}s to {@link ForecastData} with
+     * loaded model result.
+     */
+    private final Hashtable forecastData = new Hashtable();
+    /**
+     * Maps ids of {@link MeteorogramInfo}s to the {@link Integer} length of
+     * the model result as it was when it was added.
+     */
+    private final Hashtable lengths = new Hashtable();
+
+    /**
+     * Private constructor for singleton safety.
+     */
+    private ModelResultCache() {
+//#mdebug
+        log.debug("Created ModelResultCache instance");
+//#enddebug
+    }
+
+    /**
+     * Gets the singleton instance.
+     * @return the {@link ModelResultCache} instance.
+     */
+    public static synchronized ModelResultCache getInstance() {
+        if (instance == null) {
+            instance = new ModelResultCache();
+        }
+        return instance;
+    }
+
+    /**
+     * Sets the DAO used to read the model results.
+     * @param forecastDataDao the {@link ForecastDataDao} to use or {@code null}.
+     */
+    public synchronized void setForecastDataDao(ForecastDataDao forecastDataDao) {
+        this.forecastDataDao = forecastDataDao;
+    }
+
+    /**
+     * Gets the DAO used to read the model results.
+     * @return the {@link ForecastDataDao} or {@code null}.
+     */
+    public synchronized ForecastDataDao getForecastDataDao() {
+        return forecastDataDao;
+    }
+
+    /**
+     * Sets the budget of loaded model results. The least recently used ones
+     * are unloaded when it's exceeded.
+     * @param budget the {@code int} with budget in bytes.
+     * @throws IllegalArgumentException if the {@code budget} is negative.
+     */
+    public synchronized void setBudget(int budget) {
+        if (budget < 0) {
+//#mdebug
+            log.error("Cannot set budget to: " + budget);
+//#enddebug
+            throw new IllegalArgumentException("Budget must be greater or equal to 0!");
+        }
+        this.budget = budget;
+        evict(null);
+    }
+
+    /**
+     * @return the {@code int} with budget in bytes.
+     */
+    public synchronized int getBudget() {
+        return budget;
+    }
+
+    /**
+     * @return the {@code int} with bytes of loaded model results that are kept.
+     */
+    public synchronized int getUsedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * Gets the model result of the {@code info}. When it's not loaded, it's
+     * read from the {@link ForecastDataDao} and the least recently used model
+     * results are unloaded if the budget is exceeded.
+     * @param info the {@link MeteorogramInfo} to get the model result of.
+     * @return the {@code byte[]} with model result or {@code null} if there
+     *         is none or it cannot be read.
+     * @throws NullPointerException if the {@code info} is {@code null}.
+     */
+    public byte[] getModelResult(MeteorogramInfo info) {
+        if (info == null) {
+//#mdebug
+            log.error("Cannot get model result for null info!");
+//#enddebug
+            throw new NullPointerException("Cannot get model result for null info!");
+        }
+        ForecastData data = info.getForecastData();
+        if (data == null || !data.hasModelResult()) {
+            return null;
+        }
+        byte[] modelResult = data.getModelResult();
+        if (modelResult != null) {
+            touch(info.getId(), data);
+            return modelResult;
+        }
+        ForecastDataDao dao = getForecastDataDao();
+        if (dao == null || info.getId() == null) {
+//#mdebug
+            log.warn("Cannot read model result of " + info);
+//#enddebug
+            return null;
+        }
+//#mdebug
+        log.debug("Reading model result of " + info);
+//#enddebug
+        ForecastData stored = dao.read(info.getId());
+        if (stored == null || stored.getModelResult() == null
+                || !data.getModelStart().equals(stored.getModelStart())) {
+//#mdebug
+            log.warn("Cannot find model result of " + info + " in DAO: " + stored);
+//#enddebug
+            return null;
+        }
+        modelResult = stored.getModelResult();
+        synchronized (this) {
+            data.setModelResult(modelResult, stored.getChecksum());
+            add(info.getId(), data);
+        }
+        return modelResult;
+    }
+
+    /**
+     * Adds the persisted model result of the {@code info}, so it can be
+     * unloaded when the budget is exceeded. The model result that has been
+     * added for the {@code info} earlier is forgotten.
+     * @param info the {@link MeteorogramInfo} which model result has been persisted.
+     * @throws NullPointerException if the {@code info} is {@code null}.
+     */
+    public synchronized void add(MeteorogramInfo info) {
+        if (info == null) {
+//#mdebug
+            log.error("Cannot add model result for null info!");
+//#enddebug
+            throw new NullPointerException("Cannot add model result for null info!");
+        }
+        if (info.getId() == null) {
+            return;
+        }
+        ForecastData data = info.getForecastData();
+        if (data != null && data.isModelResultLoaded()) {
+            add(info.getId(), data);
+        } else {
+            forget(info.getId());
+        }
+    }
+
+    /**
+     * Forgets the model result of the {@code info}. It's not unloaded, so it
+     * can be used while the {@code info} exists.
+     * @param info the {@link MeteorogramInfo} to forget the model result of.
+     * @throws NullPointerException if the {@code info} is {@code null}.
+     */
+    public synchronized void remove(MeteorogramInfo info) {
+        if (info == null) {
+//#mdebug
+            log.error("Cannot remove model result for null info!");
+//#enddebug
+            throw new NullPointerException("Cannot remove model result for null info!");
+        }
+        if (info.getId() != null) {
+            forget(info.getId());
+        }
+    }
+
+    /**
+     * Marks the {@code data} as the most recently used if it's kept.
+     * @param id the {@link Integer} with id of the info or {@code null}.
+     * @param data the {@link ForecastData} of the info.
+     */
+    private synchronized void touch(Integer id, ForecastData data) {
+        if (id != null && forecastData.get(id) == data) {
+            usage.removeElement(id);
+            usage.addElement(id);
+        }
+    }
+
+    /**
+     * Keeps the {@code data} as the most recently used and unloads the least
+     * recently used ones when the budget is exceeded.
+     * @param id the {@link Integer} with id of the info.
+     * @param data the {@link ForecastData} with loaded model result.
+     */
+    private void add(Integer id, ForecastData data) {
+        forget(id);
+        int length = data.getModelResultLength();
+        forecastData.put(id, data);
+        lengths.put(id, new Integer(length));
+        usage.addElement(id);
+        usedBytes += length;
+        evict(id);
+    }
+
+    /**
+     * Forgets the model result kept for the {@code id}.
+     * @param id the {@link Integer} with id of the info.
+     * @return the {@link ForecastData} that has been kept or {@code null}.
+     */
+    private ForecastData forget(Integer id) {
+        ForecastData data = (ForecastData) forecastData.remove(id);
+        if (data != null) {
+            usage.removeElement(id);
+            usedBytes -= ((Integer) lengths.remove(id)).intValue();
+        }
+        return data;
+    }
+
+    /**
+     * Unloads the least recently used model results until the budget is met.
+     * @param keep the {@link Integer} with id of the info, which model result
+     *        is not unloaded or {@code null}.
+     */
+    private void evict(Integer keep) {
+        int i = 0;
+        while (usedBytes > budget && i < usage.size()) {
+            Integer id = (Integer) usage.elementAt(i);
+            if (id.equals(keep)) {
+                i++;
+                continue;
+            }
+            ForecastData data = forget(id);
+//#mdebug
+            log.debug("Unloading model result of info id = " + id);
+//#enddebug
+            data.unloadModelResult();
+        }
+    }
+}
@@ -17,6 +17,7 @@
  */
 package com.kenai.weathericm.app;
 
+import com.kenai.weathericm.domain.MeteorogramType;
 import com.kenai.weathericm.util.StatusReporter;
 
 /**
@@ -33,9 +34,68 @@ public interface ModelResultDownloader extends StatusReporter {
      */
     byte[] downloadModelResult(String url);
 
+    /**
+     * Downloads the model result (image with forecast) based on the given
+     * {@code url} only if it has changed since it has been downloaded last
+     * time with the same {@code validatorKey}.
+     * @param url the {@link String} where from the data shall be downloaded.
+     * @param validatorKey the {@link String} that identifies the validators of
+     *        previously downloaded data, or {@code null} to download unconditionally.
+     * @return the {@code byte[]} array with meteorogram data or {@code null}
+     *         if it hasn't been modified.
+     * @see #isNotModified()
+     */
+    byte[] downloadModelResult(String url, String validatorKey);
+
+    /**
+     * Downloads the model result (image with forecast) based on the given
+     * {@code url}. The validators stored under {@code validatorKey} are sent
+     * only when {@code revalidate} is {@code true}, but the validators received
+     * with the model result are stored under it anyway, so the next download
+     * of the same model result can be conditional.
+     * @param url the {@link String} where from the data shall be downloaded.
+     * @param validatorKey the {@link String} that identifies the validators of
+     *        the model result, or {@code null} to not use validators.
+     * @param revalidate tells if the download shall be skipped when the model
+     *        result hasn't been modified.
+     * @return the {@code byte[]} array with meteorogram data or {@code null}
+     *         if it hasn't been modified.
+     * @see #isNotModified()
+     */
+    byte[] downloadModelResult(String url, String validatorKey, boolean revalidate);
+
+    /**
+     * Checks if the last download has been skipped since the model result
+     * hasn't been modified.
+     * @return {@code true} if the model result hasn't been modified,
+     *         {@code false} otherwise.
+     */
+    boolean isNotModified();
+
+    /**
+     * Gets the checksum of the model result received by the last download.
+     * @return the {@code long} with checksum of the model result or {@code -1}
+     *         if it hasn't been computed.
+     * @see com.kenai.weathericm.domain.ForecastData#getChecksum()
+     */
+    long getChecksum();
+
     /**
      * Aborts the model result downloading.
      * @return {@code true} if download has been aborted, {@code false} otherwise.
      */
     boolean cancel();
+
+    /**
+     * Gets the outcome of the last model result download.
+     * @return the {@link DownloadOutcome} or {@code null} if nothing has been
+     *         downloaded yet.
+     */
+    DownloadOutcome getOutcome();
+
+    /**
+     * Sets the model the model result is downloaded for.
+     * @param type the {@link MeteorogramType} or {@code null} if it's not known.
+     */
+    void setMeteorogramType(MeteorogramType type);
 }
@@ -0,0 +1,268 @@
+/*
+ *  Copyright (C) 2010 Przemek Kryger
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.kenai.weathericm.app;
+
+import com.kenai.weathericm.domain.ForecastData;
+import com.kenai.weathericm.domain.MeteorogramType;
+import com.kenai.weathericm.util.ProgressListener;
+import com.kenai.weathericm.util.Properties;
+import com.kenai.weathericm.util.Status;
+import com.kenai.weathericm.util.StatusListener;
+import com.kenai.weathericm.util.StatusReporter;
+import java.util.Enumeration;
+import java.util.Hashtable;
+//#mdebug
+import net.sf.microlog.core.Logger;
+import net.sf.microlog.core.LoggerFactory;
+//#enddebug
+
+/**
+ * This resolves the start date of the latest model run for each
+ * {@link MeteorogramType}, so the start data is downloaded once for all
+ * the meteorograms of the same type. The resolved start date is
+ * cached until the next model run is due, that is {@value #MODEL_RUN_INTERVAL_KEY}
+ * hours after the model start. Afterwards, it is cached for
+ * {@value #RECHECK_INTERVAL} milliseconds only, so the new model run is
+ * noticed soon after it is published. When the start date for a type is
+ * being downloaded, the other requests for the same type wait for that
+ * download instead of starting their own.
+ * Since it is shared by all the download tasks it implements singleton pattern.
+ * @author Przemek Kryger
+ * @see ModelRunResolver#getInstance()
+ */
+public class ModelRunResolver {
+
+    /**
+     * The key used to obtain the number of hours between model runs.
+     */
+    public final static String MODEL_RUN_INTERVAL_KEY = "model.run.interval";
+    /**
+     * The time (in milliseconds) the start date is cached for, when the next
+     * model run is already due.
+     */
+    public final static long RECHECK_INTERVAL = 10L * 60L * 1000L;
+    /**
+     * The number of milliseconds in an hour.
+     */
+    private final static long HOUR = 60L * 60L * 1000L;
+//#mdebug
+    /**
+     * The logger for the class.
+     */
+    private final static Logger log = LoggerFactory.getLogger(ModelRunResolver.class);
+//#enddebug
+    /**
+     * Singleton instance of {@link ModelRunResolver}.
+     */
+    private static ModelRunResolver instance = null;
+    /**
+     * Maps {@link MeteorogramType}s to {@link ModelRun}s.
+     */
+    private final Hashtable typeToModelRun = new Hashtable(2);
+
+    /**
+     * Default constructor is private for singleton safety.
+     */
+    private ModelRunResolver() {
+//#mdebug
+        log.debug("Created ModelRunResolver instance");
+//#enddebug
+    }
+
+    /**
+     * Getter for singleton instance.
+     * @return the {@link ModelRunResolver} instance.
+     */
+    public static synchronized ModelRunResolver getInstance() {
+        if (instance == null) {
+            instance = new ModelRunResolver();
+        }
+        return instance;
+    }
+
+    /**
+     * Resolves the start date of the latest model run for the {@code type}.
+     * The cached start date is returned if it is still valid. If another
+     * request is downloading the start date for the same {@code type}, this
+     * one waits for it. Otherwise the start data is downloaded from
+     * {@code startUrl} with the {@code downloader}.
+     * @param type the {@link MeteorogramType} to resolve start date for.
+     * @param typeProperties the {@link Properties} for the {@code type}.
+     * @param startUrl the {@link String} with URL of the start data.
+     * @param downloader the {@link StartDateDownloader} to download start data with.
+     * @return the {@link String} with start date or {@code null} if it
+     *         hasn't been found in the start data.
+     * @throws InterruptedException if the download hasn't finished or the
+     *         waiting has been interrupted.
+     * @throws NullPointerException if any of the parameters is {@code null}.
+     */
+    public String resolveStartDate(MeteorogramType type, Properties typeProperties,
+            String startUrl, StartDateDownloader downloader) throws InterruptedException {
+        if (type == null || typeProperties == null || startUrl == null || downloader == null) {
+//#mdebug
+            log.error("Cannot resolve start date: type = " + type + ", typeProperties = "
+                    + typeProperties + ", startUrl = " + startUrl + ", downloader = " + downloader);
+//#enddebug
+            throw new NullPointerException("Cannot resolve start date with null parameter!");
+        }
+        ModelRun modelRun;
+        synchronized (this) {
+            while (true) {
+                modelRun = (ModelRun) typeToModelRun.get(type);
+                if (modelRun == null) {
+                    modelRun = new ModelRun();
+                    typeToModelRun.put(type, modelRun);
+                }
+                if (!modelRun.resolving) {
+                    break;
+                }
+//#mdebug
+                log.debug("Waiting for start date of " + type);
+//#enddebug
+                wait();
+            }
+            if (modelRun.startDate != null && System.currentTimeMillis() < modelRun.expires) {
+//#mdebug
+                log.debug("Using cached start date for " + type + ": " + modelRun.startDate);
+//#enddebug
+                return modelRun.startDate;
+            }
+            modelRun.resolving = true;
+        }
+        String startDate = null;
+        try {
+            startDate = download(typeProperties, startUrl, downloader,
+                    StartDateScanner.getScanner(type, typeProperties));
+        } finally {
+            synchronized (this) {
+                modelRun.resolving = false;
+                if (startDate != null) {
+                    modelRun.startDate = startDate;
+                    modelRun.expires = computeExpires(startDate, typeProperties);
+                }
+                notifyAll();
+            }
+        }
+        return startDate;
+    }
+
+    /**
+     * Forgets the cached start date for the {@code type}, so it is downloaded
+     * again by the next request.
+     * @param type the {@link MeteorogramType} to forget start date for.
+     */
+    public synchronized void invalidate(MeteorogramType type) {
+        ModelRun modelRun = (ModelRun) typeToModelRun.get(type);
+        if (modelRun != null) {
+            modelRun.startDate = null;
+        }
+    }
+
+    /**
+     * Forgets all the cached start dates.
+     */
+    public synchronized void clear() {
+        for (Enumeration e = typeToModelRun.elements(); e.hasMoreElements();) {
+            ((ModelRun) e.nextElement()).startDate = null;
+        }
+    }
+
+    /**
+     * Downloads the start date with the {@code downloader}.
+     * @param typeProperties the {@link Properties} for the type.
+     * @param startUrl the {@link String} with URL of the start data.
+     * @param downloader the {@link StartDateDownloader} to download start data with.
+     * @param scanner the {@link StartDateScanner} to look for start date with.
+     * @return the {@link String} with start date or {@code null} if it hasn't been found.
+     * @throws InterruptedException if the download hasn't finished.
+     */
+    private String download(Properties typeProperties, String startUrl,
+            StartDateDownloader downloader, StartDateScanner scanner)
+            throws InterruptedException {
+        final Status[] lastStatus = new Status[1];
+        StatusListener listener = new ProgressListener() {
+
+            public void statusUpdate(StatusReporter source, Status status) {
+                lastStatus[0] = status;
+            }
+
+            public void progressUpdate(StatusReporter source, int progress) {
+            }
+        };
+        downloader.addListener(listener);
+        String startDate;
+        try {
+            startDate = downloader.downloadStartDate(startUrl, scanner.createMatcher());
+        } finally {
+            downloader.removeListener(listener);
+        }
+        if (!Status.FINISHED.equals(lastStatus[0])) {
+            throw new InterruptedException();
+        }
+        return startDate;
+    }
+
+    /**
+     * Computes when the cached {@code startDate} expires.
+     * @param startDate the {@link String} with start date.
+     * @param typeProperties the {@link Properties} with {@value #MODEL_RUN_INTERVAL_KEY}.
+     * @return the {@code long} time the {@code startDate} expires at.
+     */
+    private long computeExpires(String startDate, Properties typeProperties) {
+        long now = System.currentTimeMillis();
+        long expires = now + RECHECK_INTERVAL;
+        String interval = typeProperties.getProperty(MODEL_RUN_INTERVAL_KEY);
+        if (interval != null) {
+            try {
+                long nextRun = new ForecastData(startDate).getModelStart().getTime()
+                        + Integer.parseInt(interval) * HOUR;
+                if (nextRun > expires) {
+                    expires = nextRun;
+                }
+            } catch (IllegalArgumentException ex) {
+//#mdebug
+                log.warn("Cannot compute next model run for " + startDate
+                        + " every " + interval + " hours", ex);
+//#enddebug
+            }
+        }
+//#mdebug
+        log.debug("Start date " + startDate + " cached for " + (expires - now) + " ms");
+//#enddebug
+        return expires;
+    }
+
+    /**
+     * This holds the resolved start date for a type.
+     */
+    private static class ModelRun {
+
+        /**
+         * The resolved start date or {@code null}.
+         */
+        private String startDate = null;
+        /**
+         * The time the {@value #startDate} expires at.
+         */
+        private long expires = 0L;
+        /**
+         * Indicates if the start date is being downloaded.
+         */
+        private boolean resolving = false;
+    }
+}
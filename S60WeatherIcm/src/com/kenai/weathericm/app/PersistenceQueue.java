@@ -0,0 +1,206 @@
+/*
+ *  Copyright (C) 2010 Przemek Kryger
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.kenai.weathericm.app;
+
+import com.kenai.weathericm.domain.MeteorogramInfo;
+import java.util.Vector;
+//#mdebug
+import net.sf.microlog.core.Logger;
+import net.sf.microlog.core.LoggerFactory;
+//#enddebug
+
+/**
+ * This is the queue of persistence operations on {@link MeteorogramInfo}s that
+ * are run one by one, in order, by a single worker thread. The thread is
+ * started with the first operation and it ends after being idle for
+ * {@value #IDLE_TIMEOUT} milliseconds. The pending operations are coalesced:
+ * an update of an info that already waits for an update is dropped, as the
+ * pending one will write the latest state of the info, and a delete of an info
+ * drops all it's pending updates.
+ * @author Przemek Kryger
+ */
+public abstract class PersistenceQueue implements Runnable {
+
+//#mdebug
+    /**
+     * The logger for the class.
+     */
+    private final static Logger log = LoggerFactory.getLogger(PersistenceQueue.class);
+//#enddebug
+    /**
+     * The operation that reads all the infos.
+     */
+    public final static int READ_ALL = 0;
+    /**
+     * The operation that creates an info.
+     */
+    public final static int CREATE = 1;
+    /**
+     * The operation that updates an info.
+     */
+    public final static int UPDATE = 2;
+    /**
+     * The operation that deletes an info.
+     */
+    public final static int DELETE = 3;
+    /**
+     * The time in milliseconds the worker waits for a next operation before
+     * it ends.
+     */
+    public final static long IDLE_TIMEOUT = 30000L;
+    /**
+     * The pending operations, as {@link Integer}s.
+     */
+    private final Vector operations = new Vector();
+    /**
+     * The {@link MeteorogramInfo}s of {@value #operations}.
+     */
+    private final Vector infos = new Vector();
+    /**
+     * The worker thread or {@code null} if it's not running.
+     */
+    private Thread worker = null;
+
+    /**
+     * Adds the {@code operation} on the {@code info} to the queue and starts
+     * the worker if it's not running.
+     * @param operation the {@code int} with one of the operations.
+     * @param info the {@link MeteorogramInfo} to run the operation on, it's
+     *        ignored for {@value #READ_ALL}.
+     * @throws NullPointerException if {@code info} is {@code null}, but the
+     *         {@code operation} needs it.
+     * @throws IllegalArgumentException if the {@code operation} is unknown.
+     */
+    public void enqueue(int operation, MeteorogramInfo info) {
+        if (operation < READ_ALL || operation > DELETE) {
+//#mdebug
+            log.error("Unknown persistence operation: " + operation);
+//#enddebug
+            throw new IllegalArgumentException("Unknown persistence operation: " + operation);
+        }
+        if (operation != READ_ALL && info == null) {
+//#mdebug
+            log.error("Cannot enqueue operation " + operation + " for null info!");
+//#enddebug
+            throw new NullPointerException("Cannot enqueue operation for null info!");
+        }
+        synchronized (operations) {
+            if (operation == UPDATE && indexOf(UPDATE, info) != -1) {
+//#mdebug
+                log.debug("Coalescing update of info: " + info);
+//#enddebug
+                return;
+            }
+            if (operation == DELETE) {
+                int index = indexOf(UPDATE, info);
+                while (index != -1) {
+//#mdebug
+                    log.debug("Dropping pending update of deleted info: " + info);
+//#enddebug
+                    operations.removeElementAt(index);
+                    infos.removeElementAt(index);
+                    index = indexOf(UPDATE, info);
+                }
+            }
+            operations.addElement(new Integer(operation));
+            infos.addElement(operation == READ_ALL ? null : info);
+            if (worker == null) {
+                worker = new Thread(this);
+                worker.start();
+            } else {
+                operations.notify();
+            }
+        }
+    }
+
+    /**
+     * Gets the number of operations waiting for the worker.
+     * @return the {@code int} with number of pending operations.
+     */
+    public int getPendingCount() {
+        synchronized (operations) {
+            return operations.size();
+        }
+    }
+
+    /**
+     * Finds the pending {@code operation} on the {@code info}.
+     * @param operation the {@code int} with the operation.
+     * @param info the {@link MeteorogramInfo} of the operation.
+     * @return the {@code int} index of the operation or {@code -1} if it's not pending.
+     */
+    private int indexOf(int operation, MeteorogramInfo info) {
+        for (int i = 0; i < operations.size(); i++) {
+            if (((Integer) operations.elementAt(i)).intValue() == operation
+                    && infos.elementAt(i) == info) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Runs the pending operations one by one until the queue has been idle for
+     * {@value #IDLE_TIMEOUT} milliseconds. A failure of an operation doesn't
+     * stop the following ones.
+     */
+    public void run() {
+        while (true) {
+            int operation;
+            MeteorogramInfo info;
+            synchronized (operations) {
+                if (operations.isEmpty()) {
+                    try {
+                        operations.wait(IDLE_TIMEOUT);
+                    } catch (InterruptedException ex) {
+//#mdebug
+                        log.info("Persistence worker has been interrupted");
+//#enddebug
+                    }
+                    if (operations.isEmpty()) {
+//#mdebug
+                        log.debug("Persistence worker is idle, finishing");
+//#enddebug
+                        worker = null;
+                        return;
+                    }
+                }
+                operation = ((Integer) operations.elementAt(0)).intValue();
+                info = (MeteorogramInfo) infos.elementAt(0);
+                operations.removeElementAt(0);
+                infos.removeElementAt(0);
+            }
+            try {
+                execute(operation, info);
+            } catch (RuntimeException ex) {
+//#mdebug
+                log.error("Persistence operation " + operation + " has failed for: " + info, ex);
+//#enddebug
+            }
+        }
+    }
+
+    /**
+     * Runs the {@code operation} on the {@code info}. It's called from the
+     * worker thread.
+     * @param operation the {@code int} with one of the operations.
+     * @param info the {@link MeteorogramInfo} to run the operation on or
+     *        {@code null} for {@value #READ_ALL}.
+     */
+    protected abstract void execute(int operation, MeteorogramInfo info);
+}
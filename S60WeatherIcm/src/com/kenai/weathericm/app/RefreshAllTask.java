@@ -0,0 +1,511 @@
+/*
+ *  Copyright (C) 2010 Przemek Kryger
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.kenai.weathericm.app;
+
+import com.kenai.weathericm.domain.Availability;
+import com.kenai.weathericm.domain.MeteorogramInfo;
+import com.kenai.weathericm.util.AbstractStatusReporter;
+import com.kenai.weathericm.util.ProgressListener;
+import com.kenai.weathericm.util.Status;
+import com.kenai.weathericm.util.StatusReporter;
+import java.util.Enumeration;
+import java.util.Hashtable;
+import java.util.Vector;
+import org.netbeans.microedition.util.CancellableTask;
+//#mdebug
+import net.sf.microlog.core.Logger;
+import net.sf.microlog.core.LoggerFactory;
+//#enddebug
+
+/**
+ * This task refreshes a batch of {@link MeteorogramInfo}s. The downloads are
+ * run by a fixed number of worker threads, the stale infos first. Each of
+ * finished downloads is handed over to the {@link MeteorogramBroker} from the
+ * thread that runs this task, so persisting it doesn't hold the workers. The
+ * progress of the whole batch is reported as a single progress. The downloads
+ * run in the background of {@link DownloadScheduler}, so they give way to the
+ * ones the user waits for.
+ * @author Przemek Kryger
+ */
+public class RefreshAllTask extends AbstractStatusReporter
+        implements CancellableTask, ProgressListener {
+
+//#mdebug
+    /**
+     * The logger for the class.
+     */
+    private final static Logger log = LoggerFactory.getLogger(RefreshAllTask.class);
+//#enddebug
+    /**
+     * The {@link MeteorogramBroker} that provides and persists the downloads.
+     */
+    private final MeteorogramBroker broker;
+    /**
+     * The number of worker threads.
+     */
+    private final int width;
+    /**
+     * The number of infos in the batch.
+     */
+    private final int total;
+    /**
+     * The {@link MeteorogramInfo}s waiting for a worker, in priority order.
+     */
+    private final Vector jobs;
+    /**
+     * The running {@link ForecastDataDownloader}s mapped to their last
+     * reported progress held in {@code int[1]}.
+     */
+    private final Hashtable taskToProgress = new Hashtable();
+    /**
+     * The finished {@link ForecastDataDownloader}s waiting to be persisted.
+     */
+    private final Vector finishedTasks = new Vector();
+    /**
+     * The {@link Status}es of {@value #finishedTasks}.
+     */
+    private final Vector finishedStatuses = new Vector();
+    /**
+     * The number of infos that haven't been dealt with yet.
+     */
+    private int remaining = 0;
+    /**
+     * The number of infos that have been dealt with.
+     */
+    private int done = 0;
+    /**
+     * The number of infos that failed to refresh.
+     */
+    private int failed = 0;
+    /**
+     * The last reported progress of the batch.
+     */
+    private int lastProgress = 0;
+    /**
+     * The lock that keeps the reported progress from going back.
+     */
+    private final Object progressLock = new Object();
+    /**
+     * Informs if the batch has been cancelled.
+     */
+    private boolean cancelled = false;
+    /**
+     * The last {@link Status} reported by this task.
+     */
+    private Status lastStatus = null;
+
+    /**
+     * Creates the task that refreshes the {@code infos}.
+     * @param broker the {@link MeteorogramBroker} that provides and persists downloads.
+     * @param infos the {@link Vector} with {@link MeteorogramInfo}s to refresh.
+     * @param width the {@code int} with number of worker threads.
+     * @throws NullPointerException if either {@code broker} or {@code infos} is {@code null}.
+     * @throws IllegalArgumentException if {@code width} is not positive.
+     */
+    RefreshAllTask(MeteorogramBroker broker, Vector infos, int width) {
+        if (broker == null || infos == null) {
+//#mdebug
+            log.error("Cannot create refresh task with broker = " + broker
+                    + ", infos = " + infos);
+//#enddebug
+            throw new NullPointerException("Cannot create refresh task with nulls!");
+        }
+        if (width <= 0) {
+//#mdebug
+            log.error("Cannot create refresh task with width = " + width);
+//#enddebug
+            throw new IllegalArgumentException("Cannot create refresh task with width: " + width);
+        }
+        this.broker = broker;
+        this.width = width;
+        jobs = prioritize(infos);
+        total = jobs.size();
+        remaining = total;
+    }
+
+    /**
+     * Orders the {@code infos} by their data availability: the infos with
+     * {@link Availability#AVAILABLE_OLD} go first, then the ones with
+     * {@link Availability#NOT_AVAILABLE} and the ones with
+     * {@link Availability#AVAILABLE} at the end. The order of infos with the
+     * same availability is kept.
+     * @param infos the {@link Vector} with {@link MeteorogramInfo}s.
+     * @return the new {@link Vector} with ordered {@code infos}.
+     */
+    static Vector prioritize(Vector infos) {
+        Vector retValue = new Vector(infos.size());
+        Availability[] order = new Availability[]{Availability.AVAILABLE_OLD,
+            Availability.NOT_AVAILABLE, Availability.AVAILABLE};
+        for (int i = 0; i < order.length; i++) {
+            Enumeration e = infos.elements();
+            while (e.hasMoreElements()) {
+                MeteorogramInfo info = (MeteorogramInfo) e.nextElement();
+                if (info.dataAvailability().equals(order[i])) {
+                    retValue.addElement(info);
+                }
+            }
+        }
+        return retValue;
+    }
+
+    /**
+     * Gets the {@link ForecastDataDownloader} for the {@code info} from the
+     * {@value #broker}.
+     * @param info the {@link MeteorogramInfo} to refresh.
+     * @return the {@link ForecastDataDownloader} or {@code null} if the
+     *         {@code info} is already being downloaded.
+     * @throws IllegalStateException if the download cannot be created.
+     */
+    protected ForecastDataDownloader createTask(MeteorogramInfo info) {
+        return broker.createBatchDownloadTask(info);
+    }
+
+    /**
+     * Runs this task in a new thread.
+     */
+    public void start() {
+        new Thread(this).start();
+    }
+
+    /**
+     * Starts the workers and persists the downloads they finish, until the
+     * whole batch has been dealt with.
+     */
+    public void run() {
+//#mdebug
+        log.info("Refreshing " + total + " infos with " + width + " workers");
+//#enddebug
+        fireStatus(Status.STARTED);
+        int workers = Math.min(width, total);
+        for (int i = 0; i < workers; i++) {
+            new Thread() {
+
+                public void run() {
+                    work();
+                }
+            }.start();
+        }
+        while (true) {
+            ForecastDataDownloader task = null;
+            Status status = null;
+            synchronized (this) {
+                while (finishedTasks.isEmpty() && remaining > 0) {
+                    try {
+                        wait();
+                    } catch (InterruptedException ex) {
+//#mdebug
+                        log.warn("Interrupted while waiting for downloads", ex);
+//#enddebug
+                    }
+                }
+                if (finishedTasks.isEmpty()) {
+                    break;
+                }
+                task = (ForecastDataDownloader) finishedTasks.firstElement();
+                status = (Status) finishedStatuses.firstElement();
+            }
+            try {
+                broker.statusUpdate(task, status);
+            } catch (RuntimeException ex) {
+//#mdebug
+                log.error("Cannot persist download of: " + task.getMeteorogramInfo(), ex);
+//#enddebug
+                status = Status.CANCELLED;
+            }
+            // The task is dequeued only now, so it's counted as done all the time.
+            synchronized (this) {
+                finishedTasks.removeElementAt(0);
+                finishedStatuses.removeElementAt(0);
+                remaining--;
+                done++;
+                if (status != Status.FINISHED) {
+                    failed++;
+                }
+            }
+        }
+//#mdebug
+        log.info("Refreshed " + done + " infos, " + failed + " failed");
+//#enddebug
+        fireStatus(isCancelled() ? Status.CANCELLED : Status.FINISHED);
+    }
+
+    /**
+     * Runs the downloads for the {@value #jobs} until there is none left, then
+     * the worker leaves the background of {@link DownloadScheduler}.
+     */
+    private void work() {
+        try {
+            workInBackground();
+        } finally {
+            DownloadScheduler.getInstance().leaveBackground();
+        }
+    }
+
+    /**
+     * Runs the downloads for the {@value #jobs} as the background downloads
+     * of {@link DownloadScheduler}, until there is none left.
+     */
+    private void workInBackground() {
+        while (true) {
+            MeteorogramInfo info = null;
+            synchronized (this) {
+                if (jobs.isEmpty()) {
+                    return;
+                }
+                info = (MeteorogramInfo) jobs.firstElement();
+                jobs.removeElementAt(0);
+            }
+            ForecastDataDownloader task = null;
+            boolean created = true;
+            try {
+                task = createTask(info);
+            } catch (RuntimeException ex) {
+//#mdebug
+                log.error("Cannot create download for: " + info, ex);
+//#enddebug
+                created = false;
+            }
+            if (task == null) {
+//#mdebug
+                if (created) {
+                    log.info("Info is already being downloaded, skipping: " + info);
+                }
+//#enddebug
+                fireProgress(skipped(!created));
+                continue;
+            }
+            boolean skip = false;
+            synchronized (this) {
+                taskToProgress.put(task, new int[1]);
+                skip = cancelled;
+            }
+            if (skip) {
+                fireProgress(finished(task, Status.CANCELLED));
+                continue;
+            }
+            task.addListener(this);
+            DownloadScheduler.getInstance().enterBackground();
+            try {
+                task.run();
+            } catch (RuntimeException ex) {
+//#mdebug
+                log.error("Download has failed for: " + info, ex);
+//#enddebug
+            }
+            task.removeListener(this);
+            // The task may have ended without reporting it.
+            fireProgress(finished(task, Status.CANCELLED));
+        }
+    }
+
+    /**
+     * Counts the info that got no download as done.
+     * @param failure tells if the download couldn't be created.
+     * @return the {@code int} with the progress.
+     */
+    private synchronized int skipped(boolean failure) {
+        remaining--;
+        done++;
+        if (failure) {
+            failed++;
+        }
+        notifyAll();
+        return getProgress();
+    }
+
+    /**
+     * Queues the {@code task} to be persisted with the {@code status}, unless
+     * it already has been queued.
+     * @param task the finished {@link ForecastDataDownloader}.
+     * @param status the {@link Status} the {@code task} has finished with.
+     * @return the {@code int} with the progress or {@code -1} if the
+     *         {@code task} has been already queued.
+     */
+    private synchronized int finished(ForecastDataDownloader task, Status status) {
+        if (taskToProgress.remove(task) == null) {
+            return -1;
+        }
+        finishedTasks.addElement(task);
+        finishedStatuses.addElement(status);
+        notifyAll();
+        return getProgress();
+    }
+
+    /**
+     * Gets the progress of the whole batch. The downloads waiting to be
+     * persisted are counted as done.
+     * @return the {@code int} with the progress or {@code -1} if the
+     *         batch is empty.
+     */
+    private int getProgress() {
+        if (total == 0) {
+            return -1;
+        }
+        int sum = (done + finishedTasks.size()) * 100;
+        Enumeration progresses = taskToProgress.elements();
+        while (progresses.hasMoreElements()) {
+            sum += ((int[]) progresses.nextElement())[0];
+        }
+        return Math.min(sum / total, 100);
+    }
+
+    /**
+     * Reports the {@code progress} to listeners of this task, unless it's
+     * negative or it hasn't advanced since the last report.
+     * @param progress the {@code int} with the progress or {@code -1}.
+     */
+    private void fireProgress(int progress) {
+        if (progress < 0) {
+            return;
+        }
+        synchronized (progressLock) {
+            if (progress > lastProgress) {
+                lastProgress = progress;
+                fireProgressUpdate(progress);
+            }
+        }
+    }
+
+    /**
+     * Reports the {@code status} to listeners of this task.
+     * @param status the {@link Status} to report.
+     */
+    private void fireStatus(Status status) {
+        synchronized (this) {
+            lastStatus = status;
+        }
+        fireStatusUpdate(status);
+    }
+
+    /**
+     * Tracks the progress of the downloads. The finished ones are queued
+     * to be persisted.
+     * @param source the {@link StatusReporter} that triggered the event.
+     * @param status the {@link Status} that describes the status.
+     * @throws NullPointerException when either {@code source} or {@code status} is {@code null}.
+     */
+    public void statusUpdate(StatusReporter source, Status status) {
+        if (source == null || status == null) {
+//#mdebug
+            log.error("Status or source is null: status = " + status
+                    + ", source = " + source);
+//#enddebug
+            throw new NullPointerException("Cannot update status with nulls!");
+        }
+        if (status == Status.FINISHED || status == Status.CANCELLED) {
+            fireProgress(finished((ForecastDataDownloader) source, status));
+        } else {
+            progressUpdate(source, status.getProgress());
+        }
+    }
+
+    /**
+     * Tracks the progress of the downloads.
+     * @param source the {@link StatusReporter} that triggered the event.
+     * @param progress the {@code int} with progress of the {@code source}.
+     * @throws NullPointerException when {@code source} is {@code null}.
+     */
+    public void progressUpdate(StatusReporter source, int progress) {
+        if (source == null) {
+//#mdebug
+            log.error("Cannot update progress of null source!");
+//#enddebug
+            throw new NullPointerException("Cannot update progress of null source!");
+        }
+        int batchProgress = -1;
+        synchronized (this) {
+            int[] taskProgress = (int[]) taskToProgress.get(source);
+            if (taskProgress != null) {
+                taskProgress[0] = progress;
+                batchProgress = getProgress();
+            }
+        }
+        fireProgress(batchProgress);
+    }
+
+    /**
+     * Cancels the batch. The infos waiting for a worker are dropped and the
+     * running downloads are cancelled.
+     * @return {@code true} if the batch was still running, {@code false} otherwise.
+     */
+    public boolean cancel() {
+        Vector running = null;
+        synchronized (this) {
+            if (remaining == 0) {
+                return false;
+            }
+//#mdebug
+            log.info("Cancelling refresh, dropping " + jobs.size() + " infos");
+//#enddebug
+            cancelled = true;
+            remaining -= jobs.size();
+            jobs.removeAllElements();
+            running = new Vector(taskToProgress.size());
+            Enumeration tasks = taskToProgress.keys();
+            while (tasks.hasMoreElements()) {
+                running.addElement(tasks.nextElement());
+            }
+            notifyAll();
+        }
+        Enumeration tasks = running.elements();
+        while (tasks.hasMoreElements()) {
+            ((ForecastDataDownloader) tasks.nextElement()).cancel();
+        }
+        return true;
+    }
+
+    /**
+     * Informs if the batch has been cancelled.
+     * @return {@code true} if the batch has been cancelled.
+     */
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Informs whether the batch was not successful. Until the batch finishes
+     * this returns {@code true}.
+     * @return {@code true} if the batch hasn't finished or any of infos failed
+     *         to refresh, {@code false} otherwise.
+     */
+    public synchronized boolean hasFailed() {
+        return lastStatus != Status.FINISHED || failed > 0;
+    }
+
+    /**
+     * Gets the reason for the failure.
+     * @return the {@link String} with number of infos that failed to refresh
+     *         or {@code null} if none has failed.
+     */
+    public synchronized String getFailureMessage() {
+        if (failed == 0) {
+            return null;
+        }
+        StringBuffer buffer = new StringBuffer();
+        buffer.append(failed).append(" of ").append(total).append(" refreshes failed");
+        return buffer.toString();
+    }
+
+    /**
+     * Gets the number of infos in the batch.
+     * @return the {@code int} with the number of infos.
+     */
+    public int getTotal() {
+        return total;
+    }
+}
@@ -17,6 +17,7 @@
  */
 package com.kenai.weathericm.app;
 
+import com.kenai.weathericm.domain.MeteorogramType;
 import com.kenai.weathericm.util.StatusReporter;
 
 /**
@@ -26,15 +27,32 @@ import com.kenai.weathericm.util.StatusReporter;
 public interface StartDateDownloader extends StatusReporter {
 
     /**
-     * Downloads the start data for the given {@code url}.
+     * Downloads the start data for the given {@code url}. The data is passed
+     * to the {@code matcher} as it arrives and the download stops as soon as
+     * the {@code matcher} has captured the whole start date.
      * @param url the {@link String} where from the data shall be downloaded.
-     * @return the {@link String} that contains start data.
+     * @param matcher the {@link StartDateMatcher} to look for the start date.
+     * @return the {@link String} with start date in yyyymmddhh format or
+     *         {@code null} if it hasn't been found.
      */
-    String downloadStartDate(String url);
+    String downloadStartDate(String url, StartDateMatcher matcher);
 
     /**
      * Aborts the start data downloading.
      * @return {@code true} if download has been aborted, {@code false} otherwise.
      */
     boolean cancel();
+
+    /**
+     * Gets the outcome of the last start data download.
+     * @return the {@link DownloadOutcome} or {@code null} if nothing has been
+     *         downloaded yet.
+     */
+    DownloadOutcome getOutcome();
+
+    /**
+     * Sets the model the start data is downloaded for.
+     * @param type the {@link MeteorogramType} or {@code null} if it's not known.
+     */
+    void setMeteorogramType(MeteorogramType type);
 }
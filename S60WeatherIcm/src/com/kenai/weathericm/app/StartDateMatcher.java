@@ -0,0 +1,179 @@
+/*
+ *  Copyright (C) 2010 Przemek Kryger
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.kenai.weathericm.app;
+
+//#mdebug
+import net.sf.microlog.core.Logger;
+import net.sf.microlog.core.LoggerFactory;
+//#enddebug
+
+/**
+ * This one looks for all the {@link StartDateScanner} markers at once in a single
+ * pass over the start data, as it arrives. Once a marker is found the following
+ * characters are captured as the value of the field. The first occurrence of
+ * each marker is used.
+ * @author Przemek Kryger
+ */
+public class StartDateMatcher {
+
+//#mdebug
+    /**
+     * The logger for the class.
+     */
+    private final static Logger log = LoggerFactory.getLogger(StartDateMatcher.class);
+//#enddebug
+    /**
+     * The scanner that holds compiled markers.
+     */
+    private final StartDateScanner scanner;
+    /**
+     * The number of matched characters of each marker.
+     */
+    private final int[] matched = new int[4];
+    /**
+     * The number of captured characters of each field, or -1 when the field's
+     * marker has not been found yet.
+     */
+    private final int[] captured = {-1, -1, -1, -1};
+    /**
+     * The captured values in yyyymmddhh order.
+     */
+    private final char[] startDate = new char[10];
+    /**
+     * The number of fields that have been fully captured.
+     */
+    private int complete = 0;
+
+    /**
+     * Creates a new matcher.
+     * @param scanner the {@link StartDateScanner} with markers to look for.
+     */
+    StartDateMatcher(StartDateScanner scanner) {
+        this.scanner = scanner;
+    }
+
+    /**
+     * Forgets all the matched markers and captured fields, so the matcher can
+     * be fed with the start data from its beginning again.
+     */
+    public void reset() {
+        for (int field = 0; field < 4; field++) {
+            matched[field] = 0;
+            captured[field] = -1;
+        }
+        complete = 0;
+    }
+
+    /**
+     * Passes the next character of start data to the matcher.
+     * @param ch the {@code char} to pass.
+     * @return {@code true} if all the fields are already captured.
+     */
+    public boolean feed(char ch) {
+        for (int field = 0; field < 4; field++) {
+            int count = captured[field];
+            if (count == -1) {
+                char[] marker = scanner.markers[field];
+                int[] failure = scanner.failures[field];
+                int k = matched[field];
+                while (k > 0 && ch != marker[k]) {
+                    k = failure[k - 1];
+                }
+                if (ch == marker[k]) {
+                    k++;
+                }
+                if (k == marker.length) {
+                    captured[field] = 0;
+                }
+                matched[field] = k;
+            } else if (count < StartDateScanner.WIDTHS[field]) {
+                startDate[offset(field) + count] = ch;
+                captured[field] = ++count;
+                if (count == StartDateScanner.WIDTHS[field]) {
+                    complete++;
+                }
+            }
+        }
+        return complete == 4;
+    }
+
+    /**
+     * Passes the next {@code length} bytes of start data to the matcher. Each
+     * byte is treated as one character. Stops as soon as all the fields are
+     * captured.
+     * @param data the {@code byte[]} with start data.
+     * @param offset the {@code int} index of the first byte to pass.
+     * @param length the {@code int} number of bytes to pass.
+     * @return {@code true} if all the fields are already captured.
+     */
+    public boolean feed(byte[] data, int offset, int length) {
+        int end = offset + length;
+        for (int i = offset; i < end && complete < 4; i++) {
+            feed((char) (data[i] & 0xff));
+        }
+        return complete == 4;
+    }
+
+    /**
+     * Checks if the given {@code field} has been captured.
+     * @param field the {@code int} index of the field, i.e. one of
+     *        {@link StartDateScanner#YEAR}, {@link StartDateScanner#MONTH},
+     *        {@link StartDateScanner#DAY} or {@link StartDateScanner#HOUR}.
+     * @return {@code true} if the {@code field} has been captured.
+     */
+    public boolean isCaptured(int field) {
+        return captured[field] == StartDateScanner.WIDTHS[field];
+    }
+
+    /**
+     * Checks if all the fields has been captured.
+     * @return {@code true} if all the fields has been captured.
+     */
+    public boolean isComplete() {
+        return complete == 4;
+    }
+
+    /**
+     * Gets the start date in format acceptable for {@link com.kenai.weathericm.domain.ForecastData}
+     * constructor (yyyymmddhh).
+     * @return the {@link String} with start date or {@code null} if not all
+     *         the fields has been captured.
+     */
+    public String getStartDate() {
+        if (complete < 4) {
+//#mdebug
+            log.debug("Start date is not complete yet");
+//#enddebug
+            return null;
+        }
+        return new String(startDate);
+    }
+
+    /**
+     * Gets the position of the {@code field} in yyyymmddhh.
+     * @param field the {@code int} index of the field.
+     * @return the {@code int} offset of the field.
+     */
+    private static int offset(int field) {
+        int offset = 0;
+        for (int i = 0; i < field; i++) {
+            offset += StartDateScanner.WIDTHS[i];
+        }
+        return offset;
+    }
+}
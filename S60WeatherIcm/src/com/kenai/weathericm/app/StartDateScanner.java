@@ -0,0 +1,162 @@
+/*
+ *  Copyright (C) 2010 Przemek Kryger
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.kenai.weathericm.app;
+
+import com.kenai.weathericm.domain.MeteorogramType;
+import com.kenai.weathericm.util.Properties;
+import java.util.Hashtable;
+//#mdebug
+import net.sf.microlog.core.Logger;
+import net.sf.microlog.core.LoggerFactory;
+//#enddebug
+
+/**
+ * This holds the markers used to find the model start date in the start data.
+ * The markers are read from the type properties with {@code PARSE_}* keys of
+ * {@link AbstractForecastDataDownloader} and compiled once, so each download
+ * only needs to create a cheap {@link StartDateMatcher} with
+ * {@link #createMatcher()}.
+ * @author Przemek Kryger
+ */
+public class StartDateScanner {
+
+//#mdebug
+    /**
+     * The logger for the class.
+     */
+    private final static Logger log = LoggerFactory.getLogger(StartDateScanner.class);
+//#enddebug
+    /**
+     * The index of the year field.
+     */
+    public final static int YEAR = 0;
+    /**
+     * The index of the month field.
+     */
+    public final static int MONTH = 1;
+    /**
+     * The index of the day field.
+     */
+    public final static int DAY = 2;
+    /**
+     * The index of the hour field.
+     */
+    public final static int HOUR = 3;
+    /**
+     * The number of characters that follows each of the markers.
+     */
+    final static int[] WIDTHS = {4, 2, 2, 2};
+    /**
+     * The already compiled scanners for {@link MeteorogramType}s.
+     */
+    private final static Hashtable scanners = new Hashtable(2);
+    /**
+     * The markers for each of the fields.
+     */
+    final char[][] markers = new char[4][];
+    /**
+     * The Knuth-Morris-Pratt failure functions for each of the {@link #markers}.
+     */
+    final int[][] failures = new int[4][];
+
+    /**
+     * Compiles the markers found in {@code properties}.
+     * @param properties the {@link Properties} with {@code PARSE_}* keys.
+     * @throws NullPointerException if {@code properties} is {@code null} or
+     *         any of the keys is missing.
+     */
+    public StartDateScanner(Properties properties) {
+        if (properties == null) {
+//#mdebug
+            log.error("Cannot compile scanner from null properties!");
+//#enddebug
+            throw new NullPointerException("Cannot compile scanner from null!");
+        }
+        compile(YEAR, properties, AbstractForecastDataDownloader.PARSE_YEAR_KEY);
+        compile(MONTH, properties, AbstractForecastDataDownloader.PARSE_MONTH_KEY);
+        compile(DAY, properties, AbstractForecastDataDownloader.PARSE_DAY_KEY);
+        compile(HOUR, properties, AbstractForecastDataDownloader.PARSE_HOUR_KEY);
+    }
+
+    /**
+     * Gets the scanner for the given {@code type}. The scanner is compiled
+     * from {@code properties} only when it is requested for the first time.
+     * @param type the {@link MeteorogramType} to get scanner for.
+     * @param properties the {@link Properties} for the {@code type}.
+     * @return the {@link StartDateScanner} for the {@code type}.
+     * @throws NullPointerException if either {@code type} is {@code null} or
+     *         the scanner cannot be compiled.
+     */
+    public static StartDateScanner getScanner(MeteorogramType type, Properties properties) {
+        if (type == null) {
+//#mdebug
+            log.error("Cannot get scanner for null type!");
+//#enddebug
+            throw new NullPointerException("Cannot get scanner for null type!");
+        }
+        synchronized (scanners) {
+            StartDateScanner scanner = (StartDateScanner) scanners.get(type);
+            if (scanner == null) {
+//#mdebug
+                log.debug("Compiling start date scanner for " + type);
+//#enddebug
+                scanner = new StartDateScanner(properties);
+                scanners.put(type, scanner);
+            }
+            return scanner;
+        }
+    }
+
+    /**
+     * Creates a new matcher that uses this instance's markers.
+     * @return the new {@link StartDateMatcher}.
+     */
+    public StartDateMatcher createMatcher() {
+        return new StartDateMatcher(this);
+    }
+
+    /**
+     * Compiles the marker for the {@code field}.
+     * @param field the {@code int} index of the field.
+     * @param properties the {@link Properties} to read marker from.
+     * @param key the {@link String} key of the marker.
+     */
+    private void compile(int field, Properties properties, String key) {
+        String marker = properties.getProperty(key);
+        if (marker == null || marker.length() == 0) {
+//#mdebug
+            log.error("Cannot load property for " + key);
+//#enddebug
+            throw new NullPointerException("Cannot load property for " + key);
+        }
+        char[] pattern = marker.toCharArray();
+        int[] failure = new int[pattern.length];
+        int k = 0;
+        for (int i = 1; i < pattern.length; i++) {
+            while (k > 0 && pattern[i] != pattern[k]) {
+                k = failure[k - 1];
+            }
+            if (pattern[i] == pattern[k]) {
+                k++;
+            }
+            failure[i] = k;
+        }
+        markers[field] = pattern;
+        failures[field] = failure;
+    }
+}
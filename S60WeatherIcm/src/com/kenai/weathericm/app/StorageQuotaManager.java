@@ -0,0 +1,456 @@
+/*
+ *  Copyright (C) 2010 Przemek Kryger
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.kenai.weathericm.app;
+
+import com.kenai.weathericm.domain.ForecastData;
+import com.kenai.weathericm.domain.MeteorogramInfo;
+import com.kenai.weathericm.repository.ForecastDataDao;
+import com.kenai.weathericm.repository.ForecastHistoryDao;
+import java.util.Enumeration;
+import java.util.Hashtable;
+//#mdebug
+import net.sf.microlog.core.Logger;
+import net.sf.microlog.core.LoggerFactory;
+//#enddebug
+
+/**
+ * This keeps the persisted model results of {@link MeteorogramInfo}s and their
+ * archived runs within a storage budget of bytes. It tracks the bytes persisted
+ * for each info and the time the info has been viewed last. Before a model
+ * result is persisted, the archived runs and the model results of other infos
+ * are evicted until the new one fits into the budget, and when the storage
+ * turns out to be full anyway, they are evicted one by one until the write
+ * succeeds. The archived runs are evicted before any model result, the ones of
+ * the least recently viewed info first. Then the most outdated model results
+ * are evicted, as told by {@link ComparableForecastData#isOlderThan(ForecastData)},
+ * and the least recently viewed ones among the equally up to date. An evicted
+ * info is left without {@link ForecastData}, so it's downloaded again when
+ * it's refreshed.
+ * @author Przemek Kryger
+ * @see StorageQuotaManager#getInstance()
+ */
+public class StorageQuotaManager {
+
+    /**
+     * The default budget in bytes, it's enough for a dozen of meteorograms and
+     * a few of their archived runs.
+     */
+    public final static int DEFAULT_BUDGET = 512 * 1024;
+//#mdebug
+    /**
+     * The logger for the class.
+     */
+    private final static Logger log = LoggerFactory.getLogger(StorageQuotaManager.class);
+//#enddebug
+    /**
+     * The {@link StorageQuotaManager} singleton instance.
+     */
+    private static StorageQuotaManager instance = null;
+    /**
+     * The DAO used to delete the evicted model results or {@code null}.
+     */
+    private ForecastDataDao forecastDataDao = null;
+    /**
+     * The DAO used to delete the evicted archived runs or {@code null}.
+     */
+    private ForecastHistoryDao forecastHistoryDao = null;
+    /**
+     * The budget in bytes for persisted model results and archived runs.
+     */
+    private int budget = DEFAULT_BUDGET;
+    /**
+     * The bytes of all the persisted model results and archived runs.
+     */
+    private int usedBytes = 0;
+    /**
+     * Maps ids of {@link MeteorogramInfo}s to their {@link Usage}s.
+     */
+    private final Hashtable usages = new Hashtable();
+    /**
+     * The last time given to a view, the times are kept unique so the views
+     * are ordered even when they happen within a millisecond.
+     */
+    private long lastViewTime = 0L;
+
+    /**
+     * Private constructor for singleton safety.
+     */
+    private StorageQuotaManager() {
+//#mdebug
+        log.debug("Created StorageQuotaManager instance");
+//#enddebug
+    }
+
+    /**
+     * Gets the singleton instance.
+     * @return the {@link StorageQuotaManager} instance.
+     */
+    public static synchronized StorageQuotaManager getInstance() {
+        if (instance == null) {
+            instance = new StorageQuotaManager();
+        }
+        return instance;
+    }
+
+    /**
+     * Sets the DAO used to delete the evicted model results.
+     * @param forecastDataDao the {@link ForecastDataDao} to use or {@code null}.
+     */
+    public synchronized void setForecastDataDao(ForecastDataDao forecastDataDao) {
+        this.forecastDataDao = forecastDataDao;
+    }
+
+    /**
+     * Gets the DAO used to delete the evicted model results.
+     * @return the {@link ForecastDataDao} or {@code null}.
+     */
+    public synchronized ForecastDataDao getForecastDataDao() {
+        return forecastDataDao;
+    }
+
+    /**
+     * Sets the DAO used to delete the evicted archived runs.
+     * @param forecastHistoryDao the {@link ForecastHistoryDao} to use or {@code null}.
+     */
+    public synchronized void setForecastHistoryDao(ForecastHistoryDao forecastHistoryDao) {
+        this.forecastHistoryDao = forecastHistoryDao;
+    }
+
+    /**
+     * Gets the DAO used to delete the evicted archived runs.
+     * @return the {@link ForecastHistoryDao} or {@code null}.
+     */
+    public synchronized ForecastHistoryDao getForecastHistoryDao() {
+        return forecastHistoryDao;
+    }
+
+    /**
+     * Sets the budget of persisted model results. It's enforced when the next
+     * model result is persisted.
+     * @param budget the {@code int} with budget in bytes.
+     * @throws IllegalArgumentException if the {@code budget} is negative.
+     */
+    public synchronized void setBudget(int budget) {
+        if (budget < 0) {
+//#mdebug
+            log.error("Cannot set budget to: " + budget);
+//#enddebug
+            throw new IllegalArgumentException("Budget must be greater or equal to 0!");
+        }
+        this.budget = budget;
+    }
+
+    /**
+     * @return the {@code int} with budget in bytes.
+     */
+    public synchronized int getBudget() {
+        return budget;
+    }
+
+    /**
+     * @return the {@code int} with bytes of all the persisted model results
+     *         and archived runs.
+     */
+    public synchronized int getUsedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * Tracks the model result of the {@code info} as persisted. The model
+     * result that has been tracked for the {@code info} earlier is replaced.
+     * @param info the {@link MeteorogramInfo} which model result is persisted.
+     * @throws NullPointerException if the {@code info} is {@code null}.
+     */
+    public synchronized void track(MeteorogramInfo info) {
+        if (info == null) {
+//#mdebug
+            log.error("Cannot track null info!");
+//#enddebug
+            throw new NullPointerException("Cannot track null info!");
+        }
+        if (info.getId() == null) {
+            return;
+        }
+        ForecastData data = info.getForecastData();
+        int bytes = data == null ? 0 : data.getModelResultLength();
+        Usage usage = getUsage(info);
+        usedBytes += bytes - usage.bytes;
+        usage.bytes = bytes;
+    }
+
+    /**
+     * Tracks the archived runs of the {@code info} as persisted. The bytes
+     * that have been tracked for the runs of the {@code info} earlier are replaced.
+     * @param info the {@link MeteorogramInfo} which runs are archived.
+     * @param bytes the {@code int} with bytes of all the archived runs of the
+     *        {@code info}, {@code 0} when they have been deleted.
+     * @throws NullPointerException if the {@code info} is {@code null}.
+     */
+    public synchronized void trackHistory(MeteorogramInfo info, int bytes) {
+        if (info == null) {
+//#mdebug
+            log.error("Cannot track history of null info!");
+//#enddebug
+            throw new NullPointerException("Cannot track history of null info!");
+        }
+        if (info.getId() == null) {
+            return;
+        }
+        Usage usage = getUsage(info);
+        usedBytes += bytes - usage.historyBytes;
+        usage.historyBytes = bytes;
+    }
+
+    /**
+     * Forgets the model result of the {@code info}, since it or the info
+     * itself has been deleted. The archived runs of the {@code info} are still
+     * tracked, until they are tracked with no bytes.
+     * @param info the {@link MeteorogramInfo} to forget.
+     * @throws NullPointerException if the {@code info} is {@code null}.
+     */
+    public synchronized void forget(MeteorogramInfo info) {
+        if (info == null) {
+//#mdebug
+            log.error("Cannot forget null info!");
+//#enddebug
+            throw new NullPointerException("Cannot forget null info!");
+        }
+        Usage usage = info.getId() == null ? null : (Usage) usages.get(info.getId());
+        if (usage != null) {
+            usedBytes -= usage.bytes;
+            usage.bytes = 0;
+            removeIfUnused(usage);
+        }
+    }
+
+    /**
+     * Marks the {@code info} as the most recently viewed.
+     * @param info the {@link MeteorogramInfo} that has been viewed.
+     * @throws NullPointerException if the {@code info} is {@code null}.
+     */
+    public synchronized void viewed(MeteorogramInfo info) {
+        if (info == null) {
+//#mdebug
+            log.error("Cannot mark null info as viewed!");
+//#enddebug
+            throw new NullPointerException("Cannot mark null info as viewed!");
+        }
+        if (info.getId() == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        lastViewTime = now > lastViewTime ? now : lastViewTime + 1;
+        getUsage(info).viewed = lastViewTime;
+    }
+
+    /**
+     * Checks if the model result of the {@code info} fits into the budget,
+     * when it replaces the model result tracked for the {@code info}.
+     * @param info the {@link MeteorogramInfo} which model result is going to be persisted.
+     * @return {@code true} if the model result fits, {@code false} otherwise.
+     * @throws NullPointerException if the {@code info} is {@code null}.
+     */
+    public synchronized boolean isRoomFor(MeteorogramInfo info) {
+        if (info == null) {
+//#mdebug
+            log.error("Cannot check room for null info!");
+//#enddebug
+            throw new NullPointerException("Cannot check room for null info!");
+        }
+        ForecastData data = info.getForecastData();
+        int bytes = data == null ? 0 : data.getModelResultLength();
+        Usage usage = info.getId() == null ? null : (Usage) usages.get(info.getId());
+        return usedBytes - (usage == null ? 0 : usage.bytes) + bytes <= budget;
+    }
+
+    /**
+     * Evicts the archived runs of the least recently viewed info, if there are
+     * any. Otherwise evicts the model result of the info that is the most
+     * outdated or, among the equally up to date, the least recently viewed.
+     * The archived runs are deleted from the {@link ForecastHistoryDao}. The
+     * model result is deleted from the {@link ForecastDataDao} and the info is
+     * left without {@link ForecastData}. It's caller responsibility to persist
+     * the evicted info.
+     * @param keep the {@link MeteorogramInfo} which model result shall not be
+     *        evicted or {@code null}.
+     * @return the evicted {@link MeteorogramInfo} or {@code null} if there is
+     *         nothing to evict.
+     */
+    public synchronized MeteorogramInfo evict(MeteorogramInfo keep) {
+        MeteorogramInfo info = evictHistory();
+        if (info != null) {
+            return info;
+        }
+        Usage victim = null;
+        ComparableForecastData victimData = null;
+        for (Enumeration e = usages.elements(); e.hasMoreElements();) {
+            Usage usage = (Usage) e.nextElement();
+            ForecastData data = usage.info.getForecastData();
+            if (usage.bytes == 0 || data == null
+                    || (keep != null && usage.info.getId().equals(keep.getId()))) {
+                continue;
+            }
+            if (victim == null || victimData.isNewerThan(data)
+                    || (!victimData.isOlderThan(data) && usage.viewed < victim.viewed)) {
+                victim = usage;
+                victimData = new ComparableForecastData(data);
+            }
+        }
+        if (victim == null) {
+//#mdebug
+            log.info("There is nothing to evict, used bytes = " + usedBytes);
+//#enddebug
+            return null;
+        }
+        info = victim.info;
+//#mdebug
+        log.info("Evicting " + victim.bytes + " bytes of model result of: " + info);
+//#enddebug
+        usedBytes -= victim.bytes;
+        victim.bytes = 0;
+        removeIfUnused(victim);
+        if (forecastDataDao != null) {
+            forecastDataDao.delete(info.getId());
+        }
+        ModelResultCache.getInstance().remove(info);
+        info.setForecastData(null);
+        return info;
+    }
+
+    /**
+     * Evicts the archived runs of the least recently viewed info. The runs
+     * are not tracked any longer even if they cannot be deleted, so they are
+     * not picked again.
+     * @return the {@link MeteorogramInfo} which runs have been evicted or
+     *         {@code null} if there are no archived runs.
+     */
+    private MeteorogramInfo evictHistory() {
+        Usage victim = null;
+        for (Enumeration e = usages.elements(); e.hasMoreElements();) {
+            Usage usage = (Usage) e.nextElement();
+            if (usage.historyBytes > 0 && (victim == null || usage.viewed < victim.viewed)) {
+                victim = usage;
+            }
+        }
+        if (victim == null) {
+            return null;
+        }
+        MeteorogramInfo info = victim.info;
+//#mdebug
+        log.info("Evicting " + victim.historyBytes + " bytes of archived runs of: " + info);
+//#enddebug
+        usedBytes -= victim.historyBytes;
+        victim.historyBytes = 0;
+        removeIfUnused(victim);
+        if (forecastHistoryDao != null && !forecastHistoryDao.delete(info.getId())) {
+//#mdebug
+            log.warn("Cannot delete archived runs of: " + info);
+//#enddebug
+        }
+        return info;
+    }
+
+    /**
+     * Gets the bytes of the model result persisted for the {@code info}.
+     * @param info the {@link MeteorogramInfo} to get the footprint of.
+     * @return the {@code int} with bytes of the model result.
+     * @throws NullPointerException if the {@code info} is {@code null}.
+     */
+    public synchronized int getFootprint(MeteorogramInfo info) {
+        if (info == null) {
+//#mdebug
+            log.error("Cannot get footprint of null info!");
+//#enddebug
+            throw new NullPointerException("Cannot get footprint of null info!");
+        }
+        Usage usage = info.getId() == null ? null : (Usage) usages.get(info.getId());
+        return usage == null ? 0 : usage.bytes;
+    }
+
+    /**
+     * Creates the report of footprints of all the tracked infos, a line for
+     * each info with it's id, name, bytes of the model result, bytes of the
+     * archived runs and the time it has been viewed last, followed by the line
+     * with total of bytes and the budget.
+     * @return the {@link String} with the report.
+     */
+    public synchronized String getReport() {
+        StringBuffer report = new StringBuffer();
+        for (Enumeration e = usages.elements(); e.hasMoreElements();) {
+            Usage usage = (Usage) e.nextElement();
+            report.append(usage.info.getId()).append(' ');
+            report.append(usage.info.getName()).append(": ");
+            report.append(usage.bytes).append(" B, history ");
+            report.append(usage.historyBytes).append(" B, viewed at ");
+            report.append(usage.viewed).append('\n');
+        }
+        report.append("Total: ").append(usedBytes).append(" of ").append(budget).append(" B");
+        return report.toString();
+    }
+
+    /**
+     * Gets the {@link Usage} of the {@code info}, creates it if it's not
+     * tracked yet.
+     * @param info the {@link MeteorogramInfo} with id that is not {@code null}.
+     * @return the {@link Usage} of the {@code info}.
+     */
+    private Usage getUsage(MeteorogramInfo info) {
+        Usage usage = (Usage) usages.get(info.getId());
+        if (usage == null) {
+            usage = new Usage();
+            usages.put(info.getId(), usage);
+        }
+        usage.info = info;
+        return usage;
+    }
+
+    /**
+     * Stops tracking the {@code usage} when there is nothing persisted for
+     * its info any longer.
+     * @param usage the {@link Usage} to check.
+     */
+    private void removeIfUnused(Usage usage) {
+        if (usage.bytes == 0 && usage.historyBytes == 0) {
+            usages.remove(usage.info.getId());
+        }
+    }
+
+    /**
+     * The storage usage of a {@link MeteorogramInfo}.
+     */
+    private static class Usage {
+
+        /**
+         * The info the usage is of.
+         */
+        private MeteorogramInfo info = null;
+        /**
+         * The bytes of the persisted model result.
+         */
+        private int bytes = 0;
+        /**
+         * The bytes of the archived runs.
+         */
+        private int historyBytes = 0;
+        /**
+         * The time the info has been viewed last or {@code 0} if it hasn't
+         * been viewed since the application has started.
+         */
+        private long viewed = 0L;
+    }
+}
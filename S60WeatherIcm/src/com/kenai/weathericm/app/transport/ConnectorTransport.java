@@ -0,0 +1,48 @@
+/*
+ *  Copyright (C) 2010 Przemek Kryger
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.kenai.weathericm.app.transport;
+
+import com.kenai.weathericm.util.Properties;
+import java.io.IOException;
+import javax.microedition.io.Connector;
+import javax.microedition.io.HttpConnection;
+
+/**
+ * This is the {@link Transport} that opens the connections with {@link Connector}.
+ * It is used when no other transport is configured.
+ * @author Przemek Kryger
+ */
+public class ConnectorTransport implements Transport {
+
+    /**
+     * Does nothing, as there is nothing to configure.
+     * @param properties the {@link Properties} with settings of the transport.
+     */
+    public void configure(Properties properties) {
+    }
+
+    /**
+     * Opens the connection to the given {@code url} with {@link Connector}.
+     * @param url the {@link String} with URL to open.
+     * @return the {@link HttpConnection} to the {@code url}.
+     * @throws IOException if the connection cannot be opened.
+     */
+    public HttpConnection open(String url) throws IOException {
+        return (HttpConnection) Connector.open(url);
+    }
+}
@@ -0,0 +1,324 @@
+/*
+ *  Copyright (C) 2010 Przemek Kryger
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.kenai.weathericm.app.transport;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Vector;
+import javax.microedition.io.ConnectionNotFoundException;
+import javax.microedition.io.Connector;
+import javax.microedition.io.file.FileConnection;
+//#mdebug
+import net.sf.microlog.core.Logger;
+import net.sf.microlog.core.LoggerFactory;
+//#enddebug
+
+/**
+ * This holds a recorded HTTP response: the response code and message, the
+ * headers and the body. Recordings are kept in files, one for each URL, in
+ * a directory accessed with {@link FileConnection}.
+ * @author Przemek Kryger
+ */
+public class Recording {
+
+    /**
+     * The version of the file format.
+     */
+    public final static int VERSION = 1;
+    /**
+     * The extension of recording files.
+     */
+    public final static String EXTENSION = ".rec";
+    /**
+     * The maximum number of characters of the URL used in a file name.
+     */
+    public final static int MAX_NAME_LENGTH = 80;
+//#mdebug
+    /**
+     * The logger for the class.
+     */
+    private final static Logger log = LoggerFactory.getLogger(Recording.class);
+//#enddebug
+    /**
+     * The response code.
+     */
+    private int responseCode = 0;
+    /**
+     * The response message or {@code null}.
+     */
+    private String responseMessage = null;
+    /**
+     * The names of the headers.
+     */
+    private final Vector headerKeys = new Vector();
+    /**
+     * The values of the headers.
+     */
+    private final Vector headerValues = new Vector();
+    /**
+     * The body of the response.
+     */
+    private byte[] body = new byte[0];
+
+    /**
+     * Gets the URL of the file that keeps the recording of the {@code url}.
+     * The file name is made of the {@code url} with all but letters, digits,
+     * dots and dashes replaced and it's hash code.
+     * @param directory the {@link String} with URL of the directory, that
+     *        ends with a slash.
+     * @param url the {@link String} with URL of the recorded response.
+     * @return the {@link String} with URL of the file.
+     */
+    public static String getFileUrl(String directory, String url) {
+        StringBuffer buffer = new StringBuffer(directory);
+        int start = Math.max(url.length() - MAX_NAME_LENGTH, 0);
+        for (int i = start; i < url.length(); i++) {
+            char c = url.charAt(i);
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+                    || (c >= '0' && c <= '9') || c == '.' || c == '-') {
+                buffer.append(c);
+            } else {
+                buffer.append('_');
+            }
+        }
+        buffer.append('_').append(Integer.toHexString(url.hashCode()));
+        return buffer.append(EXTENSION).toString();
+    }
+
+    /**
+     * Reads the recording from the file.
+     * @param fileUrl the {@link String} with URL of the file.
+     * @return the {@link Recording} read.
+     * @throws ConnectionNotFoundException if the file doesn't exist.
+     * @throws IOException if the file cannot be read.
+     */
+    public static Recording read(String fileUrl) throws IOException {
+        FileConnection file = null;
+        DataInputStream dis = null;
+        try {
+            file = (FileConnection) Connector.open(fileUrl, Connector.READ);
+            if (!file.exists()) {
+                throw new ConnectionNotFoundException("There is no recording: " + fileUrl);
+            }
+            dis = file.openDataInputStream();
+            return readFrom(dis);
+        } finally {
+            if (dis != null) {
+                dis.close();
+            }
+            if (file != null) {
+                file.close();
+            }
+        }
+    }
+
+    /**
+     * Writes the recording to the file. The file is replaced if it exists.
+     * @param fileUrl the {@link String} with URL of the file.
+     * @throws IOException if the file cannot be written.
+     */
+    public void write(String fileUrl) throws IOException {
+        FileConnection file = null;
+        DataOutputStream dos = null;
+        try {
+            file = (FileConnection) Connector.open(fileUrl, Connector.READ_WRITE);
+            if (file.exists()) {
+                file.truncate(0L);
+            } else {
+                file.create();
+            }
+            dos = file.openDataOutputStream();
+            writeTo(dos);
+            dos.flush();
+//#mdebug
+            log.info("Recorded " + body.length + " bytes to " + fileUrl);
+//#enddebug
+        } finally {
+            if (dos != null) {
+                dos.close();
+            }
+            if (file != null) {
+                file.close();
+            }
+        }
+    }
+
+    /**
+     * Reads the recording from the {@code dis}.
+     * @param dis the {@link DataInputStream} to read from.
+     * @return the {@link Recording} read.
+     * @throws IOException if the recording cannot be read or it's version is
+     *         not supported.
+     */
+    public static Recording readFrom(DataInputStream dis) throws IOException {
+        int version = dis.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported recording version: " + version);
+        }
+        Recording recording = new Recording();
+        recording.setResponseCode(dis.readInt());
+        recording.setResponseMessage(dis.readBoolean() ? dis.readUTF() : null);
+        int headers = dis.readShort();
+        for (int i = 0; i < headers; i++) {
+            recording.addHeader(dis.readUTF(), dis.readUTF());
+        }
+        byte[] body = new byte[dis.readInt()];
+        dis.readFully(body);
+        recording.setBody(body);
+        return recording;
+    }
+
+    /**
+     * Writes the recording to the {@code dos}.
+     * @param dos the {@link DataOutputStream} to write to.
+     * @throws IOException if the recording cannot be written.
+     */
+    public void writeTo(DataOutputStream dos) throws IOException {
+        dos.writeInt(VERSION);
+        dos.writeInt(responseCode);
+        dos.writeBoolean(responseMessage != null);
+        if (responseMessage != null) {
+            dos.writeUTF(responseMessage);
+        }
+        dos.writeShort(headerKeys.size());
+        for (int i = 0; i < headerKeys.size(); i++) {
+            dos.writeUTF((String) headerKeys.elementAt(i));
+            dos.writeUTF((String) headerValues.elementAt(i));
+        }
+        dos.writeInt(body.length);
+        dos.write(body);
+    }
+
+    /**
+     * @return the responseCode
+     */
+    public int getResponseCode() {
+        return responseCode;
+    }
+
+    /**
+     * @param responseCode the responseCode to set
+     */
+    public void setResponseCode(int responseCode) {
+        this.responseCode = responseCode;
+    }
+
+    /**
+     * @return the responseMessage
+     */
+    public String getResponseMessage() {
+        return responseMessage;
+    }
+
+    /**
+     * @param responseMessage the responseMessage to set
+     */
+    public void setResponseMessage(String responseMessage) {
+        this.responseMessage = responseMessage;
+    }
+
+    /**
+     * @return the body
+     */
+    public byte[] getBody() {
+        return body;
+    }
+
+    /**
+     * @param body the body to set
+     * @throws NullPointerException if the {@code body} is {@code null}.
+     */
+    public void setBody(byte[] body) {
+        if (body == null) {
+            throw new NullPointerException("Cannot set null body!");
+        }
+        this.body = body;
+    }
+
+    /**
+     * Adds the header to the recording.
+     * @param key the {@link String} with name of the header.
+     * @param value the {@link String} with value of the header.
+     * @throws NullPointerException if either {@code key} or {@code value} is {@code null}.
+     */
+    public void addHeader(String key, String value) {
+        if (key == null || value == null) {
+            throw new NullPointerException("Cannot add header with null key or value!");
+        }
+        headerKeys.addElement(key);
+        headerValues.addElement(value);
+    }
+
+    /**
+     * Gets the number of headers.
+     * @return the {@code int} with number of headers.
+     */
+    public int getHeaderCount() {
+        return headerKeys.size();
+    }
+
+    /**
+     * Gets the name of the header at the given {@code index}.
+     * @param index the {@code int} index of the header.
+     * @return the {@link String} with name of the header or {@code null} if
+     *         there is no such header.
+     */
+    public String getHeaderFieldKey(int index) {
+        return index >= 0 && index < headerKeys.size()
+                ? (String) headerKeys.elementAt(index) : null;
+    }
+
+    /**
+     * Gets the value of the header at the given {@code index}.
+     * @param index the {@code int} index of the header.
+     * @return the {@link String} with value of the header or {@code null} if
+     *         there is no such header.
+     */
+    public String getHeaderField(int index) {
+        return index >= 0 && index < headerValues.size()
+                ? (String) headerValues.elementAt(index) : null;
+    }
+
+    /**
+     * Gets the value of the header with the given {@code name}. Names are
+     * compared ignoring case.
+     * @param name the {@link String} with name of the header.
+     * @return the {@link String} with value of the header or {@code null} if
+     *         there is no such header.
+     */
+    public String getHeaderField(String name) {
+        for (int i = 0; i < headerKeys.size(); i++) {
+            if (name.equalsIgnoreCase((String) headerKeys.elementAt(i))) {
+                return (String) headerValues.elementAt(i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Converts this instance to {@link String}.
+     * @return the {@link String} representation of this instance.
+     */
+    public String toString() {
+        StringBuffer buffer = new StringBuffer("Recording[responseCode = ");
+        buffer.append(responseCode).append(", headers = ").append(headerKeys.size());
+        buffer.append(", length = ").append(body.length).append("]");
+        return buffer.toString();
+    }
+}
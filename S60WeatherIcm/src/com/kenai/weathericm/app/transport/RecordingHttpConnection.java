@@ -0,0 +1,318 @@
+/*
+ *  Copyright (C) 2010 Przemek Kryger
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.kenai.weathericm.app.transport;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import javax.microedition.io.HttpConnection;
+//#mdebug
+import net.sf.microlog.core.Logger;
+import net.sf.microlog.core.LoggerFactory;
+//#enddebug
+
+/**
+ * This passes all the calls to the real {@link HttpConnection} and keeps a
+ * copy of the body read. When the stream is closed before all the body has
+ * been read, the rest of it is read anyway. The {@link Recording} is written
+ * when the connection is closed. A failure to record doesn't affect the
+ * download.
+ * @author Przemek Kryger
+ */
+class RecordingHttpConnection implements HttpConnection {
+
+//#mdebug
+    /**
+     * The logger for the class.
+     */
+    private final static Logger log = LoggerFactory.getLogger(RecordingHttpConnection.class);
+//#enddebug
+    /**
+     * The real connection.
+     */
+    private final HttpConnection connection;
+    /**
+     * The URL of the file the recording is written to.
+     */
+    private final String fileUrl;
+    /**
+     * The copy of the body read so far.
+     */
+    private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+    /**
+     * The stream of the body or {@code null} if it hasn't been opened.
+     */
+    private RecordingInputStream stream = null;
+    /**
+     * Indicates if the body cannot be recorded, since reading it has failed.
+     */
+    private boolean broken = false;
+    /**
+     * Indicates if the connection has been closed.
+     */
+    private boolean closed = false;
+
+    /**
+     * Creates a new connection that records the response of the {@code connection}.
+     * @param connection the real {@link HttpConnection}.
+     * @param fileUrl the {@link String} with URL of the file to record to.
+     */
+    RecordingHttpConnection(HttpConnection connection, String fileUrl) {
+        this.connection = connection;
+        this.fileUrl = fileUrl;
+    }
+
+    /**
+     * Records the response and closes the real connection.
+     * @throws IOException if the real connection cannot be closed.
+     */
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        try {
+            if (stream != null) {
+                stream.close();
+            }
+            if (!broken) {
+                record();
+            }
+        } catch (IOException ex) {
+//#mdebug
+            log.warn("Cannot record response to: " + fileUrl, ex);
+//#enddebug
+        } finally {
+            connection.close();
+        }
+    }
+
+    /**
+     * Writes the {@link Recording} of the response.
+     * @throws IOException if the response cannot be read or written.
+     */
+    private void record() throws IOException {
+        Recording recording = new Recording();
+        recording.setResponseCode(connection.getResponseCode());
+        recording.setResponseMessage(connection.getResponseMessage());
+        for (int i = 0;; i++) {
+            String key = connection.getHeaderFieldKey(i);
+            String value = connection.getHeaderField(i);
+            if (key == null || value == null) {
+                break;
+            }
+            recording.addHeader(key, value);
+        }
+        recording.setBody(body.toByteArray());
+        recording.write(fileUrl);
+    }
+
+    public InputStream openInputStream() throws IOException {
+        if (stream == null) {
+            stream = new RecordingInputStream(connection.openInputStream());
+        }
+        return stream;
+    }
+
+    public DataInputStream openDataInputStream() throws IOException {
+        return new DataInputStream(openInputStream());
+    }
+
+    public OutputStream openOutputStream() throws IOException {
+        return connection.openOutputStream();
+    }
+
+    public DataOutputStream openDataOutputStream() throws IOException {
+        return connection.openDataOutputStream();
+    }
+
+    public long getLength() {
+        return connection.getLength();
+    }
+
+    public String getType() {
+        return connection.getType();
+    }
+
+    public String getEncoding() {
+        return connection.getEncoding();
+    }
+
+    public int getResponseCode() throws IOException {
+        return connection.getResponseCode();
+    }
+
+    public String getResponseMessage() throws IOException {
+        return connection.getResponseMessage();
+    }
+
+    public String getHeaderField(String name) throws IOException {
+        return connection.getHeaderField(name);
+    }
+
+    public String getHeaderField(int n) throws IOException {
+        return connection.getHeaderField(n);
+    }
+
+    public String getHeaderFieldKey(int n) throws IOException {
+        return connection.getHeaderFieldKey(n);
+    }
+
+    public long getHeaderFieldDate(String name, long def) throws IOException {
+        return connection.getHeaderFieldDate(name, def);
+    }
+
+    public int getHeaderFieldInt(String name, int def) throws IOException {
+        return connection.getHeaderFieldInt(name, def);
+    }
+
+    public long getLastModified() throws IOException {
+        return connection.getLastModified();
+    }
+
+    public long getDate() throws IOException {
+        return connection.getDate();
+    }
+
+    public long getExpiration() throws IOException {
+        return connection.getExpiration();
+    }
+
+    public String getRequestMethod() {
+        return connection.getRequestMethod();
+    }
+
+    public void setRequestMethod(String method) throws IOException {
+        connection.setRequestMethod(method);
+    }
+
+    public String getRequestProperty(String key) {
+        return connection.getRequestProperty(key);
+    }
+
+    public void setRequestProperty(String key, String value) throws IOException {
+        connection.setRequestProperty(key, value);
+    }
+
+    public String getURL() {
+        return connection.getURL();
+    }
+
+    public String getProtocol() {
+        return connection.getProtocol();
+    }
+
+    public String getHost() {
+        return connection.getHost();
+    }
+
+    public String getFile() {
+        return connection.getFile();
+    }
+
+    public String getRef() {
+        return connection.getRef();
+    }
+
+    public String getQuery() {
+        return connection.getQuery();
+    }
+
+    public int getPort() {
+        return connection.getPort();
+    }
+
+    /**
+     * This copies the data read to the {@value #body}.
+     */
+    private class RecordingInputStream extends InputStream {
+
+        /**
+         * The real stream.
+         */
+        private final InputStream in;
+        /**
+         * Indicates if the stream has been closed.
+         */
+        private boolean streamClosed = false;
+
+        /**
+         * Creates a new stream that copies the data read from {@code in}.
+         * @param in the real {@link InputStream}.
+         */
+        RecordingInputStream(InputStream in) {
+            this.in = in;
+        }
+
+        public int read() throws IOException {
+            try {
+                int read = in.read();
+                if (read != -1) {
+                    body.write(read);
+                }
+                return read;
+            } catch (IOException ex) {
+                broken = true;
+                throw ex;
+            }
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException {
+            try {
+                int read = in.read(b, off, len);
+                if (read > 0) {
+                    body.write(b, off, read);
+                }
+                return read;
+            } catch (IOException ex) {
+                broken = true;
+                throw ex;
+            }
+        }
+
+        /**
+         * Reads the rest of the body, so all of it is recorded, and closes
+         * the real stream.
+         * @throws IOException if the real stream cannot be closed.
+         */
+        public void close() throws IOException {
+            if (streamClosed) {
+                return;
+            }
+            streamClosed = true;
+            try {
+                if (!broken) {
+                    byte[] buffer = new byte[1024];
+                    while (read(buffer, 0, buffer.length) != -1) {
+                    }
+                }
+            } catch (IOException ex) {
+//#mdebug
+                log.warn("Cannot read the rest of the body for: " + fileUrl, ex);
+//#enddebug
+            } finally {
+                in.close();
+            }
+        }
+    }
+}
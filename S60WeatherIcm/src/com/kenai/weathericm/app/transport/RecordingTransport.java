@@ -0,0 +1,102 @@
+/*
+ *  Copyright (C) 2010 Przemek Kryger
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.kenai.weathericm.app.transport;
+
+import com.kenai.weathericm.util.Properties;
+import java.io.IOException;
+import javax.microedition.io.Connector;
+import javax.microedition.io.HttpConnection;
+//#mdebug
+import net.sf.microlog.core.Logger;
+import net.sf.microlog.core.LoggerFactory;
+//#enddebug
+
+/**
+ * This is the {@link Transport} that opens the connections with {@link Connector}
+ * and records the responses to files in the directory set with
+ * {@value #DIRECTORY_KEY} property. The recordings can be served later by
+ * {@link ReplayTransport}.
+ * @author Przemek Kryger
+ * @see Recording
+ */
+public class RecordingTransport implements Transport {
+
+    /**
+     * The key for URL of the directory with recordings, e.g.
+     * {@code file:///E:/WeatherIcm/}.
+     */
+    public final static String DIRECTORY_KEY = "transport.directory";
+//#mdebug
+    /**
+     * The logger for the class.
+     */
+    private final static Logger log = LoggerFactory.getLogger(RecordingTransport.class);
+//#enddebug
+    /**
+     * The URL of the directory with recordings.
+     */
+    private String directory = null;
+
+    /**
+     * Configures the directory the recordings are written to.
+     * @param properties the {@link Properties} with settings of the transport.
+     * @throws NullPointerException if there is no {@value #DIRECTORY_KEY} property.
+     */
+    public void configure(Properties properties) {
+        directory = getDirectory(properties);
+//#mdebug
+        log.info("Recording responses to: " + directory);
+//#enddebug
+    }
+
+    /**
+     * Opens the connection to the given {@code url} with {@link Connector}.
+     * The response is recorded when the connection is closed.
+     * @param url the {@link String} with URL to open.
+     * @return the {@link HttpConnection} to the {@code url}.
+     * @throws IOException if the connection cannot be opened.
+     * @throws IllegalStateException if the transport hasn't been configured.
+     */
+    public HttpConnection open(String url) throws IOException {
+        if (directory == null) {
+//#mdebug
+            log.error("Recording transport is not configured!");
+//#enddebug
+            throw new IllegalStateException("Recording transport is not configured!");
+        }
+        HttpConnection connection = (HttpConnection) Connector.open(url);
+        return new RecordingHttpConnection(connection, Recording.getFileUrl(directory, url));
+    }
+
+    /**
+     * Gets the URL of the directory with recordings, so it ends with a slash.
+     * @param properties the {@link Properties} with settings of the transport.
+     * @return the {@link String} with URL of the directory.
+     * @throws NullPointerException if there is no {@value #DIRECTORY_KEY} property.
+     */
+    static String getDirectory(Properties properties) {
+        String value = properties.getProperty(DIRECTORY_KEY);
+        if (value == null) {
+//#mdebug
+            log.error("Cannot find property: " + DIRECTORY_KEY);
+//#enddebug
+            throw new NullPointerException("Cannot find property: " + DIRECTORY_KEY);
+        }
+        return value.endsWith("/") ? value : value + "/";
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ *  Copyright (C) 2010 Przemek Kryger
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.kenai.weathericm.app.transport;
+
+import com.kenai.weathericm.util.Properties;
+import java.io.IOException;
+import java.util.Random;
+import javax.microedition.io.HttpConnection;
+//#mdebug
+import net.sf.microlog.core.Logger;
+import net.sf.microlog.core.LoggerFactory;
+//#enddebug
+
+/**
+ * This is the {@link Transport} that serves the responses recorded by
+ * {@link RecordingTransport} without using the network. The network can be
+ * shaped with properties: {@value #LATENCY_KEY} and {@value #JITTER_KEY} in
+ * milliseconds delay each response, {@value #BANDWIDTH_KEY} in bytes per
+ * second limits the transfer, and {@value #FAILURE_RATE_KEY} in percent makes
+ * some connections fail to open or break during the transfer. The random
+ * values are drawn from a generator seeded with {@value #SEED_KEY}, so the
+ * same sequence of downloads behaves the same each time.
+ * @author Przemek Kryger
+ * @see Recording
+ */
+public class ReplayTransport implements Transport {
+
+    /**
+     * The key for the delay of responses in milliseconds.
+     */
+    public final static String LATENCY_KEY = "transport.latency";
+    /**
+     * The key for the maximum random delay added to the latency in milliseconds.
+     */
+    public final static String JITTER_KEY = "transport.jitter";
+    /**
+     * The key for the bandwidth in bytes per second, {@code 0} means unlimited.
+     */
+    public final static String BANDWIDTH_KEY = "transport.bandwidth";
+    /**
+     * The key for the percent of the connections that fail.
+     */
+    public final static String FAILURE_RATE_KEY = "transport.failure.rate";
+    /**
+     * The key for the seed of the random generator.
+     */
+    public final static String SEED_KEY = "transport.seed";
+//#mdebug
+    /**
+     * The logger for the class.
+     */
+    private final static Logger log = LoggerFactory.getLogger(ReplayTransport.class);
+//#enddebug
+    /**
+     * The URL of the directory with recordings.
+     */
+    private String directory = null;
+    /**
+     * The delay of responses.
+     */
+    private long latency = 0L;
+    /**
+     * The maximum random delay added to the latency.
+     */
+    private long jitter = 0L;
+    /**
+     * The bandwidth in bytes per second.
+     */
+    private long bandwidth = 0L;
+    /**
+     * The percent of connections that fail.
+     */
+    private int failureRate = 0;
+    /**
+     * The random generator.
+     */
+    private Random random = new Random(0L);
+
+    /**
+     * Configures the directory of recordings and the shaping of the network.
+     * @param properties the {@link Properties} with settings of the transport.
+     * @throws NullPointerException if there is no {@value RecordingTransport#DIRECTORY_KEY} property.
+     * @throws IllegalArgumentException if any of the numbers is invalid.
+     */
+    public synchronized void configure(Properties properties) {
+        directory = RecordingTransport.getDirectory(properties);
+        latency = getNumber(properties, LATENCY_KEY);
+        jitter = getNumber(properties, JITTER_KEY);
+        bandwidth = getNumber(properties, BANDWIDTH_KEY);
+        long rate = getNumber(properties, FAILURE_RATE_KEY);
+        if (rate > 100L) {
+//#mdebug
+            log.error("Failure rate cannot exceed 100%: " + rate);
+//#enddebug
+            throw new IllegalArgumentException("Failure rate cannot exceed 100%: " + rate);
+        }
+        failureRate = (int) rate;
+        random = new Random(getNumber(properties, SEED_KEY));
+//#mdebug
+        log.info("Replaying responses from: " + directory + " latency = " + latency
+                + " jitter = " + jitter + " bandwidth = " + bandwidth
+                + " failureRate = " + failureRate);
+//#enddebug
+    }
+
+    /**
+     * Opens the connection that serves the response recorded for the {@code url}.
+     * @param url the {@link String} with URL to open.
+     * @return the {@link HttpConnection} to the {@code url}.
+     * @throws IOException if there is no recording or the failure is injected.
+     * @throws IllegalStateException if the transport hasn't been configured.
+     */
+    public HttpConnection open(String url) throws IOException {
+        String fileUrl = null;
+        synchronized (this) {
+            if (directory == null) {
+//#mdebug
+                log.error("Replay transport is not configured!");
+//#enddebug
+                throw new IllegalStateException("Replay transport is not configured!");
+            }
+            fileUrl = Recording.getFileUrl(directory, url);
+        }
+        Recording recording = Recording.read(fileUrl);
+        if (isFailing()) {
+//#mdebug
+            log.info("Injecting connection failure for: " + url);
+//#enddebug
+            throw new IOException("Injected connection failure: " + url);
+        }
+        int failAt = -1;
+        if (isFailing()) {
+            failAt = nextInt(recording.getBody().length + 1);
+//#mdebug
+            log.info("Injecting transfer failure at " + failAt + " for: " + url);
+//#enddebug
+        }
+        return new ReplayedHttpConnection(url, recording, nextLatency(), bandwidth, failAt);
+    }
+
+    /**
+     * Draws if the next failure shall be injected.
+     * @return {@code true} if the failure shall be injected.
+     */
+    private synchronized boolean isFailing() {
+        return failureRate > 0 && random.nextInt(100) < failureRate;
+    }
+
+    /**
+     * Draws the delay of the next response.
+     * @return the {@code long} with delay in milliseconds.
+     */
+    private synchronized long nextLatency() {
+        return jitter > 0L ? latency + (random.nextLong() & Long.MAX_VALUE) % (jitter + 1L) : latency;
+    }
+
+    /**
+     * Draws the random number.
+     * @param bound the {@code int} upper bound (exclusive) of the number.
+     * @return the {@code int} between {@code 0} and {@code bound}.
+     */
+    private synchronized int nextInt(int bound) {
+        return random.nextInt(bound);
+    }
+
+    /**
+     * Gets the number that is not negative from the {@code properties}.
+     * @param properties the {@link Properties} with settings of the transport.
+     * @param key the {@link String} key of the number.
+     * @return the {@code long} number or {@code 0} if it's not set.
+     * @throws IllegalArgumentException if the number is invalid.
+     */
+    private static long getNumber(Properties properties, String key) {
+        String value = properties.getProperty(key);
+        if (value == null) {
+            return 0L;
+        }
+        try {
+            long number = Long.parseLong(value.trim());
+            if (number >= 0L) {
+                return number;
+            }
+        } catch (NumberFormatException ex) {
+//#mdebug
+            log.error("Cannot parse " + key + " = " + value, ex);
+//#enddebug
+        }
+        throw new IllegalArgumentException("Invalid value of " + key + ": " + value);
+    }
+}
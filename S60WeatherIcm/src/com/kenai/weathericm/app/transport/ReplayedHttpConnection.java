@@ -0,0 +1,366 @@
+/*
+ *  Copyright (C) 2010 Przemek Kryger
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.kenai.weathericm.app.transport;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Hashtable;
+import javax.microedition.io.HttpConnection;
+
+/**
+ * This serves the {@link Recording} as if it was received from the network.
+ * The response arrives after the latency, and the body arrives no faster
+ * than the bandwidth allows. The transfer breaks with {@link IOException}
+ * after the given number of bytes. Closing the connection
+ * or the stream unblocks the waiting calls, like closing a real connection does.
+ * @author Przemek Kryger
+ */
+class ReplayedHttpConnection implements HttpConnection {
+
+    /**
+     * The number of bytes read in one go at most, so the bandwidth can be kept.
+     */
+    final static int CHUNK_SIZE = 256;
+    /**
+     * The URL of the connection.
+     */
+    private final String url;
+    /**
+     * The recorded response.
+     */
+    private final Recording recording;
+    /**
+     * The delay of the response in milliseconds.
+     */
+    private final long latency;
+    /**
+     * The bandwidth in bytes per second, {@code 0} means unlimited.
+     */
+    private final long bandwidth;
+    /**
+     * The number of bytes after which the transfer breaks, or {@code -1}.
+     */
+    private final int failAt;
+    /**
+     * The request properties.
+     */
+    private final Hashtable requestProperties = new Hashtable();
+    /**
+     * The request method.
+     */
+    private String requestMethod = GET;
+    /**
+     * The time the response arrives at, or {@code 0} until it's asked for.
+     */
+    private long responseTime = 0L;
+    /**
+     * Indicates if the connection has been closed.
+     */
+    private boolean closed = false;
+
+    /**
+     * Creates a new connection that serves the {@code recording}.
+     * @param url the {@link String} with URL of the connection.
+     * @param recording the {@link Recording} to serve.
+     * @param latency the {@code long} delay of the response in milliseconds.
+     * @param bandwidth the {@code long} bandwidth in bytes per second, or {@code 0}.
+     * @param failAt the {@code int} number of bytes after which the transfer
+     *        breaks, or {@code -1}.
+     */
+    ReplayedHttpConnection(String url, Recording recording, long latency, long bandwidth,
+            int failAt) {
+        this.url = url;
+        this.recording = recording;
+        this.latency = latency;
+        this.bandwidth = bandwidth;
+        this.failAt = failAt;
+    }
+
+    /**
+     * Waits until the response arrives.
+     * @throws IOException if the connection has been closed.
+     */
+    private synchronized void respond() throws IOException {
+        if (responseTime == 0L) {
+            responseTime = System.currentTimeMillis() + latency;
+        }
+        waitUntil(responseTime);
+    }
+
+    /**
+     * Waits until the given {@code time}, or until the connection is closed.
+     * @param time the {@code long} time to wait until.
+     * @throws IOException if the connection has been closed.
+     */
+    private synchronized void waitUntil(long time) throws IOException {
+        long now = System.currentTimeMillis();
+        while (!closed && now < time) {
+            try {
+                wait(time - now);
+            } catch (InterruptedException ex) {
+                throw new IOException("Interrupted while waiting for data");
+            }
+            now = System.currentTimeMillis();
+        }
+        if (closed) {
+            throw new IOException("Connection closed");
+        }
+    }
+
+    public synchronized void close() {
+        closed = true;
+        notifyAll();
+    }
+
+    public InputStream openInputStream() throws IOException {
+        respond();
+        return new ReplayedInputStream();
+    }
+
+    public DataInputStream openDataInputStream() throws IOException {
+        return new DataInputStream(openInputStream());
+    }
+
+    public OutputStream openOutputStream() throws IOException {
+        throw new IOException("Cannot send data in replay");
+    }
+
+    public DataOutputStream openDataOutputStream() throws IOException {
+        throw new IOException("Cannot send data in replay");
+    }
+
+    /**
+     * Gets the length from the recorded {@code Content-Length} header.
+     * @return the {@code long} length or {@code -1} if it's not known.
+     */
+    public long getLength() {
+        try {
+            return getHeaderFieldInt("Content-Length", -1);
+        } catch (IOException ex) {
+            return -1L;
+        }
+    }
+
+    public String getType() {
+        return recording.getHeaderField("Content-Type");
+    }
+
+    public String getEncoding() {
+        return recording.getHeaderField("Content-Encoding");
+    }
+
+    public int getResponseCode() throws IOException {
+        respond();
+        return recording.getResponseCode();
+    }
+
+    public String getResponseMessage() throws IOException {
+        respond();
+        return recording.getResponseMessage();
+    }
+
+    public String getHeaderField(String name) throws IOException {
+        respond();
+        return recording.getHeaderField(name);
+    }
+
+    public String getHeaderField(int n) throws IOException {
+        respond();
+        return recording.getHeaderField(n);
+    }
+
+    public String getHeaderFieldKey(int n) throws IOException {
+        respond();
+        return recording.getHeaderFieldKey(n);
+    }
+
+    /**
+     * Dates are not parsed in replay.
+     * @param name the {@link String} with name of the header.
+     * @param def the {@code long} default value.
+     * @return the {@code def}.
+     * @throws IOException if the connection has been closed.
+     */
+    public long getHeaderFieldDate(String name, long def) throws IOException {
+        respond();
+        return def;
+    }
+
+    public int getHeaderFieldInt(String name, int def) throws IOException {
+        String value = getHeaderField(name);
+        if (value == null) {
+            return def;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException ex) {
+            return def;
+        }
+    }
+
+    public long getLastModified() throws IOException {
+        return getHeaderFieldDate("Last-Modified", 0L);
+    }
+
+    public long getDate() throws IOException {
+        return getHeaderFieldDate("Date", 0L);
+    }
+
+    public long getExpiration() throws IOException {
+        return getHeaderFieldDate("Expires", 0L);
+    }
+
+    public synchronized String getRequestMethod() {
+        return requestMethod;
+    }
+
+    public synchronized void setRequestMethod(String method) {
+        requestMethod = method;
+    }
+
+    public synchronized String getRequestProperty(String key) {
+        return (String) requestProperties.get(key);
+    }
+
+    public synchronized void setRequestProperty(String key, String value) {
+        requestProperties.put(key, value);
+    }
+
+    public String getURL() {
+        return url;
+    }
+
+    public String getProtocol() {
+        int end = url.indexOf("://");
+        return end == -1 ? "http" : url.substring(0, end);
+    }
+
+    public String getHost() {
+        String authority = getAuthority();
+        int colon = authority.indexOf(':');
+        return colon == -1 ? authority : authority.substring(0, colon);
+    }
+
+    public int getPort() {
+        String authority = getAuthority();
+        int colon = authority.indexOf(':');
+        if (colon != -1) {
+            try {
+                return Integer.parseInt(authority.substring(colon + 1));
+            } catch (NumberFormatException ex) {
+                return 80;
+            }
+        }
+        return 80;
+    }
+
+    public String getFile() {
+        String path = getPath();
+        int end = path.indexOf('?');
+        return end == -1 ? path : path.substring(0, end);
+    }
+
+    public String getQuery() {
+        String path = getPath();
+        int start = path.indexOf('?');
+        return start == -1 ? null : path.substring(start + 1);
+    }
+
+    public String getRef() {
+        int start = url.indexOf('#');
+        return start == -1 ? null : url.substring(start + 1);
+    }
+
+    /**
+     * Gets the host and port part of the URL.
+     * @return the {@link String} with host and port.
+     */
+    private String getAuthority() {
+        int start = url.indexOf("://");
+        start = start == -1 ? 0 : start + 3;
+        int end = url.indexOf('/', start);
+        return end == -1 ? url.substring(start) : url.substring(start, end);
+    }
+
+    /**
+     * Gets the path and query part of the URL, without the reference.
+     * @return the {@link String} with path and query.
+     */
+    private String getPath() {
+        int start = url.indexOf("://");
+        start = url.indexOf('/', start == -1 ? 0 : start + 3);
+        if (start == -1) {
+            return "/";
+        }
+        int end = url.indexOf('#', start);
+        return end == -1 ? url.substring(start) : url.substring(start, end);
+    }
+
+    /**
+     * This serves the recorded body at the bandwidth of the connection.
+     */
+    private class ReplayedInputStream extends InputStream {
+
+        /**
+         * The number of bytes served.
+         */
+        private int position = 0;
+
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            int read = read(b, 0, 1);
+            return read == -1 ? -1 : b[0] & 0xff;
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException {
+            byte[] body = recording.getBody();
+            if (len == 0) {
+                return 0;
+            }
+            if (position == failAt) {
+                throw new IOException("Injected transfer failure");
+            }
+            if (position >= body.length) {
+                return -1;
+            }
+            int count = Math.min(Math.min(len, CHUNK_SIZE), body.length - position);
+            if (failAt > position) {
+                count = Math.min(count, failAt - position);
+            }
+            if (bandwidth > 0L) {
+                waitUntil(responseTime + (position + count) * 1000L / bandwidth);
+            } else {
+                waitUntil(0L);
+            }
+            System.arraycopy(body, position, b, off, count);
+            position += count;
+            return count;
+        }
+
+        public int available() {
+            return 0;
+        }
+
+        public void close() {
+            ReplayedHttpConnection.this.close();
+        }
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ *  Copyright (C) 2010 Przemek Kryger
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.kenai.weathericm.app.transport;
+
+import com.kenai.weathericm.util.Properties;
+import java.io.IOException;
+import javax.microedition.io.HttpConnection;
+
+/**
+ * The implementation will open the {@link HttpConnection}s used by the
+ * downloaders. The implementation is chosen in
+ * {@code ForecastDataDownloaderFactory.properties} and it must have a public
+ * no argument constructor. It is shared by all the downloaders, so it must be
+ * safe to use from many threads.
+ * @author Przemek Kryger
+ */
+public interface Transport {
+
+    /**
+     * Configures the transport with the {@code properties} read from
+     * {@code ForecastDataDownloaderFactory.properties}.
+     * @param properties the {@link Properties} with settings of the transport.
+     */
+    void configure(Properties properties);
+
+    /**
+     * Opens the connection to the given {@code url}.
+     * @param url the {@link String} with URL to open.
+     * @return the {@link HttpConnection} to the {@code url}.
+     * @throws IOException if the connection cannot be opened.
+     */
+    HttpConnection open(String url) throws IOException;
+}
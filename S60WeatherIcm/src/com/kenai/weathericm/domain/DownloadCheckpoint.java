@@ -0,0 +1,128 @@
+/*
+ *  Copyright (C) 2010 Przemek Kryger
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.kenai.weathericm.domain;
+
+/**
+ * This holds the part of a response body that has been received before the
+ * download has been interrupted, so the download can be resumed with a
+ * {@code Range} request later. Each instance is identified by the {@value #url}
+ * of the resource. The {@value #eTag} or {@value #lastModified} received with
+ * the first part is sent with {@code If-Range} header, so the server sends
+ * the whole resource when it has changed meanwhile.
+ * @author Przemek Kryger
+ */
+public class DownloadCheckpoint {
+
+    /**
+     * The URL of the resource.
+     */
+    private String url;
+    /**
+     * The data received so far.
+     */
+    private byte[] data = null;
+    /**
+     * The {@code ETag} header of the response.
+     */
+    private String eTag = null;
+    /**
+     * The {@code Last-Modified} header of the response.
+     */
+    private String lastModified = null;
+
+    /**
+     * Creates a new instance for the given {@code url}.
+     * @param url the {@link String} with URL of the resource.
+     * @throws NullPointerException if the {@code url} is {@code null}.
+     */
+    public DownloadCheckpoint(String url) {
+        if (url == null) {
+            throw new NullPointerException("Cannot create checkpoint with null url!");
+        }
+        this.url = url;
+    }
+
+    /**
+     * @return the url
+     */
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * @return the data
+     */
+    public byte[] getData() {
+        return data;
+    }
+
+    /**
+     * @param data the data to set
+     */
+    public void setData(byte[] data) {
+        this.data = data;
+    }
+
+    /**
+     * Gets the number of bytes received so far.
+     * @return the {@code int} length of {@value #data} or {@code 0} if it isn't set.
+     */
+    public int getLength() {
+        return data == null ? 0 : data.length;
+    }
+
+    /**
+     * @return the eTag
+     */
+    public String getETag() {
+        return eTag;
+    }
+
+    /**
+     * @param eTag the eTag to set
+     */
+    public void setETag(String eTag) {
+        this.eTag = eTag;
+    }
+
+    /**
+     * @return the lastModified
+     */
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * @param lastModified the lastModified to set
+     */
+    public void setLastModified(String lastModified) {
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * Converts this instance to {@link String}.
+     * @return the {@link String} representation of this instance.
+     */
+    public String toString() {
+        StringBuffer buffer = new StringBuffer("DownloadCheckpoint[url = ");
+        buffer.append(url).append(", length = ").append(getLength());
+        buffer.append(", eTag = ").append(eTag);
+        buffer.append(", lastModified = ").append(lastModified).append("]");
+        return buffer.toString();
+    }
+}
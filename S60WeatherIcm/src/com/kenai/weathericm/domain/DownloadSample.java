@@ -0,0 +1,182 @@
+/*
+ *  Copyright (C) 2010 Przemek Kryger
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.kenai.weathericm.domain;
+
+/**
+ * This holds the measurements of a single download. The {@value #kind} tells
+ * what has been downloaded and the {@value #type} for which model. The
+ * {@value #length} is the size of the whole data, while {@value #transferred}
+ * is the number of bytes actually received, which is smaller when the download
+ * has been resumed. The {@value #timeToFirstByte} and {@value #duration} are
+ * measured from the moment the connection is being opened.
+ * @author Przemek Kryger
+ */
+public class DownloadSample {
+
+    /**
+     * What has been downloaded.
+     */
+    private String kind;
+    /**
+     * The model the data has been downloaded for or {@code null}.
+     */
+    private MeteorogramType type;
+    /**
+     * The size of the whole data in bytes.
+     */
+    private int length = 0;
+    /**
+     * The number of bytes received.
+     */
+    private int transferred = 0;
+    /**
+     * The time in milliseconds until the first byte of data has arrived.
+     */
+    private long timeToFirstByte = 0L;
+    /**
+     * The time in milliseconds of the whole download.
+     */
+    private long duration = 0L;
+    /**
+     * The time the download has finished at.
+     */
+    private long timestamp = 0L;
+
+    /**
+     * Creates a new instance for the given {@code kind} and {@code type}.
+     * @param kind the {@link String} that tells what has been downloaded.
+     * @param type the {@link MeteorogramType} of the data or {@code null}.
+     * @throws NullPointerException if the {@code kind} is {@code null}.
+     */
+    public DownloadSample(String kind, MeteorogramType type) {
+        if (kind == null) {
+            throw new NullPointerException("Cannot create sample with null kind!");
+        }
+        this.kind = kind;
+        this.type = type;
+    }
+
+    /**
+     * @return the kind
+     */
+    public String getKind() {
+        return kind;
+    }
+
+    /**
+     * @return the type
+     */
+    public MeteorogramType getType() {
+        return type;
+    }
+
+    /**
+     * Checks if this sample has been taken for the given {@code kind} and {@code type}.
+     * @param kind the {@link String} that tells what has been downloaded.
+     * @param type the {@link MeteorogramType} of the data or {@code null}.
+     * @return {@code true} if both {@code kind} and {@code type} match.
+     */
+    public boolean matches(String kind, MeteorogramType type) {
+        return this.kind.equals(kind) && this.type == type;
+    }
+
+    /**
+     * @return the length
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * @param length the length to set
+     */
+    public void setLength(int length) {
+        this.length = length;
+    }
+
+    /**
+     * @return the transferred
+     */
+    public int getTransferred() {
+        return transferred;
+    }
+
+    /**
+     * @param transferred the transferred to set
+     */
+    public void setTransferred(int transferred) {
+        this.transferred = transferred;
+    }
+
+    /**
+     * @return the timeToFirstByte
+     */
+    public long getTimeToFirstByte() {
+        return timeToFirstByte;
+    }
+
+    /**
+     * @param timeToFirstByte the timeToFirstByte to set
+     */
+    public void setTimeToFirstByte(long timeToFirstByte) {
+        this.timeToFirstByte = timeToFirstByte;
+    }
+
+    /**
+     * @return the duration
+     */
+    public long getDuration() {
+        return duration;
+    }
+
+    /**
+     * @param duration the duration to set
+     */
+    public void setDuration(long duration) {
+        this.duration = duration;
+    }
+
+    /**
+     * @return the timestamp
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @param timestamp the timestamp to set
+     */
+    public void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * Converts this instance to {@link String}.
+     * @return the {@link String} representation of this instance.
+     */
+    public String toString() {
+        StringBuffer buffer = new StringBuffer("DownloadSample[kind = ");
+        buffer.append(kind).append(", type = ").append(type);
+        buffer.append(", length = ").append(length);
+        buffer.append(", transferred = ").append(transferred);
+        buffer.append(", timeToFirstByte = ").append(timeToFirstByte);
+        buffer.append(", duration = ").append(duration);
+        buffer.append(", timestamp = ").append(timestamp).append("]");
+        return buffer.toString();
+    }
+}
@@ -17,6 +17,7 @@
  */
 package com.kenai.weathericm.domain;
 
+import com.kenai.weathericm.util.Adler32;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.TimeZone;
@@ -41,6 +42,10 @@ public class ForecastData {
      */
     private final static Logger log = LoggerFactory.getLogger(ForecastData.class);
 //#enddebug
+    /**
+     * The value of {@link #getChecksum()} when there is no model result.
+     */
+    public final static long UNKNOWN_CHECKSUM = -1L;
     /**
      * The time when the model for forecast has been started.
      */
@@ -50,6 +55,15 @@ public class ForecastData {
      * into image and displayed as forecast.
      */
     private byte[] modelResult;
+    /**
+     * The length of the {@value #modelResult}, that is known also when the
+     * model result isn't loaded.
+     */
+    private int modelResultLength = 0;
+    /**
+     * The {@link Adler32} checksum of the {@value #modelResult}.
+     */
+    private long checksum = UNKNOWN_CHECKSUM;
 
     /**
      * Creates a new instance using a passed in {@link String} to set up
@@ -172,7 +186,9 @@ public class ForecastData {
     }
 
     /**
-     * @return the {@link Image} that contains forecast model result.
+     * @return the {@link Image} that contains forecast model result or
+     *         {@code null} if there is no model result or it isn't loaded.
+     * @see #hasModelResult()
      */
     public byte[] getModelResult() {
         return modelResult;
@@ -182,7 +198,105 @@ public class ForecastData {
      * @param modelResult the {@code byte[]} array for forecast model result to set.
      */
     public void setModelResult(byte[] modelResult) {
+        setModelResult(modelResult, UNKNOWN_CHECKSUM);
+    }
+
+    /**
+     * Sets the model result together with its checksum, that has been computed
+     * while the model result has been received.
+     * @param modelResult the {@code byte[]} array for forecast model result to set.
+     * @param checksum the {@code long} with {@link Adler32} checksum of the
+     *        {@code modelResult} or {@value #UNKNOWN_CHECKSUM} to compute it
+     *        when it is needed.
+     */
+    public void setModelResult(byte[] modelResult, long checksum) {
         this.modelResult = modelResult;
+        this.modelResultLength = modelResult == null ? 0 : modelResult.length;
+        this.checksum = modelResult == null ? UNKNOWN_CHECKSUM : checksum;
+    }
+
+    /**
+     * Describes the model result that is stored elsewhere without loading it.
+     * The length and checksum are used by {@link #hasSameModelResult(ForecastData)}
+     * until the model result is loaded with {@link #setModelResult(byte[], long)}.
+     * @param length the {@code int} with length of the model result.
+     * @param checksum the {@code long} with {@link Adler32} checksum of the
+     *        model result or {@value #UNKNOWN_CHECKSUM} if it is not known.
+     * @throws IllegalArgumentException if the {@code length} is negative.
+     */
+    public void setModelResultHeader(int length, long checksum) {
+        if (length < 0) {
+//#mdebug
+            log.error("Cannot set model result length = " + length);
+//#enddebug
+            throw new IllegalArgumentException("Cannot set negative model result length!");
+        }
+        this.modelResult = null;
+        this.modelResultLength = length;
+        this.checksum = length == 0 ? UNKNOWN_CHECKSUM : checksum;
+    }
+
+    /**
+     * Drops the model result to release the memory. The length and checksum of
+     * the model result are kept, so it can be loaded again.
+     */
+    public void unloadModelResult() {
+        getChecksum();
+        modelResult = null;
+    }
+
+    /**
+     * @return {@code true} if there is a model result, loaded or not.
+     */
+    public boolean hasModelResult() {
+        return modelResultLength > 0 || modelResult != null;
+    }
+
+    /**
+     * @return {@code true} if the model result is held in the memory.
+     */
+    public boolean isModelResultLoaded() {
+        return modelResult != null;
+    }
+
+    /**
+     * @return the {@code int} with length of the model result, loaded or not.
+     */
+    public int getModelResultLength() {
+        return modelResultLength;
+    }
+
+    /**
+     * Gets the {@link Adler32} checksum of the model result. It is computed
+     * when it hasn't been set with the model result.
+     * @return the {@code long} with checksum or {@value #UNKNOWN_CHECKSUM} if
+     *         there is no model result or it hasn't been loaded and the
+     *         checksum is not known.
+     */
+    public long getChecksum() {
+        if (checksum == UNKNOWN_CHECKSUM && modelResult != null) {
+            checksum = Adler32.checksum(modelResult, modelResult.length);
+        }
+        return checksum;
+    }
+
+    /**
+     * Checks if the {@code other} has the same model start and model result as
+     * this instance. The model results are compared by their lengths and
+     * checksums only.
+     * @param other the {@link ForecastData} to compare with or {@code null}.
+     * @return {@code true} if both model results are known and they are the
+     *         same, {@code false} otherwise.
+     */
+    public boolean hasSameModelResult(ForecastData other) {
+        if (other == null || !hasModelResult() || !other.hasModelResult()) {
+            return false;
+        }
+        long thisChecksum = getChecksum();
+        return thisChecksum != UNKNOWN_CHECKSUM
+                && getModelStart().equals(other.getModelStart())
+                && getModelResultLength() == other.getModelResultLength()
+                && thisChecksum == other.getChecksum();
     }
 
     /**
@@ -191,7 +305,7 @@ public class ForecastData {
      */
     public String toString() {
         StringBuffer buffer = new StringBuffer("[");
-        buffer.append(modelStart.toString()).append("] ").append(modelResult == null ? "w/o data" : "w/ data");
+        buffer.append(modelStart.toString()).append("] ").append(modelResult != null ? "w/ data" : hasModelResult() ? "w/ unloaded data" : "w/o data");
         return buffer.toString();
     }
 }
@@ -0,0 +1,143 @@
+/*
+ *  Copyright (C) 2010 Przemek Kryger
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.kenai.weathericm.domain;
+
+/**
+ * This holds the HTTP validators ({@code ETag} and {@code Last-Modified}) received
+ * with a response, so the same resource can be requested conditionally later.
+ * Each instance is identified by {@value #key}. The {@value #url} tells which
+ * resource the validators are for and {@value #value} may hold the data
+ * extracted from the response, that is still valid when the server answers
+ * with {@code 304 Not Modified}.
+ * @author Przemek Kryger
+ */
+public class HttpValidator {
+
+    /**
+     * The key that identifies this instance.
+     */
+    private String key;
+    /**
+     * The URL of the resource.
+     */
+    private String url;
+    /**
+     * The {@code ETag} header of the response.
+     */
+    private String eTag = null;
+    /**
+     * The {@code Last-Modified} header of the response.
+     */
+    private String lastModified = null;
+    /**
+     * The data extracted from the response.
+     */
+    private String value = null;
+
+    /**
+     * Creates a new instance for the given {@code key} and {@code url}.
+     * @param key the {@link String} that identifies this instance.
+     * @param url the {@link String} with URL of the resource.
+     * @throws NullPointerException if either {@code key} or {@code url} is {@code null}.
+     */
+    public HttpValidator(String key, String url) {
+        if (key == null || url == null) {
+            throw new NullPointerException("Cannot create validator with null key or url!");
+        }
+        this.key = key;
+        this.url = url;
+    }
+
+    /**
+     * @return the key
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * @return the url
+     */
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * @return the eTag
+     */
+    public String getETag() {
+        return eTag;
+    }
+
+    /**
+     * @param eTag the eTag to set
+     */
+    public void setETag(String eTag) {
+        this.eTag = eTag;
+    }
+
+    /**
+     * @return the lastModified
+     */
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * @param lastModified the lastModified to set
+     */
+    public void setLastModified(String lastModified) {
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * @return the value
+     */
+    public String getValue() {
+        return value;
+    }
+
+    /**
+     * @param value the value to set
+     */
+    public void setValue(String value) {
+        this.value = value;
+    }
+
+    /**
+     * Checks if there is any validator that can be used in a conditional request.
+     * @return {@code true} if either {@value #eTag} or {@value #lastModified}
+     *         is set.
+     */
+    public boolean isUsable() {
+        return eTag != null || lastModified != null;
+    }
+
+    /**
+     * Converts this instance to {@link String}.
+     * @return the {@link String} representation of this instance.
+     */
+    public String toString() {
+        StringBuffer buffer = new StringBuffer("HttpValidator[key = ");
+        buffer.append(key).append(", url = ").append(url);
+        buffer.append(", eTag = ").append(eTag);
+        buffer.append(", lastModified = ").append(lastModified);
+        buffer.append(", value = ").append(value).append("]");
+        return buffer.toString();
+    }
+}
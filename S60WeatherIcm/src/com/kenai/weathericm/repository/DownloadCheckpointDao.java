@@ -0,0 +1,52 @@
+/*
+ *  Copyright (C) 2010 Przemek Kryger
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.kenai.weathericm.repository;
+
+import com.kenai.weathericm.domain.DownloadCheckpoint;
+
+/**
+ * The implementation will take care of persisting {@link DownloadCheckpoint}s
+ * based on their URLs.
+ * @author Przemek Kryger
+ */
+public interface DownloadCheckpointDao {
+
+    /**
+     * Reads the {@link DownloadCheckpoint} from the persistent storage.
+     * @param url the {@link String} with URL of the resource.
+     * @return the {@link DownloadCheckpoint} read from persistent storage, or
+     *         {@code null} if it doesn't exist or in case of any error.
+     */
+    DownloadCheckpoint read(String url);
+
+    /**
+     * Creates or updates the {@code checkpoint} in the persistent storage. Any
+     * {@link DownloadCheckpoint} with the same URL is replaced.
+     * @param checkpoint the {@link DownloadCheckpoint} to be persisted.
+     * @return {@code true} if the operation has been successful, {@code false} otherwise.
+     */
+    boolean createOrUpdate(DownloadCheckpoint checkpoint);
+
+    /**
+     * Removes the {@link DownloadCheckpoint} for the {@code url} from the
+     * persistent storage.
+     * @param url the {@link String} with URL of the resource.
+     * @return {@code true} if the deletion has been successful, {@code false} otherwise.
+     */
+    boolean delete(String url);
+}
@@ -0,0 +1,393 @@
+/*
+ *  Copyright (C) 2010 Przemek Kryger
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.kenai.weathericm.repository;
+
+import com.kenai.weathericm.domain.DownloadCheckpoint;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Enumeration;
+import java.util.Hashtable;
+import javax.microedition.rms.InvalidRecordIDException;
+import javax.microedition.rms.RecordEnumeration;
+import javax.microedition.rms.RecordStore;
+import javax.microedition.rms.RecordStoreException;
+import javax.microedition.rms.RecordStoreNotOpenException;
+//#mdebug
+import net.sf.microlog.core.Logger;
+import net.sf.microlog.core.LoggerFactory;
+//#enddebug
+
+/**
+ * This is an implementation of {@link DownloadCheckpointDao} that is compatible to
+ * {@link RecordStore}. All the checkpoints are kept in one store and the
+ * record ids are looked up by URLs in a {@link Hashtable} that is filled when
+ * the store is accessed for the first time. At most {@value #MAX_CHECKPOINTS}
+ * checkpoints are kept, the oldest one is dropped when a new one is created.
+ * Since the record store access safety it implements singleton pattern.
+ * @author Przemek Kryger
+ * @see DownloadCheckpointRecordStoreDao#getInstance()
+ */
+public class DownloadCheckpointRecordStoreDao implements DownloadCheckpointDao {
+
+    /**
+     * The {@link RecordStore} store name
+     */
+    public final static String STORE = "DownloadCheckpoint";
+    /**
+     * The maximum number of checkpoints kept in the store.
+     */
+    public final static int MAX_CHECKPOINTS = 2;
+//#mdebug
+    /**
+     * The class logger.
+     */
+    private final static Logger log = LoggerFactory.getLogger(DownloadCheckpointRecordStoreDao.class);
+//#enddebug
+    /**
+     * Singleton instance of {@link DownloadCheckpointRecordStoreDao}.
+     */
+    private static DownloadCheckpointRecordStoreDao instance;
+    /**
+     * Maps URLs to record ids in the store. It is {@code null} until the store
+     * is scanned for the first time.
+     */
+    private Hashtable urlToRecordId = null;
+
+    /**
+     * Default constructor is private for singleton safety.
+     */
+    private DownloadCheckpointRecordStoreDao() {
+//#mdebug
+        log.debug("Created DownloadCheckpointRecordStoreDao instance");
+//#enddebug
+    }
+
+    /**
+     * Getter for singleton instance.
+     * @return the {@link DownloadCheckpointRecordStoreDao} instance.
+     */
+    public static DownloadCheckpointRecordStoreDao getInstance() {
+        if (instance == null) {
+            instance = new DownloadCheckpointRecordStoreDao();
+        }
+        return instance;
+    }
+
+    /**
+     * Reads the {@link DownloadCheckpoint} for the given {@code url}.
+     * @param url the {@link String} with URL of the resource.
+     * @return the {@link DownloadCheckpoint} or {@code null} if it doesn't exist or
+     *         an error occurred.
+     */
+    public synchronized DownloadCheckpoint read(String url) {
+        if (url == null) {
+//#mdebug
+            log.error("Attempt to read checkpoint for null url!");
+//#enddebug
+            throw new NullPointerException("Cannot read checkpoint for null url!");
+        }
+        RecordStore store = null;
+        DownloadCheckpoint checkpoint = null;
+        try {
+            store = RecordStore.openRecordStore(STORE, true);
+            Integer id = (Integer) getIndex(store).get(url);
+            if (id != null) {
+                checkpoint = resurect(store.getRecord(id.intValue()));
+                if (checkpoint == null || !url.equals(checkpoint.getUrl())) {
+//#mdebug
+                    log.warn("Broken checkpoint record for url = " + url);
+//#enddebug
+                    checkpoint = null;
+                    urlToRecordId.remove(url);
+                    store.deleteRecord(id.intValue());
+                }
+            }
+        } catch (RecordStoreException ex) {
+//#mdebug
+            log.error("Checkpoint not read due to RecordStore problem!", ex);
+//#enddebug
+            urlToRecordId = null;
+        } finally {
+            closeRecordStore(store);
+        }
+//#mdebug
+        log.debug("Read checkpoint: " + checkpoint);
+//#enddebug
+        return checkpoint;
+    }
+
+    /**
+     * Creates or updates the given {@code checkpoint} in {@link RecordStore}.
+     * When a new checkpoint is created and there are already
+     * {@value #MAX_CHECKPOINTS} in the store, the oldest one is deleted first.
+     * @param checkpoint the {@link DownloadCheckpoint} to be persisted.
+     * @return {@code true} if the operation has been successful, {@code false} otherwise.
+     */
+    public synchronized boolean createOrUpdate(DownloadCheckpoint checkpoint) {
+        if (checkpoint == null) {
+//#mdebug
+            log.error("Attempt to persist null checkpoint!");
+//#enddebug
+            throw new NullPointerException("Cannot persist null checkpoint!");
+        }
+        RecordStore store = null;
+        boolean retValue = false;
+        try {
+            store = RecordStore.openRecordStore(STORE, true);
+            byte[] data = serialize(checkpoint);
+            if (data != null) {
+                Hashtable index = getIndex(store);
+                Integer id = (Integer) index.get(checkpoint.getUrl());
+                if (id != null) {
+                    try {
+                        store.setRecord(id.intValue(), data, 0, data.length);
+                    } catch (InvalidRecordIDException ex) {
+//#mdebug
+                        log.warn("Checkpoint record disappeared, creating it again: " + checkpoint);
+//#enddebug
+                        index.remove(checkpoint.getUrl());
+                        id = null;
+                    }
+                }
+                if (id == null) {
+                    while (index.size() >= MAX_CHECKPOINTS) {
+                        deleteOldest(store, index);
+                    }
+                    id = new Integer(store.addRecord(data, 0, data.length));
+                    index.put(checkpoint.getUrl(), id);
+                }
+                retValue = true;
+//#mdebug
+                log.debug("Checkpoint persisted: " + checkpoint);
+//#enddebug
+            }
+        } catch (RecordStoreException ex) {
+//#mdebug
+            log.error("Checkpoint not persisted due to RecordStore problem! "
+                    + "checkpoint = " + checkpoint, ex);
+//#enddebug
+            urlToRecordId = null;
+        } finally {
+            closeRecordStore(store);
+        }
+        return retValue;
+    }
+
+    /**
+     * Deletes the {@link DownloadCheckpoint} for the given {@code url}.
+     * @param url the {@link String} with URL of the resource.
+     * @return {@code true} if the deletion has been successful, {@code false} otherwise.
+     */
+    public synchronized boolean delete(String url) {
+        if (url == null) {
+//#mdebug
+            log.error("Attempt to delete checkpoint for null url!");
+//#enddebug
+            throw new NullPointerException("Cannot delete checkpoint for null url!");
+        }
+        RecordStore store = null;
+        boolean retValue = false;
+        try {
+            store = RecordStore.openRecordStore(STORE, true);
+            Integer id = (Integer) getIndex(store).remove(url);
+            if (id != null) {
+                store.deleteRecord(id.intValue());
+                retValue = true;
+            }
+        } catch (InvalidRecordIDException ex) {
+//#mdebug
+            log.warn("Checkpoint not deleted since it doesn't exist in store: " + url);
+//#enddebug
+        } catch (RecordStoreException ex) {
+//#mdebug
+            log.error("Checkpoint not deleted due to RecordStore problem! url = " + url, ex);
+//#enddebug
+            urlToRecordId = null;
+        } finally {
+            closeRecordStore(store);
+        }
+        return retValue;
+    }
+
+    /**
+     * Deletes the checkpoint with the lowest record id, that is the one that
+     * has been created first.
+     * @param store the opened {@link RecordStore}.
+     * @param index the {@link Hashtable} that maps URLs to record ids.
+     * @throws RecordStoreException if the record cannot be deleted.
+     */
+    private void deleteOldest(RecordStore store, Hashtable index) throws RecordStoreException {
+        String oldestUrl = null;
+        int oldestId = Integer.MAX_VALUE;
+        for (Enumeration urls = index.keys(); urls.hasMoreElements();) {
+            String url = (String) urls.nextElement();
+            int id = ((Integer) index.get(url)).intValue();
+            if (id < oldestId) {
+                oldestId = id;
+                oldestUrl = url;
+            }
+        }
+        index.remove(oldestUrl);
+//#mdebug
+        log.info("Dropping the oldest checkpoint for url = " + oldestUrl);
+//#enddebug
+        try {
+            store.deleteRecord(oldestId);
+        } catch (InvalidRecordIDException ex) {
+//#mdebug
+            log.warn("The oldest checkpoint doesn't exist in store: " + oldestUrl);
+//#enddebug
+        }
+    }
+
+    /**
+     * Gets the URLs to record ids mapping. Scans the {@code store} if it
+     * hasn't been done yet.
+     * @param store the opened {@link RecordStore} to scan.
+     * @return the {@link Hashtable} that maps URLs to record ids.
+     * @throws RecordStoreException if the {@code store} cannot be scanned.
+     */
+    private Hashtable getIndex(RecordStore store) throws RecordStoreException {
+        if (urlToRecordId == null) {
+            Hashtable index = new Hashtable();
+            RecordEnumeration records = store.enumerateRecords(null, null, false);
+            try {
+                while (records.hasNextElement()) {
+                    int id = records.nextRecordId();
+                    DownloadCheckpoint checkpoint = resurect(store.getRecord(id));
+                    if (checkpoint == null) {
+//#mdebug
+                        log.warn("Deleting broken checkpoint record: " + id);
+//#enddebug
+                        store.deleteRecord(id);
+                    } else {
+                        index.put(checkpoint.getUrl(), new Integer(id));
+                    }
+                }
+            } finally {
+                records.destroy();
+            }
+            urlToRecordId = index;
+        }
+        return urlToRecordId;
+    }
+
+    /**
+     * Encodes the {@code checkpoint} into {@link RecordStore} format.
+     * @param checkpoint the {@link DownloadCheckpoint} to be encoded.
+     * @return the {@code byte[]} with encoded data or {@code null} if an error
+     *         occurred.
+     */
+    protected byte[] serialize(DownloadCheckpoint checkpoint) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(checkpoint.getLength() + 128);
+        DataOutputStream dos = new DataOutputStream(baos);
+        byte[] data = null;
+        try {
+            dos.writeUTF(checkpoint.getUrl());
+            writeOptional(dos, checkpoint.getETag());
+            writeOptional(dos, checkpoint.getLastModified());
+            dos.writeInt(checkpoint.getLength());
+            if (checkpoint.getLength() > 0) {
+                dos.write(checkpoint.getData());
+            }
+            data = baos.toByteArray();
+        } catch (IOException ex) {
+//#mdebug
+            log.error("Cannot serialize checkpoint to bytes!", ex);
+//#enddebug
+        }
+        return data;
+    }
+
+    /**
+     * Decodes the {@code data} from {@link RecordStore} format.
+     * @param data the {@code byte[]} to be decoded.
+     * @return the {@link DownloadCheckpoint} or {@code null} if the {@code data} is broken.
+     */
+    protected DownloadCheckpoint resurect(byte[] data) {
+        if (data == null) {
+            return null;
+        }
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
+        DownloadCheckpoint checkpoint = null;
+        try {
+            checkpoint = new DownloadCheckpoint(dis.readUTF());
+            checkpoint.setETag(readOptional(dis));
+            checkpoint.setLastModified(readOptional(dis));
+            int length = dis.readInt();
+            if (length < 0) {
+                throw new IOException("Negative length of checkpoint data: " + length);
+            }
+            byte[] body = new byte[length];
+            dis.readFully(body);
+            checkpoint.setData(body);
+        } catch (IOException ex) {
+//#mdebug
+            log.error("Cannot deserialize checkpoint from bytes!", ex);
+//#enddebug
+            checkpoint = null;
+        }
+        return checkpoint;
+    }
+
+    /**
+     * Writes the {@code value} that may be {@code null}.
+     * @param dos the {@link DataOutputStream} to write to.
+     * @param value the {@link String} to write.
+     * @throws IOException if the {@code value} cannot be written.
+     */
+    private void writeOptional(DataOutputStream dos, String value) throws IOException {
+        dos.writeBoolean(value != null);
+        if (value != null) {
+            dos.writeUTF(value);
+        }
+    }
+
+    /**
+     * Reads the value written by {@link #writeOptional(DataOutputStream, String)}.
+     * @param dis the {@link DataInputStream} to read from.
+     * @return the {@link String} read or {@code null}.
+     * @throws IOException if the value cannot be read.
+     */
+    private String readOptional(DataInputStream dis) throws IOException {
+        return dis.readBoolean() ? dis.readUTF() : null;
+    }
+
+    /**
+     * Convenience method to close {@code store}.
+     * @param store the {@link RecordStore} to be closed.
+     */
+    protected void closeRecordStore(RecordStore store) {
+        if (store != null) {
+            try {
+                store.closeRecordStore();
+            } catch (RecordStoreNotOpenException ex) {
+//#mdebug
+                log.error("Attempt to close RecordStore that hasn't been already open!");
+//#enddebug
+            } catch (RecordStoreException ex) {
+//#mdebug
+                log.fatal("Error while closing store due to RecordStore problem!", ex);
+//#enddebug
+            }
+        }
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ *  Copyright (C) 2010 Przemek Kryger
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.kenai.weathericm.repository;
+
+import java.util.Vector;
+
+/**
+ * The implementation will take care of persisting the recent
+ * {@link com.kenai.weathericm.domain.DownloadSample}s as a whole.
+ * @author Przemek Kryger
+ */
+public interface DownloadTelemetryDao {
+
+    /**
+     * Reads all the samples from the persistent storage.
+     * @return the {@link Vector} of {@link com.kenai.weathericm.domain.DownloadSample}s,
+     *         the oldest first. It is empty if there are none or in case of any error.
+     */
+    Vector readAll();
+
+    /**
+     * Replaces all the samples in the persistent storage with {@code samples}.
+     * @param samples the {@link Vector} of {@link com.kenai.weathericm.domain.DownloadSample}s
+     *        to be persisted.
+     * @return {@code true} if the operation has been successful, {@code false} otherwise.
+     */
+    boolean updateAll(Vector samples);
+}
@@ -0,0 +1,280 @@
+/*
+ *  Copyright (C) 2010 Przemek Kryger
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.kenai.weathericm.repository;
+
+import com.kenai.weathericm.domain.DownloadSample;
+import com.kenai.weathericm.domain.MeteorogramType;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Vector;
+import javax.microedition.rms.InvalidRecordIDException;
+import javax.microedition.rms.RecordEnumeration;
+import javax.microedition.rms.RecordStore;
+import javax.microedition.rms.RecordStoreException;
+import javax.microedition.rms.RecordStoreNotOpenException;
+//#mdebug
+import net.sf.microlog.core.Logger;
+import net.sf.microlog.core.LoggerFactory;
+//#enddebug
+
+/**
+ * This is an implementation of {@link DownloadTelemetryDao} that is compatible to
+ * {@link RecordStore}. All the samples are kept in a single record, as they
+ * are always read and written together. The id of the record is remembered
+ * when the store is accessed for the first time.
+ * Since the record store access safety it implements singleton pattern.
+ * @author Przemek Kryger
+ * @see DownloadTelemetryRecordStoreDao#getInstance()
+ */
+public class DownloadTelemetryRecordStoreDao implements DownloadTelemetryDao {
+
+    /**
+     * The {@link RecordStore} store name
+     */
+    public final static String STORE = "DownloadTelemetry";
+//#mdebug
+    /**
+     * The class logger.
+     */
+    private final static Logger log = LoggerFactory.getLogger(DownloadTelemetryRecordStoreDao.class);
+//#enddebug
+    /**
+     * Singleton instance of {@link DownloadTelemetryRecordStoreDao}.
+     */
+    private static DownloadTelemetryRecordStoreDao instance;
+    /**
+     * The id of the record with samples, or {@code -1} if it's not known yet.
+     */
+    private int recordId = -1;
+
+    /**
+     * Default constructor is private for singleton safety.
+     */
+    private DownloadTelemetryRecordStoreDao() {
+//#mdebug
+        log.debug("Created DownloadTelemetryRecordStoreDao instance");
+//#enddebug
+    }
+
+    /**
+     * Getter for singleton instance.
+     * @return the {@link DownloadTelemetryRecordStoreDao} instance.
+     */
+    public static DownloadTelemetryRecordStoreDao getInstance() {
+        if (instance == null) {
+            instance = new DownloadTelemetryRecordStoreDao();
+        }
+        return instance;
+    }
+
+    /**
+     * Reads all the samples from {@link RecordStore}.
+     * @return the {@link Vector} of {@link DownloadSample}s, the oldest first.
+     */
+    public synchronized Vector readAll() {
+        RecordStore store = null;
+        Vector samples = null;
+        try {
+            store = RecordStore.openRecordStore(STORE, true);
+            int id = findRecord(store);
+            if (id != -1) {
+                samples = resurect(store.getRecord(id));
+                if (samples == null) {
+//#mdebug
+                    log.warn("Deleting broken telemetry record: " + id);
+//#enddebug
+                    recordId = -1;
+                    store.deleteRecord(id);
+                }
+            }
+        } catch (RecordStoreException ex) {
+//#mdebug
+            log.error("Telemetry not read due to RecordStore problem!", ex);
+//#enddebug
+            recordId = -1;
+        } finally {
+            closeRecordStore(store);
+        }
+        if (samples == null) {
+            samples = new Vector();
+        }
+//#mdebug
+        log.debug("Read " + samples.size() + " telemetry samples");
+//#enddebug
+        return samples;
+    }
+
+    /**
+     * Replaces all the samples in {@link RecordStore} with {@code samples}.
+     * @param samples the {@link Vector} of {@link DownloadSample}s to be persisted.
+     * @return {@code true} if the operation has been successful, {@code false} otherwise.
+     */
+    public synchronized boolean updateAll(Vector samples) {
+        if (samples == null) {
+//#mdebug
+            log.error("Attempt to persist null samples!");
+//#enddebug
+            throw new NullPointerException("Cannot persist null samples!");
+        }
+        RecordStore store = null;
+        boolean retValue = false;
+        try {
+            store = RecordStore.openRecordStore(STORE, true);
+            byte[] data = serialize(samples);
+            if (data != null) {
+                int id = findRecord(store);
+                if (id != -1) {
+                    try {
+                        store.setRecord(id, data, 0, data.length);
+                    } catch (InvalidRecordIDException ex) {
+//#mdebug
+                        log.warn("Telemetry record disappeared, creating it again");
+//#enddebug
+                        id = -1;
+                    }
+                }
+                if (id == -1) {
+                    recordId = store.addRecord(data, 0, data.length);
+                }
+                retValue = true;
+//#mdebug
+                log.debug("Persisted " + samples.size() + " telemetry samples");
+//#enddebug
+            }
+        } catch (RecordStoreException ex) {
+//#mdebug
+            log.error("Telemetry not persisted due to RecordStore problem!", ex);
+//#enddebug
+            recordId = -1;
+        } finally {
+            closeRecordStore(store);
+        }
+        return retValue;
+    }
+
+    /**
+     * Finds the id of the record with samples. Scans the {@code store} if it
+     * hasn't been done yet.
+     * @param store the opened {@link RecordStore} to scan.
+     * @return the {@code int} id of the record or {@code -1} if there is none.
+     * @throws RecordStoreException if the {@code store} cannot be scanned.
+     */
+    private int findRecord(RecordStore store) throws RecordStoreException {
+        if (recordId == -1) {
+            RecordEnumeration records = store.enumerateRecords(null, null, false);
+            try {
+                if (records.hasNextElement()) {
+                    recordId = records.nextRecordId();
+                }
+            } finally {
+                records.destroy();
+            }
+        }
+        return recordId;
+    }
+
+    /**
+     * Encodes the {@code samples} into {@link RecordStore} format.
+     * @param samples the {@link Vector} of {@link DownloadSample}s to be encoded.
+     * @return the {@code byte[]} with encoded data or {@code null} if an error
+     *         occurred.
+     */
+    protected byte[] serialize(Vector samples) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(baos);
+        byte[] data = null;
+        try {
+            dos.writeShort(samples.size());
+            for (int i = 0; i < samples.size(); i++) {
+                DownloadSample sample = (DownloadSample) samples.elementAt(i);
+                dos.writeUTF(sample.getKind());
+                dos.writeByte(sample.getType() == null ? -1 : sample.getType().getValue());
+                dos.writeInt(sample.getLength());
+                dos.writeInt(sample.getTransferred());
+                dos.writeInt((int) sample.getTimeToFirstByte());
+                dos.writeInt((int) sample.getDuration());
+                dos.writeLong(sample.getTimestamp());
+            }
+            data = baos.toByteArray();
+        } catch (IOException ex) {
+//#mdebug
+            log.error("Cannot serialize samples to bytes!", ex);
+//#enddebug
+        }
+        return data;
+    }
+
+    /**
+     * Decodes the {@code data} from {@link RecordStore} format.
+     * @param data the {@code byte[]} to be decoded.
+     * @return the {@link Vector} of {@link DownloadSample}s or {@code null} if
+     *         the {@code data} is broken.
+     */
+    protected Vector resurect(byte[] data) {
+        if (data == null) {
+            return null;
+        }
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
+        Vector samples = null;
+        try {
+            int size = dis.readShort();
+            samples = new Vector(size);
+            for (int i = 0; i < size; i++) {
+                String kind = dis.readUTF();
+                int typeValue = dis.readByte();
+                MeteorogramType type = typeValue == -1 ? null : MeteorogramType.getByValue(typeValue);
+                DownloadSample sample = new DownloadSample(kind, type);
+                sample.setLength(dis.readInt());
+                sample.setTransferred(dis.readInt());
+                sample.setTimeToFirstByte(dis.readInt());
+                sample.setDuration(dis.readInt());
+                sample.setTimestamp(dis.readLong());
+                samples.addElement(sample);
+            }
+        } catch (IOException ex) {
+//#mdebug
+            log.error("Cannot deserialize samples from bytes!", ex);
+//#enddebug
+            samples = null;
+        }
+        return samples;
+    }
+
+    /**
+     * Convenience method to close {@code store}.
+     * @param store the {@link RecordStore} to be closed.
+     */
+    protected void closeRecordStore(RecordStore store) {
+        if (store != null) {
+            try {
+                store.closeRecordStore();
+            } catch (RecordStoreNotOpenException ex) {
+//#mdebug
+                log.error("Attempt to close RecordStore that hasn't been already open!");
+//#enddebug
+            } catch (RecordStoreException ex) {
+//#mdebug
+                log.fatal("Error while closing store due to RecordStore problem!", ex);
+//#enddebug
+            }
+        }
+    }
+}
@@ -47,6 +47,18 @@ public interface ForecastDataDao {
      */
     ForecastData read(Integer id);
 
+    /**
+     * Reads the {@link ForecastData} without the model result from the persistent
+     * storage. Only the model start and the length and checksum of the model
+     * result are read, so it is cheap enough to be done for every {@link ForecastData}
+     * at once.
+     * @param id the {@code Integer} to be used to identify persisted {@link ForecastData}.
+     * @return the {@link ForecastData} with the model result not loaded,
+     *         or {@code null} in case of any error.
+     * @see ForecastData#hasModelResult()
+     */
+    ForecastData readHeader(Integer id);
+
     /**
      * Updates the given {@code forecastData} in the persistent storage.
      * @param id the {@code Integer} to be used to identify {@link ForecastData} to update.
@@ -85,6 +97,14 @@ public interface ForecastDataDao {
      */
     boolean createOrUpdate(Integer id, ForecastData forecastData);
 
+    /**
+     * Frees the persistent storage that is still taken by the {@link ForecastData}s
+     * replaced by {@link #update(Integer, ForecastData)}. It's meant to be called
+     * when no forecast data is being downloaded, the implementations that free
+     * the storage right away do nothing.
+     */
+    void reclaim();
+
     /**
      * Sets the serializer for this implementation. It will be used to transform
      * {@link ForecastData} into {@code byte} arrays and resurect {@link ForecastData}s
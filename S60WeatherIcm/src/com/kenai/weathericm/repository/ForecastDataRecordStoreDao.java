@@ -18,19 +18,51 @@
 package com.kenai.weathericm.repository;
 
 import com.kenai.weathericm.domain.ForecastData;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Enumeration;
+import java.util.Hashtable;
 import java.util.Vector;
+import javax.microedition.rms.InvalidRecordIDException;
 import javax.microedition.rms.RecordEnumeration;
 import javax.microedition.rms.RecordStore;
 import javax.microedition.rms.RecordStoreException;
+import javax.microedition.rms.RecordStoreFullException;
+import javax.microedition.rms.RecordStoreNotFoundException;
 import javax.microedition.rms.RecordStoreNotOpenException;
 import net.sf.microlog.core.Logger;
 import net.sf.microlog.core.LoggerFactory;
 
 /**
- * This uses {@link RecordStore} to persist {@link ForecastData} objects. This class
- * manages multiple {@link RecordStore}s that contains actual data. Each of these
- * stores contains at most one {@link ForecastData}'s data, however one {@link
- * ForecastData} may be persisted in multiple stores.
+ * This uses {@link RecordStore} to persist {@link ForecastData} objects. The
+ * model results of all {@link ForecastData}s are kept in chunks in a few
+ * stores named {@value #DATA_STORE}1 to {@value #DATA_STORE}{@value #MAX_DATA_STORES},
+ * a next store is used only when the previous one is full. The {@value #INDEX_STORE}
+ * store has a record for each id, with the length of the model result, the
+ * serialized header (the model start and the length and checksum of the model
+ * result) and the store numbers, record ids and sizes of the chunks. The index
+ * is read into a {@link Hashtable} when the DAO is accessed for the first time,
+ * so afterwards the ids are looked up without listing or scanning stores, and
+ * the header is read without reading the model result. Since the header is
+ * kept apart, the chunks are read straight into the model result array.
+ * An update writes the new chunks next to the old ones and then flips the
+ * index record, which is the only pointer to the chunks, with a single
+ * {@link RecordStore#setRecord(int, byte[], int, int)}. Until then the old
+ * generation stays readable, so a failed update leaves it intact. The chunks
+ * of the old generation are kept in the index record as garbage and are
+ * deleted by {@link #reclaim()} when the application is idle, or earlier
+ * when there is no space left for a write. The records of the data stores
+ * that are not referenced by the index, left behind when the application is
+ * closed between writing the chunks and the index record, are deleted by the
+ * first {@link #reclaim()} after the index is read.
+ * The headers written in an old format are upgraded when the index is read.
+ * The data persisted in the old layout, where each id had its own stores named
+ * {@value #STORE_PREFIX}{@code <id>}{@value #STORE_INFIX}{@code <n>}, is moved
+ * to the new layout when the index is read, the old stores are kept until
+ * their data has been moved.
  * @author Przemek Kryger
  */
 public class ForecastDataRecordStoreDao implements ForecastDataDao {
@@ -46,14 +78,31 @@ public class ForecastDataRecordStoreDao implements ForecastDataDao {
      */
     public static final String STORE_PREFIX = "ForecastData";
     /**
-     * The infix to be used for all the {@link RecordStore}s managed by this DAO.
+     * The infix used in names of the {@link RecordStore}s of the old layout.
      */
     public static final String STORE_INFIX = "_";
+    /**
+     * The name of the {@link RecordStore} with the index.
+     */
+    public static final String INDEX_STORE = STORE_PREFIX + "Index";
+    /**
+     * The base name of the {@link RecordStore}s with the data.
+     */
+    public static final String DATA_STORE = STORE_PREFIX + "Blob";
+    /**
+     * The maximum number of {@link RecordStore}s with the data.
+     */
+    public static final int MAX_DATA_STORES = 4;
     /**
      * The minimum RecordStore space that is required before the record is going
      * to be persisted. 
      */
     public static final int MIN_STORE_SPACE = 64;
+    /**
+     * The number of the {@link RecordStore} that kept the header of a
+     * {@link ForecastData} in the old layout.
+     */
+    public static final int HEADER_STORE_NUMBER = 0;
     /**
      * Singleton instance.
      */
@@ -63,6 +112,16 @@ public class ForecastDataRecordStoreDao implements ForecastDataDao {
      * array conversions.
      */
     private ForecastDataSerializer serializer = null;
+    /**
+     * Maps ids to their {@link IndexEntry}s. It is {@code null} until the
+     * index is read.
+     */
+    private Hashtable index = null;
+    /**
+     * Tells if the data stores have been swept for orphaned chunks since the
+     * index has been read.
+     */
+    private boolean orphansSwept = false;
 
     /**
      * Private constructor for singleton.
@@ -84,86 +143,177 @@ public class ForecastDataRecordStoreDao implements ForecastDataDao {
         return instance;
     }
 
-    public boolean create(Integer id, ForecastData forecastData) {
+    public synchronized boolean create(Integer id, ForecastData forecastData) {
         if (id == null || forecastData == null) {
 //#mdebug
-            log.error("Cannot create record store(s) with id = " + id
+            log.error("Cannot create forecast data with id = " + id
                     + " and data = " + forecastData);
 //#enddebug
             throw new NullPointerException("Cannot persit forecast data!");
         }
-        if (exists(id)) {
+        Hashtable entries = getIndex();
+        if (entries == null) {
+            return false;
+        }
+        if (entries.containsKey(id)) {
 //#mdebug
-            log.error("Cannot create record store(s) for id = " + id
+            log.error("Cannot create forecast data for id = " + id
                     + " since it already exists!");
 //#enddebug
             return false;
         }
 //#mdebug
-        log.trace("Creating record store(s) for id = " + id + " and data = " + forecastData);
+        log.trace("Creating forecast data for id = " + id + " and data = " + forecastData);
+//#enddebug
+        IndexEntry entry = write(id, forecastData);
+        if (entry == null) {
+            return false;
+        }
+        entries.put(id, entry);
+        return true;
+    }
+
+    /**
+     * Writes the model result of {@code forecastData} and the index record
+     * with its header.
+     * @param id the {@link Integer} with id of the forecast data.
+     * @param forecastData the {@link ForecastData} to be written.
+     * @return the {@link IndexEntry} of the written data or {@code null} in
+     *         case of any error.
+     */
+    private IndexEntry write(Integer id, ForecastData forecastData) {
+        byte[] modelResult = forecastData.getModelResult();
+        byte[] header = modelResult == null ? null : serializer.serializeHeader(forecastData);
+        if (header == null) {
+//#mdebug
+            log.error("Cannot serialize forecast data for id = " + id);
 //#enddebug
+            return null;
+        }
+        return write(id, modelResult, header);
+    }
+
+    /**
+     * Writes the chunks of {@code data} and then the index record for them.
+     * In case of any error the chunks that have been written are deleted.
+     * @param id the {@link Integer} with id of the forecast data.
+     * @param data the {@code byte[]} with model result.
+     * @param header the {@code byte[]} with serialized header of the data.
+     * @return the {@link IndexEntry} of the written data or {@code null} in
+     *         case of any error.
+     */
+    private IndexEntry write(Integer id, byte[] data, byte[] header) {
+        IndexEntry entry = new IndexEntry(id.intValue(), data.length, header);
         boolean stored = false;
-        RecordStore store = null;
-        int rsNumber = 1;
-        String rsPrefix = convertIdToBaseName(id);
-        byte[] toWrite = serializer.serialize(forecastData);
-        int bytesWritten = 0;
         try {
-            while (bytesWritten < toWrite.length) {
-                store = RecordStore.openRecordStore(rsPrefix + rsNumber, true);
-                int chunkSize = (int) (store.getSizeAvailable() * 0.95);
-                int leftSize = toWrite.length - bytesWritten;
-                if (chunkSize < MIN_STORE_SPACE && chunkSize < leftSize) {
-                    break;
-                }
-                store.addRecord(toWrite, bytesWritten, chunkSize > leftSize ? leftSize : chunkSize);
-                bytesWritten += chunkSize;
-                store.closeRecordStore();
-                store = null;
-                rsNumber++;
-            }
+            writeChunks(entry, data);
+            entry.recordId = addIndexRecord(entry);
             stored = true;
         } catch (RecordStoreException ex) {
 //#mdebug
-            log.error("Creating record store(s) has failed!", ex);
+            log.error("Writing forecast data for id = " + id + " has failed!", ex);
 //#enddebug
         } catch (IllegalArgumentException ex) {
 //#mdebug
-            log.error("Creating record store(s) has failed!", ex);
+            log.error("Writing forecast data for id = " + id + " has failed!", ex);
 //#enddebug
         } catch (SecurityException ex) {
 //#mdebug
-            log.error("Creating record store(s) has failed!", ex);
+            log.error("Writing forecast data for id = " + id + " has failed!", ex);
 //#enddebug
-        } finally {
-            if (store != null) {
+        }
+        if (!stored) {
 //#mdebug
-                log.info("Closing record store");
+            log.warn("Cleaning up chunks of forecast data for id = " + id);
 //#enddebug
-                try {
-                    store.closeRecordStore();
-                } catch (RecordStoreNotOpenException ex) {
+            deleteChunks(entry);
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Writes the {@code data} in chunks that fit into the data stores and adds
+     * them to the {@code entry}.
+     * @param entry the {@link IndexEntry} to add the chunks to.
+     * @param data the {@code byte[]} with model result.
+     * @throws RecordStoreException if the data cannot be written.
+     */
+    private void writeChunks(IndexEntry entry, byte[] data) throws RecordStoreException {
+        int written = 0;
+        int storeNumber = 1;
+        boolean reclaimed = false;
+        while (written < data.length) {
+            if (storeNumber > MAX_DATA_STORES && !reclaimed && reclaimGarbage()) {
 //#mdebug
-                    log.error("Attempt to close RecordStore that hasn't been already open!");
+                log.info("Reclaimed old generations, trying the data stores again");
 //#enddebug
-                } catch (RecordStoreException ex) {
+                reclaimed = true;
+                storeNumber = 1;
+            }
+            if (storeNumber > MAX_DATA_STORES) {
+                throw new RecordStoreFullException("No space left for forecast data!");
+            }
+            RecordStore store = RecordStore.openRecordStore(DATA_STORE + storeNumber, true);
+            try {
+                int chunkSize = (int) (store.getSizeAvailable() * 0.95);
+                int leftSize = data.length - written;
+                if (chunkSize < MIN_STORE_SPACE && chunkSize < leftSize) {
 //#mdebug
-                    log.fatal("Error while closing store due to RecordStore problem!", ex);
+                    log.info("Data store " + storeNumber + " is full, trying the next one");
 //#enddebug
+                    storeNumber++;
+                } else {
+                    int size = chunkSize > leftSize ? leftSize : chunkSize;
+                    int recordId = store.addRecord(data, written, size);
+                    entry.addChunk(storeNumber, recordId, size);
+                    written += size;
                 }
+            } finally {
+                closeRecordStore(store);
             }
         }
-        if (!stored) {
-//#mdebug
-            log.warn("Creating record store(s) for id = " + id + " and data = " + forecastData
-                    + "has failed - cleaning up");
-//#enddebug
-            delete(id);
+    }
+
+    /**
+     * Adds the index record for the {@code entry}.
+     * @param entry the {@link IndexEntry} to add the record of.
+     * @return the {@code int} with id of the index record.
+     * @throws RecordStoreException if the record cannot be added.
+     */
+    private int addIndexRecord(IndexEntry entry) throws RecordStoreException {
+        byte[] record = serializeEntry(entry);
+        if (record == null) {
+            throw new RecordStoreException("Cannot serialize index entry!");
+        }
+        RecordStore store = RecordStore.openRecordStore(INDEX_STORE, true);
+        try {
+            return store.addRecord(record, 0, record.length);
+        } finally {
+            closeRecordStore(store);
+        }
+    }
+
+    /**
+     * Overwrites the index record of the {@code entry}. A single record is
+     * written as a whole, so it either points to the old or to the new chunks.
+     * @param entry the {@link IndexEntry} to write the record of.
+     * @throws RecordStoreException if the record cannot be written.
+     */
+    private void setIndexRecord(IndexEntry entry) throws RecordStoreException {
+        byte[] record = serializeEntry(entry);
+        if (record == null) {
+            throw new RecordStoreException("Cannot serialize index entry!");
+        }
+        RecordStore store = RecordStore.openRecordStore(INDEX_STORE, true);
+        try {
+            store.setRecord(entry.recordId, record, 0, record.length);
+        } finally {
+            closeRecordStore(store);
         }
-        return stored;
     }
 
-    public ForecastData read(Integer id) {
+    public synchronized ForecastData read(Integer id) {
         if (id == null) {
 //#mdebug
             log.error("Cannot read forecast data with null id!");
@@ -173,109 +323,94 @@ public class ForecastDataRecordStoreDao implements ForecastDataDao {
 //#mdebug
         log.trace("Reading forecast data with id = " + id);
 //#enddebug
-        ForecastData forecastData = null;
-        String[] recordStores = RecordStore.listRecordStores();
-        if (recordStores != null) {
-            String prefix = convertIdToBaseName(id);
-            Vector stores = new Vector();
-            for (int i = 0; i < recordStores.length; i++) {
-                if (recordStores[i].startsWith(prefix)) {
-                    stores.addElement(recordStores[i]);
-                }
-            }
-            if (!stores.isEmpty()) {
-                Vector dataVector = new Vector();
-                boolean allRead = true;
-                int storeNumber = 1;
-                while (!stores.isEmpty()) {
-                    String storeName = prefix + storeNumber;
-                    if (!stores.removeElement(storeName)) {
-//#mdebug
-                        log.warn("Cannot find record store with name = " + storeName);
-//#enddebug
-                        allRead = false;
-                        break;
-                    }
-                    if (!readRecordStoreToVector(storeName, dataVector)) {
+        IndexEntry entry = getEntry(id);
+        if (entry == null) {
 //#mdebug
-                        log.warn("Cannot read record store with name = " + storeName);
+            log.info("Cannot find forecast data for id = " + id);
 //#enddebug
-                        allRead = false;
-                        break;
-                    }
-                    storeNumber++;
-                }
-                if (allRead == true) {
-                    int dataSize = 0;
-                    for (int i = 0; i < dataVector.size(); i++) {
-                        dataSize += ((byte[])dataVector.elementAt(i)).length;
-                    }
-                    byte[] rawData = new byte[dataSize];
-                    int i = 0;
-                    while (!dataVector.isEmpty()) {
-                        byte[] bytes = (byte[])dataVector.elementAt(0);
-                        for (int j = 0; j < bytes.length; j++) {
-                            rawData[i] = bytes[j];
-                            i++;
-                        }
-                        dataVector.removeElement(bytes);
-                    }
-                    forecastData = serializer.resurect(rawData);
-                }
-            } else {
+            return null;
+        }
+        ForecastData forecastData = serializer.resurectHeader(entry.header);
+        if (forecastData == null || forecastData.getModelResultLength() != entry.length) {
 //#mdebug
-                log.info("Cannot find any record store for id = " + id);
+            log.warn("Broken header of forecast data for id = " + id);
 //#enddebug
-            }
+            return null;
+        }
+        byte[] modelResult = readChunks(entry);
+        if (modelResult == null) {
+            return null;
         }
+        forecastData.setModelResult(modelResult, forecastData.getChecksum());
         return forecastData;
     }
 
     /**
-     * Convenience method to read a single record from record store with given
-     * {@codestoreName} and put it into a {@codedataVector} as a {@codebyte[]} array.
-     * @param storeName the {@link String} with @{link{RecordStore} name to read data from.
-     * @param dataVector the {@link Vector} to store the read {@code byte[]} array.
-     * @return
+     * Reads the chunks of the {@code entry} straight into the model result
+     * array, which is sized from the index.
+     * @param entry the {@link IndexEntry} of the data to read.
+     * @return the {@code byte[]} with model result or {@code null} in case of
+     *         any error.
      */
-    private boolean readRecordStoreToVector(String storeName, Vector dataVector) {
-        boolean read = false;
+    private byte[] readChunks(IndexEntry entry) {
+        byte[] modelResult = new byte[entry.length];
         RecordStore store = null;
+        int storeNumber = -1;
+        int offset = 0;
         try {
-            store = RecordStore.openRecordStore(storeName, false);
-            RecordEnumeration records = store.enumerateRecords(null, null, false);
-            dataVector.addElement(records.nextRecord());
-            read = true;
-        } catch (RecordStoreException ex) {
+            for (int i = 0; i < entry.chunks; i++) {
+                if (entry.stores[i] != storeNumber) {
+                    closeRecordStore(store);
+                    store = null;
+                    storeNumber = entry.stores[i];
+                    store = RecordStore.openRecordStore(DATA_STORE + storeNumber, false);
+                }
+                int read = store.getRecord(entry.records[i], modelResult, offset);
+                if (read != entry.sizes[i]) {
 //#mdebug
-            log.error("Reading from record store failed!", ex);
+                    log.warn("Broken chunk " + i + " of forecast data for id = " + entry.id);
 //#enddebug
-        } catch (IllegalArgumentException ex) {
+                    return null;
+                }
+                offset += read;
+            }
+        } catch (ArrayIndexOutOfBoundsException ex) {
 //#mdebug
-            log.error("Reading from record store failed!", ex);
+            log.warn("Chunk too long for forecast data for id = " + entry.id, ex);
+//#enddebug
+            return null;
+        } catch (RecordStoreException ex) {
+//#mdebug
+            log.error("Reading forecast data for id = " + entry.id + " has failed!", ex);
 //#enddebug
+            return null;
         } finally {
-            if (store != null) {
+            closeRecordStore(store);
+        }
+        return modelResult;
+    }
+
+    public synchronized ForecastData readHeader(Integer id) {
+        if (id == null) {
 //#mdebug
-                log.info("Closing record store");
+            log.error("Cannot read forecast data header with null id!");
 //#enddebug
-                try {
-                    store.closeRecordStore();
-                } catch (RecordStoreNotOpenException ex) {
+            throw new NullPointerException("Cannot read forecast data header!");
+        }
 //#mdebug
-                    log.error("Attempt to close RecordStore that hasn't been already open!");
+        log.trace("Reading forecast data header with id = " + id);
 //#enddebug
-                } catch (RecordStoreException ex) {
+        IndexEntry entry = getEntry(id);
+        if (entry == null) {
 //#mdebug
-                    log.fatal("Error while closing store due to RecordStore problem!", ex);
+            log.info("Cannot find forecast data for id = " + id);
 //#enddebug
-                }
-            }
+            return null;
         }
-        return read;
+        return serializer.resurectHeader(entry.header);
     }
-    
-    public boolean update(Integer id, ForecastData forecastData) {
+
+    public synchronized boolean update(Integer id, ForecastData forecastData) {
         if (id == null) {
 //#mdebug
             log.error("Cannot update forecast data with null id!");
@@ -291,74 +426,318 @@ public class ForecastDataRecordStoreDao implements ForecastDataDao {
 //#mdebug
         log.trace("Updating forecast data with id = " + id + " and data = " + forecastData);
 //#enddebug
-        boolean status = delete(id);
-        if (status == true) {
-            status = create(id, forecastData);
-            if (status == false) {
+        if (isUnchanged(id, forecastData)) {
+//#mdebug
+            log.info("Forecast data with id = " + id + " hasn't changed, not updating it");
+//#enddebug
+            return true;
+        }
+        IndexEntry current = getEntry(id);
+        if (current == null) {
+//#mdebug
+            log.warn("Cannot update forecast data with id = " + id + ": it doesn't exist!");
+//#enddebug
+            return false;
+        }
+        byte[] modelResult = forecastData.getModelResult();
+        byte[] header = modelResult == null ? null : serializer.serializeHeader(forecastData);
+        if (header == null) {
+//#mdebug
+            log.error("Cannot serialize forecast data for id = " + id);
+//#enddebug
+            return false;
+        }
+        if (current.garbage != null && deleteChunks(current.garbage)) {
+            current.garbage = null;
+        }
+        IndexEntry next = new IndexEntry(current.id, modelResult.length, header);
+        next.recordId = current.recordId;
+        next.generation = current.generation + 1;
+        next.garbage = new IndexEntry(current.id, 0, new byte[0]).merge(current.garbage).merge(current);
+        boolean flipped = false;
+        try {
+            writeChunks(next, modelResult);
+            setIndexRecord(next);
+            flipped = true;
+        } catch (RecordStoreException ex) {
+//#mdebug
+            log.error("Updating forecast data for id = " + id + " has failed!", ex);
+//#enddebug
+        } catch (IllegalArgumentException ex) {
+//#mdebug
+            log.error("Updating forecast data for id = " + id + " has failed!", ex);
+//#enddebug
+        } catch (SecurityException ex) {
+//#mdebug
+            log.error("Updating forecast data for id = " + id + " has failed!", ex);
+//#enddebug
+        }
+        if (!flipped) {
+//#mdebug
+            log.warn("Keeping generation " + current.generation + " of forecast data for id = " + id);
+//#enddebug
+            deleteChunks(next);
+            return false;
+        }
+        index.put(id, next);
+//#mdebug
+        log.debug("Forecast data for id = " + id + " is at generation " + next.generation);
+//#enddebug
+        return true;
+    }
+
+    /**
+     * Deletes the chunks of the generations that have been replaced by
+     * {@link #update(java.lang.Integer, com.kenai.weathericm.domain.ForecastData)}
+     * and rewrites their index records without the garbage. The first call
+     * after the index is read also deletes the orphaned chunks. It is cheap
+     * when there is nothing to reclaim.
+     */
+    public synchronized void reclaim() {
+        reclaimGarbage();
+        if (index != null && !orphansSwept) {
+            orphansSwept = deleteOrphans();
+        }
+    }
+
+    /**
+     * Deletes the records of the data stores that are neither chunks nor
+     * garbage of any entry in the index. Such records are left when the
+     * application is closed after the chunks have been written, but before the
+     * index record pointing to them. It must not be called while chunks are
+     * being written, since they are not in the index yet.
+     * @return {@code true} if all the data stores have been swept, {@code false}
+     *         otherwise.
+     */
+    private boolean deleteOrphans() {
+        Hashtable referenced = new Hashtable();
+        for (Enumeration entries = index.elements(); entries.hasMoreElements();) {
+            IndexEntry entry = (IndexEntry) entries.nextElement();
+            addReferences(referenced, entry);
+            addReferences(referenced, entry.garbage);
+        }
+        boolean swept = true;
+        for (int storeNumber = 1; storeNumber <= MAX_DATA_STORES; storeNumber++) {
+            swept = deleteOrphans(storeNumber, referenced) && swept;
+        }
+        return swept;
+    }
+
+    /**
+     * Deletes the records of the data store {@code storeNumber} that are not
+     * in {@code referenced}. A data store that doesn't exist has no orphans.
+     * @param storeNumber the {@code int} with number of the data store.
+     * @param referenced the {@link Hashtable} with keys of the referenced chunks.
+     * @return {@code true} if the data store has been swept, {@code false}
+     *         otherwise.
+     */
+    private boolean deleteOrphans(int storeNumber, Hashtable referenced) {
+        RecordStore store = null;
+        try {
+            store = RecordStore.openRecordStore(DATA_STORE + storeNumber, false);
+            Vector orphans = new Vector();
+            RecordEnumeration records = store.enumerateRecords(null, null, false);
+            try {
+                while (records.hasNextElement()) {
+                    int recordId = records.nextRecordId();
+                    if (!referenced.containsKey(chunkKey(storeNumber, recordId))) {
+                        orphans.addElement(new Integer(recordId));
+                    }
+                }
+            } finally {
+                records.destroy();
+            }
+            for (int i = 0; i < orphans.size(); i++) {
+                int recordId = ((Integer) orphans.elementAt(i)).intValue();
 //#mdebug
-                log.warn("Cannot update forecast data with id = " + id + ": creation failed!");
+                log.info("Deleting orphaned chunk " + recordId + " from data store " + storeNumber);
 //#enddebug
+                store.deleteRecord(recordId);
             }
-        } else {
+            return true;
+        } catch (RecordStoreNotFoundException ex) {
+            return true;
+        } catch (RecordStoreException ex) {
 //#mdebug
-            log.warn("Cannot update forecast data with id = " + id + ": deletion failed!");
+            log.error("Cannot delete orphaned chunks from data store " + storeNumber, ex);
 //#enddebug
+            return false;
+        } finally {
+            closeRecordStore(store);
         }
-        return status;
     }
 
-    public boolean delete(Integer id) {
+    /**
+     * Adds the keys of the chunks of the {@code entry} to {@code referenced}.
+     * @param referenced the {@link Hashtable} with keys of the referenced chunks.
+     * @param entry the {@link IndexEntry} to add the chunks of or {@code null}.
+     */
+    private void addReferences(Hashtable referenced, IndexEntry entry) {
+        for (int i = 0; entry != null && i < entry.chunks; i++) {
+            Long key = chunkKey(entry.stores[i], entry.records[i]);
+            referenced.put(key, key);
+        }
+    }
+
+    /**
+     * Creates the key of the chunk.
+     * @param store the {@code int} with number of the data store.
+     * @param record the {@code int} with record id in the data store.
+     * @return the {@link Long} with the key of the chunk.
+     */
+    private static Long chunkKey(int store, int record) {
+        return new Long(((long) store << 32) | (record & 0xffffffffL));
+    }
+
+    /**
+     * Deletes the chunks of the replaced generations of all the entries in
+     * the index, if the index has been read.
+     * @return {@code true} if any chunks have been deleted, {@code false} otherwise.
+     */
+    private boolean reclaimGarbage() {
+        if (index == null) {
+            return false;
+        }
+        boolean reclaimed = false;
+        for (Enumeration entries = index.elements(); entries.hasMoreElements();) {
+            IndexEntry entry = (IndexEntry) entries.nextElement();
+            if (entry.garbage != null && deleteChunks(entry.garbage)) {
+//#mdebug
+                log.debug("Reclaimed " + entry.garbage.chunks + " chunks of forecast data for id = " + entry.id);
+//#enddebug
+                entry.garbage = null;
+                reclaimed = true;
+                try {
+                    setIndexRecord(entry);
+                } catch (RecordStoreException ex) {
+//#mdebug
+                    log.warn("Cannot rewrite index record for id = " + entry.id, ex);
+//#enddebug
+                }
+            }
+        }
+        return reclaimed;
+    }
+
+    /**
+     * Checks if the {@code forecastData} is already persisted with the {@code id}.
+     * The header kept in the index is compared with the header of
+     * {@code forecastData}, which contains the checksum of the model result.
+     * @param id the {@link Integer} with id of the forecast data.
+     * @param forecastData the {@link ForecastData} to be persisted.
+     * @return {@code true} if the same data is already persisted, {@code false}
+     *         otherwise.
+     */
+    protected synchronized boolean isUnchanged(Integer id, ForecastData forecastData) {
+        if (forecastData.getModelResult() == null || forecastData.getModelStart() == null) {
+            return false;
+        }
+        IndexEntry entry = getEntry(id);
+        byte[] header = serializer.serializeHeader(forecastData);
+        if (entry == null || header == null || entry.header.length != header.length) {
+            return false;
+        }
+        for (int i = 0; i < header.length; i++) {
+            if (entry.header[i] != header[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public synchronized boolean delete(Integer id) {
         if (id == null) {
 //#mdebug
             log.error("Cannot delete forecast data with null id!");
 //#enddebug
             throw new NullPointerException("Cannot delete forecast data!");
         }
+        Hashtable entries = getIndex();
+        IndexEntry entry = entries == null ? null : (IndexEntry) entries.remove(id);
+        if (entry == null) {
+//#mdebug
+            log.warn("No forecast data deleted for id = " + id);
+//#enddebug
+            return false;
+        }
+        boolean deleted = deleteIndexRecord(entry);
+        if (entry.garbage != null) {
+            deleteChunks(entry.garbage);
+        }
+        return deleteChunks(entry) && deleted;
+    }
+
+    /**
+     * Deletes the index record of the {@code entry}.
+     * @param entry the {@link IndexEntry} to delete the record of.
+     * @return {@code true} if the record has been deleted, {@code false} otherwise.
+     */
+    private boolean deleteIndexRecord(IndexEntry entry) {
+        RecordStore store = null;
         boolean deleted = false;
+        try {
+            store = RecordStore.openRecordStore(INDEX_STORE, true);
+            store.deleteRecord(entry.recordId);
+            deleted = true;
+        } catch (InvalidRecordIDException ex) {
+//#mdebug
+            log.warn("Index record doesn't exist for id = " + entry.id);
+//#enddebug
+            deleted = true;
+        } catch (RecordStoreException ex) {
+//#mdebug
+            log.error("Cannot delete index record for id = " + entry.id, ex);
+//#enddebug
+        } finally {
+            closeRecordStore(store);
+        }
+        return deleted;
+    }
+
+    /**
+     * Deletes the chunks of the {@code entry}. The chunks that don't exist
+     * are not reported as a failure.
+     * @param entry the {@link IndexEntry} to delete the chunks of.
+     * @return {@code true} if all the chunks have been deleted, {@code false}
+     *         otherwise.
+     */
+    private boolean deleteChunks(IndexEntry entry) {
         boolean noFailures = true;
-        String match = convertIdToBaseName(id);
-        String[] recordStores = RecordStore.listRecordStores();
-        for (int i = 0; i < recordStores.length; i++) {
+        for (int i = 0; i < entry.chunks; i++) {
+            RecordStore store = null;
             try {
-                if (recordStores[i].startsWith(match)) {
+                store = RecordStore.openRecordStore(DATA_STORE + entry.stores[i], false);
+                store.deleteRecord(entry.records[i]);
+            } catch (InvalidRecordIDException ex) {
 //#mdebug
-                    log.trace("Deleteing record store: " + recordStores[i]);
+                log.warn("Chunk " + i + " doesn't exist for id = " + entry.id);
 //#enddebug
-                    RecordStore.deleteRecordStore(recordStores[i]);
-                    deleted = true;
-                }
             } catch (RecordStoreException ex) {
 //#mdebug
-                log.error("Cannot delete record store: " + ex);
+                log.error("Cannot delete chunk " + i + " for id = " + entry.id, ex);
 //#enddebug
                 noFailures = false;
+            } finally {
+                closeRecordStore(store);
             }
         }
-//#mdebug
-        if (!deleted) {
-            log.warn("No record stores deleted for id = " + id);
-        }
-//#enddebug
-        return deleted && noFailures;
+        return noFailures;
     }
 
-    public boolean exists(Integer id) {
+    public synchronized boolean exists(Integer id) {
+        if (id == null) {
 //#mdebug
-        log.trace("Checking if forecast data exist for id = " + id);
+            log.error("Cannot check if forecast data exist for null id!");
 //#enddebug
-        String[] recordStores = RecordStore.listRecordStores();
-        if (recordStores != null) {
-            String match = convertIdToBaseName(id);
-            for (int i = 0; i < recordStores.length; i++) {
-                if (recordStores[i].startsWith(match)) {
-                    return true;
-                }
-            }
+            throw new NullPointerException("Cannot check if forecast data exist!");
         }
-        return false;
+//#mdebug
+        log.trace("Checking if forecast data exist for id = " + id);
+//#enddebug
+        return getEntry(id) != null;
     }
 
-    public boolean createOrUpdate(Integer id, ForecastData forecastData) {
+    public synchronized boolean createOrUpdate(Integer id, ForecastData forecastData) {
         if (id == null) {
 //#mdebug
             log.error("Cannot create nor update forecast data with null id!");
@@ -384,7 +763,350 @@ public class ForecastDataRecordStoreDao implements ForecastDataDao {
     }
 
     /**
-     * Converts given {@code id} to base name of a record store to be used.
+     * Gets the {@link IndexEntry} of the {@code id}.
+     * @param id the {@link Integer} with id of the forecast data.
+     * @return the {@link IndexEntry} or {@code null} if there is no data for
+     *         the {@code id} or the index cannot be read.
+     */
+    private IndexEntry getEntry(Integer id) {
+        Hashtable entries = getIndex();
+        return entries == null ? null : (IndexEntry) entries.get(id);
+    }
+
+    /**
+     * Gets the ids to {@link IndexEntry}s mapping. Reads the index if it
+     * hasn't been done yet, and moves the data still persisted in the old layout.
+     * @return the {@link Hashtable} that maps ids to {@link IndexEntry}s or
+     *         {@code null} if the index cannot be read.
+     */
+    private Hashtable getIndex() {
+        if (index == null) {
+            Hashtable entries = readIndex();
+            if (entries != null) {
+                index = entries;
+                orphansSwept = false;
+                migrateLegacyStores();
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Reads all the records of the index store. The broken records are deleted.
+     * @return the {@link Hashtable} that maps ids to {@link IndexEntry}s or
+     *         {@code null} if the index cannot be read.
+     */
+    private Hashtable readIndex() {
+        Hashtable entries = new Hashtable();
+        RecordStore store = null;
+        try {
+            store = RecordStore.openRecordStore(INDEX_STORE, true);
+            RecordEnumeration records = store.enumerateRecords(null, null, false);
+            try {
+                while (records.hasNextElement()) {
+                    int recordId = records.nextRecordId();
+                    IndexEntry entry = resurectEntry(store.getRecord(recordId));
+                    if (entry == null) {
+//#mdebug
+                        log.warn("Deleting broken index record: " + recordId);
+//#enddebug
+                        store.deleteRecord(recordId);
+                    } else {
+                        entry.recordId = recordId;
+                        entries.put(new Integer(entry.id), upgradeIfNeeded(store, entry));
+                    }
+                }
+            } finally {
+                records.destroy();
+            }
+        } catch (RecordStoreException ex) {
+//#mdebug
+            log.error("Cannot read forecast data index!", ex);
+//#enddebug
+            entries = null;
+        } finally {
+            closeRecordStore(store);
+        }
+//#mdebug
+        if (entries != null) {
+            log.info("Read index of " + entries.size() + " forecast data");
+        }
+//#enddebug
+        return entries;
+    }
+
+    /**
+     * Writes the index record of the {@code entry} again if its header is in
+     * an old format, so the headers are upgraded lazily as the index is read.
+     * If the header cannot be upgraded the old one is kept, since it can be
+     * still read.
+     * @param store the open index {@link RecordStore}.
+     * @param entry the {@link IndexEntry} read from the {@code store}.
+     * @return the {@link IndexEntry} with upgraded header or the {@code entry}.
+     */
+    private IndexEntry upgradeIfNeeded(RecordStore store, IndexEntry entry) {
+        if (serializer == null || !serializer.isUpgradeNeeded(entry.header)) {
+            return entry;
+        }
+        ForecastData forecastData = serializer.resurectHeader(entry.header);
+        byte[] header = forecastData == null || forecastData.getModelResultLength() != entry.length
+                ? null : serializer.serializeHeader(forecastData);
+        if (header == null) {
+            return entry;
+        }
+        IndexEntry upgraded = new IndexEntry(entry.id, entry.length, header).merge(entry);
+        upgraded.recordId = entry.recordId;
+        upgraded.generation = entry.generation;
+        upgraded.garbage = entry.garbage;
+        byte[] record = serializeEntry(upgraded);
+        if (record == null) {
+            return entry;
+        }
+        try {
+            store.setRecord(upgraded.recordId, record, 0, record.length);
+//#mdebug
+            log.info("Upgraded header of forecast data for id = " + entry.id);
+//#enddebug
+            return upgraded;
+        } catch (RecordStoreException ex) {
+//#mdebug
+            log.error("Cannot upgrade header of forecast data for id = " + entry.id, ex);
+//#enddebug
+            return entry;
+        }
+    }
+
+    /**
+     * Moves the data persisted in the old layout, where each id had its own
+     * stores, into the data stores and the index. The old stores are deleted
+     * when their data has been moved, when it is broken or when the id already
+     * has newer data in the index. When the data cannot be written, for instance
+     * since the old stores still take the space, they are kept and the move is
+     * retried the next time the index is read.
+     */
+    private void migrateLegacyStores() {
+        String[] recordStores = RecordStore.listRecordStores();
+        if (recordStores == null) {
+            return;
+        }
+        Hashtable idToStores = new Hashtable();
+        for (int i = 0; i < recordStores.length; i++) {
+            Integer id = parseLegacyId(recordStores[i]);
+            if (id != null) {
+                Vector stores = (Vector) idToStores.get(id);
+                if (stores == null) {
+                    stores = new Vector();
+                    idToStores.put(id, stores);
+                }
+                stores.addElement(recordStores[i]);
+            }
+        }
+        for (Enumeration ids = idToStores.keys(); ids.hasMoreElements();) {
+            Integer id = (Integer) ids.nextElement();
+            Vector stores = (Vector) idToStores.get(id);
+//#mdebug
+            log.info("Moving forecast data for id = " + id + " from stores: " + stores);
+//#enddebug
+            if (!index.containsKey(id)) {
+                byte[] rawData = readLegacyData(id, stores);
+                ForecastData forecastData = rawData == null ? null : serializer.resurect(rawData);
+                if (forecastData != null) {
+                    IndexEntry entry = write(id, forecastData);
+                    if (entry == null) {
+//#mdebug
+                        log.warn("Cannot move forecast data for id = " + id + ", keeping old stores");
+//#enddebug
+                        continue;
+                    }
+                    index.put(id, entry);
+                }
+            }
+            for (int i = 0; i < stores.size(); i++) {
+                try {
+                    RecordStore.deleteRecordStore((String) stores.elementAt(i));
+                } catch (RecordStoreException ex) {
+//#mdebug
+                    log.error("Cannot delete old record store: " + stores.elementAt(i), ex);
+//#enddebug
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the id from the name of a store of the old layout.
+     * @param storeName the {@link String} with name of a record store.
+     * @return the {@link Integer} with id or {@code null} if it's not a
+     *         store of the old layout.
+     */
+    private Integer parseLegacyId(String storeName) {
+        int infix = storeName.indexOf(STORE_INFIX, STORE_PREFIX.length());
+        if (!storeName.startsWith(STORE_PREFIX) || infix <= STORE_PREFIX.length()) {
+            return null;
+        }
+        try {
+            return Integer.valueOf(storeName.substring(STORE_PREFIX.length(), infix));
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Reads the data of the {@code id} from the stores of the old layout.
+     * @param id the {@link Integer} with id of the forecast data.
+     * @param stores the {@link Vector} with names of the stores of the {@code id}.
+     * @return the {@code byte[]} with serialized forecast data or {@code null}
+     *         if it cannot be read.
+     */
+    private byte[] readLegacyData(Integer id, Vector stores) {
+        String prefix = convertIdToBaseName(id);
+        Vector chunks = new Vector();
+        int dataSize = 0;
+        for (int storeNumber = 1; stores.contains(prefix + storeNumber); storeNumber++) {
+            byte[] chunk = readFirstRecord(prefix + storeNumber);
+            if (chunk == null) {
+                return null;
+            }
+            chunks.addElement(chunk);
+            dataSize += chunk.length;
+        }
+        if (chunks.isEmpty()) {
+            return null;
+        }
+        byte[] rawData = new byte[dataSize];
+        int offset = 0;
+        for (int i = 0; i < chunks.size(); i++) {
+            byte[] chunk = (byte[]) chunks.elementAt(i);
+            System.arraycopy(chunk, 0, rawData, offset, chunk.length);
+            offset += chunk.length;
+        }
+        return rawData;
+    }
+
+    /**
+     * Reads the first record from the store with given {@code storeName}.
+     * @param storeName the {@link String} with name of the record store.
+     * @return the {@code byte[]} with the record or {@code null} in case of any error.
+     */
+    private byte[] readFirstRecord(String storeName) {
+        RecordStore store = null;
+        byte[] record = null;
+        try {
+            store = RecordStore.openRecordStore(storeName, false);
+            RecordEnumeration records = store.enumerateRecords(null, null, false);
+            try {
+                record = records.nextRecord();
+            } finally {
+                records.destroy();
+            }
+        } catch (RecordStoreException ex) {
+//#mdebug
+            log.error("Reading from record store failed!", ex);
+//#enddebug
+        } finally {
+            closeRecordStore(store);
+        }
+        return record;
+    }
+
+    /**
+     * Encodes the {@code entry} into the index record. The record contains
+     * the id, the length of the model result, the header and the store number, record
+     * id and size of each chunk, followed by the generation and the chunks of
+     * the replaced generations that haven't been reclaimed yet.
+     * @param entry the {@link IndexEntry} to be encoded.
+     * @return the {@code byte[]} with the record or {@code null} if an error occurred.
+     */
+    private byte[] serializeEntry(IndexEntry entry) {
+        int garbageChunks = entry.garbage == null ? 0 : entry.garbage.chunks;
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(
+                22 + entry.header.length + 9 * (entry.chunks + garbageChunks));
+        DataOutputStream dos = new DataOutputStream(baos);
+        byte[] record = null;
+        try {
+            dos.writeInt(entry.id);
+            dos.writeInt(entry.length);
+            dos.writeShort(entry.header.length);
+            dos.write(entry.header);
+            dos.writeShort(entry.chunks);
+            writeChunkList(dos, entry);
+            dos.writeInt(entry.generation);
+            dos.writeShort(garbageChunks);
+            if (entry.garbage != null) {
+                writeChunkList(dos, entry.garbage);
+            }
+            record = baos.toByteArray();
+        } catch (IOException ex) {
+//#mdebug
+            log.error("Cannot serialize index entry for id = " + entry.id, ex);
+//#enddebug
+        }
+        return record;
+    }
+
+    /**
+     * Writes the store number, record id and size of each chunk of the {@code entry}.
+     * @param dos the {@link DataOutputStream} to write to.
+     * @param entry the {@link IndexEntry} to write the chunks of.
+     * @throws IOException if the chunks cannot be written.
+     */
+    private void writeChunkList(DataOutputStream dos, IndexEntry entry) throws IOException {
+        for (int i = 0; i < entry.chunks; i++) {
+            dos.writeByte(entry.stores[i]);
+            dos.writeInt(entry.records[i]);
+            dos.writeInt(entry.sizes[i]);
+        }
+    }
+
+    /**
+     * Decodes the index record. The records written before the generations
+     * were introduced end after the chunks and are read as the generation
+     * {@code 0} without garbage.
+     * @param record the {@code byte[]} with the record.
+     * @return the {@link IndexEntry} or {@code null} if the {@code record} is broken.
+     */
+    private IndexEntry resurectEntry(byte[] record) {
+        if (record == null) {
+            return null;
+        }
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(record));
+        IndexEntry entry = null;
+        try {
+            int id = dis.readInt();
+            int length = dis.readInt();
+            byte[] header = new byte[dis.readUnsignedShort()];
+            dis.readFully(header);
+            entry = new IndexEntry(id, length, header);
+            int chunks = dis.readUnsignedShort();
+            int size = 0;
+            for (int i = 0; i < chunks; i++) {
+                entry.addChunk(dis.readUnsignedByte(), dis.readInt(), dis.readInt());
+                size += entry.sizes[i];
+            }
+            if (size != length) {
+                throw new IOException("Chunks don't match the length: " + length);
+            }
+            if (dis.available() > 0) {
+                entry.generation = dis.readInt();
+                int garbageChunks = dis.readUnsignedShort();
+                if (garbageChunks > 0) {
+                    entry.garbage = new IndexEntry(id, 0, new byte[0]);
+                    for (int i = 0; i < garbageChunks; i++) {
+                        entry.garbage.addChunk(dis.readUnsignedByte(), dis.readInt(), dis.readInt());
+                    }
+                }
+            }
+        } catch (IOException ex) {
+//#mdebug
+            log.error("Cannot deserialize index entry!", ex);
+//#enddebug
+            entry = null;
+        }
+        return entry;
+    }
+
+    /**
+     * Converts given {@code id} to base name of a record store of the old layout.
      * @param id the {@link Integer} to be used to create base name.
      * @return the {@link String} to be used as a store base name.
      * @throws NullPointerException if {@code id} is {@code null}.
@@ -416,4 +1138,125 @@ public class ForecastDataRecordStoreDao implements ForecastDataDao {
 //#enddebug
         this.serializer = serializer;
     }
+
+    /**
+     * Convenience method to close {@code store}.
+     * @param store the {@link RecordStore} to be closed.
+     */
+    private void closeRecordStore(RecordStore store) {
+        if (store != null) {
+            try {
+                store.closeRecordStore();
+            } catch (RecordStoreNotOpenException ex) {
+//#mdebug
+                log.error("Attempt to close RecordStore that hasn't been already open!");
+//#enddebug
+            } catch (RecordStoreException ex) {
+//#mdebug
+                log.fatal("Error while closing store due to RecordStore problem!", ex);
+//#enddebug
+            }
+        }
+    }
+
+    /**
+     * The index entry of the forecast data persisted for an id.
+     */
+    private static class IndexEntry {
+
+        /**
+         * The id of the forecast data.
+         */
+        private final int id;
+        /**
+         * The length of the model result.
+         */
+        private final int length;
+        /**
+         * The serialized header of the forecast data.
+         */
+        private final byte[] header;
+        /**
+         * The id of the index record, or {@code -1} until it's written.
+         */
+        private int recordId = -1;
+        /**
+         * The generation, incremented by each update of the forecast data.
+         */
+        private int generation = 0;
+        /**
+         * The chunks of the replaced generations that haven't been deleted
+         * yet or {@code null} if there are none.
+         */
+        private IndexEntry garbage = null;
+        /**
+         * The number of chunks.
+         */
+        private int chunks = 0;
+        /**
+         * The numbers of data stores of the chunks.
+         */
+        private int[] stores = new int[1];
+        /**
+         * The record ids of the chunks.
+         */
+        private int[] records = new int[1];
+        /**
+         * The sizes of the chunks.
+         */
+        private int[] sizes = new int[1];
+
+        /**
+         * Creates the entry without chunks.
+         * @param id the {@code int} with id of the forecast data.
+         * @param length the {@code int} with length of the model result.
+         * @param header the {@code byte[]} with serialized header.
+         */
+        private IndexEntry(int id, int length, byte[] header) {
+            this.id = id;
+            this.length = length;
+            this.header = header;
+        }
+
+        /**
+         * Adds the chunk of the data.
+         * @param store the {@code int} with number of the data store.
+         * @param record the {@code int} with record id in the data store.
+         * @param size the {@code int} with size of the chunk.
+         */
+        private void addChunk(int store, int record, int size) {
+            if (chunks == stores.length) {
+                stores = grow(stores);
+                records = grow(records);
+                sizes = grow(sizes);
+            }
+            stores[chunks] = store;
+            records[chunks] = record;
+            sizes[chunks] = size;
+            chunks++;
+        }
+
+        /**
+         * Adds the chunks of the {@code other} entry to the chunks of this one.
+         * @param other the {@link IndexEntry} to take the chunks from or {@code null}.
+         * @return this {@link IndexEntry}.
+         */
+        private IndexEntry merge(IndexEntry other) {
+            for (int i = 0; other != null && i < other.chunks; i++) {
+                addChunk(other.stores[i], other.records[i], other.sizes[i]);
+            }
+            return this;
+        }
+
+        /**
+         * Creates an array one element longer than the {@code array}.
+         * @param array the {@code int[]} to grow.
+         * @return the {@code int[]} with copied elements of the {@code array}.
+         */
+        private static int[] grow(int[] array) {
+            int[] grown = new int[array.length + 1];
+            System.arraycopy(array, 0, grown, 0, array.length);
+            return grown;
+        }
+    }
 }
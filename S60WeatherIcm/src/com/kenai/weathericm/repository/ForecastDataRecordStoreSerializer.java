@@ -33,7 +33,12 @@ import net.sf.microlog.core.LoggerFactory;
 
 /**
  * This one serializes/resurects the {@link ForecastData} to/from a form convenient
- * to be persisted in record store.
+ * to be persisted in record store. The header is written in the {@link RecordFormat}
+ * of version {@value #VERSION}: the hours since the epoch of the model start and
+ * the length of the model result as variable length integers, followed by the
+ * optional fields, of which the checksum of the model result is the only one
+ * known now. The data written before the format was versioned, with the fixed
+ * 12 or 16 bytes long header, is still resurected.
  * @author Przemek Kryger
  */
 public class ForecastDataRecordStoreSerializer implements ForecastDataSerializer {
@@ -46,10 +51,37 @@ public class ForecastDataRecordStoreSerializer implements ForecastDataSerializer
 //#enddebug
 
     /**
-     * The serialized header size. It's the time of model start (long) + the size of a model result (int)
+     * The version of the written data.
      */
-    private final static int HEADER_LENGTH = 8 + 4;
-    
+    public final static int VERSION = 1;
+    /**
+     * The tag of the optional field with checksum of the model result.
+     */
+    public final static int CHECKSUM_TAG = 1;
+    /**
+     * The maximum serialized header size.
+     */
+    private final static int MAX_HEADER_LENGTH = 1 + 9 + 5 + 6 + 1;
+    /**
+     * The milliseconds in an hour, the model start is serialized in hours.
+     */
+    private final static long HOUR = 3600L * 1000L;
+    /**
+     * The header size of data serialized before the format was versioned. It's
+     * the time of model start (long) + the size of a model result (int) + the
+     * checksum of a model result (int).
+     */
+    private final static int HEADER_LENGTH = 8 + 4 + 4;
+    /**
+     * The header size of data serialized before checksums have been introduced.
+     */
+    private final static int LEGACY_HEADER_LENGTH = 8 + 4;
+    /**
+     * The serialized checksum when it is not known. It is never a valid
+     * {@link com.kenai.weathericm.util.Adler32} checksum.
+     */
+    private final static long SERIALIZED_UNKNOWN_CHECKSUM = 0xffffffffL;
+
     /**
      * Transforms given {@code forecastData} into array of {@code byte}s. The
      * implementation shall be reverse to the {@value #resurect(byte)}.
@@ -78,12 +110,11 @@ public class ForecastDataRecordStoreSerializer implements ForecastDataSerializer
 //#enddebug
         byte[] serialized = null;
         byte[] modelResult = forecastData.getModelResult();
-        int bufferSize = HEADER_LENGTH + modelResult.length;
+        int bufferSize = MAX_HEADER_LENGTH + modelResult.length;
         ByteArrayOutputStream baos = new ByteArrayOutputStream(bufferSize);
         DataOutputStream dos = new DataOutputStream(baos);
         try {
-            dos.writeLong(forecastData.getModelStart().getTime());
-            dos.writeInt(modelResult.length);
+            writeHeader(dos, forecastData);
             dos.write(modelResult, 0, modelResult.length);
             dos.flush();
             serialized = baos.toByteArray();
@@ -95,10 +126,61 @@ public class ForecastDataRecordStoreSerializer implements ForecastDataSerializer
         return serialized;
     }
 
+    /**
+     * Transforms the header of given {@code forecastData} into array of
+     * {@code byte}s. The header is the beginning of {@link #serialize(ForecastData)}
+     * result and it contains the model start and the length and checksum of
+     * the model result. The model result doesn't need to be loaded.
+     * @param forecastData the {@link ForecastData} to serialize header of.
+     * @return the array of {@code byte}s that represents the header.
+     * @throws NullPointerException in case the {@code forecastData} is {@code null}.
+     */
+    public byte[] serializeHeader(ForecastData forecastData) {
+        if (forecastData == null || !forecastData.hasModelResult()
+                || forecastData.getModelStart() == null) {
+//#mdebug
+            log.error("Cannot serialize header of forecast data: " + forecastData);
+//#enddebug
+            throw new NullPointerException("Cannot serialize header of forecast data!");
+        }
+        byte[] serialized = null;
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(MAX_HEADER_LENGTH);
+        DataOutputStream dos = new DataOutputStream(baos);
+        try {
+            writeHeader(dos, forecastData);
+            dos.flush();
+            serialized = baos.toByteArray();
+        } catch (IOException ex) {
+//#mdebug
+            log.warn("Cannot serialize header of forecast data! " + forecastData, ex);
+//#enddebug
+        }
+        return serialized;
+    }
+
+    /**
+     * Writes the header of {@code forecastData} to {@code dos}.
+     * @param dos the {@link DataOutputStream} to write the header to.
+     * @param forecastData the {@link ForecastData} to write header of.
+     * @throws IOException if the header cannot be written.
+     */
+    private void writeHeader(DataOutputStream dos, ForecastData forecastData)
+            throws IOException {
+        RecordFormat.writeVersion(dos, VERSION);
+        RecordFormat.writeVarLong(dos, forecastData.getModelStart().getTime() / HOUR);
+        RecordFormat.writeVarLong(dos, forecastData.getModelResultLength());
+        long checksum = forecastData.getChecksum();
+        if (checksum != ForecastData.UNKNOWN_CHECKSUM) {
+            RecordFormat.writeField(dos, CHECKSUM_TAG, RecordFormat.toBytes((int) checksum));
+        }
+        RecordFormat.writeEndOfFields(dos);
+    }
+
     /**
      * Creates the {@link ForecastData} from given array of {@code bytes}. The
      * implementation shall be reverse to the {@value
-     * #serialize(com.kenai.weathericm.domain.ForecastData)}.
+     * #serialize(com.kenai.weathericm.domain.ForecastData)}. The header is
+     * parsed in place and the model result is copied once out of the {@code data}.
      * @param data the {@code byte} array to create {@link ForecastData} from.
      * @return the {@link ForecastData} created form {@code data}s
      * @throws NullPointerException in case the {@code data} is {@code null}.
@@ -113,34 +195,205 @@ public class ForecastDataRecordStoreSerializer implements ForecastDataSerializer
 //#mdebug
         log.trace("Resurecting forecast data");
 //#enddebug
+        if (RecordFormat.getVersion(data) != 0) {
+            ForecastData resurected = readHeader(data, true);
+            if (resurected != null) {
+                int modelResultLength = resurected.getModelResultLength();
+                byte[] modelResult = new byte[modelResultLength];
+                System.arraycopy(data, data.length - modelResultLength, modelResult, 0, modelResultLength);
+                resurected.setModelResult(modelResult, resurected.getChecksum());
+            }
+            return resurected;
+        }
         ForecastData resurected = null;
-        ByteArrayInputStream bais = new ByteArrayInputStream(data);
-        DataInputStream dis = new DataInputStream(bais);
+        if (data.length < LEGACY_HEADER_LENGTH) {
+//#mdebug
+            log.warn("Cannot deserialize forecast data, it's too short: " + data.length);
+//#enddebug
+            return null;
+        }
+        long modelStartTime = readLong(data, 0);
+        int modelResultLength = readInt(data, 8);
+        long checksum = ForecastData.UNKNOWN_CHECKSUM;
+        int headerLength = HEADER_LENGTH;
+        boolean valid = modelStartTime > 0 && modelResultLength > 0;
+        if (valid && (HEADER_LENGTH + modelResultLength) == data.length) {
+            checksum = readChecksum(data);
+        } else if (valid && (LEGACY_HEADER_LENGTH + modelResultLength) == data.length) {
+//#mdebug
+            log.debug("Resurecting forecast data without checksum");
+//#enddebug
+            headerLength = LEGACY_HEADER_LENGTH;
+        } else {
+            valid = false;
+        }
         try {
-            long modelStartTime = dis.readLong();
-            int modelResultLength = dis.readInt();
-            if (modelStartTime > 0 && modelResultLength > 0
-                    && (HEADER_LENGTH + modelResultLength) == data.length) {
+            if (valid) {
                 byte[] modelResult = new byte[modelResultLength];
-                dis.readFully(modelResult);
-                Date date = new Date(modelStartTime);
-                Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("GMT"));
-                calendar.setTime(date);
-                resurected = new ForecastData(calendar.get(Calendar.YEAR),
-                        calendar.get(Calendar.MONTH) + 1, calendar.get(Calendar.DAY_OF_MONTH),
-                        calendar.get(Calendar.HOUR_OF_DAY));
-                resurected.setModelResult(modelResult);
+                System.arraycopy(data, headerLength, modelResult, 0, modelResultLength);
+                resurected = createForecastData(modelStartTime);
+                resurected.setModelResult(modelResult, checksum);
+            }
+        } catch (IllegalArgumentException ex) {
+//#mdebug
+            log.warn("Cannod deserialize forecast data!", ex);
+//#enddebug
+        }
+        return resurected;
+    }
+
+    /**
+     * Creates the {@link ForecastData} without model result from given array
+     * of {@code bytes}. The {@code data} is either the {@value
+     * #serializeHeader(com.kenai.weathericm.domain.ForecastData)} result or
+     * the whole {@value #serialize(com.kenai.weathericm.domain.ForecastData)}
+     * result. The model result is not loaded, only its length and checksum are
+     * set. The header is parsed in place.
+     * @param data the {@code byte} array to create {@link ForecastData} from.
+     * @return the {@link ForecastData} created form {@code data} or {@code null}
+     *         if the {@code data} is not valid.
+     * @throws NullPointerException in case the {@code data} is {@code null}.
+     */
+    public ForecastData resurectHeader(byte[] data) {
+        if (data == null) {
+//#mdebug
+            log.error("Cannoct resurect forecast data header with null data!");
+//#enddebug
+            throw new NullPointerException("Cannot resurect forecast data header!");
+        }
+        if (RecordFormat.getVersion(data) != 0) {
+            return readHeader(data, false);
+        }
+        if (data.length < LEGACY_HEADER_LENGTH) {
+//#mdebug
+            log.warn("Cannot deserialize forecast data header, it's too short: " + data.length);
+//#enddebug
+            return null;
+        }
+        ForecastData resurected = null;
+        long modelStartTime = readLong(data, 0);
+        int modelResultLength = readInt(data, 8);
+        long checksum = ForecastData.UNKNOWN_CHECKSUM;
+        boolean valid = modelStartTime > 0 && modelResultLength > 0;
+        if (valid && (data.length == HEADER_LENGTH
+                || data.length == HEADER_LENGTH + modelResultLength)) {
+            checksum = readChecksum(data);
+        } else if (!valid || data.length != LEGACY_HEADER_LENGTH + modelResultLength) {
+            valid = false;
+        }
+        try {
+            if (valid) {
+                resurected = createForecastData(modelStartTime);
+                resurected.setModelResultHeader(modelResultLength, checksum);
+            }
+        } catch (IllegalArgumentException ex) {
+//#mdebug
+            log.warn("Cannod deserialize forecast data header!", ex);
+//#enddebug
+        }
+        return resurected;
+    }
+
+    /**
+     * Checks if given {@code data} has been written before the format was versioned.
+     * @param data the {@code byte} array with header or whole serialized data.
+     * @return {@code true} if the {@code data} shall be upgraded.
+     */
+    public boolean isUpgradeNeeded(byte[] data) {
+        return RecordFormat.getVersion(data) < VERSION;
+    }
+
+    /**
+     * Reads the versioned header from the {@code data}. The optional fields
+     * with unknown tags are skipped.
+     * @param data the {@code byte} array with header or whole serialized data.
+     * @param withModelResult {@code true} if the {@code data} must be followed
+     *        by the model result, {@code false} if it may be the header only.
+     * @return the {@link ForecastData} without model result or {@code null}
+     *         if the {@code data} is not valid.
+     */
+    private ForecastData readHeader(byte[] data, boolean withModelResult) {
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
+        ForecastData resurected = null;
+        try {
+            RecordFormat.readVersion(dis, VERSION);
+            long modelStartTime = RecordFormat.readVarLong(dis) * HOUR;
+            int modelResultLength = RecordFormat.readVarInt(dis);
+            long checksum = ForecastData.UNKNOWN_CHECKSUM;
+            for (int tag = RecordFormat.readVarInt(dis); tag != RecordFormat.END_OF_FIELDS;
+                    tag = RecordFormat.readVarInt(dis)) {
+                byte[] value = RecordFormat.readFieldValue(dis);
+                if (tag == CHECKSUM_TAG) {
+                    checksum = RecordFormat.toInt(value) & 0xffffffffL;
+                }
+            }
+            int rest = dis.available();
+            if (modelStartTime > 0 && modelResultLength > 0
+                    && (rest == modelResultLength || (!withModelResult && rest == 0))) {
+                resurected = createForecastData(modelStartTime);
+                resurected.setModelResultHeader(modelResultLength, checksum);
+            } else {
+//#mdebug
+                log.warn("Invalid forecast data header, model start = " + modelStartTime
+                        + " length = " + modelResultLength + " rest = " + rest);
+//#enddebug
             }
         } catch (IOException ex) {
 //#mdebug
-            log.warn("Cannot deserialize forecast data!", ex);
+            log.warn("Cannot deserialize forecast data header!", ex);
 //#enddebug
         } catch (IllegalArgumentException ex) {
 //#mdebug
-            log.warn("Cannod deserialize forecast data!", ex);
+            log.warn("Cannod deserialize forecast data header!", ex);
 //#enddebug
         }
         return resurected;
     }
 
+    /**
+     * Reads the serialized checksum from the header in {@code data}.
+     * @param data the {@code byte[]} with the header.
+     * @return the {@code long} with checksum or {@value ForecastData#UNKNOWN_CHECKSUM}
+     *         if it was not known when serialized.
+     */
+    private long readChecksum(byte[] data) {
+        long checksum = readInt(data, LEGACY_HEADER_LENGTH) & 0xffffffffL;
+        return checksum == SERIALIZED_UNKNOWN_CHECKSUM ? ForecastData.UNKNOWN_CHECKSUM : checksum;
+    }
+
+    /**
+     * Reads the big-endian {@code int} as written by {@link DataOutputStream}.
+     * @param data the {@code byte[]} to read from.
+     * @param offset the {@code int} with offset of the value.
+     * @return the {@code int} read.
+     */
+    private static int readInt(byte[] data, int offset) {
+        return ((data[offset] & 0xff) << 24) | ((data[offset + 1] & 0xff) << 16)
+                | ((data[offset + 2] & 0xff) << 8) | (data[offset + 3] & 0xff);
+    }
+
+    /**
+     * Reads the big-endian {@code long} as written by {@link DataOutputStream}.
+     * @param data the {@code byte[]} to read from.
+     * @param offset the {@code int} with offset of the value.
+     * @return the {@code long} read.
+     */
+    private static long readLong(byte[] data, int offset) {
+        return ((long) readInt(data, offset) << 32) | (readInt(data, offset + 4) & 0xffffffffL);
+    }
+
+    /**
+     * Creates the {@link ForecastData} for the model started at {@code modelStartTime}.
+     * @param modelStartTime the {@code long} with time of the model start.
+     * @return the {@link ForecastData} without model result.
+     * @throws IllegalArgumentException if the time is out of range.
+     */
+    private ForecastData createForecastData(long modelStartTime) {
+        Date date = new Date(modelStartTime);
+        Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("GMT"));
+        calendar.setTime(date);
+        return new ForecastData(calendar.get(Calendar.YEAR),
+                calendar.get(Calendar.MONTH) + 1, calendar.get(Calendar.DAY_OF_MONTH),
+                calendar.get(Calendar.HOUR_OF_DAY));
+    }
 }
@@ -35,6 +35,16 @@ public interface ForecastDataSerializer {
      */
     byte[] serialize(ForecastData forecastData);
 
+    /**
+     * Transforms the header of given {@code forecastData} into array of
+     * {@code byte}s. The result shall be the beginning of the {@value
+     * #serialize(com.kenai.weathericm.domain.ForecastData)} result and it shall
+     * differ for {@link ForecastData} with different model start or model result.
+     * @param forecastData the {@link ForecastData} to serialize header of.
+     * @return the array of {@code byte}s that represents the header.
+     */
+    byte[] serializeHeader(ForecastData forecastData);
+
     /**
      * Creates the {@link ForecastData} from given array of {@code bytes}. The
      * implementation shall be reverse to the {@value
@@ -43,4 +53,25 @@ public interface ForecastDataSerializer {
      * @return the {@link ForecastData} created form {@code data}s
      */
     ForecastData resurect(byte[] data);
+
+    /**
+     * Creates the {@link ForecastData} without model result from the {@value
+     * #serializeHeader(com.kenai.weathericm.domain.ForecastData)} or {@value
+     * #serialize(com.kenai.weathericm.domain.ForecastData)} result. Only
+     * the length and checksum of the model result are set.
+     * @param data the {@code byte} array to create {@link ForecastData} from.
+     * @return the {@link ForecastData} created form {@code data} or {@code null}
+     *         if it cannot be created.
+     */
+    ForecastData resurectHeader(byte[] data);
+
+    /**
+     * Checks if given {@code data} is in an old format, so it shall be
+     * serialized again after it is resurected.
+     * @param data the {@code byte} array with the {@value
+     * #serializeHeader(com.kenai.weathericm.domain.ForecastData)} or {@value
+     * #serialize(com.kenai.weathericm.domain.ForecastData)} result.
+     * @return {@code true} if the {@code data} shall be upgraded.
+     */
+    boolean isUpgradeNeeded(byte[] data);
 }
@@ -0,0 +1,84 @@
+/*
+ *  Copyright (C) 2010 Przemek Kryger
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.kenai.weathericm.repository;
+
+import com.kenai.weathericm.domain.ForecastData;
+
+/**
+ * The implementation will keep the last few model runs of {@link ForecastData}
+ * for each id, so the older runs can be viewed after they have been replaced
+ * by a newer one. Only the replaced runs are archived, the current one is kept
+ * by {@link ForecastDataDao}. The runs of an id are counted back from the
+ * latest one that has been archived, which is the run {@code 0}.
+ * @author Przemek Kryger
+ */
+public interface ForecastHistoryDao {
+
+    /**
+     * Archives the given {@code forecastData}, that has just been replaced,
+     * as the latest run of the given {@code id}. If the latest archived run
+     * has the same model start nothing is written. The oldest run of the
+     * {@code id} is dropped to make room for the new one.
+     * @param id the {@code Integer} to identify the runs in storage.
+     * @param forecastData the {@link ForecastData} with loaded model result to archive.
+     * @return {@code true} if the run has been archived, {@code false} otherwise.
+     */
+    boolean archive(Integer id, ForecastData forecastData);
+
+    /**
+     * Reads the run of the given {@code id} that is {@code back} runs older
+     * than the latest archived one.
+     * @param id the {@code Integer} to identify the runs in storage.
+     * @param back the {@code int} with number of runs to go back, {@code 0}
+     *        is the latest archived run.
+     * @return the {@link ForecastData} with model result or {@code null} if
+     *         there is no such run or in case of any error.
+     */
+    ForecastData read(Integer id, int back);
+
+    /**
+     * Counts the runs of the given {@code id} that can be read.
+     * @param id the {@code Integer} to identify the runs in storage.
+     * @return the {@code int} with number of runs that can be read.
+     */
+    int getRunCount(Integer id);
+
+    /**
+     * Gets the size of the persistent storage used by the runs of the given
+     * {@code id}.
+     * @param id the {@code Integer} to identify the runs in storage.
+     * @return the {@code int} with size in bytes or {@code 0} if there are no
+     *         runs or in case of any error.
+     */
+    int getSize(Integer id);
+
+    /**
+     * Removes all the runs of the given {@code id} from the persistent storage.
+     * @param id the {@code Integer} to identify the runs in storage.
+     * @return {@code true} if the deletion has been successful, {@code false} otherwise.
+     */
+    boolean delete(Integer id);
+
+    /**
+     * Sets the serializer for this implementation. It will be used to transform
+     * the headers of archived {@link ForecastData}s into {@code byte} arrays
+     * and back.
+     * @param serializer the serializer to be used.
+     */
+    void setForecastDataSerializer(ForecastDataSerializer serializer);
+}
@@ -0,0 +1,637 @@
+/*
+ *  Copyright (C) 2010 Przemek Kryger
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.kenai.weathericm.repository;
+
+import com.kenai.weathericm.domain.ForecastData;
+import com.kenai.weathericm.util.Adler32;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.Hashtable;
+import javax.microedition.rms.InvalidRecordIDException;
+import javax.microedition.rms.RecordStore;
+import javax.microedition.rms.RecordStoreException;
+import javax.microedition.rms.RecordStoreNotFoundException;
+import javax.microedition.rms.RecordStoreNotOpenException;
+//#mdebug
+import net.sf.microlog.core.Logger;
+import net.sf.microlog.core.LoggerFactory;
+//#enddebug
+
+/**
+ * This keeps the last {@value #RUNS_PER_LOCATION} runs of {@link ForecastData}
+ * for each id in a {@link RecordStore} of its own, named {@value #STORE}{@code <id>},
+ * so the space used by one id doesn't depend on how often the other ids are
+ * refreshed. The store has {@value #RUNS_PER_LOCATION} slots, which are
+ * reused as a ring: a new run is written into a free slot or over the oldest run.
+ * The first record of the store is the slot table, with the sequence number
+ * and the serialized header of the run in each slot. The model result of the
+ * run in slot {@code s} is kept in blocks of {@value #BLOCK_SIZE} bytes, the
+ * block {@code b} is the record {@code 2 + b * }{@value #RUNS_PER_LOCATION}{@code  + s}.
+ * All the records have a fixed size, and they are added only when a slot needs
+ * more blocks than have ever been used, up to {@value #SLOT_BLOCKS} blocks.
+ * Afterwards they are only overwritten in place, so the store never grows
+ * above {@value #RUNS_PER_LOCATION} times the largest run and never gets
+ * fragmented, no matter how often the forecasts are refreshed.
+ * The slot table is written after the blocks, and the model result is checked
+ * against the checksum in the header when it's read, so a run which blocks
+ * have been partially overwritten is never shown. The slot tables are kept in
+ * memory once they are read, so a previous run is looked up without scanning
+ * the store.
+ * @author Przemek Kryger
+ */
+public class ForecastHistoryRecordStoreDao implements ForecastHistoryDao {
+
+//#mdebug
+    /**
+     * The logger for the class.
+     */
+    private final static Logger log = LoggerFactory.getLogger(ForecastHistoryRecordStoreDao.class);
+//#enddebug
+    /**
+     * The prefix of names of the {@link RecordStore}s with the runs.
+     */
+    public static final String STORE = "ForecastHistory";
+    /**
+     * The number of the latest runs kept for each id.
+     */
+    public static final int RUNS_PER_LOCATION = 3;
+    /**
+     * The size of each block in bytes.
+     */
+    public static final int BLOCK_SIZE = 4096;
+    /**
+     * The maximum number of blocks of a slot, which limits the size of the
+     * model result that can be archived.
+     */
+    public static final int SLOT_BLOCKS = 16;
+    /**
+     * The size of each slot in the slot table: the sequence number ({@code int}),
+     * the length of the header ({@code short}) and the header.
+     */
+    public static final int SLOT_ENTRY_SIZE = 64;
+    /**
+     * The id of the record with the slot table.
+     */
+    private static final int TABLE_RECORD_ID = 1;
+    /**
+     * Singleton instance.
+     */
+    private static ForecastHistoryRecordStoreDao instance = null;
+    /**
+     * The serializer used for headers of the {@link ForecastData}.
+     */
+    private ForecastDataSerializer serializer = null;
+    /**
+     * Maps ids to their slot tables, each is an array of {@value #RUNS_PER_LOCATION}
+     * {@link Run}s with {@code null} for a free slot.
+     */
+    private final Hashtable slotTables = new Hashtable();
+    /**
+     * The buffer for the last block of a run, reused by all reads and writes.
+     */
+    private final byte[] block = new byte[BLOCK_SIZE];
+
+    /**
+     * Private constructor for singleton.
+     */
+    private ForecastHistoryRecordStoreDao() {
+//#mdebug
+        log.info("Creating new instance.");
+//#enddebug
+    }
+
+    /**
+     * Getter for the {@link ForecastHistoryRecordStoreDao} singleton instance.
+     * @return the singleton instance.
+     */
+    public static ForecastHistoryRecordStoreDao getInstance() {
+        if (instance == null) {
+            instance = new ForecastHistoryRecordStoreDao();
+        }
+        return instance;
+    }
+
+    public synchronized boolean archive(Integer id, ForecastData forecastData) {
+        if (id == null || forecastData == null) {
+//#mdebug
+            log.error("Cannot archive forecast data with id = " + id
+                    + " and data = " + forecastData);
+//#enddebug
+            throw new NullPointerException("Cannot archive forecast data!");
+        }
+        byte[] modelResult = forecastData.getModelResult();
+        if (modelResult == null) {
+//#mdebug
+            log.warn("Cannot archive forecast data without model result for id = " + id);
+//#enddebug
+            return false;
+        }
+        Run[] slots = getSlots(id);
+        if (slots == null) {
+            return false;
+        }
+        int[] order = orderSlots(slots);
+        Run latest = order.length == 0 ? null : slots[order[0]];
+        long modelStart = forecastData.getModelStart().getTime();
+        if (latest != null && latest.modelStart == modelStart) {
+//#mdebug
+            log.debug("The run is already archived for id = " + id);
+//#enddebug
+            return true;
+        }
+        byte[] header = serializer.serializeHeader(forecastData);
+        if (header == null || 6 + header.length > SLOT_ENTRY_SIZE) {
+//#mdebug
+            log.error("Cannot serialize forecast data header for id = " + id);
+//#enddebug
+            return false;
+        }
+        if (modelResult.length > SLOT_BLOCKS * BLOCK_SIZE) {
+//#mdebug
+            log.warn("Forecast data for id = " + id + " doesn't fit into history: " + modelResult.length);
+//#enddebug
+            return false;
+        }
+        int slot = order.length < RUNS_PER_LOCATION ? findFreeSlot(slots) : order[order.length - 1];
+        Run run = new Run(latest == null ? 1 : latest.sequence + 1, header, modelStart);
+        Run replaced = slots[slot];
+        slots[slot] = run;
+        try {
+            writeRun(id, slots, slot, modelResult);
+        } catch (RecordStoreException ex) {
+//#mdebug
+            log.error("Archiving forecast data for id = " + id + " has failed!", ex);
+//#enddebug
+            slots[slot] = null;
+            return false;
+        }
+//#mdebug
+        if (replaced != null) {
+            log.debug("Run " + replaced.sequence + " of forecast history for id = " + id + " has been replaced");
+        }
+//#enddebug
+        return true;
+    }
+
+    /**
+     * Writes the model result of the run in the {@code slot} to the blocks of
+     * the {@code slot} and then the slot table. Until the slot table is written
+     * the old one points to the replaced run, which is found broken when read.
+     * The store is created if it doesn't exist yet.
+     * @param id the {@link Integer} with id of the run.
+     * @param slots the {@link Run}s in the slots of the {@code id}.
+     * @param slot the {@code int} with number of the slot to write to.
+     * @param modelResult the {@code byte[]} with model result of the run.
+     * @throws RecordStoreException if any of the records cannot be written.
+     */
+    private void writeRun(Integer id, Run[] slots, int slot, byte[] modelResult)
+            throws RecordStoreException {
+        RecordStore store = RecordStore.openRecordStore(STORE + id, true);
+        try {
+            byte[] table = serializeSlots(slots);
+            if (store.getNextRecordID() == TABLE_RECORD_ID) {
+                store.addRecord(new byte[table.length], 0, table.length);
+            }
+            int blocks = (modelResult.length + BLOCK_SIZE - 1) / BLOCK_SIZE;
+            for (int i = 0; i < blocks; i++) {
+                int offset = i * BLOCK_SIZE;
+                if (modelResult.length - offset >= BLOCK_SIZE) {
+                    writeBlock(store, getBlockRecordId(slot, i), modelResult, offset);
+                } else {
+                    clearBlock();
+                    System.arraycopy(modelResult, offset, block, 0, modelResult.length - offset);
+                    writeBlock(store, getBlockRecordId(slot, i), block, 0);
+                }
+            }
+            store.setRecord(TABLE_RECORD_ID, table, 0, table.length);
+        } finally {
+            closeRecordStore(store);
+        }
+    }
+
+    /**
+     * Writes a block from the {@code data} at {@code offset} as the record
+     * {@code recordId}. The record is overwritten in place if it exists, or it's
+     * added, together with the empty blocks before it if they don't exist yet.
+     * @param store the open {@link RecordStore}.
+     * @param recordId the {@code int} with id of the block record.
+     * @param data the {@code byte[]} to write the block from.
+     * @param offset the {@code int} with offset of the block in {@code data}.
+     * @throws RecordStoreException if the block cannot be written.
+     */
+    private void writeBlock(RecordStore store, int recordId, byte[] data, int offset)
+            throws RecordStoreException {
+        int nextRecordId = store.getNextRecordID();
+        if (recordId < nextRecordId) {
+            store.setRecord(recordId, data, offset, BLOCK_SIZE);
+            return;
+        }
+        if (recordId > nextRecordId) {
+            byte[] empty = new byte[BLOCK_SIZE];
+            for (; nextRecordId < recordId; nextRecordId++) {
+                store.addRecord(empty, 0, BLOCK_SIZE);
+            }
+        }
+        store.addRecord(data, offset, BLOCK_SIZE);
+    }
+
+    public synchronized ForecastData read(Integer id, int back) {
+        if (id == null) {
+//#mdebug
+            log.error("Cannot read forecast history with null id!");
+//#enddebug
+            throw new NullPointerException("Cannot read forecast history!");
+        }
+        Run[] slots = getSlots(id);
+        int[] order = slots == null ? new int[0] : orderSlots(slots);
+        if (back < 0 || back >= order.length) {
+//#mdebug
+            log.info("Cannot find run " + back + " of forecast data for id = " + id);
+//#enddebug
+            return null;
+        }
+        try {
+            return readRun(id, order[back], slots[order[back]]);
+        } catch (RecordStoreException ex) {
+//#mdebug
+            log.error("Reading forecast history for id = " + id + " has failed!", ex);
+//#enddebug
+        }
+        return null;
+    }
+
+    /**
+     * Reads the blocks of the {@code run} in the {@code slot} straight into
+     * the model result array, which is sized from the header, and checks the
+     * model result against the checksum in the header.
+     * @param id the {@link Integer} with id of the run.
+     * @param slot the {@code int} with number of the slot of the {@code run}.
+     * @param run the {@link Run} to read.
+     * @return the {@link ForecastData} with model result or {@code null} if
+     *         any of the blocks is broken.
+     * @throws RecordStoreException if the blocks cannot be read.
+     */
+    private ForecastData readRun(Integer id, int slot, Run run) throws RecordStoreException {
+        ForecastData forecastData = serializer.resurectHeader(run.header);
+        if (forecastData == null || forecastData.getModelResultLength() > SLOT_BLOCKS * BLOCK_SIZE) {
+//#mdebug
+            log.warn("Broken header of forecast history for id = " + id);
+//#enddebug
+            return null;
+        }
+        byte[] modelResult = new byte[forecastData.getModelResultLength()];
+        RecordStore store = RecordStore.openRecordStore(STORE + id, false);
+        try {
+            int blocks = (modelResult.length + BLOCK_SIZE - 1) / BLOCK_SIZE;
+            for (int i = 0; i < blocks; i++) {
+                int offset = i * BLOCK_SIZE;
+                boolean full = modelResult.length - offset >= BLOCK_SIZE;
+                if (!readBlock(store, getBlockRecordId(slot, i), full ? modelResult : block, full ? offset : 0)) {
+//#mdebug
+                    log.warn("Broken block " + i + " of forecast history for id = " + id);
+//#enddebug
+                    return null;
+                }
+                if (!full) {
+                    System.arraycopy(block, 0, modelResult, offset, modelResult.length - offset);
+                }
+            }
+        } finally {
+            closeRecordStore(store);
+        }
+        if (Adler32.checksum(modelResult, modelResult.length) != forecastData.getChecksum()) {
+//#mdebug
+            log.warn("Run " + run.sequence + " of forecast history for id = " + id + " has been overwritten");
+//#enddebug
+            return null;
+        }
+        forecastData.setModelResult(modelResult, forecastData.getChecksum());
+        return forecastData;
+    }
+
+    /**
+     * Reads the block record {@code recordId} into {@code buffer} at {@code offset}.
+     * @param store the open {@link RecordStore}.
+     * @param recordId the {@code int} with id of the block record.
+     * @param buffer the {@code byte[]} to read the block into.
+     * @param offset the {@code int} with offset in {@code buffer}.
+     * @return {@code true} if a whole block has been read, {@code false} otherwise.
+     * @throws RecordStoreException if the block cannot be read.
+     */
+    private boolean readBlock(RecordStore store, int recordId, byte[] buffer, int offset)
+            throws RecordStoreException {
+        try {
+            return store.getRecord(recordId, buffer, offset) == BLOCK_SIZE;
+        } catch (InvalidRecordIDException ex) {
+//#mdebug
+            log.warn("History block " + recordId + " is missing", ex);
+//#enddebug
+            return false;
+        } catch (ArrayIndexOutOfBoundsException ex) {
+//#mdebug
+            log.warn("History block " + recordId + " is too long", ex);
+//#enddebug
+            return false;
+        }
+    }
+
+    public synchronized int getRunCount(Integer id) {
+        if (id == null) {
+//#mdebug
+            log.error("Cannot count runs with null id!");
+//#enddebug
+            throw new NullPointerException("Cannot count runs!");
+        }
+        Run[] slots = getSlots(id);
+        return slots == null ? 0 : orderSlots(slots).length;
+    }
+
+    public synchronized int getSize(Integer id) {
+        if (id == null) {
+//#mdebug
+            log.error("Cannot get size of forecast history with null id!");
+//#enddebug
+            throw new NullPointerException("Cannot get size of forecast history!");
+        }
+        RecordStore store = null;
+        try {
+            store = RecordStore.openRecordStore(STORE + id, false);
+            return store.getSize();
+        } catch (RecordStoreNotFoundException ex) {
+            return 0;
+        } catch (RecordStoreException ex) {
+//#mdebug
+            log.error("Cannot get size of forecast history for id = " + id, ex);
+//#enddebug
+            return 0;
+        } finally {
+            closeRecordStore(store);
+        }
+    }
+
+    public synchronized boolean delete(Integer id) {
+        if (id == null) {
+//#mdebug
+            log.error("Cannot delete forecast history with null id!");
+//#enddebug
+            throw new NullPointerException("Cannot delete forecast history!");
+        }
+        slotTables.remove(id);
+        try {
+            RecordStore.deleteRecordStore(STORE + id);
+        } catch (RecordStoreNotFoundException ex) {
+//#mdebug
+            log.debug("No forecast history to delete for id = " + id);
+//#enddebug
+        } catch (RecordStoreException ex) {
+//#mdebug
+            log.error("Deleting forecast history for id = " + id + " has failed!", ex);
+//#enddebug
+            return false;
+        }
+        return true;
+    }
+
+    public void setForecastDataSerializer(ForecastDataSerializer serializer) {
+        this.serializer = serializer;
+    }
+
+    /**
+     * Gets the slot table of the {@code id}. It's read from the store when
+     * it's called for the first time for the {@code id}.
+     * @param id the {@link Integer} with id of the runs.
+     * @return the {@link Run}s in the slots of the {@code id} or {@code null}
+     *         if the slot table cannot be read.
+     */
+    private Run[] getSlots(Integer id) {
+        Run[] slots = (Run[]) slotTables.get(id);
+        if (slots == null) {
+            slots = readSlots(id);
+            if (slots != null) {
+                slotTables.put(id, slots);
+            }
+        }
+        return slots;
+    }
+
+    /**
+     * Reads the slot table of the {@code id}. A missing store has all the
+     * slots free, and so does a broken slot table, so it's overwritten by the
+     * next run.
+     * @param id the {@link Integer} with id of the runs.
+     * @return the {@link Run}s in the slots of the {@code id} or {@code null}
+     *         if the store cannot be read.
+     */
+    private Run[] readSlots(Integer id) {
+        RecordStore store = null;
+        try {
+            store = RecordStore.openRecordStore(STORE + id, false);
+            return resurectSlots(store.getRecord(TABLE_RECORD_ID));
+        } catch (RecordStoreNotFoundException ex) {
+            return new Run[RUNS_PER_LOCATION];
+        } catch (InvalidRecordIDException ex) {
+//#mdebug
+            log.warn("Missing slot table of forecast history for id = " + id);
+//#enddebug
+            return new Run[RUNS_PER_LOCATION];
+        } catch (RecordStoreException ex) {
+//#mdebug
+            log.error("Cannot read forecast history for id = " + id, ex);
+//#enddebug
+            return null;
+        } finally {
+            closeRecordStore(store);
+        }
+    }
+
+    /**
+     * Serializes the {@code slots} into the slot table record, each slot takes
+     * {@value #SLOT_ENTRY_SIZE} bytes.
+     * @param slots the {@link Run}s in the slots, {@code null} for a free slot.
+     * @return the {@code byte[]} with the slot table record.
+     */
+    private byte[] serializeSlots(Run[] slots) {
+        byte[] table = new byte[RUNS_PER_LOCATION * SLOT_ENTRY_SIZE];
+        for (int slot = 0; slot < RUNS_PER_LOCATION; slot++) {
+            Run run = slots[slot];
+            if (run != null) {
+                int position = slot * SLOT_ENTRY_SIZE;
+                writeInt(table, position, run.sequence);
+                table[position + 4] = (byte) (run.header.length >>> 8);
+                table[position + 5] = (byte) run.header.length;
+                System.arraycopy(run.header, 0, table, position + 6, run.header.length);
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Resurects the {@link Run}s from the slot table record. The slots with
+     * broken headers are free.
+     * @param table the {@code byte[]} with the slot table record.
+     * @return the {@link Run}s in the slots, {@code null} for a free slot.
+     */
+    private Run[] resurectSlots(byte[] table) {
+        Run[] slots = new Run[RUNS_PER_LOCATION];
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(table));
+        try {
+            for (int slot = 0; slot < RUNS_PER_LOCATION; slot++) {
+                int sequence = dis.readInt();
+                int length = dis.readUnsignedShort();
+                if (length > SLOT_ENTRY_SIZE - 6) {
+                    length = 0;
+                }
+                byte[] header = new byte[length];
+                dis.readFully(header);
+                dis.skipBytes(SLOT_ENTRY_SIZE - 6 - length);
+                ForecastData forecastData = length == 0 ? null : serializer.resurectHeader(header);
+                if (sequence > 0 && forecastData != null) {
+                    slots[slot] = new Run(sequence, header, forecastData.getModelStart().getTime());
+                }
+            }
+        } catch (IOException ex) {
+//#mdebug
+            log.warn("Broken slot table of forecast history", ex);
+//#enddebug
+        }
+        return slots;
+    }
+
+    /**
+     * Orders the occupied slots from the latest run to the oldest one.
+     * @param slots the {@link Run}s in the slots, {@code null} for a free slot.
+     * @return the {@code int[]} with numbers of the occupied slots, the latest
+     *         run first.
+     */
+    private static int[] orderSlots(Run[] slots) {
+        int count = 0;
+        int[] order = new int[slots.length];
+        for (int slot = 0; slot < slots.length; slot++) {
+            if (slots[slot] != null) {
+                int i = count++;
+                while (i > 0 && slots[order[i - 1]].sequence < slots[slot].sequence) {
+                    order[i] = order[i - 1];
+                    i--;
+                }
+                order[i] = slot;
+            }
+        }
+        int[] occupied = new int[count];
+        System.arraycopy(order, 0, occupied, 0, count);
+        return occupied;
+    }
+
+    /**
+     * Finds the first free slot.
+     * @param slots the {@link Run}s in the slots, {@code null} for a free slot.
+     * @return the {@code int} with number of the free slot or {@code -1} if
+     *         there is none.
+     */
+    private static int findFreeSlot(Run[] slots) {
+        for (int slot = 0; slot < slots.length; slot++) {
+            if (slots[slot] == null) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Gets the id of the record with the block of a slot.
+     * @param slot the {@code int} with number of the slot.
+     * @param blockNumber the {@code int} with number of the block in the slot.
+     * @return the {@code int} with the record id.
+     */
+    private static int getBlockRecordId(int slot, int blockNumber) {
+        return TABLE_RECORD_ID + 1 + blockNumber * RUNS_PER_LOCATION + slot;
+    }
+
+    /**
+     * Fills the {@value #block} buffer with zeros.
+     */
+    private void clearBlock() {
+        for (int i = 0; i < BLOCK_SIZE; i++) {
+            block[i] = 0;
+        }
+    }
+
+    /**
+     * Writes the {@code value} as big endian {@code int} at the {@code position}.
+     * @param data the {@code byte[]} to write to.
+     * @param position the {@code int} with position to write at.
+     * @param value the {@code int} to write.
+     */
+    private static void writeInt(byte[] data, int position, int value) {
+        data[position] = (byte) (value >>> 24);
+        data[position + 1] = (byte) (value >>> 16);
+        data[position + 2] = (byte) (value >>> 8);
+        data[position + 3] = (byte) value;
+    }
+
+    /**
+     * Convenience method to close {@code store}.
+     * @param store the {@link RecordStore} to be closed.
+     */
+    private void closeRecordStore(RecordStore store) {
+        if (store != null) {
+            try {
+                store.closeRecordStore();
+            } catch (RecordStoreNotOpenException ex) {
+//#mdebug
+                log.error("Attempt to close RecordStore that hasn't been already open!");
+//#enddebug
+            } catch (RecordStoreException ex) {
+//#mdebug
+                log.fatal("Error while closing store due to RecordStore problem!", ex);
+//#enddebug
+            }
+        }
+    }
+
+    /**
+     * The descriptor of a run in a slot.
+     */
+    private static class Run {
+
+        /**
+         * The sequence number of the run among the runs of an id.
+         */
+        private final int sequence;
+        /**
+         * The serialized header of the run.
+         */
+        private final byte[] header;
+        /**
+         * The model start of the run in milliseconds.
+         */
+        private final long modelStart;
+
+        /**
+         * Creates a new descriptor.
+         * @param sequence the {@code int} with sequence number of the run.
+         * @param header the {@code byte[]} with serialized header.
+         * @param modelStart the {@code long} with model start in milliseconds.
+         */
+        private Run(int sequence, byte[] header, long modelStart) {
+            this.sequence = sequence;
+            this.header = header;
+            this.modelStart = modelStart;
+        }
+    }
+}
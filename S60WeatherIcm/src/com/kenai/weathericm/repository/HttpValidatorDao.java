@@ -0,0 +1,52 @@
+/*
+ *  Copyright (C) 2010 Przemek Kryger
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.kenai.weathericm.repository;
+
+import com.kenai.weathericm.domain.HttpValidator;
+
+/**
+ * The implementation will take care of persisting {@link HttpValidator}s based
+ * on their keys.
+ * @author Przemek Kryger
+ */
+public interface HttpValidatorDao {
+
+    /**
+     * Reads the {@link HttpValidator} from the persistent storage.
+     * @param key the {@link String} that identifies the {@link HttpValidator}.
+     * @return the {@link HttpValidator} read from persistent storage, or
+     *         {@code null} if it doesn't exist or in case of any error.
+     */
+    HttpValidator read(String key);
+
+    /**
+     * Creates or updates the {@code validator} in the persistent storage. Any
+     * {@link HttpValidator} with the same key is replaced.
+     * @param validator the {@link HttpValidator} to be persisted.
+     * @return {@code true} if the operation has been successful, {@code false} otherwise.
+     */
+    boolean createOrUpdate(HttpValidator validator);
+
+    /**
+     * Removes the {@link HttpValidator} identified by the {@code key} from the
+     * persistent storage.
+     * @param key the {@link String} that identifies the {@link HttpValidator}.
+     * @return {@code true} if the deletion has been successful, {@code false} otherwise.
+     */
+    boolean delete(String key);
+}
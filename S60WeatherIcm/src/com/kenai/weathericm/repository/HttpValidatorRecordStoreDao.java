@@ -0,0 +1,342 @@
+/*
+ *  Copyright (C) 2010 Przemek Kryger
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.kenai.weathericm.repository;
+
+import com.kenai.weathericm.domain.HttpValidator;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Hashtable;
+import javax.microedition.rms.InvalidRecordIDException;
+import javax.microedition.rms.RecordEnumeration;
+import javax.microedition.rms.RecordStore;
+import javax.microedition.rms.RecordStoreException;
+import javax.microedition.rms.RecordStoreNotOpenException;
+//#mdebug
+import net.sf.microlog.core.Logger;
+import net.sf.microlog.core.LoggerFactory;
+//#enddebug
+
+/**
+ * This is an implementation of {@link HttpValidatorDao} that is compatible to
+ * {@link RecordStore}. All the validators are kept in one small store and the
+ * record ids are looked up by keys in a {@link Hashtable} that is filled when
+ * the store is accessed for the first time. Since the record store access
+ * safety it implements singleton pattern.
+ * @author Przemek Kryger
+ * @see HttpValidatorRecordStoreDao#getInstance()
+ */
+public class HttpValidatorRecordStoreDao implements HttpValidatorDao {
+
+    /**
+     * The {@link RecordStore} store name
+     */
+    public final static String STORE = "HttpValidator";
+//#mdebug
+    /**
+     * The class logger.
+     */
+    private final static Logger log = LoggerFactory.getLogger(HttpValidatorRecordStoreDao.class);
+//#enddebug
+    /**
+     * Singleton instance of {@link HttpValidatorRecordStoreDao}.
+     */
+    private static HttpValidatorRecordStoreDao instance;
+    /**
+     * Maps keys to record ids in the store. It is {@code null} until the store
+     * is scanned for the first time.
+     */
+    private Hashtable keyToRecordId = null;
+
+    /**
+     * Default constructor is private for singleton safety.
+     */
+    private HttpValidatorRecordStoreDao() {
+//#mdebug
+        log.debug("Created HttpValidatorRecordStoreDao instance");
+//#enddebug
+    }
+
+    /**
+     * Getter for singleton instance.
+     * @return the {@link HttpValidatorRecordStoreDao} instance.
+     */
+    public static HttpValidatorRecordStoreDao getInstance() {
+        if (instance == null) {
+            instance = new HttpValidatorRecordStoreDao();
+        }
+        return instance;
+    }
+
+    /**
+     * Reads the {@link HttpValidator} with the given {@code key}.
+     * @param key the {@link String} that identifies the {@link HttpValidator}.
+     * @return the {@link HttpValidator} or {@code null} if it doesn't exist or
+     *         an error occurred.
+     */
+    public synchronized HttpValidator read(String key) {
+        if (key == null) {
+//#mdebug
+            log.error("Attempt to read validator for null key!");
+//#enddebug
+            throw new NullPointerException("Cannot read validator for null key!");
+        }
+        RecordStore store = null;
+        HttpValidator validator = null;
+        try {
+            store = RecordStore.openRecordStore(STORE, true);
+            Integer id = (Integer) getIndex(store).get(key);
+            if (id != null) {
+                validator = resurect(store.getRecord(id.intValue()));
+                if (validator == null || !key.equals(validator.getKey())) {
+//#mdebug
+                    log.warn("Broken validator record for key = " + key);
+//#enddebug
+                    validator = null;
+                    keyToRecordId.remove(key);
+                    store.deleteRecord(id.intValue());
+                }
+            }
+        } catch (RecordStoreException ex) {
+//#mdebug
+            log.error("Validator not read due to RecordStore problem!", ex);
+//#enddebug
+            keyToRecordId = null;
+        } finally {
+            closeRecordStore(store);
+        }
+//#mdebug
+        log.debug("Read validator: " + validator);
+//#enddebug
+        return validator;
+    }
+
+    /**
+     * Creates or updates the given {@code validator} in {@link RecordStore}.
+     * @param validator the {@link HttpValidator} to be persisted.
+     * @return {@code true} if the operation has been successful, {@code false} otherwise.
+     */
+    public synchronized boolean createOrUpdate(HttpValidator validator) {
+        if (validator == null) {
+//#mdebug
+            log.error("Attempt to persist null validator!");
+//#enddebug
+            throw new NullPointerException("Cannot persist null validator!");
+        }
+        RecordStore store = null;
+        boolean retValue = false;
+        try {
+            store = RecordStore.openRecordStore(STORE, true);
+            byte[] data = serialize(validator);
+            if (data != null) {
+                Hashtable index = getIndex(store);
+                Integer id = (Integer) index.get(validator.getKey());
+                if (id != null) {
+                    try {
+                        store.setRecord(id.intValue(), data, 0, data.length);
+                    } catch (InvalidRecordIDException ex) {
+//#mdebug
+                        log.warn("Validator record disappeared, creating it again: " + validator);
+//#enddebug
+                        id = null;
+                    }
+                }
+                if (id == null) {
+                    id = new Integer(store.addRecord(data, 0, data.length));
+                    index.put(validator.getKey(), id);
+                }
+                retValue = true;
+//#mdebug
+                log.debug("Validator persisted: " + validator);
+//#enddebug
+            }
+        } catch (RecordStoreException ex) {
+//#mdebug
+            log.error("Validator not persisted due to RecordStore problem! "
+                    + "validator = " + validator, ex);
+//#enddebug
+            keyToRecordId = null;
+        } finally {
+            closeRecordStore(store);
+        }
+        return retValue;
+    }
+
+    /**
+     * Deletes the {@link HttpValidator} with the given {@code key}.
+     * @param key the {@link String} that identifies the {@link HttpValidator}.
+     * @return {@code true} if the deletion has been successful, {@code false} otherwise.
+     */
+    public synchronized boolean delete(String key) {
+        if (key == null) {
+//#mdebug
+            log.error("Attempt to delete validator for null key!");
+//#enddebug
+            throw new NullPointerException("Cannot delete validator for null key!");
+        }
+        RecordStore store = null;
+        boolean retValue = false;
+        try {
+            store = RecordStore.openRecordStore(STORE, true);
+            Integer id = (Integer) getIndex(store).remove(key);
+            if (id != null) {
+                store.deleteRecord(id.intValue());
+                retValue = true;
+            }
+        } catch (InvalidRecordIDException ex) {
+//#mdebug
+            log.warn("Validator not deleted since it doesn't exist in store: " + key);
+//#enddebug
+        } catch (RecordStoreException ex) {
+//#mdebug
+            log.error("Validator not deleted due to RecordStore problem! key = " + key, ex);
+//#enddebug
+            keyToRecordId = null;
+        } finally {
+            closeRecordStore(store);
+        }
+        return retValue;
+    }
+
+    /**
+     * Gets the keys to record ids mapping. Scans the {@code store} if it
+     * hasn't been done yet.
+     * @param store the opened {@link RecordStore} to scan.
+     * @return the {@link Hashtable} that maps keys to record ids.
+     * @throws RecordStoreException if the {@code store} cannot be scanned.
+     */
+    private Hashtable getIndex(RecordStore store) throws RecordStoreException {
+        if (keyToRecordId == null) {
+            Hashtable index = new Hashtable();
+            RecordEnumeration records = store.enumerateRecords(null, null, false);
+            try {
+                while (records.hasNextElement()) {
+                    int id = records.nextRecordId();
+                    HttpValidator validator = resurect(store.getRecord(id));
+                    if (validator == null) {
+//#mdebug
+                        log.warn("Deleting broken validator record: " + id);
+//#enddebug
+                        store.deleteRecord(id);
+                    } else {
+                        index.put(validator.getKey(), new Integer(id));
+                    }
+                }
+            } finally {
+                records.destroy();
+            }
+            keyToRecordId = index;
+        }
+        return keyToRecordId;
+    }
+
+    /**
+     * Encodes the {@code validator} into {@link RecordStore} format.
+     * @param validator the {@link HttpValidator} to be encoded.
+     * @return the {@code byte[]} with encoded data or {@code null} if an error
+     *         occurred.
+     */
+    protected byte[] serialize(HttpValidator validator) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(baos);
+        byte[] data = null;
+        try {
+            dos.writeUTF(validator.getKey());
+            dos.writeUTF(validator.getUrl());
+            writeOptional(dos, validator.getETag());
+            writeOptional(dos, validator.getLastModified());
+            writeOptional(dos, validator.getValue());
+            data = baos.toByteArray();
+        } catch (IOException ex) {
+//#mdebug
+            log.error("Cannot serialize validator to bytes!", ex);
+//#enddebug
+        }
+        return data;
+    }
+
+    /**
+     * Decodes the {@code data} from {@link RecordStore} format.
+     * @param data the {@code byte[]} to be decoded.
+     * @return the {@link HttpValidator} or {@code null} if the {@code data} is broken.
+     */
+    protected HttpValidator resurect(byte[] data) {
+        if (data == null) {
+            return null;
+        }
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
+        HttpValidator validator = null;
+        try {
+            validator = new HttpValidator(dis.readUTF(), dis.readUTF());
+            validator.setETag(readOptional(dis));
+            validator.setLastModified(readOptional(dis));
+            validator.setValue(readOptional(dis));
+        } catch (IOException ex) {
+//#mdebug
+            log.error("Cannot deserialize validator from bytes!", ex);
+//#enddebug
+            validator = null;
+        }
+        return validator;
+    }
+
+    /**
+     * Writes the {@code value} that may be {@code null}.
+     * @param dos the {@link DataOutputStream} to write to.
+     * @param value the {@link String} to write.
+     * @throws IOException if the {@code value} cannot be written.
+     */
+    private void writeOptional(DataOutputStream dos, String value) throws IOException {
+        dos.writeBoolean(value != null);
+        if (value != null) {
+            dos.writeUTF(value);
+        }
+    }
+
+    /**
+     * Reads the value written by {@link #writeOptional(DataOutputStream, String)}.
+     * @param dis the {@link DataInputStream} to read from.
+     * @return the {@link String} read or {@code null}.
+     * @throws IOException if the value cannot be read.
+     */
+    private String readOptional(DataInputStream dis) throws IOException {
+        return dis.readBoolean() ? dis.readUTF() : null;
+    }
+
+    /**
+     * Convenience method to close {@code store}.
+     * @param store the {@link RecordStore} to be closed.
+     */
+    protected void closeRecordStore(RecordStore store) {
+        if (store != null) {
+            try {
+                store.closeRecordStore();
+            } catch (RecordStoreNotOpenException ex) {
+//#mdebug
+                log.error("Attempt to close RecordStore that hasn't been already open!");
+//#enddebug
+            } catch (RecordStoreException ex) {
+//#mdebug
+                log.fatal("Error while closing store due to RecordStore problem!", ex);
+//#enddebug
+            }
+        }
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ *  Copyright (C) 2010 Przemek Kryger
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.kenai.weathericm.repository;
+
+import com.kenai.weathericm.domain.MeteorogramType;
+
+/**
+ * The implementation will take care of persisting the legend images of
+ * meteorograms, one for each {@link MeteorogramType}.
+ * @author Przemek Kryger
+ */
+public interface LegendDao {
+
+    /**
+     * Reads the legend of the given {@code type} from the persistent storage.
+     * @param type the {@link MeteorogramType} of the legend.
+     * @return the {@code byte[]} with legend image or {@code null} if it
+     *         doesn't exist or an error occurred.
+     */
+    byte[] read(MeteorogramType type);
+
+    /**
+     * Creates or updates the legend of the given {@code type} in the
+     * persistent storage.
+     * @param type the {@link MeteorogramType} of the legend.
+     * @param legend the {@code byte[]} with legend image.
+     * @return {@code true} if the operation has been successful, {@code false} otherwise.
+     */
+    boolean createOrUpdate(MeteorogramType type, byte[] legend);
+}
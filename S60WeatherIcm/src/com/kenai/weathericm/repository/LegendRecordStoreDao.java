@@ -0,0 +1,230 @@
+/*
+ *  Copyright (C) 2010 Przemek Kryger
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.kenai.weathericm.repository;
+
+import com.kenai.weathericm.domain.MeteorogramType;
+import java.util.Hashtable;
+import javax.microedition.rms.InvalidRecordIDException;
+import javax.microedition.rms.RecordEnumeration;
+import javax.microedition.rms.RecordStore;
+import javax.microedition.rms.RecordStoreException;
+import javax.microedition.rms.RecordStoreNotOpenException;
+//#mdebug
+import net.sf.microlog.core.Logger;
+import net.sf.microlog.core.LoggerFactory;
+//#enddebug
+
+/**
+ * This is an implementation of {@link LegendDao} that is compatible to
+ * {@link RecordStore}. Each legend is kept as is in a single record of it's
+ * own store, so reading one legend never touches the other. The record ids
+ * are remembered once they are found. Since the record store access safety
+ * it implements singleton pattern.
+ * @author Przemek Kryger
+ * @see LegendRecordStoreDao#getInstance()
+ */
+public class LegendRecordStoreDao implements LegendDao {
+
+    /**
+     * The prefix of {@link RecordStore} store names, it's followed by the
+     * {@link MeteorogramType#getName()}.
+     */
+    public final static String STORE_PREFIX = "Legend.";
+//#mdebug
+    /**
+     * The class logger.
+     */
+    private final static Logger log = LoggerFactory.getLogger(LegendRecordStoreDao.class);
+//#enddebug
+    /**
+     * Singleton instance of {@link LegendRecordStoreDao}.
+     */
+    private static LegendRecordStoreDao instance;
+    /**
+     * Maps {@link MeteorogramType#getValue()} to the id of the record with legend.
+     */
+    private final Hashtable typeToRecordId = new Hashtable();
+
+    /**
+     * Default constructor is private for singleton safety.
+     */
+    private LegendRecordStoreDao() {
+//#mdebug
+        log.debug("Created LegendRecordStoreDao instance");
+//#enddebug
+    }
+
+    /**
+     * Getter for singleton instance.
+     * @return the {@link LegendRecordStoreDao} instance.
+     */
+    public static LegendRecordStoreDao getInstance() {
+        if (instance == null) {
+            instance = new LegendRecordStoreDao();
+        }
+        return instance;
+    }
+
+    /**
+     * Reads the legend of the given {@code type} from {@link RecordStore}.
+     * @param type the {@link MeteorogramType} of the legend.
+     * @return the {@code byte[]} with legend image or {@code null} if it
+     *         doesn't exist or an error occurred.
+     * @throws NullPointerException if the {@code type} is {@code null}.
+     */
+    public synchronized byte[] read(MeteorogramType type) {
+        if (type == null) {
+//#mdebug
+            log.error("Attempt to read legend for null type!");
+//#enddebug
+            throw new NullPointerException("Cannot read legend for null type!");
+        }
+        RecordStore store = null;
+        byte[] legend = null;
+        try {
+            store = RecordStore.openRecordStore(getStoreName(type), true);
+            int id = findRecord(store, type);
+            if (id != -1) {
+                legend = store.getRecord(id);
+            }
+        } catch (RecordStoreException ex) {
+//#mdebug
+            log.error("Legend not read due to RecordStore problem!", ex);
+//#enddebug
+            legend = null;
+            typeToRecordId.remove(getKey(type));
+        } finally {
+            closeRecordStore(store);
+        }
+//#mdebug
+        log.debug("Read legend for " + type + ": "
+                + (legend == null ? "none" : legend.length + " bytes"));
+//#enddebug
+        return legend;
+    }
+
+    /**
+     * Creates or updates the legend of the given {@code type} in {@link RecordStore}.
+     * @param type the {@link MeteorogramType} of the legend.
+     * @param legend the {@code byte[]} with legend image.
+     * @return {@code true} if the operation has been successful, {@code false} otherwise.
+     * @throws NullPointerException if either {@code type} or {@code legend} is {@code null}.
+     */
+    public synchronized boolean createOrUpdate(MeteorogramType type, byte[] legend) {
+        if (type == null || legend == null) {
+//#mdebug
+            log.error("Attempt to persist null legend or legend of null type!");
+//#enddebug
+            throw new NullPointerException("Cannot persist null legend or legend of null type!");
+        }
+        RecordStore store = null;
+        boolean retValue = false;
+        try {
+            store = RecordStore.openRecordStore(getStoreName(type), true);
+            int id = findRecord(store, type);
+            if (id != -1) {
+                try {
+                    store.setRecord(id, legend, 0, legend.length);
+                } catch (InvalidRecordIDException ex) {
+//#mdebug
+                    log.warn("Legend record disappeared, creating it again: " + type);
+//#enddebug
+                    id = -1;
+                }
+            }
+            if (id == -1) {
+                id = store.addRecord(legend, 0, legend.length);
+                typeToRecordId.put(getKey(type), new Integer(id));
+            }
+            retValue = true;
+//#mdebug
+            log.debug("Persisted legend for " + type + ": " + legend.length + " bytes");
+//#enddebug
+        } catch (RecordStoreException ex) {
+//#mdebug
+            log.error("Legend not persisted due to RecordStore problem! type = " + type, ex);
+//#enddebug
+            typeToRecordId.remove(getKey(type));
+        } finally {
+            closeRecordStore(store);
+        }
+        return retValue;
+    }
+
+    /**
+     * Finds the id of the record with legend. Scans the {@code store} if it
+     * hasn't been done yet.
+     * @param store the opened {@link RecordStore} to scan.
+     * @param type the {@link MeteorogramType} of the legend.
+     * @return the {@code int} id of the record or {@code -1} if there is none.
+     * @throws RecordStoreException if the {@code store} cannot be scanned.
+     */
+    private int findRecord(RecordStore store, MeteorogramType type) throws RecordStoreException {
+        Integer id = (Integer) typeToRecordId.get(getKey(type));
+        if (id == null) {
+            RecordEnumeration records = store.enumerateRecords(null, null, false);
+            try {
+                if (records.hasNextElement()) {
+                    id = new Integer(records.nextRecordId());
+                    typeToRecordId.put(getKey(type), id);
+                }
+            } finally {
+                records.destroy();
+            }
+        }
+        return id == null ? -1 : id.intValue();
+    }
+
+    /**
+     * Gets the name of the store with legend of the given {@code type}.
+     * @param type the {@link MeteorogramType} of the legend.
+     * @return the {@link String} with store name.
+     */
+    protected String getStoreName(MeteorogramType type) {
+        return STORE_PREFIX + type.getName();
+    }
+
+    /**
+     * Gets the key of the given {@code type} in record ids mapping.
+     * @param type the {@link MeteorogramType} of the legend.
+     * @return the {@link Integer} key.
+     */
+    private Integer getKey(MeteorogramType type) {
+        return new Integer(type.getValue());
+    }
+
+    /**
+     * Convenience method to close {@code store}.
+     * @param store the {@link RecordStore} to be closed.
+     */
+    protected void closeRecordStore(RecordStore store) {
+        if (store != null) {
+            try {
+                store.closeRecordStore();
+            } catch (RecordStoreNotOpenException ex) {
+//#mdebug
+                log.error("Attempt to close RecordStore that hasn't been already open!");
+//#enddebug
+            } catch (RecordStoreException ex) {
+//#mdebug
+                log.fatal("Error while closing store due to RecordStore problem!", ex);
+//#enddebug
+            }
+        }
+    }
+}
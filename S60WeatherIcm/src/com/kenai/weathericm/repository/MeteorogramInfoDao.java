@@ -59,6 +59,23 @@ public interface MeteorogramInfoDao {
      */
     void createOrUpdate(MeteorogramInfo info);
 
+    /**
+     * Persists all the {@code infos} in store like {@link #createOrUpdate(MeteorogramInfo)},
+     * but runs all the mutations inside one open store.
+     * @param infos the {@link Vector} with {@link MeteorogramInfo}s to be persisted.
+     * @throws NullPointerException if the {@code infos} or any of its elements is {@code null}.
+     */
+    void createOrUpdateAll(Vector infos);
+
+    /**
+     * Deletes all the {@code infos} from store like {@link #delete(MeteorogramInfo)},
+     * but runs all the mutations inside one open store.
+     * @param infos the {@link Vector} with {@link MeteorogramInfo}s to be deleted.
+     * @throws NullPointerException if the {@code infos} or any of its elements is {@code null}.
+     * @throws IllegalArgumentException if any of the {@code infos} doesn't exist in store.
+     */
+    void deleteAll(Vector infos);
+
     /**
      * Reads {@link MeteorogramInfo} with given {@code id} from store.
      * @param id the {@code int} of the entry in store to be read.
@@ -74,6 +91,14 @@ public interface MeteorogramInfoDao {
      */
     Vector readAll();
 
+    /**
+     * Reads all {@link MeteorogramInfo} entries from store like {@link #readAll()},
+     * but notifies the {@code listener} about each of them as soon as it's read.
+     * @param listener the {@link MeteorogramInfoReadListener} to notify or {@code null}.
+     * @return the {@link Vector} with all {@link MeteorogramInfo}s in store.
+     */
+    Vector readAll(MeteorogramInfoReadListener listener);
+
     /**
      * Getter for serialized used to encode/decode data for store.
      * @return the {@link MeteorogramInfoSerializer}.
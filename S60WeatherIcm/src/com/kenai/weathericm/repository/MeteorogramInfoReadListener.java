@@ -0,0 +1,35 @@
+/*
+ *  Copyright (C) 2010 Przemek Kryger
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.kenai.weathericm.repository;
+
+import com.kenai.weathericm.domain.MeteorogramInfo;
+
+/**
+ * Contract for listening for {@link MeteorogramInfo}s while they are being read
+ * by {@link MeteorogramInfoDao#readAll(MeteorogramInfoReadListener)}.
+ * @author Przemek Kryger
+ */
+public interface MeteorogramInfoReadListener {
+
+    /**
+     * Event fired whenever the {@code info} has been read from store, before
+     * the next one is read.
+     * @param info the {@link MeteorogramInfo} that has been read.
+     */
+    void readMeteorogramInfo(MeteorogramInfo info);
+}
@@ -35,6 +35,10 @@ import net.sf.microlog.core.LoggerFactory;
  * This is an implementation of {@link MeteorogramInfoDao} that is compatible to
  * {@link RecordStore}. Since the record store access safety it implements
  * singleton pattern and new instances can be obtained by calling {@value #getInstance()).
+ * The store is not opened nor closed by each operation, the handle kept open by
+ * {@link RecordStoreSessions} is used instead and released when the operation
+ * is over. The broken records are deleted as soon as they are read, but the
+ * unreadable ones, written by a newer version, are skipped and kept.
  * @author Przemek Kryger
  * @see MeteorogramInfoRecordStoreDao#getInstance()
  */
@@ -98,12 +102,32 @@ public class MeteorogramInfoRecordStoreDao implements MeteorogramInfoDao {
 //#enddebug
             throw new IllegalArgumentException("Record already exists!");
         }
+        RecordStore store = null;
+        try {
+            store = openRecordStore();
+            create(store, info);
+        } catch (RecordStoreException ex) {
+//#mdebug
+            log.fatal("Info not created since store cannot be opened! "
+                    + "info = " + info, ex);
+//#enddebug
+            info.setId(null);
+            info.setTainted(true);
+        } finally {
+            releaseRecordStore(store);
+        }
+    }
+
+    /**
+     * Creates given {@code info} in the open {@code store}.
+     * @param store the open {@link RecordStore}.
+     * @param info the {@link MeteorogramInfo} to be created in store.
+     */
+    private void create(RecordStore store, MeteorogramInfo info) {
 //#mdebug
         log.debug("Creating info: " + info);
 //#enddebug
-        RecordStore store = null;
         try {
-            store = RecordStore.openRecordStore(STORE, true);
             byte[] infoBytes = serialize(info);
             int id = store.addRecord(infoBytes, 0, infoBytes.length);
             info.setId(new Integer(id));
@@ -123,10 +147,9 @@ public class MeteorogramInfoRecordStoreDao implements MeteorogramInfoDao {
             log.fatal("Info not created due to RecordStore problem! "
                     + "info = " + info, ex);
 //#enddebug
+            invalidateIfClosed(store, ex);
             info.setId(null);
             info.setTainted(true);
-        } finally {
-            closeRecordStore(store);
         }
     }
 
@@ -134,24 +157,30 @@ public class MeteorogramInfoRecordStoreDao implements MeteorogramInfoDao {
      * Reads {@link MeteorogramInfo} with given {@code id} from {@link RecordStore}.
      * @param id the {@code int} of the entry in store to be read.
      * @return the {@link MeteorogramInfo} read from store or {@code null} if an
-     * error occurred.
+     * error occurred or the record is unreadable.
      */
     public synchronized MeteorogramInfo read(int id) {
 //#mdebug
         log.debug("Reading info: " + id);
 //#enddebug
-        RecordStore store = null;
         MeteorogramInfo info = null;
+        RecordStore store = null;
         try {
-            store = RecordStore.openRecordStore(STORE, true);
+            store = openRecordStore();
             byte[] infoBytes = store.getRecord(id);
             info = resurect(id, infoBytes);
-            if (info.isTainted()) {
+            if (info == null) {
+//#mdebug
+                log.warn("Info " + id + " is unreadable, it's kept in RecordStore");
+//#enddebug
+            } else if (info.isTainted()) {
 //#mdebug
                 log.warn("Error while decoding info data from RecordStore bytes!");
 //#enddebug
-                delete(info);
+                delete(store, info);
                 info = null;
+            } else {
+                upgradeIfNeeded(store, info, infoBytes);
             }
 //#mdebug
             log.info("Read info from store: " + info);
@@ -160,8 +189,9 @@ public class MeteorogramInfoRecordStoreDao implements MeteorogramInfoDao {
 //#mdebug
             log.fatal("Info not read due to RecordStore problem!", ex);
 //#enddebug
+            invalidateIfClosed(store, ex);
         } finally {
-            closeRecordStore(store);
+            releaseRecordStore(store);
         }
         return info;
     }
@@ -192,12 +222,30 @@ public class MeteorogramInfoRecordStoreDao implements MeteorogramInfoDao {
 //#enddebug
             return;
         }
+        RecordStore store = null;
+        try {
+            store = openRecordStore();
+            update(store, info);
+        } catch (RecordStoreException ex) {
+//#mdebug
+            log.fatal("Info not updated since store cannot be opened! "
+                    + "info = " + info, ex);
+//#enddebug
+        } finally {
+            releaseRecordStore(store);
+        }
+    }
+
+    /**
+     * Updates given tainted {@code info} in the open {@code store}.
+     * @param store the open {@link RecordStore}.
+     * @param info the {@link MeteorogramInfo} to be updated in store.
+     */
+    private void update(RecordStore store, MeteorogramInfo info) {
 //#mdebug
         log.debug("Updating info in store: " + info);
 //#enddebug
-        RecordStore store = null;
         try {
-            store = RecordStore.openRecordStore(STORE, true);
             int id = info.getId().intValue();
             byte[] infoBytes = serialize(info);
             store.setRecord(id, infoBytes, 0, infoBytes.length);
@@ -216,8 +264,7 @@ public class MeteorogramInfoRecordStoreDao implements MeteorogramInfoDao {
             log.fatal("Info not updated due to recordStore problem! "
                     + "info = " + info, ex);
 //#enddebug
-        } finally {
-            closeRecordStore(store);
+            invalidateIfClosed(store, ex);
         }
     }
 
@@ -239,14 +286,31 @@ public class MeteorogramInfoRecordStoreDao implements MeteorogramInfoDao {
 //#enddebug
             throw new IllegalArgumentException("Cannot delete record with null id!");
         }
-        int id = info.getId().intValue();
         RecordStore store = null;
+        try {
+            store = openRecordStore();
+            delete(store, info);
+        } catch (RecordStoreException ex) {
+//#mdebug
+            log.fatal("Info not deleted since store cannot be opened! "
+                    + "info = " + info, ex);
+//#enddebug
+        } finally {
+            releaseRecordStore(store);
+        }
+    }
+
+    /**
+     * Deletes given {@code info} from the open {@code store}.
+     * @param store the open {@link RecordStore}.
+     * @param info the {@link MeteorogramInfo} to be deleted from store.
+     */
+    private void delete(RecordStore store, MeteorogramInfo info) {
 //#mdebug
         log.debug("Deleting info from store: " + info);
 //#enddebug
         try {
-            store = RecordStore.openRecordStore(STORE, true);
-            store.deleteRecord(id);
+            store.deleteRecord(info.getId().intValue());
             info.setId(null);
 //#mdebug
             log.info("Info deleted from store: " + info);
@@ -262,8 +326,24 @@ public class MeteorogramInfoRecordStoreDao implements MeteorogramInfoDao {
             log.fatal("Info not deleted due to RecordStore problem! "
                     + "info = " + info, ex);
 //#enddebug
-        } finally {
-            closeRecordStore(store);
+            invalidateIfClosed(store, ex);
+        }
+    }
+
+    /**
+     * Writes the just resurected {@code info} again if its {@code infoBytes}
+     * are in an old format, so the records are upgraded lazily as they are read.
+     * If the write fails the old record is kept, since it can be still read.
+     * @param store the open {@link RecordStore}.
+     * @param info the {@link MeteorogramInfo} resurected from {@code infoBytes}.
+     * @param infoBytes the {@code byte[]} with the record.
+     */
+    private void upgradeIfNeeded(RecordStore store, MeteorogramInfo info, byte[] infoBytes) {
+        if (getMeteorogramInfoSerializer().isUpgradeNeeded(infoBytes)) {
+//#mdebug
+            log.info("Upgrading format of info: " + info);
+//#enddebug
+            update(store, info);
         }
     }
 
@@ -279,37 +359,154 @@ public class MeteorogramInfoRecordStoreDao implements MeteorogramInfoDao {
 //#enddebug
             throw new NullPointerException("Cannot create nor update null!");
         }
+        if (info.getId() != null && !info.isTainted()) {
+//#mdebug
+            log.info("Info not updated since it is not tainted! "
+                    + "info = " + info);
+//#enddebug
+            return;
+        }
+        RecordStore store = null;
+        try {
+            store = openRecordStore();
+            createOrUpdate(store, info);
+        } catch (RecordStoreException ex) {
+//#mdebug
+            log.fatal("Info not persisted since store cannot be opened! "
+                    + "info = " + info, ex);
+//#enddebug
+            if (info.getId() == null) {
+                info.setTainted(true);
+            }
+        } finally {
+            releaseRecordStore(store);
+        }
+    }
+
+    /**
+     * Persists given {@code info} in the open {@code store}.
+     * @param store the open {@link RecordStore}.
+     * @param info the {@link MeteorogramInfo} to be persisted.
+     */
+    private void createOrUpdate(RecordStore store, MeteorogramInfo info) {
         if (info.getId() == null) {
 //#mdebug
             log.info("Info seems to not exist in store, let's create it!");
 //#enddebug
-            create(info);
-        } else {
+            create(store, info);
+        } else if (info.isTainted()) {
 //#mdebug
             log.info("Info already exists in store, let's update it!");
 //#enddebug
-            update(info);
+            update(store, info);
             if (info.getId() == null) {
 //#mdebug
                 log.warn("Something went wrong while updating info in store. "
                         + "Let's try to create it!");
 //#enddebug
-                create(info);
+                create(store, info);
             }
         }
     }
 
+    /**
+     * Persists all the {@code infos} in {@link RecordStore} like
+     * {@link #createOrUpdate(MeteorogramInfo)}, but with a single lookup of the
+     * open store.
+     * @param infos the {@link Vector} with {@link MeteorogramInfo}s to be persisted.
+     * @throws NullPointerException if the {@code infos} or any of its elements is {@code null}.
+     */
+    public synchronized void createOrUpdateAll(Vector infos) {
+        checkElements(infos);
+//#mdebug
+        log.debug("Persisting " + infos.size() + " infos");
+//#enddebug
+        if (infos.isEmpty()) {
+            return;
+        }
+        RecordStore store = null;
+        try {
+            store = openRecordStore();
+        } catch (RecordStoreException ex) {
+//#mdebug
+            log.fatal("Infos not persisted since store cannot be opened!", ex);
+//#enddebug
+            return;
+        }
+        try {
+            for (int i = 0; i < infos.size(); i++) {
+                createOrUpdate(store, (MeteorogramInfo) infos.elementAt(i));
+            }
+        } finally {
+            releaseRecordStore(store);
+        }
+    }
+
+    /**
+     * Deletes all the {@code infos} from {@link RecordStore} like
+     * {@link #delete(MeteorogramInfo)}, but with a single lookup of the
+     * open store.
+     * @param infos the {@link Vector} with {@link MeteorogramInfo}s to be deleted.
+     * @throws NullPointerException if the {@code infos} or any of its elements is {@code null}.
+     * @throws IllegalArgumentException if any of the {@code infos} doesn't exist in store.
+     */
+    public synchronized void deleteAll(Vector infos) {
+        checkElements(infos);
+        for (int i = 0; i < infos.size(); i++) {
+            if (((MeteorogramInfo) infos.elementAt(i)).getId() == null) {
+//#mdebug
+                log.error("Attempt to delete info that desn't exist in store! "
+                        + "info = " + infos.elementAt(i));
+//#enddebug
+                throw new IllegalArgumentException("Cannot delete record with null id!");
+            }
+        }
+//#mdebug
+        log.debug("Deleting " + infos.size() + " infos");
+//#enddebug
+        if (infos.isEmpty()) {
+            return;
+        }
+        RecordStore store = null;
+        try {
+            store = openRecordStore();
+        } catch (RecordStoreException ex) {
+//#mdebug
+            log.fatal("Infos not deleted since store cannot be opened!", ex);
+//#enddebug
+            return;
+        }
+        try {
+            for (int i = 0; i < infos.size(); i++) {
+                delete(store, (MeteorogramInfo) infos.elementAt(i));
+            }
+        } finally {
+            releaseRecordStore(store);
+        }
+    }
+
     /**
      * Convenience method to read all {@link MeteorogramInfo} entries from {@link RecordStore}.
      * The order of read elements depends on given implementation.
      * @return the {@link Vector} with all {@link MeteorogramInfo}s in store.
      */
-    public synchronized Vector readAll() {
-        RecordStore store = null;
+    public Vector readAll() {
+        return readAll(null);
+    }
+
+    /**
+     * Reads all {@link MeteorogramInfo} entries from store and notifies the
+     * {@code listener} about each of them as soon as it's read.
+     * The order of read elements depends on given implementation.
+     * @param listener the {@link MeteorogramInfoReadListener} to notify or {@code null}.
+     * @return the {@link Vector} with all {@link MeteorogramInfo}s in store.
+     */
+    public synchronized Vector readAll(MeteorogramInfoReadListener listener) {
         Vector infos = new Vector(0);
         RecordEnumeration records = null;
+        RecordStore store = null;
         try {
-            store = RecordStore.openRecordStore(STORE, true);
+            store = openRecordStore();
             records = store.enumerateRecords(
                     null, getRecordComparator(), false);
             records.keepUpdated(true);
@@ -324,27 +521,36 @@ public class MeteorogramInfoRecordStoreDao implements MeteorogramInfoDao {
                 int id = records.nextRecordId();
                 byte[] infoBytes = store.getRecord(id);
                 MeteorogramInfo info = resurect(id, infoBytes);
-                if (info.isTainted()) {
+                if (info == null) {
+//#mdebug
+                    log.debug("Info is unreadable... skipping it: " + id);
+//#enddebug
+                } else if (info.isTainted()) {
 //#mdebug
                     log.debug("Info is broken... deleting it: " + info);
 //#enddebug
-                    delete(info);
+                    delete(store, info);
                 } else {
 //#mdebug
                     log.debug("Successfully deserialized info: " + info);
 //#enddebug
+                    upgradeIfNeeded(store, info, infoBytes);
                     infos.addElement(info);
+                    if (listener != null) {
+                        listener.readMeteorogramInfo(info);
+                    }
                 }
             }
         } catch (RecordStoreException ex) {
 //#mdebug
             log.fatal("Infos not read due to RecordStore problem!", ex);
 //#enddebug
+            invalidateIfClosed(store, ex);
         } finally {
             if (records != null) {
                 records.destroy();
             }
-            closeRecordStore(store);
+            releaseRecordStore(store);
         }
         return infos;
     }
@@ -375,7 +581,8 @@ public class MeteorogramInfoRecordStoreDao implements MeteorogramInfoDao {
      * decode {@code infoBytes} from {@link RecordStore} format.
      * @param id the {@code int} id of the resurected {@link MeteorogramInfo}
      * @param infoBytes the {@code byte[]} array to be decoded.
-     * @return the {@link MeteorogramInfo} from {@code infoBytes}.
+     * @return the {@link MeteorogramInfo} from {@code infoBytes} or {@code null}
+     *         if they are unreadable.
      * @see MeteorogramInfoSerializer#resurect(int, byte[])
      */
     protected MeteorogramInfo resurect(int id, byte[] infoBytes) {
@@ -383,24 +590,59 @@ public class MeteorogramInfoRecordStoreDao implements MeteorogramInfoDao {
     }
 
     /**
-     * Convenience method to close {@code store}.
-     * @param store the {@link RecordStore} to be closed.
+     * Gets the open handle of the {@value #STORE} from the {@link RecordStoreSessions}.
+     * The handle is kept open until the sessions are closed, so it must not be
+     * closed here, it must be released by {@link #releaseRecordStore(RecordStore)}
+     * instead.
+     * @return the open {@link RecordStore}.
+     * @throws RecordStoreException if the store cannot be opened.
      */
-    protected void closeRecordStore(RecordStore store) {
-//#mdebug
-        log.info("Closing record store: " + STORE);
-//#enddebug
+    protected RecordStore openRecordStore() throws RecordStoreException {
+        return RecordStoreSessions.getInstance().open(STORE);
+    }
+
+    /**
+     * Gives the handle of the {@value #STORE} back to the {@link RecordStoreSessions}.
+     * @param store the {@link RecordStore} got from {@link #openRecordStore()}
+     *        or {@code null} if it hasn't been open.
+     */
+    protected void releaseRecordStore(RecordStore store) {
         if (store != null) {
-            try {
-                store.closeRecordStore();
-            } catch (RecordStoreNotOpenException ex) {
+            RecordStoreSessions.getInstance().release(store);
+        }
+    }
+
+    /**
+     * Drops the {@code store} handle of the {@value #STORE} if the {@code ex}
+     * shows it has been closed under the hands of this DAO, so the next
+     * operation opens it again.
+     * @param store the {@link RecordStore} that has thrown the {@code ex}.
+     * @param ex the {@link RecordStoreException} thrown by the store.
+     */
+    private void invalidateIfClosed(RecordStore store, RecordStoreException ex) {
+        if (ex instanceof RecordStoreNotOpenException) {
+            RecordStoreSessions.getInstance().invalidate(STORE, store);
+        }
+    }
+
+    /**
+     * Checks the {@code infos} for batch operations.
+     * @param infos the {@link Vector} with {@link MeteorogramInfo}s to check.
+     * @throws NullPointerException if the {@code infos} or any of its elements is {@code null}.
+     */
+    private void checkElements(Vector infos) {
+        if (infos == null) {
 //#mdebug
-                log.error("Attempt to close RecordStore that hasn't been already open!");
+            log.error("Attempt to run batch on null infos!");
 //#enddebug
-            } catch (RecordStoreException ex) {
+            throw new NullPointerException("Cannot run batch on null!");
+        }
+        for (int i = 0; i < infos.size(); i++) {
+            if (infos.elementAt(i) == null) {
 //#mdebug
-                log.fatal("Error while closing store due to RecordStore problem!", ex);
+                log.error("Attempt to run batch with null info at: " + i);
 //#enddebug
+                throw new NullPointerException("Cannot run batch with null info!");
             }
         }
     }
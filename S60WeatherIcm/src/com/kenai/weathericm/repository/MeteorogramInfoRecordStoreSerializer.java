@@ -32,11 +32,20 @@ import com.kenai.weathericm.domain.MeteorogramType;
 
 /**
  * This is an implementation of {@link MeteorogramInfoSerializer} that is compatible to
- * {@link RecordStore}
+ * {@link RecordStore}. The info is written in the {@link RecordFormat} of version
+ * {@value #VERSION}: the name, followed by the coordinates and the type as variable
+ * length integers and the optional fields. The infos written before the format
+ * was versioned, with the coordinates and the type as 4-byte integers, are
+ * still resurected. The infos written by a newer version are unreadable, but
+ * they are not broken, so they shall be kept in the store.
  * @author Przemek Kryger
  */
 public class MeteorogramInfoRecordStoreSerializer implements MeteorogramInfoSerializer {
 
+    /**
+     * The version of the written records.
+     */
+    public final static int VERSION = 1;
 //#mdebug
     /**
      * The class logger.
@@ -56,10 +65,12 @@ public class MeteorogramInfoRecordStoreSerializer implements MeteorogramInfoSeri
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
         DataOutputStream dos = new DataOutputStream(baos);
         try {
+            RecordFormat.writeVersion(dos, VERSION);
             dos.writeUTF(info.getName());
-            dos.writeInt(info.getX());
-            dos.writeInt(info.getY());
-            dos.writeInt(info.getType().getValue());
+            RecordFormat.writeVarLong(dos, info.getX());
+            RecordFormat.writeVarLong(dos, info.getY());
+            RecordFormat.writeVarLong(dos, info.getType().getValue());
+            RecordFormat.writeEndOfFields(dos);
             infoBytes = baos.toByteArray();
         } catch (IOException ex) {
 //#mdebug
@@ -75,24 +86,41 @@ public class MeteorogramInfoRecordStoreSerializer implements MeteorogramInfoSeri
      * from {@code byte[]}s array.
      * @param id the {@code int} to set as {@link MeteorogramInfo} id.
      * @param infoBytes the {@code byte[]} to be deserialized
-     * @return {@link MeteorogramInfo} that represents {@code infoBytes}
+     * @return {@link MeteorogramInfo} that represents {@code infoBytes}, tainted
+     *         if the {@code infoBytes} are broken, or {@code null} if they have
+     *         been written in a version newer than {@value #VERSION}.
      * @see #serialize(weathericm.domain.MeteorogramInfo)
      */
     public MeteorogramInfo resurect(int id, byte[] infoBytes) {
+        int version = RecordFormat.getVersion(infoBytes);
+        if (version > VERSION) {
+//#mdebug
+            log.warn("Cannot read info " + id + " written in version " + version);
+//#enddebug
+            return null;
+        }
         MeteorogramInfo info = new MeteorogramInfo();
         info.setId(new Integer(id));
         info.setTainted(true);
         ByteArrayInputStream bais = new ByteArrayInputStream(infoBytes);
         DataInputStream dis = new DataInputStream(bais);
         try {
+            boolean legacy = version == 0;
+            if (!legacy) {
+                RecordFormat.readVersion(dis, VERSION);
+            }
             String name = dis.readUTF();
             info.setName(name);
-            int x = dis.readInt();
+            int x = legacy ? dis.readInt() : RecordFormat.readVarInt(dis);
             info.setX(x);
-            int y = dis.readInt();
+            int y = legacy ? dis.readInt() : RecordFormat.readVarInt(dis);
             info.setY(y);
-            MeteorogramType type = MeteorogramType.getByValue(dis.readInt());
+            int typeValue = legacy ? dis.readInt() : RecordFormat.readVarInt(dis);
+            MeteorogramType type = MeteorogramType.getByValue(typeValue);
             info.setType(type);
+            if (!legacy) {
+                skipFields(dis);
+            }
             info.setTainted(false);
         } catch (IOException ex) {
 //#mdebug
@@ -101,4 +129,29 @@ public class MeteorogramInfoRecordStoreSerializer implements MeteorogramInfoSeri
         }
         return info;
     }
+
+    /**
+     * Checks if given {@code infoBytes} have been written before the format
+     * was versioned.
+     * @param infoBytes the {@code byte[]} to be checked.
+     * @return {@code true} if the {@code infoBytes} shall be upgraded.
+     */
+    public boolean isUpgradeNeeded(byte[] infoBytes) {
+        return RecordFormat.getVersion(infoBytes) < VERSION;
+    }
+
+    /**
+     * Skips the optional fields, none of them is known in this version.
+     * @param dis the {@link DataInputStream} to read from.
+     * @throws IOException if the fields cannot be read.
+     */
+    private void skipFields(DataInputStream dis) throws IOException {
+        for (int tag = RecordFormat.readVarInt(dis); tag != RecordFormat.END_OF_FIELDS;
+                tag = RecordFormat.readVarInt(dis)) {
+            byte[] value = RecordFormat.readFieldValue(dis);
+//#mdebug
+            log.debug("Skipping unknown field " + tag + " of length " + value.length);
+//#enddebug
+        }
+    }
 }
@@ -41,8 +41,18 @@ public interface MeteorogramInfoSerializer {
      * {@value #serialize(weathericm.domain.MeteorogramInfo)}
      * @param id the {@code int} to set as {@link MeteorogramInfo} id.
      * @param infoBytes the {@code byte[]} to be deserialized
-     * @return {@link MeteorogramInfo} that represents {@code infoBytes}
+     * @return {@link MeteorogramInfo} that represents {@code infoBytes}, tainted
+     *         if the {@code infoBytes} are broken, or {@code null} if they are
+     *         unreadable since they have been written by a newer version.
      * @see #serialize(weathericm.domain.MeteorogramInfo) 
      */
     MeteorogramInfo resurect(int id, byte[] infoBytes);
+
+    /**
+     * Checks if given {@code infoBytes} are in an old format, so they shall be
+     * serialized again after they are resurected.
+     * @param infoBytes the {@code byte[]} to be checked.
+     * @return {@code true} if the {@code infoBytes} shall be upgraded.
+     */
+    boolean isUpgradeNeeded(byte[] infoBytes);
 }
@@ -0,0 +1,215 @@
+/*
+ *  Copyright (C) 2010 Przemek Kryger
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.kenai.weathericm.repository;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * This is a set of helpers for the versioned record format. A versioned record
+ * starts with a byte that has the {@value #MAGIC} bits set and keeps the
+ * version in the lowest bits, so it cannot be mistaken for the records written
+ * before the format was versioned, which start with a zero byte. The numbers
+ * are written as variable length integers: 7 bits in each byte, the lowest
+ * first, with the highest bit set in all but the last byte. After the fixed
+ * fields a record has any number of optional fields, each written as a tag,
+ * a length and a value, and the list of fields is ended with the
+ * {@value #END_OF_FIELDS} tag. The readers skip the fields with unknown tags,
+ * so new fields can be added to the records without a new version.
+ * @author Przemek Kryger
+ */
+public class RecordFormat {
+
+    /**
+     * The bits set in the first byte of a versioned record.
+     */
+    public final static int MAGIC = 0x80;
+    /**
+     * The bits of the first byte that keep the version.
+     */
+    public final static int VERSION_MASK = 0x0f;
+    /**
+     * The tag that ends the list of optional fields.
+     */
+    public final static int END_OF_FIELDS = 0;
+    /**
+     * The maximum number of bytes of a variable length {@code long}, which
+     * carry the 63 bits of not negative numbers.
+     */
+    private final static int MAX_VAR_LONG_LENGTH = 9;
+
+    /**
+     * There are only static helpers.
+     */
+    private RecordFormat() {
+    }
+
+    /**
+     * Gets the version of the {@code record}.
+     * @param record the {@code byte[]} with record.
+     * @return the {@code int} with version or {@code 0} if the {@code record}
+     *         was written before the format was versioned.
+     * @throws NullPointerException if the {@code record} is {@code null}.
+     */
+    public static int getVersion(byte[] record) {
+        if (record.length == 0 || (record[0] & ~VERSION_MASK & 0xff) != MAGIC) {
+            return 0;
+        }
+        return record[0] & VERSION_MASK;
+    }
+
+    /**
+     * Writes the first byte of a record with the {@code version}.
+     * @param dos the {@link DataOutputStream} to write to.
+     * @param version the {@code int} with version from {@code 1} to {@value #VERSION_MASK}.
+     * @throws IOException if the byte cannot be written.
+     */
+    public static void writeVersion(DataOutputStream dos, int version) throws IOException {
+        dos.writeByte(MAGIC | (version & VERSION_MASK));
+    }
+
+    /**
+     * Reads the first byte of a record and checks its version.
+     * @param dis the {@link DataInputStream} to read from.
+     * @param version the {@code int} with expected version.
+     * @throws IOException if the byte cannot be read or the version doesn't match.
+     */
+    public static void readVersion(DataInputStream dis, int version) throws IOException {
+        int actual = dis.readUnsignedByte();
+        if (actual != (MAGIC | (version & VERSION_MASK))) {
+            throw new IOException("Unsupported record version: " + actual);
+        }
+    }
+
+    /**
+     * Writes the {@code value} as a variable length integer.
+     * @param dos the {@link DataOutputStream} to write to.
+     * @param value the {@code long} to write.
+     * @throws IOException if the value cannot be written.
+     * @throws IllegalArgumentException if the {@code value} is negative.
+     */
+    public static void writeVarLong(DataOutputStream dos, long value) throws IOException {
+        if (value < 0L) {
+            throw new IllegalArgumentException("Cannot write negative number: " + value);
+        }
+        while (value > 0x7fL) {
+            dos.writeByte((int) (value & 0x7fL) | 0x80);
+            value >>>= 7;
+        }
+        dos.writeByte((int) value);
+    }
+
+    /**
+     * Reads the variable length integer.
+     * @param dis the {@link DataInputStream} to read from.
+     * @return the {@code long} read.
+     * @throws IOException if the value cannot be read or it is malformed.
+     */
+    public static long readVarLong(DataInputStream dis) throws IOException {
+        long value = 0L;
+        for (int i = 0; i < MAX_VAR_LONG_LENGTH; i++) {
+            int b = dis.readUnsignedByte();
+            value |= (long) (b & 0x7f) << (7 * i);
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable length number!");
+    }
+
+    /**
+     * Reads the variable length integer that fits into {@code int}.
+     * @param dis the {@link DataInputStream} to read from.
+     * @return the {@code int} read.
+     * @throws IOException if the value cannot be read or it is out of range.
+     */
+    public static int readVarInt(DataInputStream dis) throws IOException {
+        long value = readVarLong(dis);
+        if (value > Integer.MAX_VALUE) {
+            throw new IOException("Number out of range: " + value);
+        }
+        return (int) value;
+    }
+
+    /**
+     * Writes the optional field.
+     * @param dos the {@link DataOutputStream} to write to.
+     * @param tag the {@code int} with tag of the field, other than {@value #END_OF_FIELDS}.
+     * @param value the {@code byte[]} with value of the field.
+     * @throws IOException if the field cannot be written.
+     * @throws IllegalArgumentException if the {@code tag} is not valid.
+     */
+    public static void writeField(DataOutputStream dos, int tag, byte[] value) throws IOException {
+        if (tag <= END_OF_FIELDS) {
+            throw new IllegalArgumentException("Invalid field tag: " + tag);
+        }
+        writeVarLong(dos, tag);
+        writeVarLong(dos, value.length);
+        dos.write(value);
+    }
+
+    /**
+     * Writes the tag that ends the list of optional fields.
+     * @param dos the {@link DataOutputStream} to write to.
+     * @throws IOException if the tag cannot be written.
+     */
+    public static void writeEndOfFields(DataOutputStream dos) throws IOException {
+        writeVarLong(dos, END_OF_FIELDS);
+    }
+
+    /**
+     * Reads the value of the optional field which tag has been read already.
+     * @param dis the {@link DataInputStream} to read from.
+     * @return the {@code byte[]} with value of the field.
+     * @throws IOException if the value cannot be read.
+     */
+    public static byte[] readFieldValue(DataInputStream dis) throws IOException {
+        int length = readVarInt(dis);
+        if (length > dis.available()) {
+            throw new IOException("Field longer than the record: " + length);
+        }
+        byte[] value = new byte[length];
+        dis.readFully(value);
+        return value;
+    }
+
+    /**
+     * Encodes the {@code value} for an optional field.
+     * @param value the {@code int} to encode.
+     * @return the {@code byte[]} with big-endian {@code value}.
+     */
+    public static byte[] toBytes(int value) {
+        return new byte[]{(byte) (value >>> 24), (byte) (value >>> 16),
+                    (byte) (value >>> 8), (byte) value};
+    }
+
+    /**
+     * Decodes the value of an optional field.
+     * @param value the {@code byte[]} with big-endian {@code int}.
+     * @return the {@code int} decoded.
+     * @throws IOException if the {@code value} is not 4 bytes long.
+     */
+    public static int toInt(byte[] value) throws IOException {
+        if (value.length != 4) {
+            throw new IOException("Invalid length of int field: " + value.length);
+        }
+        return ((value[0] & 0xff) << 24) | ((value[1] & 0xff) << 16)
+                | ((value[2] & 0xff) << 8) | (value[3] & 0xff);
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ *  Copyright (C) 2010 Przemek Kryger
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.kenai.weathericm.repository;
+
+import java.util.Enumeration;
+import java.util.Hashtable;
+import javax.microedition.rms.RecordStore;
+import javax.microedition.rms.RecordStoreException;
+import javax.microedition.rms.RecordStoreNotOpenException;
+//#mdebug
+import net.sf.microlog.core.Logger;
+import net.sf.microlog.core.LoggerFactory;
+//#enddebug
+
+/**
+ * This is the pool of {@link RecordStore} handles that are kept open while the
+ * application is active. Opening and closing a store is an expensive operation,
+ * so DAOs get the handle by calling {@link #open(String)} and never close it
+ * themselves, they give it back by calling {@link #release(RecordStore)} when
+ * the operation is over. All handles are closed by {@link #closeAll()} when the
+ * application is paused or destroyed and they are opened again on the next use.
+ * A handle that is still used by an operation of another thread is closed when
+ * it's released, so {@link #closeAll()} never closes a store under the hands
+ * of a DAO.
+ * Since the record store access safety it implements singleton pattern and the
+ * instance can be obtained by calling {@value #getInstance()}.
+ * @author Przemek Kryger
+ */
+public class RecordStoreSessions {
+//#mdebug
+
+    /**
+     * The class logger.
+     */
+    private final static Logger log = LoggerFactory.getLogger(RecordStoreSessions.class);
+//#enddebug
+    /**
+     * Singleton instance of {@link RecordStoreSessions}.
+     */
+    private static RecordStoreSessions instance = null;
+    /**
+     * The open {@link RecordStore}s mapped by their names.
+     */
+    private final Hashtable stores = new Hashtable();
+    /**
+     * The {@link Session}s of all the handles that are open or still in use,
+     * mapped by the {@link RecordStore}s.
+     */
+    private final Hashtable sessions = new Hashtable();
+
+    /**
+     * Default constructor is private for singleton safety.
+     */
+    private RecordStoreSessions() {
+//#mdebug
+        log.debug("Created RecordStoreSessions instance");
+//#enddebug
+    }
+
+    /**
+     * Getter for singleton instance.
+     * @return the {@link RecordStoreSessions} instance.
+     */
+    public static synchronized RecordStoreSessions getInstance() {
+        if (instance == null) {
+            instance = new RecordStoreSessions();
+        }
+        return instance;
+    }
+
+    /**
+     * Gets the open handle of the store with the {@code name}. The store is
+     * opened, and created if necessary, when there is no open handle for it.
+     * Each call must be followed by {@link #release(RecordStore)} of the handle.
+     * @param name the {@link String} with name of the store.
+     * @return the open {@link RecordStore}.
+     * @throws RecordStoreException if the store cannot be opened.
+     * @throws NullPointerException if the {@code name} is {@code null}.
+     */
+    public synchronized RecordStore open(String name) throws RecordStoreException {
+        if (name == null) {
+//#mdebug
+            log.error("Attempt to open store with null name!");
+//#enddebug
+            throw new NullPointerException("Cannot open store with null name!");
+        }
+        RecordStore store = (RecordStore) stores.get(name);
+        if (store == null) {
+//#mdebug
+            log.info("Opening record store: " + name);
+//#enddebug
+            store = RecordStore.openRecordStore(name, true);
+            stores.put(name, store);
+            sessions.put(store, new Session(name));
+        }
+        ((Session) sessions.get(store)).users++;
+        return store;
+    }
+
+    /**
+     * Gives back the {@code store} got from {@link #open(String)}. If
+     * {@link #closeAll()} has been called while it was in use, and this was
+     * its last user, it's closed now.
+     * @param store the {@link RecordStore} to release or {@code null}.
+     */
+    public synchronized void release(RecordStore store) {
+        Session session = store == null ? null : (Session) sessions.get(store);
+        if (session == null) {
+//#mdebug
+            log.warn("Attempt to release record store that hasn't been open: " + store);
+//#enddebug
+            return;
+        }
+        session.users--;
+        if (session.users <= 0 && stores.get(session.name) != store) {
+            sessions.remove(store);
+            if (session.closing) {
+                close(session.name, store);
+            }
+        }
+    }
+
+    /**
+     * Checks if there is an open handle of the store with the {@code name}.
+     * @param name the {@link String} with name of the store.
+     * @return {@code true} if the handle is kept open.
+     */
+    public synchronized boolean isOpen(String name) {
+        return name != null && stores.containsKey(name);
+    }
+
+    /**
+     * Forgets the {@code store} handle of the store with the {@code name}
+     * without closing it. It shall be called when the handle turned out to be
+     * closed, so the next {@link #open(String)} opens the store again. Nothing
+     * is forgotten if the store has been opened again in the meantime and
+     * {@code store} is not its current handle.
+     * @param name the {@link String} with name of the store.
+     * @param store the {@link RecordStore} handle that turned out to be closed.
+     */
+    public synchronized void invalidate(String name, RecordStore store) {
+        if (name != null && store != null && stores.get(name) == store) {
+            stores.remove(name);
+//#mdebug
+            log.warn("Invalidated handle of record store: " + name);
+//#enddebug
+        }
+    }
+
+    /**
+     * Closes all the handles kept open. The handles that are in use are closed
+     * when their last users release them.
+     */
+    public synchronized void closeAll() {
+        Enumeration names = stores.keys();
+        while (names.hasMoreElements()) {
+            String name = (String) names.nextElement();
+            RecordStore store = (RecordStore) stores.get(name);
+            Session session = (Session) sessions.get(store);
+            if (session.users > 0) {
+//#mdebug
+                log.info("Record store in use, closing it when released: " + name);
+//#enddebug
+                session.closing = true;
+            } else {
+                sessions.remove(store);
+                close(name, store);
+            }
+        }
+        stores.clear();
+    }
+
+    /**
+     * Closes the {@code store} handle.
+     * @param name the {@link String} with name of the store.
+     * @param store the {@link RecordStore} to close.
+     */
+    private void close(String name, RecordStore store) {
+//#mdebug
+        log.info("Closing record store: " + name);
+//#enddebug
+        try {
+            store.closeRecordStore();
+        } catch (RecordStoreNotOpenException ex) {
+//#mdebug
+            log.error("Attempt to close RecordStore that hasn't been already open: " + name);
+//#enddebug
+        } catch (RecordStoreException ex) {
+//#mdebug
+            log.fatal("Error while closing store due to RecordStore problem: " + name, ex);
+//#enddebug
+        }
+    }
+
+    /**
+     * The users of an open handle.
+     */
+    private static class Session {
+
+        /**
+         * The name of the store.
+         */
+        private final String name;
+        /**
+         * The number of operations that use the handle.
+         */
+        private int users = 0;
+        /**
+         * Tells if the handle shall be closed when it's released by its last user.
+         */
+        private boolean closing = false;
+
+        /**
+         * Creates the session of a just opened handle.
+         * @param name the {@link String} with name of the store.
+         */
+        private Session(String name) {
+            this.name = name;
+        }
+    }
+}
@@ -17,7 +17,6 @@
  */
 package com.kenai.weathericm.util;
 
-import java.util.Enumeration;
 import java.util.Vector;
 //#mdebug
 import net.sf.microlog.core.Logger;
@@ -37,9 +36,19 @@ public abstract class AbstractStatusReporter implements StatusReporter {
     private final static Logger log = LoggerFactory.getLogger(AbstractStatusReporter.class);
 //#enddebug
     /**
-     * All the registered {@link StatusListener}s instances.
+     * The empty array of listeners.
      */
-    private final Vector listeners = new Vector();
+    private final static StatusListener[] NO_LISTENERS = new StatusListener[0];
+    /**
+     * All the registered {@link StatusListener}s instances. The array is never
+     * modified, it's replaced when listeners are added or removed, so it can
+     * be iterated without a lock.
+     */
+    private volatile StatusListener[] listeners = NO_LISTENERS;
+    /**
+     * The lock guarding the replacement of {@value #listeners}.
+     */
+    private final Object listenersLock = new Object();
 
     /**
      * Registers a new listener.
@@ -49,9 +58,13 @@ public abstract class AbstractStatusReporter implements StatusReporter {
         if (listener == null) {
             return;
         }
-        synchronized (listeners) {
-            if (!listeners.contains(listener)) {
-                listeners.addElement(listener);
+        synchronized (listenersLock) {
+            StatusListener[] current = listeners;
+            if (indexOf(current, listener) < 0) {
+                StatusListener[] updated = new StatusListener[current.length + 1];
+                System.arraycopy(current, 0, updated, 0, current.length);
+                updated[current.length] = listener;
+                listeners = updated;
             }
         }
 
@@ -61,18 +74,49 @@ public abstract class AbstractStatusReporter implements StatusReporter {
     }
 
     /**
-     * Notifies all the registered listeners on the {@code status}.
+     * Notifies all the registered listeners on the {@code status}. The
+     * listeners registered when the notification starts are notified.
      * @param status the {@link Status} to be reported.
      */
     protected void fireStatusUpdate(Status status) {
 //#mdebug
         log.trace(this + ": Notifying on status update = " + status);
 //#enddebug
-        synchronized (listeners) {
-            Enumeration e = getListeners().elements();
-            while (e.hasMoreElements()) {
-                StatusListener listener = (StatusListener) e.nextElement();
-                listener.statusUpdate(this, status);
+        StatusListener[] current = listeners;
+        for (int i = 0; i < current.length; i++) {
+            current[i].statusUpdate(this, status);
+        }
+    }
+
+    /**
+     * Notifies all the registered listeners on the {@code progress}. The
+     * {@link ProgressListener}s get the {@code progress} as it is, the other
+     * listeners get a {@link Status} with it.
+     * @param progress the {@code int} with progress to be reported.
+     * @throws IllegalArgumentException if {@code progress} is not in range
+     *         from 0 to 100.
+     */
+    protected void fireProgressUpdate(int progress) {
+        if (progress < 0 || progress > 100) {
+//#mdebug
+            log.error(this + ": Cannot report progress = " + progress);
+//#enddebug
+            throw new IllegalArgumentException("Cannot report progress: " + progress);
+        }
+//#mdebug
+        log.trace(this + ": Notifying on progress update = " + progress);
+//#enddebug
+        StatusListener[] current = listeners;
+        Status status = null;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] instanceof ProgressListener) {
+                ((ProgressListener) current[i]).progressUpdate(this, progress);
+            } else {
+                if (status == null) {
+                    status = new Status();
+                    status.setProgress(progress);
+                }
+                current[i].statusUpdate(this, status);
             }
         }
     }
@@ -82,14 +126,10 @@ public abstract class AbstractStatusReporter implements StatusReporter {
      * @return the {@link Vector} with all registered listeners.
      */
     public Vector getListeners() {
-        Vector retValue = null;
-        synchronized (listeners) {
-            retValue = new Vector(listeners.size());
-            Enumeration listenersEnum = listeners.elements();
-            while (listenersEnum.hasMoreElements()) {
-                Object listener = listenersEnum.nextElement();
-                retValue.addElement(listener);
-            }
+        StatusListener[] current = listeners;
+        Vector retValue = new Vector(current.length);
+        for (int i = 0; i < current.length; i++) {
+            retValue.addElement(current[i]);
         }
         return retValue;
     }
@@ -100,9 +140,18 @@ public abstract class AbstractStatusReporter implements StatusReporter {
      */
     public void removeListener(StatusListener listener) {
         if (listener != null) {
-            synchronized (listeners) {
-                if (listeners.contains(listener)) {
-                    listeners.removeElement(listener);
+            synchronized (listenersLock) {
+                StatusListener[] current = listeners;
+                int index = indexOf(current, listener);
+                if (index >= 0) {
+                    StatusListener[] updated = NO_LISTENERS;
+                    if (current.length > 1) {
+                        updated = new StatusListener[current.length - 1];
+                        System.arraycopy(current, 0, updated, 0, index);
+                        System.arraycopy(current, index + 1, updated, index,
+                                current.length - index - 1);
+                    }
+                    listeners = updated;
                 }
             }
         }
@@ -110,4 +159,32 @@ public abstract class AbstractStatusReporter implements StatusReporter {
         log.debug(this + ": Listener removed");
 //#enddebug
     }
+
+    /**
+     * Removes all the registered listeners.
+     */
+    protected void removeAllListeners() {
+        synchronized (listenersLock) {
+            listeners = NO_LISTENERS;
+        }
+//#mdebug
+        log.debug(this + ": All listeners removed");
+//#enddebug
+    }
+
+    /**
+     * Finds the {@code listener} in the {@code array}.
+     * @param array the {@link StatusListener}s to search.
+     * @param listener the {@link StatusListener} to find.
+     * @return the {@code int} index of the {@code listener} or {@code -1} if
+     *         it's not in the {@code array}.
+     */
+    private static int indexOf(StatusListener[] array, StatusListener listener) {
+        for (int i = 0; i < array.length; i++) {
+            if (array[i].equals(listener)) {
+                return i;
+            }
+        }
+        return -1;
+    }
 }
@@ -0,0 +1,121 @@
+/*
+ *  Copyright (C) 2010 Przemek Kryger
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.kenai.weathericm.util;
+
+//#mdebug
+import net.sf.microlog.core.Logger;
+import net.sf.microlog.core.LoggerFactory;
+//#enddebug
+
+/**
+ * This computes the Adler-32 checksum of a stream of {@code byte}s, as CLDC
+ * doesn't provide {@code java.util.zip}. The checksum can be updated block by
+ * block while the data is being received.
+ * @author Przemek Kryger
+ */
+public class Adler32 {
+
+//#mdebug
+    /**
+     * The logger for the class.
+     */
+    private final static Logger log = LoggerFactory.getLogger(Adler32.class);
+//#enddebug
+    /**
+     * The largest prime smaller than 65536.
+     */
+    private final static int BASE = 65521;
+    /**
+     * The largest number of bytes that can be summed before the sums have to
+     * be reduced, so they don't overflow a signed {@code int}.
+     */
+    private final static int NMAX = 3854;
+    /**
+     * The sum of all the bytes.
+     */
+    private int a = 1;
+    /**
+     * The sum of all the values of {@code a}.
+     */
+    private int b = 0;
+
+    /**
+     * Updates the checksum with {@code length} bytes of {@code data} starting
+     * at {@code offset}.
+     * @param data the {@code byte[]} with the data.
+     * @param offset the {@code int} index of the first byte.
+     * @param length the {@code int} number of bytes.
+     * @throws NullPointerException if {@code data} is {@code null}.
+     * @throws ArrayIndexOutOfBoundsException if the range is outside of {@code data}.
+     */
+    public void update(byte[] data, int offset, int length) {
+        if (data == null) {
+//#mdebug
+            log.error("Cannot update checksum with null data!");
+//#enddebug
+            throw new NullPointerException("Cannot update checksum with null data!");
+        }
+        if (offset < 0 || length < 0 || offset + length > data.length) {
+//#mdebug
+            log.error("Cannot update checksum with offset = " + offset
+                    + " and length = " + length + " for data of " + data.length);
+//#enddebug
+            throw new ArrayIndexOutOfBoundsException("Invalid range of data for checksum!");
+        }
+        int end = offset + length;
+        while (offset < end) {
+            int chunkEnd = Math.min(end, offset + NMAX);
+            while (offset < chunkEnd) {
+                a += data[offset++] & 0xff;
+                b += a;
+            }
+            a %= BASE;
+            b %= BASE;
+        }
+    }
+
+    /**
+     * Gets the checksum of all the bytes passed so far.
+     * @return the {@code long} with unsigned 32 bits checksum.
+     */
+    public long getValue() {
+        return ((long) b << 16) | (long) a;
+    }
+
+    /**
+     * Resets the checksum, so it can be used for other data.
+     */
+    public void reset() {
+        a = 1;
+        b = 0;
+    }
+
+    /**
+     * Computes the checksum of the first {@code length} bytes of {@code data}.
+     * @param data the {@code byte[]} with the data.
+     * @param length the {@code int} number of bytes.
+     * @return the {@code long} with unsigned 32 bits checksum.
+     * @throws NullPointerException if {@code data} is {@code null}.
+     * @throws ArrayIndexOutOfBoundsException if {@code length} is outside of {@code data}.
+     */
+    public static long checksum(byte[] data, int length) {
+        Adler32 adler32 = new Adler32();
+        adler32.update(data, 0, length);
+        return adler32.getValue();
+    }
+}
@@ -21,10 +21,22 @@ import com.kenai.weathericm.repository.MeteorogramInfoRecordStoreSerializer;
 //#mdebug
 import net.sf.microlog.core.config.PropertyConfigurator;
 //#enddebug
+import com.kenai.weathericm.app.AbstractConnectorDownloader;
+import com.kenai.weathericm.app.DownloadPolicy;
+import com.kenai.weathericm.app.DownloadTelemetry;
+import com.kenai.weathericm.app.LegendCache;
 import com.kenai.weathericm.app.MeteorogramBroker;
+import com.kenai.weathericm.app.ModelResultCache;
+import com.kenai.weathericm.app.StorageQuotaManager;
+import com.kenai.weathericm.repository.DownloadCheckpointRecordStoreDao;
+import com.kenai.weathericm.repository.DownloadTelemetryRecordStoreDao;
 import com.kenai.weathericm.repository.ForecastDataDao;
 import com.kenai.weathericm.repository.ForecastDataRecordStoreDao;
 import com.kenai.weathericm.repository.ForecastDataRecordStoreSerializer;
+import com.kenai.weathericm.repository.ForecastHistoryDao;
+import com.kenai.weathericm.repository.ForecastHistoryRecordStoreDao;
+import com.kenai.weathericm.repository.HttpValidatorRecordStoreDao;
+import com.kenai.weathericm.repository.LegendRecordStoreDao;
 import com.kenai.weathericm.repository.MeteorogramInfoDao;
 import com.kenai.weathericm.repository.MeteorogramInfoRecordStoreDao;
 import com.kenai.weathericm.repository.MeteorogramInfoSerializer;
@@ -51,5 +63,18 @@ public class AppConfigurator {
         ForecastDataDao fdd = ForecastDataRecordStoreDao.getInstance();
         broker.setForecastDataDao(fdd);
         fdd.setForecastDataSerializer(new ForecastDataRecordStoreSerializer());
+        ForecastHistoryDao fhd = ForecastHistoryRecordStoreDao.getInstance();
+        broker.setForecastHistoryDao(fhd);
+        fhd.setForecastDataSerializer(new ForecastDataRecordStoreSerializer());
+        ModelResultCache.getInstance().setForecastDataDao(fdd);
+        StorageQuotaManager.getInstance().setForecastDataDao(fdd);
+        StorageQuotaManager.getInstance().setForecastHistoryDao(fhd);
+        AbstractConnectorDownloader.setHttpValidatorDao(HttpValidatorRecordStoreDao.getInstance());
+        AbstractConnectorDownloader.setDownloadCheckpointDao(DownloadCheckpointRecordStoreDao.getInstance());
+        AbstractConnectorDownloader.setDownloadPolicy(new DownloadPolicy());
+        DownloadTelemetry telemetry = DownloadTelemetry.getInstance();
+        telemetry.setDownloadTelemetryDao(DownloadTelemetryRecordStoreDao.getInstance());
+        AbstractConnectorDownloader.setDownloadTelemetry(telemetry);
+        LegendCache.getInstance().setLegendDao(LegendRecordStoreDao.getInstance());
     }
 }
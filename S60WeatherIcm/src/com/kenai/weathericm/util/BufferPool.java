@@ -0,0 +1,159 @@
+/*
+ *  Copyright (C) 2010 Przemek Kryger
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.kenai.weathericm.util;
+
+import java.util.Vector;
+//#mdebug
+import net.sf.microlog.core.Logger;
+import net.sf.microlog.core.LoggerFactory;
+//#enddebug
+
+/**
+ * This is a pool of {@code byte[]} buffers that may be reused between downloads.
+ * Buffers are always allocated with a size being a power of two, so they can be
+ * shared by requests of a similar size. The pool keeps at most {@value #MAX_BUFFERS}
+ * buffers that take at most {@value #MAX_POOLED_BYTES} bytes in total.
+ * @author Przemek Kryger
+ */
+public class BufferPool {
+
+//#mdebug
+    /**
+     * The logger for the class.
+     */
+    private final static Logger log = LoggerFactory.getLogger(BufferPool.class);
+//#enddebug
+    /**
+     * The smallest buffer that will be handed out by the pool.
+     */
+    public final static int MIN_BUFFER_SIZE = 1024;
+    /**
+     * The maximum number of buffers kept in the pool.
+     */
+    public final static int MAX_BUFFERS = 4;
+    /**
+     * The maximum number of bytes kept in all the pooled buffers.
+     */
+    public final static int MAX_POOLED_BYTES = 96 * 1024;
+    /**
+     * The singleton instance.
+     */
+    private final static BufferPool instance = new BufferPool();
+    /**
+     * The idle buffers.
+     */
+    private final Vector buffers = new Vector(MAX_BUFFERS);
+    /**
+     * The number of bytes in all idle buffers.
+     */
+    private int pooledBytes = 0;
+
+    /**
+     * Private constructor for singleton.
+     */
+    private BufferPool() {
+//#mdebug
+        log.info("Created buffer pool");
+//#enddebug
+    }
+
+    /**
+     * Getter for the {@link BufferPool} singleton instance.
+     * @return the singleton instance.
+     */
+    public static BufferPool getInstance() {
+        return instance;
+    }
+
+    /**
+     * Gets a buffer that can hold at least {@code minSize} bytes. The smallest
+     * idle buffer that is big enough is reused, otherwise a new one is allocated.
+     * @param minSize the {@code int} with a minimal required size.
+     * @return the {@code byte[]} with length greater or equal to {@code minSize}.
+     * @throws IllegalArgumentException if {@code minSize} is negative.
+     */
+    public synchronized byte[] obtain(int minSize) {
+        if (minSize < 0) {
+//#mdebug
+            log.error("Cannot obtain buffer of size = " + minSize);
+//#enddebug
+            throw new IllegalArgumentException("Buffer size cannot be negative!");
+        }
+        byte[] best = null;
+        for (int i = 0; i < buffers.size(); i++) {
+            byte[] candidate = (byte[]) buffers.elementAt(i);
+            if (candidate.length >= minSize
+                    && (best == null || candidate.length < best.length)) {
+                best = candidate;
+            }
+        }
+        if (best != null) {
+            buffers.removeElement(best);
+            pooledBytes -= best.length;
+//#mdebug
+            log.trace("Reusing buffer of size = " + best.length);
+//#enddebug
+            return best;
+        }
+        int size = MIN_BUFFER_SIZE;
+        while (size < minSize) {
+            size <<= 1;
+        }
+//#mdebug
+        log.debug("Allocating buffer of size = " + size);
+//#enddebug
+        return new byte[size];
+    }
+
+    /**
+     * Gives the {@code buffer} back to the pool. If the pool is already full,
+     * the smallest buffers are dropped to make a room for bigger ones.
+     * @param buffer the {@code byte[]} to be reused later.
+     */
+    public synchronized void release(byte[] buffer) {
+        if (buffer == null || buffer.length > MAX_POOLED_BYTES
+                || buffers.contains(buffer)) {
+            return;
+        }
+        while (!buffers.isEmpty() && (buffers.size() >= MAX_BUFFERS
+                || pooledBytes + buffer.length > MAX_POOLED_BYTES)) {
+            byte[] smallest = (byte[]) buffers.elementAt(0);
+            for (int i = 1; i < buffers.size(); i++) {
+                byte[] candidate = (byte[]) buffers.elementAt(i);
+                if (candidate.length < smallest.length) {
+                    smallest = candidate;
+                }
+            }
+            if (smallest.length > buffer.length) {
+                return;
+            }
+            buffers.removeElement(smallest);
+            pooledBytes -= smallest.length;
+        }
+        buffers.addElement(buffer);
+        pooledBytes += buffer.length;
+    }
+
+    /**
+     * Drops all the idle buffers, so they can be garbage collected.
+     */
+    public synchronized void clear() {
+        buffers.removeAllElements();
+        pooledBytes = 0;
+    }
+}
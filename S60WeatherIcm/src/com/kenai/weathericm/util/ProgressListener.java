@@ -0,0 +1,35 @@
+/*
+ *  Copyright (C) 2010 Przemek Kryger
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.kenai.weathericm.util;
+
+/**
+ * This is a contract for listeners that take the progress as a primitive
+ * {@code int}, so no {@link Status} is created for each progress update.
+ * The {@link Status#STARTED}, {@link Status#FINISHED} and
+ * {@link Status#CANCELLED} are still passed to {@link #statusUpdate(StatusReporter, Status)}.
+ * @author Przemek Kryger
+ */
+public interface ProgressListener extends StatusListener {
+
+    /**
+     * This is fired whenever progress of the task advances.
+     * @param source the {@link StatusReporter} that triggered the event.
+     * @param progress the {@code int} with progress in range from 0 to 100.
+     */
+    void progressUpdate(StatusReporter source, int progress);
+}
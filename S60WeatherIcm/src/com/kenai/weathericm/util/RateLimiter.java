@@ -0,0 +1,93 @@
+/*
+ *  Copyright (C) 2010 Przemek Kryger
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.kenai.weathericm.util;
+
+//#mdebug
+import net.sf.microlog.core.Logger;
+import net.sf.microlog.core.LoggerFactory;
+//#enddebug
+
+/**
+ * This is a limiter that lets through at most the given number of events
+ * per second. The events that come too early are meant to be dropped.
+ * @author Przemek Kryger
+ */
+public class RateLimiter {
+
+//#mdebug
+    /**
+     * The logger for the class.
+     */
+    private final static Logger log = LoggerFactory.getLogger(RateLimiter.class);
+//#enddebug
+    /**
+     * The minimal time in milliseconds between two events.
+     */
+    private final long interval;
+    /**
+     * The time the last event has been let through at or {@code -1} if
+     * there was none.
+     */
+    private long last = -1L;
+
+    /**
+     * Creates the limiter that lets through at most {@code eventsPerSecond}.
+     * @param eventsPerSecond the {@code int} with number of events per second.
+     * @throws IllegalArgumentException if {@code eventsPerSecond} is not positive.
+     */
+    public RateLimiter(int eventsPerSecond) {
+        if (eventsPerSecond <= 0) {
+//#mdebug
+            log.error("Cannot limit rate to " + eventsPerSecond + " events per second");
+//#enddebug
+            throw new IllegalArgumentException("The rate must be positive: " + eventsPerSecond);
+        }
+        interval = 1000L / eventsPerSecond;
+    }
+
+    /**
+     * Checks if the event that happens now can be let through.
+     * @return {@code true} if the event can be let through, {@code false} if
+     *         it comes too early.
+     */
+    public boolean isAllowed() {
+        return isAllowed(System.currentTimeMillis());
+    }
+
+    /**
+     * Checks if the event that happens at the {@code time} can be let through.
+     * When the clock goes back the event is let through.
+     * @param time the {@code long} with time of the event.
+     * @return {@code true} if the event can be let through, {@code false} if
+     *         it comes too early.
+     */
+    public synchronized boolean isAllowed(long time) {
+        if (last < 0L || time - last >= interval || time < last) {
+            last = time;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Forgets the last event, so the next one is let through.
+     */
+    public synchronized void reset() {
+        last = -1L;
+    }
+}
@@ -17,17 +17,29 @@
  */
 package com.kenai.weathericm.view;
 
+import com.kenai.weathericm.app.LegendCache;
+import com.kenai.weathericm.app.ModelResultCache;
+import com.kenai.weathericm.app.StorageQuotaManager;
 import com.kenai.weathericm.domain.Availability;
+import com.kenai.weathericm.domain.ForecastData;
 import com.kenai.weathericm.domain.MeteorogramInfo;
-//#mdebug
+import com.kenai.weathericm.domain.MeteorogramType;
+import java.util.Calendar;
+import java.util.Hashtable;
+import java.util.TimeZone;
 import javax.microedition.lcdui.Image;
+//#mdebug
 import net.sf.microlog.core.Logger;
 import net.sf.microlog.core.LoggerFactory;
 //#enddebug
 
 /**
  * This is a convenience class that allows to display {@link MeteorogramInfo}'s
- * forecast data in a {@link ScrollableCanvas}.
+ * forecast data in a {@link ScrollableCanvas}. The forecast data is taken from
+ * {@link ModelResultCache}, that reads it when it's not loaded. The legend of the meteorogram
+ * is taken from {@link LegendCache} and shown to the left of the forecast.
+ * Each legend is decoded once and the image is reused until the legend changes.
+ * An older run of the forecast can be shown instead of the latest one.
  * @author Przemek Kryger
  */
 public class InfoCanvas extends ScrollableCanvas {
@@ -38,6 +50,19 @@ public class InfoCanvas extends ScrollableCanvas {
      */
     private final static Logger log = LoggerFactory.getLogger(InfoCanvas.class);
 //#enddebug
+    /**
+     * Maps {@link MeteorogramType#getValue()} to the decoded legend.
+     */
+    private final Hashtable legendImages = new Hashtable();
+    /**
+     * Maps {@link MeteorogramType#getValue()} to the legend data the
+     * decoded legend has been created from.
+     */
+    private final Hashtable legendData = new Hashtable();
+    /**
+     * The number of runs the shown forecast is older than the latest one.
+     */
+    private int run = 0;
 
     /**
      * Sets the forecast data as the {@value ScrollableCanvas#image} and the
@@ -47,17 +72,10 @@ public class InfoCanvas extends ScrollableCanvas {
      */
     public void setInfo(MeteorogramInfo info) {
         if (info != null) {
+            StorageQuotaManager.getInstance().viewed(info);
+            run = 0;
             if (info.dataAvailability() != Availability.NOT_AVAILABLE) {
-                byte[] forecastData = info.getForecastData().getModelResult();
-                Image forecast = null;
-                if (forecastData != null) {
-                    forecast = Image.createImage(forecastData, 0, forecastData.length);
-                } else {
-//#mdebug
-                    log.warn("The " + info + " has broken forecast data!");
-//#enddebug
-                }
-                setImage(forecast);
+                setModelResult(info, ModelResultCache.getInstance().getModelResult(info));
             } else {
 //#mdebug
                 log.warn("Info has no data avaliable. Setting null image.");
@@ -72,4 +90,119 @@ public class InfoCanvas extends ScrollableCanvas {
             throw new NullPointerException("Cannot set null info!");
         }
     }
+
+    /**
+     * Sets an older run of the info's forecast data as the {@value ScrollableCanvas#image}
+     * and the info's name with the model start of the run as the {@value ScrollableCanvas#title}.
+     * @param info the {@link MeteorogramInfo} the {@code forecastData} belongs to.
+     * @param forecastData the {@link ForecastData} of the run with model result.
+     * @param run the {@code int} with number of runs the {@code forecastData}
+     *        is older than the latest one.
+     * @throws NullPointerException when the {@code info} or {@code forecastData} is null.
+     */
+    public void setRun(MeteorogramInfo info, ForecastData forecastData, int run) {
+        if (info == null || forecastData == null) {
+//#mdebug
+            log.error("Cannot set run of info " + info + " and data " + forecastData);
+//#enddebug
+            throw new NullPointerException("Cannot set null run!");
+        }
+        this.run = run;
+        setModelResult(info, forecastData.getModelResult());
+        setTitle(info.getName() + " " + formatModelStart(forecastData));
+    }
+
+    /**
+     * @return the {@code int} with number of runs the shown forecast is older
+     *         than the latest one.
+     */
+    public int getRun() {
+        return run;
+    }
+
+    /**
+     * Decodes the {@code modelResult} and sets it with the legend of the
+     * {@code info} as the {@value ScrollableCanvas#image}.
+     * @param info the {@link MeteorogramInfo} the {@code modelResult} belongs to.
+     * @param modelResult the {@code byte[]} with model result or {@code null}.
+     */
+    private void setModelResult(MeteorogramInfo info, byte[] modelResult) {
+        Image forecast = null;
+        if (modelResult != null) {
+            forecast = Image.createImage(modelResult, 0, modelResult.length);
+        } else {
+//#mdebug
+            log.warn("The " + info + " has broken forecast data!");
+//#enddebug
+        }
+        Image legend = forecast != null ? getLegendImage(info.getType()) : null;
+        if (legend != null) {
+            setImage(forecast, legend);
+        } else {
+            setImage(forecast);
+        }
+    }
+
+    /**
+     * Formats the model start of the {@code forecastData} as {@code yyyy-mm-dd hh:00}.
+     * @param forecastData the {@link ForecastData} to format the model start of.
+     * @return the {@link String} with formatted model start.
+     */
+    private String formatModelStart(ForecastData forecastData) {
+        Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("GMT"));
+        calendar.setTime(forecastData.getModelStart());
+        StringBuffer buffer = new StringBuffer();
+        buffer.append(calendar.get(Calendar.YEAR)).append('-');
+        appendTwoDigits(buffer, calendar.get(Calendar.MONTH) + 1).append('-');
+        appendTwoDigits(buffer, calendar.get(Calendar.DAY_OF_MONTH)).append(' ');
+        appendTwoDigits(buffer, calendar.get(Calendar.HOUR_OF_DAY)).append(":00");
+        return buffer.toString();
+    }
+
+    /**
+     * Appends the {@code value} with a leading zero if it's lower than 10.
+     * @param buffer the {@link StringBuffer} to append to.
+     * @param value the {@code int} to append.
+     * @return the {@code buffer}.
+     */
+    private static StringBuffer appendTwoDigits(StringBuffer buffer, int value) {
+        if (value < 10) {
+            buffer.append('0');
+        }
+        return buffer.append(value);
+    }
+
+    /**
+     * Gets the decoded legend of the given {@code type}. The legend is
+     * decoded again only when the data in {@link LegendCache} has changed.
+     * @param type the {@link MeteorogramType} of the legend.
+     * @return the {@link Image} with legend or {@code null} if there is no
+     *         legend or it cannot be decoded.
+     */
+    private Image getLegendImage(MeteorogramType type) {
+        if (type == null) {
+            return null;
+        }
+        byte[] legend = LegendCache.getInstance().getLegend(type);
+        Integer key = new Integer(type.getValue());
+        if (legend == null) {
+            legendImages.remove(key);
+            legendData.remove(key);
+            return null;
+        }
+        Image image = (Image) legendImages.get(key);
+        if (image == null || legendData.get(key) != legend) {
+            try {
+                image = Image.createImage(legend, 0, legend.length);
+                legendImages.put(key, image);
+                legendData.put(key, legend);
+            } catch (IllegalArgumentException ex) {
+//#mdebug
+                log.warn("Cannot decode legend for " + type, ex);
+//#enddebug
+                image = null;
+            }
+        }
+        return image;
+    }
 }
@@ -27,7 +27,8 @@ import net.sf.microlog.core.LoggerFactory;
 
 /**
  * This class is responsible for displaying the given image and allows for
- * scrolling in both horizontally and vertically.
+ * scrolling in both horizontally and vertically. An optional side image can be
+ * drawn to the left of the image, the two are scrolled together.
  * The code bases on the one by Alessandro La Rosa.
  * @author Przemek Kryger
  */
@@ -43,6 +44,10 @@ public class ScrollableCanvas extends Canvas {
      * The image to be drawn.
      */
     private Image image;
+    /**
+     * The image drawn to the left of the {@value #image} or {@code null}.
+     */
+    private Image sideImage;
     /**
      * The drawing image height.
      */
@@ -113,7 +118,12 @@ public class ScrollableCanvas extends Canvas {
         g.setColor(0xffffff);
         g.fillRect(0, 0, getWidth(), getHeight());
         if (image != null) {
-            g.drawImage(image, -translationX, -translationY, Graphics.TOP | Graphics.LEFT);
+            int sideWidth = 0;
+            if (sideImage != null) {
+                g.drawImage(sideImage, -translationX, -translationY, Graphics.TOP | Graphics.LEFT);
+                sideWidth = sideImage.getWidth();
+            }
+            g.drawImage(image, sideWidth - translationX, -translationY, Graphics.TOP | Graphics.LEFT);
         }
         paintHorizontalScrollbar(g);
         paintVerticalScrollbar(g);
@@ -263,14 +273,37 @@ public class ScrollableCanvas extends Canvas {
     }
 
     /**
-     * Sets the image to be handled by this canvas.
+     * Gets the image drawn to the left of the current image.
+     * @return the side image or {@code null}
+     */
+    public Image getSideImage() {
+        return sideImage;
+    }
+
+    /**
+     * Sets the image to be handled by this canvas, without side image.
      * @param image the image to set
      */
     public void setImage(Image image) {
+        setImage(image, null);
+    }
+
+    /**
+     * Sets the image to be handled by this canvas together with the image
+     * drawn to the left of it.
+     * @param image the image to set
+     * @param sideImage the side image to set or {@code null}
+     */
+    public void setImage(Image image, Image sideImage) {
         this.image = image;
+        this.sideImage = image != null ? sideImage : null;
         if (this.image != null) {
             imageHeight = this.image.getHeight();
             imageWidth = this.image.getWidth();
+            if (this.sideImage != null) {
+                imageWidth += this.sideImage.getWidth();
+                imageHeight = Math.max(imageHeight, this.sideImage.getHeight());
+            }
         } else {
 //#mdebug
             log.debug("Setting null image");
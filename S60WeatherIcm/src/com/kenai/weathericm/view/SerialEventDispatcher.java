@@ -0,0 +1,126 @@
+/*
+ *  Copyright (C) 2010 Przemek Kryger
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.kenai.weathericm.view;
+
+import java.util.Vector;
+import javax.microedition.lcdui.Display;
+//#mdebug
+import net.sf.microlog.core.Logger;
+import net.sf.microlog.core.LoggerFactory;
+//#enddebug
+
+/**
+ * This is the dispatcher that runs events in the user interface thread with
+ * {@link Display#callSerially(Runnable)}, so the threads that report them are
+ * not blocked by the user interface. The events dispatched before the user
+ * interface thread gets to them are run together in one batch.
+ * @author Przemek Kryger
+ */
+public class SerialEventDispatcher implements Runnable {
+
+//#mdebug
+    /**
+     * The logger for the class.
+     */
+    private final static Logger log = LoggerFactory.getLogger(SerialEventDispatcher.class);
+//#enddebug
+    /**
+     * The display that runs the batches.
+     */
+    private final Display display;
+    /**
+     * The events waiting for the next batch.
+     */
+    private Vector pending = new Vector();
+    /**
+     * The events of the batch being run.
+     */
+    private Vector running = new Vector();
+    /**
+     * Indicates if the next batch has been already passed to the {@value #display}.
+     */
+    private boolean scheduled = false;
+
+    /**
+     * Creates the dispatcher that runs events with the {@code display}.
+     * @param display the {@link Display} to run the events with.
+     * @throws NullPointerException if the {@code display} is {@code null}.
+     */
+    public SerialEventDispatcher(Display display) {
+        if (display == null) {
+//#mdebug
+            log.error("Cannot create dispatcher for null display!");
+//#enddebug
+            throw new NullPointerException("Cannot create dispatcher without display!");
+        }
+        this.display = display;
+    }
+
+    /**
+     * Queues the {@code event} to be run in the user interface thread. The
+     * events are run in the order they have been dispatched.
+     * @param event the {@link Runnable} to be run.
+     * @throws NullPointerException if the {@code event} is {@code null}.
+     */
+    public void dispatch(Runnable event) {
+        if (event == null) {
+//#mdebug
+            log.error("Cannot dispatch null event!");
+//#enddebug
+            throw new NullPointerException("Cannot dispatch null event!");
+        }
+        synchronized (this) {
+            pending.addElement(event);
+            if (scheduled) {
+                return;
+            }
+            scheduled = true;
+        }
+        display.callSerially(this);
+    }
+
+    /**
+     * Runs all the events dispatched so far. An event that throws doesn't
+     * stop the other events of the batch.
+     */
+    public void run() {
+        Vector batch = null;
+        synchronized (this) {
+            batch = pending;
+            pending = running;
+            running = batch;
+            scheduled = false;
+        }
+//#mdebug
+        log.trace("Running a batch of " + batch.size() + " events");
+//#enddebug
+        try {
+            for (int i = 0; i < batch.size(); i++) {
+                try {
+                    ((Runnable) batch.elementAt(i)).run();
+                } catch (RuntimeException ex) {
+//#mdebug
+                    log.error("Event has failed: " + batch.elementAt(i), ex);
+//#enddebug
+                }
+            }
+        } finally {
+            batch.removeAllElements();
+        }
+    }
+}
@@ -23,7 +23,10 @@ import java.util.Enumeration;
 import java.util.Hashtable;
 import java.util.Vector;
 import com.kenai.weathericm.util.Status;
+import com.kenai.weathericm.app.AbstractConnectorDownloader;
+import com.kenai.weathericm.app.DownloadTelemetry;
 import com.kenai.weathericm.app.MeteorogramBroker;
+import com.kenai.weathericm.app.RefreshAllTask;
 import javax.microedition.midlet.*;
 import javax.microedition.lcdui.*;
 //#mdebug
@@ -33,12 +36,15 @@ import net.sf.microlog.midp.appender.FormAppender;
 //#enddebug
 import org.netbeans.microedition.lcdui.WaitScreen;
 import com.kenai.weathericm.app.ForecastDataDownloader;
-import com.kenai.weathericm.util.StatusListener;
+import com.kenai.weathericm.util.ProgressListener;
+import com.kenai.weathericm.util.RateLimiter;
 import com.kenai.weathericm.app.MeteorogramBrokerListener;
 import com.kenai.weathericm.domain.Availability;
+import com.kenai.weathericm.domain.ForecastData;
 import com.kenai.weathericm.util.StatusReporter;
 import com.kenai.weathericm.domain.MeteorogramInfo;
 import com.kenai.weathericm.domain.MeteorogramType;
+import com.kenai.weathericm.repository.RecordStoreSessions;
 import com.kenai.weathericm.util.AppConfigurator;
 import com.kenai.weathericm.view.validation.MeteorogramInfoDataValidator;
 import org.netbeans.microedition.util.CancellableTask;
@@ -48,7 +54,7 @@ import org.netbeans.microedition.util.CancellableTask;
  * @author Przemek Kryger
  */
 public class ViewController extends MIDlet implements
-        CommandListener, MeteorogramBrokerListener, StatusListener {
+        CommandListener, MeteorogramBrokerListener, ProgressListener {
 
     /**
      * The default {@code name} for a new location.
@@ -74,6 +80,39 @@ public class ViewController extends MIDlet implements
      * The Edit Location screen name.
      */
     public final static String EDIT_LOCATION_TITLE = "Edit Location";
+    /**
+     * The type of event for {@link #readMeteorogramInfoBatch(Vector)}.
+     */
+    private final static int READ_BATCH_EVENT = 0;
+    /**
+     * The type of event for {@link #readMeteorogramInfo(Vector)}.
+     */
+    private final static int READ_EVENT = 1;
+    /**
+     * The type of event for {@link #addedMeteorogramInfo(MeteorogramInfo)}.
+     */
+    private final static int ADDED_EVENT = 2;
+    /**
+     * The type of event for {@link #deletedMeteorogramInfo(MeteorogramInfo)}.
+     */
+    private final static int DELETED_EVENT = 3;
+    /**
+     * The type of event for {@link #updatedMeteorogramInfo(MeteorogramInfo)}.
+     */
+    private final static int UPDATED_EVENT = 4;
+    /**
+     * The type of event for {@link #statusUpdate(StatusReporter, Status)}.
+     */
+    private final static int STATUS_EVENT = 5;
+    /**
+     * The type of event for {@link #progressUpdate(StatusReporter, int)}.
+     */
+    private final static int PROGRESS_EVENT = 6;
+    /**
+     * The maximum number of progress updates per second shown for a download
+     * and for the refresh of all infos.
+     */
+    public final static int MAX_PROGRESS_UPDATES_PER_SECOND = 4;
 //#mdebug
     /**
      * Logger for this class
@@ -116,6 +155,45 @@ public class ViewController extends MIDlet implements
      * @see #validateNewEditForm()
      */
     private String validationError = null;
+    /**
+     * The command that refreshes forecasts of all infos in {@value #mainList}.
+     */
+    private Command refreshAllCommand = null;
+    /**
+     * The command that flips {@value #displayInfoCanvas} to the previous run
+     * of the forecast.
+     */
+    private Command previousRunCommand = null;
+    /**
+     * The currently running {@link RefreshAllTask} or {@code null} if there
+     * is none.
+     */
+    private RefreshAllTask refreshAllTask = null;
+    /**
+     * The download shown in {@value #downloadWaitScreen} or {@code null}.
+     */
+    private StatusReporter shownDownload = null;
+    /**
+     * The time the {@value #shownDownload} has been shown at.
+     */
+    private long shownDownloadStart = 0L;
+    /**
+     * The dispatcher that runs events of brokers and tasks in the user
+     * interface thread or {@code null} if they are handled right away.
+     */
+    private SerialEventDispatcher eventDispatcher = null;
+    /**
+     * The limiter of progress updates shown in {@value #downloadWaitScreen}.
+     */
+    private RateLimiter downloadProgressLimiter = null;
+    /**
+     * The limiter of progress updates shown in the {@value #mainList} ticker.
+     */
+    private RateLimiter refreshAllProgressLimiter = null;
+    /**
+     * The buffer reused to build texts that show the progress.
+     */
+    private StringBuffer progressText = null;
     //<editor-fold defaultstate="collapsed" desc=" Generated Fields ">//GEN-BEGIN:|fields|0|
     private java.util.Hashtable __previousDisplayables = new java.util.Hashtable();
     private Command exitCommand;
@@ -219,6 +297,8 @@ public class ViewController extends MIDlet implements
         mainList.removeCommand(getShowCommand());
         mainList.removeCommand(getEditCommand());
         mainList.removeCommand(getDeleteCommand());
+        mainList.removeCommand(getRefreshAllCommand());
+        eventDispatcher = new SerialEventDispatcher(getDisplay());
         broker = MeteorogramBroker.getInstance();
         broker.addListener(this);
         broker.readAllMeteorogramInfos();
@@ -300,7 +380,7 @@ public class ViewController extends MIDlet implements
                 getDownloadWaitScreen().setTask((CancellableTask) task);
                 switchDisplayable(null, getDownloadWaitScreen());//GEN-LINE:|7-commandAction|8|245-postAction
                 // write post-action user code here
-                task.addListener(this);
+                registerAtDownloadTask(task);
             }//GEN-BEGIN:|7-commandAction|9|185-preAction
         } else if (displayable == downloadErrorAlert) {
             if (command == okCommand) {//GEN-END:|7-commandAction|9|185-preAction
@@ -398,7 +478,7 @@ public class ViewController extends MIDlet implements
                 getDownloadWaitScreen().setTask((CancellableTask) task);
                 switchDisplayable(null, getDownloadWaitScreen());//GEN-LINE:|7-commandAction|44|238-postAction
                 // write post-action user code here
-                task.addListener(this);
+                registerAtDownloadTask(task);
             }//GEN-BEGIN:|7-commandAction|45|166-preAction
         } else if (displayable == validationErrorAlert) {
             if (command == okCommand) {//GEN-END:|7-commandAction|45|166-preAction
@@ -408,6 +488,11 @@ public class ViewController extends MIDlet implements
             }//GEN-BEGIN:|7-commandAction|47|7-postCommandAction
         }//GEN-END:|7-commandAction|47|7-postCommandAction
         // write post-action user code here
+        if (displayable == mainList && command == getRefreshAllCommand()) {
+            handleRefreshAllAction();
+        } else if (displayable == displayInfoCanvas && command == getPreviousRunCommand()) {
+            handlePreviousRunAction();
+        }
     }//GEN-BEGIN:|7-commandAction|48|
     //</editor-fold>//GEN-END:|7-commandAction|48|
 
@@ -910,6 +995,7 @@ public class ViewController extends MIDlet implements
             displayInfoCanvas.setCommandListener(this);//GEN-END:|222-getter|1|222-postInit
             // write post-init user code here
             displayInfoCanvas.setScrollSpeed(25);
+            displayInfoCanvas.addCommand(getPreviousRunCommand());
         }//GEN-BEGIN:|222-getter|2|
         return displayInfoCanvas;
     }
@@ -951,7 +1037,7 @@ public class ViewController extends MIDlet implements
             getDownloadWaitScreen().setTask((CancellableTask) task);
             switchDisplayable(null, getDownloadWaitScreen());//GEN-LINE:|229-if|4|231-postAction
             // write post-action user code here
-            task.addListener(this);
+            registerAtDownloadTask(task);
         }//GEN-LINE:|229-if|5|229-postIf
         // enter post-if user code here
     }//GEN-BEGIN:|229-if|6|
@@ -1254,9 +1340,11 @@ public class ViewController extends MIDlet implements
 
     /**
      * Called when MIDlet is paused.
+     * Closes the record stores kept open while the MIDlet is active.
      */
     public void pauseApp() {
         midletPaused = true;
+        RecordStoreSessions.getInstance().closeAll();
     }
 
     /**
@@ -1265,16 +1353,118 @@ public class ViewController extends MIDlet implements
      *                      terminated and all resources has to be released.
      */
     public void destroyApp(boolean unconditional) {
+        RecordStoreSessions.getInstance().closeAll();
+    }
+
+    /**
+     * Appends the {@code meteorogramInfosBatch} to the end of the {@value #mainList}
+     * in the user interface thread.
+     * @param meteorogramInfosBatch the {@link Vector} with read {@link MeteorogramInfo}s.
+     */
+    public void readMeteorogramInfoBatch(Vector meteorogramInfosBatch) {
+        if (!dispatch(READ_BATCH_EVENT, meteorogramInfosBatch, null, null)) {
+            showMeteorogramInfoBatch(meteorogramInfosBatch);
+        }
+    }
+
+    /**
+     * Populates the {@value #mainList} with {@code newMeteorogramInfos} in the
+     * user interface thread.
+     * @param newMeteorogramInfos the {@link Vector} with read {@link MeteorogramInfo}s.
+     */
+    public void readMeteorogramInfo(Vector newMeteorogramInfos) {
+        if (!dispatch(READ_EVENT, newMeteorogramInfos, null, null)) {
+            showMeteorogramInfos(newMeteorogramInfos);
+        }
+    }
+
+    /**
+     * Appends {@code addedMeteorogramInfo} to the {@value #mainList} in the
+     * user interface thread.
+     * @param addedMeteorogramInfo the {@link MeteorogramInfo} that has been added.
+     */
+    public void addedMeteorogramInfo(MeteorogramInfo addedMeteorogramInfo) {
+        if (!dispatch(ADDED_EVENT, addedMeteorogramInfo, null, null)) {
+            showAddedMeteorogramInfo(addedMeteorogramInfo);
+        }
+    }
+
+    /**
+     * Deletes {@code deletedMeteorogramInfo} from the {@value #mainList} in
+     * the user interface thread.
+     * @param deletedMeteorogramInfo the {@link MeteorogramInfo} that has been deleted.
+     */
+    public void deletedMeteorogramInfo(MeteorogramInfo deletedMeteorogramInfo) {
+        if (!dispatch(DELETED_EVENT, deletedMeteorogramInfo, null, null)) {
+            showDeletedMeteorogramInfo(deletedMeteorogramInfo);
+        }
+    }
+
+    /**
+     * Updates {@code updatedMeteorogramInfo} in the {@value #mainList} in the
+     * user interface thread.
+     * @param updatedMeteorogramInfo the {@link MeteorogramInfo} that has been updated.
+     */
+    public void updatedMeteorogramInfo(MeteorogramInfo updatedMeteorogramInfo) {
+        if (!dispatch(UPDATED_EVENT, updatedMeteorogramInfo, null, null)) {
+            showUpdatedMeteorogramInfo(updatedMeteorogramInfo);
+        }
+    }
+
+    /**
+     * Passes the event to the {@value #eventDispatcher}, unless there is none.
+     * @param type the {@code int} with type of the event.
+     * @param argument the argument of the event.
+     * @param source the {@link StatusReporter} of {@value #STATUS_EVENT}.
+     * @param status the {@link Status} of {@value #STATUS_EVENT}.
+     * @return {@code true} if the event has been dispatched, {@code false} if
+     *         it shall be handled right away.
+     */
+    private boolean dispatch(int type, Object argument, StatusReporter source, Status status) {
+        SerialEventDispatcher dispatcher = eventDispatcher;
+        if (dispatcher == null) {
+            return false;
+        }
+        dispatcher.dispatch(new ListenerEvent(type, argument, source, status));
+        return true;
+    }
+
+    /**
+     * Appends the {@code meteorogramInfosBatch} to the end of the {@value #mainList},
+     * so the infos can be used before all of them are read.
+     * @param meteorogramInfosBatch the {@link Vector} with {@link MeteorogramInfo}s
+     *                              to append to {@value #mainList}
+     */
+    private void showMeteorogramInfoBatch(Vector meteorogramInfosBatch) {
+        if (meteorogramInfosBatch != null) {
+//#mdebug
+            log.info("Appending a batch of " + meteorogramInfosBatch.size() + " infos to main list");
+//#enddebug
+            Enumeration infos = meteorogramInfosBatch.elements();
+            while (infos.hasMoreElements()) {
+                showAddedMeteorogramInfo((MeteorogramInfo) infos.nextElement());
+            }
+        } else {
+//#mdebug
+            log.error("Trying to append null to the list!");
+//#enddebug
+        }
     }
 
     /**
      * Removes all entries from {@value #mainList}, then populates it with
-     * {@code newMeteorogramInfos}.
+     * {@code newMeteorogramInfos}. Nothing is done when the {@value #mainList}
+     * already contains exactly the {@code newMeteorogramInfos}, i.e. they have
+     * been appended in batches.
      * @param newMeteorogramInfos the {@link Vector} with {@link MeteorogramInfo}s
      *                            to populate {@value #mainList}
      */
-    public void readMeteorogramInfo(Vector newMeteorogramInfos) {
-        if (newMeteorogramInfos != null) {
+    private void showMeteorogramInfos(Vector newMeteorogramInfos) {
+        if (newMeteorogramInfos != null && isShowingOnly(newMeteorogramInfos)) {
+//#mdebug
+            log.info("Main list already contains all the read infos");
+//#enddebug
+        } else if (newMeteorogramInfos != null) {
 //#mdebug
             log.info("Populating main list with new meteorogram data");
 //#enddebug
@@ -1283,6 +1473,7 @@ public class ViewController extends MIDlet implements
             mainList.removeCommand(getShowCommand());
             mainList.removeCommand(getEditCommand());
             mainList.removeCommand(getDeleteCommand());
+            mainList.removeCommand(getRefreshAllCommand());
             infoToMainListIndex = new Hashtable(newMeteorogramInfos.size());
             Enumeration infos = newMeteorogramInfos.elements();
             while (infos.hasMoreElements()) {
@@ -1311,6 +1502,7 @@ public class ViewController extends MIDlet implements
                 mainList.addCommand(getShowCommand());
                 mainList.addCommand(getEditCommand());
                 mainList.addCommand(getDeleteCommand());
+                mainList.addCommand(getRefreshAllCommand());
             }
         } else {
 //#mdebug
@@ -1319,11 +1511,31 @@ public class ViewController extends MIDlet implements
         }
     }
 
+    /**
+     * Checks if the {@value #mainList} shows exactly the {@code meteorogramInfos}.
+     * @param meteorogramInfos the {@link Vector} with {@link MeteorogramInfo}s.
+     * @return {@code true} if the {@code meteorogramInfos} isn't empty and all
+     *         of them and no other are shown, {@code false} otherwise.
+     */
+    private boolean isShowingOnly(Vector meteorogramInfos) {
+        if (meteorogramInfos.isEmpty()
+                || meteorogramInfos.size() != infoToMainListIndex.size()) {
+            return false;
+        }
+        Enumeration infos = meteorogramInfos.elements();
+        while (infos.hasMoreElements()) {
+            if (!infoToMainListIndex.containsKey(infos.nextElement())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Appends {@code addedMeteorogramInfo} to the end of the {@value #mainList}.
      * @param addedMeteorogramInfo the {@link MeteorogramInfo} to be added.
      */
-    public void addedMeteorogramInfo(MeteorogramInfo addedMeteorogramInfo) {
+    private void showAddedMeteorogramInfo(MeteorogramInfo addedMeteorogramInfo) {
         if (addedMeteorogramInfo != null
                 && !infoToMainListIndex.containsKey(addedMeteorogramInfo)) {
 //#mdebug
@@ -1356,6 +1568,7 @@ public class ViewController extends MIDlet implements
                 mainList.addCommand(getShowCommand());
                 mainList.addCommand(getEditCommand());
                 mainList.addCommand(getDeleteCommand());
+                mainList.addCommand(getRefreshAllCommand());
             }
         } else {
 //#mdebug
@@ -1369,7 +1582,7 @@ public class ViewController extends MIDlet implements
      * Deletes the {@code deletedMeteorogramInfo} from the {@value #mainList}.
      * @param deletedMeteorogramInfo the {@link MeteorogramInfo} to be deleted.
      */
-    public void deletedMeteorogramInfo(MeteorogramInfo deletedMeteorogramInfo) {
+    private void showDeletedMeteorogramInfo(MeteorogramInfo deletedMeteorogramInfo) {
         if (deletedMeteorogramInfo != null
                 && infoToMainListIndex.containsKey(deletedMeteorogramInfo)) {
 //#mdebug
@@ -1391,6 +1604,7 @@ public class ViewController extends MIDlet implements
                 mainList.removeCommand(getShowCommand());
                 mainList.removeCommand(getEditCommand());
                 mainList.removeCommand(getDeleteCommand());
+                mainList.removeCommand(getRefreshAllCommand());
             }
         } else {
 //#mdebug
@@ -1404,7 +1618,7 @@ public class ViewController extends MIDlet implements
      * Updates the {@code updatedMeteorogramInfo} in the {@value #mainList}.
      * @param updatedMeteorogramInfo the {@link MeteorogramInfo} to be updated.
      */
-    public void updatedMeteorogramInfo(MeteorogramInfo updatedMeteorogramInfo) {
+    private void showUpdatedMeteorogramInfo(MeteorogramInfo updatedMeteorogramInfo) {
         if (updatedMeteorogramInfo != null
                 && infoToMainListIndex.containsKey(updatedMeteorogramInfo)) {
 //#mdebug
@@ -1460,12 +1674,112 @@ public class ViewController extends MIDlet implements
         if (status == Status.FINISHED || status == Status.CANCELLED) {
             source.removeListener(this);
         }
+        if (!dispatch(STATUS_EVENT, null, source, status)) {
+            showStatus(source, status);
+        }
+    }
+
+    /**
+     * Shows the {@code status} in {@value #downloadWaitScreen} or in the
+     * {@value #mainList} ticker when it's the {@value #refreshAllTask} status.
+     * @param source the {@link StatusReporter} that triggered this event.
+     * @param status the {@link Status} to generate the text.
+     */
+    private void showStatus(StatusReporter source, Status status) {
+        if (source == refreshAllTask) {
+            updateRefreshAllProgress(status);
+        } else if (!(source instanceof RefreshAllTask)) {
+            showDownloadProgress(source, status.getProgress());
+        }
+    }
+
+    /**
+     * Passes the {@code progress} to be shown, unless the previous one has
+     * been passed too recently. At most {@value #MAX_PROGRESS_UPDATES_PER_SECOND}
+     * updates per second are shown for a download and for the refresh of all infos.
+     * @param source the {@link StatusReporter} that triggered this event.
+     * @param progress the {@code int} with progress of the {@code source}.
+     * @throws NullPointerException if the {@code source} is {@code null}.
+     */
+    public void progressUpdate(StatusReporter source, int progress) {
+        if (source == null) {
+//#mdebug
+            log.error("Cannot update progress of null source!");
+//#enddebug
+            throw new NullPointerException("Updating progress of null source");
+        }
+        boolean refreshAll = source == refreshAllTask;
+        if (!getProgressLimiter(refreshAll).isAllowed()) {
+            return;
+        }
+        SerialEventDispatcher dispatcher = eventDispatcher;
+        if (dispatcher != null) {
+            dispatcher.dispatch(new ListenerEvent(source, progress));
+        } else {
+            showProgress(source, progress);
+        }
+    }
+
+    /**
+     * Gets the limiter of progress updates.
+     * @param refreshAll tells if it's the limiter for the refresh of all infos.
+     * @return the {@link RateLimiter} of progress updates.
+     */
+    private synchronized RateLimiter getProgressLimiter(boolean refreshAll) {
+        if (refreshAll) {
+            if (refreshAllProgressLimiter == null) {
+                refreshAllProgressLimiter = new RateLimiter(MAX_PROGRESS_UPDATES_PER_SECOND);
+            }
+            return refreshAllProgressLimiter;
+        }
+        if (downloadProgressLimiter == null) {
+            downloadProgressLimiter = new RateLimiter(MAX_PROGRESS_UPDATES_PER_SECOND);
+        }
+        return downloadProgressLimiter;
+    }
+
+    /**
+     * Gets the buffer for texts that show the progress. It's used in the user
+     * interface thread only.
+     * @return the empty {@link StringBuffer}.
+     */
+    private StringBuffer getProgressText() {
+        if (progressText == null) {
+            progressText = new StringBuffer(64);
+        }
+        progressText.setLength(0);
+        return progressText;
+    }
+
+    /**
+     * Shows the {@code progress} in {@value #downloadWaitScreen} or in the
+     * {@value #mainList} ticker when it's the {@value #refreshAllTask} progress.
+     * @param source the {@link StatusReporter} that triggered this event.
+     * @param progress the {@code int} with progress of the {@code source}.
+     */
+    private void showProgress(StatusReporter source, int progress) {
+        if (source == refreshAllTask) {
+            showRefreshAllProgress(progress);
+        } else if (!(source instanceof RefreshAllTask)) {
+            showDownloadProgress(source, progress);
+        }
+    }
+
+    /**
+     * Shows the {@code progress} of the download in {@value #downloadWaitScreen},
+     * if it's visible.
+     * @param source the {@link StatusReporter} of the download.
+     * @param progress the {@code int} with progress of the download.
+     */
+    private void showDownloadProgress(StatusReporter source, int progress) {
         if (isDownloadWaitScreenVisible()) {
 //#mdebug
-            log.trace("Setting progress to: " + status.getProgress());
+            log.trace("Setting progress to: " + progress);
 //#enddebug
-            StringBuffer buffer = new StringBuffer("Downloading... ");
-            buffer.append("(").append(status.getProgress()).append("% done)");
+            StringBuffer buffer = getProgressText();
+            buffer.append("Downloading... (").append(progress).append("% done");
+            appendTransferInfo(buffer, source, progress);
+            buffer.append(")");
             downloadWaitScreen.setText(buffer.toString());
         } else {
 //#mdebug
@@ -1475,6 +1789,168 @@ public class ViewController extends MIDlet implements
         }
     }
 
+    /**
+     * Appends the throughput and the time left of the download to the
+     * {@code buffer}. The throughput is the one learned by {@link DownloadTelemetry}.
+     * Until the model result starts to arrive, the time left is predicted from
+     * the recent downloads, later it is based on the {@code progress}.
+     * @param buffer the {@link StringBuffer} to append to.
+     * @param source the {@link StatusReporter} of the download.
+     * @param progress the {@code int} with progress of the download.
+     */
+    private void appendTransferInfo(StringBuffer buffer, StatusReporter source, int progress) {
+        long now = System.currentTimeMillis();
+        if (source != shownDownload) {
+            shownDownload = source;
+            shownDownloadStart = now;
+        }
+        long elapsed = now - shownDownloadStart;
+        DownloadTelemetry telemetry = AbstractConnectorDownloader.getDownloadTelemetry();
+        long remaining = -1L;
+        if (telemetry != null) {
+            long throughput = telemetry.getThroughput();
+            if (throughput > 0L) {
+                buffer.append(", ").append(throughput / 1024L).append('.');
+                buffer.append(throughput * 10L / 1024L % 10L).append(" kB/s");
+            }
+            if (progress < 10 && processedInfo != null) {
+                long startDate = telemetry.estimateDuration(
+                        DownloadTelemetry.START_DATE_KIND, processedInfo.getType());
+                long modelResult = telemetry.estimateDuration(
+                        DownloadTelemetry.MODEL_RESULT_KIND, processedInfo.getType());
+                if (startDate >= 0L && modelResult >= 0L) {
+                    remaining = Math.max(startDate + modelResult - elapsed, 0L);
+                }
+            }
+        }
+        if (remaining < 0L && progress > 0 && progress < 100) {
+            remaining = elapsed * (100 - progress) / progress;
+        }
+        if (remaining >= 0L && progress < 100) {
+            buffer.append(", ~").append((remaining + 999L) / 1000L).append(" s left");
+        }
+    }
+
+    /**
+     * Returns the command that refreshes forecasts of all infos.
+     * @return the {@link Command} instance.
+     */
+    private Command getRefreshAllCommand() {
+        if (refreshAllCommand == null) {
+            refreshAllCommand = new Command("Refresh All", Command.SCREEN, 0);
+        }
+        return refreshAllCommand;
+    }
+
+    /**
+     * Returns the command that flips to the previous run of the forecast.
+     * @return the {@link Command} instance.
+     */
+    private Command getPreviousRunCommand() {
+        if (previousRunCommand == null) {
+            previousRunCommand = new Command("Previous Run", Command.SCREEN, 1);
+        }
+        return previousRunCommand;
+    }
+
+    /**
+     * Shows the run of the forecast of {@value #processedInfo} that is one
+     * older than the one in {@value #displayInfoCanvas}. The current run is
+     * not archived, so the run {@code n} is the archived run {@code n - 1}.
+     * After the oldest archived run the current one is shown again.
+     */
+    private void handlePreviousRunAction() {
+        int runs = broker.getRunCount(processedInfo);
+        int run = getDisplayInfoCanvas().getRun() + 1;
+        ForecastData forecastData = run <= runs ? broker.getRun(processedInfo, run - 1) : null;
+        if (forecastData != null) {
+            getDisplayInfoCanvas().setRun(processedInfo, forecastData, run);
+        } else {
+//#mdebug
+            log.info("No run " + run + " of " + runs + " archived, showing the current one");
+//#enddebug
+            getDisplayInfoCanvas().setInfo(processedInfo);
+        }
+    }
+
+    /**
+     * Refreshes forecasts of all infos in {@value #mainList}. The progress
+     * is shown in the {@value #mainList} ticker. When the refresh is already
+     * running it gets cancelled.
+     */
+    private void handleRefreshAllAction() {
+        if (refreshAllTask != null) {
+//#mdebug
+            log.info("Cancelling refresh of all infos");
+//#enddebug
+            if (!refreshAllTask.cancel()) {
+//#mdebug
+                log.warn("Refresh of all infos is already over");
+//#enddebug
+                refreshAllTask = null;
+                mainList.setTicker(null);
+            }
+            return;
+        }
+        Vector infos = new Vector(infoToMainListIndex.size());
+        Enumeration e = infoToMainListIndex.keys();
+        while (e.hasMoreElements()) {
+            infos.addElement(e.nextElement());
+        }
+        mainList.setTicker(new Ticker("Refreshing... (0% done)"));
+        refreshAllTask = broker.createRefreshAllTask(infos);
+        refreshAllTask.addListener(this);
+        refreshAllTask.start();
+    }
+
+    /**
+     * Shows the progress of refreshing all infos in the {@value #mainList}
+     * ticker. The ticker is removed when the refresh is over.
+     * @param status the {@link Status} reported by {@value #refreshAllTask}.
+     */
+    private void updateRefreshAllProgress(Status status) {
+        if (status == Status.FINISHED || status == Status.CANCELLED) {
+//#mdebug
+            log.info("Refresh of all infos is over: " + refreshAllTask.getFailureMessage());
+//#enddebug
+            refreshAllTask = null;
+            mainList.setTicker(null);
+        } else {
+            showRefreshAllProgress(status.getProgress());
+        }
+    }
+
+    /**
+     * Shows the {@code progress} of refreshing all infos in the {@value #mainList}
+     * ticker.
+     * @param progress the {@code int} with progress of {@value #refreshAllTask}.
+     */
+    private void showRefreshAllProgress(int progress) {
+        Ticker ticker = mainList.getTicker();
+        if (ticker != null) {
+            StringBuffer buffer = getProgressText();
+            buffer.append("Refreshing... (").append(progress).append("% done)");
+            ticker.setString(buffer.toString());
+        }
+    }
+
+    /**
+     * Registers this instance at the download task that has been shown in
+     * {@value #downloadWaitScreen}. When there is no task, since it couldn't
+     * be created, the download error is shown instead.
+     * @param task the {@link ForecastDataDownloader} or {@code null}.
+     */
+    private void registerAtDownloadTask(ForecastDataDownloader task) {
+        if (task != null) {
+            task.addListener(this);
+        } else {
+//#mdebug
+            log.error("No download task for: " + processedInfo);
+//#enddebug
+            isContinueFailure();
+        }
+    }
+
     /**
      * Removes this instance from the download task and optionally cancels the task.
      * @param cancelTask weather the task shall be canceled.
@@ -1492,4 +1968,93 @@ public class ViewController extends MIDlet implements
             }
         }
     }
+
+    /**
+     * This is the event of the broker or a task that is handled in the user
+     * interface thread.
+     */
+    private class ListenerEvent implements Runnable {
+
+        /**
+         * The type of the event.
+         */
+        private final int type;
+        /**
+         * The argument of the event.
+         */
+        private final Object argument;
+        /**
+         * The source of the status.
+         */
+        private final StatusReporter source;
+        /**
+         * The reported status.
+         */
+        private final Status status;
+        /**
+         * The reported progress.
+         */
+        private final int progress;
+
+        /**
+         * Creates the event.
+         * @param type the {@code int} with type of the event.
+         * @param argument the argument of the event.
+         * @param source the {@link StatusReporter} of {@value #STATUS_EVENT}.
+         * @param status the {@link Status} of {@value #STATUS_EVENT}.
+         */
+        public ListenerEvent(int type, Object argument, StatusReporter source, Status status) {
+            this.type = type;
+            this.argument = argument;
+            this.source = source;
+            this.status = status;
+            this.progress = 0;
+        }
+
+        /**
+         * Creates the event of {@value #PROGRESS_EVENT} type.
+         * @param source the {@link StatusReporter} that reports the progress.
+         * @param progress the {@code int} with the reported progress.
+         */
+        public ListenerEvent(StatusReporter source, int progress) {
+            this.type = PROGRESS_EVENT;
+            this.argument = null;
+            this.source = source;
+            this.status = null;
+            this.progress = progress;
+        }
+
+        /**
+         * Handles the event.
+         */
+        public void run() {
+            switch (type) {
+                case READ_BATCH_EVENT:
+                    showMeteorogramInfoBatch((Vector) argument);
+                    break;
+                case READ_EVENT:
+                    showMeteorogramInfos((Vector) argument);
+                    break;
+                case ADDED_EVENT:
+                    showAddedMeteorogramInfo((MeteorogramInfo) argument);
+                    break;
+                case DELETED_EVENT:
+                    showDeletedMeteorogramInfo((MeteorogramInfo) argument);
+                    break;
+                case UPDATED_EVENT:
+                    showUpdatedMeteorogramInfo((MeteorogramInfo) argument);
+                    break;
+                case STATUS_EVENT:
+                    showStatus(source, status);
+                    break;
+                case PROGRESS_EVENT:
+                    showProgress(source, progress);
+                    break;
+                default:
+//#mdebug
+                    log.error("Unknown type of event: " + type);
+//#enddebug
+            }
+        }
+    }
 }
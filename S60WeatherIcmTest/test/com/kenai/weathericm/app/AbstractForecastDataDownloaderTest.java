@@ -23,6 +23,7 @@ import java.util.TimeZone;
 import com.kenai.weathericm.domain.MeteorogramInfo;
 import com.kenai.weathericm.domain.MeteorogramType;
 import com.kenai.weathericm.util.AbstractStatusReporter;
+import com.kenai.weathericm.util.Adler32;
 import com.kenai.weathericm.util.Properties;
 import com.kenai.weathericm.util.PropertiesRepository;
 import com.kenai.weathericm.util.Status;
@@ -31,6 +32,7 @@ import com.kenai.weathericm.util.StatusReporter;
 import java.util.Calendar;
 import java.util.Date;
 import net.sf.microlog.core.config.PropertyConfigurator;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -77,6 +79,9 @@ public class AbstractForecastDataDownloaderTest {
 
     @Before
     public void setUp() {
+        ModelRunResolver.getInstance().clear();
+        Whitebox.setInternalState(LegendCache.class, "instance", (LegendCache) null);
+        Whitebox.setInternalState(DownloadScheduler.class, "instance", (DownloadScheduler) null);
         info = new MeteorogramInfo();
         startDateDownloader = new DummyStartDateDownloader();
         modelResultDownloader = new DummyModelResultDownloader();
@@ -95,6 +100,24 @@ public class AbstractForecastDataDownloaderTest {
         properties.setProperty(AbstractForecastDataDownloader.PARSE_YEAR_KEY, "year.key");
     }
 
+    @After
+    public void tearDown() {
+        Whitebox.setInternalState(LegendCache.class, "instance", (LegendCache) null);
+        Whitebox.setInternalState(DownloadScheduler.class, "instance", (DownloadScheduler) null);
+    }
+
+    @Test
+    public void cancelWithLegendDownloader() {
+        DummyModelResultDownloader legendDownloader = new DummyModelResultDownloader();
+        fixture.setLegendDownloader(legendDownloader);
+        Whitebox.setInternalState(fixture, MY_THREAD, threadMock);
+        threadMock.interrupt();
+        replayAll();
+        assertThat(fixture.cancel(), is(true));
+        assertThat(legendDownloader.cancelled, is(true));
+        verifyAll();
+    }
+
     @Test
     public void cancelSuccess() {
         int progress = 5;
@@ -127,10 +150,13 @@ public class AbstractForecastDataDownloaderTest {
         int progress = 5;
         Whitebox.setInternalState(fixture, MY_THREAD, threadMock);
         Whitebox.setInternalState(fixture, PROGRESS, progress);
+        threadMock.setPriority(Thread.NORM_PRIORITY - 1);
         threadMock.join();
         replayAll();
         fixture.run();
         verifyAll();
+        assertThat(DownloadScheduler.getInstance().isForegroundActive(), is(false));
+        assertThat(DownloadScheduler.getInstance().getLastForegroundTime(), is(not(-1L)));
     }
 
     @Test(expected = NullPointerException.class)
@@ -170,23 +196,52 @@ public class AbstractForecastDataDownloaderTest {
 
     @Test
     public void runStartDateDownloadFailed() {
+        startDateDownloader.status = Status.CANCELLED;
         fixture.addListener(listener);
         fixture.run();
         assertThat(listener.status, equalTo(Status.CANCELLED));
         assertThat(startDateDownloader.getListeners().contains(fixture), is(false));
     }
 
+    @Test(expected = NullPointerException.class)
+    public void runStartDateNotFound() {
+        startDateDownloader.startDate = "no start date here";
+        Whitebox.setInternalState(fixture, DOWNLOADER_STATUS, Status.FINISHED);
+        fixture.run();
+    }
+
     @Test
     public void runModelResultDownloadFailed() {
-        String day = "12";
-        String month = "13";
-        String year = "1999";
-        String hour = "18";
-        startDateDownloader.startDate = prepareDateStringBuffer(year, month, day, hour);
+        startDateDownloader.startDate = prepareUmStartDateData("1999", "12", "12", "18");
+        fixture.setModelResultDownloadChecker(new ForcedModelDownloadChecker());
         fixture.addListener(listener);
         fixture.run();
         assertThat(listener.status, equalTo(Status.CANCELLED));
         assertThat(modelResultDownloader.getListeners().contains(fixture), is(false));
+        assertThat(fixture.getOutcome(), is(DownloadOutcome.IO_ERROR));
+    }
+
+    @Test
+    public void runModelResultDownloadHttpError() {
+        startDateDownloader.startDate = prepareUmStartDateData("1999", "12", "12", "18");
+        startDateDownloader.outcome = DownloadOutcome.SUCCEEDED;
+        modelResultDownloader.status = Status.CANCELLED;
+        modelResultDownloader.outcome = DownloadOutcome.HTTP_ERROR;
+        fixture.setModelResultDownloadChecker(new ForcedModelDownloadChecker());
+        fixture.addListener(listener);
+        fixture.run();
+        assertThat(listener.status, equalTo(Status.CANCELLED));
+        assertThat(fixture.getOutcome(), is(DownloadOutcome.HTTP_ERROR));
+    }
+
+    @Test
+    public void runStartDateDownloadTimedOut() {
+        startDateDownloader.status = Status.CANCELLED;
+        startDateDownloader.outcome = DownloadOutcome.TIMED_OUT;
+        fixture.addListener(listener);
+        fixture.run();
+        assertThat(listener.status, equalTo(Status.CANCELLED));
+        assertThat(fixture.getOutcome(), is(DownloadOutcome.TIMED_OUT));
     }
 
     @Test
@@ -229,6 +284,305 @@ public class AbstractForecastDataDownloaderTest {
         assertThat(info.dataAvailability(), is(not(Availability.NOT_AVAILABLE)));
         assertThat(info.getForecastData().getModelStart(), equalTo(startDate));
         assertThat(info.getForecastData().getModelResult(), equalTo(modelResult));
+        assertThat(fixture.isForecastDataChanged(), is(true));
+        assertThat(fixture.getModelResultUrl(), equalTo(modelResultDownloader.url));
+        assertThat(startDateDownloader.type, is(info.getType()));
+        assertThat(modelResultDownloader.type, is(info.getType()));
+        assertThat(fixture.getOutcome(), is(DownloadOutcome.SUCCEEDED));
+    }
+
+    @Test
+    public void runModelDownloadNewRunStoresValidator() {
+        startDateDownloader.startDate = prepareUmStartDateData("2010", "05", "14", "12");
+        ForecastData current = new ForecastData("2010051400");
+        current.setModelResult(new byte[]{4, 5, 6});
+        info.setId(3);
+        info.setForecastData(current);
+        modelResultDownloader.modelResult = new byte[]{1, 2, 3};
+        modelResultDownloader.status = Status.FINISHED;
+        fixture.setModelResultDownloadChecker(new ForcedModelDownloadChecker());
+        fixture.addListener(listener);
+        Whitebox.setInternalState(fixture, DOWNLOADER_STATUS, Status.FINISHED);
+        fixture.run();
+        assertThat(listener.status, equalTo(Status.FINISHED));
+        assertThat(modelResultDownloader.validatorKey,
+                equalTo(AbstractForecastDataDownloader.MODEL_RESULT_VALIDATOR_PREFIX + 3));
+        assertThat(modelResultDownloader.revalidate, is(false));
+        assertThat(info.getForecastData(), is(not(sameInstance(current))));
+    }
+
+    @Test
+    public void runModelDownloadNotModified() {
+        String startDateData = prepareUmStartDateData("2010", "05", "14", "12");
+        startDateDownloader.startDate = startDateData;
+        ForecastData current = new ForecastData("2010051412");
+        byte[] currentResult = new byte[]{4, 5, 6};
+        current.setModelResult(currentResult);
+        info.setId(3);
+        info.setForecastData(current);
+        modelResultDownloader.notModified = true;
+        modelResultDownloader.status = Status.FINISHED;
+        fixture.setModelResultDownloadChecker(new ForcedModelDownloadChecker());
+        fixture.addListener(listener);
+        Whitebox.setInternalState(fixture, DOWNLOADER_STATUS, Status.FINISHED);
+        fixture.run();
+        assertThat(listener.status, equalTo(Status.FINISHED));
+        assertThat(modelResultDownloader.validatorKey,
+                equalTo(AbstractForecastDataDownloader.MODEL_RESULT_VALIDATOR_PREFIX + 3));
+        assertThat(modelResultDownloader.revalidate, is(true));
+        assertThat(info.getForecastData(), is(sameInstance(current)));
+        assertThat(info.getForecastData().getModelResult(), equalTo(currentResult));
+        assertThat(fixture.isForecastDataChanged(), is(false));
+        assertThat(fixture.isModelResultDuplicate(), is(false));
+    }
+
+    @Test
+    public void runModelDownloadDuplicate() {
+        String startDateData = prepareUmStartDateData("2010", "05", "14", "12");
+        startDateDownloader.startDate = startDateData;
+        ForecastData current = new ForecastData("2010051412");
+        byte[] currentResult = new byte[]{4, 5, 6};
+        current.setModelResult(currentResult);
+        info.setId(3);
+        info.setForecastData(current);
+        modelResultDownloader.modelResult = new byte[]{4, 5, 6};
+        modelResultDownloader.checksum = Adler32.checksum(currentResult, currentResult.length);
+        modelResultDownloader.status = Status.FINISHED;
+        fixture.setModelResultDownloadChecker(new ForcedModelDownloadChecker());
+        fixture.addListener(listener);
+        Whitebox.setInternalState(fixture, DOWNLOADER_STATUS, Status.FINISHED);
+        fixture.run();
+        assertThat(listener.status, equalTo(Status.FINISHED));
+        assertThat(info.getForecastData(), is(sameInstance(current)));
+        assertThat(fixture.isForecastDataChanged(), is(false));
+        assertThat(fixture.isModelResultDuplicate(), is(true));
+        assertThat(fixture.getOutcome(), is(DownloadOutcome.SUCCEEDED));
+    }
+
+    @Test
+    public void runModelDownloadDifferentChecksum() {
+        String startDateData = prepareUmStartDateData("2010", "05", "14", "12");
+        startDateDownloader.startDate = startDateData;
+        ForecastData current = new ForecastData("2010051412");
+        current.setModelResult(new byte[]{4, 5, 6});
+        info.setId(3);
+        info.setForecastData(current);
+        byte[] modelResult = new byte[]{4, 6, 5};
+        modelResultDownloader.modelResult = modelResult;
+        modelResultDownloader.status = Status.FINISHED;
+        fixture.setModelResultDownloadChecker(new ForcedModelDownloadChecker());
+        fixture.addListener(listener);
+        Whitebox.setInternalState(fixture, DOWNLOADER_STATUS, Status.FINISHED);
+        fixture.run();
+        assertThat(listener.status, equalTo(Status.FINISHED));
+        assertThat(info.getForecastData(), is(not(sameInstance(current))));
+        assertThat(info.getForecastData().getModelResult(), equalTo(modelResult));
+        assertThat(info.getForecastData().getChecksum(), equalTo(Adler32.checksum(modelResult, 3)));
+        assertThat(fixture.isForecastDataChanged(), is(true));
+        assertThat(fixture.isModelResultDuplicate(), is(false));
+    }
+
+    @Test
+    public void runLegendRefreshed() {
+        startDateDownloader.startDate = prepareUmStartDateData("2010", "05", "14", "12");
+        modelResultDownloader.modelResult = new byte[]{1, 2, 3};
+        modelResultDownloader.status = Status.FINISHED;
+        DummyModelResultDownloader legendDownloader = new DummyModelResultDownloader();
+        byte[] legend = new byte[]{7, 8, 9};
+        legendDownloader.modelResult = legend;
+        fixture.setLegendDownloader(legendDownloader);
+        fixture.setModelResultDownloadChecker(new ForcedModelDownloadChecker());
+        fixture.addListener(listener);
+        Whitebox.setInternalState(fixture, DOWNLOADER_STATUS, Status.FINISHED);
+        fixture.run();
+        assertThat(listener.status, equalTo(Status.FINISHED));
+        Properties umProperties = PropertiesRepository.getProperties("/UM.properties");
+        assertThat(legendDownloader.url,
+                equalTo(umProperties.getProperty(AbstractForecastDataDownloader.LEGEND_URL_KEY)));
+        assertThat(legendDownloader.validatorKey,
+                equalTo(LegendCache.LEGEND_VALIDATOR_PREFIX + MeteorogramType.UM.getName()));
+        assertThat(legendDownloader.revalidate, is(false));
+        assertThat(legendDownloader.type, is(MeteorogramType.UM));
+        assertThat(LegendCache.getInstance().getLegend(MeteorogramType.UM), equalTo(legend));
+        assertThat(LegendCache.getInstance().isRefreshNeeded(MeteorogramType.UM), is(false));
+    }
+
+    @Test
+    public void runLegendAlreadyRefreshed() {
+        startDateDownloader.startDate = prepareUmStartDateData("2010", "05", "14", "12");
+        modelResultDownloader.modelResult = new byte[]{1, 2, 3};
+        modelResultDownloader.status = Status.FINISHED;
+        DummyModelResultDownloader legendDownloader = new DummyModelResultDownloader();
+        legendDownloader.modelResult = new byte[]{7, 8, 9};
+        LegendCache.getInstance().refresh(MeteorogramType.UM, "http://legend", legendDownloader);
+        legendDownloader.url = null;
+        fixture.setLegendDownloader(legendDownloader);
+        fixture.setModelResultDownloadChecker(new ForcedModelDownloadChecker());
+        fixture.addListener(listener);
+        Whitebox.setInternalState(fixture, DOWNLOADER_STATUS, Status.FINISHED);
+        fixture.run();
+        assertThat(listener.status, equalTo(Status.FINISHED));
+        assertThat(legendDownloader.url, is(nullValue()));
+        assertThat(Whitebox.getInternalState(fixture, "legendDownloader"), is(nullValue()));
+    }
+
+    @Test(timeout = 10000)
+    public void runLegendSlowDoesNotBlock() throws InterruptedException {
+        startDateDownloader.startDate = prepareUmStartDateData("2010", "05", "14", "12");
+        modelResultDownloader.modelResult = new byte[]{1, 2, 3};
+        modelResultDownloader.status = Status.FINISHED;
+        final Object lock = new Object();
+        final boolean[] released = new boolean[]{false};
+        DummyModelResultDownloader legendDownloader = new DummyModelResultDownloader() {
+
+            @Override
+            public byte[] downloadModelResult(String url, String validatorKey,
+                    boolean revalidate) {
+                synchronized (lock) {
+                    while (!released[0]) {
+                        try {
+                            lock.wait();
+                        } catch (InterruptedException ex) {
+                            return null;
+                        }
+                    }
+                }
+                return super.downloadModelResult(url, validatorKey, revalidate);
+            }
+        };
+        byte[] legend = new byte[]{7, 8, 9};
+        legendDownloader.modelResult = legend;
+        fixture.setLegendDownloader(legendDownloader);
+        fixture.setModelResultDownloadChecker(new ForcedModelDownloadChecker());
+        fixture.addListener(listener);
+        Whitebox.setInternalState(fixture, DOWNLOADER_STATUS, Status.FINISHED);
+        fixture.run();
+        assertThat(listener.status, equalTo(Status.FINISHED));
+        assertThat(LegendCache.getInstance().getLegend(MeteorogramType.UM), is(nullValue()));
+        assertThat(Whitebox.getInternalState(fixture, "legendDownloader"),
+                is(sameInstance((Object) legendDownloader)));
+        synchronized (lock) {
+            released[0] = true;
+            lock.notifyAll();
+        }
+        while (Whitebox.getInternalState(fixture, "legendThread") != null) {
+            Thread.sleep(10);
+        }
+        assertThat(LegendCache.getInstance().getLegend(MeteorogramType.UM), equalTo(legend));
+        assertThat(Whitebox.getInternalState(fixture, "legendDownloader"), is(nullValue()));
+    }
+
+    @Test
+    public void runLegendFailedDownloadSucceeds() {
+        startDateDownloader.startDate = prepareUmStartDateData("2010", "05", "14", "12");
+        modelResultDownloader.modelResult = new byte[]{1, 2, 3};
+        modelResultDownloader.status = Status.FINISHED;
+        DummyModelResultDownloader legendDownloader = new DummyModelResultDownloader();
+        fixture.setLegendDownloader(legendDownloader);
+        fixture.setModelResultDownloadChecker(new ForcedModelDownloadChecker());
+        fixture.addListener(listener);
+        Whitebox.setInternalState(fixture, DOWNLOADER_STATUS, Status.FINISHED);
+        fixture.run();
+        assertThat(listener.status, equalTo(Status.FINISHED));
+        assertThat(fixture.getOutcome(), is(DownloadOutcome.SUCCEEDED));
+        assertThat(legendDownloader.url, is(notNullValue()));
+        assertThat(LegendCache.getInstance().getLegend(MeteorogramType.UM), is(nullValue()));
+        assertThat(LegendCache.getInstance().isRefreshNeeded(MeteorogramType.UM), is(true));
+    }
+
+    @Test
+    public void getModelResultValidatorKey() {
+        ForecastData current = new ForecastData("2010051412");
+        current.setModelResult(new byte[]{1});
+        info.setId(8);
+        info.setForecastData(current);
+        String actual = fixture.getModelResultValidatorKey(new ForecastData("2010051412"));
+        assertThat(actual, equalTo(AbstractForecastDataDownloader.MODEL_RESULT_VALIDATOR_PREFIX + 8));
+    }
+
+    @Test
+    public void getModelResultValidatorKeyNotLoaded() {
+        ForecastData current = new ForecastData("2010051412");
+        current.setModelResultHeader(1, 1L);
+        info.setId(8);
+        info.setForecastData(current);
+        String actual = fixture.getModelResultValidatorKey(new ForecastData("2010051412"));
+        assertThat(actual, equalTo(AbstractForecastDataDownloader.MODEL_RESULT_VALIDATOR_PREFIX + 8));
+    }
+
+    @Test
+    public void getModelResultValidatorKeyOtherModelStart() {
+        ForecastData current = new ForecastData("2010051400");
+        current.setModelResult(new byte[]{1});
+        info.setId(8);
+        info.setForecastData(current);
+        String actual = fixture.getModelResultValidatorKey(new ForecastData("2010051412"));
+        assertThat(actual, equalTo(AbstractForecastDataDownloader.MODEL_RESULT_VALIDATOR_PREFIX + 8));
+    }
+
+    @Test
+    public void getModelResultValidatorKeyNoForecastData() {
+        info.setId(8);
+        String actual = fixture.getModelResultValidatorKey(new ForecastData("2010051412"));
+        assertThat(actual, equalTo(AbstractForecastDataDownloader.MODEL_RESULT_VALIDATOR_PREFIX + 8));
+    }
+
+    @Test
+    public void getModelResultValidatorKeyNoId() {
+        ForecastData current = new ForecastData("2010051412");
+        current.setModelResult(new byte[]{1});
+        info.setForecastData(current);
+        String actual = fixture.getModelResultValidatorKey(new ForecastData("2010051412"));
+        assertThat(actual, is(nullValue()));
+    }
+
+    @Test
+    public void isModelResultRevalidated() {
+        ForecastData current = new ForecastData("2010051412");
+        current.setModelResult(new byte[]{1});
+        info.setId(8);
+        info.setForecastData(current);
+        assertThat(fixture.isModelResultRevalidated(new ForecastData("2010051412")), is(true));
+    }
+
+    @Test
+    public void isModelResultRevalidatedNotLoaded() {
+        ForecastData current = new ForecastData("2010051412");
+        current.setModelResultHeader(1, 1L);
+        info.setId(8);
+        info.setForecastData(current);
+        assertThat(fixture.isModelResultRevalidated(new ForecastData("2010051412")), is(true));
+    }
+
+    @Test
+    public void isModelResultRevalidatedOtherModelStart() {
+        ForecastData current = new ForecastData("2010051400");
+        current.setModelResult(new byte[]{1});
+        info.setId(8);
+        info.setForecastData(current);
+        assertThat(fixture.isModelResultRevalidated(new ForecastData("2010051412")), is(false));
+    }
+
+    @Test
+    public void isModelResultRevalidatedNoForecastData() {
+        info.setId(8);
+        assertThat(fixture.isModelResultRevalidated(new ForecastData("2010051412")), is(false));
+    }
+
+    @Test
+    public void isModelResultRevalidatedNoId() {
+        ForecastData current = new ForecastData("2010051412");
+        current.setModelResult(new byte[]{1});
+        info.setForecastData(current);
+        assertThat(fixture.isModelResultRevalidated(new ForecastData("2010051412")), is(false));
+    }
+
+    private String prepareUmStartDateData(String year, String month, String day, String hour) {
+        Properties umProperties = PropertiesRepository.getProperties("/UM.properties");
+        return umProperties.getProperty(AbstractForecastDataDownloader.PARSE_YEAR_KEY) + year
+                + umProperties.getProperty(AbstractForecastDataDownloader.PARSE_MONTH_KEY) + month
+                + umProperties.getProperty(AbstractForecastDataDownloader.PARSE_DAY_KEY) + day
+                + umProperties.getProperty(AbstractForecastDataDownloader.PARSE_HOUR_KEY) + hour;
     }
 
     @Test
@@ -269,6 +623,8 @@ public class AbstractForecastDataDownloaderTest {
         assertThat(startDateDownloader.getListeners().contains(fixture), is(false));
         assertThat(info.getForecastData(), is(nullValue()));
         assertThat(info.getForecastData(), is(nullValue()));
+        assertThat(fixture.isForecastDataChanged(), is(false));
+        assertThat(fixture.getModelResultUrl(), is(nullValue()));
     }
 
     @Test
@@ -291,10 +647,10 @@ public class AbstractForecastDataDownloaderTest {
                 + umProperties.getProperty(AbstractForecastDataDownloader.PARSE_DAY_KEY) + day
                 + umProperties.getProperty(AbstractForecastDataDownloader.PARSE_HOUR_KEY) + hour;
         startDateDownloader.startDate = startDateData;
+        startDateDownloader.status = Status.CANCELLED;
         byte[] modelResult = new byte[]{1, 2, 3,};
         modelResultDownloader.modelResult = modelResult;
         fixture.addListener(listener);
-        Whitebox.setInternalState(fixture, DOWNLOADER_STATUS, Status.CANCELLED);
         fixture.run();
         assertThat(listener.status, equalTo(Status.CANCELLED));
         assertThat(modelResultDownloader.getListeners().contains(fixture), is(false));
@@ -690,18 +1046,53 @@ public class AbstractForecastDataDownloaderTest {
         assertThat(startDateDownloader.getListeners().contains(fixture), is(true));
     }
 
+    @Test(expected = NullPointerException.class)
+    public void progressUpdateNullSource() {
+        fixture.progressUpdate(null, 50);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void progressUpdateUnknownSource() {
+        fixture.progressUpdate(new AbstractStatusReporter() {
+        }, 50);
+    }
+
+    @Test
+    public void progressUpdate() {
+        int start = 1;
+        int size = 8;
+        Whitebox.setInternalState(fixture, CHUNK_START, start);
+        Whitebox.setInternalState(fixture, CHUNK_SIZE, size);
+        fixture.addListener(listener);
+        fixture.progressUpdate(startDateDownloader, 50);
+        assertThat(listener.status.getProgress(), equalTo(start + size / 2));
+    }
+
     private class DummyStartDateDownloader extends AbstractStatusReporter
             implements StartDateDownloader {
 
+        public DownloadOutcome outcome = null;
+        public MeteorogramType type = null;
         public String startDate = null;
         public boolean cancelSuccess = true;
         public boolean cancelled = false;
         public String url = null;
+        public Status status = Status.FINISHED;
+        public int downloads = 0;
 
         @Override
-        public String downloadStartDate(String url) {
+        public String downloadStartDate(String url, StartDateMatcher matcher) {
             this.url = url;
-            return startDate;
+            downloads++;
+            if (startDate != null) {
+                for (int i = 0; i < startDate.length(); i++) {
+                    matcher.feed(startDate.charAt(i));
+                }
+            }
+            if (status != null) {
+                fireStatusUpdate(status);
+            }
+            return matcher.getStartDate();
         }
 
         @Override
@@ -709,24 +1100,63 @@ public class AbstractForecastDataDownloaderTest {
             this.cancelled = true;
             return cancelSuccess;
         }
+
+        @Override
+        public DownloadOutcome getOutcome() {
+            return outcome;
+        }
+
+        @Override
+        public void setMeteorogramType(MeteorogramType type) {
+            this.type = type;
+        }
     }
 
     private class DummyModelResultDownloader extends AbstractStatusReporter
             implements ModelResultDownloader {
 
+        public DownloadOutcome outcome = null;
+        public MeteorogramType type = null;
         public byte[] modelResult = null;
         public boolean cancelSuccess = true;
         public boolean cancelled = false;
         public String url = null;
         public Status status = null;
 
+        public String validatorKey = null;
+        public boolean revalidate = false;
+        public boolean notModified = false;
+        public long checksum = -1L;
+
         @Override
         public byte[] downloadModelResult(String url) {
+            return downloadModelResult(url, null);
+        }
+
+        @Override
+        public byte[] downloadModelResult(String url, String validatorKey) {
+            return downloadModelResult(url, validatorKey, true);
+        }
+
+        @Override
+        public byte[] downloadModelResult(String url, String validatorKey, boolean revalidate) {
             this.url = url;
+            this.validatorKey = validatorKey;
+            this.revalidate = revalidate;
             if (status != null) {
                 fireStatusUpdate(status);
             }
-            return modelResult;
+            return notModified ? null : modelResult;
+        }
+
+        @Override
+        public boolean isNotModified() {
+            return notModified;
+        }
+
+        @Override
+        public long getChecksum() {
+            return checksum;
         }
 
         @Override
@@ -734,6 +1164,16 @@ public class AbstractForecastDataDownloaderTest {
             this.cancelled = true;
             return cancelSuccess;
         }
+
+        @Override
+        public DownloadOutcome getOutcome() {
+            return outcome;
+        }
+
+        @Override
+        public void setMeteorogramType(MeteorogramType type) {
+            this.type = type;
+        }
     }
 
     private class DummyListener implements StatusListener {
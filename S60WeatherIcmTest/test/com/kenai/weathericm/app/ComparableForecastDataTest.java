@@ -32,6 +32,7 @@ import static org.hamcrest.Matchers.*;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.easymock.EasyMock.expect;
 import static org.easymock.EasyMock.aryEq;
+import static org.easymock.EasyMock.eq;
 import static org.powermock.api.easymock.PowerMock.createMock;
 import static org.powermock.api.easymock.PowerMock.replayAll;
 import static org.powermock.api.easymock.PowerMock.verifyAll;
@@ -107,6 +108,37 @@ public class ComparableForecastDataTest {
         verifyAll();
     }
 
+    @Test
+    public void decorateChecksum() {
+        expect(decoratedMock.getModelStart()).andReturn(decoratedModelStart);
+        byte[] data = new byte[]{0, 1, 2};
+        decoratedMock.setModelResult(aryEq(data), eq(5L));
+        expect(decoratedMock.getChecksum()).andReturn(5L);
+        replayAll();
+        fixture = new ComparableForecastData(decoratedMock);
+        fixture.setModelResult(data, 5L);
+        assertThat(fixture.getChecksum(), equalTo(5L));
+        verifyAll();
+    }
+
+    @Test
+    public void decorateModelResultHeader() {
+        expect(decoratedMock.getModelStart()).andReturn(decoratedModelStart);
+        decoratedMock.setModelResultHeader(3, 5L);
+        decoratedMock.unloadModelResult();
+        expect(decoratedMock.hasModelResult()).andReturn(true);
+        expect(decoratedMock.isModelResultLoaded()).andReturn(false);
+        expect(decoratedMock.getModelResultLength()).andReturn(3);
+        replayAll();
+        fixture = new ComparableForecastData(decoratedMock);
+        fixture.setModelResultHeader(3, 5L);
+        fixture.unloadModelResult();
+        assertThat(fixture.hasModelResult(), is(true));
+        assertThat(fixture.isModelResultLoaded(), is(false));
+        assertThat(fixture.getModelResultLength(), equalTo(3));
+        verifyAll();
+    }
+
     @Test
     public void getSetOffset() {
         long defaultOffset = 9 * 3600 * 1000;
@@ -0,0 +1,120 @@
+/*
+ *  Copyright (C) 2010 Przemek Kryger
+ * 
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ * 
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.kenai.weathericm.app;
+
+import com.kenai.weathericm.app.transport.ConnectorTransport;
+import java.util.Vector;
+import net.sf.microlog.core.config.PropertyConfigurator;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.hamcrest.Matchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Tests for {@link ComponentRegistry}.
+ * @author Przemek Kryger
+ */
+public class ComponentRegistryTest {
+
+    private ComponentRegistry fixture;
+
+    @BeforeClass
+    public static void setUpClass() {
+        PropertyConfigurator.configure("/testMicrolog.properties");
+    }
+
+    @Before
+    public void setUp() {
+        fixture = ComponentRegistry.getInstance();
+    }
+
+    @Test
+    public void getInstance() {
+        assertThat(ComponentRegistry.getInstance(), is(sameInstance(fixture)));
+    }
+
+    @Test
+    public void getFactoryNull() {
+        assertThat(fixture.getFactory(null), is(nullValue()));
+    }
+
+    @Test
+    public void getFactoryShipped() {
+        ComponentFactory factory =
+                fixture.getFactory("com.kenai.weathericm.app.ConnectorStartDateDownloader");
+        Object first = factory.create();
+        Object second = factory.create();
+        assertThat(first, is(instanceOf(ConnectorStartDateDownloader.class)));
+        assertThat(second, is(instanceOf(ConnectorStartDateDownloader.class)));
+        assertThat(second, is(not(sameInstance(first))));
+        assertThat(fixture.getFactory("com.kenai.weathericm.app.ConnectorLegendDownloader").create(),
+                is(instanceOf(ConnectorLegendDownloader.class)));
+        assertThat(fixture.getFactory("com.kenai.weathericm.app.transport.ConnectorTransport").create(),
+                is(instanceOf(ConnectorTransport.class)));
+    }
+
+    @Test
+    public void getFactoryResolved() {
+        ComponentFactory factory = fixture.getFactory("java.util.Vector");
+        assertThat(factory, is(notNullValue()));
+        assertThat(fixture.getFactory("java.util.Vector"), is(sameInstance(factory)));
+        assertThat(factory.create(), is(instanceOf(Vector.class)));
+    }
+
+    @Test
+    public void getFactoryNotInstantiable() {
+        ComponentFactory factory = fixture.getFactory("java.lang.Runnable");
+        assertThat(factory, is(notNullValue()));
+        assertThat(factory.create(), is(nullValue()));
+    }
+
+    @Test
+    public void getFactoryUnknown() {
+        assertThat(fixture.getFactory("com.kenai.weathericm.app.Unknown"), is(nullValue()));
+    }
+
+    @Test
+    public void register() {
+        final Object component = new Object();
+        ComponentFactory factory = new ComponentFactory() {
+
+            public Object create() {
+                return component;
+            }
+        };
+        fixture.register("com.kenai.weathericm.app.Registered", factory);
+        assertThat(fixture.getFactory("com.kenai.weathericm.app.Registered"), is(sameInstance(factory)));
+        assertThat(factory.create(), is(sameInstance(component)));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void registerNullImplementation() {
+        fixture.register(null, new ComponentFactory() {
+
+            public Object create() {
+                return null;
+            }
+        });
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void registerNullFactory() {
+        fixture.register("com.kenai.weathericm.app.Registered", null);
+    }
+}
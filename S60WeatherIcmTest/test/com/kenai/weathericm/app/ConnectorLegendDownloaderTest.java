@@ -0,0 +1,47 @@
+/*
+ *  Copyright (C) 2010 Przemek Kryger
+ * 
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ * 
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.kenai.weathericm.app;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.hamcrest.Matchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Tests for {@link ConnectorLegendDownloader}.
+ * @author Przemek Kryger
+ */
+public class ConnectorLegendDownloaderTest {
+
+    private ConnectorLegendDownloader fixture;
+
+    @Before
+    public void setUp() {
+        fixture = new ConnectorLegendDownloader();
+    }
+
+    @Test
+    public void isResumable() {
+        assertThat(fixture.isResumable(), is(false));
+    }
+
+    @Test
+    public void getTelemetryKind() {
+        assertThat(fixture.getTelemetryKind(), equalTo(DownloadTelemetry.LEGEND_KIND));
+    }
+}
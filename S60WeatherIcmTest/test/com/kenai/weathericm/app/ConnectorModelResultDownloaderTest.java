@@ -21,15 +21,30 @@ import org.junit.runner.RunWith;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.core.classloader.annotations.SuppressStaticInitializationFor;
 import org.powermock.modules.junit4.PowerMockRunner;
+import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.Vector;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import javax.microedition.io.Connector;
 import javax.microedition.io.HttpConnection;
+import com.kenai.weathericm.app.helpers.DownloadCheckpointInMemoryDao;
+import com.kenai.weathericm.app.transport.ConnectorTransport;
+import com.kenai.weathericm.app.transport.Transport;
+import com.kenai.weathericm.app.helpers.HttpValidatorInMemoryDao;
+import com.kenai.weathericm.domain.DownloadCheckpoint;
+import com.kenai.weathericm.domain.DownloadSample;
+import com.kenai.weathericm.domain.HttpValidator;
+import com.kenai.weathericm.domain.MeteorogramType;
+import com.kenai.weathericm.util.Adler32;
 import com.kenai.weathericm.util.Status;
 import com.kenai.weathericm.util.StatusListener;
 import com.kenai.weathericm.util.StatusReporter;
 import javax.microedition.io.ConnectionNotFoundException;
 import net.sf.microlog.core.config.PropertyConfigurator;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -37,6 +52,7 @@ import org.powermock.reflect.Whitebox;
 import static org.hamcrest.Matchers.*;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
 import static org.powermock.api.easymock.PowerMock.createMock;
 import static org.powermock.api.easymock.PowerMock.mockStatic;
 import static org.powermock.api.easymock.PowerMock.replayAll;
@@ -66,6 +82,18 @@ public class ConnectorModelResultDownloaderTest {
         listener = new DummyListener();
         connectionMock = createMock(HttpConnection.class);
         mockStatic(Connector.class);
+        AbstractConnectorDownloader.setHttpValidatorDao(null);
+        AbstractConnectorDownloader.setDownloadPolicy(null);
+        AbstractConnectorDownloader.setDownloadTelemetry(null);
+        AbstractConnectorDownloader.setDownloadCheckpointDao(null);
+    }
+
+    @After
+    public void tearDown() {
+        AbstractConnectorDownloader.setHttpValidatorDao(null);
+        AbstractConnectorDownloader.setDownloadPolicy(null);
+        AbstractConnectorDownloader.setDownloadTelemetry(null);
+        AbstractConnectorDownloader.setDownloadCheckpointDao(null);
     }
 
     private void downloadModelResultOpenFailure(Exception failure) throws Exception {
@@ -100,6 +128,7 @@ public class ConnectorModelResultDownloaderTest {
     public void downloadModelResultConnectionExeption() throws Exception {
         String url = "myUrl";
         expect(Connector.open(url)).andReturn(connectionMock);
+        expect(connectionMock.getResponseCode()).andReturn(HttpConnection.HTTP_OK);
         expect(connectionMock.openDataInputStream()).andThrow(new IOException());
         connectionMock.close();
         replayAll();
@@ -109,36 +138,545 @@ public class ConnectorModelResultDownloaderTest {
 
     @Test
     public void downloadModelResultStreamException() throws Exception {
-        DataInputStream disMock = createMock(DataInputStream.class);
+        DataInputStream dis = new DataInputStream(new InputStream() {
+
+            @Override
+            public int read() throws IOException {
+                throw new IOException();
+            }
+        });
         String url = "myUrl";
         expect(Connector.open(url)).andReturn(connectionMock);
-        expect(connectionMock.openDataInputStream()).andReturn(disMock);
+        expect(connectionMock.getResponseCode()).andReturn(HttpConnection.HTTP_OK);
+        expect(connectionMock.openDataInputStream()).andReturn(dis);
         expect(connectionMock.getLength()).andReturn(-1L);
-        expect(disMock.read()).andThrow(new IOException());
-        disMock.close();
         connectionMock.close();
         replayAll();
-        fixture.downloadModelResult(url);
+        fixture.addListener(listener);
+        byte[] actual = fixture.downloadModelResult(url);
+        assertThat(actual, is(nullValue()));
+        assertThat(listener.status, is(Status.CANCELLED));
         verifyAll();
     }
 
     @Test
     public void downloadModelResult() throws Exception {
         byte[] data = {1, 2, 3};
-        DataInputStream disMock = createMock(DataInputStream.class);
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
         String url = "myUrl";
         expect(Connector.open(url)).andReturn(connectionMock);
-        expect(connectionMock.openDataInputStream()).andReturn(disMock);
+        expect(connectionMock.getResponseCode()).andReturn(HttpConnection.HTTP_OK);
+        expect(connectionMock.openDataInputStream()).andReturn(dis);
         expect(connectionMock.getLength()).andReturn(-1L);
+        connectionMock.close();
+        replayAll();
+        fixture.addListener(listener);
+        byte[] actual = fixture.downloadModelResult(url);
+        assertThat(actual, equalTo(data));
+        assertThat(listener.status, is(Status.FINISHED));
+        verifyAll();
+    }
+
+    @Test
+    public void downloadModelResultTransport() throws Exception {
+        byte[] data = {1, 2, 3};
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
+        String url = "myUrl";
+        Transport transportMock = createMock(Transport.class);
+        expect(transportMock.open(url)).andReturn(connectionMock);
+        expect(connectionMock.getResponseCode()).andReturn(HttpConnection.HTTP_OK);
+        expect(connectionMock.openDataInputStream()).andReturn(dis);
+        expect(connectionMock.getLength()).andReturn(-1L);
+        connectionMock.close();
+        replayAll();
+        fixture.setTransport(transportMock);
+        byte[] actual = fixture.downloadModelResult(url);
+        assertThat(actual, equalTo(data));
+        verifyAll();
+    }
+
+    @Test
+    public void getSetTransport() {
+        assertThat(fixture.getTransport(), is(instanceOf(ConnectorTransport.class)));
+        Transport transport = new ConnectorTransport();
+        fixture.setTransport(transport);
+        assertThat(fixture.getTransport(), is(sameInstance(transport)));
+        fixture.setTransport(null);
+        assertThat(fixture.getTransport(), is(instanceOf(ConnectorTransport.class)));
+        assertThat(fixture.getTransport(), is(not(sameInstance(transport))));
+    }
+
+    @Test
+    public void downloadModelResultKnownLength() throws Exception {
+        byte[] data = new byte[3 * AbstractConnectorDownloader.BLOCK_SIZE + 7];
         for (int i = 0; i < data.length; i++) {
-            expect(disMock.read()).andReturn((int)data[i]);
+            data[i] = (byte) i;
         }
-        expect(disMock.read()).andReturn(-1);
-        disMock.close();
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
+        String url = "myUrl";
+        expect(Connector.open(url)).andReturn(connectionMock);
+        expect(connectionMock.getResponseCode()).andReturn(HttpConnection.HTTP_OK);
+        expect(connectionMock.openDataInputStream()).andReturn(dis);
+        expect(connectionMock.getLength()).andReturn((long) data.length);
+        connectionMock.close();
+        replayAll();
+        ProgressListener progressListener = new ProgressListener();
+        fixture.addListener(progressListener);
+        byte[] actual = fixture.downloadModelResult(url);
+        assertThat(actual, equalTo(data));
+        assertThat(progressListener.progressUpdates, equalTo(4));
+        assertThat(progressListener.lastProgress, equalTo(100));
+        verifyAll();
+    }
+
+    @Test
+    public void downloadModelResultUnknownLengthBiggerThanDefault() throws Exception {
+        byte[] data = new byte[50000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * 7);
+        }
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
+        String url = "myUrl";
+        expect(Connector.open(url)).andReturn(connectionMock);
+        expect(connectionMock.getResponseCode()).andReturn(HttpConnection.HTTP_OK);
+        expect(connectionMock.openDataInputStream()).andReturn(dis);
+        expect(connectionMock.getLength()).andReturn(-1L);
+        connectionMock.close();
+        replayAll();
+        byte[] actual = fixture.downloadModelResult(url);
+        assertThat(actual, equalTo(data));
+        verifyAll();
+    }
+
+    @Test
+    public void downloadModelResultChecksum() throws Exception {
+        byte[] data = new byte[50000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * 13);
+        }
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
+        String url = "myUrl";
+        expect(Connector.open(url)).andReturn(connectionMock);
+        expect(connectionMock.getResponseCode()).andReturn(HttpConnection.HTTP_OK);
+        expect(connectionMock.openDataInputStream()).andReturn(dis);
+        expect(connectionMock.getLength()).andReturn(-1L);
+        connectionMock.close();
+        replayAll();
+        assertThat(fixture.getChecksum(), equalTo(-1L));
+        fixture.downloadModelResult(url);
+        assertThat(fixture.getChecksum(), equalTo(Adler32.checksum(data, data.length)));
+        verifyAll();
+    }
+
+    @Test
+    public void downloadModelResultNotModified() throws Exception {
+        String url = "myUrl";
+        String key = "info.1";
+        HttpValidatorInMemoryDao dao = new HttpValidatorInMemoryDao();
+        HttpValidator validator = new HttpValidator(key, url);
+        validator.setETag("\"abc\"");
+        validator.setLastModified("Sat, 15 May 2010 12:00:00 GMT");
+        dao.createOrUpdate(validator);
+        AbstractConnectorDownloader.setHttpValidatorDao(dao);
+        expect(Connector.open(url)).andReturn(connectionMock);
+        connectionMock.setRequestProperty(AbstractConnectorDownloader.IF_NONE_MATCH, validator.getETag());
+        connectionMock.setRequestProperty(AbstractConnectorDownloader.IF_MODIFIED_SINCE, validator.getLastModified());
+        expect(connectionMock.getResponseCode()).andReturn(HttpConnection.HTTP_NOT_MODIFIED);
+        connectionMock.close();
+        replayAll();
+        fixture.addListener(listener);
+        byte[] actual = fixture.downloadModelResult(url, key);
+        assertThat(actual, is(nullValue()));
+        assertThat(fixture.isNotModified(), is(true));
+        assertThat(fixture.getChecksum(), equalTo(-1L));
+        assertThat(listener.status, is(Status.FINISHED));
+        verifyAll();
+    }
+
+    @Test
+    public void downloadModelResultNotRevalidatedStoresValidator() throws Exception {
+        byte[] data = {1, 2, 3};
+        String url = "myUrl";
+        String key = "info.1";
+        String eTag = "\"xyz\"";
+        HttpValidatorInMemoryDao dao = new HttpValidatorInMemoryDao();
+        HttpValidator validator = new HttpValidator(key, url);
+        validator.setETag("\"abc\"");
+        dao.createOrUpdate(validator);
+        AbstractConnectorDownloader.setHttpValidatorDao(dao);
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
+        expect(Connector.open(url)).andReturn(connectionMock);
+        expect(connectionMock.getResponseCode()).andReturn(HttpConnection.HTTP_OK);
+        expect(connectionMock.openDataInputStream()).andReturn(dis);
+        expect(connectionMock.getLength()).andReturn((long) data.length);
+        expect(connectionMock.getHeaderField(AbstractConnectorDownloader.ETAG)).andReturn(eTag);
+        expect(connectionMock.getHeaderField(AbstractConnectorDownloader.LAST_MODIFIED)).andReturn(null);
+        connectionMock.close();
+        replayAll();
+        byte[] actual = fixture.downloadModelResult(url, key, false);
+        assertThat(actual, equalTo(data));
+        assertThat(fixture.isNotModified(), is(false));
+        HttpValidator stored = dao.read(key);
+        assertThat(stored, is(notNullValue()));
+        assertThat(stored.getUrl(), equalTo(url));
+        assertThat(stored.getETag(), equalTo(eTag));
+        verifyAll();
+    }
+
+    @Test
+    public void downloadModelResultOtherUrlValidator() throws Exception {
+        byte[] data = {1, 2, 3};
+        String url = "myUrl";
+        String key = "info.1";
+        HttpValidatorInMemoryDao dao = new HttpValidatorInMemoryDao();
+        HttpValidator validator = new HttpValidator(key, "otherUrl");
+        validator.setETag("\"abc\"");
+        dao.createOrUpdate(validator);
+        AbstractConnectorDownloader.setHttpValidatorDao(dao);
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
+        expect(Connector.open(url)).andReturn(connectionMock);
+        expect(connectionMock.getResponseCode()).andReturn(HttpConnection.HTTP_OK);
+        expect(connectionMock.openDataInputStream()).andReturn(dis);
+        expect(connectionMock.getLength()).andReturn((long) data.length);
+        expect(connectionMock.getHeaderField(AbstractConnectorDownloader.ETAG)).andReturn(null);
+        expect(connectionMock.getHeaderField(AbstractConnectorDownloader.LAST_MODIFIED)).andReturn(null);
+        connectionMock.close();
+        replayAll();
+        byte[] actual = fixture.downloadModelResult(url, key);
+        assertThat(actual, equalTo(data));
+        assertThat(fixture.isNotModified(), is(false));
+        assertThat(dao.read(key), is(nullValue()));
+        verifyAll();
+    }
+
+    @Test
+    public void downloadModelResultStoresValidator() throws Exception {
+        byte[] data = {1, 2, 3};
+        String url = "myUrl";
+        String key = "info.1";
+        String eTag = "\"xyz\"";
+        HttpValidatorInMemoryDao dao = new HttpValidatorInMemoryDao();
+        AbstractConnectorDownloader.setHttpValidatorDao(dao);
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
+        expect(Connector.open(url)).andReturn(connectionMock);
+        expect(connectionMock.getResponseCode()).andReturn(HttpConnection.HTTP_OK);
+        expect(connectionMock.openDataInputStream()).andReturn(dis);
+        expect(connectionMock.getLength()).andReturn((long) data.length);
+        expect(connectionMock.getHeaderField(AbstractConnectorDownloader.ETAG)).andReturn(eTag);
+        expect(connectionMock.getHeaderField(AbstractConnectorDownloader.LAST_MODIFIED)).andReturn(null);
+        connectionMock.close();
+        replayAll();
+        byte[] actual = fixture.downloadModelResult(url, key);
+        assertThat(actual, equalTo(data));
+        HttpValidator stored = dao.read(key);
+        assertThat(stored, is(notNullValue()));
+        assertThat(stored.getUrl(), equalTo(url));
+        assertThat(stored.getETag(), equalTo(eTag));
+        assertThat(stored.getLastModified(), is(nullValue()));
+        verifyAll();
+    }
+
+    @Test
+    public void downloadModelResultStreamExceptionStoresCheckpoint() throws Exception {
+        byte[] data = new byte[AbstractConnectorDownloader.CHECKPOINT_INTERVAL + 100];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * 3);
+        }
+        String url = "myUrl";
+        String eTag = "\"xyz\"";
+        DownloadCheckpointInMemoryDao dao = new DownloadCheckpointInMemoryDao();
+        AbstractConnectorDownloader.setDownloadCheckpointDao(dao);
+        DataInputStream dis = new DataInputStream(new FailingInputStream(data));
+        expect(Connector.open(url)).andReturn(connectionMock);
+        expect(connectionMock.getResponseCode()).andReturn(HttpConnection.HTTP_OK);
+        expect(connectionMock.openDataInputStream()).andReturn(dis);
+        expect(connectionMock.getLength()).andReturn(30000L);
+        expect(connectionMock.getHeaderField(AbstractConnectorDownloader.ETAG)).andReturn(eTag);
+        expect(connectionMock.getHeaderField(AbstractConnectorDownloader.LAST_MODIFIED)).andReturn(null);
+        connectionMock.close();
+        replayAll();
+        fixture.addListener(listener);
+        byte[] actual = fixture.downloadModelResult(url);
+        assertThat(actual, is(nullValue()));
+        assertThat(listener.status, is(Status.CANCELLED));
+        DownloadCheckpoint stored = dao.read(url);
+        assertThat(stored, is(notNullValue()));
+        assertThat(stored.getData(), equalTo(data));
+        assertThat(stored.getETag(), equalTo(eTag));
+        verifyAll();
+    }
+
+    @Test
+    public void downloadModelResultResumed() throws Exception {
+        byte[] data = {4, 5, 6};
+        String url = "myUrl";
+        String eTag = "\"xyz\"";
+        DownloadCheckpointInMemoryDao dao = new DownloadCheckpointInMemoryDao();
+        DownloadCheckpoint checkpoint = new DownloadCheckpoint(url);
+        checkpoint.setData(new byte[]{1, 2, 3});
+        checkpoint.setETag(eTag);
+        dao.createOrUpdate(checkpoint);
+        AbstractConnectorDownloader.setDownloadCheckpointDao(dao);
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
+        expect(Connector.open(url)).andReturn(connectionMock);
+        connectionMock.setRequestProperty(AbstractConnectorDownloader.RANGE, "bytes=3-");
+        connectionMock.setRequestProperty(AbstractConnectorDownloader.IF_RANGE, eTag);
+        expect(connectionMock.getResponseCode()).andReturn(HttpConnection.HTTP_PARTIAL);
+        expect(connectionMock.getHeaderField(AbstractConnectorDownloader.CONTENT_RANGE)).andReturn("bytes 3-5/6");
+        expect(connectionMock.openDataInputStream()).andReturn(dis);
+        expect(connectionMock.getLength()).andReturn((long) data.length);
+        expect(connectionMock.getHeaderField(AbstractConnectorDownloader.ETAG)).andReturn(eTag);
+        expect(connectionMock.getHeaderField(AbstractConnectorDownloader.LAST_MODIFIED)).andReturn(null);
+        connectionMock.close();
+        replayAll();
+        fixture.addListener(listener);
+        byte[] actual = fixture.downloadModelResult(url);
+        assertThat(actual, equalTo(new byte[]{1, 2, 3, 4, 5, 6}));
+        assertThat(fixture.getChecksum(), equalTo(Adler32.checksum(actual, actual.length)));
+        assertThat(listener.status, is(Status.FINISHED));
+        verifyAll();
+    }
+
+    @Test
+    public void downloadModelResultRangeIgnored() throws Exception {
+        byte[] data = {7, 8, 9, 10};
+        String url = "myUrl";
+        DownloadCheckpointInMemoryDao dao = new DownloadCheckpointInMemoryDao();
+        DownloadCheckpoint checkpoint = new DownloadCheckpoint(url);
+        checkpoint.setData(new byte[]{1, 2, 3});
+        dao.createOrUpdate(checkpoint);
+        AbstractConnectorDownloader.setDownloadCheckpointDao(dao);
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
+        expect(Connector.open(url)).andReturn(connectionMock);
+        connectionMock.setRequestProperty(AbstractConnectorDownloader.RANGE, "bytes=3-");
+        expect(connectionMock.getResponseCode()).andReturn(HttpConnection.HTTP_OK);
+        expect(connectionMock.openDataInputStream()).andReturn(dis);
+        expect(connectionMock.getLength()).andReturn((long) data.length);
+        expect(connectionMock.getHeaderField(AbstractConnectorDownloader.ETAG)).andReturn(null);
+        expect(connectionMock.getHeaderField(AbstractConnectorDownloader.LAST_MODIFIED)).andReturn(null);
+        connectionMock.close();
+        replayAll();
+        byte[] actual = fixture.downloadModelResult(url);
+        assertThat(actual, equalTo(data));
+        assertThat(dao.read(url), is(nullValue()));
+        verifyAll();
+    }
+
+    @Test
+    public void downloadModelResultUnexpectedRange() throws Exception {
+        String url = "myUrl";
+        DownloadCheckpointInMemoryDao dao = new DownloadCheckpointInMemoryDao();
+        DownloadCheckpoint checkpoint = new DownloadCheckpoint(url);
+        checkpoint.setData(new byte[]{1, 2, 3});
+        dao.createOrUpdate(checkpoint);
+        AbstractConnectorDownloader.setDownloadCheckpointDao(dao);
+        expect(Connector.open(url)).andReturn(connectionMock);
+        connectionMock.setRequestProperty(AbstractConnectorDownloader.RANGE, "bytes=3-");
+        expect(connectionMock.getResponseCode()).andReturn(HttpConnection.HTTP_PARTIAL);
+        expect(connectionMock.getHeaderField(AbstractConnectorDownloader.CONTENT_RANGE)).andReturn("bytes 0-5/6");
         connectionMock.close();
         replayAll();
+        fixture.addListener(listener);
+        byte[] actual = fixture.downloadModelResult(url);
+        assertThat(actual, is(nullValue()));
+        assertThat(listener.status, is(Status.CANCELLED));
+        assertThat(dao.read(url), is(nullValue()));
+        verifyAll();
+    }
+
+    @Test
+    public void downloadModelResultNotModifiedDropsCheckpoint() throws Exception {
+        String url = "myUrl";
+        String key = "info.1";
+        HttpValidatorInMemoryDao validatorDao = new HttpValidatorInMemoryDao();
+        HttpValidator validator = new HttpValidator(key, url);
+        validator.setETag("\"abc\"");
+        validatorDao.createOrUpdate(validator);
+        AbstractConnectorDownloader.setHttpValidatorDao(validatorDao);
+        DownloadCheckpointInMemoryDao dao = new DownloadCheckpointInMemoryDao();
+        DownloadCheckpoint checkpoint = new DownloadCheckpoint(url);
+        checkpoint.setData(new byte[]{1, 2, 3});
+        checkpoint.setETag("\"abc\"");
+        dao.createOrUpdate(checkpoint);
+        AbstractConnectorDownloader.setDownloadCheckpointDao(dao);
+        expect(Connector.open(url)).andReturn(connectionMock);
+        connectionMock.setRequestProperty(AbstractConnectorDownloader.IF_NONE_MATCH, validator.getETag());
+        connectionMock.setRequestProperty(AbstractConnectorDownloader.RANGE, "bytes=3-");
+        connectionMock.setRequestProperty(AbstractConnectorDownloader.IF_RANGE, checkpoint.getETag());
+        expect(connectionMock.getResponseCode()).andReturn(HttpConnection.HTTP_NOT_MODIFIED);
+        connectionMock.close();
+        replayAll();
+        byte[] actual = fixture.downloadModelResult(url, key);
+        assertThat(actual, is(nullValue()));
+        assertThat(fixture.isNotModified(), is(true));
+        assertThat(dao.read(url), is(nullValue()));
+        verifyAll();
+    }
+
+    @Test
+    public void downloadModelResultServerErrorRetried() throws Exception {
+        AbstractConnectorDownloader.setDownloadPolicy(createPolicy(2));
+        byte[] data = {1, 2, 3};
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
+        String url = "myUrl";
+        expect(Connector.open(url)).andReturn(connectionMock).times(2);
+        expect(connectionMock.getResponseCode()).andReturn(HttpConnection.HTTP_UNAVAILABLE).andReturn(HttpConnection.HTTP_OK);
+        expect(connectionMock.openDataInputStream()).andReturn(dis);
+        expect(connectionMock.getLength()).andReturn((long) data.length);
+        connectionMock.close();
+        expectLastCall().times(2);
+        replayAll();
+        fixture.addListener(listener);
         byte[] actual = fixture.downloadModelResult(url);
         assertThat(actual, equalTo(data));
+        assertThat(listener.status, is(Status.FINISHED));
+        assertThat(fixture.getOutcome(), is(DownloadOutcome.SUCCEEDED));
+        verifyAll();
+    }
+
+    @Test
+    public void downloadModelResultHttpErrorWithoutPolicy() throws Exception {
+        String url = "myUrl";
+        expect(Connector.open(url)).andReturn(connectionMock);
+        expect(connectionMock.getResponseCode()).andReturn(HttpConnection.HTTP_NOT_FOUND);
+        connectionMock.close();
+        replayAll();
+        fixture.addListener(listener);
+        byte[] actual = fixture.downloadModelResult(url);
+        assertThat(actual, is(nullValue()));
+        assertThat(listener.status, is(Status.CANCELLED));
+        assertThat(fixture.getOutcome(), is(DownloadOutcome.HTTP_ERROR));
+        verifyAll();
+    }
+
+    @Test
+    public void downloadModelResultClientErrorNotRetried() throws Exception {
+        AbstractConnectorDownloader.setDownloadPolicy(createPolicy(3));
+        String url = "myUrl";
+        expect(Connector.open(url)).andReturn(connectionMock);
+        expect(connectionMock.getResponseCode()).andReturn(HttpConnection.HTTP_NOT_FOUND);
+        connectionMock.close();
+        replayAll();
+        fixture.addListener(listener);
+        byte[] actual = fixture.downloadModelResult(url);
+        assertThat(actual, is(nullValue()));
+        assertThat(listener.status, is(Status.CANCELLED));
+        assertThat(fixture.getOutcome(), is(DownloadOutcome.HTTP_ERROR));
+        verifyAll();
+    }
+
+    @Test
+    public void downloadModelResultStreamExceptionRetried() throws Exception {
+        AbstractConnectorDownloader.setDownloadPolicy(createPolicy(2));
+        String url = "myUrl";
+        expect(Connector.open(url)).andReturn(connectionMock).times(2);
+        expect(connectionMock.getResponseCode()).andReturn(HttpConnection.HTTP_OK).times(2);
+        expect(connectionMock.openDataInputStream()).andThrow(new IOException()).times(2);
+        connectionMock.close();
+        expectLastCall().times(2);
+        replayAll();
+        fixture.addListener(listener);
+        byte[] actual = fixture.downloadModelResult(url);
+        assertThat(actual, is(nullValue()));
+        assertThat(listener.status, is(Status.CANCELLED));
+        assertThat(fixture.getOutcome(), is(DownloadOutcome.IO_ERROR));
+        verifyAll();
+    }
+
+    @Test
+    public void downloadModelResultFirstByteTimedOut() throws Exception {
+        DownloadPolicy policy = createPolicy(1);
+        policy.setFirstByteTimeout(50L);
+        AbstractConnectorDownloader.setDownloadPolicy(policy);
+        DataInputStream dis = new DataInputStream(new BlockingInputStream());
+        String url = "myUrl";
+        expect(Connector.open(url)).andReturn(connectionMock);
+        expect(connectionMock.getResponseCode()).andReturn(HttpConnection.HTTP_OK);
+        expect(connectionMock.openDataInputStream()).andReturn(dis);
+        expect(connectionMock.getLength()).andReturn(-1L);
+        connectionMock.close();
+        expectLastCall().atLeastOnce();
+        replayAll();
+        fixture.addListener(listener);
+        byte[] actual = fixture.downloadModelResult(url);
+        assertThat(actual, is(nullValue()));
+        assertThat(listener.status, is(Status.CANCELLED));
+        assertThat(fixture.getOutcome(), is(DownloadOutcome.TIMED_OUT));
+        verifyAll();
+    }
+
+    @Test
+    public void downloadModelResultCancelUnblocksRead() throws Exception {
+        AbstractConnectorDownloader.setDownloadPolicy(createPolicy(3));
+        BlockingInputStream blocking = new BlockingInputStream();
+        DataInputStream dis = new DataInputStream(blocking);
+        final String url = "myUrl";
+        expect(Connector.open(url)).andReturn(connectionMock);
+        expect(connectionMock.getResponseCode()).andReturn(HttpConnection.HTTP_OK);
+        expect(connectionMock.openDataInputStream()).andReturn(dis);
+        expect(connectionMock.getLength()).andReturn(-1L);
+        connectionMock.close();
+        expectLastCall().atLeastOnce();
+        replayAll();
+        fixture.addListener(listener);
+        Thread downloader = new Thread() {
+
+            @Override
+            public void run() {
+                fixture.downloadModelResult(url);
+            }
+        };
+        downloader.start();
+        assertThat(blocking.reading.await(1, TimeUnit.SECONDS), is(true));
+        fixture.cancel();
+        downloader.join(1000);
+        assertThat(downloader.isAlive(), is(false));
+        assertThat(listener.status, is(Status.CANCELLED));
+        assertThat(fixture.getOutcome(), is(DownloadOutcome.CANCELLED));
+        verifyAll();
+    }
+
+    @Test
+    public void downloadModelResultRecorded() throws Exception {
+        DownloadTelemetry telemetry = Whitebox.invokeConstructor(DownloadTelemetry.class);
+        AbstractConnectorDownloader.setDownloadTelemetry(telemetry);
+        byte[] data = {1, 2, 3, 4};
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
+        String url = "myUrl";
+        expect(Connector.open(url)).andReturn(connectionMock);
+        expect(connectionMock.getResponseCode()).andReturn(HttpConnection.HTTP_OK);
+        expect(connectionMock.openDataInputStream()).andReturn(dis);
+        expect(connectionMock.getLength()).andReturn(-1L);
+        connectionMock.close();
+        replayAll();
+        fixture.setMeteorogramType(MeteorogramType.COAMPS);
+        byte[] actual = fixture.downloadModelResult(url);
+        assertThat(actual, equalTo(data));
+        Vector samples = telemetry.getRecentSamples();
+        assertThat(samples.size(), is(1));
+        DownloadSample sample = (DownloadSample) samples.firstElement();
+        assertThat(sample.getKind(), equalTo(DownloadTelemetry.MODEL_RESULT_KIND));
+        assertThat(sample.getType(), is(MeteorogramType.COAMPS));
+        assertThat(sample.getLength(), is(data.length));
+        assertThat(sample.getTransferred(), is(data.length));
+        assertThat(sample.getDuration(), is(greaterThanOrEqualTo(sample.getTimeToFirstByte())));
+        assertThat(telemetry.estimateLength(DownloadTelemetry.MODEL_RESULT_KIND,
+                MeteorogramType.COAMPS, 0), is(data.length));
+        verifyAll();
+    }
+
+    @Test
+    public void downloadModelResultFailedNotRecorded() throws Exception {
+        DownloadTelemetry telemetry = Whitebox.invokeConstructor(DownloadTelemetry.class);
+        AbstractConnectorDownloader.setDownloadTelemetry(telemetry);
+        String url = "myUrl";
+        expect(Connector.open(url)).andReturn(connectionMock);
+        expect(connectionMock.getResponseCode()).andReturn(HttpConnection.HTTP_OK);
+        expect(connectionMock.openDataInputStream()).andThrow(new IOException());
+        connectionMock.close();
+        replayAll();
+        assertThat(fixture.downloadModelResult(url), is(nullValue()));
+        assertThat(telemetry.getRecentSamples().isEmpty(), is(true));
         verifyAll();
     }
 
@@ -150,6 +688,11 @@ public class ConnectorModelResultDownloaderTest {
         assertThat(cancelled, is(Boolean.TRUE));
     }
 
+    @Test
+    public void getTelemetryKind() {
+        assertThat(fixture.getTelemetryKind(), equalTo(DownloadTelemetry.MODEL_RESULT_KIND));
+    }
+
     @Test
     public void reportProgress() {
         int progress = 23;
@@ -171,4 +714,76 @@ public class ConnectorModelResultDownloaderTest {
             this.status = status;
         }
     }
+
+    private static class FailingInputStream extends InputStream {
+
+        private final ByteArrayInputStream data;
+
+        public FailingInputStream(byte[] data) {
+            this.data = new ByteArrayInputStream(data);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int retValue = data.read();
+            if (retValue == -1) {
+                throw new IOException();
+            }
+            return retValue;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int retValue = data.read(b, off, len);
+            if (retValue == -1) {
+                throw new IOException();
+            }
+            return retValue;
+        }
+    }
+
+    private class ProgressListener implements StatusListener {
+
+        public int progressUpdates = 0;
+        public int lastProgress = -1;
+
+        @Override
+        public void statusUpdate(StatusReporter source, Status status) {
+            if (status != Status.STARTED && status != Status.FINISHED
+                    && status != Status.CANCELLED) {
+                progressUpdates++;
+                lastProgress = status.getProgress();
+            }
+        }
+    }
+
+    private static DownloadPolicy createPolicy(int maxAttempts) {
+        DownloadPolicy policy = new DownloadPolicy();
+        policy.setMaxAttempts(maxAttempts);
+        policy.setInitialBackoff(1L);
+        policy.setMaxBackoff(1L);
+        return policy;
+    }
+
+    private static class BlockingInputStream extends InputStream {
+
+        public final CountDownLatch reading = new CountDownLatch(1);
+        private final CountDownLatch closed = new CountDownLatch(1);
+
+        @Override
+        public int read() throws IOException {
+            reading.countDown();
+            try {
+                closed.await(2, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                throw new IOException();
+            }
+            throw new IOException("Stream closed");
+        }
+
+        @Override
+        public void close() {
+            closed.countDown();
+        }
+    }
 }
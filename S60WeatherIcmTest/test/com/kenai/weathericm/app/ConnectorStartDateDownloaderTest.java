@@ -17,15 +17,21 @@
  */
 package com.kenai.weathericm.app;
 
+import com.kenai.weathericm.app.helpers.HttpValidatorInMemoryDao;
+import com.kenai.weathericm.domain.HttpValidator;
+import com.kenai.weathericm.util.Properties;
 import com.kenai.weathericm.util.Status;
 import com.kenai.weathericm.util.StatusListener;
 import com.kenai.weathericm.util.StatusReporter;
+import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import javax.microedition.io.ConnectionNotFoundException;
 import javax.microedition.io.Connector;
 import javax.microedition.io.HttpConnection;
 import net.sf.microlog.core.config.PropertyConfigurator;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -37,6 +43,7 @@ import org.powermock.reflect.Whitebox;
 import static org.hamcrest.Matchers.*;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
 import static org.powermock.api.easymock.PowerMock.createMock;
 import static org.powermock.api.easymock.PowerMock.mockStatic;
 import static org.powermock.api.easymock.PowerMock.replayAll;
@@ -59,7 +66,10 @@ public class ConnectorStartDateDownloaderTest {
     private ConnectorStartDateDownloader fixture;
     private DummyListener listener;
     private HttpConnection connectionMock;
+    private StartDateMatcher matcher;
     private final static String CANCELLED = "cancelled";
+    private final static String START_DATA = "var SYYYY=\"2010\";var SMM=\"05\";"
+            + "var SDD=\"14\";var SST=\"12\";";
 
     @Before
     public void setUp() {
@@ -67,13 +77,27 @@ public class ConnectorStartDateDownloaderTest {
         listener = new DummyListener();
         connectionMock = createMock(HttpConnection.class);
         mockStatic(Connector.class);
+        Properties properties = new Properties();
+        properties.setProperty(AbstractForecastDataDownloader.PARSE_YEAR_KEY, "var SYYYY=\"");
+        properties.setProperty(AbstractForecastDataDownloader.PARSE_MONTH_KEY, "var SMM=\"");
+        properties.setProperty(AbstractForecastDataDownloader.PARSE_DAY_KEY, "var SDD=\"");
+        properties.setProperty(AbstractForecastDataDownloader.PARSE_HOUR_KEY, "var SST=\"");
+        matcher = new StartDateScanner(properties).createMatcher();
+        AbstractConnectorDownloader.setHttpValidatorDao(null);
+        AbstractConnectorDownloader.setDownloadPolicy(null);
+    }
+
+    @After
+    public void tearDown() {
+        AbstractConnectorDownloader.setHttpValidatorDao(null);
+        AbstractConnectorDownloader.setDownloadPolicy(null);
     }
 
     private void downloadStartDateOpenFailure(Exception failure) throws Exception {
         String url = "myUrl";
         expect(Connector.open(url)).andThrow(failure);
         replayAll();
-        fixture.downloadStartDate(url);
+        fixture.downloadStartDate(url, matcher);
         verifyAll();
     }
 
@@ -101,49 +125,201 @@ public class ConnectorStartDateDownloaderTest {
     public void downloadStartDateConnectionExeption() throws Exception {
         String url = "myUrl";
         expect(Connector.open(url)).andReturn(connectionMock);
+        expect(connectionMock.getResponseCode()).andReturn(HttpConnection.HTTP_OK);
         expect(connectionMock.openDataInputStream()).andThrow(new IOException());
         connectionMock.close();
         replayAll();
-        fixture.downloadStartDate(url);
+        fixture.downloadStartDate(url, matcher);
         verifyAll();
     }
 
     @Test
     public void downloadStartDateStreamException() throws Exception {
-        DataInputStream disMock = createMock(DataInputStream.class);
+        DataInputStream dis = new DataInputStream(new InputStream() {
+
+            @Override
+            public int read() throws IOException {
+                throw new IOException();
+            }
+        });
         String url = "myUrl";
         expect(Connector.open(url)).andReturn(connectionMock);
-        expect(connectionMock.openDataInputStream()).andReturn(disMock);
+        expect(connectionMock.getResponseCode()).andReturn(HttpConnection.HTTP_OK);
+        expect(connectionMock.openDataInputStream()).andReturn(dis);
         expect(connectionMock.getLength()).andReturn(-1L);
-        expect(disMock.read()).andThrow(new IOException());
-        disMock.close();
         connectionMock.close();
         replayAll();
-        fixture.downloadStartDate(url);
+        fixture.addListener(listener);
+        String actual = fixture.downloadStartDate(url, matcher);
+        assertThat(actual, is(nullValue()));
+        assertThat(listener.status, is(Status.CANCELLED));
         verifyAll();
     }
 
     @Test
     public void downloadStartDate() throws Exception {
-        String data = "abcd";
-        DataInputStream disMock = createMock(DataInputStream.class);
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(START_DATA.getBytes()));
         String url = "myUrl";
         expect(Connector.open(url)).andReturn(connectionMock);
-        expect(connectionMock.openDataInputStream()).andReturn(disMock);
+        expect(connectionMock.getResponseCode()).andReturn(HttpConnection.HTTP_OK);
+        expect(connectionMock.openDataInputStream()).andReturn(dis);
         expect(connectionMock.getLength()).andReturn(-1L);
-        for (int i = 0; i < data.length(); i++) {
-            int ch = data.charAt(i);
-            expect(disMock.read()).andReturn(ch);
+        connectionMock.close();
+        replayAll();
+        fixture.addListener(listener);
+        String actual = fixture.downloadStartDate(url, matcher);
+        assertThat(actual, equalTo("2010051412"));
+        assertThat(listener.status, is(Status.FINISHED));
+        verifyAll();
+    }
+
+    @Test
+    public void downloadStartDateStopsEarly() throws Exception {
+        StringBuffer data = new StringBuffer(START_DATA);
+        for (int i = 0; i < 3 * AbstractConnectorDownloader.BLOCK_SIZE; i++) {
+            data.append('x');
         }
-        expect(disMock.read()).andReturn(-1);
-        disMock.close();
+        ByteArrayInputStream bais = new ByteArrayInputStream(data.toString().getBytes());
+        DataInputStream dis = new DataInputStream(bais);
+        String url = "myUrl";
+        expect(Connector.open(url)).andReturn(connectionMock);
+        expect(connectionMock.getResponseCode()).andReturn(HttpConnection.HTTP_OK);
+        expect(connectionMock.openDataInputStream()).andReturn(dis);
+        expect(connectionMock.getLength()).andReturn((long) data.length());
+        connectionMock.close();
+        replayAll();
+        String actual = fixture.downloadStartDate(url, matcher);
+        assertThat(actual, equalTo("2010051412"));
+        assertThat(bais.available(), equalTo(data.length() - AbstractConnectorDownloader.BLOCK_SIZE));
+        verifyAll();
+    }
+
+    @Test
+    public void downloadStartDateNotFound() throws Exception {
+        String data = "abcd";
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data.getBytes()));
+        String url = "myUrl";
+        expect(Connector.open(url)).andReturn(connectionMock);
+        expect(connectionMock.getResponseCode()).andReturn(HttpConnection.HTTP_OK);
+        expect(connectionMock.openDataInputStream()).andReturn(dis);
+        expect(connectionMock.getLength()).andReturn((long) data.length());
         connectionMock.close();
         replayAll();
-        String actual = fixture.downloadStartDate(url);
-        assertThat(actual, equalTo(data));
+        fixture.addListener(listener);
+        String actual = fixture.downloadStartDate(url, matcher);
+        assertThat(actual, is(nullValue()));
+        assertThat(listener.status, is(Status.FINISHED));
         verifyAll();
     }
 
+    @Test
+    public void downloadStartDateNotModified() throws Exception {
+        String url = "myUrl";
+        String startDate = "2010051412";
+        HttpValidatorInMemoryDao dao = new HttpValidatorInMemoryDao();
+        HttpValidator validator = new HttpValidator(url, url);
+        validator.setLastModified("Sat, 15 May 2010 12:00:00 GMT");
+        validator.setValue(startDate);
+        dao.createOrUpdate(validator);
+        AbstractConnectorDownloader.setHttpValidatorDao(dao);
+        expect(Connector.open(url)).andReturn(connectionMock);
+        connectionMock.setRequestProperty(AbstractConnectorDownloader.IF_MODIFIED_SINCE, validator.getLastModified());
+        expect(connectionMock.getResponseCode()).andReturn(HttpConnection.HTTP_NOT_MODIFIED);
+        connectionMock.close();
+        replayAll();
+        fixture.addListener(listener);
+        String actual = fixture.downloadStartDate(url, matcher);
+        assertThat(actual, equalTo(startDate));
+        assertThat(listener.status, is(Status.FINISHED));
+        verifyAll();
+    }
+
+    @Test
+    public void downloadStartDateRetryAfterFailureInField() throws Exception {
+        DownloadPolicy policy = new DownloadPolicy();
+        policy.setMaxAttempts(2);
+        policy.setInitialBackoff(1L);
+        policy.setMaxBackoff(1L);
+        AbstractConnectorDownloader.setDownloadPolicy(policy);
+        final byte[] partial = "var SYYYY=\"20".getBytes();
+        DataInputStream failing = new DataInputStream(new InputStream() {
+
+            private int position = 0;
+
+            @Override
+            public int read() throws IOException {
+                if (position == partial.length) {
+                    throw new IOException();
+                }
+                return partial[position++];
+            }
+        });
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(START_DATA.getBytes()));
+        String url = "myUrl";
+        expect(Connector.open(url)).andReturn(connectionMock).times(2);
+        expect(connectionMock.getResponseCode()).andReturn(HttpConnection.HTTP_OK).times(2);
+        expect(connectionMock.openDataInputStream()).andReturn(failing).andReturn(dis);
+        expect(connectionMock.getLength()).andReturn(-1L).times(2);
+        connectionMock.close();
+        expectLastCall().times(2);
+        replayAll();
+        fixture.addListener(listener);
+        String actual = fixture.downloadStartDate(url, matcher);
+        assertThat(actual, equalTo("2010051412"));
+        assertThat(listener.status, is(Status.FINISHED));
+        verifyAll();
+    }
+
+    @Test
+    public void downloadStartDateStoresValidator() throws Exception {
+        String url = "myUrl";
+        String eTag = "\"xyz\"";
+        HttpValidatorInMemoryDao dao = new HttpValidatorInMemoryDao();
+        AbstractConnectorDownloader.setHttpValidatorDao(dao);
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(START_DATA.getBytes()));
+        expect(Connector.open(url)).andReturn(connectionMock);
+        expect(connectionMock.getResponseCode()).andReturn(HttpConnection.HTTP_OK);
+        expect(connectionMock.openDataInputStream()).andReturn(dis);
+        expect(connectionMock.getLength()).andReturn(-1L);
+        expect(connectionMock.getHeaderField(AbstractConnectorDownloader.ETAG)).andReturn(eTag);
+        expect(connectionMock.getHeaderField(AbstractConnectorDownloader.LAST_MODIFIED)).andReturn(null);
+        connectionMock.close();
+        replayAll();
+        String actual = fixture.downloadStartDate(url, matcher);
+        assertThat(actual, equalTo("2010051412"));
+        HttpValidator stored = dao.read(url);
+        assertThat(stored, is(notNullValue()));
+        assertThat(stored.getETag(), equalTo(eTag));
+        assertThat(stored.getValue(), equalTo(actual));
+        verifyAll();
+    }
+
+    @Test
+    public void downloadStartDateNotFoundDoesNotStoreValidator() throws Exception {
+        String url = "myUrl";
+        String data = "abcd";
+        HttpValidatorInMemoryDao dao = new HttpValidatorInMemoryDao();
+        AbstractConnectorDownloader.setHttpValidatorDao(dao);
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data.getBytes()));
+        expect(Connector.open(url)).andReturn(connectionMock);
+        expect(connectionMock.getResponseCode()).andReturn(HttpConnection.HTTP_OK);
+        expect(connectionMock.openDataInputStream()).andReturn(dis);
+        expect(connectionMock.getLength()).andReturn(-1L);
+        expect(connectionMock.getHeaderField(AbstractConnectorDownloader.ETAG)).andReturn("\"xyz\"");
+        expect(connectionMock.getHeaderField(AbstractConnectorDownloader.LAST_MODIFIED)).andReturn(null);
+        connectionMock.close();
+        replayAll();
+        String actual = fixture.downloadStartDate(url, matcher);
+        assertThat(actual, is(nullValue()));
+        assertThat(dao.read(url), is(nullValue()));
+        verifyAll();
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void downloadStartDateNullMatcher() {
+        fixture.downloadStartDate("myUrl", null);
+    }
+
     @Test
     public void cancel() {
         boolean result = fixture.cancel();
@@ -152,6 +328,11 @@ public class ConnectorStartDateDownloaderTest {
         assertThat(cancelled, is(Boolean.TRUE));
     }
 
+    @Test
+    public void getTelemetryKind() {
+        assertThat(fixture.getTelemetryKind(), equalTo(DownloadTelemetry.START_DATE_KIND));
+    }
+
     @Test
     public void reportProgress() {
         int progress = 23;
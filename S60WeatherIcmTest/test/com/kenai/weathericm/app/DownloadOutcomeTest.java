@@ -0,0 +1,52 @@
+/*
+ *  Copyright (C) 2010 Przemek Kryger
+ * 
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ * 
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.kenai.weathericm.app;
+
+import org.junit.Test;
+import static org.hamcrest.Matchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Tests for {@link DownloadOutcome} class.
+ * @author Przemek Kryger
+ */
+public class DownloadOutcomeTest {
+
+    private final static DownloadOutcome[] ALL = {DownloadOutcome.SUCCEEDED,
+        DownloadOutcome.TIMED_OUT, DownloadOutcome.HTTP_ERROR,
+        DownloadOutcome.IO_ERROR, DownloadOutcome.CANCELLED};
+
+    @Test
+    public void unique() {
+        for (int i = 0; i < ALL.length; i++) {
+            for (int j = i + 1; j < ALL.length; j++) {
+                assertThat(ALL[i], is(not(ALL[j])));
+                assertThat(ALL[i].getValue(), is(not(ALL[j].getValue())));
+            }
+        }
+    }
+
+    @Test
+    public void displayString() {
+        assertThat(DownloadOutcome.SUCCEEDED.toString(), equalTo("Succeeded [" + DownloadOutcome.SUCCEEDED_VALUE + "]"));
+        assertThat(DownloadOutcome.TIMED_OUT.toString(), equalTo("Timed out [" + DownloadOutcome.TIMED_OUT_VALUE + "]"));
+        assertThat(DownloadOutcome.HTTP_ERROR.toString(), equalTo("HTTP error [" + DownloadOutcome.HTTP_ERROR_VALUE + "]"));
+        assertThat(DownloadOutcome.IO_ERROR.toString(), equalTo("I/O error [" + DownloadOutcome.IO_ERROR_VALUE + "]"));
+        assertThat(DownloadOutcome.CANCELLED.toString(), equalTo("Cancelled [" + DownloadOutcome.CANCELLED_VALUE + "]"));
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ *  Copyright (C) 2010 Przemek Kryger
+ * 
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ * 
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.kenai.weathericm.app;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.hamcrest.Matchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Tests for {@link DownloadPolicy} class.
+ * @author Przemek Kryger
+ */
+public class DownloadPolicyTest {
+
+    private DownloadPolicy fixture;
+
+    @Before
+    public void setUp() {
+        fixture = new DownloadPolicy();
+    }
+
+    @Test
+    public void defaults() {
+        assertThat(fixture.getConnectTimeout(), is(DownloadPolicy.DEFAULT_CONNECT_TIMEOUT));
+        assertThat(fixture.getFirstByteTimeout(), is(DownloadPolicy.DEFAULT_FIRST_BYTE_TIMEOUT));
+        assertThat(fixture.getTotalTimeout(), is(DownloadPolicy.DEFAULT_TOTAL_TIMEOUT));
+        assertThat(fixture.getMaxAttempts(), is(DownloadPolicy.DEFAULT_MAX_ATTEMPTS));
+        assertThat(fixture.getInitialBackoff(), is(DownloadPolicy.DEFAULT_INITIAL_BACKOFF));
+        assertThat(fixture.getMaxBackoff(), is(DownloadPolicy.DEFAULT_MAX_BACKOFF));
+    }
+
+    @Test
+    public void getSet() {
+        fixture.setConnectTimeout(1L);
+        fixture.setFirstByteTimeout(2L);
+        fixture.setTotalTimeout(3L);
+        fixture.setMaxAttempts(4);
+        fixture.setInitialBackoff(5L);
+        fixture.setMaxBackoff(6L);
+        assertThat(fixture.getConnectTimeout(), is(1L));
+        assertThat(fixture.getFirstByteTimeout(), is(2L));
+        assertThat(fixture.getTotalTimeout(), is(3L));
+        assertThat(fixture.getMaxAttempts(), is(4));
+        assertThat(fixture.getInitialBackoff(), is(5L));
+        assertThat(fixture.getMaxBackoff(), is(6L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setMaxAttemptsZero() {
+        fixture.setMaxAttempts(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void getBackoffNoFailure() {
+        fixture.getBackoff(0);
+    }
+
+    @Test
+    public void getBackoffGrows() {
+        fixture.setInitialBackoff(100L);
+        fixture.setMaxBackoff(1000L);
+        for (int i = 0; i < 50; i++) {
+            assertThat(fixture.getBackoff(1), allOf(greaterThanOrEqualTo(50L), lessThanOrEqualTo(100L)));
+            assertThat(fixture.getBackoff(2), allOf(greaterThanOrEqualTo(100L), lessThanOrEqualTo(200L)));
+            assertThat(fixture.getBackoff(3), allOf(greaterThanOrEqualTo(200L), lessThanOrEqualTo(400L)));
+        }
+    }
+
+    @Test
+    public void getBackoffCapped() {
+        fixture.setInitialBackoff(100L);
+        fixture.setMaxBackoff(300L);
+        for (int i = 0; i < 50; i++) {
+            assertThat(fixture.getBackoff(10), allOf(greaterThanOrEqualTo(150L), lessThanOrEqualTo(300L)));
+        }
+        assertThat(fixture.getBackoff(Integer.MAX_VALUE), lessThanOrEqualTo(300L));
+    }
+}
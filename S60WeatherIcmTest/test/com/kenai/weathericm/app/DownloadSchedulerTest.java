@@ -0,0 +1,193 @@
+/*
+ *  Copyright (C) 2010 Przemek Kryger
+ * 
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ * 
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.kenai.weathericm.app;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import net.sf.microlog.core.config.PropertyConfigurator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.powermock.reflect.Whitebox;
+import static org.hamcrest.Matchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Tests for {@link DownloadScheduler} class.
+ * @author Przemek Kryger
+ */
+public class DownloadSchedulerTest {
+
+    private DownloadScheduler fixture;
+
+    @BeforeClass
+    public static void setUpClass() {
+        PropertyConfigurator.configure("/testMicrolog.properties");
+    }
+
+    @Before
+    public void setUp() {
+        Whitebox.setInternalState(DownloadScheduler.class, "instance", (DownloadScheduler) null);
+        fixture = DownloadScheduler.getInstance();
+    }
+
+    @After
+    public void tearDown() {
+        Whitebox.setInternalState(DownloadScheduler.class, "instance", (DownloadScheduler) null);
+    }
+
+    @Test
+    public void getInstance() {
+        assertThat(DownloadScheduler.getInstance(), is(sameInstance(fixture)));
+    }
+
+    @Test
+    public void enterBackground() {
+        assertThat(fixture.isBackground(), is(false));
+        fixture.enterBackground();
+        assertThat(fixture.isBackground(), is(true));
+        fixture.leaveBackground();
+        assertThat(fixture.isBackground(), is(false));
+    }
+
+    @Test
+    public void promote() {
+        fixture.enterBackground();
+        fixture.promote(Thread.currentThread());
+        assertThat(fixture.isBackground(), is(false));
+        fixture.enterBackground();
+        assertThat(fixture.isBackground(), is(true));
+        fixture.leaveBackground();
+    }
+
+    @Test
+    public void promoteNotBackground() {
+        fixture.promote(Thread.currentThread());
+        fixture.enterBackground();
+        assertThat(fixture.isBackground(), is(true));
+        fixture.leaveBackground();
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void promoteNull() {
+        fixture.promote(null);
+    }
+
+    @Test
+    public void foreground() {
+        assertThat(fixture.getLastForegroundTime(), equalTo(-1L));
+        long started = fixture.beginForeground();
+        assertThat(fixture.isForegroundActive(), is(true));
+        fixture.endForeground(started);
+        assertThat(fixture.isForegroundActive(), is(false));
+        assertThat(fixture.getLastForegroundTime(), is(greaterThanOrEqualTo(0L)));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void endForegroundNone() {
+        fixture.endForeground(System.currentTimeMillis());
+    }
+
+    @Test
+    public void awaitForegroundNoForeground() throws InterruptedException {
+        fixture.enterBackground();
+        long start = System.currentTimeMillis();
+        fixture.awaitForeground();
+        fixture.throttle();
+        assertThat(System.currentTimeMillis() - start, is(lessThan(DownloadScheduler.THROTTLE_DELAY)));
+        fixture.leaveBackground();
+    }
+
+    @Test
+    public void awaitForegroundForeground() throws InterruptedException {
+        fixture.beginForeground();
+        long start = System.currentTimeMillis();
+        fixture.awaitForeground();
+        fixture.throttle();
+        assertThat(System.currentTimeMillis() - start, is(lessThan(DownloadScheduler.THROTTLE_DELAY)));
+    }
+
+    @Test
+    public void awaitForegroundEnds() throws InterruptedException {
+        BackgroundDownload download = new BackgroundDownload();
+        long started = fixture.beginForeground();
+        download.start();
+        assertThat(download.paused.await(1, TimeUnit.SECONDS), is(true));
+        assertThat(download.resumed.await(100, TimeUnit.MILLISECONDS), is(false));
+        fixture.endForeground(started);
+        assertThat(download.resumed.await(1, TimeUnit.SECONDS), is(true));
+    }
+
+    @Test
+    public void awaitForegroundPromoted() throws InterruptedException {
+        BackgroundDownload download = new BackgroundDownload();
+        long started = fixture.beginForeground();
+        download.start();
+        assertThat(download.paused.await(1, TimeUnit.SECONDS), is(true));
+        assertThat(download.resumed.await(100, TimeUnit.MILLISECONDS), is(false));
+        fixture.promote(download);
+        assertThat(download.resumed.await(1, TimeUnit.SECONDS), is(true));
+        fixture.endForeground(started);
+    }
+
+    @Test
+    public void awaitForegroundInterrupted() throws InterruptedException {
+        BackgroundDownload download = new BackgroundDownload();
+        long started = fixture.beginForeground();
+        download.start();
+        assertThat(download.paused.await(1, TimeUnit.SECONDS), is(true));
+        download.interrupt();
+        assertThat(download.resumed.await(1, TimeUnit.SECONDS), is(true));
+        assertThat(download.interrupted, is(true));
+        fixture.endForeground(started);
+    }
+
+    @Test
+    public void throttle() throws InterruptedException {
+        long started = fixture.beginForeground();
+        fixture.enterBackground();
+        long start = System.currentTimeMillis();
+        fixture.throttle();
+        assertThat(System.currentTimeMillis() - start,
+                is(greaterThanOrEqualTo(DownloadScheduler.THROTTLE_DELAY - 10L)));
+        fixture.leaveBackground();
+        fixture.endForeground(started);
+    }
+
+    private class BackgroundDownload extends Thread {
+
+        public final CountDownLatch paused = new CountDownLatch(1);
+        public final CountDownLatch resumed = new CountDownLatch(1);
+        public volatile boolean interrupted = false;
+
+        @Override
+        public void run() {
+            fixture.enterBackground();
+            try {
+                paused.countDown();
+                fixture.awaitForeground();
+            } catch (InterruptedException ex) {
+                interrupted = true;
+            } finally {
+                fixture.leaveBackground();
+                resumed.countDown();
+            }
+        }
+    }
+}
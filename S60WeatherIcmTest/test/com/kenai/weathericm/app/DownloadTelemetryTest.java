@@ -0,0 +1,162 @@
+/*
+ *  Copyright (C) 2010 Przemek Kryger
+ * 
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ * 
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.kenai.weathericm.app;
+
+import com.kenai.weathericm.domain.DownloadSample;
+import com.kenai.weathericm.domain.MeteorogramType;
+import com.kenai.weathericm.repository.DownloadTelemetryDao;
+import java.util.Vector;
+import net.sf.microlog.core.config.PropertyConfigurator;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.powermock.reflect.Whitebox;
+import static org.hamcrest.Matchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Tests for {@link DownloadTelemetry}.
+ * @author Przemek Kryger
+ */
+public class DownloadTelemetryTest {
+
+    private DownloadTelemetry fixture;
+    private DummyDao dao;
+
+    @BeforeClass
+    public static void setUpClass() {
+        PropertyConfigurator.configure("/testMicrolog.properties");
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        fixture = Whitebox.invokeConstructor(DownloadTelemetry.class);
+        dao = new DummyDao();
+    }
+
+    private DownloadSample createSample(String kind, MeteorogramType type, int length,
+            long timeToFirstByte, long duration) {
+        DownloadSample sample = new DownloadSample(kind, type);
+        sample.setLength(length);
+        sample.setTransferred(length);
+        sample.setTimeToFirstByte(timeToFirstByte);
+        sample.setDuration(duration);
+        return sample;
+    }
+
+    @Test
+    public void getInstance() {
+        assertThat(DownloadTelemetry.getInstance(), is(notNullValue()));
+        assertThat(DownloadTelemetry.getInstance(), is(sameInstance(DownloadTelemetry.getInstance())));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void recordNull() {
+        fixture.record(null);
+    }
+
+    @Test
+    public void nothingKnown() {
+        assertThat(fixture.estimateLength(DownloadTelemetry.MODEL_RESULT_KIND, MeteorogramType.UM, 100), is(100));
+        assertThat(fixture.estimateDuration(DownloadTelemetry.MODEL_RESULT_KIND, MeteorogramType.UM), is(-1L));
+        assertThat(fixture.getThroughput(), is(-1L));
+        assertThat(fixture.getRecentSamples().isEmpty(), is(true));
+    }
+
+    @Test
+    public void estimateLength() {
+        fixture.record(createSample(DownloadTelemetry.MODEL_RESULT_KIND, MeteorogramType.UM, 19000, 0L, 1000L));
+        fixture.record(createSample(DownloadTelemetry.MODEL_RESULT_KIND, MeteorogramType.UM, 21000, 0L, 1000L));
+        fixture.record(createSample(DownloadTelemetry.MODEL_RESULT_KIND, MeteorogramType.COAMPS, 24000, 0L, 1000L));
+        fixture.record(createSample(DownloadTelemetry.START_DATE_KIND, MeteorogramType.UM, 1200, 0L, 1000L));
+        assertThat(fixture.estimateLength(DownloadTelemetry.MODEL_RESULT_KIND, MeteorogramType.UM, 100), is(20000));
+        assertThat(fixture.estimateLength(DownloadTelemetry.MODEL_RESULT_KIND, MeteorogramType.COAMPS, 100), is(24000));
+        assertThat(fixture.estimateLength(DownloadTelemetry.START_DATE_KIND, MeteorogramType.UM, 100), is(1200));
+        assertThat(fixture.estimateLength(DownloadTelemetry.START_DATE_KIND, MeteorogramType.COAMPS, 100), is(100));
+    }
+
+    @Test
+    public void estimateLengthRecentOnly() {
+        fixture.record(createSample(DownloadTelemetry.MODEL_RESULT_KIND, MeteorogramType.UM, 1000, 0L, 1000L));
+        for (int i = 0; i < DownloadTelemetry.WINDOW; i++) {
+            fixture.record(createSample(DownloadTelemetry.MODEL_RESULT_KIND, MeteorogramType.UM, 2000, 0L, 1000L));
+        }
+        assertThat(fixture.estimateLength(DownloadTelemetry.MODEL_RESULT_KIND, MeteorogramType.UM, 100), is(2000));
+    }
+
+    @Test
+    public void estimateDuration() {
+        fixture.record(createSample(DownloadTelemetry.START_DATE_KIND, MeteorogramType.UM, 1200, 100L, 300L));
+        fixture.record(createSample(DownloadTelemetry.START_DATE_KIND, MeteorogramType.UM, 1200, 100L, 500L));
+        assertThat(fixture.estimateDuration(DownloadTelemetry.START_DATE_KIND, MeteorogramType.UM), is(400L));
+        assertThat(fixture.estimateDuration(DownloadTelemetry.MODEL_RESULT_KIND, MeteorogramType.UM), is(-1L));
+    }
+
+    @Test
+    public void getThroughput() {
+        fixture.record(createSample(DownloadTelemetry.MODEL_RESULT_KIND, MeteorogramType.UM, 20000, 1000L, 3000L));
+        fixture.record(createSample(DownloadTelemetry.START_DATE_KIND, MeteorogramType.UM, 4000, 500L, 500L));
+        fixture.record(createSample(DownloadTelemetry.START_DATE_KIND, MeteorogramType.UM, 4000, 500L, 1500L));
+        assertThat(fixture.getThroughput(), is(8000L));
+    }
+
+    @Test
+    public void recordCapacity() {
+        for (int i = 0; i < DownloadTelemetry.CAPACITY + 3; i++) {
+            fixture.record(createSample(DownloadTelemetry.MODEL_RESULT_KIND, MeteorogramType.UM, i + 1, 0L, 1L));
+        }
+        Vector samples = fixture.getRecentSamples();
+        assertThat(samples.size(), is(DownloadTelemetry.CAPACITY));
+        assertThat(((DownloadSample) samples.firstElement()).getLength(), is(4));
+        assertThat(((DownloadSample) samples.lastElement()).getLength(), is(DownloadTelemetry.CAPACITY + 3));
+    }
+
+    @Test
+    public void recordPersisted() {
+        DownloadSample stored = createSample(DownloadTelemetry.MODEL_RESULT_KIND, MeteorogramType.UM, 20000, 0L, 1000L);
+        dao.samples.addElement(stored);
+        fixture.setDownloadTelemetryDao(dao);
+        assertThat(fixture.getDownloadTelemetryDao(), is((DownloadTelemetryDao) dao));
+        assertThat(fixture.estimateLength(DownloadTelemetry.MODEL_RESULT_KIND, MeteorogramType.UM, 100), is(20000));
+        assertThat(dao.reads, is(1));
+        DownloadSample sample = createSample(DownloadTelemetry.MODEL_RESULT_KIND, MeteorogramType.UM, 22000, 0L, 1000L);
+        fixture.record(sample);
+        assertThat(dao.reads, is(1));
+        assertThat(dao.updated.size(), is(2));
+        assertThat(dao.updated.lastElement(), is((Object) sample));
+    }
+
+    private class DummyDao implements DownloadTelemetryDao {
+
+        public Vector samples = new Vector();
+        public Vector updated = null;
+        public int reads = 0;
+
+        @Override
+        public Vector readAll() {
+            reads++;
+            return samples;
+        }
+
+        @Override
+        public boolean updateAll(Vector samples) {
+            updated = new Vector(samples);
+            return true;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ *  Copyright (C) 2010 Przemek Kryger
+ * 
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ * 
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.kenai.weathericm.app;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import static org.hamcrest.Matchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Tests for {@link DownloadWatchdog} class.
+ * @author Przemek Kryger
+ */
+public class DownloadWatchdogTest {
+
+    @Test
+    public void getInstance() {
+        assertThat(DownloadWatchdog.getInstance(), is(notNullValue()));
+        assertThat(DownloadWatchdog.getInstance(), is(sameInstance(DownloadWatchdog.getInstance())));
+    }
+
+    @Test
+    public void phaseExpires() throws InterruptedException {
+        ClosingInputStream stream = new ClosingInputStream();
+        DownloadWatchdog.Watch watch = DownloadWatchdog.getInstance().watch(0L);
+        watch.setStream(stream);
+        watch.startPhase("phase", 20L);
+        assertThat(stream.closed.await(1, TimeUnit.SECONDS), is(true));
+        assertThat(watch.isExpired(), is(true));
+        assertThat(watch.getExpiredPhase(), equalTo("phase"));
+        DownloadWatchdog.getInstance().unwatch(watch);
+    }
+
+    @Test
+    public void totalExpires() throws InterruptedException {
+        ClosingInputStream stream = new ClosingInputStream();
+        DownloadWatchdog.Watch watch = DownloadWatchdog.getInstance().watch(20L);
+        watch.startPhase("phase", 10000L);
+        watch.setStream(stream);
+        assertThat(stream.closed.await(1, TimeUnit.SECONDS), is(true));
+        assertThat(watch.isExpired(), is(true));
+        DownloadWatchdog.getInstance().unwatch(watch);
+    }
+
+    @Test
+    public void noDeadline() throws InterruptedException {
+        ClosingInputStream stream = new ClosingInputStream();
+        DownloadWatchdog.Watch watch = DownloadWatchdog.getInstance().watch(0L);
+        watch.setStream(stream);
+        assertThat(stream.closed.await(100, TimeUnit.MILLISECONDS), is(false));
+        assertThat(watch.isExpired(), is(false));
+        assertThat(watch.getExpiredPhase(), is(nullValue()));
+        DownloadWatchdog.getInstance().unwatch(watch);
+    }
+
+    @Test
+    public void abort() {
+        ClosingInputStream stream = new ClosingInputStream();
+        DownloadWatchdog.Watch watch = DownloadWatchdog.getInstance().watch(0L);
+        watch.setStream(stream);
+        watch.abort();
+        assertThat(stream.closed.getCount(), is(0L));
+        assertThat(watch.isExpired(), is(false));
+        DownloadWatchdog.getInstance().unwatch(watch);
+    }
+
+    @Test
+    public void setStreamAfterAbort() {
+        ClosingInputStream stream = new ClosingInputStream();
+        DownloadWatchdog.Watch watch = DownloadWatchdog.getInstance().watch(0L);
+        watch.abort();
+        watch.setStream(stream);
+        assertThat(stream.closed.getCount(), is(0L));
+        DownloadWatchdog.getInstance().unwatch(watch);
+    }
+
+    private static class ClosingInputStream extends InputStream {
+
+        public final CountDownLatch closed = new CountDownLatch(1);
+
+        @Override
+        public int read() throws IOException {
+            return -1;
+        }
+
+        @Override
+        public void close() {
+            closed.countDown();
+        }
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ *  Copyright (C) 2010 Przemek Kryger
+ * 
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ * 
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.kenai.weathericm.app;
+
+import com.kenai.weathericm.domain.MeteorogramType;
+import com.kenai.weathericm.util.Status;
+import com.kenai.weathericm.util.StatusListener;
+import com.kenai.weathericm.util.StatusReporter;
+import net.sf.microlog.core.config.PropertyConfigurator;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.powermock.reflect.Whitebox;
+import static org.hamcrest.Matchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Tests for {@link DownloaderPool}.
+ * @author Przemek Kryger
+ */
+public class DownloaderPoolTest {
+
+    private DownloaderPool fixture;
+    private int created;
+
+    @BeforeClass
+    public static void setUpClass() {
+        PropertyConfigurator.configure("/testMicrolog.properties");
+    }
+
+    @Before
+    public void setUp() {
+        created = 0;
+        fixture = new DownloaderPool(new ComponentFactory() {
+
+            public Object create() {
+                created++;
+                return new ConnectorModelResultDownloader();
+            }
+        });
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void createNullFactory() {
+        new DownloaderPool(null);
+    }
+
+    @Test
+    public void acquireNew() {
+        Object first = fixture.acquire();
+        Object second = fixture.acquire();
+        assertThat(first, is(instanceOf(ConnectorModelResultDownloader.class)));
+        assertThat(second, is(not(sameInstance(first))));
+        assertThat(created, equalTo(2));
+        assertThat(fixture.getIdleCount(), equalTo(0));
+    }
+
+    @Test
+    public void acquireRecycled() {
+        ConnectorModelResultDownloader downloader =
+                (ConnectorModelResultDownloader) fixture.acquire();
+        downloader.recycle();
+        assertThat(fixture.getIdleCount(), equalTo(1));
+        assertThat(fixture.acquire(), is(sameInstance((Object) downloader)));
+        assertThat(created, equalTo(1));
+        assertThat(fixture.getIdleCount(), equalTo(0));
+    }
+
+    @Test
+    public void recycleResetsState() {
+        ConnectorModelResultDownloader downloader =
+                (ConnectorModelResultDownloader) fixture.acquire();
+        downloader.addListener(new DummyListener());
+        downloader.setMeteorogramType(MeteorogramType.UM);
+        downloader.cancel();
+        Whitebox.setInternalState(downloader, "outcome", DownloadOutcome.CANCELLED);
+        Whitebox.setInternalState(downloader, "checksum", 12L);
+        Whitebox.setInternalState(downloader, "modelResult", new byte[]{1});
+        downloader.recycle();
+        assertThat(downloader.getListeners().size(), equalTo(0));
+        assertThat((Boolean) Whitebox.getInternalState(downloader, "cancelled"), is(false));
+        assertThat(Whitebox.getInternalState(downloader, "meteorogramType"), is(nullValue()));
+        assertThat(Whitebox.getInternalState(downloader, "modelResult"), is(nullValue()));
+        assertThat(downloader.getOutcome(), is(nullValue()));
+        assertThat(downloader.getChecksum(), equalTo(-1L));
+    }
+
+    @Test
+    public void recycleKeepsTransport() {
+        ConnectorModelResultDownloader downloader =
+                (ConnectorModelResultDownloader) fixture.acquire();
+        Object transport = downloader.getTransport();
+        downloader.recycle();
+        assertThat(downloader.getTransport(), is(sameInstance(transport)));
+    }
+
+    @Test
+    public void recycleTwice() {
+        ConnectorModelResultDownloader downloader =
+                (ConnectorModelResultDownloader) fixture.acquire();
+        downloader.recycle();
+        downloader.recycle();
+        assertThat(fixture.getIdleCount(), equalTo(1));
+    }
+
+    @Test
+    public void recycleNotPooled() {
+        ConnectorModelResultDownloader downloader = new ConnectorModelResultDownloader();
+        downloader.recycle();
+        assertThat(fixture.getIdleCount(), equalTo(0));
+    }
+
+    @Test
+    public void releaseNull() {
+        fixture.release(null);
+        assertThat(fixture.getIdleCount(), equalTo(0));
+    }
+
+    @Test
+    public void releaseFull() {
+        AbstractConnectorDownloader[] downloaders =
+                new AbstractConnectorDownloader[DownloaderPool.MAX_IDLE + 1];
+        for (int i = 0; i < downloaders.length; i++) {
+            downloaders[i] = (AbstractConnectorDownloader) fixture.acquire();
+        }
+        for (int i = 0; i < downloaders.length; i++) {
+            downloaders[i].recycle();
+        }
+        assertThat(fixture.getIdleCount(), equalTo(DownloaderPool.MAX_IDLE));
+    }
+
+    @Test
+    public void acquireNotConnectorDownloader() {
+        DownloaderPool pool = new DownloaderPool(new ComponentFactory() {
+
+            public Object create() {
+                return new ForcedModelDownloadChecker();
+            }
+        });
+        assertThat(pool.acquire(), is(instanceOf(ForcedModelDownloadChecker.class)));
+        assertThat(pool.getIdleCount(), equalTo(0));
+    }
+
+    @Test
+    public void clear() {
+        ((AbstractConnectorDownloader) fixture.acquire()).recycle();
+        fixture.clear();
+        assertThat(fixture.getIdleCount(), equalTo(0));
+    }
+
+    private class DummyListener implements StatusListener {
+
+        public void statusUpdate(StatusReporter source, Status status) {
+        }
+    }
+}
@@ -18,10 +18,13 @@
 package com.kenai.weathericm.app;
 
 import com.kenai.weathericm.util.Status;
+import java.util.HashSet;
+import java.util.Set;
 import net.sf.microlog.core.config.PropertyConfigurator;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
+import org.powermock.reflect.Whitebox;
 import static org.hamcrest.Matchers.*;
 import static org.hamcrest.MatcherAssert.assertThat;
 
@@ -35,6 +38,7 @@ public class ForecastDataDownloaderCancellableTaskTest {
     public static void setUpClass() {
         PropertyConfigurator.configure("/testMicrolog.properties");
     }
+    private final static String OUTCOME = "outcome";
     private ForecastDataDownloaderCancellableTask fixture;
 
     @Before
@@ -61,4 +65,25 @@ public class ForecastDataDownloaderCancellableTaskTest {
         boolean actual = fixture.hasFailed();
         assertThat(actual, is(false));
     }
+
+    @Test
+    public void getFailureMessageNotFailed() {
+        assertThat(fixture.getFailureMessage(), is(nullValue()));
+        Whitebox.setInternalState(fixture, OUTCOME, DownloadOutcome.SUCCEEDED);
+        assertThat(fixture.getFailureMessage(), is(nullValue()));
+    }
+
+    @Test
+    public void getFailureMessageFailed() {
+        DownloadOutcome[] outcomes = {DownloadOutcome.TIMED_OUT, DownloadOutcome.HTTP_ERROR,
+            DownloadOutcome.IO_ERROR, DownloadOutcome.CANCELLED};
+        Set<String> messages = new HashSet<String>();
+        for (DownloadOutcome outcome : outcomes) {
+            Whitebox.setInternalState(fixture, OUTCOME, outcome);
+            String message = fixture.getFailureMessage();
+            assertThat(message, is(notNullValue()));
+            messages.add(message);
+        }
+        assertThat(messages.size(), equalTo(outcomes.length));
+    }
 }
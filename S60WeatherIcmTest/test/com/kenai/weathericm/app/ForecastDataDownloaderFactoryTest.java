@@ -17,6 +17,7 @@
  */
 package com.kenai.weathericm.app;
 
+import com.kenai.weathericm.app.transport.ConnectorTransport;
 import net.sf.microlog.core.config.PropertyConfigurator;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -49,6 +50,10 @@ public class ForecastDataDownloaderFactoryTest {
                 Whitebox.getInternalState(downloader, "modelDownloadChecker");
         assertThat(modelDownloadChecker, is(notNullValue()));
         assertThat(modelDownloadChecker, is(instanceOf(ForcedModelDownloadChecker.class)));
+        assertThat(((AbstractConnectorDownloader) startDateDownloader).getTransport(),
+                is(instanceOf(ConnectorTransport.class)));
+        assertThat(((AbstractConnectorDownloader) modelResultDownloader).getTransport(),
+                is(sameInstance(((AbstractConnectorDownloader) startDateDownloader).getTransport())));
     }
 
     @Test
@@ -65,5 +70,39 @@ public class ForecastDataDownloaderFactoryTest {
                 Whitebox.getInternalState(downloader, "modelDownloadChecker");
         assertThat(modelDownloadChecker, is(notNullValue()));
         assertThat(modelDownloadChecker, is(instanceOf(SmartModelDownloadChecker.class)));
+        ModelResultDownloader legendDownloader =
+                Whitebox.getInternalState(downloader, "legendDownloader");
+        assertThat(legendDownloader, is(instanceOf(ConnectorLegendDownloader.class)));
+        assertThat(legendDownloader, is(not(sameInstance(modelResultDownloader))));
+        assertThat(((AbstractConnectorDownloader) legendDownloader).getTransport(),
+                is(sameInstance(((AbstractConnectorDownloader) modelResultDownloader).getTransport())));
+    }
+
+    @Test
+    public void getDownloaderReusesRecycled() {
+        ForecastDataDownloader first = ForecastDataDownloaderFactory.getCheckedDownloader();
+        AbstractConnectorDownloader startDateDownloader =
+                Whitebox.getInternalState(first, "startDateDownloader");
+        AbstractConnectorDownloader modelResultDownloader =
+                Whitebox.getInternalState(first, "modelResultDownloader");
+        startDateDownloader.recycle();
+        modelResultDownloader.recycle();
+        ForecastDataDownloader second = ForecastDataDownloaderFactory.getForcedDownloader();
+        assertThat(second, is(not(sameInstance(first))));
+        assertThat(Whitebox.getInternalState(second, "startDateDownloader"),
+                is(sameInstance((Object) startDateDownloader)));
+        assertThat(Whitebox.getInternalState(second, "modelResultDownloader"),
+                is(sameInstance((Object) modelResultDownloader)));
+        assertThat(startDateDownloader.getTransport(), is(instanceOf(ConnectorTransport.class)));
+    }
+
+    @Test
+    public void getDownloaderSharesCheckers() {
+        ForecastDataDownloader first = ForecastDataDownloaderFactory.getForcedDownloader();
+        ForecastDataDownloader second = ForecastDataDownloaderFactory.getForcedDownloader();
+        assertThat(Whitebox.getInternalState(second, "modelDownloadChecker"),
+                is(sameInstance(Whitebox.getInternalState(first, "modelDownloadChecker"))));
+        assertThat(Whitebox.getInternalState(second, "startDateDownloader"),
+                is(not(sameInstance(Whitebox.getInternalState(first, "startDateDownloader")))));
     }
 }
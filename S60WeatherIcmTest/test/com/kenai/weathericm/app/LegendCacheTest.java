@@ -0,0 +1,241 @@
+/*
+ *  Copyright (C) 2010 Przemek Kryger
+ * 
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ * 
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.kenai.weathericm.app;
+
+import com.kenai.weathericm.domain.MeteorogramType;
+import com.kenai.weathericm.repository.LegendDao;
+import com.kenai.weathericm.util.AbstractStatusReporter;
+import java.util.Hashtable;
+import net.sf.microlog.core.config.PropertyConfigurator;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.powermock.reflect.Whitebox;
+import static org.hamcrest.Matchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Tests for {@link LegendCache}.
+ * @author Przemek Kryger
+ */
+public class LegendCacheTest {
+
+    private final static String URL = "http://new.meteo.pl/um/metco/leg_um_pl.png";
+    private LegendCache fixture;
+    private DummyDao dao;
+    private DummyDownloader downloader;
+
+    @BeforeClass
+    public static void setUpClass() {
+        PropertyConfigurator.configure("/testMicrolog.properties");
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        fixture = Whitebox.invokeConstructor(LegendCache.class);
+        dao = new DummyDao();
+        downloader = new DummyDownloader();
+    }
+
+    @Test
+    public void getInstance() {
+        assertThat(LegendCache.getInstance(), is(notNullValue()));
+        assertThat(LegendCache.getInstance(), is(sameInstance(LegendCache.getInstance())));
+    }
+
+    @Test
+    public void getSetLegendDao() {
+        assertThat(fixture.getLegendDao(), is(nullValue()));
+        fixture.setLegendDao(dao);
+        assertThat(fixture.getLegendDao(), is(sameInstance((LegendDao) dao)));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void getLegendNullType() {
+        fixture.getLegend(null);
+    }
+
+    @Test
+    public void getLegendNone() {
+        assertThat(fixture.getLegend(MeteorogramType.UM), is(nullValue()));
+        fixture.setLegendDao(dao);
+        assertThat(fixture.getLegend(MeteorogramType.UM), is(nullValue()));
+    }
+
+    @Test
+    public void getLegendReadOnce() {
+        byte[] legend = {1, 2, 3};
+        dao.legends.put(MeteorogramType.UM, legend);
+        fixture.setLegendDao(dao);
+        assertThat(fixture.getLegend(MeteorogramType.UM), is(sameInstance(legend)));
+        assertThat(fixture.getLegend(MeteorogramType.UM), is(sameInstance(legend)));
+        assertThat(dao.reads, is(1));
+        assertThat(fixture.getLegend(MeteorogramType.COAMPS), is(nullValue()));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void refreshNullUrl() {
+        fixture.refresh(MeteorogramType.UM, null, downloader);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void refreshNullDownloader() {
+        fixture.refresh(MeteorogramType.UM, URL, null);
+    }
+
+    @Test
+    public void refreshDownloaded() {
+        byte[] legend = {4, 5, 6};
+        downloader.result = legend;
+        fixture.setLegendDao(dao);
+        assertThat(fixture.isRefreshNeeded(MeteorogramType.UM), is(true));
+        assertThat(fixture.refresh(MeteorogramType.UM, URL, downloader), is(true));
+        assertThat(downloader.url, equalTo(URL));
+        assertThat(downloader.validatorKey,
+                equalTo(LegendCache.LEGEND_VALIDATOR_PREFIX + MeteorogramType.UM.getName()));
+        assertThat(downloader.revalidate, is(false));
+        assertThat(downloader.type, is(MeteorogramType.UM));
+        assertThat(fixture.getLegend(MeteorogramType.UM), is(sameInstance(legend)));
+        assertThat((byte[]) dao.legends.get(MeteorogramType.UM), is(sameInstance(legend)));
+        assertThat(fixture.isRefreshNeeded(MeteorogramType.UM), is(false));
+        assertThat(fixture.isRefreshNeeded(MeteorogramType.COAMPS), is(true));
+    }
+
+    @Test
+    public void refreshDownloadedWithoutDao() {
+        byte[] legend = {4, 5, 6};
+        downloader.result = legend;
+        assertThat(fixture.refresh(MeteorogramType.COAMPS, URL, downloader), is(true));
+        assertThat(fixture.getLegend(MeteorogramType.COAMPS), is(sameInstance(legend)));
+    }
+
+    @Test
+    public void refreshRevalidated() {
+        byte[] legend = {1, 2, 3};
+        dao.legends.put(MeteorogramType.UM, legend);
+        fixture.setLegendDao(dao);
+        downloader.notModified = true;
+        assertThat(fixture.refresh(MeteorogramType.UM, URL, downloader), is(true));
+        assertThat(downloader.validatorKey,
+                equalTo(LegendCache.LEGEND_VALIDATOR_PREFIX + MeteorogramType.UM.getName()));
+        assertThat(downloader.revalidate, is(true));
+        assertThat(fixture.getLegend(MeteorogramType.UM), is(sameInstance(legend)));
+        assertThat(dao.updates, is(0));
+        assertThat(fixture.isRefreshNeeded(MeteorogramType.UM), is(false));
+    }
+
+    @Test
+    public void refreshChanged() {
+        dao.legends.put(MeteorogramType.UM, new byte[]{1, 2, 3});
+        fixture.setLegendDao(dao);
+        byte[] legend = {7, 8};
+        downloader.result = legend;
+        assertThat(fixture.refresh(MeteorogramType.UM, URL, downloader), is(true));
+        assertThat(fixture.getLegend(MeteorogramType.UM), is(sameInstance(legend)));
+        assertThat((byte[]) dao.legends.get(MeteorogramType.UM), is(sameInstance(legend)));
+    }
+
+    @Test
+    public void refreshFailed() {
+        fixture.setLegendDao(dao);
+        assertThat(fixture.refresh(MeteorogramType.UM, URL, downloader), is(false));
+        assertThat(fixture.getLegend(MeteorogramType.UM), is(nullValue()));
+        assertThat(dao.updates, is(0));
+        assertThat(fixture.isRefreshNeeded(MeteorogramType.UM), is(true));
+    }
+
+    @Test
+    public void refreshInProgress() {
+        downloader.result = new byte[]{1};
+        downloader.nested = true;
+        assertThat(fixture.refresh(MeteorogramType.UM, URL, downloader), is(true));
+        assertThat(downloader.nestedResult, is(false));
+        assertThat(downloader.nestedRefreshNeeded, is(false));
+    }
+
+    private class DummyDao implements LegendDao {
+
+        private Hashtable legends = new Hashtable();
+        private int reads = 0;
+        private int updates = 0;
+
+        public byte[] read(MeteorogramType type) {
+            reads++;
+            return (byte[]) legends.get(type);
+        }
+
+        public boolean createOrUpdate(MeteorogramType type, byte[] legend) {
+            updates++;
+            legends.put(type, legend);
+            return true;
+        }
+    }
+
+    private class DummyDownloader extends AbstractStatusReporter implements ModelResultDownloader {
+
+        private byte[] result = null;
+        private boolean notModified = false;
+        private String url = null;
+        private String validatorKey = null;
+        private boolean revalidate = false;
+        private MeteorogramType type = null;
+        private boolean nested = false;
+        private boolean nestedResult = true;
+        private boolean nestedRefreshNeeded = true;
+
+        public byte[] downloadModelResult(String url) {
+            return downloadModelResult(url, null);
+        }
+
+        public byte[] downloadModelResult(String url, String validatorKey) {
+            return downloadModelResult(url, validatorKey, true);
+        }
+
+        public byte[] downloadModelResult(String url, String validatorKey, boolean revalidate) {
+            this.url = url;
+            this.validatorKey = validatorKey;
+            this.revalidate = revalidate;
+            if (nested) {
+                nested = false;
+                nestedRefreshNeeded = fixture.isRefreshNeeded(type);
+                nestedResult = fixture.refresh(type, url, this);
+            }
+            return notModified ? null : result;
+        }
+
+        public boolean isNotModified() {
+            return notModified;
+        }
+
+        public long getChecksum() {
+            return -1L;
+        }
+
+        public boolean cancel() {
+            return true;
+        }
+
+        public DownloadOutcome getOutcome() {
+            return null;
+        }
+
+        public void setMeteorogramType(MeteorogramType type) {
+            this.type = type;
+        }
+    }
+}
@@ -17,16 +17,24 @@
  */
 package com.kenai.weathericm.app;
 
+import com.kenai.weathericm.app.helpers.DownloadCheckpointInMemoryDao;
 import com.kenai.weathericm.app.helpers.ForecastDataInMemoryDao;
+import com.kenai.weathericm.app.helpers.ForecastHistoryInMemoryDao;
+import com.kenai.weathericm.domain.DownloadCheckpoint;
 import com.kenai.weathericm.domain.ForecastData;
 import com.kenai.weathericm.app.helpers.MeteorogramInfoInMemoryDao;
 import com.kenai.weathericm.domain.MeteorogramInfo;
+import com.kenai.weathericm.repository.DownloadCheckpointDao;
 import com.kenai.weathericm.repository.ForecastDataDao;
 import com.kenai.weathericm.repository.ForecastDataSerializer;
+import com.kenai.weathericm.repository.ForecastHistoryDao;
 import com.kenai.weathericm.repository.MeteorogramInfoDao;
+import com.kenai.weathericm.repository.MeteorogramInfoReadListener;
 import com.kenai.weathericm.repository.MeteorogramInfoSerializer;
 import com.kenai.weathericm.util.AbstractStatusReporter;
 import com.kenai.weathericm.util.Status;
+import com.kenai.weathericm.util.StatusListener;
+import com.kenai.weathericm.util.StatusReporter;
 import net.sf.microlog.core.config.PropertyConfigurator;
 import org.junit.BeforeClass;
 import java.util.Enumeration;
@@ -67,6 +75,7 @@ public class MeteorogramBrokerTest {
         }
         Whitebox.setInternalState(fixture, INFO_TO_TASK, new Hashtable());
         fixture.setMeteorogramInfoDao(null);
+        fixture.setForecastHistoryDao(null);
         listener = getDummyListener();
     }
 
@@ -165,6 +174,25 @@ public class MeteorogramBrokerTest {
         assertThat(listener.readMeteorogramInfos, is(testInfos));
     }
 
+    @Test
+    public void fireAddedMeteorogramInfoListenerRemovesItself() {
+        MeteorogramInfo testInfo = new MeteorogramInfo();
+        DummyMeteorogramBrokerListener removing = new DummyMeteorogramBrokerListener() {
+
+            public void addedMeteorogramInfo(MeteorogramInfo addedMeteorigramInfo) {
+                super.addedMeteorogramInfo(addedMeteorigramInfo);
+                fixture.removeListener(this);
+            }
+        };
+        fixture.addListener(removing);
+        fixture.addListener(listener);
+        fixture.fireAddedMeteorogramInfo(testInfo);
+        assertThat(removing.addedMeteorogramInfo, equalTo(testInfo));
+        assertThat(listener.addedMeteorogramInfo, equalTo(testInfo));
+        assertThat(fixture.getListeners().contains(removing), is(false));
+        assertThat(fixture.getListeners().contains(listener), is(true));
+    }
+
     @Test
     public void fireAddedMeteorogramInfo() {
         MeteorogramInfo testInfo = new MeteorogramInfo();
@@ -214,6 +242,39 @@ public class MeteorogramBrokerTest {
         assertThat(infoWithData.getForecastData(), is(not(nullValue())));
     }
 
+    @Test
+    public void readAllMeteorogramInfosInBatches() throws Exception {
+        ForecastDataDao forecastDataDao = new ForecastDataInMemoryDao();
+        fixture.setForecastDataDao(forecastDataDao);
+        fixture.addListener(listener);
+        MeteorogramInfoInMemoryDao meteorogramInfoInMemoryDao = new MeteorogramInfoInMemoryDao();
+        int count = MeteorogramBroker.READ_BATCH_SIZE + 2;
+        for (int i = 0; i < count; i++) {
+            MeteorogramInfo info = new MeteorogramInfo();
+            meteorogramInfoInMemoryDao.create(info);
+            forecastDataDao.create(info.getId(), new ForecastData("1994090800"));
+        }
+        fixture.setMeteorogramInfoDao(meteorogramInfoInMemoryDao);
+        final MeteorogramBrokerListener lock = listener;
+        synchronized (lock) {
+            fixture.readAllMeteorogramInfos();
+            lock.wait(timeout);
+        }
+        Vector batches = listener.readMeteorogramInfoBatches;
+        assertThat(batches.size(), equalTo(3));
+        assertThat(((Vector) batches.get(0)).size(), equalTo(1));
+        assertThat(((Vector) batches.get(1)).size(), equalTo(MeteorogramBroker.READ_BATCH_SIZE));
+        assertThat(((Vector) batches.get(2)).size(), equalTo(1));
+        Vector batched = new Vector();
+        for (Object batch : batches) {
+            batched.addAll((Vector) batch);
+        }
+        assertThat(batched, equalTo(listener.readMeteorogramInfos));
+        for (Object info : batched) {
+            assertThat(((MeteorogramInfo) info).getForecastData(), is(not(nullValue())));
+        }
+    }
+
     @Test
     public void createMeteorogramInfo() throws Exception {
         ForecastDataDao forecastDataDao = new ForecastDataInMemoryDao();
@@ -308,6 +369,29 @@ public class MeteorogramBrokerTest {
         assertThat(forecastDataDao.exists(id), is(false));
     }
 
+    @Test
+    public void deleteMeteorogramInfoDeletesHistory() throws Exception {
+        fixture.setForecastDataDao(new ForecastDataInMemoryDao());
+        ForecastHistoryInMemoryDao historyDao = new ForecastHistoryInMemoryDao(3);
+        fixture.setForecastHistoryDao(historyDao);
+        fixture.addListener(listener);
+        MeteorogramInfoInMemoryDao meteorogramInfoInMemoryDao = new MeteorogramInfoInMemoryDao();
+        MeteorogramInfo info = new MeteorogramInfo();
+        meteorogramInfoInMemoryDao.create(info);
+        int id = info.getId();
+        ForecastData data = new ForecastData("1999080701");
+        data.setModelResult(new byte[]{1, 2});
+        historyDao.archive(id, data);
+        fixture.setMeteorogramInfoDao(meteorogramInfoInMemoryDao);
+        final MeteorogramBrokerListener lock = listener;
+        synchronized (lock) {
+            fixture.deleteMeteorogramInfo(info);
+            lock.wait(timeout);
+        }
+        assertThat(listener.deletedMeteorogramInfo, equalTo(info));
+        assertThat(historyDao.getRunCount(id), is(0));
+    }
+
     @Test
     public void getForcedDownloadTaskNotExisting() {
         ForecastDataDownloader t1 =
@@ -362,6 +446,85 @@ public class MeteorogramBrokerTest {
         assertThat(listeners.contains(fixture), is(true));
     }
 
+    @Test
+    public void createBatchDownloadTaskNotExisting() {
+        MeteorogramInfo info = new MeteorogramInfo();
+        ForecastDataDownloader task = fixture.createBatchDownloadTask(info);
+        assertThat(task, is(not(nullValue())));
+        assertThat(task.getMeteorogramInfo(), is(sameInstance(info)));
+        assertThat(task.getListeners().contains(fixture), is(false));
+        Hashtable infoToTask = (Hashtable) Whitebox.getInternalState(fixture, INFO_TO_TASK);
+        assertThat(infoToTask.get(info), is(sameInstance((Object) task)));
+    }
+
+    @Test
+    public void createBatchDownloadTaskExisting() {
+        MeteorogramInfo info = new MeteorogramInfo();
+        ForecastDataDownloader task = fixture.getCheckedDownloadTask(info);
+        assertThat(fixture.createBatchDownloadTask(info), is(nullValue()));
+        Hashtable infoToTask = (Hashtable) Whitebox.getInternalState(fixture, INFO_TO_TASK);
+        assertThat(infoToTask.get(info), is(sameInstance((Object) task)));
+    }
+
+    @Test
+    public void refreshAllSkipsDownloaded() throws Exception {
+        MeteorogramInfo info = new MeteorogramInfo();
+        Vector infos = new Vector();
+        infos.add(info);
+        ForecastDataDownloader existing = fixture.getCheckedDownloadTask(info);
+        RefreshAllTask task = fixture.refreshAll(infos);
+        assertThat(task, is(not(nullValue())));
+        assertThat(task.getTotal(), equalTo(1));
+        long deadline = System.currentTimeMillis() + timeout;
+        while (task.hasFailed() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(task.hasFailed(), is(false));
+        Hashtable infoToTask = (Hashtable) Whitebox.getInternalState(fixture, INFO_TO_TASK);
+        assertThat(infoToTask.get(info), is(sameInstance((Object) existing)));
+    }
+
+    @Test
+    public void createRefreshAllTaskNotStarted() throws Exception {
+        final Vector<Status> statuses = new Vector<Status>();
+        RefreshAllTask task = fixture.createRefreshAllTask(new Vector());
+        Thread.sleep(50);
+        task.addListener(new StatusListener() {
+
+            @Override
+            public void statusUpdate(StatusReporter source, Status status) {
+                synchronized (statuses) {
+                    statuses.add(status);
+                    statuses.notifyAll();
+                }
+            }
+        });
+        synchronized (statuses) {
+            task.start();
+            long deadline = System.currentTimeMillis() + timeout;
+            while (!statuses.contains(Status.FINISHED) && System.currentTimeMillis() < deadline) {
+                statuses.wait(timeout);
+            }
+        }
+        assertThat(statuses.firstElement(), is(sameInstance(Status.STARTED)));
+        assertThat(statuses.lastElement(), is(sameInstance(Status.FINISHED)));
+    }
+
+    @Test
+    public void getSetRefreshWidth() {
+        fixture.setRefreshWidth(0);
+        assertThat(fixture.getRefreshWidth(), equalTo(MeteorogramBroker.DEFAULT_REFRESH_WIDTH));
+        System.setProperty(MeteorogramBroker.NETWORK_ACCESS_PROPERTY, "wlan");
+        try {
+            assertThat(fixture.getRefreshWidth(), equalTo(MeteorogramBroker.WLAN_REFRESH_WIDTH));
+            fixture.setRefreshWidth(3);
+            assertThat(fixture.getRefreshWidth(), equalTo(3));
+        } finally {
+            System.clearProperty(MeteorogramBroker.NETWORK_ACCESS_PROPERTY);
+            fixture.setRefreshWidth(0);
+        }
+    }
+
     @Test
     public void getCheckedForcedDownloadTaskExisting() {
         MeteorogramInfo info = new MeteorogramInfo();
@@ -410,6 +573,244 @@ public class MeteorogramBrokerTest {
         assertThat(forecastDataDao.exists(id), is(true));
     }
 
+    @Test
+    public void statusUpdateFinishedArchivesReplacedRun() {
+        fixture.setForecastDataDao(new ForecastDataInMemoryDao());
+        fixture.setForecastHistoryDao(new ForecastHistoryInMemoryDao(3));
+        MeteorogramInfo info = new MeteorogramInfo();
+        info.setId(8);
+        ForecastData oldest = new ForecastData("2009090900");
+        oldest.setModelResult(new byte[]{1, 2});
+        ForecastData older = new ForecastData("2009090906");
+        older.setModelResult(new byte[]{3, 4});
+        ForecastData reissued = new ForecastData("2009090906");
+        reissued.setModelResult(new byte[]{5, 6});
+        ForecastData newer = new ForecastData("2009090912");
+        newer.setModelResult(new byte[]{7, 8});
+        Hashtable infoToTask = (Hashtable) Whitebox.getInternalState(fixture, INFO_TO_TASK);
+        for (ForecastData data : new ForecastData[]{oldest, older, reissued}) {
+            info.setForecastData(data);
+            ForecastDataDownloader task = new DummyForecastDataDownloader();
+            task.setMeteorogramInfo(info);
+            infoToTask.put(info, task);
+            fixture.statusUpdate(task, Status.FINISHED);
+        }
+        assertThat(fixture.getRunCount(info), is(1));
+        assertThat(fixture.getRun(info, 0), is(oldest));
+        info.setForecastData(newer);
+        ForecastDataDownloader task = new DummyForecastDataDownloader();
+        task.setMeteorogramInfo(info);
+        infoToTask.put(info, task);
+        fixture.statusUpdate(task, Status.FINISHED);
+        assertThat(fixture.getRunCount(info), is(2));
+        assertThat(fixture.getRun(info, 0), is(reissued));
+        assertThat(fixture.getRun(info, 1), is(oldest));
+        assertThat(fixture.getRun(info, 2), is(nullValue()));
+    }
+
+    @Test
+    public void statusUpdateFinishedSameRunNotRead() {
+        final int[] reads = new int[]{0};
+        ForecastDataDao forecastDataDao = new ForecastDataInMemoryDao() {
+
+            @Override
+            public ForecastData read(Integer id) {
+                reads[0]++;
+                return super.read(id);
+            }
+        };
+        fixture.setForecastDataDao(forecastDataDao);
+        fixture.setForecastHistoryDao(new ForecastHistoryInMemoryDao(3));
+        MeteorogramInfo info = new MeteorogramInfo();
+        info.setId(8);
+        ForecastData stored = new ForecastData("2009090906");
+        stored.setModelResult(new byte[]{3, 4});
+        forecastDataDao.create(8, stored);
+        ForecastData reissued = new ForecastData("2009090906");
+        reissued.setModelResult(new byte[]{5, 6});
+        info.setForecastData(reissued);
+        ForecastDataDownloader task = new DummyForecastDataDownloader();
+        task.setMeteorogramInfo(info);
+        Hashtable infoToTask = (Hashtable) Whitebox.getInternalState(fixture, INFO_TO_TASK);
+        infoToTask.put(info, task);
+        fixture.statusUpdate(task, Status.FINISHED);
+        assertThat(reads[0], is(0));
+        assertThat(fixture.getRunCount(info), is(0));
+    }
+
+    @Test
+    public void statusUpdateFinishedTracksArchivedRuns() {
+        Whitebox.setInternalState(StorageQuotaManager.class, "instance", (StorageQuotaManager) null);
+        fixture.setForecastDataDao(new ForecastDataInMemoryDao());
+        fixture.setForecastHistoryDao(new ForecastHistoryInMemoryDao(3));
+        MeteorogramInfo info = new MeteorogramInfo();
+        info.setId(10);
+        ForecastData older = new ForecastData("2009090906");
+        older.setModelResult(new byte[]{1, 2, 3});
+        ForecastData newer = new ForecastData("2009090912");
+        newer.setModelResult(new byte[]{4, 5});
+        Hashtable infoToTask = (Hashtable) Whitebox.getInternalState(fixture, INFO_TO_TASK);
+        for (ForecastData data : new ForecastData[]{older, newer}) {
+            info.setForecastData(data);
+            ForecastDataDownloader task = new DummyForecastDataDownloader();
+            task.setMeteorogramInfo(info);
+            infoToTask.put(info, task);
+            fixture.statusUpdate(task, Status.FINISHED);
+        }
+        assertThat(fixture.getRunCount(info), is(1));
+        assertThat(StorageQuotaManager.getInstance().getFootprint(info), is(2));
+        assertThat(StorageQuotaManager.getInstance().getUsedBytes(), is(5));
+    }
+
+    @Test
+    public void getRunWithoutHistory() {
+        MeteorogramInfo info = new MeteorogramInfo();
+        info.setId(9);
+        assertThat(fixture.getRunCount(info), is(0));
+        assertThat(fixture.getRun(info, 0), is(nullValue()));
+    }
+
+    @Test
+    public void statusUpdateFinishedEvictsWhenStorageFull() {
+        Whitebox.setInternalState(StorageQuotaManager.class, "instance", (StorageQuotaManager) null);
+        final int[] failures = new int[]{1};
+        ForecastDataDao forecastDataDao = new ForecastDataInMemoryDao() {
+
+            @Override
+            public boolean createOrUpdate(Integer id, ForecastData forecastData) {
+                return failures[0]-- <= 0 && super.createOrUpdate(id, forecastData);
+            }
+        };
+        fixture.setForecastDataDao(forecastDataDao);
+        StorageQuotaManager.getInstance().setForecastDataDao(forecastDataDao);
+        MeteorogramInfo stored = new MeteorogramInfo();
+        stored.setId(8);
+        stored.setForecastData(new ForecastData("2009090800"));
+        stored.getForecastData().setModelResult(new byte[10]);
+        forecastDataDao.create(8, stored.getForecastData());
+        StorageQuotaManager.getInstance().track(stored);
+        MeteorogramInfo info = new MeteorogramInfo();
+        info.setId(7);
+        info.setForecastData(new ForecastData("2009090900"));
+        info.getForecastData().setModelResult(new byte[20]);
+        ForecastDataDownloader task = new DummyForecastDataDownloader();
+        task.setMeteorogramInfo(info);
+        Hashtable infoToTask = (Hashtable) Whitebox.getInternalState(fixture, INFO_TO_TASK);
+        infoToTask.put(info, task);
+        fixture.statusUpdate(task, Status.FINISHED);
+        assertThat(forecastDataDao.exists(7), is(true));
+        assertThat(forecastDataDao.exists(8), is(false));
+        assertThat(stored.getForecastData(), is(nullValue()));
+        assertThat(StorageQuotaManager.getInstance().getUsedBytes(), equalTo(20));
+        Whitebox.setInternalState(StorageQuotaManager.class, "instance", (StorageQuotaManager) null);
+    }
+
+    @Test
+    public void statusUpdateFinishedReclaimsWhenIdle() {
+        ForecastDataInMemoryDao forecastDataDao = new ForecastDataInMemoryDao();
+        fixture.setForecastDataDao(forecastDataDao);
+        Hashtable infoToTask = (Hashtable) Whitebox.getInternalState(fixture, INFO_TO_TASK);
+        ForecastDataDownloader[] tasks = new ForecastDataDownloader[2];
+        for (int i = 0; i < tasks.length; i++) {
+            MeteorogramInfo info = new MeteorogramInfo();
+            info.setId(i);
+            info.setForecastData(new ForecastData("2009090900"));
+            tasks[i] = new DummyForecastDataDownloader();
+            tasks[i].setMeteorogramInfo(info);
+            infoToTask.put(info, tasks[i]);
+        }
+        fixture.statusUpdate(tasks[0], Status.FINISHED);
+        assertThat(forecastDataDao.getReclaimCount(), equalTo(0));
+        fixture.statusUpdate(tasks[1], Status.CANCELLED);
+        assertThat(forecastDataDao.getReclaimCount(), equalTo(1));
+    }
+
+    @Test
+    public void statusUpdateFinishedDiscardsCheckpoint() {
+        String url = "http://a.com/img.png";
+        DownloadCheckpointDao checkpointDao = new DownloadCheckpointInMemoryDao();
+        DownloadCheckpoint checkpoint = new DownloadCheckpoint(url);
+        checkpoint.setData(new byte[]{1, 2, 3});
+        checkpointDao.createOrUpdate(checkpoint);
+        AbstractConnectorDownloader.setDownloadCheckpointDao(checkpointDao);
+        try {
+            ForecastDataDao forecastDataDao = new ForecastDataInMemoryDao();
+            fixture.setForecastDataDao(forecastDataDao);
+            MeteorogramInfo info = new MeteorogramInfo();
+            int id = 9;
+            info.setId(id);
+            info.setForecastData(new ForecastData("2009090900"));
+            DummyForecastDataDownloader task = new DummyForecastDataDownloader();
+            task.modelResultUrl = url;
+            task.setMeteorogramInfo(info);
+            Hashtable infoToTask = (Hashtable) Whitebox.getInternalState(fixture, INFO_TO_TASK);
+            infoToTask.put(info, task);
+            fixture.statusUpdate(task, Status.FINISHED);
+            assertThat(forecastDataDao.exists(id), is(true));
+            assertThat(checkpointDao.read(url), is(nullValue()));
+        } finally {
+            AbstractConnectorDownloader.setDownloadCheckpointDao(null);
+        }
+    }
+
+    @Test
+    public void statusUpdateFinishedNotChanged() {
+        fixture.addListener(listener);
+        ForecastDataDao forecastDataDao = new ForecastDataInMemoryDao();
+        fixture.setForecastDataDao(forecastDataDao);
+        MeteorogramInfo info = new MeteorogramInfo();
+        int id = 8;
+        info.setId(id);
+        ForecastData data = new ForecastData("2009090900");
+        info.setForecastData(data);
+        DummyForecastDataDownloader task = new DummyForecastDataDownloader();
+        task.forecastDataChanged = false;
+        task.setMeteorogramInfo(info);
+        Hashtable infoToTask = (Hashtable) Whitebox.getInternalState(fixture, INFO_TO_TASK);
+        infoToTask.put(info, task);
+        fixture.statusUpdate(task, Status.FINISHED);
+        infoToTask = (Hashtable) Whitebox.getInternalState(fixture, INFO_TO_TASK);
+        assertThat(infoToTask.size(), equalTo(0));
+        assertThat(listener.updatedMeteorogramInfo, equalTo(info));
+        assertThat(forecastDataDao.exists(id), is(false));
+    }
+
+    @Test
+    public void statusUpdateFinishedDuplicate() {
+        String url = "http://a.com/img.png";
+        DownloadCheckpointDao checkpointDao = new DownloadCheckpointInMemoryDao();
+        DownloadCheckpoint checkpoint = new DownloadCheckpoint(url);
+        checkpoint.setData(new byte[]{1, 2, 3});
+        checkpointDao.createOrUpdate(checkpoint);
+        AbstractConnectorDownloader.setDownloadCheckpointDao(checkpointDao);
+        try {
+            fixture.addListener(listener);
+            ForecastDataDao forecastDataDao = new ForecastDataInMemoryDao();
+            fixture.setForecastDataDao(forecastDataDao);
+            MeteorogramInfo info = new MeteorogramInfo();
+            int id = 10;
+            info.setId(id);
+            info.setForecastData(new ForecastData("2009090900"));
+            DummyForecastDataDownloader task = new DummyForecastDataDownloader();
+            task.forecastDataChanged = false;
+            task.modelResultDuplicate = true;
+            task.modelResultUrl = url;
+            task.setMeteorogramInfo(info);
+            task.addListener(fixture);
+            Hashtable infoToTask = (Hashtable) Whitebox.getInternalState(fixture, INFO_TO_TASK);
+            infoToTask.put(info, task);
+            fixture.statusUpdate(task, Status.FINISHED);
+            infoToTask = (Hashtable) Whitebox.getInternalState(fixture, INFO_TO_TASK);
+            assertThat(infoToTask.size(), equalTo(0));
+            assertThat(task.getListeners().contains(fixture), is(false));
+            assertThat(listener.updatedMeteorogramInfo, is(nullValue()));
+            assertThat(forecastDataDao.exists(id), is(false));
+            assertThat(checkpointDao.read(url), is(nullValue()));
+        } finally {
+            AbstractConnectorDownloader.setDownloadCheckpointDao(null);
+        }
+    }
+
     @Test
     public void statusUpdateCanceled() {
         ForecastDataDao forecastDataDao = new ForecastDataInMemoryDao();
@@ -479,6 +880,14 @@ public class MeteorogramBrokerTest {
                 throw new UnsupportedOperationException("Not supported yet.");
             }
 
+            public void createOrUpdateAll(Vector infos) {
+                throw new UnsupportedOperationException("Not supported yet.");
+            }
+
+            public void deleteAll(Vector infos) {
+                throw new UnsupportedOperationException("Not supported yet.");
+            }
+
             public MeteorogramInfo read(int id) {
                 throw new UnsupportedOperationException("Not supported yet.");
             }
@@ -487,6 +896,10 @@ public class MeteorogramBrokerTest {
                 throw new UnsupportedOperationException("Not supported yet.");
             }
 
+            public Vector readAll(MeteorogramInfoReadListener listener) {
+                throw new UnsupportedOperationException("Not supported yet.");
+            }
+
             public MeteorogramInfoSerializer getMeteorogramInfoSerializer() {
                 throw new UnsupportedOperationException("Not supported yet.");
             }
@@ -515,6 +928,11 @@ public class MeteorogramBrokerTest {
                 throw new UnsupportedOperationException("Not supported yet.");
             }
 
+            @Override
+            public ForecastData readHeader(Integer id) {
+                throw new UnsupportedOperationException("Not supported yet.");
+            }
+
             @Override
             public boolean update(Integer id, ForecastData forecastData) {
                 throw new UnsupportedOperationException("Not supported yet.");
@@ -546,6 +964,15 @@ public class MeteorogramBrokerTest {
         assertThat(fixture.getForecastDataDao(), is(nullValue()));
     }
 
+    @Test
+    public void getSetForecastHistoryDao() {
+        ForecastHistoryInMemoryDao expected = new ForecastHistoryInMemoryDao(1);
+        fixture.setForecastHistoryDao(expected);
+        assertThat(fixture.getForecastHistoryDao(), is((ForecastHistoryDao) expected));
+        fixture.setForecastHistoryDao(null);
+        assertThat(fixture.getForecastHistoryDao(), is(nullValue()));
+    }
+
     private DummyMeteorogramBrokerListener getDummyListener() {
         return new DummyMeteorogramBrokerListener();
     }
@@ -553,6 +980,11 @@ public class MeteorogramBrokerTest {
     private class DummyMeteorogramBrokerListener implements MeteorogramBrokerListener {
 
         public Vector readMeteorogramInfos = null;
+        public Vector readMeteorogramInfoBatches = new Vector();
+
+        public void readMeteorogramInfoBatch(Vector meteorogramInfosBatch) {
+            readMeteorogramInfoBatches.addElement(meteorogramInfosBatch);
+        }
 
         public void readMeteorogramInfo(Vector readMeteorogramInfos) {
             this.readMeteorogramInfos = readMeteorogramInfos;
@@ -588,7 +1020,26 @@ public class MeteorogramBrokerTest {
 
     private class DummyForecastDataDownloader extends AbstractStatusReporter implements ForecastDataDownloader {
 
+        DownloadOutcome outcome = null;
         MeteorogramInfo info;
+        boolean forecastDataChanged = true;
+        String modelResultUrl = null;
+        boolean modelResultDuplicate = false;
+
+        @Override
+        public boolean isForecastDataChanged() {
+            return forecastDataChanged;
+        }
+
+        @Override
+        public boolean isModelResultDuplicate() {
+            return modelResultDuplicate;
+        }
+
+        @Override
+        public String getModelResultUrl() {
+            return modelResultUrl;
+        }
 
         @Override
         public boolean cancel() {
@@ -624,5 +1075,15 @@ public class MeteorogramBrokerTest {
         public void setModelResultDownloadChecker(ModelDownloadChecker modelDownloadChecker) {
             throw new UnsupportedOperationException("Not supported yet.");
         }
+
+        @Override
+        public void setLegendDownloader(ModelResultDownloader legendDownloader) {
+            throw new UnsupportedOperationException("Not supported yet.");
+        }
+
+        @Override
+        public DownloadOutcome getOutcome() {
+            return outcome;
+        }
     }
 }
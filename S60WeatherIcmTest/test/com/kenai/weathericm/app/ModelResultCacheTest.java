@@ -0,0 +1,251 @@
+/*
+ *  Copyright (C) 2010 Przemek Kryger
+ * 
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ * 
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.kenai.weathericm.app;
+
+import com.kenai.weathericm.app.helpers.ForecastDataInMemoryDao;
+import com.kenai.weathericm.domain.ForecastData;
+import com.kenai.weathericm.domain.MeteorogramInfo;
+import com.kenai.weathericm.repository.ForecastDataDao;
+import net.sf.microlog.core.config.PropertyConfigurator;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.powermock.reflect.Whitebox;
+import static org.hamcrest.Matchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Tests for {@link ModelResultCache}.
+ * @author Przemek Kryger
+ */
+public class ModelResultCacheTest {
+
+    private final static String MODEL_START = "2010102012";
+    private ModelResultCache fixture;
+    private CountingDao dao;
+
+    @BeforeClass
+    public static void setUpClass() {
+        PropertyConfigurator.configure("/testMicrolog.properties");
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        fixture = Whitebox.invokeConstructor(ModelResultCache.class);
+        dao = new CountingDao();
+    }
+
+    private MeteorogramInfo createStoredInfo(int id, int length) {
+        byte[] modelResult = new byte[length];
+        modelResult[0] = (byte) id;
+        ForecastData forecastData = new ForecastData(MODEL_START);
+        forecastData.setModelResult(modelResult);
+        dao.create(id, forecastData);
+        MeteorogramInfo info = new MeteorogramInfo();
+        info.setId(id);
+        info.setForecastData(dao.readHeader(id));
+        return info;
+    }
+
+    @Test
+    public void getInstance() {
+        assertThat(ModelResultCache.getInstance(), is(notNullValue()));
+        assertThat(ModelResultCache.getInstance(), is(sameInstance(ModelResultCache.getInstance())));
+    }
+
+    @Test
+    public void getSetForecastDataDao() {
+        assertThat(fixture.getForecastDataDao(), is(nullValue()));
+        fixture.setForecastDataDao(dao);
+        assertThat(fixture.getForecastDataDao(), is(sameInstance((ForecastDataDao) dao)));
+    }
+
+    @Test
+    public void getSetBudget() {
+        assertThat(fixture.getBudget(), equalTo(ModelResultCache.DEFAULT_BUDGET));
+        fixture.setBudget(10);
+        assertThat(fixture.getBudget(), equalTo(10));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setBudgetNegative() {
+        fixture.setBudget(-1);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void getModelResultNullInfo() {
+        fixture.getModelResult(null);
+    }
+
+    @Test
+    public void getModelResultNoForecastData() {
+        fixture.setForecastDataDao(dao);
+        MeteorogramInfo info = new MeteorogramInfo();
+        info.setId(1);
+        assertThat(fixture.getModelResult(info), is(nullValue()));
+        info.setForecastData(new ForecastData(MODEL_START));
+        assertThat(fixture.getModelResult(info), is(nullValue()));
+        assertThat(dao.reads, equalTo(0));
+    }
+
+    @Test
+    public void getModelResultLoaded() {
+        fixture.setForecastDataDao(dao);
+        byte[] modelResult = new byte[]{1, 2, 3};
+        MeteorogramInfo info = new MeteorogramInfo();
+        info.setId(1);
+        info.setForecastData(new ForecastData(MODEL_START));
+        info.getForecastData().setModelResult(modelResult);
+        assertThat(fixture.getModelResult(info), is(sameInstance(modelResult)));
+        assertThat(dao.reads, equalTo(0));
+        assertThat(fixture.getUsedBytes(), equalTo(0));
+    }
+
+    @Test
+    public void getModelResultRead() {
+        fixture.setForecastDataDao(dao);
+        MeteorogramInfo info = createStoredInfo(1, 10);
+        assertThat(info.getForecastData().isModelResultLoaded(), is(false));
+        byte[] actual = fixture.getModelResult(info);
+        assertThat(actual.length, equalTo(10));
+        assertThat(actual[0], equalTo((byte) 1));
+        assertThat(info.getForecastData().getModelResult(), is(sameInstance(actual)));
+        assertThat(fixture.getModelResult(info), is(sameInstance(actual)));
+        assertThat(dao.reads, equalTo(1));
+        assertThat(fixture.getUsedBytes(), equalTo(10));
+    }
+
+    @Test
+    public void getModelResultNoDao() {
+        MeteorogramInfo info = createStoredInfo(1, 10);
+        assertThat(fixture.getModelResult(info), is(nullValue()));
+    }
+
+    @Test
+    public void getModelResultDifferentModelStart() {
+        fixture.setForecastDataDao(dao);
+        MeteorogramInfo info = createStoredInfo(1, 10);
+        ForecastData other = new ForecastData("2010102018");
+        other.setModelResultHeader(10, ForecastData.UNKNOWN_CHECKSUM);
+        info.setForecastData(other);
+        assertThat(fixture.getModelResult(info), is(nullValue()));
+        assertThat(other.isModelResultLoaded(), is(false));
+        assertThat(fixture.getUsedBytes(), equalTo(0));
+    }
+
+    @Test
+    public void getModelResultEvictsLeastRecentlyUsed() {
+        fixture.setForecastDataDao(dao);
+        fixture.setBudget(25);
+        MeteorogramInfo first = createStoredInfo(1, 10);
+        MeteorogramInfo second = createStoredInfo(2, 10);
+        MeteorogramInfo third = createStoredInfo(3, 10);
+        fixture.getModelResult(first);
+        fixture.getModelResult(second);
+        fixture.getModelResult(first);
+        fixture.getModelResult(third);
+        assertThat(first.getForecastData().isModelResultLoaded(), is(true));
+        assertThat(second.getForecastData().isModelResultLoaded(), is(false));
+        assertThat(second.getForecastData().hasModelResult(), is(true));
+        assertThat(third.getForecastData().isModelResultLoaded(), is(true));
+        assertThat(fixture.getUsedBytes(), equalTo(20));
+        assertThat(fixture.getModelResult(second)[0], equalTo((byte) 2));
+        assertThat(first.getForecastData().isModelResultLoaded(), is(false));
+        assertThat(dao.reads, equalTo(4));
+    }
+
+    @Test
+    public void getModelResultKeepsOverBudget() {
+        fixture.setForecastDataDao(dao);
+        fixture.setBudget(5);
+        MeteorogramInfo first = createStoredInfo(1, 10);
+        MeteorogramInfo second = createStoredInfo(2, 10);
+        fixture.getModelResult(first);
+        fixture.getModelResult(second);
+        assertThat(first.getForecastData().isModelResultLoaded(), is(false));
+        assertThat(second.getForecastData().isModelResultLoaded(), is(true));
+        assertThat(fixture.getUsedBytes(), equalTo(10));
+        fixture.setBudget(0);
+        assertThat(second.getForecastData().isModelResultLoaded(), is(false));
+        assertThat(fixture.getUsedBytes(), equalTo(0));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void addNullInfo() {
+        fixture.add(null);
+    }
+
+    @Test
+    public void addReplacesForecastData() {
+        fixture.setForecastDataDao(dao);
+        fixture.setBudget(15);
+        MeteorogramInfo first = createStoredInfo(1, 10);
+        MeteorogramInfo second = createStoredInfo(2, 10);
+        fixture.getModelResult(first);
+        ForecastData previous = first.getForecastData();
+        ForecastData downloaded = new ForecastData("2010102018");
+        downloaded.setModelResult(new byte[4]);
+        first.setForecastData(downloaded);
+        fixture.add(first);
+        assertThat(fixture.getUsedBytes(), equalTo(4));
+        assertThat(previous.isModelResultLoaded(), is(true));
+        fixture.getModelResult(second);
+        assertThat(downloaded.isModelResultLoaded(), is(true));
+        assertThat(fixture.getUsedBytes(), equalTo(14));
+    }
+
+    @Test
+    public void addNotLoaded() {
+        fixture.setForecastDataDao(dao);
+        MeteorogramInfo info = createStoredInfo(1, 10);
+        fixture.getModelResult(info);
+        info.setForecastData(null);
+        fixture.add(info);
+        assertThat(fixture.getUsedBytes(), equalTo(0));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void removeNullInfo() {
+        fixture.remove(null);
+    }
+
+    @Test
+    public void remove() {
+        fixture.setForecastDataDao(dao);
+        fixture.setBudget(10);
+        MeteorogramInfo first = createStoredInfo(1, 10);
+        MeteorogramInfo second = createStoredInfo(2, 10);
+        fixture.getModelResult(first);
+        fixture.remove(first);
+        assertThat(fixture.getUsedBytes(), equalTo(0));
+        fixture.getModelResult(second);
+        assertThat(first.getForecastData().isModelResultLoaded(), is(true));
+        assertThat(second.getForecastData().isModelResultLoaded(), is(true));
+    }
+
+    private static class CountingDao extends ForecastDataInMemoryDao {
+
+        private int reads = 0;
+
+        @Override
+        public ForecastData read(Integer id) {
+            reads++;
+            return super.read(id);
+        }
+    }
+}
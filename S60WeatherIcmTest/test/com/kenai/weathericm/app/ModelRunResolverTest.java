@@ -0,0 +1,268 @@
+/*
+ *  Copyright (C) 2010 Przemek Kryger
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.kenai.weathericm.app;
+
+import com.kenai.weathericm.domain.MeteorogramType;
+import com.kenai.weathericm.util.AbstractStatusReporter;
+import com.kenai.weathericm.util.Properties;
+import com.kenai.weathericm.util.PropertiesRepository;
+import com.kenai.weathericm.util.Status;
+import java.util.Calendar;
+import java.util.TimeZone;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import net.sf.microlog.core.config.PropertyConfigurator;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.hamcrest.Matchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link ModelRunResolver}.
+ * @author Przemek Kryger
+ */
+public class ModelRunResolverTest {
+
+    @BeforeClass
+    public static void setUpClass() {
+        PropertyConfigurator.configure("/testMicrolog.properties");
+    }
+    private final static String START_URL = "http://start.url";
+    private ModelRunResolver fixture;
+    private Properties umProperties;
+    private DummyStartDateDownloader downloader;
+
+    @Before
+    public void setUp() {
+        fixture = ModelRunResolver.getInstance();
+        fixture.clear();
+        umProperties = PropertiesRepository.getProperties("/UM.properties");
+        downloader = new DummyStartDateDownloader();
+        downloader.startDate = prepareStartData(currentModelStart());
+    }
+
+    @Test
+    public void getInstance() {
+        assertThat(ModelRunResolver.getInstance(), is(sameInstance(fixture)));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void resolveStartDateNullType() throws InterruptedException {
+        fixture.resolveStartDate(null, umProperties, START_URL, downloader);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void resolveStartDateNullDownloader() throws InterruptedException {
+        fixture.resolveStartDate(MeteorogramType.UM, umProperties, START_URL, null);
+    }
+
+    @Test
+    public void resolveStartDate() throws InterruptedException {
+        String actual = fixture.resolveStartDate(MeteorogramType.UM, umProperties,
+                START_URL, downloader);
+        assertThat(actual, equalTo(currentModelStart()));
+        assertThat(downloader.url, equalTo(START_URL));
+        assertThat(downloader.downloads, equalTo(1));
+    }
+
+    @Test
+    public void resolveStartDateCached() throws InterruptedException {
+        String first = fixture.resolveStartDate(MeteorogramType.UM, umProperties,
+                START_URL, downloader);
+        DummyStartDateDownloader other = new DummyStartDateDownloader();
+        String second = fixture.resolveStartDate(MeteorogramType.UM, umProperties,
+                START_URL, other);
+        assertThat(second, equalTo(first));
+        assertThat(downloader.downloads, equalTo(1));
+        assertThat(other.downloads, equalTo(0));
+    }
+
+    @Test
+    public void resolveStartDateOldModelRunCachedShortly() throws InterruptedException {
+        downloader.startDate = prepareStartData("2010051412");
+        fixture.resolveStartDate(MeteorogramType.UM, umProperties, START_URL, downloader);
+        String actual = fixture.resolveStartDate(MeteorogramType.UM, umProperties,
+                START_URL, downloader);
+        assertThat(actual, equalTo("2010051412"));
+        assertThat(downloader.downloads, equalTo(1));
+    }
+
+    @Test
+    public void resolveStartDateOtherType() throws InterruptedException {
+        fixture.resolveStartDate(MeteorogramType.UM, umProperties, START_URL, downloader);
+        fixture.resolveStartDate(MeteorogramType.COAMPS,
+                PropertiesRepository.getProperties("/COAMPS.properties"), START_URL, downloader);
+        assertThat(downloader.downloads, equalTo(2));
+    }
+
+    @Test
+    public void resolveStartDateInvalidated() throws InterruptedException {
+        fixture.resolveStartDate(MeteorogramType.UM, umProperties, START_URL, downloader);
+        fixture.invalidate(MeteorogramType.UM);
+        fixture.resolveStartDate(MeteorogramType.UM, umProperties, START_URL, downloader);
+        assertThat(downloader.downloads, equalTo(2));
+    }
+
+    @Test
+    public void resolveStartDateNotFound() throws InterruptedException {
+        downloader.startDate = "no start date here";
+        String actual = fixture.resolveStartDate(MeteorogramType.UM, umProperties,
+                START_URL, downloader);
+        assertThat(actual, is(nullValue()));
+        fixture.resolveStartDate(MeteorogramType.UM, umProperties, START_URL, downloader);
+        assertThat(downloader.downloads, equalTo(2));
+    }
+
+    @Test
+    public void resolveStartDateCancelled() {
+        downloader.status = Status.CANCELLED;
+        try {
+            fixture.resolveStartDate(MeteorogramType.UM, umProperties, START_URL, downloader);
+            fail("InterruptedException expected");
+        } catch (InterruptedException ex) {
+        }
+        assertThat(downloader.getListeners().size(), equalTo(0));
+        downloader.status = Status.FINISHED;
+        try {
+            String actual = fixture.resolveStartDate(MeteorogramType.UM, umProperties,
+                    START_URL, downloader);
+            assertThat(actual, equalTo(currentModelStart()));
+        } catch (InterruptedException ex) {
+            fail("Unexpected InterruptedException");
+        }
+        assertThat(downloader.downloads, equalTo(2));
+    }
+
+    @Test
+    public void resolveStartDateShared() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final DummyStartDateDownloader blocking = new DummyStartDateDownloader() {
+
+            @Override
+            public String downloadStartDate(String url, StartDateMatcher matcher) {
+                started.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException ex) {
+                }
+                return super.downloadStartDate(url, matcher);
+            }
+        };
+        blocking.startDate = downloader.startDate;
+        final String[] results = new String[2];
+        Thread first = new Thread() {
+
+            @Override
+            public void run() {
+                try {
+                    results[0] = fixture.resolveStartDate(MeteorogramType.UM, umProperties,
+                            START_URL, blocking);
+                } catch (InterruptedException ex) {
+                }
+            }
+        };
+        Thread second = new Thread() {
+
+            @Override
+            public void run() {
+                try {
+                    results[1] = fixture.resolveStartDate(MeteorogramType.UM, umProperties,
+                            START_URL, downloader);
+                } catch (InterruptedException ex) {
+                }
+            }
+        };
+        first.start();
+        assertThat(started.await(5, TimeUnit.SECONDS), is(true));
+        second.start();
+        Thread.sleep(100);
+        release.countDown();
+        first.join(5000);
+        second.join(5000);
+        assertThat(results[0], equalTo(currentModelStart()));
+        assertThat(results[1], equalTo(currentModelStart()));
+        assertThat(blocking.downloads, equalTo(1));
+        assertThat(downloader.downloads, equalTo(0));
+    }
+
+    private String currentModelStart() {
+        Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("GMT"));
+        int hour = calendar.get(Calendar.HOUR_OF_DAY);
+        return Integer.toString(calendar.get(Calendar.YEAR))
+                + twoDigits(calendar.get(Calendar.MONTH) + 1)
+                + twoDigits(calendar.get(Calendar.DAY_OF_MONTH))
+                + twoDigits(hour - hour % 6);
+    }
+
+    private String twoDigits(int value) {
+        return value > 9 ? Integer.toString(value) : "0" + Integer.toString(value);
+    }
+
+    private String prepareStartData(String yyyymmddhh) {
+        return umProperties.getProperty(AbstractForecastDataDownloader.PARSE_YEAR_KEY)
+                + yyyymmddhh.substring(0, 4)
+                + umProperties.getProperty(AbstractForecastDataDownloader.PARSE_MONTH_KEY)
+                + yyyymmddhh.substring(4, 6)
+                + umProperties.getProperty(AbstractForecastDataDownloader.PARSE_DAY_KEY)
+                + yyyymmddhh.substring(6, 8)
+                + umProperties.getProperty(AbstractForecastDataDownloader.PARSE_HOUR_KEY)
+                + yyyymmddhh.substring(8, 10);
+    }
+
+    private class DummyStartDateDownloader extends AbstractStatusReporter
+            implements StartDateDownloader {
+
+        public DownloadOutcome outcome = null;
+        public MeteorogramType type = null;
+        public String startDate = null;
+        public String url = null;
+        public Status status = Status.FINISHED;
+        public int downloads = 0;
+
+        @Override
+        public String downloadStartDate(String url, StartDateMatcher matcher) {
+            this.url = url;
+            downloads++;
+            if (startDate != null) {
+                for (int i = 0; i < startDate.length(); i++) {
+                    matcher.feed(startDate.charAt(i));
+                }
+            }
+            fireStatusUpdate(status);
+            return matcher.getStartDate();
+        }
+
+        @Override
+        public boolean cancel() {
+            return true;
+        }
+
+        @Override
+        public DownloadOutcome getOutcome() {
+            return outcome;
+        }
+
+        @Override
+        public void setMeteorogramType(MeteorogramType type) {
+            this.type = type;
+        }
+    }
+}
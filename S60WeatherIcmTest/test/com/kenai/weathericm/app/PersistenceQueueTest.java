@@ -0,0 +1,194 @@
+/*
+ *  Copyright (C) 2010 Przemek Kryger
+ * 
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ * 
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.kenai.weathericm.app;
+
+import com.kenai.weathericm.domain.MeteorogramInfo;
+import java.util.Arrays;
+import java.util.Vector;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import net.sf.microlog.core.config.PropertyConfigurator;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.hamcrest.Matchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Tests for {@link PersistenceQueue}.
+ * @author Przemek Kryger
+ */
+public class PersistenceQueueTest {
+
+    private final static long TIMEOUT = 2000L;
+    private RecordingQueue fixture;
+
+    @BeforeClass
+    public static void setUpClass() {
+        PropertyConfigurator.configure("/testMicrolog.properties");
+    }
+
+    @Before
+    public void setUp() {
+        fixture = new RecordingQueue();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void enqueueUnknownOperation() {
+        fixture.enqueue(PersistenceQueue.DELETE + 1, new MeteorogramInfo());
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void enqueueNullInfo() {
+        fixture.enqueue(PersistenceQueue.UPDATE, null);
+    }
+
+    @Test
+    public void enqueueReadAll() throws Exception {
+        fixture.expect(1);
+        fixture.enqueue(PersistenceQueue.READ_ALL, new MeteorogramInfo());
+        fixture.await();
+        assertThat(fixture.operations, equalTo(Arrays.asList(PersistenceQueue.READ_ALL)));
+        assertThat(fixture.infos.get(0), is(nullValue()));
+    }
+
+    @Test
+    public void runInOrderOnSingleThread() throws Exception {
+        MeteorogramInfo first = new MeteorogramInfo();
+        MeteorogramInfo second = new MeteorogramInfo();
+        fixture.expect(4);
+        fixture.enqueue(PersistenceQueue.CREATE, first);
+        fixture.enqueue(PersistenceQueue.CREATE, second);
+        fixture.enqueue(PersistenceQueue.UPDATE, first);
+        fixture.enqueue(PersistenceQueue.DELETE, second);
+        fixture.await();
+        assertThat(fixture.operations, equalTo(Arrays.asList(PersistenceQueue.CREATE,
+                PersistenceQueue.CREATE, PersistenceQueue.UPDATE, PersistenceQueue.DELETE)));
+        assertThat(fixture.infos, equalTo(Arrays.<Object>asList(first, second, first, second)));
+        assertThat(fixture.threads.get(0), is(not(sameInstance(Thread.currentThread()))));
+        for (Thread thread : fixture.threads) {
+            assertThat(thread, is(sameInstance(fixture.threads.get(0))));
+        }
+        assertThat(fixture.getPendingCount(), equalTo(0));
+    }
+
+    @Test
+    public void coalesceUpdates() throws Exception {
+        MeteorogramInfo blocking = new MeteorogramInfo();
+        MeteorogramInfo first = new MeteorogramInfo();
+        MeteorogramInfo second = new MeteorogramInfo();
+        fixture.block();
+        fixture.expect(3);
+        fixture.enqueue(PersistenceQueue.CREATE, blocking);
+        fixture.awaitBlocked();
+        fixture.enqueue(PersistenceQueue.UPDATE, first);
+        fixture.enqueue(PersistenceQueue.UPDATE, second);
+        fixture.enqueue(PersistenceQueue.UPDATE, first);
+        fixture.enqueue(PersistenceQueue.UPDATE, first);
+        assertThat(fixture.getPendingCount(), equalTo(2));
+        fixture.unblock();
+        fixture.await();
+        assertThat(fixture.operations, equalTo(Arrays.asList(PersistenceQueue.CREATE,
+                PersistenceQueue.UPDATE, PersistenceQueue.UPDATE)));
+        assertThat(fixture.infos, equalTo(Arrays.<Object>asList(blocking, first, second)));
+    }
+
+    @Test
+    public void deleteDropsPendingUpdates() throws Exception {
+        MeteorogramInfo blocking = new MeteorogramInfo();
+        MeteorogramInfo first = new MeteorogramInfo();
+        MeteorogramInfo second = new MeteorogramInfo();
+        fixture.block();
+        fixture.expect(4);
+        fixture.enqueue(PersistenceQueue.CREATE, blocking);
+        fixture.awaitBlocked();
+        fixture.enqueue(PersistenceQueue.UPDATE, first);
+        fixture.enqueue(PersistenceQueue.CREATE, second);
+        fixture.enqueue(PersistenceQueue.DELETE, first);
+        fixture.enqueue(PersistenceQueue.UPDATE, first);
+        assertThat(fixture.getPendingCount(), equalTo(3));
+        fixture.unblock();
+        fixture.await();
+        assertThat(fixture.operations, equalTo(Arrays.asList(PersistenceQueue.CREATE,
+                PersistenceQueue.CREATE, PersistenceQueue.DELETE, PersistenceQueue.UPDATE)));
+        assertThat(fixture.infos, equalTo(Arrays.<Object>asList(blocking, second, first, first)));
+    }
+
+    @Test
+    public void failureDoesNotStopWorker() throws Exception {
+        MeteorogramInfo first = new MeteorogramInfo();
+        MeteorogramInfo second = new MeteorogramInfo();
+        fixture.failing = first;
+        fixture.expect(2);
+        fixture.enqueue(PersistenceQueue.CREATE, first);
+        fixture.enqueue(PersistenceQueue.CREATE, second);
+        fixture.await();
+        assertThat(fixture.infos, equalTo(Arrays.<Object>asList(first, second)));
+    }
+
+    private static class RecordingQueue extends PersistenceQueue {
+
+        final Vector<Integer> operations = new Vector<Integer>();
+        final Vector<Object> infos = new Vector<Object>();
+        final Vector<Thread> threads = new Vector<Thread>();
+        MeteorogramInfo failing = null;
+        CountDownLatch executed = null;
+        CountDownLatch blocked = null;
+        CountDownLatch released = null;
+
+        void expect(int count) {
+            executed = new CountDownLatch(count);
+        }
+
+        void await() throws InterruptedException {
+            assertThat(executed.await(TIMEOUT, TimeUnit.MILLISECONDS), is(true));
+        }
+
+        void block() {
+            blocked = new CountDownLatch(1);
+            released = new CountDownLatch(1);
+        }
+
+        void awaitBlocked() throws InterruptedException {
+            assertThat(blocked.await(TIMEOUT, TimeUnit.MILLISECONDS), is(true));
+        }
+
+        void unblock() {
+            released.countDown();
+        }
+
+        @Override
+        protected void execute(int operation, MeteorogramInfo info) {
+            operations.add(operation);
+            infos.add(info);
+            threads.add(Thread.currentThread());
+            executed.countDown();
+            if (blocked != null && blocked.getCount() > 0) {
+                blocked.countDown();
+                try {
+                    released.await(TIMEOUT, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (info != null && info == failing) {
+                throw new IllegalStateException("Failing on purpose");
+            }
+        }
+    }
+}
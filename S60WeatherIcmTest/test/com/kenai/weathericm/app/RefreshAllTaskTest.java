@@ -0,0 +1,439 @@
+/*
+ *  Copyright (C) 2010 Przemek Kryger
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.kenai.weathericm.app;
+
+import com.kenai.weathericm.app.helpers.ForecastDataInMemoryDao;
+import com.kenai.weathericm.domain.ForecastData;
+import com.kenai.weathericm.domain.MeteorogramInfo;
+import com.kenai.weathericm.repository.ForecastDataDao;
+import com.kenai.weathericm.util.AbstractStatusReporter;
+import com.kenai.weathericm.util.Status;
+import com.kenai.weathericm.util.StatusListener;
+import com.kenai.weathericm.util.StatusReporter;
+import java.util.Hashtable;
+import java.util.Vector;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.sf.microlog.core.config.PropertyConfigurator;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.powermock.reflect.Whitebox;
+import static org.hamcrest.Matchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Tests for {@link RefreshAllTask}.
+ * @author Przemek Kryger
+ */
+public class RefreshAllTaskTest {
+
+    @BeforeClass
+    public static void setUpClass() {
+        PropertyConfigurator.configure("/testMicrolog.properties");
+    }
+    private MeteorogramBroker broker;
+    private ForecastDataDao forecastDataDao;
+    private Hashtable<MeteorogramInfo, DummyForecastDataDownloader> infoToTask;
+    private Vector<MeteorogramInfo> failingInfos;
+    private AtomicInteger running;
+    private AtomicInteger maxRunning;
+    private Vector<MeteorogramInfo> started;
+    private DummyStatusListener listener;
+
+    @Before
+    public void setUp() {
+        broker = MeteorogramBroker.getInstance();
+        Whitebox.setInternalState(broker, MeteorogramBrokerTest.INFO_TO_TASK, new Hashtable());
+        forecastDataDao = new ForecastDataInMemoryDao();
+        broker.setForecastDataDao(forecastDataDao);
+        infoToTask = new Hashtable<MeteorogramInfo, DummyForecastDataDownloader>();
+        failingInfos = new Vector<MeteorogramInfo>();
+        running = new AtomicInteger();
+        maxRunning = new AtomicInteger();
+        started = new Vector<MeteorogramInfo>();
+        listener = new DummyStatusListener();
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void createNullBroker() {
+        new RefreshAllTask(null, new Vector(), 1);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void createNullInfos() {
+        new RefreshAllTask(broker, null, 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void createZeroWidth() {
+        new RefreshAllTask(broker, new Vector(), 0);
+    }
+
+    @Test
+    public void prioritize() {
+        MeteorogramInfo fresh = createInfo(1, "2100010100");
+        MeteorogramInfo none = createInfo(2, null);
+        MeteorogramInfo old1 = createInfo(3, "2009090900");
+        MeteorogramInfo old2 = createInfo(4, "2009090912");
+        Vector<MeteorogramInfo> infos = new Vector<MeteorogramInfo>();
+        infos.add(fresh);
+        infos.add(old1);
+        infos.add(none);
+        infos.add(old2);
+        Vector actual = RefreshAllTask.prioritize(infos);
+        assertThat(actual.size(), equalTo(4));
+        assertThat(actual.get(0), is(sameInstance((Object) old1)));
+        assertThat(actual.get(1), is(sameInstance((Object) old2)));
+        assertThat(actual.get(2), is(sameInstance((Object) none)));
+        assertThat(actual.get(3), is(sameInstance((Object) fresh)));
+        assertThat(infos.get(0), is(sameInstance(fresh)));
+    }
+
+    @Test
+    public void runEmpty() throws InterruptedException {
+        RefreshAllTask fixture = createFixture(new Vector(), 2);
+        fixture.run();
+        assertThat(listener.await(), is(true));
+        assertThat(listener.last, is(sameInstance(Status.FINISHED)));
+        assertThat(fixture.hasFailed(), is(false));
+        assertThat(fixture.getFailureMessage(), is(nullValue()));
+    }
+
+    @Test
+    public void runCreateTaskFails() throws InterruptedException {
+        Vector<MeteorogramInfo> infos = new Vector<MeteorogramInfo>();
+        for (int i = 0; i < 3; i++) {
+            MeteorogramInfo info = createInfo(i, null);
+            infos.add(info);
+            DummyForecastDataDownloader task = new DummyForecastDataDownloader();
+            task.forecastData = new ForecastData("2009090900");
+            infoToTask.put(info, task);
+        }
+        failingInfos.add(infos.get(1));
+        RefreshAllTask fixture = createFixture(infos, 1);
+        new Thread(fixture).start();
+        assertThat(listener.await(), is(true));
+        assertThat(listener.last, is(sameInstance(Status.FINISHED)));
+        assertThat(fixture.hasFailed(), is(true));
+        assertThat(fixture.getFailureMessage(), equalTo("1 of 3 refreshes failed"));
+        assertThat(started.size(), equalTo(2));
+        assertThat(forecastDataDao.exists(0), is(true));
+        assertThat(forecastDataDao.exists(2), is(true));
+    }
+
+    @Test
+    public void runAll() throws InterruptedException {
+        Vector<MeteorogramInfo> infos = new Vector<MeteorogramInfo>();
+        for (int i = 0; i < 5; i++) {
+            MeteorogramInfo info = createInfo(i, null);
+            infos.add(info);
+            DummyForecastDataDownloader task = new DummyForecastDataDownloader();
+            task.forecastData = new ForecastData("2009090900");
+            infoToTask.put(info, task);
+        }
+        RefreshAllTask fixture = createFixture(infos, 2);
+        assertThat(fixture.getTotal(), equalTo(5));
+        new Thread(fixture).start();
+        assertThat(listener.await(), is(true));
+        assertThat(listener.last, is(sameInstance(Status.FINISHED)));
+        assertThat(listener.finals, equalTo(1));
+        assertThat(fixture.hasFailed(), is(false));
+        assertThat(started.size(), equalTo(5));
+        assertThat(maxRunning.get(), is(lessThanOrEqualTo(2)));
+        for (int i = 0; i < 5; i++) {
+            assertThat(forecastDataDao.exists(i), is(true));
+        }
+        Hashtable brokerTasks = (Hashtable) Whitebox.getInternalState(broker,
+                MeteorogramBrokerTest.INFO_TO_TASK);
+        assertThat(brokerTasks.size(), equalTo(0));
+        for (DummyForecastDataDownloader task : infoToTask.values()) {
+            assertThat(task.getListeners().size(), equalTo(0));
+        }
+    }
+
+    @Test
+    public void runProgress() throws InterruptedException {
+        Vector<MeteorogramInfo> infos = new Vector<MeteorogramInfo>();
+        for (int i = 0; i < 2; i++) {
+            MeteorogramInfo info = createInfo(i, null);
+            infos.add(info);
+            DummyForecastDataDownloader task = new DummyForecastDataDownloader();
+            task.forecastData = new ForecastData("2009090900");
+            infoToTask.put(info, task);
+        }
+        RefreshAllTask fixture = createFixture(infos, 1);
+        new Thread(fixture).start();
+        assertThat(listener.await(), is(true));
+        assertThat(listener.progresses.size(), is(greaterThan(2)));
+        int previous = -1;
+        for (Integer progress : listener.progresses) {
+            assertThat(progress, is(greaterThan(previous)));
+            previous = progress;
+        }
+        assertThat(listener.progresses.contains(25), is(true));
+        assertThat(listener.progresses.contains(50), is(true));
+    }
+
+    @Test
+    public void runStaleFirst() throws InterruptedException {
+        MeteorogramInfo fresh = createInfo(1, "2100010100");
+        MeteorogramInfo old = createInfo(2, "2009090900");
+        Vector<MeteorogramInfo> infos = new Vector<MeteorogramInfo>();
+        infos.add(fresh);
+        infos.add(old);
+        infoToTask.put(fresh, new DummyForecastDataDownloader());
+        infoToTask.put(old, new DummyForecastDataDownloader());
+        RefreshAllTask fixture = createFixture(infos, 1);
+        new Thread(fixture).start();
+        assertThat(listener.await(), is(true));
+        assertThat(started.get(0), is(sameInstance(old)));
+        assertThat(started.get(1), is(sameInstance(fresh)));
+    }
+
+    @Test
+    public void runSomeFailed() throws InterruptedException {
+        Vector<MeteorogramInfo> infos = new Vector<MeteorogramInfo>();
+        for (int i = 0; i < 3; i++) {
+            MeteorogramInfo info = createInfo(i, null);
+            infos.add(info);
+            DummyForecastDataDownloader task = new DummyForecastDataDownloader();
+            task.forecastData = new ForecastData("2009090900");
+            infoToTask.put(info, task);
+        }
+        infoToTask.get(infos.get(1)).finalStatus = Status.CANCELLED;
+        infoToTask.get(infos.get(2)).fail = true;
+        RefreshAllTask fixture = createFixture(infos, 2);
+        new Thread(fixture).start();
+        assertThat(listener.await(), is(true));
+        assertThat(listener.last, is(sameInstance(Status.FINISHED)));
+        assertThat(fixture.hasFailed(), is(true));
+        assertThat(fixture.getFailureMessage(), equalTo("2 of 3 refreshes failed"));
+        assertThat(forecastDataDao.exists(0), is(true));
+        Hashtable brokerTasks = (Hashtable) Whitebox.getInternalState(broker,
+                MeteorogramBrokerTest.INFO_TO_TASK);
+        assertThat(brokerTasks.size(), equalTo(0));
+    }
+
+    @Test
+    public void runSkipsDownloaded() throws InterruptedException {
+        MeteorogramInfo info = createInfo(1, null);
+        Vector<MeteorogramInfo> infos = new Vector<MeteorogramInfo>();
+        infos.add(info);
+        RefreshAllTask fixture = createFixture(infos, 1);
+        new Thread(fixture).start();
+        assertThat(listener.await(), is(true));
+        assertThat(listener.last, is(sameInstance(Status.FINISHED)));
+        assertThat(fixture.hasFailed(), is(false));
+        assertThat(started.size(), equalTo(0));
+    }
+
+    @Test
+    public void cancel() throws InterruptedException {
+        Vector<MeteorogramInfo> infos = new Vector<MeteorogramInfo>();
+        CountDownLatch blocker = new CountDownLatch(1);
+        for (int i = 0; i < 4; i++) {
+            MeteorogramInfo info = createInfo(i, null);
+            infos.add(info);
+            DummyForecastDataDownloader task = new DummyForecastDataDownloader();
+            task.blocker = blocker;
+            infoToTask.put(info, task);
+        }
+        RefreshAllTask fixture = createFixture(infos, 2);
+        new Thread(fixture).start();
+        while (running.get() < 2) {
+            Thread.sleep(10);
+        }
+        assertThat(fixture.cancel(), is(true));
+        assertThat(listener.await(), is(true));
+        assertThat(listener.last, is(sameInstance(Status.CANCELLED)));
+        assertThat(fixture.isCancelled(), is(true));
+        assertThat(fixture.hasFailed(), is(true));
+        assertThat(started.size(), equalTo(2));
+        assertThat(fixture.cancel(), is(false));
+        Hashtable brokerTasks = (Hashtable) Whitebox.getInternalState(broker,
+                MeteorogramBrokerTest.INFO_TO_TASK);
+        assertThat(brokerTasks.size(), equalTo(0));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void statusUpdateNull() {
+        createFixture(new Vector(), 1).statusUpdate(null, Status.STARTED);
+    }
+
+    private MeteorogramInfo createInfo(int id, String modelStart) {
+        MeteorogramInfo info = new MeteorogramInfo();
+        info.setId(id);
+        if (modelStart != null) {
+            info.setForecastData(new ForecastData(modelStart));
+        }
+        return info;
+    }
+
+    private RefreshAllTask createFixture(Vector infos, int width) {
+        RefreshAllTask fixture = new RefreshAllTask(broker, infos, width) {
+
+            @Override
+            protected ForecastDataDownloader createTask(MeteorogramInfo info) {
+                if (failingInfos.contains(info)) {
+                    throw new IllegalStateException("Cannot create task!");
+                }
+                DummyForecastDataDownloader task = infoToTask.get(info);
+                if (task == null) {
+                    return null;
+                }
+                task.setMeteorogramInfo(info);
+                Hashtable brokerTasks = (Hashtable) Whitebox.getInternalState(broker,
+                        MeteorogramBrokerTest.INFO_TO_TASK);
+                brokerTasks.put(info, task);
+                return task;
+            }
+        };
+        fixture.addListener(listener);
+        return fixture;
+    }
+
+    private class DummyStatusListener implements StatusListener {
+
+        final CountDownLatch done = new CountDownLatch(1);
+        final Vector<Integer> progresses = new Vector<Integer>();
+        volatile Status last = null;
+        volatile int finals = 0;
+
+        @Override
+        public void statusUpdate(StatusReporter source, Status status) {
+            last = status;
+            if (status == Status.FINISHED || status == Status.CANCELLED) {
+                finals++;
+                done.countDown();
+            } else {
+                progresses.add(status.getProgress());
+            }
+        }
+
+        boolean await() throws InterruptedException {
+            return done.await(2, TimeUnit.SECONDS);
+        }
+    }
+
+    private class DummyForecastDataDownloader extends AbstractStatusReporter implements ForecastDataDownloader {
+
+        DownloadOutcome outcome = null;
+        MeteorogramInfo info;
+        ForecastData forecastData;
+        Status finalStatus = Status.FINISHED;
+        boolean fail = false;
+        CountDownLatch blocker = null;
+        volatile boolean cancelled = false;
+
+        @Override
+        public void run() {
+            started.add(info);
+            int now = running.incrementAndGet();
+            int max = maxRunning.get();
+            while (now > max && !maxRunning.compareAndSet(max, now)) {
+                max = maxRunning.get();
+            }
+            try {
+                Status progress = new Status();
+                progress.setProgress(50);
+                fireStatusUpdate(progress);
+                if (blocker != null) {
+                    blocker.await(2, TimeUnit.SECONDS);
+                } else {
+                    Thread.sleep(20);
+                }
+            } catch (InterruptedException ex) {
+                cancelled = true;
+            } finally {
+                running.decrementAndGet();
+            }
+            if (fail) {
+                throw new IllegalStateException("Failed on purpose");
+            }
+            if (cancelled) {
+                fireStatusUpdate(Status.CANCELLED);
+                return;
+            }
+            if (finalStatus == Status.FINISHED && forecastData != null) {
+                info.setForecastData(forecastData);
+            }
+            fireStatusUpdate(finalStatus);
+        }
+
+        @Override
+        public boolean cancel() {
+            cancelled = true;
+            if (blocker != null) {
+                blocker.countDown();
+            }
+            return true;
+        }
+
+        @Override
+        public void setMeteorogramInfo(MeteorogramInfo info) {
+            this.info = info;
+        }
+
+        @Override
+        public MeteorogramInfo getMeteorogramInfo() {
+            return info;
+        }
+
+        @Override
+        public boolean isForecastDataChanged() {
+            return true;
+        }
+
+        @Override
+        public boolean isModelResultDuplicate() {
+            return false;
+        }
+
+        @Override
+        public String getModelResultUrl() {
+            return null;
+        }
+
+        @Override
+        public void setStartDateDownloader(StartDateDownloader startDateDownloader) {
+            throw new UnsupportedOperationException("Not supported yet.");
+        }
+
+        @Override
+        public void setModelResultDownloader(ModelResultDownloader modelResultDownloader) {
+            throw new UnsupportedOperationException("Not supported yet.");
+        }
+
+        @Override
+        public void setModelResultDownloadChecker(ModelDownloadChecker modelDownloadChecker) {
+            throw new UnsupportedOperationException("Not supported yet.");
+        }
+
+        @Override
+        public void setLegendDownloader(ModelResultDownloader legendDownloader) {
+            throw new UnsupportedOperationException("Not supported yet.");
+        }
+
+        @Override
+        public DownloadOutcome getOutcome() {
+            return outcome;
+        }
+    }
+}
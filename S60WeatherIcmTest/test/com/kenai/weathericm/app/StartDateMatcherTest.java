@@ -0,0 +1,131 @@
+/*
+ *  Copyright (C) 2010 Przemek Kryger
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.kenai.weathericm.app;
+
+import com.kenai.weathericm.util.Properties;
+import net.sf.microlog.core.config.PropertyConfigurator;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.hamcrest.Matchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Tests for {@link StartDateMatcher}.
+ * @author Przemek Kryger
+ */
+public class StartDateMatcherTest {
+
+    @BeforeClass
+    public static void setUpClass() {
+        PropertyConfigurator.configure("/testMicrolog.properties");
+    }
+    private StartDateMatcher fixture;
+
+    @Before
+    public void setUp() {
+        Properties properties = new Properties();
+        properties.setProperty(AbstractForecastDataDownloader.PARSE_YEAR_KEY, "var SYYYY=\"");
+        properties.setProperty(AbstractForecastDataDownloader.PARSE_MONTH_KEY, "var SMM=\"");
+        properties.setProperty(AbstractForecastDataDownloader.PARSE_DAY_KEY, "var SDD=\"");
+        properties.setProperty(AbstractForecastDataDownloader.PARSE_HOUR_KEY, "var SST=\"");
+        fixture = new StartDateScanner(properties).createMatcher();
+    }
+
+    private boolean feed(String data) {
+        byte[] bytes = data.getBytes();
+        return fixture.feed(bytes, 0, bytes.length);
+    }
+
+    @Test
+    public void feed() {
+        boolean complete = feed("var SST=\"06\";var SDD=\"01\";var SMM=\"12\";var SYYYY=\"2009\";");
+        assertThat(complete, is(true));
+        assertThat(fixture.isComplete(), is(true));
+        assertThat(fixture.getStartDate(), equalTo("2009120106"));
+    }
+
+    @Test
+    public void feedSplitMarkers() {
+        String data = "var SYYYY=\"2010\";var SMM=\"05\";var SDD=\"14\";var SST=\"12\";";
+        boolean complete = false;
+        for (int i = 0; i < data.length(); i += 3) {
+            complete = feed(data.substring(i, Math.min(i + 3, data.length())));
+        }
+        assertThat(complete, is(true));
+        assertThat(fixture.getStartDate(), equalTo("2010051412"));
+    }
+
+    @Test
+    public void feedPartialMarkerRestarts() {
+        boolean complete = feed("var Svar SYYYY=\"2010\";var SMvar SMM=\"05\";"
+                + "var SDD=\"14\";var SST=\"12\";");
+        assertThat(complete, is(true));
+        assertThat(fixture.getStartDate(), equalTo("2010051412"));
+    }
+
+    @Test
+    public void feedFirstOccurrence() {
+        feed("var SYYYY=\"2010\";var SYYYY=\"2011\";var SMM=\"05\";var SDD=\"14\";var SST=\"12\";");
+        assertThat(fixture.getStartDate(), equalTo("2010051412"));
+    }
+
+    @Test
+    public void feedStopsWhenComplete() {
+        byte[] data = "var SYYYY=\"2010\";var SMM=\"05\";var SDD=\"14\";var SST=\"12\";var SST=\"18\";".getBytes();
+        boolean complete = fixture.feed(data, 0, data.length);
+        assertThat(complete, is(true));
+        assertThat(fixture.getStartDate(), equalTo("2010051412"));
+    }
+
+    @Test
+    public void feedChars() {
+        String data = "var SYYYY=\"2010\";var SMM=\"05\";var SDD=\"14\";var SST=\"12\";";
+        boolean complete = false;
+        for (int i = 0; i < data.length(); i++) {
+            complete = fixture.feed(data.charAt(i));
+        }
+        assertThat(complete, is(true));
+        assertThat(fixture.getStartDate(), equalTo("2010051412"));
+    }
+
+    @Test
+    public void isCaptured() {
+        feed("var SYYYY=\"2010\";var SMM=\"0");
+        assertThat(fixture.isCaptured(StartDateScanner.YEAR), is(true));
+        assertThat(fixture.isCaptured(StartDateScanner.MONTH), is(false));
+        assertThat(fixture.isCaptured(StartDateScanner.DAY), is(false));
+        assertThat(fixture.isCaptured(StartDateScanner.HOUR), is(false));
+        assertThat(fixture.isComplete(), is(false));
+    }
+
+    @Test
+    public void reset() {
+        feed("var SYYYY=\"20");
+        fixture.reset();
+        boolean complete = feed("var SYYYY=\"2010\";var SMM=\"05\";var SDD=\"14\";var SST=\"12\";");
+        assertThat(complete, is(true));
+        assertThat(fixture.getStartDate(), equalTo("2010051412"));
+    }
+
+    @Test
+    public void getStartDateIncomplete() {
+        feed("var SYYYY=\"2010\";var SMM=\"05\";var SDD=\"14\";");
+        assertThat(fixture.getStartDate(), is(nullValue()));
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ *  Copyright (C) 2010 Przemek Kryger
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.kenai.weathericm.app;
+
+import com.kenai.weathericm.domain.MeteorogramType;
+import com.kenai.weathericm.util.Properties;
+import com.kenai.weathericm.util.PropertiesRepository;
+import net.sf.microlog.core.config.PropertyConfigurator;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.hamcrest.Matchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Tests for {@link StartDateScanner}.
+ * @author Przemek Kryger
+ */
+public class StartDateScannerTest {
+
+    @BeforeClass
+    public static void setUpClass() {
+        PropertyConfigurator.configure("/testMicrolog.properties");
+    }
+    private Properties properties;
+
+    @Before
+    public void setUp() {
+        properties = new Properties();
+        properties.setProperty(AbstractForecastDataDownloader.PARSE_DAY_KEY, "day.key");
+        properties.setProperty(AbstractForecastDataDownloader.PARSE_HOUR_KEY, "hour.key");
+        properties.setProperty(AbstractForecastDataDownloader.PARSE_MONTH_KEY, "month.key");
+        properties.setProperty(AbstractForecastDataDownloader.PARSE_YEAR_KEY, "year.key");
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void createNullProperties() {
+        new StartDateScanner(null);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void createNoYearKey() {
+        properties.remove(AbstractForecastDataDownloader.PARSE_YEAR_KEY);
+        new StartDateScanner(properties);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void createNoMonthKey() {
+        properties.remove(AbstractForecastDataDownloader.PARSE_MONTH_KEY);
+        new StartDateScanner(properties);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void createNoDayKey() {
+        properties.remove(AbstractForecastDataDownloader.PARSE_DAY_KEY);
+        new StartDateScanner(properties);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void createNoHourKey() {
+        properties.remove(AbstractForecastDataDownloader.PARSE_HOUR_KEY);
+        new StartDateScanner(properties);
+    }
+
+    @Test
+    public void createFailureFunction() {
+        properties.setProperty(AbstractForecastDataDownloader.PARSE_YEAR_KEY, "abab");
+        StartDateScanner fixture = new StartDateScanner(properties);
+        assertThat(fixture.failures[StartDateScanner.YEAR], equalTo(new int[]{0, 0, 1, 2}));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void getScannerNullType() {
+        StartDateScanner.getScanner(null, properties);
+    }
+
+    @Test
+    public void getScannerCached() {
+        Properties umProperties = PropertiesRepository.getProperties("/UM.properties");
+        StartDateScanner first = StartDateScanner.getScanner(MeteorogramType.UM, umProperties);
+        StartDateScanner second = StartDateScanner.getScanner(MeteorogramType.UM, umProperties);
+        assertThat(first, is(notNullValue()));
+        assertThat(second, is(sameInstance(first)));
+    }
+
+    @Test
+    public void createMatcher() {
+        StartDateScanner fixture = new StartDateScanner(properties);
+        StartDateMatcher first = fixture.createMatcher();
+        StartDateMatcher second = fixture.createMatcher();
+        assertThat(first, is(notNullValue()));
+        assertThat(second, is(not(sameInstance(first))));
+    }
+}
@@ -0,0 +1,295 @@
+/*
+ *  Copyright (C) 2010 Przemek Kryger
+ * 
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ * 
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.kenai.weathericm.app;
+
+import com.kenai.weathericm.app.helpers.ForecastDataInMemoryDao;
+import com.kenai.weathericm.app.helpers.ForecastHistoryInMemoryDao;
+import com.kenai.weathericm.domain.ForecastData;
+import com.kenai.weathericm.domain.MeteorogramInfo;
+import com.kenai.weathericm.repository.ForecastDataDao;
+import com.kenai.weathericm.repository.ForecastHistoryDao;
+import net.sf.microlog.core.config.PropertyConfigurator;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.powermock.reflect.Whitebox;
+import static org.hamcrest.Matchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Tests for {@link StorageQuotaManager}.
+ * @author Przemek Kryger
+ */
+public class StorageQuotaManagerTest {
+
+    private StorageQuotaManager fixture;
+    private ForecastDataInMemoryDao dao;
+    private ForecastHistoryInMemoryDao historyDao;
+
+    @BeforeClass
+    public static void setUpClass() {
+        PropertyConfigurator.configure("/testMicrolog.properties");
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        fixture = Whitebox.invokeConstructor(StorageQuotaManager.class);
+        dao = new ForecastDataInMemoryDao();
+        fixture.setForecastDataDao(dao);
+        historyDao = new ForecastHistoryInMemoryDao(3);
+        fixture.setForecastHistoryDao(historyDao);
+    }
+
+    private void archiveRun(MeteorogramInfo info, String modelStart, int length) {
+        ForecastData forecastData = new ForecastData(modelStart);
+        forecastData.setModelResult(new byte[length]);
+        historyDao.archive(info.getId(), forecastData);
+        fixture.trackHistory(info, historyDao.getSize(info.getId()));
+    }
+
+    private MeteorogramInfo createStoredInfo(int id, String modelStart, int length) {
+        ForecastData forecastData = new ForecastData(modelStart);
+        forecastData.setModelResult(new byte[length]);
+        dao.create(id, forecastData);
+        MeteorogramInfo info = new MeteorogramInfo();
+        info.setId(id);
+        info.setName("info" + id);
+        info.setForecastData(forecastData);
+        fixture.track(info);
+        return info;
+    }
+
+    @Test
+    public void getInstance() {
+        assertThat(StorageQuotaManager.getInstance(), is(notNullValue()));
+        assertThat(StorageQuotaManager.getInstance(), is(sameInstance(StorageQuotaManager.getInstance())));
+    }
+
+    @Test
+    public void getSetForecastDataDao() {
+        assertThat(fixture.getForecastDataDao(), is(sameInstance((ForecastDataDao) dao)));
+        fixture.setForecastDataDao(null);
+        assertThat(fixture.getForecastDataDao(), is(nullValue()));
+    }
+
+    @Test
+    public void getSetForecastHistoryDao() {
+        assertThat(fixture.getForecastHistoryDao(), is(sameInstance((ForecastHistoryDao) historyDao)));
+        fixture.setForecastHistoryDao(null);
+        assertThat(fixture.getForecastHistoryDao(), is(nullValue()));
+    }
+
+    @Test
+    public void getSetBudget() {
+        assertThat(fixture.getBudget(), equalTo(StorageQuotaManager.DEFAULT_BUDGET));
+        fixture.setBudget(10);
+        assertThat(fixture.getBudget(), equalTo(10));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setBudgetNegative() {
+        fixture.setBudget(-1);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void trackNull() {
+        fixture.track(null);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void trackHistoryNull() {
+        fixture.trackHistory(null, 10);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void forgetNull() {
+        fixture.forget(null);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void viewedNull() {
+        fixture.viewed(null);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void isRoomForNull() {
+        fixture.isRoomFor(null);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void getFootprintNull() {
+        fixture.getFootprint(null);
+    }
+
+    @Test
+    public void trackAndForget() {
+        MeteorogramInfo first = createStoredInfo(1, "2010102012", 10);
+        MeteorogramInfo second = createStoredInfo(2, "2010102012", 20);
+        assertThat(fixture.getUsedBytes(), equalTo(30));
+        assertThat(fixture.getFootprint(first), equalTo(10));
+        first.getForecastData().setModelResult(new byte[15]);
+        fixture.track(first);
+        assertThat(fixture.getUsedBytes(), equalTo(35));
+        fixture.forget(second);
+        assertThat(fixture.getUsedBytes(), equalTo(15));
+        assertThat(fixture.getFootprint(second), equalTo(0));
+    }
+
+    @Test
+    public void trackHistory() {
+        fixture.setBudget(50);
+        MeteorogramInfo info = createStoredInfo(1, "2010102012", 20);
+        archiveRun(info, "2010102000", 20);
+        assertThat(fixture.getUsedBytes(), equalTo(40));
+        assertThat(fixture.getFootprint(info), equalTo(20));
+        MeteorogramInfo other = new MeteorogramInfo();
+        other.setId(2);
+        other.setForecastData(new ForecastData("2010102012"));
+        other.getForecastData().setModelResult(new byte[11]);
+        assertThat(fixture.isRoomFor(other), is(false));
+        fixture.forget(info);
+        assertThat(fixture.getUsedBytes(), equalTo(20));
+        fixture.trackHistory(info, 0);
+        assertThat(fixture.getUsedBytes(), equalTo(0));
+    }
+
+    @Test
+    public void trackHistoryNoId() {
+        fixture.trackHistory(new MeteorogramInfo(), 10);
+        assertThat(fixture.getUsedBytes(), equalTo(0));
+    }
+
+    @Test
+    public void trackNoId() {
+        MeteorogramInfo info = new MeteorogramInfo();
+        info.setForecastData(new ForecastData("2010102012"));
+        info.getForecastData().setModelResult(new byte[10]);
+        fixture.track(info);
+        assertThat(fixture.getUsedBytes(), equalTo(0));
+    }
+
+    @Test
+    public void isRoomFor() {
+        fixture.setBudget(50);
+        MeteorogramInfo first = createStoredInfo(1, "2010102012", 30);
+        MeteorogramInfo other = new MeteorogramInfo();
+        other.setId(2);
+        other.setForecastData(new ForecastData("2010102012"));
+        other.getForecastData().setModelResult(new byte[21]);
+        assertThat(fixture.isRoomFor(other), is(false));
+        other.getForecastData().setModelResult(new byte[20]);
+        assertThat(fixture.isRoomFor(other), is(true));
+        first.getForecastData().setModelResult(new byte[50]);
+        assertThat(fixture.isRoomFor(first), is(true));
+    }
+
+    @Test
+    public void evictLeastRecentlyViewed() {
+        MeteorogramInfo first = createStoredInfo(1, "2010102012", 10);
+        MeteorogramInfo second = createStoredInfo(2, "2010102012", 10);
+        MeteorogramInfo third = createStoredInfo(3, "2010102012", 10);
+        fixture.viewed(second);
+        fixture.viewed(first);
+        fixture.viewed(third);
+        assertThat(fixture.evict(null), is(sameInstance(second)));
+        assertThat(second.getForecastData(), is(nullValue()));
+        assertThat(dao.exists(2), is(false));
+        assertThat(fixture.getUsedBytes(), equalTo(20));
+        assertThat(fixture.evict(third), is(sameInstance(first)));
+        assertThat(fixture.evict(third), is(nullValue()));
+        assertThat(dao.exists(3), is(true));
+    }
+
+    @Test
+    public void evictOutdatedFirst() {
+        MeteorogramInfo outdated = createStoredInfo(1, "2010101912", 10);
+        MeteorogramInfo recent = createStoredInfo(2, "2010102012", 10);
+        fixture.viewed(recent);
+        fixture.viewed(outdated);
+        assertThat(fixture.evict(null), is(sameInstance(outdated)));
+        assertThat(fixture.evict(null), is(sameInstance(recent)));
+    }
+
+    @Test
+    public void evictNotViewedFirst() {
+        MeteorogramInfo viewed = createStoredInfo(1, "2010102012", 10);
+        MeteorogramInfo notViewed = createStoredInfo(2, "2010102012", 10);
+        fixture.viewed(viewed);
+        assertThat(fixture.evict(null), is(sameInstance(notViewed)));
+    }
+
+    @Test
+    public void evictHistoryFirst() {
+        MeteorogramInfo first = createStoredInfo(1, "2010101912", 10);
+        MeteorogramInfo second = createStoredInfo(2, "2010102012", 10);
+        archiveRun(first, "2010101900", 10);
+        archiveRun(second, "2010102000", 10);
+        archiveRun(second, "2010101912", 10);
+        fixture.viewed(first);
+        fixture.viewed(second);
+        assertThat(fixture.getUsedBytes(), equalTo(50));
+        assertThat(fixture.evict(null), is(sameInstance(first)));
+        assertThat(historyDao.getRunCount(1), equalTo(0));
+        assertThat(first.getForecastData(), is(notNullValue()));
+        assertThat(dao.exists(1), is(true));
+        assertThat(fixture.getUsedBytes(), equalTo(40));
+        assertThat(fixture.evict(first), is(sameInstance(second)));
+        assertThat(historyDao.getRunCount(2), equalTo(0));
+        assertThat(second.getForecastData(), is(notNullValue()));
+        assertThat(fixture.getUsedBytes(), equalTo(20));
+        assertThat(fixture.evict(null), is(sameInstance(first)));
+        assertThat(first.getForecastData(), is(nullValue()));
+        assertThat(fixture.getUsedBytes(), equalTo(10));
+    }
+
+    @Test
+    public void evictHistoryNoDao() {
+        fixture.setForecastHistoryDao(null);
+        MeteorogramInfo info = createStoredInfo(1, "2010102012", 10);
+        fixture.trackHistory(info, 10);
+        assertThat(fixture.evict(null), is(sameInstance(info)));
+        assertThat(info.getForecastData(), is(notNullValue()));
+        assertThat(fixture.getUsedBytes(), equalTo(10));
+    }
+
+    @Test
+    public void evictNothing() {
+        MeteorogramInfo info = new MeteorogramInfo();
+        info.setId(1);
+        fixture.viewed(info);
+        fixture.track(info);
+        assertThat(fixture.evict(null), is(nullValue()));
+    }
+
+    @Test
+    public void evictNoDao() {
+        fixture.setForecastDataDao(null);
+        MeteorogramInfo info = createStoredInfo(1, "2010102012", 10);
+        assertThat(fixture.evict(null), is(sameInstance(info)));
+        assertThat(fixture.getUsedBytes(), equalTo(0));
+    }
+
+    @Test
+    public void getReport() {
+        fixture.setBudget(100);
+        createStoredInfo(1, "2010102012", 10);
+        String report = fixture.getReport();
+        assertThat(report, containsString("1 info1: 10 B, history 0 B"));
+        assertThat(report, endsWith("Total: 10 of 100 B"));
+    }
+}
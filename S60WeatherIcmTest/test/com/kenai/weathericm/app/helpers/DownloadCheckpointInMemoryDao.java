@@ -0,0 +1,78 @@
+/*
+ *  Copyright (C) 2010 Przemek Kryger
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.kenai.weathericm.app.helpers;
+
+import com.kenai.weathericm.domain.DownloadCheckpoint;
+import com.kenai.weathericm.repository.DownloadCheckpointDao;
+import java.util.HashMap;
+import java.util.Map;
+import net.sf.microlog.core.Logger;
+import net.sf.microlog.core.LoggerFactory;
+
+/**
+ * Simple in-memory implementation of {@link DownloadCheckpointDao}
+ * @author Przemek Kryger
+ */
+public class DownloadCheckpointInMemoryDao implements DownloadCheckpointDao {
+
+    /**
+     * The logger for the class
+     */
+    private final static Logger log = LoggerFactory.getLogger(DownloadCheckpointInMemoryDao.class);
+    /**
+     * The in-RAM store.
+     */
+    private Map<String, DownloadCheckpoint> store = new HashMap<String, DownloadCheckpoint>();
+
+    @Override
+    public DownloadCheckpoint read(String url) {
+        log.info("In read...");
+        return copy(store.get(url));
+    }
+
+    @Override
+    public boolean createOrUpdate(DownloadCheckpoint checkpoint) {
+        log.info("In createOrUpdate...");
+        store.put(checkpoint.getUrl(), copy(checkpoint));
+        return true;
+    }
+
+    @Override
+    public boolean delete(String url) {
+        log.info("In delete...");
+        return store.remove(url) != null;
+    }
+
+    /**
+     * Copies the {@code checkpoint}, so it behaves like a persisted one.
+     * @param checkpoint the {@link DownloadCheckpoint} to copy or {@code null}.
+     * @return the copy or {@code null}.
+     */
+    private DownloadCheckpoint copy(DownloadCheckpoint checkpoint) {
+        if (checkpoint == null) {
+            return null;
+        }
+        DownloadCheckpoint copy = new DownloadCheckpoint(checkpoint.getUrl());
+        copy.setETag(checkpoint.getETag());
+        copy.setLastModified(checkpoint.getLastModified());
+        if (checkpoint.getData() != null) {
+            copy.setData(checkpoint.getData().clone());
+        }
+        return copy;
+    }
+}
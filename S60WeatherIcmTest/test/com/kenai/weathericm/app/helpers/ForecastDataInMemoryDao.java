@@ -20,8 +20,10 @@ package com.kenai.weathericm.app.helpers;
 import com.kenai.weathericm.domain.ForecastData;
 import com.kenai.weathericm.repository.ForecastDataDao;
 import com.kenai.weathericm.repository.ForecastDataSerializer;
+import java.util.Calendar;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.TimeZone;
 import net.sf.microlog.core.Logger;
 import net.sf.microlog.core.LoggerFactory;
 
@@ -39,6 +41,10 @@ public class ForecastDataInMemoryDao implements ForecastDataDao {
      * The in-RAM store.
      */
     private Map<Integer, ForecastData> store = new HashMap<Integer, ForecastData>();
+    /**
+     * The number of {@link #reclaim()} calls.
+     */
+    private int reclaimCount = 0;
 
     @Override
     public boolean create(Integer id, ForecastData forecastData) {
@@ -56,6 +62,23 @@ public class ForecastDataInMemoryDao implements ForecastDataDao {
         return store.get(id);
     }
 
+    @Override
+    public ForecastData readHeader(Integer id) {
+        log.info("In readHeader...");
+        ForecastData forecastData = store.get(id);
+        if (forecastData == null) {
+            return null;
+        }
+        Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("GMT"));
+        calendar.setTime(forecastData.getModelStart());
+        ForecastData header = new ForecastData(calendar.get(Calendar.YEAR),
+                calendar.get(Calendar.MONTH) + 1, calendar.get(Calendar.DAY_OF_MONTH),
+                calendar.get(Calendar.HOUR_OF_DAY));
+        header.setModelResultHeader(forecastData.getModelResultLength(),
+                forecastData.getChecksum());
+        return header;
+    }
+
     @Override
     public boolean update(Integer id, ForecastData forecastData) {
         log.info("In update...");
@@ -90,6 +113,19 @@ public class ForecastDataInMemoryDao implements ForecastDataDao {
         }
     }
 
+    @Override
+    public void reclaim() {
+        log.info("In reclaim...");
+        reclaimCount++;
+    }
+
+    /**
+     * @return the number of {@link #reclaim()} calls.
+     */
+    public int getReclaimCount() {
+        return reclaimCount;
+    }
+
     @Override
     public void setForecastDataSerializer(ForecastDataSerializer serializer) {
         throw new UnsupportedOperationException("Not supported yet.");
@@ -0,0 +1,119 @@
+/*
+ *  Copyright (C) 2010 Przemek Kryger
+ * 
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ * 
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.kenai.weathericm.app.helpers;
+
+import com.kenai.weathericm.domain.ForecastData;
+import com.kenai.weathericm.repository.ForecastHistoryDao;
+import com.kenai.weathericm.repository.ForecastDataSerializer;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import net.sf.microlog.core.Logger;
+import net.sf.microlog.core.LoggerFactory;
+
+/**
+ * Simple in-memory implementation of {@link ForecastHistoryDao}
+ * @author Przemek Kryger
+ */
+public class ForecastHistoryInMemoryDao implements ForecastHistoryDao {
+
+    /**
+     * The logger for the class
+     */
+    private final static Logger log = LoggerFactory.getLogger(ForecastHistoryInMemoryDao.class);
+    /**
+     * The maximum number of runs kept for an id.
+     */
+    private final int runsPerId;
+    /**
+     * The in-RAM store, the latest run is the first one.
+     */
+    private Map<Integer, LinkedList<ForecastData>> store = new HashMap<Integer, LinkedList<ForecastData>>();
+
+    /**
+     * Creates a new instance.
+     * @param runsPerId the maximum number of runs kept for an id.
+     */
+    public ForecastHistoryInMemoryDao(int runsPerId) {
+        this.runsPerId = runsPerId;
+    }
+
+    @Override
+    public boolean archive(Integer id, ForecastData forecastData) {
+        log.info("In archive...");
+        if (forecastData.getModelResult() == null) {
+            return false;
+        }
+        LinkedList<ForecastData> runs = store.get(id);
+        if (runs == null) {
+            runs = new LinkedList<ForecastData>();
+            store.put(id, runs);
+        }
+        if (!runs.isEmpty() && runs.getFirst().getModelStart().equals(forecastData.getModelStart())) {
+            return true;
+        }
+        runs.addFirst(forecastData);
+        if (runs.size() > runsPerId) {
+            runs.removeLast();
+        }
+        return true;
+    }
+
+    @Override
+    public ForecastData read(Integer id, int back) {
+        log.info("In read...");
+        LinkedList<ForecastData> runs = store.get(id);
+        if (runs == null || back < 0 || back >= runs.size()) {
+            return null;
+        }
+        return runs.get(back);
+    }
+
+    @Override
+    public int getRunCount(Integer id) {
+        log.info("In getRunCount...");
+        LinkedList<ForecastData> runs = store.get(id);
+        return runs == null ? 0 : runs.size();
+    }
+
+    @Override
+    public int getSize(Integer id) {
+        log.info("In getSize...");
+        LinkedList<ForecastData> runs = store.get(id);
+        if (runs == null) {
+            return 0;
+        }
+        int size = 0;
+        for (ForecastData run : runs) {
+            size += run.getModelResultLength();
+        }
+        return size;
+    }
+
+    @Override
+    public boolean delete(Integer id) {
+        log.info("In delete...");
+        store.remove(id);
+        return true;
+    }
+
+    @Override
+    public void setForecastDataSerializer(ForecastDataSerializer serializer) {
+        throw new UnsupportedOperationException("Not supported yet.");
+    }
+}
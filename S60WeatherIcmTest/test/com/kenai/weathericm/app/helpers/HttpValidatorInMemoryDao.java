@@ -0,0 +1,60 @@
+/*
+ *  Copyright (C) 2010 Przemek Kryger
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.kenai.weathericm.app.helpers;
+
+import com.kenai.weathericm.domain.HttpValidator;
+import com.kenai.weathericm.repository.HttpValidatorDao;
+import java.util.HashMap;
+import java.util.Map;
+import net.sf.microlog.core.Logger;
+import net.sf.microlog.core.LoggerFactory;
+
+/**
+ * Simple in-memory implementation of {@link HttpValidatorDao}
+ * @author Przemek Kryger
+ */
+public class HttpValidatorInMemoryDao implements HttpValidatorDao {
+
+    /**
+     * The logger for the class
+     */
+    private final static Logger log = LoggerFactory.getLogger(HttpValidatorInMemoryDao.class);
+    /**
+     * The in-RAM store.
+     */
+    private Map<String, HttpValidator> store = new HashMap<String, HttpValidator>();
+
+    @Override
+    public HttpValidator read(String key) {
+        log.info("In read...");
+        return store.get(key);
+    }
+
+    @Override
+    public boolean createOrUpdate(HttpValidator validator) {
+        log.info("In createOrUpdate...");
+        store.put(validator.getKey(), validator);
+        return true;
+    }
+
+    @Override
+    public boolean delete(String key) {
+        log.info("In delete...");
+        return store.remove(key) != null;
+    }
+}
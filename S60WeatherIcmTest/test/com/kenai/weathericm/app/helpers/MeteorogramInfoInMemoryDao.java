@@ -22,6 +22,7 @@ import net.sf.microlog.core.Logger;
 import net.sf.microlog.core.LoggerFactory;
 import com.kenai.weathericm.domain.MeteorogramInfo;
 import com.kenai.weathericm.repository.MeteorogramInfoDao;
+import com.kenai.weathericm.repository.MeteorogramInfoReadListener;
 import com.kenai.weathericm.repository.MeteorogramInfoSerializer;
 import java.util.HashMap;
 import java.util.Map;
@@ -111,6 +112,30 @@ public class MeteorogramInfoInMemoryDao implements MeteorogramInfoDao {
         }
     }
 
+    /**
+     * Persists all the {@code infos} in store.
+     * @param infos the {@link Vector} with {@link MeteorogramInfo}s to be persisted.
+     */
+    @Override
+    public void createOrUpdateAll(Vector infos) {
+        log.info("In create or update all...");
+        for (Object info : infos) {
+            createOrUpdate((MeteorogramInfo) info);
+        }
+    }
+
+    /**
+     * Deletes all the {@code infos} from store.
+     * @param infos the {@link Vector} with {@link MeteorogramInfo}s to be deleted.
+     */
+    @Override
+    public void deleteAll(Vector infos) {
+        log.info("In delete all...");
+        for (Object info : infos) {
+            delete((MeteorogramInfo) info);
+        }
+    }
+
     /**
      * Reads {@link MeteorogramInfo} with given {@code id} from store.
      * @param id the {@code int} of the entry in store to be read.
@@ -141,6 +166,23 @@ public class MeteorogramInfoInMemoryDao implements MeteorogramInfoDao {
         return infos;
     }
 
+    /**
+     * Reads all {@link MeteorogramInfo} entries from store and notifies the
+     * {@code listener} about each of them.
+     * @param listener the {@link MeteorogramInfoReadListener} to notify or {@code null}.
+     * @return the {@link Vector} with all {@link MeteorogramInfo}s in store.
+     */
+    @Override
+    public Vector readAll(MeteorogramInfoReadListener listener) {
+        Vector infos = readAll();
+        if (listener != null) {
+            for (Object info : infos) {
+                listener.readMeteorogramInfo((MeteorogramInfo) info);
+            }
+        }
+        return infos;
+    }
+
     /**
      * Since this implementation doesn't need to encode nor decode data, the
      * {@link MeteorogramInfoSerializer} is not needed.
@@ -0,0 +1,55 @@
+/*
+ *  Copyright (C) 2010 Przemek Kryger
+ * 
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ * 
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.kenai.weathericm.app.transport;
+
+import javax.microedition.io.Connector;
+import javax.microedition.io.HttpConnection;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.core.classloader.annotations.SuppressStaticInitializationFor;
+import org.powermock.modules.junit4.PowerMockRunner;
+import static org.hamcrest.Matchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.easymock.EasyMock.expect;
+import static org.powermock.api.easymock.PowerMock.createMock;
+import static org.powermock.api.easymock.PowerMock.mockStatic;
+import static org.powermock.api.easymock.PowerMock.replayAll;
+import static org.powermock.api.easymock.PowerMock.verifyAll;
+
+/**
+ * Tests for {@link ConnectorTransport} class.
+ * @author Przemek Kryger
+ */
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({Connector.class})
+@SuppressStaticInitializationFor("javax.microedition.io.Connector")
+public class ConnectorTransportTest {
+
+    @Test
+    public void open() throws Exception {
+        HttpConnection connectionMock = createMock(HttpConnection.class);
+        mockStatic(Connector.class);
+        expect(Connector.open("myUrl")).andReturn(connectionMock);
+        replayAll();
+        ConnectorTransport fixture = new ConnectorTransport();
+        fixture.configure(null);
+        assertThat(fixture.open("myUrl"), is(sameInstance(connectionMock)));
+        verifyAll();
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ *  Copyright (C) 2010 Przemek Kryger
+ * 
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ * 
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.kenai.weathericm.app.transport;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import org.junit.Before;
+import org.junit.Test;
+import static org.hamcrest.Matchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Tests for {@link Recording} class.
+ * @author Przemek Kryger
+ */
+public class RecordingTest {
+
+    private Recording fixture;
+
+    @Before
+    public void setUp() {
+        fixture = new Recording();
+    }
+
+    @Test
+    public void getFileUrl() {
+        String url = "http://www.meteo.pl/um/php/meteorogram_id_um.php?ntype=0u&id=1";
+        String fileUrl = Recording.getFileUrl("file:///E:/rec/", url);
+        assertThat(fileUrl, startsWith("file:///E:/rec/"));
+        assertThat(fileUrl, endsWith("_" + Integer.toHexString(url.hashCode())
+                + Recording.EXTENSION));
+        assertThat(fileUrl, containsString("meteorogram_id_um.php_ntype_0u_id_1"));
+        assertThat(fileUrl.indexOf('?'), is(-1));
+    }
+
+    @Test
+    public void getFileUrlLongUrl() {
+        StringBuffer url = new StringBuffer("http://");
+        for (int i = 0; i < 2 * Recording.MAX_NAME_LENGTH; i++) {
+            url.append('a');
+        }
+        String fileUrl = Recording.getFileUrl("file:///rec/", url.toString());
+        assertThat(fileUrl.length(), is("file:///rec/".length() + Recording.MAX_NAME_LENGTH
+                + 1 + Integer.toHexString(url.toString().hashCode()).length()
+                + Recording.EXTENSION.length()));
+    }
+
+    @Test
+    public void getFileUrlDifferentUrls() {
+        assertThat(Recording.getFileUrl("file:///rec/", "http://a/?b"),
+                is(not(Recording.getFileUrl("file:///rec/", "http://a/&b"))));
+    }
+
+    @Test
+    public void defaults() {
+        assertThat(fixture.getResponseCode(), is(0));
+        assertThat(fixture.getResponseMessage(), is(nullValue()));
+        assertThat(fixture.getBody().length, is(0));
+        assertThat(fixture.getHeaderCount(), is(0));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void setNullBody() {
+        fixture.setBody(null);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void addHeaderNullKey() {
+        fixture.addHeader(null, "value");
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void addHeaderNullValue() {
+        fixture.addHeader("key", null);
+    }
+
+    @Test
+    public void headers() {
+        fixture.addHeader("Content-Length", "10");
+        fixture.addHeader("ETag", "\"abc\"");
+        assertThat(fixture.getHeaderCount(), is(2));
+        assertThat(fixture.getHeaderFieldKey(0), is("Content-Length"));
+        assertThat(fixture.getHeaderField(0), is("10"));
+        assertThat(fixture.getHeaderFieldKey(1), is("ETag"));
+        assertThat(fixture.getHeaderField(1), is("\"abc\""));
+        assertThat(fixture.getHeaderFieldKey(2), is(nullValue()));
+        assertThat(fixture.getHeaderField(-1), is(nullValue()));
+        assertThat(fixture.getHeaderField("content-length"), is("10"));
+        assertThat(fixture.getHeaderField("etag"), is("\"abc\""));
+        assertThat(fixture.getHeaderField("Date"), is(nullValue()));
+    }
+
+    @Test
+    public void writeToReadFrom() throws IOException {
+        byte[] body = {1, 2, 3, 4, 5};
+        fixture.setResponseCode(206);
+        fixture.setResponseMessage("Partial Content");
+        fixture.addHeader("Content-Range", "bytes 5-9/10");
+        fixture.setBody(body);
+        Recording result = writeAndRead(fixture);
+        assertThat(result.getResponseCode(), is(206));
+        assertThat(result.getResponseMessage(), is("Partial Content"));
+        assertThat(result.getHeaderCount(), is(1));
+        assertThat(result.getHeaderFieldKey(0), is("Content-Range"));
+        assertThat(result.getHeaderField(0), is("bytes 5-9/10"));
+        assertThat(result.getBody(), is(equalTo(body)));
+    }
+
+    @Test
+    public void writeToReadFromNoMessage() throws IOException {
+        fixture.setResponseCode(200);
+        Recording result = writeAndRead(fixture);
+        assertThat(result.getResponseCode(), is(200));
+        assertThat(result.getResponseMessage(), is(nullValue()));
+        assertThat(result.getHeaderCount(), is(0));
+        assertThat(result.getBody().length, is(0));
+    }
+
+    @Test(expected = IOException.class)
+    public void readFromUnsupportedVersion() throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(baos);
+        dos.writeInt(Recording.VERSION + 1);
+        dos.close();
+        Recording.readFrom(new DataInputStream(new ByteArrayInputStream(baos.toByteArray())));
+    }
+
+    @Test(expected = IOException.class)
+    public void readFromTruncated() throws IOException {
+        fixture.setBody(new byte[10]);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(baos);
+        fixture.writeTo(dos);
+        dos.close();
+        byte[] data = baos.toByteArray();
+        Recording.readFrom(new DataInputStream(new ByteArrayInputStream(data, 0, data.length - 1)));
+    }
+
+    /**
+     * Writes the {@code recording} and reads it back.
+     */
+    static Recording writeAndRead(Recording recording) throws IOException {
+        return Recording.readFrom(new DataInputStream(new ByteArrayInputStream(toBytes(recording))));
+    }
+
+    /**
+     * Gets the bytes written by the {@code recording}.
+     */
+    static byte[] toBytes(Recording recording) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(baos);
+        recording.writeTo(dos);
+        dos.close();
+        return baos.toByteArray();
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ *  Copyright (C) 2010 Przemek Kryger
+ * 
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ * 
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.kenai.weathericm.app.transport;
+
+import com.kenai.weathericm.util.Properties;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import javax.microedition.io.Connector;
+import javax.microedition.io.HttpConnection;
+import javax.microedition.io.file.FileConnection;
+import net.sf.microlog.core.config.PropertyConfigurator;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.core.classloader.annotations.SuppressStaticInitializationFor;
+import org.powermock.modules.junit4.PowerMockRunner;
+import static org.hamcrest.Matchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.easymock.EasyMock.expect;
+import static org.powermock.api.easymock.PowerMock.createMock;
+import static org.powermock.api.easymock.PowerMock.mockStatic;
+import static org.powermock.api.easymock.PowerMock.replayAll;
+import static org.powermock.api.easymock.PowerMock.verifyAll;
+
+/**
+ * Tests for {@link RecordingTransport} and {@link RecordingHttpConnection} classes.
+ * @author Przemek Kryger
+ */
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({Connector.class})
+@SuppressStaticInitializationFor("javax.microedition.io.Connector")
+public class RecordingTransportTest {
+
+    @BeforeClass
+    public static void setUpClass() {
+        PropertyConfigurator.configure("/testMicrolog.properties");
+    }
+    private final static String DIRECTORY = "file:///E:/rec/";
+    private final static String URL = "http://www.meteo.pl/mgram.php?id=1";
+    private RecordingTransport fixture;
+    private Properties properties;
+    private HttpConnection connectionMock;
+
+    @Before
+    public void setUp() {
+        fixture = new RecordingTransport();
+        properties = new Properties();
+        properties.setProperty(RecordingTransport.DIRECTORY_KEY, DIRECTORY);
+        connectionMock = createMock(HttpConnection.class);
+        mockStatic(Connector.class);
+    }
+
+    @Test
+    public void getDirectory() {
+        assertThat(RecordingTransport.getDirectory(properties), is(DIRECTORY));
+        properties.setProperty(RecordingTransport.DIRECTORY_KEY, "file:///E:/rec");
+        assertThat(RecordingTransport.getDirectory(properties), is(DIRECTORY));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void getDirectoryMissing() {
+        RecordingTransport.getDirectory(new Properties());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void openNotConfigured() throws IOException {
+        fixture.open(URL);
+    }
+
+    @Test
+    public void openRecords() throws Exception {
+        fixture.configure(properties);
+        byte[] body = {1, 2, 3, 4, 5, 6};
+        expect(Connector.open(URL)).andReturn(connectionMock);
+        expect(connectionMock.getResponseCode()).andReturn(HttpConnection.HTTP_OK).anyTimes();
+        expect(connectionMock.openInputStream()).andReturn(new ByteArrayInputStream(body));
+        expect(connectionMock.getResponseMessage()).andReturn("OK");
+        expect(connectionMock.getHeaderFieldKey(0)).andReturn("Content-Length");
+        expect(connectionMock.getHeaderField(0)).andReturn("6");
+        expect(connectionMock.getHeaderFieldKey(1)).andReturn(null);
+        expect(connectionMock.getHeaderField(1)).andReturn(null);
+        connectionMock.close();
+        ByteArrayOutputStream recorded = expectFile(false);
+        replayAll();
+        HttpConnection result = fixture.open(URL);
+        assertThat(result.getResponseCode(), is(HttpConnection.HTTP_OK));
+        InputStream is = result.openInputStream();
+        assertThat(is.read(), is(1));
+        assertThat(is.read(), is(2));
+        result.close();
+        verifyAll();
+        Recording recording = Recording.readFrom(
+                new DataInputStream(new ByteArrayInputStream(recorded.toByteArray())));
+        assertThat(recording.getResponseCode(), is(HttpConnection.HTTP_OK));
+        assertThat(recording.getResponseMessage(), is("OK"));
+        assertThat(recording.getHeaderCount(), is(1));
+        assertThat(recording.getHeaderField("Content-Length"), is("6"));
+        assertThat(recording.getBody(), is(equalTo(body)));
+    }
+
+    @Test
+    public void openReplacesRecording() throws Exception {
+        fixture.configure(properties);
+        expect(Connector.open(URL)).andReturn(connectionMock);
+        expect(connectionMock.getResponseCode()).andReturn(HttpConnection.HTTP_NOT_MODIFIED);
+        expect(connectionMock.getResponseMessage()).andReturn(null);
+        expect(connectionMock.getHeaderFieldKey(0)).andReturn(null);
+        expect(connectionMock.getHeaderField(0)).andReturn(null);
+        connectionMock.close();
+        ByteArrayOutputStream recorded = expectFile(true);
+        replayAll();
+        fixture.open(URL).close();
+        verifyAll();
+        Recording recording = Recording.readFrom(
+                new DataInputStream(new ByteArrayInputStream(recorded.toByteArray())));
+        assertThat(recording.getResponseCode(), is(HttpConnection.HTTP_NOT_MODIFIED));
+        assertThat(recording.getBody().length, is(0));
+    }
+
+    @Test
+    public void openBrokenNotRecorded() throws Exception {
+        fixture.configure(properties);
+        InputStream failing = new InputStream() {
+
+            @Override
+            public int read() throws IOException {
+                throw new IOException("Broken");
+            }
+        };
+        expect(Connector.open(URL)).andReturn(connectionMock);
+        expect(connectionMock.openInputStream()).andReturn(failing);
+        connectionMock.close();
+        replayAll();
+        HttpConnection result = fixture.open(URL);
+        try {
+            result.openInputStream().read();
+            assertThat("Expected failure", false);
+        } catch (IOException ex) {
+            result.close();
+        }
+        verifyAll();
+    }
+
+    /**
+     * Expects the recording to be written and gets the stream it's written to.
+     */
+    private ByteArrayOutputStream expectFile(boolean exists) throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        FileConnection fileMock = createMock(FileConnection.class);
+        expect(Connector.open(Recording.getFileUrl(DIRECTORY, URL), Connector.READ_WRITE)).andReturn(fileMock);
+        expect(fileMock.exists()).andReturn(exists);
+        if (exists) {
+            fileMock.truncate(0L);
+        } else {
+            fileMock.create();
+        }
+        expect(fileMock.openDataOutputStream()).andReturn(new DataOutputStream(baos));
+        fileMock.close();
+        return baos;
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ *  Copyright (C) 2010 Przemek Kryger
+ * 
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ * 
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.kenai.weathericm.app.transport;
+
+import com.kenai.weathericm.util.Properties;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import javax.microedition.io.ConnectionNotFoundException;
+import javax.microedition.io.Connector;
+import javax.microedition.io.HttpConnection;
+import javax.microedition.io.file.FileConnection;
+import net.sf.microlog.core.config.PropertyConfigurator;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.core.classloader.annotations.SuppressStaticInitializationFor;
+import org.powermock.modules.junit4.PowerMockRunner;
+import org.powermock.reflect.Whitebox;
+import static org.hamcrest.Matchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.easymock.EasyMock.expect;
+import static org.powermock.api.easymock.PowerMock.createMock;
+import static org.powermock.api.easymock.PowerMock.mockStatic;
+import static org.powermock.api.easymock.PowerMock.replayAll;
+import static org.powermock.api.easymock.PowerMock.verifyAll;
+
+/**
+ * Tests for {@link ReplayTransport} class.
+ * @author Przemek Kryger
+ */
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({Connector.class})
+@SuppressStaticInitializationFor("javax.microedition.io.Connector")
+public class ReplayTransportTest {
+
+    @BeforeClass
+    public static void setUpClass() {
+        PropertyConfigurator.configure("/testMicrolog.properties");
+    }
+    private final static String DIRECTORY = "file:///E:/rec/";
+    private final static String URL = "http://www.meteo.pl/mgram.php?id=1";
+    private ReplayTransport fixture;
+    private Properties properties;
+
+    @Before
+    public void setUp() {
+        fixture = new ReplayTransport();
+        properties = new Properties();
+        properties.setProperty(RecordingTransport.DIRECTORY_KEY, DIRECTORY);
+    }
+
+    @Test
+    public void configureDefaults() {
+        fixture.configure(properties);
+        assertThat((String) Whitebox.getInternalState(fixture, "directory"), is(DIRECTORY));
+        assertThat((Long) Whitebox.getInternalState(fixture, "latency"), is(0L));
+        assertThat((Long) Whitebox.getInternalState(fixture, "jitter"), is(0L));
+        assertThat((Long) Whitebox.getInternalState(fixture, "bandwidth"), is(0L));
+        assertThat((Integer) Whitebox.getInternalState(fixture, "failureRate"), is(0));
+    }
+
+    @Test
+    public void configure() {
+        properties.setProperty(ReplayTransport.LATENCY_KEY, "300");
+        properties.setProperty(ReplayTransport.JITTER_KEY, " 200 ");
+        properties.setProperty(ReplayTransport.BANDWIDTH_KEY, "4096");
+        properties.setProperty(ReplayTransport.FAILURE_RATE_KEY, "100");
+        properties.setProperty(ReplayTransport.SEED_KEY, "7");
+        fixture.configure(properties);
+        assertThat((Long) Whitebox.getInternalState(fixture, "latency"), is(300L));
+        assertThat((Long) Whitebox.getInternalState(fixture, "jitter"), is(200L));
+        assertThat((Long) Whitebox.getInternalState(fixture, "bandwidth"), is(4096L));
+        assertThat((Integer) Whitebox.getInternalState(fixture, "failureRate"), is(100));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void configureNoDirectory() {
+        fixture.configure(new Properties());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void configureNegative() {
+        properties.setProperty(ReplayTransport.LATENCY_KEY, "-1");
+        fixture.configure(properties);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void configureNotNumber() {
+        properties.setProperty(ReplayTransport.BANDWIDTH_KEY, "fast");
+        fixture.configure(properties);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void configureFailureRateTooHigh() {
+        properties.setProperty(ReplayTransport.FAILURE_RATE_KEY, "101");
+        fixture.configure(properties);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void openNotConfigured() throws IOException {
+        fixture.open(URL);
+    }
+
+    @Test
+    public void open() throws Exception {
+        fixture.configure(properties);
+        Recording recording = createRecording();
+        expectRecording(recording);
+        replayAll();
+        HttpConnection result = fixture.open(URL);
+        assertThat(result.getURL(), is(URL));
+        assertThat(result.getResponseCode(), is(HttpConnection.HTTP_OK));
+        assertThat(new DataInputStream(result.openInputStream()).readInt(), is(0x01020304));
+        verifyAll();
+    }
+
+    @Test(expected = ConnectionNotFoundException.class)
+    public void openNoRecording() throws Exception {
+        fixture.configure(properties);
+        FileConnection fileMock = createMock(FileConnection.class);
+        expect(Connector.open(Recording.getFileUrl(DIRECTORY, URL), Connector.READ)).andReturn(fileMock);
+        expect(fileMock.exists()).andReturn(false);
+        fileMock.close();
+        replayAll();
+        try {
+            fixture.open(URL);
+        } finally {
+            verifyAll();
+        }
+    }
+
+    @Test
+    public void openFailing() throws Exception {
+        properties.setProperty(ReplayTransport.FAILURE_RATE_KEY, "100");
+        fixture.configure(properties);
+        expectRecording(createRecording());
+        replayAll();
+        try {
+            fixture.open(URL);
+            assertThat("Expected failure", false);
+        } catch (IOException ex) {
+            assertThat(ex, is(not(instanceOf(ConnectionNotFoundException.class))));
+        }
+        verifyAll();
+    }
+
+    @Test
+    public void openLatency() throws Exception {
+        properties.setProperty(ReplayTransport.LATENCY_KEY, "100");
+        properties.setProperty(ReplayTransport.JITTER_KEY, "50");
+        fixture.configure(properties);
+        expectRecording(createRecording());
+        replayAll();
+        HttpConnection result = fixture.open(URL);
+        long latency = (Long) Whitebox.getInternalState(result, "latency");
+        assertThat(latency, is(allOf(greaterThanOrEqualTo(100L), lessThanOrEqualTo(150L))));
+        verifyAll();
+    }
+
+    @Test
+    public void openSameSeedSameShaping() throws Exception {
+        properties.setProperty(ReplayTransport.JITTER_KEY, "1000");
+        properties.setProperty(ReplayTransport.SEED_KEY, "42");
+        fixture.configure(properties);
+        ReplayTransport other = new ReplayTransport();
+        other.configure(properties);
+        expectRecording(createRecording());
+        expectRecording(createRecording());
+        replayAll();
+        HttpConnection first = fixture.open(URL);
+        HttpConnection second = other.open(URL);
+        assertThat(Whitebox.getInternalState(first, "latency"),
+                is(Whitebox.getInternalState(second, "latency")));
+        verifyAll();
+    }
+
+    private Recording createRecording() {
+        Recording recording = new Recording();
+        recording.setResponseCode(HttpConnection.HTTP_OK);
+        recording.setBody(new byte[]{1, 2, 3, 4});
+        return recording;
+    }
+
+    private void expectRecording(Recording recording) throws Exception {
+        FileConnection fileMock = createMock(FileConnection.class);
+        expect(Connector.open(Recording.getFileUrl(DIRECTORY, URL), Connector.READ)).andReturn(fileMock);
+        expect(fileMock.exists()).andReturn(true);
+        expect(fileMock.openDataInputStream()).andReturn(
+                new DataInputStream(new ByteArrayInputStream(RecordingTest.toBytes(recording))));
+        fileMock.close();
+    }
+}
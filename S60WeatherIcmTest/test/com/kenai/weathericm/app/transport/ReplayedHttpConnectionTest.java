@@ -0,0 +1,237 @@
+/*
+ *  Copyright (C) 2010 Przemek Kryger
+ * 
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ * 
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.kenai.weathericm.app.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import javax.microedition.io.HttpConnection;
+import org.junit.Before;
+import org.junit.Test;
+import static org.hamcrest.Matchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Tests for {@link ReplayedHttpConnection} class.
+ * @author Przemek Kryger
+ */
+public class ReplayedHttpConnectionTest {
+
+    private final static String URL = "http://www.meteo.pl:8080/um/php/mgram.php?id=1&type=um#top";
+    private Recording recording;
+
+    @Before
+    public void setUp() {
+        recording = new Recording();
+        recording.setResponseCode(HttpConnection.HTTP_OK);
+        recording.setResponseMessage("OK");
+        recording.addHeader("Content-Length", "2048");
+        recording.addHeader("Content-Type", "image/png");
+        byte[] body = new byte[2048];
+        for (int i = 0; i < body.length; i++) {
+            body[i] = (byte) i;
+        }
+        recording.setBody(body);
+    }
+
+    @Test
+    public void response() throws IOException {
+        ReplayedHttpConnection fixture = new ReplayedHttpConnection(URL, recording, 0L, 0L, -1);
+        assertThat(fixture.getResponseCode(), is(HttpConnection.HTTP_OK));
+        assertThat(fixture.getResponseMessage(), is("OK"));
+        assertThat(fixture.getLength(), is(2048L));
+        assertThat(fixture.getType(), is("image/png"));
+        assertThat(fixture.getEncoding(), is(nullValue()));
+        assertThat(fixture.getHeaderField("content-length"), is("2048"));
+        assertThat(fixture.getHeaderFieldKey(1), is("Content-Type"));
+        assertThat(fixture.getHeaderField(1), is("image/png"));
+        assertThat(fixture.getHeaderFieldInt("Content-Length", -1), is(2048));
+        assertThat(fixture.getHeaderFieldInt("Content-Type", -1), is(-1));
+        assertThat(fixture.getHeaderFieldDate("Date", 5L), is(5L));
+    }
+
+    @Test
+    public void lengthNotRecorded() {
+        recording = new Recording();
+        ReplayedHttpConnection fixture = new ReplayedHttpConnection(URL, recording, 0L, 0L, -1);
+        assertThat(fixture.getLength(), is(-1L));
+    }
+
+    @Test
+    public void urlParts() {
+        ReplayedHttpConnection fixture = new ReplayedHttpConnection(URL, recording, 0L, 0L, -1);
+        assertThat(fixture.getURL(), is(URL));
+        assertThat(fixture.getProtocol(), is("http"));
+        assertThat(fixture.getHost(), is("www.meteo.pl"));
+        assertThat(fixture.getPort(), is(8080));
+        assertThat(fixture.getFile(), is("/um/php/mgram.php"));
+        assertThat(fixture.getQuery(), is("id=1&type=um"));
+        assertThat(fixture.getRef(), is("top"));
+    }
+
+    @Test
+    public void urlPartsDefaults() {
+        ReplayedHttpConnection fixture =
+                new ReplayedHttpConnection("http://www.meteo.pl", recording, 0L, 0L, -1);
+        assertThat(fixture.getHost(), is("www.meteo.pl"));
+        assertThat(fixture.getPort(), is(80));
+        assertThat(fixture.getFile(), is("/"));
+        assertThat(fixture.getQuery(), is(nullValue()));
+        assertThat(fixture.getRef(), is(nullValue()));
+    }
+
+    @Test
+    public void requestProperties() {
+        ReplayedHttpConnection fixture = new ReplayedHttpConnection(URL, recording, 0L, 0L, -1);
+        assertThat(fixture.getRequestMethod(), is(HttpConnection.GET));
+        fixture.setRequestMethod(HttpConnection.HEAD);
+        fixture.setRequestProperty("Range", "bytes=10-");
+        assertThat(fixture.getRequestMethod(), is(HttpConnection.HEAD));
+        assertThat(fixture.getRequestProperty("Range"), is("bytes=10-"));
+        assertThat(fixture.getRequestProperty("If-Range"), is(nullValue()));
+    }
+
+    @Test(expected = IOException.class)
+    public void openOutputStream() throws IOException {
+        new ReplayedHttpConnection(URL, recording, 0L, 0L, -1).openOutputStream();
+    }
+
+    @Test
+    public void readBody() throws IOException {
+        ReplayedHttpConnection fixture = new ReplayedHttpConnection(URL, recording, 0L, 0L, -1);
+        byte[] result = readAll(fixture.openInputStream());
+        assertThat(result, is(equalTo(recording.getBody())));
+    }
+
+    @Test
+    public void latency() throws IOException {
+        ReplayedHttpConnection fixture = new ReplayedHttpConnection(URL, recording, 200L, 0L, -1);
+        long start = System.currentTimeMillis();
+        fixture.getResponseCode();
+        long first = System.currentTimeMillis() - start;
+        fixture.getResponseCode();
+        long second = System.currentTimeMillis() - start;
+        assertThat(first, is(greaterThanOrEqualTo(200L)));
+        assertThat(second - first, is(lessThan(100L)));
+    }
+
+    @Test
+    public void bandwidth() throws IOException {
+        ReplayedHttpConnection fixture = new ReplayedHttpConnection(URL, recording, 0L, 4096L, -1);
+        long start = System.currentTimeMillis();
+        byte[] result = readAll(fixture.openInputStream());
+        long duration = System.currentTimeMillis() - start;
+        assertThat(result, is(equalTo(recording.getBody())));
+        assertThat(duration, is(greaterThanOrEqualTo(450L)));
+    }
+
+    @Test
+    public void failAt() throws IOException {
+        ReplayedHttpConnection fixture = new ReplayedHttpConnection(URL, recording, 0L, 0L, 1000);
+        InputStream is = fixture.openInputStream();
+        byte[] buffer = new byte[4096];
+        int total = 0;
+        try {
+            while (true) {
+                int read = is.read(buffer, total, buffer.length - total);
+                assertThat(read, is(not(-1)));
+                total += read;
+            }
+        } catch (IOException ex) {
+            assertThat(total, is(1000));
+        }
+    }
+
+    @Test
+    public void failAtEnd() throws IOException {
+        ReplayedHttpConnection fixture = new ReplayedHttpConnection(URL, recording, 0L, 0L, 2048);
+        InputStream is = fixture.openInputStream();
+        byte[] buffer = new byte[4096];
+        int total = 0;
+        while (total < 2048) {
+            total += is.read(buffer, total, buffer.length - total);
+        }
+        try {
+            is.read();
+            assertThat("Expected failure", false);
+        } catch (IOException ex) {
+            assertThat(total, is(2048));
+        }
+    }
+
+    @Test(timeout = 2000)
+    public void closeUnblocksResponse() throws InterruptedException {
+        final ReplayedHttpConnection fixture =
+                new ReplayedHttpConnection(URL, recording, 60000L, 0L, -1);
+        final boolean[] failed = {false};
+        Thread thread = new Thread() {
+
+            @Override
+            public void run() {
+                try {
+                    fixture.getResponseCode();
+                } catch (IOException ex) {
+                    failed[0] = true;
+                }
+            }
+        };
+        thread.start();
+        Thread.sleep(100L);
+        fixture.close();
+        thread.join();
+        assertThat(failed[0], is(true));
+    }
+
+    @Test(timeout = 2000)
+    public void closeUnblocksRead() throws Exception {
+        final ReplayedHttpConnection fixture =
+                new ReplayedHttpConnection(URL, recording, 0L, 1L, -1);
+        final InputStream is = fixture.openInputStream();
+        final boolean[] failed = {false};
+        Thread thread = new Thread() {
+
+            @Override
+            public void run() {
+                try {
+                    is.read();
+                } catch (IOException ex) {
+                    failed[0] = true;
+                }
+            }
+        };
+        thread.start();
+        Thread.sleep(100L);
+        is.close();
+        thread.join();
+        assertThat(failed[0], is(true));
+    }
+
+    /**
+     * Reads the stream to the end.
+     */
+    private byte[] readAll(InputStream is) throws IOException {
+        byte[] buffer = new byte[4096];
+        int total = 0;
+        int read = 0;
+        while ((read = is.read(buffer, total, buffer.length - total)) > 0) {
+            total += read;
+        }
+        byte[] result = new byte[total];
+        System.arraycopy(buffer, 0, result, 0, total);
+        return result;
+    }
+}
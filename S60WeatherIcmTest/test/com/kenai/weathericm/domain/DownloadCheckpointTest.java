@@ -0,0 +1,81 @@
+/*
+ *  Copyright (C) 2010 Przemek Kryger
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.kenai.weathericm.domain;
+
+import net.sf.microlog.core.config.PropertyConfigurator;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.hamcrest.Matchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Tests for {@link DownloadCheckpoint}.
+ * @author Przemek Kryger
+ */
+public class DownloadCheckpointTest {
+
+    private DownloadCheckpoint fixture;
+    private final static String URL = "http://a.com/img.png";
+
+    @BeforeClass
+    public static void setUpClass() {
+        PropertyConfigurator.configure("/testMicrolog.properties");
+    }
+
+    @Before
+    public void setUp() {
+        fixture = new DownloadCheckpoint(URL);
+    }
+
+    @Test
+    public void create() {
+        assertThat(fixture.getUrl(), equalTo(URL));
+        assertThat(fixture.getData(), is(nullValue()));
+        assertThat(fixture.getLength(), equalTo(0));
+        assertThat(fixture.getETag(), is(nullValue()));
+        assertThat(fixture.getLastModified(), is(nullValue()));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void createNullUrl() {
+        new DownloadCheckpoint(null);
+    }
+
+    @Test
+    public void getSetData() {
+        byte[] data = {1, 2, 3, 4};
+        fixture.setData(data);
+        assertThat(fixture.getData(), is(sameInstance(data)));
+        assertThat(fixture.getLength(), equalTo(data.length));
+    }
+
+    @Test
+    public void getSetETag() {
+        String eTag = "\"abc\"";
+        fixture.setETag(eTag);
+        assertThat(fixture.getETag(), equalTo(eTag));
+    }
+
+    @Test
+    public void getSetLastModified() {
+        String lastModified = "Sat, 15 May 2010 12:00:00 GMT";
+        fixture.setLastModified(lastModified);
+        assertThat(fixture.getLastModified(), equalTo(lastModified));
+    }
+}
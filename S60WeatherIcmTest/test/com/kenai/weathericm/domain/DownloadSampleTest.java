@@ -0,0 +1,89 @@
+/*
+ *  Copyright (C) 2010 Przemek Kryger
+ * 
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ * 
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.kenai.weathericm.domain;
+
+import net.sf.microlog.core.config.PropertyConfigurator;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.hamcrest.Matchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Tests for {@link DownloadSample}.
+ * @author Przemek Kryger
+ */
+public class DownloadSampleTest {
+
+    private DownloadSample fixture;
+    private final static String KIND = "model.result";
+
+    @BeforeClass
+    public static void setUpClass() {
+        PropertyConfigurator.configure("/testMicrolog.properties");
+    }
+
+    @Before
+    public void setUp() {
+        fixture = new DownloadSample(KIND, MeteorogramType.UM);
+    }
+
+    @Test
+    public void create() {
+        assertThat(fixture.getKind(), equalTo(KIND));
+        assertThat(fixture.getType(), is(MeteorogramType.UM));
+        assertThat(fixture.getLength(), is(0));
+        assertThat(fixture.getTransferred(), is(0));
+        assertThat(fixture.getTimeToFirstByte(), is(0L));
+        assertThat(fixture.getDuration(), is(0L));
+        assertThat(fixture.getTimestamp(), is(0L));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void createNullKind() {
+        new DownloadSample(null, MeteorogramType.UM);
+    }
+
+    @Test
+    public void createNullType() {
+        fixture = new DownloadSample(KIND, null);
+        assertThat(fixture.getType(), is(nullValue()));
+    }
+
+    @Test
+    public void matches() {
+        assertThat(fixture.matches(KIND, MeteorogramType.UM), is(true));
+        assertThat(fixture.matches(KIND, MeteorogramType.COAMPS), is(false));
+        assertThat(fixture.matches("start.date", MeteorogramType.UM), is(false));
+        assertThat(fixture.matches(KIND, null), is(false));
+    }
+
+    @Test
+    public void getSet() {
+        fixture.setLength(23500);
+        fixture.setTransferred(12000);
+        fixture.setTimeToFirstByte(300L);
+        fixture.setDuration(4000L);
+        fixture.setTimestamp(1274000000000L);
+        assertThat(fixture.getLength(), is(23500));
+        assertThat(fixture.getTransferred(), is(12000));
+        assertThat(fixture.getTimeToFirstByte(), is(300L));
+        assertThat(fixture.getDuration(), is(4000L));
+        assertThat(fixture.getTimestamp(), is(1274000000000L));
+    }
+}
@@ -17,6 +17,7 @@
  */
 package com.kenai.weathericm.domain;
 
+import com.kenai.weathericm.util.Adler32;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.TimeZone;
@@ -194,4 +195,130 @@ public class ForecastDataTest {
         byte[] actual = fixture.getModelResult();
         assertThat(actual, equalTo(data));
     }
+
+    @Test
+    public void getChecksumNoModelResult() {
+        fixture = new ForecastData(year, month, day, hour);
+        assertThat(fixture.getChecksum(), equalTo(ForecastData.UNKNOWN_CHECKSUM));
+    }
+
+    @Test
+    public void getChecksumComputed() {
+        byte[] data = new byte[]{1, 2, 3};
+        fixture = new ForecastData(year, month, day, hour);
+        fixture.setModelResult(data);
+        assertThat(fixture.getChecksum(), equalTo(Adler32.checksum(data, data.length)));
+    }
+
+    @Test
+    public void getSetModelResultWithChecksum() {
+        byte[] data = new byte[]{1, 2, 3};
+        fixture = new ForecastData(year, month, day, hour);
+        fixture.setModelResult(data, 77L);
+        assertThat(fixture.getModelResult(), equalTo(data));
+        assertThat(fixture.getChecksum(), equalTo(77L));
+        fixture.setModelResult(null, 77L);
+        assertThat(fixture.getChecksum(), equalTo(ForecastData.UNKNOWN_CHECKSUM));
+    }
+
+    @Test
+    public void hasSameModelResult() {
+        fixture = new ForecastData(year, month, day, hour);
+        fixture.setModelResult(new byte[]{1, 2, 3});
+        ForecastData other = new ForecastData(year, month, day, hour);
+        other.setModelResult(new byte[]{1, 2, 3});
+        assertThat(fixture.hasSameModelResult(other), is(true));
+    }
+
+    @Test
+    public void hasSameModelResultNull() {
+        fixture = new ForecastData(year, month, day, hour);
+        fixture.setModelResult(new byte[]{1, 2, 3});
+        assertThat(fixture.hasSameModelResult(null), is(false));
+        ForecastData other = new ForecastData(year, month, day, hour);
+        assertThat(fixture.hasSameModelResult(other), is(false));
+        assertThat(other.hasSameModelResult(fixture), is(false));
+    }
+
+    @Test
+    public void hasSameModelResultDifferentData() {
+        fixture = new ForecastData(year, month, day, hour);
+        fixture.setModelResult(new byte[]{1, 2, 3});
+        ForecastData other = new ForecastData(year, month, day, hour);
+        other.setModelResult(new byte[]{1, 3, 2});
+        assertThat(fixture.hasSameModelResult(other), is(false));
+        other.setModelResult(new byte[]{1, 2, 3, 0});
+        assertThat(fixture.hasSameModelResult(other), is(false));
+    }
+
+    @Test
+    public void hasSameModelResultDifferentModelStart() {
+        fixture = new ForecastData(year, month, day, hour);
+        fixture.setModelResult(new byte[]{1, 2, 3});
+        ForecastData other = new ForecastData(year + 1, month, day, hour);
+        other.setModelResult(new byte[]{1, 2, 3});
+        assertThat(fixture.hasSameModelResult(other), is(false));
+    }
+
+    @Test
+    public void setModelResultHeader() {
+        fixture = new ForecastData(year, month, day, hour);
+        assertThat(fixture.hasModelResult(), is(false));
+        fixture.setModelResultHeader(3, 7L);
+        assertThat(fixture.hasModelResult(), is(true));
+        assertThat(fixture.isModelResultLoaded(), is(false));
+        assertThat(fixture.getModelResult(), is(nullValue()));
+        assertThat(fixture.getModelResultLength(), equalTo(3));
+        assertThat(fixture.getChecksum(), equalTo(7L));
+    }
+
+    @Test
+    public void setModelResultHeaderZeroLength() {
+        fixture = new ForecastData(year, month, day, hour);
+        fixture.setModelResult(new byte[]{1, 2, 3});
+        fixture.setModelResultHeader(0, 7L);
+        assertThat(fixture.hasModelResult(), is(false));
+        assertThat(fixture.getChecksum(), equalTo(ForecastData.UNKNOWN_CHECKSUM));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setModelResultHeaderNegativeLength() {
+        fixture = new ForecastData(year, month, day, hour);
+        fixture.setModelResultHeader(-1, 7L);
+    }
+
+    @Test
+    public void unloadModelResult() {
+        byte[] modelResult = new byte[]{1, 2, 3};
+        fixture = new ForecastData(year, month, day, hour);
+        fixture.setModelResult(modelResult);
+        assertThat(fixture.isModelResultLoaded(), is(true));
+        fixture.unloadModelResult();
+        assertThat(fixture.isModelResultLoaded(), is(false));
+        assertThat(fixture.hasModelResult(), is(true));
+        assertThat(fixture.getModelResult(), is(nullValue()));
+        assertThat(fixture.getModelResultLength(), equalTo(modelResult.length));
+        assertThat(fixture.getChecksum(), equalTo(Adler32.checksum(modelResult, modelResult.length)));
+    }
+
+    @Test
+    public void hasSameModelResultNotLoaded() {
+        byte[] modelResult = new byte[]{1, 2, 3};
+        fixture = new ForecastData(year, month, day, hour);
+        fixture.setModelResultHeader(modelResult.length, Adler32.checksum(modelResult, modelResult.length));
+        ForecastData other = new ForecastData(year, month, day, hour);
+        other.setModelResult(modelResult);
+        assertThat(fixture.hasSameModelResult(other), is(true));
+        assertThat(other.hasSameModelResult(fixture), is(true));
+    }
+
+    @Test
+    public void hasSameModelResultNotLoadedUnknownChecksum() {
+        fixture = new ForecastData(year, month, day, hour);
+        fixture.setModelResultHeader(3, ForecastData.UNKNOWN_CHECKSUM);
+        ForecastData other = new ForecastData(year, month, day, hour);
+        other.setModelResult(new byte[]{1, 2, 3});
+        assertThat(fixture.hasSameModelResult(other), is(false));
+        assertThat(other.hasSameModelResult(fixture), is(false));
+    }
 }
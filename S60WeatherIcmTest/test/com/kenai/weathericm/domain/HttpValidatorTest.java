@@ -0,0 +1,109 @@
+/*
+ *  Copyright (C) 2010 Przemek Kryger
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.kenai.weathericm.domain;
+
+import net.sf.microlog.core.config.PropertyConfigurator;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.hamcrest.Matchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Tests for {@link HttpValidator}.
+ * @author Przemek Kryger
+ */
+public class HttpValidatorTest {
+
+    private HttpValidator fixture;
+    private final static String KEY = "info.7";
+    private final static String URL = "http://a.com/img.png";
+
+    @BeforeClass
+    public static void setUpClass() {
+        PropertyConfigurator.configure("/testMicrolog.properties");
+    }
+
+    @Before
+    public void setUp() {
+        fixture = new HttpValidator(KEY, URL);
+    }
+
+    @Test
+    public void create() {
+        assertThat(fixture.getKey(), equalTo(KEY));
+        assertThat(fixture.getUrl(), equalTo(URL));
+        assertThat(fixture.getETag(), is(nullValue()));
+        assertThat(fixture.getLastModified(), is(nullValue()));
+        assertThat(fixture.getValue(), is(nullValue()));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void createNullKey() {
+        new HttpValidator(null, URL);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void createNullUrl() {
+        new HttpValidator(KEY, null);
+    }
+
+    @Test
+    public void getSetETag() {
+        String eTag = "\"abc\"";
+        fixture.setETag(eTag);
+        assertThat(fixture.getETag(), equalTo(eTag));
+    }
+
+    @Test
+    public void getSetLastModified() {
+        String lastModified = "Sat, 15 May 2010 12:00:00 GMT";
+        fixture.setLastModified(lastModified);
+        assertThat(fixture.getLastModified(), equalTo(lastModified));
+    }
+
+    @Test
+    public void getSetValue() {
+        String value = "2010051512";
+        fixture.setValue(value);
+        assertThat(fixture.getValue(), equalTo(value));
+    }
+
+    @Test
+    public void isUsableEmpty() {
+        assertThat(fixture.isUsable(), is(false));
+    }
+
+    @Test
+    public void isUsableETag() {
+        fixture.setETag("\"abc\"");
+        assertThat(fixture.isUsable(), is(true));
+    }
+
+    @Test
+    public void isUsableLastModified() {
+        fixture.setLastModified("Sat, 15 May 2010 12:00:00 GMT");
+        assertThat(fixture.isUsable(), is(true));
+    }
+
+    @Test
+    public void isUsableValueOnly() {
+        fixture.setValue("2010051512");
+        assertThat(fixture.isUsable(), is(false));
+    }
+}
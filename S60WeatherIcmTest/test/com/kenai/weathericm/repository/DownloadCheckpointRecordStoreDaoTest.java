@@ -0,0 +1,242 @@
+/*
+ *  Copyright (C) 2010 Przemek Kryger
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.kenai.weathericm.repository;
+
+import com.kenai.weathericm.domain.DownloadCheckpoint;
+import java.util.Hashtable;
+import javax.microedition.rms.RecordEnumeration;
+import javax.microedition.rms.RecordStore;
+import javax.microedition.rms.RecordStoreException;
+import net.sf.microlog.core.config.PropertyConfigurator;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.core.classloader.annotations.SuppressStaticInitializationFor;
+import org.powermock.modules.junit4.PowerMockRunner;
+import org.powermock.reflect.Whitebox;
+import static org.hamcrest.Matchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.powermock.api.easymock.PowerMock.createMock;
+import static org.powermock.api.easymock.PowerMock.mockStatic;
+import static org.powermock.api.easymock.PowerMock.replayAll;
+import static org.powermock.api.easymock.PowerMock.verifyAll;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.aryEq;
+import static org.easymock.EasyMock.eq;
+
+/**
+ * Tests for {@link DownloadCheckpointRecordStoreDao}.
+ * @author Przemek Kryger
+ */
+@RunWith(PowerMockRunner.class)
+@SuppressStaticInitializationFor("javax.microedition.rms.RecordStore")
+@PrepareForTest({RecordStore.class, RecordEnumeration.class})
+public class DownloadCheckpointRecordStoreDaoTest {
+
+    private RecordStore recordStoreMock;
+    private RecordEnumeration recordEnumerationMock;
+    private DownloadCheckpointRecordStoreDao fixture;
+    private DownloadCheckpoint checkpoint;
+    private byte[] checkpointBytes;
+    private final static String URL_TO_RECORD_ID = "urlToRecordId";
+
+    @BeforeClass
+    public static void setUpClass() {
+        PropertyConfigurator.configure("/testMicrolog.properties");
+    }
+
+    @Before
+    public void setUp() {
+        mockStatic(RecordStore.class);
+        recordStoreMock = createMock(RecordStore.class);
+        recordEnumerationMock = createMock(RecordEnumeration.class);
+        fixture = DownloadCheckpointRecordStoreDao.getInstance();
+        Whitebox.setInternalState(fixture, URL_TO_RECORD_ID, (Hashtable) null);
+        checkpoint = new DownloadCheckpoint("http://a.com/img.png");
+        checkpoint.setETag("\"abc\"");
+        checkpoint.setData(new byte[]{1, 2, 3, 4, 5});
+        checkpointBytes = fixture.serialize(checkpoint);
+    }
+
+    private Hashtable prepareIndex(int id) {
+        Hashtable index = new Hashtable();
+        index.put(checkpoint.getUrl(), new Integer(id));
+        Whitebox.setInternalState(fixture, URL_TO_RECORD_ID, index);
+        return index;
+    }
+
+    @Test
+    public void getInstance() {
+        assertThat(DownloadCheckpointRecordStoreDao.getInstance(), is(sameInstance(fixture)));
+    }
+
+    @Test
+    public void serializeResurect() {
+        checkpoint.setLastModified("Sat, 15 May 2010 12:00:00 GMT");
+        DownloadCheckpoint actual = fixture.resurect(fixture.serialize(checkpoint));
+        assertThat(actual.getUrl(), equalTo(checkpoint.getUrl()));
+        assertThat(actual.getETag(), equalTo(checkpoint.getETag()));
+        assertThat(actual.getLastModified(), equalTo(checkpoint.getLastModified()));
+        assertThat(actual.getData(), equalTo(checkpoint.getData()));
+    }
+
+    @Test
+    public void serializeResurectNoData() {
+        checkpoint.setETag(null);
+        checkpoint.setData(null);
+        DownloadCheckpoint actual = fixture.resurect(fixture.serialize(checkpoint));
+        assertThat(actual.getETag(), is(nullValue()));
+        assertThat(actual.getLength(), equalTo(0));
+    }
+
+    @Test
+    public void resurectBroken() {
+        assertThat(fixture.resurect(new byte[]{1, 2}), is(nullValue()));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void readNull() {
+        fixture.read(null);
+    }
+
+    @Test
+    public void readNotExisting() throws RecordStoreException {
+        expect(RecordStore.openRecordStore(DownloadCheckpointRecordStoreDao.STORE, true)).andReturn(recordStoreMock);
+        expect(recordStoreMock.enumerateRecords(null, null, false)).andReturn(recordEnumerationMock);
+        expect(recordEnumerationMock.hasNextElement()).andReturn(false);
+        recordEnumerationMock.destroy();
+        recordStoreMock.closeRecordStore();
+        replayAll();
+        DownloadCheckpoint actual = fixture.read(checkpoint.getUrl());
+        assertThat(actual, is(nullValue()));
+        verifyAll();
+    }
+
+    @Test
+    public void readScansStore() throws RecordStoreException {
+        int id = 4;
+        expect(RecordStore.openRecordStore(DownloadCheckpointRecordStoreDao.STORE, true)).andReturn(recordStoreMock);
+        expect(recordStoreMock.enumerateRecords(null, null, false)).andReturn(recordEnumerationMock);
+        expect(recordEnumerationMock.hasNextElement()).andReturn(true);
+        expect(recordEnumerationMock.nextRecordId()).andReturn(id);
+        expect(recordStoreMock.getRecord(id)).andReturn(checkpointBytes).times(2);
+        expect(recordEnumerationMock.hasNextElement()).andReturn(false);
+        recordEnumerationMock.destroy();
+        recordStoreMock.closeRecordStore();
+        replayAll();
+        DownloadCheckpoint actual = fixture.read(checkpoint.getUrl());
+        assertThat(actual, is(notNullValue()));
+        assertThat(actual.getData(), equalTo(checkpoint.getData()));
+        verifyAll();
+    }
+
+    @Test
+    public void readRecordStoreException() throws RecordStoreException {
+        expect(RecordStore.openRecordStore(DownloadCheckpointRecordStoreDao.STORE, true)).andThrow(new RecordStoreException());
+        replayAll();
+        DownloadCheckpoint actual = fixture.read(checkpoint.getUrl());
+        assertThat(actual, is(nullValue()));
+        verifyAll();
+    }
+
+    @Test
+    public void createOrUpdateNew() throws RecordStoreException {
+        int id = 5;
+        Hashtable index = new Hashtable();
+        Whitebox.setInternalState(fixture, URL_TO_RECORD_ID, index);
+        expect(RecordStore.openRecordStore(DownloadCheckpointRecordStoreDao.STORE, true)).andReturn(recordStoreMock);
+        expect(recordStoreMock.addRecord(aryEq(checkpointBytes), eq(0), eq(checkpointBytes.length))).andReturn(id);
+        recordStoreMock.closeRecordStore();
+        replayAll();
+        boolean actual = fixture.createOrUpdate(checkpoint);
+        assertThat(actual, is(true));
+        assertThat((Integer) index.get(checkpoint.getUrl()), equalTo(new Integer(id)));
+        verifyAll();
+    }
+
+    @Test
+    public void createOrUpdateExisting() throws RecordStoreException {
+        int id = 6;
+        prepareIndex(id);
+        expect(RecordStore.openRecordStore(DownloadCheckpointRecordStoreDao.STORE, true)).andReturn(recordStoreMock);
+        recordStoreMock.setRecord(eq(id), aryEq(checkpointBytes), eq(0), eq(checkpointBytes.length));
+        recordStoreMock.closeRecordStore();
+        replayAll();
+        boolean actual = fixture.createOrUpdate(checkpoint);
+        assertThat(actual, is(true));
+        verifyAll();
+    }
+
+    @Test
+    public void createOrUpdateDropsOldest() throws RecordStoreException {
+        int id = 9;
+        Hashtable index = new Hashtable();
+        for (int i = 0; i < DownloadCheckpointRecordStoreDao.MAX_CHECKPOINTS; i++) {
+            index.put("url" + i, new Integer(i + 1));
+        }
+        Whitebox.setInternalState(fixture, URL_TO_RECORD_ID, index);
+        expect(RecordStore.openRecordStore(DownloadCheckpointRecordStoreDao.STORE, true)).andReturn(recordStoreMock);
+        recordStoreMock.deleteRecord(1);
+        expect(recordStoreMock.addRecord(aryEq(checkpointBytes), eq(0), eq(checkpointBytes.length))).andReturn(id);
+        recordStoreMock.closeRecordStore();
+        replayAll();
+        boolean actual = fixture.createOrUpdate(checkpoint);
+        assertThat(actual, is(true));
+        assertThat(index.containsKey("url0"), is(false));
+        assertThat(index.size(), equalTo(DownloadCheckpointRecordStoreDao.MAX_CHECKPOINTS));
+        assertThat((Integer) index.get(checkpoint.getUrl()), equalTo(new Integer(id)));
+        verifyAll();
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void createOrUpdateNull() {
+        fixture.createOrUpdate(null);
+    }
+
+    @Test
+    public void delete() throws RecordStoreException {
+        int id = 7;
+        Hashtable index = prepareIndex(id);
+        expect(RecordStore.openRecordStore(DownloadCheckpointRecordStoreDao.STORE, true)).andReturn(recordStoreMock);
+        recordStoreMock.deleteRecord(id);
+        recordStoreMock.closeRecordStore();
+        replayAll();
+        boolean actual = fixture.delete(checkpoint.getUrl());
+        assertThat(actual, is(true));
+        assertThat(index.containsKey(checkpoint.getUrl()), is(false));
+        verifyAll();
+    }
+
+    @Test
+    public void deleteNotExisting() throws RecordStoreException {
+        Whitebox.setInternalState(fixture, URL_TO_RECORD_ID, new Hashtable());
+        expect(RecordStore.openRecordStore(DownloadCheckpointRecordStoreDao.STORE, true)).andReturn(recordStoreMock);
+        recordStoreMock.closeRecordStore();
+        replayAll();
+        boolean actual = fixture.delete(checkpoint.getUrl());
+        assertThat(actual, is(false));
+        verifyAll();
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void deleteNull() {
+        fixture.delete(null);
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ *  Copyright (C) 2010 Przemek Kryger
+ * 
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ * 
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.kenai.weathericm.repository;
+
+import com.kenai.weathericm.domain.DownloadSample;
+import com.kenai.weathericm.domain.MeteorogramType;
+import java.util.Vector;
+import javax.microedition.rms.RecordEnumeration;
+import javax.microedition.rms.RecordStore;
+import javax.microedition.rms.RecordStoreException;
+import net.sf.microlog.core.config.PropertyConfigurator;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.core.classloader.annotations.SuppressStaticInitializationFor;
+import org.powermock.modules.junit4.PowerMockRunner;
+import org.powermock.reflect.Whitebox;
+import static org.hamcrest.Matchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.powermock.api.easymock.PowerMock.createMock;
+import static org.powermock.api.easymock.PowerMock.mockStatic;
+import static org.powermock.api.easymock.PowerMock.replayAll;
+import static org.powermock.api.easymock.PowerMock.verifyAll;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.aryEq;
+import static org.easymock.EasyMock.eq;
+
+/**
+ * Tests for {@link DownloadTelemetryRecordStoreDao}.
+ * @author Przemek Kryger
+ */
+@RunWith(PowerMockRunner.class)
+@SuppressStaticInitializationFor("javax.microedition.rms.RecordStore")
+@PrepareForTest({RecordStore.class, RecordEnumeration.class})
+public class DownloadTelemetryRecordStoreDaoTest {
+
+    private RecordStore recordStoreMock;
+    private RecordEnumeration recordEnumerationMock;
+    private DownloadTelemetryRecordStoreDao fixture;
+    private Vector samples;
+    private byte[] samplesBytes;
+    private final static String RECORD_ID = "recordId";
+
+    @BeforeClass
+    public static void setUpClass() {
+        PropertyConfigurator.configure("/testMicrolog.properties");
+    }
+
+    @Before
+    public void setUp() {
+        mockStatic(RecordStore.class);
+        recordStoreMock = createMock(RecordStore.class);
+        recordEnumerationMock = createMock(RecordEnumeration.class);
+        fixture = DownloadTelemetryRecordStoreDao.getInstance();
+        Whitebox.setInternalState(fixture, RECORD_ID, -1);
+        samples = new Vector();
+        DownloadSample sample = new DownloadSample("model.result", MeteorogramType.COAMPS);
+        sample.setLength(23500);
+        sample.setTransferred(11500);
+        sample.setTimeToFirstByte(700L);
+        sample.setDuration(5200L);
+        sample.setTimestamp(1274000000000L);
+        samples.addElement(sample);
+        samples.addElement(new DownloadSample("start.date", null));
+        samplesBytes = fixture.serialize(samples);
+    }
+
+    @Test
+    public void getInstance() {
+        assertThat(DownloadTelemetryRecordStoreDao.getInstance(), is(sameInstance(fixture)));
+    }
+
+    @Test
+    public void serializeResurect() {
+        Vector actual = fixture.resurect(fixture.serialize(samples));
+        assertThat(actual.size(), is(2));
+        DownloadSample expected = (DownloadSample) samples.elementAt(0);
+        DownloadSample first = (DownloadSample) actual.elementAt(0);
+        assertThat(first.getKind(), equalTo(expected.getKind()));
+        assertThat(first.getType(), is(expected.getType()));
+        assertThat(first.getLength(), is(expected.getLength()));
+        assertThat(first.getTransferred(), is(expected.getTransferred()));
+        assertThat(first.getTimeToFirstByte(), is(expected.getTimeToFirstByte()));
+        assertThat(first.getDuration(), is(expected.getDuration()));
+        assertThat(first.getTimestamp(), is(expected.getTimestamp()));
+        DownloadSample second = (DownloadSample) actual.elementAt(1);
+        assertThat(second.getKind(), equalTo("start.date"));
+        assertThat(second.getType(), is(nullValue()));
+    }
+
+    @Test
+    public void resurectBroken() {
+        assertThat(fixture.resurect(new byte[]{0, 2, 1}), is(nullValue()));
+    }
+
+    @Test
+    public void readAllEmpty() throws RecordStoreException {
+        expect(RecordStore.openRecordStore(DownloadTelemetryRecordStoreDao.STORE, true)).andReturn(recordStoreMock);
+        expect(recordStoreMock.enumerateRecords(null, null, false)).andReturn(recordEnumerationMock);
+        expect(recordEnumerationMock.hasNextElement()).andReturn(false);
+        recordEnumerationMock.destroy();
+        recordStoreMock.closeRecordStore();
+        replayAll();
+        Vector actual = fixture.readAll();
+        assertThat(actual.isEmpty(), is(true));
+        verifyAll();
+    }
+
+    @Test
+    public void readAll() throws RecordStoreException {
+        int id = 3;
+        expect(RecordStore.openRecordStore(DownloadTelemetryRecordStoreDao.STORE, true)).andReturn(recordStoreMock);
+        expect(recordStoreMock.enumerateRecords(null, null, false)).andReturn(recordEnumerationMock);
+        expect(recordEnumerationMock.hasNextElement()).andReturn(true);
+        expect(recordEnumerationMock.nextRecordId()).andReturn(id);
+        recordEnumerationMock.destroy();
+        expect(recordStoreMock.getRecord(id)).andReturn(samplesBytes);
+        recordStoreMock.closeRecordStore();
+        replayAll();
+        Vector actual = fixture.readAll();
+        assertThat(actual.size(), is(samples.size()));
+        assertThat((Integer) Whitebox.getInternalState(fixture, RECORD_ID), is(id));
+        verifyAll();
+    }
+
+    @Test
+    public void readAllBroken() throws RecordStoreException {
+        int id = 3;
+        Whitebox.setInternalState(fixture, RECORD_ID, id);
+        expect(RecordStore.openRecordStore(DownloadTelemetryRecordStoreDao.STORE, true)).andReturn(recordStoreMock);
+        expect(recordStoreMock.getRecord(id)).andReturn(new byte[]{1});
+        recordStoreMock.deleteRecord(id);
+        recordStoreMock.closeRecordStore();
+        replayAll();
+        Vector actual = fixture.readAll();
+        assertThat(actual.isEmpty(), is(true));
+        assertThat((Integer) Whitebox.getInternalState(fixture, RECORD_ID), is(-1));
+        verifyAll();
+    }
+
+    @Test
+    public void readAllRecordStoreException() throws RecordStoreException {
+        expect(RecordStore.openRecordStore(DownloadTelemetryRecordStoreDao.STORE, true)).andThrow(new RecordStoreException());
+        replayAll();
+        Vector actual = fixture.readAll();
+        assertThat(actual.isEmpty(), is(true));
+        verifyAll();
+    }
+
+    @Test
+    public void updateAllNew() throws RecordStoreException {
+        int id = 5;
+        expect(RecordStore.openRecordStore(DownloadTelemetryRecordStoreDao.STORE, true)).andReturn(recordStoreMock);
+        expect(recordStoreMock.enumerateRecords(null, null, false)).andReturn(recordEnumerationMock);
+        expect(recordEnumerationMock.hasNextElement()).andReturn(false);
+        recordEnumerationMock.destroy();
+        expect(recordStoreMock.addRecord(aryEq(samplesBytes), eq(0), eq(samplesBytes.length))).andReturn(id);
+        recordStoreMock.closeRecordStore();
+        replayAll();
+        boolean actual = fixture.updateAll(samples);
+        assertThat(actual, is(true));
+        assertThat((Integer) Whitebox.getInternalState(fixture, RECORD_ID), is(id));
+        verifyAll();
+    }
+
+    @Test
+    public void updateAllExisting() throws RecordStoreException {
+        int id = 6;
+        Whitebox.setInternalState(fixture, RECORD_ID, id);
+        expect(RecordStore.openRecordStore(DownloadTelemetryRecordStoreDao.STORE, true)).andReturn(recordStoreMock);
+        recordStoreMock.setRecord(eq(id), aryEq(samplesBytes), eq(0), eq(samplesBytes.length));
+        recordStoreMock.closeRecordStore();
+        replayAll();
+        boolean actual = fixture.updateAll(samples);
+        assertThat(actual, is(true));
+        verifyAll();
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void updateAllNull() {
+        fixture.updateAll(null);
+    }
+}
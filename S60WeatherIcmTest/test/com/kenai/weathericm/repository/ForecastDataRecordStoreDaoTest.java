@@ -20,13 +20,16 @@ package com.kenai.weathericm.repository;
 import javax.microedition.rms.RecordStoreFullException;
 import javax.microedition.rms.RecordStoreNotFoundException;
 import com.kenai.weathericm.domain.ForecastData;
-import java.util.Random;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
 import javax.microedition.rms.InvalidRecordIDException;
 import javax.microedition.rms.RecordEnumeration;
 import javax.microedition.rms.RecordStore;
 import javax.microedition.rms.RecordStoreException;
-import javax.microedition.rms.RecordStoreNotOpenException;
 import net.sf.microlog.core.config.PropertyConfigurator;
+import org.easymock.IAnswer;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -34,6 +37,7 @@ import org.junit.runner.RunWith;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.core.classloader.annotations.SuppressStaticInitializationFor;
 import org.powermock.modules.junit4.PowerMockRunner;
+import org.powermock.reflect.Whitebox;
 import static org.hamcrest.Matchers.*;
 import static org.hamcrest.MatcherAssert.*;
 import static org.powermock.api.easymock.PowerMock.createMock;
@@ -43,10 +47,11 @@ import static org.powermock.api.easymock.PowerMock.verifyAll;
 import static org.powermock.api.easymock.PowerMock.expectLastCall;
 import static org.powermock.api.easymock.PowerMock.createPartialMock;
 import static org.easymock.EasyMock.expect;
-import static org.easymock.EasyMock.startsWith;
 import static org.easymock.EasyMock.aryEq;
 import static org.easymock.EasyMock.eq;
 import static org.easymock.EasyMock.anyInt;
+import static org.easymock.EasyMock.isA;
+import static org.easymock.EasyMock.getCurrentArguments;
 
 /**
  * Tests for {@link ForecastDataRecordStoreDao} class.
@@ -57,11 +62,17 @@ import static org.easymock.EasyMock.anyInt;
 @PrepareForTest({RecordStore.class, RecordEnumeration.class, ForecastDataRecordStoreDao.class})
 public class ForecastDataRecordStoreDaoTest {
 
+    private final static int HEADER_LENGTH = 4;
+    private final static byte LEGACY_HEADER_MARK = (byte) 0xff;
+    private final static String INDEX_STORE = ForecastDataRecordStoreDao.INDEX_STORE;
+    private final static String DATA_STORE_1 = ForecastDataRecordStoreDao.DATA_STORE + 1;
+
     @BeforeClass
     public static void setUpClass() {
         PropertyConfigurator.configure("/testMicrolog.properties");
     }
-    private RecordStore recordStoreMock = null;
+    private RecordStore indexStoreMock = null;
+    private RecordStore dataStoreMock = null;
     private RecordEnumeration recordEnumerationMock = null;
     private ForecastDataRecordStoreDao fixture = null;
     ForecastData data = null;
@@ -70,12 +81,19 @@ public class ForecastDataRecordStoreDaoTest {
     @Before
     public void setUp() {
         mockStatic(RecordStore.class);
-        recordStoreMock = createMock(RecordStore.class);
+        indexStoreMock = createMock(RecordStore.class);
+        dataStoreMock = createMock(RecordStore.class);
         recordEnumerationMock = createMock(RecordEnumeration.class);
+        Whitebox.setInternalState(ForecastDataRecordStoreDao.class, "instance",
+                (ForecastDataRecordStoreDao) null);
         fixture = ForecastDataRecordStoreDao.getInstance();
         final String date = "2010091012";
         data = new ForecastData(date);
-        data.setModelResult(new byte[ForecastDataRecordStoreDao.MIN_STORE_SPACE * 10]);
+        byte[] modelResult = new byte[ForecastDataRecordStoreDao.MIN_STORE_SPACE * 10];
+        for (int i = 0; i < modelResult.length; i++) {
+            modelResult[i] = (byte) i;
+        }
+        data.setModelResult(modelResult);
         serializer = new ForecastDataSerializer() {
 
             @Override
@@ -83,16 +101,171 @@ public class ForecastDataRecordStoreDaoTest {
                 return forecastData.getModelResult();
             }
 
+            @Override
+            public byte[] serializeHeader(ForecastData forecastData) {
+                return createHeader(forecastData.getModelResultLength());
+            }
+
             @Override
             public ForecastData resurect(byte[] data) {
                 ForecastData forecastData = new ForecastData(date);
                 forecastData.setModelResult(data);
                 return forecastData;
             }
+
+            @Override
+            public ForecastData resurectHeader(byte[] data) {
+                int offset = isUpgradeNeeded(data) ? 1 : 0;
+                if (data.length != HEADER_LENGTH + offset) {
+                    return null;
+                }
+                int length = ((data[offset] & 0xff) << 24) | ((data[offset + 1] & 0xff) << 16)
+                        | ((data[offset + 2] & 0xff) << 8) | (data[offset + 3] & 0xff);
+                ForecastData forecastData = new ForecastData(date);
+                forecastData.setModelResultHeader(length, ForecastData.UNKNOWN_CHECKSUM);
+                return forecastData;
+            }
+
+            @Override
+            public boolean isUpgradeNeeded(byte[] data) {
+                return data.length == HEADER_LENGTH + 1 && data[0] == LEGACY_HEADER_MARK;
+            }
         };
         fixture.setForecastDataSerializer(serializer);
     }
 
+    /**
+     * Creates the header the test serializer writes for the model result of
+     * {@code length}.
+     */
+    private static byte[] createHeader(int length) {
+        return new byte[]{(byte) (length >>> 24), (byte) (length >>> 16),
+                    (byte) (length >>> 8), (byte) length};
+    }
+
+    /**
+     * Creates the header in the old format of the test serializer for the
+     * model result of {@code length}.
+     */
+    private static byte[] createLegacyHeader(int length) {
+        byte[] header = new byte[HEADER_LENGTH + 1];
+        header[0] = LEGACY_HEADER_MARK;
+        System.arraycopy(createHeader(length), 0, header, 1, HEADER_LENGTH);
+        return header;
+    }
+
+    /**
+     * Creates the index record for the model result of {@code length} kept
+     * in a single chunk in the first data store.
+     */
+    private byte[] createIndexRecord(int id, int length, int chunkId) throws IOException {
+        return createIndexRecord(id, createHeader(length), length, chunkId);
+    }
+
+    /**
+     * Creates the index record with the {@code header} for the model result
+     * of {@code length} kept in a single chunk in the first data store.
+     */
+    private byte[] createIndexRecord(int id, byte[] header, int length, int chunkId) throws IOException {
+        return createIndexRecord(id, header, length, chunkId, 0);
+    }
+
+    /**
+     * Creates the index record of the {@code generation} for the model result
+     * of {@code length} kept in a single chunk in the first data store. The
+     * {@code garbage} are pairs of record ids and sizes of the chunks of the
+     * replaced generations in the first data store.
+     */
+    private byte[] createIndexRecord(int id, byte[] header, int length, int chunkId,
+            int generation, int... garbage) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(baos);
+        dos.writeInt(id);
+        dos.writeInt(length);
+        dos.writeShort(header.length);
+        dos.write(header);
+        dos.writeShort(1);
+        dos.writeByte(1);
+        dos.writeInt(chunkId);
+        dos.writeInt(length);
+        dos.writeInt(generation);
+        dos.writeShort(garbage.length / 2);
+        for (int i = 0; i < garbage.length; i += 2) {
+            dos.writeByte(1);
+            dos.writeInt(garbage[i]);
+            dos.writeInt(garbage[i + 1]);
+        }
+        return baos.toByteArray();
+    }
+
+    /**
+     * Expects the {@code chunk} to be read from the record {@code chunkId}
+     * into the model result array at {@code offset}.
+     */
+    private void expectChunkRead(int chunkId, final byte[] chunk, final int offset) throws Exception {
+        expect(dataStoreMock.getRecord(eq(chunkId), isA(byte[].class), eq(offset))).andAnswer(new IAnswer<Integer>() {
+
+            @Override
+            public Integer answer() throws Throwable {
+                byte[] buffer = (byte[]) getCurrentArguments()[1];
+                System.arraycopy(chunk, 0, buffer, offset, chunk.length);
+                return chunk.length;
+            }
+        });
+    }
+
+    /**
+     * Expects the index store to be read, with the {@code records} having
+     * record ids starting from 1, and no stores of the old layout.
+     */
+    private void expectIndex(byte[]... records) throws Exception {
+        expectIndexRecords(records);
+        expect(RecordStore.listRecordStores()).andReturn(null);
+    }
+
+    /**
+     * Expects the index store to be read, with the {@code records} having
+     * record ids starting from 1.
+     */
+    private void expectIndexRecords(byte[]... records) throws Exception {
+        expect(RecordStore.openRecordStore(INDEX_STORE, true)).andReturn(indexStoreMock);
+        expect(indexStoreMock.enumerateRecords(null, null, false)).andReturn(recordEnumerationMock);
+        for (int i = 0; i < records.length; i++) {
+            expect(recordEnumerationMock.hasNextElement()).andReturn(true);
+            expect(recordEnumerationMock.nextRecordId()).andReturn(i + 1);
+            expect(indexStoreMock.getRecord(i + 1)).andReturn(records[i]);
+        }
+        expect(recordEnumerationMock.hasNextElement()).andReturn(false);
+        recordEnumerationMock.destroy();
+        indexStoreMock.closeRecordStore();
+    }
+
+    /**
+     * Expects the index store to be empty and no stores of the old layout.
+     */
+    private void expectEmptyIndex() throws Exception {
+        expectIndex();
+    }
+
+    /**
+     * Expects the data stores to be swept for orphaned chunks, with the
+     * {@code records} in the first data store and no other data stores.
+     */
+    private void expectOrphanSweep(int... records) throws Exception {
+        expect(RecordStore.openRecordStore(DATA_STORE_1, false)).andReturn(dataStoreMock);
+        expect(dataStoreMock.enumerateRecords(null, null, false)).andReturn(recordEnumerationMock);
+        for (int record : records) {
+            expect(recordEnumerationMock.hasNextElement()).andReturn(true);
+            expect(recordEnumerationMock.nextRecordId()).andReturn(record);
+        }
+        expect(recordEnumerationMock.hasNextElement()).andReturn(false);
+        recordEnumerationMock.destroy();
+        dataStoreMock.closeRecordStore();
+        for (int i = 2; i <= ForecastDataRecordStoreDao.MAX_DATA_STORES; i++) {
+            expect(RecordStore.openRecordStore(ForecastDataRecordStoreDao.DATA_STORE + i, false)).andThrow(new RecordStoreNotFoundException());
+        }
+    }
+
     @Test
     public void getInstance() {
         replayAll();
@@ -119,464 +292,626 @@ public class ForecastDataRecordStoreDaoTest {
         verifyAll();
     }
 
+    @Test(expected = NullPointerException.class)
+    public void existsNullId() {
+        fixture.exists(null);
+    }
+
     @Test
-    public void existsNoRecordStore() {
-        Integer id = 3;
-        expect(RecordStore.listRecordStores()).andReturn(null);
+    public void existsEmptyIndex() throws Exception {
+        expectEmptyIndex();
         replayAll();
-        boolean actual = fixture.exists(id);
-        assertThat(actual, is(false));
+        assertThat(fixture.exists(98), is(false));
+        verifyAll();
     }
 
     @Test
-    public void existsExist() {
+    public void existsIndexReadOnce() throws Exception {
         Integer id = 98;
-        String[] recordStores = new String[]{
-            fixture.convertIdToBaseName(id - 1) + "1",
-            fixture.convertIdToBaseName(id) + "1",
-            fixture.convertIdToBaseName(id + 1) + "1",};
-        expect(RecordStore.listRecordStores()).andReturn(recordStores);
+        expectIndex(createIndexRecord(id, data.getModelResultLength(), 3),
+                createIndexRecord(id + 1, data.getModelResultLength(), 4));
         replayAll();
-        boolean actual = fixture.exists(id);
-        assertThat(actual, is(true));
+        assertThat(fixture.exists(id), is(true));
+        assertThat(fixture.exists(id + 1), is(true));
+        assertThat(fixture.exists(id - 1), is(false));
         verifyAll();
     }
 
     @Test
-    public void existsNotExists() {
-        Integer id = 24;
-        String[] recordStores = new String[]{
-            fixture.convertIdToBaseName(id - 1) + "1",
-            fixture.convertIdToBaseName(id + 1) + "1",};
-        expect(RecordStore.listRecordStores()).andReturn(recordStores);
+    public void existsIndexFailure() throws Exception {
+        expect(RecordStore.openRecordStore(INDEX_STORE, true)).andThrow(new RecordStoreException());
         replayAll();
-        boolean actual = fixture.exists(id);
-        assertThat(actual, is(false));
+        assertThat(fixture.exists(98), is(false));
         verifyAll();
     }
 
     @Test
-    public void createSingleRecordStore() throws Exception {
-        Integer id = 56;
-        String[] recordStores = new String[]{
-            fixture.convertIdToBaseName(id - 1) + "1",
-            fixture.convertIdToBaseName(id + 1) + "1",};
-        expect(RecordStore.listRecordStores()).andReturn(recordStores);
-        String storeName = fixture.convertIdToBaseName(id);
-        expect(RecordStore.openRecordStore(startsWith(storeName), eq(true))).andReturn(recordStoreMock);
-        byte[] serializedData = serializer.serialize(data);
-        expect(recordStoreMock.getSizeAvailable()).andReturn(2 * serializedData.length
-                + ForecastDataRecordStoreDao.MIN_STORE_SPACE);
-        expect(recordStoreMock.addRecord(aryEq(serializedData), eq(0), eq(serializedData.length))).andReturn(1);
-        recordStoreMock.closeRecordStore();
+    public void readIndexBrokenRecord() throws Exception {
+        Integer id = 98;
+        expect(RecordStore.openRecordStore(INDEX_STORE, true)).andReturn(indexStoreMock);
+        expect(indexStoreMock.enumerateRecords(null, null, false)).andReturn(recordEnumerationMock);
+        expect(recordEnumerationMock.hasNextElement()).andReturn(true);
+        expect(recordEnumerationMock.nextRecordId()).andReturn(1);
+        expect(indexStoreMock.getRecord(1)).andReturn(new byte[]{1, 2});
+        indexStoreMock.deleteRecord(1);
+        expect(recordEnumerationMock.hasNextElement()).andReturn(true);
+        expect(recordEnumerationMock.nextRecordId()).andReturn(2);
+        expect(indexStoreMock.getRecord(2)).andReturn(createIndexRecord(id, data.getModelResultLength(), 3));
+        expect(recordEnumerationMock.hasNextElement()).andReturn(false);
+        recordEnumerationMock.destroy();
+        indexStoreMock.closeRecordStore();
+        expect(RecordStore.listRecordStores()).andReturn(null);
         replayAll();
-        boolean actual = fixture.create(id, data);
-        assertThat(actual, is(true));
+        assertThat(fixture.exists(id), is(true));
         verifyAll();
     }
 
     @Test
-    public void createMultipleRecordStores() throws Exception {
-        Integer id = 59;
-        String[] recordStores = new String[]{
-            fixture.convertIdToBaseName(id - 1) + "1",
-            fixture.convertIdToBaseName(id + 1) + "1",};
-        expect(RecordStore.listRecordStores()).andReturn(recordStores);
-        String storeName = fixture.convertIdToBaseName(id);
-        expect(RecordStore.openRecordStore(startsWith(storeName), eq(true))).andReturn(recordStoreMock).atLeastOnce();
+    public void migrateLegacyStores() throws Exception {
+        Integer id = 12;
         byte[] serializedData = serializer.serialize(data);
-        expect(recordStoreMock.getSizeAvailable()).andReturn(serializedData.length / 3
-                + ForecastDataRecordStoreDao.MIN_STORE_SPACE).atLeastOnce();
-        expect(recordStoreMock.addRecord(aryEq(serializedData), anyInt(), anyInt())).andReturn(1).atLeastOnce();
-        recordStoreMock.closeRecordStore();
-        expectLastCall().atLeastOnce();
+        int split = serializedData.length / 2;
+        byte[] first = new byte[split];
+        byte[] second = new byte[serializedData.length - split];
+        System.arraycopy(serializedData, 0, first, 0, first.length);
+        System.arraycopy(serializedData, split, second, 0, second.length);
+        String prefix = fixture.convertIdToBaseName(id);
+        expectIndexRecords();
+        expect(RecordStore.listRecordStores()).andReturn(new String[]{"MeteorogramInfo",
+                    prefix + ForecastDataRecordStoreDao.HEADER_STORE_NUMBER, prefix + 2, prefix + 1});
+        expect(RecordStore.openRecordStore(prefix + 1, false)).andReturn(dataStoreMock);
+        expect(RecordStore.openRecordStore(prefix + 2, false)).andReturn(dataStoreMock);
+        expect(dataStoreMock.enumerateRecords(null, null, false)).andReturn(recordEnumerationMock).times(2);
+        expect(recordEnumerationMock.nextRecord()).andReturn(first);
+        expect(recordEnumerationMock.nextRecord()).andReturn(second);
+        recordEnumerationMock.destroy();
+        expectLastCall().times(2);
+        expect(RecordStore.openRecordStore(DATA_STORE_1, true)).andReturn(dataStoreMock);
+        expect(dataStoreMock.getSizeAvailable()).andReturn(2 * serializedData.length);
+        expect(dataStoreMock.addRecord(aryEq(serializedData), eq(0), eq(serializedData.length))).andReturn(3);
+        dataStoreMock.closeRecordStore();
+        expectLastCall().times(3);
+        expect(RecordStore.openRecordStore(INDEX_STORE, true)).andReturn(indexStoreMock);
+        expect(indexStoreMock.addRecord(isA(byte[].class), eq(0), anyInt())).andReturn(1);
+        indexStoreMock.closeRecordStore();
+        RecordStore.deleteRecordStore(prefix + ForecastDataRecordStoreDao.HEADER_STORE_NUMBER);
+        RecordStore.deleteRecordStore(prefix + 2);
+        RecordStore.deleteRecordStore(prefix + 1);
         replayAll();
-        boolean actual = fixture.create(id, data);
-        assertThat(actual, is(true));
+        assertThat(fixture.exists(id), is(true));
         verifyAll();
     }
 
-    @Test(expected = NullPointerException.class)
-    public void createNullId() {
+    @Test
+    public void migrateLegacyStoresWriteFailureKeepsStores() throws Exception {
+        Integer id = 12;
+        byte[] serializedData = serializer.serialize(data);
+        String prefix = fixture.convertIdToBaseName(id);
+        expectIndexRecords();
+        expect(RecordStore.listRecordStores()).andReturn(new String[]{
+                    prefix + ForecastDataRecordStoreDao.HEADER_STORE_NUMBER, prefix + 1});
+        expect(RecordStore.openRecordStore(prefix + 1, false)).andReturn(dataStoreMock);
+        expect(dataStoreMock.enumerateRecords(null, null, false)).andReturn(recordEnumerationMock);
+        expect(recordEnumerationMock.nextRecord()).andReturn(serializedData);
+        recordEnumerationMock.destroy();
+        expect(RecordStore.openRecordStore(DATA_STORE_1, true)).andReturn(dataStoreMock);
+        expect(dataStoreMock.getSizeAvailable()).andReturn(2 * serializedData.length);
+        expect(dataStoreMock.addRecord(aryEq(serializedData), eq(0), eq(serializedData.length))).andThrow(new RecordStoreFullException());
+        dataStoreMock.closeRecordStore();
+        expectLastCall().times(2);
         replayAll();
-        fixture.create(null, data);
+        assertThat(fixture.exists(id), is(false));
         verifyAll();
     }
 
-    @Test(expected = NullPointerException.class)
-    public void createNullForecastData() {
+    @Test
+    public void migrateLegacyStoresAlreadyIndexed() throws Exception {
+        Integer id = 12;
+        String prefix = fixture.convertIdToBaseName(id);
+        expectIndexRecords(createIndexRecord(id, data.getModelResultLength(), 3));
+        expect(RecordStore.listRecordStores()).andReturn(new String[]{
+                    prefix + ForecastDataRecordStoreDao.HEADER_STORE_NUMBER, prefix + 1});
+        RecordStore.deleteRecordStore(prefix + ForecastDataRecordStoreDao.HEADER_STORE_NUMBER);
+        RecordStore.deleteRecordStore(prefix + 1);
         replayAll();
-        fixture.create(77, null);
+        assertThat(fixture.exists(id), is(true));
         verifyAll();
     }
 
     @Test
-    public void createFirstRecordStoreCreationFailureRecordStoreException() throws Exception {
-        createFirstRecordStoreCreationFailure(new RecordStoreException());
+    public void create() throws Exception {
+        Integer id = 56;
+        byte[] modelResult = data.getModelResult();
+        expectEmptyIndex();
+        expect(RecordStore.openRecordStore(DATA_STORE_1, true)).andReturn(dataStoreMock);
+        expect(dataStoreMock.getSizeAvailable()).andReturn(2 * modelResult.length
+                + ForecastDataRecordStoreDao.MIN_STORE_SPACE);
+        expect(dataStoreMock.addRecord(aryEq(modelResult), eq(0), eq(modelResult.length))).andReturn(3);
+        dataStoreMock.closeRecordStore();
+        byte[] indexRecord = createIndexRecord(id, modelResult.length, 3);
+        expect(RecordStore.openRecordStore(INDEX_STORE, true)).andReturn(indexStoreMock);
+        expect(indexStoreMock.addRecord(aryEq(indexRecord), eq(0), eq(indexRecord.length))).andReturn(1);
+        indexStoreMock.closeRecordStore();
+        replayAll();
+        assertThat(fixture.create(id, data), is(true));
+        assertThat(fixture.exists(id), is(true));
+        verifyAll();
     }
 
     @Test
-    public void createFirstRecordStoreCreationFailureRecordStoreNotFoundException() throws Exception {
-        createFirstRecordStoreCreationFailure(new RecordStoreNotFoundException());
+    public void createMultipleChunks() throws Exception {
+        Integer id = 59;
+        byte[] modelResult = data.getModelResult();
+        expectEmptyIndex();
+        expect(RecordStore.openRecordStore(DATA_STORE_1, true)).andReturn(dataStoreMock).atLeastOnce();
+        expect(dataStoreMock.getSizeAvailable()).andReturn(modelResult.length / 3
+                + ForecastDataRecordStoreDao.MIN_STORE_SPACE).atLeastOnce();
+        expect(dataStoreMock.addRecord(aryEq(modelResult), anyInt(), anyInt())).andReturn(3).atLeastOnce();
+        dataStoreMock.closeRecordStore();
+        expectLastCall().atLeastOnce();
+        expect(RecordStore.openRecordStore(INDEX_STORE, true)).andReturn(indexStoreMock);
+        expect(indexStoreMock.addRecord(isA(byte[].class), eq(0), anyInt())).andReturn(1);
+        indexStoreMock.closeRecordStore();
+        replayAll();
+        assertThat(fixture.create(id, data), is(true));
+        verifyAll();
     }
 
     @Test
-    public void createFirstRecordStoreCreationFailureRecordStoreFullException() throws Exception {
-        createFirstRecordStoreCreationFailure(new RecordStoreFullException());
+    public void createNextDataStore() throws Exception {
+        Integer id = 60;
+        byte[] modelResult = data.getModelResult();
+        expectEmptyIndex();
+        expect(RecordStore.openRecordStore(DATA_STORE_1, true)).andReturn(dataStoreMock);
+        expect(dataStoreMock.getSizeAvailable()).andReturn(0);
+        expect(RecordStore.openRecordStore(ForecastDataRecordStoreDao.DATA_STORE + 2, true)).andReturn(dataStoreMock);
+        expect(dataStoreMock.getSizeAvailable()).andReturn(2 * modelResult.length);
+        expect(dataStoreMock.addRecord(aryEq(modelResult), eq(0), eq(modelResult.length))).andReturn(3);
+        dataStoreMock.closeRecordStore();
+        expectLastCall().times(2);
+        expect(RecordStore.openRecordStore(INDEX_STORE, true)).andReturn(indexStoreMock);
+        expect(indexStoreMock.addRecord(isA(byte[].class), eq(0), anyInt())).andReturn(1);
+        indexStoreMock.closeRecordStore();
+        replayAll();
+        assertThat(fixture.create(id, data), is(true));
+        verifyAll();
     }
 
     @Test
-    public void createFirstRecordStoreCreationFailureIllegalArgumentException() throws Exception {
-        createFirstRecordStoreCreationFailure(new IllegalArgumentException());
-    }
-
-    private void createFirstRecordStoreCreationFailure(Exception failure) throws Exception {
-        Integer id = 53;
-        String[] recordStores = new String[]{
-            fixture.convertIdToBaseName(id - 1) + "1",
-            fixture.convertIdToBaseName(id + 1) + "1",};
-        expect(RecordStore.listRecordStores()).andReturn(recordStores).anyTimes();
-        String storeName = fixture.convertIdToBaseName(id);
-        expect(RecordStore.openRecordStore(startsWith(storeName), eq(true))).andThrow(failure);
-        RecordStore.deleteRecordStore(startsWith(storeName));
-        expectLastCall().anyTimes();
+    public void createNoSpace() throws Exception {
+        Integer id = 61;
+        expectEmptyIndex();
+        for (int i = 1; i <= ForecastDataRecordStoreDao.MAX_DATA_STORES; i++) {
+            expect(RecordStore.openRecordStore(ForecastDataRecordStoreDao.DATA_STORE + i, true)).andReturn(dataStoreMock);
+        }
+        expect(dataStoreMock.getSizeAvailable()).andReturn(0).times(ForecastDataRecordStoreDao.MAX_DATA_STORES);
+        dataStoreMock.closeRecordStore();
+        expectLastCall().times(ForecastDataRecordStoreDao.MAX_DATA_STORES);
         replayAll();
-        boolean actual = fixture.create(id, data);
-        assertThat(actual, is(false));
+        assertThat(fixture.create(id, data), is(false));
+        assertThat(fixture.exists(id), is(false));
         verifyAll();
     }
 
     @Test
-    public void createFollowingRecordStoreCreationFailureRecordStoreException() throws Exception {
-        createFollowingRecordStoreCreationFailure(new RecordStoreException());
+    public void createChunkFailure() throws Exception {
+        Integer id = 62;
+        expectEmptyIndex();
+        expect(RecordStore.openRecordStore(DATA_STORE_1, true)).andReturn(dataStoreMock);
+        expect(dataStoreMock.getSizeAvailable()).andReturn(Integer.MAX_VALUE / 2);
+        expect(dataStoreMock.addRecord(isA(byte[].class), eq(0), anyInt())).andThrow(new RecordStoreFullException());
+        dataStoreMock.closeRecordStore();
+        replayAll();
+        assertThat(fixture.create(id, data), is(false));
+        assertThat(fixture.exists(id), is(false));
+        verifyAll();
     }
 
     @Test
-    public void createFollowingRecordStoreCreationFailureRecordStoreNotFoundException() throws Exception {
-        createFollowingRecordStoreCreationFailure(new RecordStoreNotFoundException());
+    public void createIndexFailure() throws Exception {
+        Integer id = 63;
+        expectEmptyIndex();
+        expect(RecordStore.openRecordStore(DATA_STORE_1, true)).andReturn(dataStoreMock);
+        expect(dataStoreMock.getSizeAvailable()).andReturn(Integer.MAX_VALUE / 2);
+        expect(dataStoreMock.addRecord(isA(byte[].class), eq(0), anyInt())).andReturn(3);
+        expect(RecordStore.openRecordStore(INDEX_STORE, true)).andReturn(indexStoreMock);
+        expect(indexStoreMock.addRecord(isA(byte[].class), eq(0), anyInt())).andThrow(new RecordStoreFullException());
+        indexStoreMock.closeRecordStore();
+        expect(RecordStore.openRecordStore(DATA_STORE_1, false)).andReturn(dataStoreMock);
+        dataStoreMock.deleteRecord(3);
+        dataStoreMock.closeRecordStore();
+        expectLastCall().times(2);
+        replayAll();
+        assertThat(fixture.create(id, data), is(false));
+        assertThat(fixture.exists(id), is(false));
+        verifyAll();
     }
 
-    @Test
-    public void createFollowingRecordStoreCreationFailureRecordStoreFullException() throws Exception {
-        createFollowingRecordStoreCreationFailure(new RecordStoreFullException());
+    @Test(expected = NullPointerException.class)
+    public void createNullId() {
+        replayAll();
+        fixture.create(null, data);
+        verifyAll();
     }
 
-    @Test
-    public void createFollowingRecordStoreCreationFailureIllegalArgumentException() throws Exception {
-        createFollowingRecordStoreCreationFailure(new IllegalArgumentException());
+    @Test(expected = NullPointerException.class)
+    public void createNullForecastData() {
+        replayAll();
+        fixture.create(77, null);
+        verifyAll();
     }
 
-    private void createFollowingRecordStoreCreationFailure(Exception failure) throws Exception {
-        Integer id = 53;
-        String[] recordStores = new String[]{
-            fixture.convertIdToBaseName(id - 1) + "1",
-            fixture.convertIdToBaseName(id + 1) + "1",};
-        expect(RecordStore.listRecordStores()).andReturn(recordStores);
-        String storeName = fixture.convertIdToBaseName(id);
-        expect(RecordStore.openRecordStore(startsWith(storeName), eq(true))).andReturn(recordStoreMock);
-        byte[] serializedData = serializer.serialize(data);
-        expect(recordStoreMock.getSizeAvailable()).andReturn(serializedData.length / 3
-                + ForecastDataRecordStoreDao.MIN_STORE_SPACE);
-        expect(recordStoreMock.addRecord(aryEq(serializedData), eq(0), anyInt())).andReturn(1);
-        recordStoreMock.closeRecordStore();
-        expect(RecordStore.openRecordStore(startsWith(storeName), eq(true))).andThrow(failure);
-        String[] newRecordStores = new String[]{
-            fixture.convertIdToBaseName(id - 1) + "1",
-            fixture.convertIdToBaseName(id) + "1",
-            fixture.convertIdToBaseName(id + 1) + "1",};
-        expect(RecordStore.listRecordStores()).andReturn(newRecordStores);
-        RecordStore.deleteRecordStore(startsWith(storeName));
-        replayAll();
-        boolean actual = fixture.create(id, data);
-        assertThat(actual, is(false));
+    @Test
+    public void createAlreadyExists() throws Exception {
+        Integer id = 64;
+        expectIndex(createIndexRecord(id, data.getModelResultLength(), 3));
+        replayAll();
+        assertThat(fixture.create(id, data), is(false));
         verifyAll();
     }
 
-    @Test
-    public void createRecordStoreFirstAdditionFailureRecordStoreException() throws Exception {
-        createRecordStoreFirstAdditionFailure(new RecordStoreException());
+    @Test(expected = NullPointerException.class)
+    public void deleteNullId() {
+        fixture.delete(null);
     }
 
     @Test
-    public void createRecordStoreFirstAdditionFailureRecordStoreNotOpenException() throws Exception {
-        createRecordStoreFirstAdditionFailure(new RecordStoreNotOpenException());
+    public void deleteNotExisting() throws Exception {
+        expectEmptyIndex();
+        replayAll();
+        assertThat(fixture.delete(65), is(false));
+        verifyAll();
     }
 
     @Test
-    public void createRecordStoreFirstAdditionFailureRecordStoreFullException() throws Exception {
-        createRecordStoreFirstAdditionFailure(new RecordStoreFullException());
+    public void delete() throws Exception {
+        Integer id = 66;
+        expectIndex(createIndexRecord(id, data.getModelResultLength(), 3));
+        expect(RecordStore.openRecordStore(INDEX_STORE, true)).andReturn(indexStoreMock);
+        indexStoreMock.deleteRecord(1);
+        indexStoreMock.closeRecordStore();
+        expect(RecordStore.openRecordStore(DATA_STORE_1, false)).andReturn(dataStoreMock);
+        dataStoreMock.deleteRecord(3);
+        dataStoreMock.closeRecordStore();
+        replayAll();
+        assertThat(fixture.delete(id), is(true));
+        assertThat(fixture.exists(id), is(false));
+        verifyAll();
     }
 
     @Test
-    public void createRecordStoreFirstAdditionFailureSecurityException() throws Exception {
-        createRecordStoreFirstAdditionFailure(new SecurityException());
+    public void deleteWithGarbage() throws Exception {
+        Integer id = 66;
+        int length = data.getModelResultLength();
+        expectIndex(createIndexRecord(id, createHeader(length), length, 5, 1, 3, length));
+        expect(RecordStore.openRecordStore(INDEX_STORE, true)).andReturn(indexStoreMock);
+        indexStoreMock.deleteRecord(1);
+        indexStoreMock.closeRecordStore();
+        expect(RecordStore.openRecordStore(DATA_STORE_1, false)).andReturn(dataStoreMock).times(2);
+        dataStoreMock.deleteRecord(3);
+        dataStoreMock.deleteRecord(5);
+        dataStoreMock.closeRecordStore();
+        expectLastCall().times(2);
+        replayAll();
+        assertThat(fixture.delete(id), is(true));
+        verifyAll();
     }
 
-    private void createRecordStoreFirstAdditionFailure(Exception failure) throws Exception {
-        Integer id = 53;
-        String[] recordStores = new String[]{
-            fixture.convertIdToBaseName(id - 1) + "1",
-            fixture.convertIdToBaseName(id + 1) + "1",};
-        expect(RecordStore.listRecordStores()).andReturn(recordStores);
-        String storeName = fixture.convertIdToBaseName(id);
-        expect(RecordStore.openRecordStore(startsWith(storeName), eq(true))).andReturn(recordStoreMock);
-        byte[] serializedData = serializer.serialize(data);
-        expect(recordStoreMock.getSizeAvailable()).andReturn(serializedData.length / 3
-                + ForecastDataRecordStoreDao.MIN_STORE_SPACE);
-        expect(recordStoreMock.addRecord(aryEq(serializedData), eq(0), anyInt())).andThrow(failure);
-        recordStoreMock.closeRecordStore();
-        String[] newRecordStores = new String[]{
-            fixture.convertIdToBaseName(id - 1) + "1",
-            fixture.convertIdToBaseName(id) + "1",
-            fixture.convertIdToBaseName(id + 1) + "1",};
-        expect(RecordStore.listRecordStores()).andReturn(newRecordStores);
-        RecordStore.deleteRecordStore(startsWith(storeName));
-        replayAll();
-        boolean actual = fixture.create(id, data);
-        assertThat(actual, is(false));
+    @Test
+    public void deleteMissingChunk() throws Exception {
+        Integer id = 67;
+        expectIndex(createIndexRecord(id, data.getModelResultLength(), 3));
+        expect(RecordStore.openRecordStore(INDEX_STORE, true)).andReturn(indexStoreMock);
+        indexStoreMock.deleteRecord(1);
+        indexStoreMock.closeRecordStore();
+        expect(RecordStore.openRecordStore(DATA_STORE_1, false)).andReturn(dataStoreMock);
+        dataStoreMock.deleteRecord(3);
+        expectLastCall().andThrow(new InvalidRecordIDException());
+        dataStoreMock.closeRecordStore();
+        replayAll();
+        assertThat(fixture.delete(id), is(true));
         verifyAll();
     }
 
     @Test
-    public void createRecordStoreFollowingAdditionFailureRecordStoreException() throws Exception {
-        createRecordStoreFollowingAdditionFailure(new RecordStoreException());
+    public void deleteChunkFailure() throws Exception {
+        Integer id = 68;
+        expectIndex(createIndexRecord(id, data.getModelResultLength(), 3));
+        expect(RecordStore.openRecordStore(INDEX_STORE, true)).andReturn(indexStoreMock);
+        indexStoreMock.deleteRecord(1);
+        indexStoreMock.closeRecordStore();
+        expect(RecordStore.openRecordStore(DATA_STORE_1, false)).andThrow(new RecordStoreNotFoundException());
+        replayAll();
+        assertThat(fixture.delete(id), is(false));
+        assertThat(fixture.exists(id), is(false));
+        verifyAll();
     }
 
-    @Test
-    public void createRecordStoreFollowingAdditionFailureRecordStoreNotOpenException() throws Exception {
-        createRecordStoreFollowingAdditionFailure(new RecordStoreNotOpenException());
+    @Test(expected = NullPointerException.class)
+    public void updateNullId() {
+        fixture.update(null, data);
     }
 
-    @Test
-    public void createRecordStoreFollowingAdditionFailureRecordStoreFullException() throws Exception {
-        createRecordStoreFollowingAdditionFailure(new RecordStoreFullException());
+    @Test(expected = NullPointerException.class)
+    public void updateNullData() {
+        Integer id = 63;
+        fixture.update(id, null);
     }
 
     @Test
-    public void createRecordStoreFollowingAdditionFailureSecurityException() throws Exception {
-        createRecordStoreFollowingAdditionFailure(new SecurityException());
+    public void updateNotExisting() throws Exception {
+        expectEmptyIndex();
+        replayAll();
+        assertThat(fixture.update(64, data), is(false));
+        verifyAll();
     }
 
-    private void createRecordStoreFollowingAdditionFailure(Exception failure) throws Exception {
-        Integer id = 53;
-        String[] recordStores = new String[]{
-            fixture.convertIdToBaseName(id - 1) + "1",
-            fixture.convertIdToBaseName(id + 1) + "1",};
-        expect(RecordStore.listRecordStores()).andReturn(recordStores);
-        String storeName = fixture.convertIdToBaseName(id);
-        expect(RecordStore.openRecordStore(startsWith(storeName), eq(true))).andReturn(recordStoreMock).times(2);
-        byte[] serializedData = serializer.serialize(data);
-        expect(recordStoreMock.getSizeAvailable()).andReturn(serializedData.length / 3
-                + ForecastDataRecordStoreDao.MIN_STORE_SPACE).times(2);
-        expect(recordStoreMock.addRecord(aryEq(serializedData), eq(0), anyInt())).andReturn(1);
-        expect(recordStoreMock.addRecord(aryEq(serializedData), anyInt(), anyInt())).andThrow(failure);
-        recordStoreMock.closeRecordStore();
-        expectLastCall().times(2);
-        String[] newRecordStores = new String[]{
-            fixture.convertIdToBaseName(id - 1) + "1",
-            fixture.convertIdToBaseName(id) + "1",
-            fixture.convertIdToBaseName(id) + "2",
-            fixture.convertIdToBaseName(id + 1) + "1",};
-        expect(RecordStore.listRecordStores()).andReturn(newRecordStores);
-        RecordStore.deleteRecordStore(startsWith(storeName));
-        expectLastCall().times(2);
+    @Test
+    public void update() throws Exception {
+        Integer id = 66;
+        int oldLength = data.getModelResultLength() + 1;
+        byte[] modelResult = data.getModelResult();
+        expectIndex(createIndexRecord(id, oldLength, 3));
+        expect(RecordStore.openRecordStore(DATA_STORE_1, true)).andReturn(dataStoreMock);
+        expect(dataStoreMock.getSizeAvailable()).andReturn(2 * modelResult.length);
+        expect(dataStoreMock.addRecord(aryEq(modelResult), eq(0), eq(modelResult.length))).andReturn(5);
+        dataStoreMock.closeRecordStore();
+        byte[] indexRecord = createIndexRecord(id, createHeader(modelResult.length),
+                modelResult.length, 5, 1, 3, oldLength);
+        expect(RecordStore.openRecordStore(INDEX_STORE, true)).andReturn(indexStoreMock);
+        indexStoreMock.setRecord(eq(1), aryEq(indexRecord), eq(0), eq(indexRecord.length));
+        indexStoreMock.closeRecordStore();
         replayAll();
-        boolean actual = fixture.create(id, data);
-        assertThat(actual, is(false));
+        assertThat(fixture.update(id, data), is(true));
+        assertThat(fixture.readHeader(id).getModelResultLength(), equalTo(modelResult.length));
         verifyAll();
     }
 
     @Test
-    public void createRecordStoreAlreadyExists() {
-        Integer id = 56;
-        String[] recordStores = new String[]{
-            fixture.convertIdToBaseName(id - 1) + "1",
-            fixture.convertIdToBaseName(id) + "1",
-            fixture.convertIdToBaseName(id + 1) + "1",};
-        expect(RecordStore.listRecordStores()).andReturn(recordStores);
+    public void updateChunkFailureKeepsOldGeneration() throws Exception {
+        Integer id = 67;
+        int oldLength = data.getModelResultLength() + 1;
+        expectIndex(createIndexRecord(id, oldLength, 3));
+        expect(RecordStore.openRecordStore(DATA_STORE_1, true)).andReturn(dataStoreMock);
+        expect(dataStoreMock.getSizeAvailable()).andReturn(Integer.MAX_VALUE / 2);
+        expect(dataStoreMock.addRecord(isA(byte[].class), eq(0), anyInt())).andThrow(new RecordStoreFullException());
+        dataStoreMock.closeRecordStore();
         replayAll();
-        boolean actual = fixture.create(id, data);
-        assertThat(actual, is(false));
+        assertThat(fixture.update(id, data), is(false));
+        assertThat(fixture.readHeader(id).getModelResultLength(), equalTo(oldLength));
         verifyAll();
     }
 
-    @Test(expected = NullPointerException.class)
-    public void deleteNullId() {
-        fixture.delete(null);
+    @Test
+    public void updateIndexFailureKeepsOldGeneration() throws Exception {
+        Integer id = 68;
+        int oldLength = data.getModelResultLength() + 1;
+        expectIndex(createIndexRecord(id, oldLength, 3));
+        expect(RecordStore.openRecordStore(DATA_STORE_1, true)).andReturn(dataStoreMock);
+        expect(dataStoreMock.getSizeAvailable()).andReturn(Integer.MAX_VALUE / 2);
+        expect(dataStoreMock.addRecord(isA(byte[].class), eq(0), anyInt())).andReturn(5);
+        expect(RecordStore.openRecordStore(INDEX_STORE, true)).andReturn(indexStoreMock);
+        indexStoreMock.setRecord(eq(1), isA(byte[].class), eq(0), anyInt());
+        expectLastCall().andThrow(new RecordStoreFullException());
+        indexStoreMock.closeRecordStore();
+        expect(RecordStore.openRecordStore(DATA_STORE_1, false)).andReturn(dataStoreMock);
+        dataStoreMock.deleteRecord(5);
+        dataStoreMock.closeRecordStore();
+        expectLastCall().times(2);
+        replayAll();
+        assertThat(fixture.update(id, data), is(false));
+        assertThat(fixture.readHeader(id).getModelResultLength(), equalTo(oldLength));
+        verifyAll();
     }
 
     @Test
-    public void deleteNotExisting() {
-        Integer id = 57;
-        String[] recordStores = new String[]{
-            fixture.convertIdToBaseName(id - 1) + "1",
-            fixture.convertIdToBaseName(id + 1) + "1",};
-        expect(RecordStore.listRecordStores()).andReturn(recordStores);
+    public void updateDeletesOlderGarbage() throws Exception {
+        Integer id = 69;
+        int oldLength = data.getModelResultLength() + 1;
+        byte[] modelResult = data.getModelResult();
+        expectIndex(createIndexRecord(id, createHeader(oldLength), oldLength, 3, 1, 2, 10));
+        expect(RecordStore.openRecordStore(DATA_STORE_1, false)).andReturn(dataStoreMock);
+        dataStoreMock.deleteRecord(2);
+        expect(RecordStore.openRecordStore(DATA_STORE_1, true)).andReturn(dataStoreMock);
+        expect(dataStoreMock.getSizeAvailable()).andReturn(2 * modelResult.length);
+        expect(dataStoreMock.addRecord(aryEq(modelResult), eq(0), eq(modelResult.length))).andReturn(5);
+        dataStoreMock.closeRecordStore();
+        expectLastCall().times(2);
+        byte[] indexRecord = createIndexRecord(id, createHeader(modelResult.length),
+                modelResult.length, 5, 2, 3, oldLength);
+        expect(RecordStore.openRecordStore(INDEX_STORE, true)).andReturn(indexStoreMock);
+        indexStoreMock.setRecord(eq(1), aryEq(indexRecord), eq(0), eq(indexRecord.length));
+        indexStoreMock.closeRecordStore();
         replayAll();
-        boolean actual = fixture.delete(id);
-        assertThat(actual, is(false));
+        assertThat(fixture.update(id, data), is(true));
         verifyAll();
     }
 
     @Test
-    public void deleteSingleRecordStore() throws Exception {
-        Integer id = 58;
-        String[] recordStores = new String[]{
-            fixture.convertIdToBaseName(id - 1) + "1",
-            fixture.convertIdToBaseName(id) + "1",
-            fixture.convertIdToBaseName(id + 1) + "1",};
-        expect(RecordStore.listRecordStores()).andReturn(recordStores);
-        RecordStore.deleteRecordStore(startsWith(fixture.convertIdToBaseName(id)));
+    public void reclaimIndexNotRead() {
         replayAll();
-        boolean actual = fixture.delete(id);
-        assertThat(actual, is(true));
+        fixture.reclaim();
         verifyAll();
     }
 
     @Test
-    public void deleteMultipleRecordStores() throws Exception {
-        Integer id = 59;
-        String[] recordStores = new String[]{
-            fixture.convertIdToBaseName(id - 1) + "1",
-            fixture.convertIdToBaseName(id) + "1",
-            fixture.convertIdToBaseName(id) + "2",
-            fixture.convertIdToBaseName(id + 1) + "1",};
-        expect(RecordStore.listRecordStores()).andReturn(recordStores);
-        RecordStore.deleteRecordStore(startsWith(fixture.convertIdToBaseName(id)));
-        expectLastCall().times(2);
+    public void reclaim() throws Exception {
+        Integer id = 70;
+        int length = data.getModelResultLength();
+        expectIndex(createIndexRecord(id, createHeader(length), length, 5, 1, 3, length + 1));
+        expect(RecordStore.openRecordStore(DATA_STORE_1, false)).andReturn(dataStoreMock);
+        dataStoreMock.deleteRecord(3);
+        dataStoreMock.closeRecordStore();
+        byte[] indexRecord = createIndexRecord(id, createHeader(length), length, 5, 1);
+        expect(RecordStore.openRecordStore(INDEX_STORE, true)).andReturn(indexStoreMock);
+        indexStoreMock.setRecord(eq(1), aryEq(indexRecord), eq(0), eq(indexRecord.length));
+        indexStoreMock.closeRecordStore();
+        expectOrphanSweep(5);
         replayAll();
-        boolean actual = fixture.delete(id);
-        assertThat(actual, is(true));
+        assertThat(fixture.exists(id), is(true));
+        fixture.reclaim();
+        fixture.reclaim();
         verifyAll();
     }
 
-    private void deleteSingleRecordStoreFailure(Exception failure) throws Exception {
-        Integer id = 60;
-        String[] recordStores = new String[]{
-            fixture.convertIdToBaseName(id - 1) + "1",
-            fixture.convertIdToBaseName(id) + "1",
-            fixture.convertIdToBaseName(id + 1) + "1",};
-        expect(RecordStore.listRecordStores()).andReturn(recordStores);
-        RecordStore.deleteRecordStore(startsWith(fixture.convertIdToBaseName(id)));
-        expectLastCall().andThrow(failure);
-        replayAll();
-        boolean actual = fixture.delete(id);
-        assertThat(actual, is(false));
+    @Test
+    public void reclaimChunkFailure() throws Exception {
+        Integer id = 71;
+        int length = data.getModelResultLength();
+        expectIndex(createIndexRecord(id, createHeader(length), length, 5, 1, 3, length + 1));
+        expect(RecordStore.openRecordStore(DATA_STORE_1, false)).andThrow(new RecordStoreException());
+        expectOrphanSweep(3, 5);
+        expect(RecordStore.openRecordStore(DATA_STORE_1, false)).andReturn(dataStoreMock);
+        dataStoreMock.deleteRecord(3);
+        dataStoreMock.closeRecordStore();
+        expect(RecordStore.openRecordStore(INDEX_STORE, true)).andReturn(indexStoreMock);
+        indexStoreMock.setRecord(eq(1), isA(byte[].class), eq(0), anyInt());
+        indexStoreMock.closeRecordStore();
+        replayAll();
+        assertThat(fixture.exists(id), is(true));
+        fixture.reclaim();
+        fixture.reclaim();
         verifyAll();
     }
 
     @Test
-    public void deleteSingleRecordStoreRecordStoreException() throws Exception {
-        deleteSingleRecordStoreFailure(new RecordStoreException());
+    public void reclaimOrphans() throws Exception {
+        Integer id = 73;
+        int length = data.getModelResultLength();
+        expectIndex(createIndexRecord(id, length, 5));
+        expectOrphanSweep(4, 5, 6);
+        dataStoreMock.deleteRecord(4);
+        dataStoreMock.deleteRecord(6);
+        replayAll();
+        assertThat(fixture.exists(id), is(true));
+        fixture.reclaim();
+        fixture.reclaim();
+        verifyAll();
     }
 
     @Test
-    public void deleteSingleRecordStoreRecordStoreNotFoundException() throws Exception {
-        deleteSingleRecordStoreFailure(new RecordStoreNotFoundException());
+    public void reclaimOrphansFailure() throws Exception {
+        Integer id = 74;
+        int length = data.getModelResultLength();
+        expectIndex(createIndexRecord(id, length, 5));
+        expectOrphanSweep(4, 5);
+        dataStoreMock.deleteRecord(4);
+        expectLastCall().andThrow(new RecordStoreException());
+        expectOrphanSweep(4, 5);
+        dataStoreMock.deleteRecord(4);
+        replayAll();
+        assertThat(fixture.exists(id), is(true));
+        fixture.reclaim();
+        fixture.reclaim();
+        verifyAll();
     }
 
-    private void deleteMultipleRecordStoresOneFailure(Exception failure) throws Exception {
-        Integer id = 61;
-        String[] recordStores = new String[]{
-            fixture.convertIdToBaseName(id - 1) + "1",
-            fixture.convertIdToBaseName(id) + "1",
-            fixture.convertIdToBaseName(id) + "2",
-            fixture.convertIdToBaseName(id + 1) + "1",};
-        expect(RecordStore.listRecordStores()).andReturn(recordStores);
-        if (new Random().nextBoolean()) {
-            RecordStore.deleteRecordStore(startsWith(fixture.convertIdToBaseName(id)));
-            expectLastCall().andThrow(failure);
-            RecordStore.deleteRecordStore(startsWith(fixture.convertIdToBaseName(id)));
-        } else {
-            RecordStore.deleteRecordStore(startsWith(fixture.convertIdToBaseName(id)));
-            RecordStore.deleteRecordStore(startsWith(fixture.convertIdToBaseName(id)));
-            expectLastCall().andThrow(failure);
+    @Test
+    public void createReclaimsWhenFull() throws Exception {
+        Integer id = 72;
+        int length = data.getModelResultLength();
+        byte[] modelResult = data.getModelResult();
+        expectIndex(createIndexRecord(id + 1, createHeader(length), length, 5, 1, 3, length));
+        for (int i = 1; i <= ForecastDataRecordStoreDao.MAX_DATA_STORES; i++) {
+            expect(RecordStore.openRecordStore(ForecastDataRecordStoreDao.DATA_STORE + i, true)).andReturn(dataStoreMock);
         }
+        expect(dataStoreMock.getSizeAvailable()).andReturn(0).times(ForecastDataRecordStoreDao.MAX_DATA_STORES);
+        expect(RecordStore.openRecordStore(DATA_STORE_1, false)).andReturn(dataStoreMock);
+        dataStoreMock.deleteRecord(3);
+        expect(RecordStore.openRecordStore(INDEX_STORE, true)).andReturn(indexStoreMock).times(2);
+        indexStoreMock.setRecord(eq(1), isA(byte[].class), eq(0), anyInt());
+        expect(RecordStore.openRecordStore(DATA_STORE_1, true)).andReturn(dataStoreMock);
+        expect(dataStoreMock.getSizeAvailable()).andReturn(2 * length);
+        expect(dataStoreMock.addRecord(aryEq(modelResult), eq(0), eq(length))).andReturn(6);
+        expect(indexStoreMock.addRecord(isA(byte[].class), eq(0), anyInt())).andReturn(2);
+        dataStoreMock.closeRecordStore();
+        expectLastCall().times(ForecastDataRecordStoreDao.MAX_DATA_STORES + 2);
+        indexStoreMock.closeRecordStore();
+        expectLastCall().times(2);
         replayAll();
-        boolean actual = fixture.delete(id);
-        assertThat(actual, is(false));
+        assertThat(fixture.create(id, data), is(true));
         verifyAll();
     }
 
     @Test
-    public void deleteMultipleRecordStoresOneRecordStoreException() throws Exception {
-        deleteMultipleRecordStoresOneFailure(new RecordStoreException());
+    public void readIndexWithoutGenerations() throws Exception {
+        Integer id = 73;
+        byte[] record = createIndexRecord(id, data.getModelResultLength(), 3);
+        expectIndex(Arrays.copyOf(record, record.length - 6));
+        replayAll();
+        assertThat(fixture.exists(id), is(true));
+        verifyAll();
     }
 
     @Test
-    public void deleteMultipleRecordStoresOneRecordStoreNotFoundException() throws Exception {
-        deleteMultipleRecordStoresOneFailure(new RecordStoreNotFoundException());
-    }
-
-    private void deleteMultipleRecordStoresMultipleFailure(Exception failure) throws Exception {
-        Integer id = 62;
-        String[] recordStores = new String[]{
-            fixture.convertIdToBaseName(id - 1) + "1",
-            fixture.convertIdToBaseName(id) + "1",
-            fixture.convertIdToBaseName(id) + "2",
-            fixture.convertIdToBaseName(id + 1) + "1",};
-        expect(RecordStore.listRecordStores()).andReturn(recordStores);
-        RecordStore.deleteRecordStore(startsWith(fixture.convertIdToBaseName(id)));
-        expectLastCall().andThrow(failure).times(2);
-        replayAll();
-        boolean actual = fixture.delete(id);
-        assertThat(actual, is(false));
+    public void readIndexUpgradesLegacyHeader() throws Exception {
+        Integer id = 74;
+        int length = data.getModelResultLength();
+        byte[] upgraded = createIndexRecord(id, length, 3);
+        expectIndex(createIndexRecord(id, createLegacyHeader(length), length, 3));
+        indexStoreMock.setRecord(eq(1), aryEq(upgraded), eq(0), eq(upgraded.length));
+        replayAll();
+        assertThat(fixture.isUnchanged(id, data), is(true));
         verifyAll();
     }
 
     @Test
-    public void deleteMultipleRecordStoresMultipleRecordStoreException() throws Exception {
-        deleteMultipleRecordStoresMultipleFailure(new RecordStoreException());
+    public void readIndexUpgradeFailureKeepsLegacyHeader() throws Exception {
+        Integer id = 75;
+        int length = data.getModelResultLength();
+        byte[] upgraded = createIndexRecord(id, length, 3);
+        expectIndex(createIndexRecord(id, createLegacyHeader(length), length, 3));
+        indexStoreMock.setRecord(eq(1), aryEq(upgraded), eq(0), eq(upgraded.length));
+        expectLastCall().andThrow(new RecordStoreFullException());
+        replayAll();
+        assertThat(fixture.isUnchanged(id, data), is(false));
+        assertThat(fixture.readHeader(id).getModelResultLength(), equalTo(length));
+        verifyAll();
     }
 
     @Test
-    public void deleteMultipleRecordStoresMultipleRecordStoreNotFoundException() throws Exception {
-        deleteMultipleRecordStoresMultipleFailure(new RecordStoreNotFoundException());
+    public void updateUnchanged() {
+        Integer id = 66;
+        fixture = createPartialMock(ForecastDataRecordStoreDao.class, "isUnchanged", "delete", "create");
+        expect(fixture.isUnchanged(id, data)).andReturn(Boolean.TRUE);
+        replayAll();
+        boolean actual = fixture.update(id, data);
+        assertThat(actual, is(true));
+        verifyAll();
     }
 
-    @Test(expected = NullPointerException.class)
-    public void updateNullId() {
-        fixture.update(null, data);
-    }
 
-    @Test(expected = NullPointerException.class)
-    public void updateNullData() {
-        Integer id = 63;
-        fixture.update(id, null);
+    @Test
+    public void isUnchanged() throws Exception {
+        Integer id = 66;
+        expectIndex(createIndexRecord(id, data.getModelResultLength(), 3));
+        replayAll();
+        assertThat(fixture.isUnchanged(id, data), is(true));
+        verifyAll();
     }
 
     @Test
-    public void updateDeletionOfExistingRecordFailure() {
-        Integer id = 64;
-        fixture = createPartialMock(ForecastDataRecordStoreDao.class, "delete");
-        expect(fixture.delete(id)).andReturn(Boolean.FALSE);
+    public void isUnchangedDifferentHeader() throws Exception {
+        Integer id = 66;
+        expectIndex(createIndexRecord(id, createHeader(data.getModelResultLength() + 1),
+                data.getModelResultLength(), 3));
         replayAll();
-        boolean actual = fixture.update(id, data);
-        assertThat(actual, is(false));
+        assertThat(fixture.isUnchanged(id, data), is(false));
         verifyAll();
     }
 
     @Test
-    public void updateCreationFailure() {
-        Integer id = 65;
-        fixture = createPartialMock(ForecastDataRecordStoreDao.class, "delete", "create");
-        expect(fixture.delete(id)).andReturn(Boolean.TRUE);
-        expect(fixture.create(id, data)).andReturn(Boolean.FALSE);
+    public void isUnchangedNotExisting() throws Exception {
+        expectEmptyIndex();
         replayAll();
-        boolean actual = fixture.update(id, data);
-        assertThat(actual, is(false));
+        assertThat(fixture.isUnchanged(66, data), is(false));
         verifyAll();
     }
 
     @Test
-    public void update() {
-        Integer id = 66;
-        fixture = createPartialMock(ForecastDataRecordStoreDao.class, "delete", "create");
-        expect(fixture.delete(id)).andReturn(Boolean.TRUE);
-        expect(fixture.create(id, data)).andReturn(Boolean.TRUE);
+    public void isUnchangedNoModelResult() {
         replayAll();
-        boolean actual = fixture.update(id, data);
-        assertThat(actual, is(true));
+        assertThat(fixture.isUnchanged(66, new ForecastData("2010091012")), is(false));
         verifyAll();
     }
 
@@ -645,175 +980,128 @@ public class ForecastDataRecordStoreDaoTest {
     }
 
     @Test
-    public void readNotExisting() {
-        Integer id = 71;
-        String[] recordStores = new String[]{
-            fixture.convertIdToBaseName(id - 1) + "1",
-            fixture.convertIdToBaseName(id + 1) + "1",
-        };
-        expect(RecordStore.listRecordStores()).andReturn(recordStores);
+    public void readNotExisting() throws Exception {
+        expectEmptyIndex();
         replayAll();
-        ForecastData actual = fixture.read(id);
-        assertThat(actual, is(nullValue()));
+        assertThat(fixture.read(71), is(nullValue()));
         verifyAll();
     }
 
-    private void readOpenStoreFailure(Exception failure) throws Exception {
+    @Test
+    public void read() throws Exception {
         Integer id = 72;
-        String storeName = fixture.convertIdToBaseName(id) + "1";
-        String[] recordStores = new String[]{
-            fixture.convertIdToBaseName(id - 1) + "1",
-            storeName,
-            fixture.convertIdToBaseName(id + 1) + "1",
-        };
-        expect(RecordStore.listRecordStores()).andReturn(recordStores);
-        expect(RecordStore.openRecordStore(storeName, false)).andThrow(failure);
+        byte[] modelResult = data.getModelResult();
+        expectIndex(createIndexRecord(id, modelResult.length, 3));
+        expect(RecordStore.openRecordStore(DATA_STORE_1, false)).andReturn(dataStoreMock);
+        expectChunkRead(3, modelResult, 0);
+        dataStoreMock.closeRecordStore();
         replayAll();
         ForecastData actual = fixture.read(id);
-        assertThat(actual, is(nullValue()));
+        assertThat(actual.getModelResult(), equalTo(modelResult));
+        assertThat(actual.getModelStart(), equalTo(data.getModelStart()));
         verifyAll();
     }
 
     @Test
-    public void readOpenStoreRecordStoreException() throws Exception {
-        readOpenStoreFailure(new RecordStoreException());
-    }
-
-    @Test
-    public void readOpenStoreRecordStoreNotFoundException() throws Exception {
-        readOpenStoreFailure(new RecordStoreNotFoundException());
-    }
-
-    @Test
-    public void readOpenStoreRecordStoreFullException() throws Exception {
-        readOpenStoreFailure(new RecordStoreFullException());
-    }
-
-    @Test
-    public void readOpenStoreIllegalArgumentException() throws Exception {
-        readOpenStoreFailure(new IllegalArgumentException());
-    }
-
-    private void readNextRecordFailure(Exception failure) throws Exception {
-        Integer id = 73;
-        String storeName = fixture.convertIdToBaseName(id) + "1";
-        String[] recordStores = new String[]{
-            fixture.convertIdToBaseName(id - 1) + "1",
-            storeName,
-            fixture.convertIdToBaseName(id + 1) + "1",
-        };
-        expect(RecordStore.listRecordStores()).andReturn(recordStores);
-        expect(RecordStore.openRecordStore(storeName, false)).andReturn(recordStoreMock);
-        expect(recordStoreMock.enumerateRecords(null, null, false)).andReturn(recordEnumerationMock);
-        expect(recordEnumerationMock.nextRecord()).andThrow(failure);
-        recordStoreMock.closeRecordStore();
+    public void readMultipleChunks() throws Exception {
+        Integer id = 72;
+        byte[] modelResult = data.getModelResult();
+        int split = modelResult.length / 3;
+        byte[] first = Arrays.copyOfRange(modelResult, 0, split);
+        byte[] second = Arrays.copyOfRange(modelResult, split, modelResult.length);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(baos);
+        dos.writeInt(id);
+        dos.writeInt(modelResult.length);
+        dos.writeShort(HEADER_LENGTH);
+        dos.write(createHeader(modelResult.length));
+        dos.writeShort(2);
+        dos.writeByte(1);
+        dos.writeInt(3);
+        dos.writeInt(first.length);
+        dos.writeByte(2);
+        dos.writeInt(5);
+        dos.writeInt(second.length);
+        expectIndex(baos.toByteArray());
+        expect(RecordStore.openRecordStore(DATA_STORE_1, false)).andReturn(dataStoreMock);
+        expectChunkRead(3, first, 0);
+        expect(RecordStore.openRecordStore(ForecastDataRecordStoreDao.DATA_STORE + 2, false)).andReturn(dataStoreMock);
+        expectChunkRead(5, second, split);
+        dataStoreMock.closeRecordStore();
+        expectLastCall().times(2);
         replayAll();
         ForecastData actual = fixture.read(id);
-        assertThat(actual, is(nullValue()));
+        assertThat(actual.getModelResult(), equalTo(modelResult));
         verifyAll();
     }
 
     @Test
-    public void readNextRecordInvalidRecordIDException() throws Exception {
-        readNextRecordFailure(new InvalidRecordIDException());
+    public void readBrokenHeader() throws Exception {
+        Integer id = 73;
+        expectIndex(createIndexRecord(id, createHeader(data.getModelResultLength() - 1),
+                data.getModelResultLength(), 3));
+        replayAll();
+        assertThat(fixture.read(id), is(nullValue()));
+        verifyAll();
     }
 
     @Test
-    public void readNextRecordRecordStoreException() throws Exception {
-        readNextRecordFailure(new RecordStoreException());
+    public void readBrokenChunk() throws Exception {
+        Integer id = 73;
+        byte[] modelResult = data.getModelResult();
+        expectIndex(createIndexRecord(id, modelResult.length, 3));
+        expect(RecordStore.openRecordStore(DATA_STORE_1, false)).andReturn(dataStoreMock);
+        expectChunkRead(3, Arrays.copyOf(modelResult, modelResult.length - 1), 0);
+        dataStoreMock.closeRecordStore();
+        replayAll();
+        assertThat(fixture.read(id), is(nullValue()));
+        verifyAll();
     }
 
     @Test
-    public void readCloseRecordStoreFailure() throws Exception {
+    public void readOpenStoreFailure() throws Exception {
         Integer id = 74;
-        byte[] rawData = new byte[] {1, 2, 3};
-        String storeName = fixture.convertIdToBaseName(id) + "1";
-        String[] recordStores = new String[]{
-            fixture.convertIdToBaseName(id - 1) + "1",
-            storeName,
-            fixture.convertIdToBaseName(id + 1) + "1",
-        };
-        expect(RecordStore.listRecordStores()).andReturn(recordStores);
-        expect(RecordStore.openRecordStore(storeName, false)).andReturn(recordStoreMock);
-        expect(recordStoreMock.enumerateRecords(null, null, false)).andReturn(recordEnumerationMock);
-        expect(recordEnumerationMock.nextRecord()).andReturn(rawData);
-        recordStoreMock.closeRecordStore();
-        expectLastCall().andThrow(new RecordStoreException());
+        expectIndex(createIndexRecord(id, data.getModelResultLength(), 3));
+        expect(RecordStore.openRecordStore(DATA_STORE_1, false)).andThrow(new RecordStoreNotFoundException());
         replayAll();
-        ForecastData actual = fixture.read(id);
-        assertThat(actual, is(notNullValue()));
-        assertThat(actual.getModelResult(), equalTo(rawData));
+        assertThat(fixture.read(id), is(nullValue()));
         verifyAll();
     }
 
     @Test
-    public void readSingleRecordStore() throws Exception {
+    public void readMissingChunk() throws Exception {
         Integer id = 75;
-        byte[] rawData = new byte[] {1, 2, 3};
-        String storeName = fixture.convertIdToBaseName(id) + "1";
-        String[] recordStores = new String[]{
-            fixture.convertIdToBaseName(id - 1) + "1",
-            storeName,
-            fixture.convertIdToBaseName(id + 1) + "1",
-        };
-        expect(RecordStore.listRecordStores()).andReturn(recordStores);
-        expect(RecordStore.openRecordStore(storeName, false)).andReturn(recordStoreMock);
-        expect(recordStoreMock.enumerateRecords(null, null, false)).andReturn(recordEnumerationMock);
-        expect(recordEnumerationMock.nextRecord()).andReturn(rawData);
-        recordStoreMock.closeRecordStore();
+        expectIndex(createIndexRecord(id, data.getModelResultLength(), 3));
+        expect(RecordStore.openRecordStore(DATA_STORE_1, false)).andReturn(dataStoreMock);
+        expect(dataStoreMock.getRecord(eq(3), isA(byte[].class), eq(0))).andThrow(new InvalidRecordIDException());
+        dataStoreMock.closeRecordStore();
         replayAll();
-        ForecastData actual = fixture.read(id);
-        assertThat(actual, is(notNullValue()));
-        assertThat(actual.getModelResult(), equalTo(rawData));
+        assertThat(fixture.read(id), is(nullValue()));
         verifyAll();
     }
 
+    @Test(expected = NullPointerException.class)
+    public void readHeaderNullId() {
+        fixture.readHeader(null);
+    }
+
     @Test
-    public void readMultipleRecordStores() throws Exception {
-        Integer id = 76;
-        byte[] rawData1 = new byte[] {1, 2, 3};
-        byte[] rawData2 = new byte[] {4, 5, 6};
-        byte[] rawData = new byte[] {1, 2, 3, 4, 5, 6};
-        String storeNamePrefix = fixture.convertIdToBaseName(id);
-        String[] recordStores = new String[]{
-            fixture.convertIdToBaseName(id - 1) + "1",
-            storeNamePrefix + "1",
-            storeNamePrefix + "2",
-            fixture.convertIdToBaseName(id + 1) + "1",
-        };
-        expect(RecordStore.listRecordStores()).andReturn(recordStores);
-        expect(RecordStore.openRecordStore(startsWith(storeNamePrefix), eq(false))).andReturn(recordStoreMock).times(2);
-        expect(recordStoreMock.enumerateRecords(null, null, false)).andReturn(recordEnumerationMock).times(2);
-        expect(recordEnumerationMock.nextRecord()).andReturn(rawData1);
-        expect(recordEnumerationMock.nextRecord()).andReturn(rawData2);
-        recordStoreMock.closeRecordStore();
-        expectLastCall().times(2);
+    public void readHeaderNotExisting() throws Exception {
+        expectEmptyIndex();
         replayAll();
-        ForecastData actual = fixture.read(id);
-        assertThat(actual, is(notNullValue()));
-        assertThat(actual.getModelResult(), equalTo(rawData));
+        assertThat(fixture.readHeader(76), is(nullValue()));
         verifyAll();
     }
 
     @Test
-    public void readMultiplerecordStoresMissingOneFailure() throws Exception {
+    public void readHeaderFromIndex() throws Exception {
         Integer id = 77;
-        byte[] rawData = new byte[] {1, 2, 3};
-        String storeNamePrefix = fixture.convertIdToBaseName(id);
-        String[] recordStores = new String[]{
-            fixture.convertIdToBaseName(id - 1) + "1",
-            storeNamePrefix + "1",
-            storeNamePrefix + "3",
-            fixture.convertIdToBaseName(id + 1) + "1",
-        };
-        expect(RecordStore.listRecordStores()).andReturn(recordStores);
-        expect(RecordStore.openRecordStore(startsWith(storeNamePrefix), eq(false))).andReturn(recordStoreMock);
-        expect(recordStoreMock.enumerateRecords(null, null, false)).andReturn(recordEnumerationMock);
-        expect(recordEnumerationMock.nextRecord()).andReturn(rawData);
-        recordStoreMock.closeRecordStore();
+        expectIndex(createIndexRecord(id, data.getModelResultLength(), 3));
         replayAll();
-        ForecastData actual = fixture.read(id);
-        assertThat(actual, is(nullValue()));
+        ForecastData actual = fixture.readHeader(id);
+        assertThat(actual, is(notNullValue()));
+        assertThat(actual.isModelResultLoaded(), is(false));
+        assertThat(actual.getModelResultLength(), equalTo(data.getModelResultLength()));
         verifyAll();
     }
 }
@@ -18,6 +18,7 @@
 package com.kenai.weathericm.repository;
 
 import com.kenai.weathericm.domain.ForecastData;
+import com.kenai.weathericm.util.Adler32;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
@@ -80,15 +81,62 @@ public class ForecastDataRecordStoreSerializerTest {
         forecastData.setModelResult(modelResult);
         byte[] actualData = fixture.serialize(forecastData);
         assertThat(actualData, is(notNullValue()));
-        long actualTime = bytesToLong(actualData, 0);
-        assertThat(actualTime, equalTo(date.getTime()));
-        int actualLength = bytesToInt(actualData, 8);
-        assertThat(actualLength, equalTo(modelResult.length));
+        assertThat(actualData[0], equalTo((byte) 0x81));
+        long actualHours = (actualData[1] & 0x7f) | ((actualData[2] & 0x7f) << 7)
+                | ((actualData[3] & 0x7f) << 14);
+        assertThat(actualData[3] & 0x80, equalTo(0));
+        assertThat(actualHours * 3600L * 1000L, equalTo(date.getTime()));
+        assertThat((int) actualData[4], equalTo(modelResult.length));
+        assertThat((int) actualData[5], equalTo(ForecastDataRecordStoreSerializer.CHECKSUM_TAG));
+        assertThat((int) actualData[6], equalTo(4));
+        int actualChecksum = bytesToInt(actualData, 7);
+        assertThat(actualChecksum, equalTo((int) Adler32.checksum(modelResult, modelResult.length)));
+        assertThat((int) actualData[11], equalTo(0));
+        assertThat(actualData.length, equalTo(12 + modelResult.length));
         byte[] actualModelResult = Arrays.copyOfRange(actualData, 12, 15);
         assertThat(actualModelResult, equalTo(modelResult));
 
     }
 
+    @Test
+    public void serializeKnownChecksum() {
+        ForecastData forecastData = new ForecastData("2010102003");
+        forecastData.setModelResult(new byte[]{1, 2, 3}, 0xfedcba98L);
+        byte[] actualData = fixture.serialize(forecastData);
+        assertThat(bytesToInt(actualData, 7), equalTo(0xfedcba98));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void serializeHeaderNullForecastData() {
+        fixture.serializeHeader(null);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void serializeHeaderNullModelResult() {
+        ForecastData forecastData = new ForecastData("2010102004");
+        fixture.serializeHeader(forecastData);
+    }
+
+    @Test
+    public void serializeHeader() {
+        ForecastData forecastData = new ForecastData("2010102005");
+        forecastData.setModelResult(new byte[]{4, 5, 6, 7});
+        byte[] actual = fixture.serializeHeader(forecastData);
+        byte[] serialized = fixture.serialize(forecastData);
+        assertThat(actual.length, equalTo(12));
+        assertThat(actual, equalTo(Arrays.copyOfRange(serialized, 0, 12)));
+    }
+
+    @Test
+    public void serializeHeaderDiffersForDifferentModelResult() {
+        ForecastData forecastData = new ForecastData("2010102005");
+        forecastData.setModelResult(new byte[]{4, 5, 6, 7});
+        ForecastData other = new ForecastData("2010102005");
+        other.setModelResult(new byte[]{4, 5, 7, 6});
+        assertThat(fixture.serializeHeader(forecastData),
+                not(equalTo(fixture.serializeHeader(other))));
+    }
+
     private int bytesToInt(byte[] bytes, int offset) {
         int retValue = 0;
         for (int i = 0; i < 4; i++) {
@@ -143,6 +191,15 @@ public class ForecastDataRecordStoreSerializerTest {
         assertThat(actual, is(nullValue()));
     }
 
+    @Test
+    public void resurectTooShort() {
+        byte[] data = new byte[]{
+            0, 0, 0, 0, 0, 0, 0, 0,
+            0, 0, 0,};
+        ForecastData actual = fixture.resurect(data);
+        assertThat(actual, is(nullValue()));
+    }
+
     @Test
     public void resurectNoModelResult() {
         byte[] data = new byte[]{
@@ -197,5 +254,190 @@ public class ForecastDataRecordStoreSerializerTest {
         assertThat(actualDate.compareTo(date), equalTo(0));
         byte[] actualModelResult = actual.getModelResult();
         assertThat(actualModelResult, equalTo(Arrays.copyOfRange(data, 12, 16)));
+        assertThat(actual.getChecksum(), equalTo(Adler32.checksum(actualModelResult, 4)));
+    }
+
+    @Test
+    public void resurectWithChecksum() {
+        byte[] data = new byte[]{
+            0, 0, 0, 0, 0, 0, 0, 0,
+            0, 0, 0, 4,
+            (byte) 0xfe, (byte) 0xdc, (byte) 0xba, (byte) 0x98,
+            1, 1, 1, 1,};
+        setTimeInBytes(null, data);
+        ForecastData actual = fixture.resurect(data);
+        assertThat(actual, is(notNullValue()));
+        assertThat(actual.getModelResult(), equalTo(Arrays.copyOfRange(data, 16, 20)));
+        assertThat(actual.getChecksum(), equalTo(0xfedcba98L));
+    }
+
+    @Test
+    public void resurectSerialized() {
+        ForecastData forecastData = new ForecastData("2010102006");
+        forecastData.setModelResult(new byte[]{9, 8, 7, 6, 5});
+        ForecastData actual = fixture.resurect(fixture.serialize(forecastData));
+        assertThat(actual.getModelStart(), equalTo(forecastData.getModelStart()));
+        assertThat(actual.getModelResult(), equalTo(forecastData.getModelResult()));
+        assertThat(actual.getChecksum(), equalTo(forecastData.getChecksum()));
+    }
+
+    @Test
+    public void serializeHeaderNotLoaded() {
+        ForecastData forecastData = new ForecastData("2010102005");
+        forecastData.setModelResult(new byte[]{4, 5, 6, 7});
+        byte[] expected = fixture.serializeHeader(forecastData);
+        forecastData.unloadModelResult();
+        assertThat(fixture.serializeHeader(forecastData), equalTo(expected));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void resurectHeaderNull() {
+        fixture.resurectHeader(null);
+    }
+
+    @Test
+    public void resurectHeaderTooShort() {
+        ForecastData actual = fixture.resurectHeader(new byte[]{0, 0, 0, 0, 0, 0, 0, 1});
+        assertThat(actual, is(nullValue()));
+    }
+
+    @Test
+    public void resurectHeaderSerializedHeader() {
+        ForecastData forecastData = new ForecastData("2010102007");
+        forecastData.setModelResult(new byte[]{9, 8, 7, 6, 5});
+        ForecastData actual = fixture.resurectHeader(fixture.serializeHeader(forecastData));
+        assertThat(actual, is(notNullValue()));
+        assertThat(actual.getModelStart(), equalTo(forecastData.getModelStart()));
+        assertThat(actual.isModelResultLoaded(), is(false));
+        assertThat(actual.getModelResultLength(), equalTo(5));
+        assertThat(actual.getChecksum(), equalTo(forecastData.getChecksum()));
+    }
+
+    @Test
+    public void resurectHeaderSerialized() {
+        ForecastData forecastData = new ForecastData("2010102008");
+        forecastData.setModelResult(new byte[]{9, 8, 7, 6, 5});
+        ForecastData actual = fixture.resurectHeader(fixture.serialize(forecastData));
+        assertThat(actual, is(notNullValue()));
+        assertThat(actual.getModelStart(), equalTo(forecastData.getModelStart()));
+        assertThat(actual.isModelResultLoaded(), is(false));
+        assertThat(actual.getModelResultLength(), equalTo(5));
+        assertThat(actual.getChecksum(), equalTo(forecastData.getChecksum()));
+    }
+
+    @Test
+    public void resurectHeaderLegacy() {
+        byte[] data = new byte[]{
+            0, 0, 0, 0, 0, 0, 0, 0,
+            0, 0, 0, 4,
+            1, 1, 1, 1,};
+        setTimeInBytes(null, data);
+        ForecastData actual = fixture.resurectHeader(data);
+        assertThat(actual, is(notNullValue()));
+        assertThat(actual.getModelResultLength(), equalTo(4));
+        assertThat(actual.getChecksum(), equalTo(ForecastData.UNKNOWN_CHECKSUM));
+    }
+
+    @Test
+    public void resurectHeaderUnknownChecksum() {
+        byte[] data = new byte[]{
+            0, 0, 0, 0, 0, 0, 0, 0,
+            0, 0, 0, 4,
+            (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff,};
+        setTimeInBytes(null, data);
+        ForecastData actual = fixture.resurectHeader(data);
+        assertThat(actual, is(notNullValue()));
+        assertThat(actual.getModelResultLength(), equalTo(4));
+        assertThat(actual.getChecksum(), equalTo(ForecastData.UNKNOWN_CHECKSUM));
+    }
+
+    @Test
+    public void resurectHeaderPartialData() {
+        byte[] data = new byte[]{
+            0, 0, 0, 0, 0, 0, 0, 0,
+            0, 0, 0, 40,
+            1, 2, 3, 4,
+            1, 1, 1, 1,};
+        setTimeInBytes(null, data);
+        assertThat(fixture.resurectHeader(data), is(nullValue()));
+    }
+
+    @Test
+    public void resurectHeaderZeroLength() {
+        byte[] data = new byte[]{
+            0, 0, 0, 0, 0, 0, 0, 0,
+            0, 0, 0, 0,
+            1, 2, 3, 4,};
+        setTimeInBytes(null, data);
+        assertThat(fixture.resurectHeader(data), is(nullValue()));
+    }
+
+    @Test
+    public void serializeHeaderUnknownChecksum() {
+        ForecastData forecastData = new ForecastData("2010102009");
+        forecastData.setModelResultHeader(4, ForecastData.UNKNOWN_CHECKSUM);
+        byte[] actual = fixture.serializeHeader(forecastData);
+        assertThat(actual.length, equalTo(6));
+        assertThat((int) actual[4], equalTo(4));
+        assertThat((int) actual[5], equalTo(0));
+        ForecastData resurected = fixture.resurectHeader(actual);
+        assertThat(resurected.getModelStart(), equalTo(forecastData.getModelStart()));
+        assertThat(resurected.getChecksum(), equalTo(ForecastData.UNKNOWN_CHECKSUM));
+    }
+
+    @Test
+    public void resurectSkipsUnknownFields() {
+        ForecastData forecastData = new ForecastData("2010102010");
+        forecastData.setModelResult(new byte[]{1, 2, 3}, 0x01020304L);
+        byte[] serialized = fixture.serialize(forecastData);
+        byte[] data = new byte[serialized.length + 4];
+        System.arraycopy(serialized, 0, data, 0, 11);
+        data[11] = 9;
+        data[12] = 2;
+        data[13] = 7;
+        data[14] = 7;
+        System.arraycopy(serialized, 11, data, 15, serialized.length - 11);
+        ForecastData actual = fixture.resurect(data);
+        assertThat(actual, is(notNullValue()));
+        assertThat(actual.getModelStart(), equalTo(forecastData.getModelStart()));
+        assertThat(actual.getModelResult(), equalTo(forecastData.getModelResult()));
+        assertThat(actual.getChecksum(), equalTo(0x01020304L));
+        ForecastData header = fixture.resurectHeader(Arrays.copyOf(data, 16));
+        assertThat(header.getModelResultLength(), equalTo(3));
+    }
+
+    @Test
+    public void resurectVersionedPartialData() {
+        ForecastData forecastData = new ForecastData("2010102011");
+        forecastData.setModelResult(new byte[]{1, 2, 3});
+        byte[] serialized = fixture.serialize(forecastData);
+        byte[] data = Arrays.copyOf(serialized, serialized.length - 1);
+        assertThat(fixture.resurect(data), is(nullValue()));
+        assertThat(fixture.resurectHeader(data), is(nullValue()));
+        assertThat(fixture.resurect(fixture.serializeHeader(forecastData)), is(nullValue()));
+    }
+
+    @Test
+    public void resurectUnsupportedVersion() {
+        ForecastData forecastData = new ForecastData("2010102012");
+        forecastData.setModelResult(new byte[]{1, 2, 3});
+        byte[] data = fixture.serialize(forecastData);
+        data[0] = (byte) 0x82;
+        assertThat(fixture.resurect(data), is(nullValue()));
+        assertThat(fixture.resurectHeader(data), is(nullValue()));
+    }
+
+    @Test
+    public void isUpgradeNeeded() {
+        ForecastData forecastData = new ForecastData("2010102013");
+        forecastData.setModelResult(new byte[]{1, 2, 3});
+        assertThat(fixture.isUpgradeNeeded(fixture.serializeHeader(forecastData)), is(false));
+        assertThat(fixture.isUpgradeNeeded(fixture.serialize(forecastData)), is(false));
+        byte[] legacy = new byte[]{
+            0, 0, 0, 0, 0, 0, 0, 0,
+            0, 0, 0, 4,
+            1, 1, 1, 1,};
+        setTimeInBytes(null, legacy);
+        assertThat(fixture.isUpgradeNeeded(legacy), is(true));
     }
 }
@@ -0,0 +1,338 @@
+/*
+ *  Copyright (C) 2010 Przemek Kryger
+ * 
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ * 
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.kenai.weathericm.repository;
+
+import com.kenai.weathericm.domain.ForecastData;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import javax.microedition.rms.RecordStore;
+import javax.microedition.rms.RecordStoreFullException;
+import javax.microedition.rms.RecordStoreNotFoundException;
+import net.sf.microlog.core.config.PropertyConfigurator;
+import org.easymock.IAnswer;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.core.classloader.annotations.SuppressStaticInitializationFor;
+import org.powermock.modules.junit4.PowerMockRunner;
+import org.powermock.reflect.Whitebox;
+import static org.hamcrest.Matchers.*;
+import static org.hamcrest.MatcherAssert.*;
+import static org.powermock.api.easymock.PowerMock.createMock;
+import static org.powermock.api.easymock.PowerMock.mockStatic;
+import static org.powermock.api.easymock.PowerMock.replayAll;
+import static org.powermock.api.easymock.PowerMock.expectLastCall;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.eq;
+import static org.easymock.EasyMock.anyInt;
+import static org.easymock.EasyMock.anyBoolean;
+import static org.easymock.EasyMock.isA;
+import static org.easymock.EasyMock.getCurrentArguments;
+
+/**
+ * Tests for {@link ForecastHistoryRecordStoreDao} class.
+ * @author Przemek Kryger
+ */
+@RunWith(PowerMockRunner.class)
+@SuppressStaticInitializationFor("javax.microedition.rms.RecordStore")
+@PrepareForTest(RecordStore.class)
+public class ForecastHistoryRecordStoreDaoTest {
+
+    private final static String STORE = ForecastHistoryRecordStoreDao.STORE;
+    private final static int BLOCK_SIZE = ForecastHistoryRecordStoreDao.BLOCK_SIZE;
+    private final static int SLOT_BLOCKS = ForecastHistoryRecordStoreDao.SLOT_BLOCKS;
+    private final static int SLOT_ENTRY_SIZE = ForecastHistoryRecordStoreDao.SLOT_ENTRY_SIZE;
+    private final static int RUNS_PER_LOCATION = ForecastHistoryRecordStoreDao.RUNS_PER_LOCATION;
+    private final static String[] RUNS = {"2010102000", "2010102006", "2010102012", "2010102018"};
+    private final static Integer ID = 1;
+
+    @BeforeClass
+    public static void setUpClass() {
+        PropertyConfigurator.configure("/testMicrolog.properties");
+    }
+    private RecordStore storeMock = null;
+    private ForecastHistoryRecordStoreDao fixture = null;
+    private final Map<String, TreeMap<Integer, byte[]>> stores = new HashMap<String, TreeMap<Integer, byte[]>>();
+    private TreeMap<Integer, byte[]> records = null;
+    private boolean full = false;
+
+    @Before
+    public void setUp() throws Exception {
+        mockStatic(RecordStore.class);
+        storeMock = createMock(RecordStore.class);
+        stores.clear();
+        records = null;
+        full = false;
+        expect(RecordStore.openRecordStore(isA(String.class), anyBoolean())).andAnswer(new IAnswer<RecordStore>() {
+
+            @Override
+            public RecordStore answer() throws Throwable {
+                String name = (String) getCurrentArguments()[0];
+                if (!stores.containsKey(name)) {
+                    if (!(Boolean) getCurrentArguments()[1]) {
+                        throw new RecordStoreNotFoundException(name);
+                    }
+                    stores.put(name, new TreeMap<Integer, byte[]>());
+                }
+                records = stores.get(name);
+                return storeMock;
+            }
+        }).anyTimes();
+        RecordStore.deleteRecordStore(isA(String.class));
+        expectLastCall().andAnswer(new IAnswer<Object>() {
+
+            @Override
+            public Object answer() throws Throwable {
+                String name = (String) getCurrentArguments()[0];
+                if (stores.remove(name) == null) {
+                    throw new RecordStoreNotFoundException(name);
+                }
+                return null;
+            }
+        }).anyTimes();
+        storeMock.closeRecordStore();
+        expectLastCall().anyTimes();
+        expect(storeMock.getNextRecordID()).andAnswer(new IAnswer<Integer>() {
+
+            @Override
+            public Integer answer() throws Throwable {
+                return records.size() + 1;
+            }
+        }).anyTimes();
+        expect(storeMock.addRecord(isA(byte[].class), eq(0), anyInt())).andAnswer(new IAnswer<Integer>() {
+
+            @Override
+            public Integer answer() throws Throwable {
+                int recordId = records.size() + 1;
+                records.put(recordId, copy(getCurrentArguments(), 0));
+                return recordId;
+            }
+        }).anyTimes();
+        storeMock.setRecord(anyInt(), isA(byte[].class), anyInt(), anyInt());
+        expectLastCall().andAnswer(new IAnswer<Object>() {
+
+            @Override
+            public Object answer() throws Throwable {
+                Object[] arguments = getCurrentArguments();
+                records.put((Integer) arguments[0], copy(arguments, 1));
+                return null;
+            }
+        }).anyTimes();
+        expect(storeMock.getRecord(anyInt(), isA(byte[].class), anyInt())).andAnswer(new IAnswer<Integer>() {
+
+            @Override
+            public Integer answer() throws Throwable {
+                Object[] arguments = getCurrentArguments();
+                byte[] record = records.get((Integer) arguments[0]);
+                System.arraycopy(record, 0, (byte[]) arguments[1], (Integer) arguments[2], record.length);
+                return record.length;
+            }
+        }).anyTimes();
+        expect(storeMock.getRecord(anyInt())).andAnswer(new IAnswer<byte[]>() {
+
+            @Override
+            public byte[] answer() throws Throwable {
+                return records.get((Integer) getCurrentArguments()[0]).clone();
+            }
+        }).anyTimes();
+        replayAll();
+        fixture = createFixture();
+    }
+
+    private ForecastHistoryRecordStoreDao createFixture() throws Exception {
+        Whitebox.setInternalState(ForecastHistoryRecordStoreDao.class, "instance",
+                (ForecastHistoryRecordStoreDao) null);
+        ForecastHistoryRecordStoreDao dao = ForecastHistoryRecordStoreDao.getInstance();
+        dao.setForecastDataSerializer(new ForecastDataRecordStoreSerializer());
+        return dao;
+    }
+
+    private byte[] copy(Object[] arguments, int first) throws RecordStoreFullException {
+        if (full) {
+            throw new RecordStoreFullException();
+        }
+        byte[] data = (byte[]) arguments[first];
+        int offset = (Integer) arguments[first + 1];
+        int length = (Integer) arguments[first + 2];
+        byte[] record = new byte[length];
+        System.arraycopy(data, offset, record, 0, length);
+        return record;
+    }
+
+    private ForecastData createForecastData(String modelStart, int length, int seed) {
+        ForecastData forecastData = new ForecastData(modelStart);
+        forecastData.setModelResult(createModelResult(length, seed));
+        return forecastData;
+    }
+
+    private byte[] createModelResult(int length, int seed) {
+        byte[] modelResult = new byte[length];
+        for (int i = 0; i < length; i++) {
+            modelResult[i] = (byte) (i * seed + seed);
+        }
+        return modelResult;
+    }
+
+    @Test
+    public void singleton() {
+        assertThat(ForecastHistoryRecordStoreDao.getInstance(), is(sameInstance(fixture)));
+    }
+
+    @Test
+    public void archiveAndRead() {
+        for (int i = 0; i < RUNS.length; i++) {
+            assertThat(fixture.archive(ID, createForecastData(RUNS[i], BLOCK_SIZE * 2 + i, i + 1)), is(true));
+        }
+        assertThat(fixture.getRunCount(ID), is(RUNS_PER_LOCATION));
+        for (int back = 0; back < RUNS_PER_LOCATION; back++) {
+            int run = RUNS.length - 1 - back;
+            ForecastData actual = fixture.read(ID, back);
+            assertThat(actual.getModelStart(), equalTo(new ForecastData(RUNS[run]).getModelStart()));
+            assertThat(actual.getModelResult(), equalTo(createModelResult(BLOCK_SIZE * 2 + run, run + 1)));
+            assertThat(actual.getChecksum(), is(createForecastData(RUNS[run], BLOCK_SIZE * 2 + run, run + 1).getChecksum()));
+        }
+        assertThat(fixture.read(ID, RUNS_PER_LOCATION), is(nullValue()));
+        assertThat(fixture.read(ID, -1), is(nullValue()));
+        assertThat(fixture.getRunCount(2), is(0));
+        assertThat(fixture.read(2, 0), is(nullValue()));
+        assertThat(stores.size(), is(1));
+        assertThat(stores.containsKey(STORE + ID), is(true));
+        TreeMap<Integer, byte[]> store = stores.get(STORE + ID);
+        assertThat(store.size(), is(1 + RUNS_PER_LOCATION * 3));
+        assertThat(store.get(1).length, is(RUNS_PER_LOCATION * SLOT_ENTRY_SIZE));
+        for (byte[] record : store.tailMap(2).values()) {
+            assertThat(record.length, is(BLOCK_SIZE));
+        }
+    }
+
+    @Test
+    public void archiveSameRunTwice() {
+        assertThat(fixture.archive(ID, createForecastData(RUNS[0], 10, 1)), is(true));
+        assertThat(fixture.archive(ID, createForecastData(RUNS[0], 10, 1)), is(true));
+        assertThat(fixture.getRunCount(ID), is(1));
+        assertThat(stores.get(STORE + ID).size(), is(2));
+    }
+
+    @Test
+    public void archiveWithoutModelResult() {
+        assertThat(fixture.archive(ID, new ForecastData(RUNS[0])), is(false));
+        assertThat(fixture.getRunCount(ID), is(0));
+    }
+
+    @Test
+    public void archiveTooLarge() {
+        assertThat(fixture.archive(ID, createForecastData(RUNS[0], SLOT_BLOCKS * BLOCK_SIZE + 1, 1)), is(false));
+        assertThat(fixture.getRunCount(ID), is(0));
+        assertThat(stores.isEmpty(), is(true));
+    }
+
+    @Test
+    public void archiveStoreFull() {
+        full = true;
+        assertThat(fixture.archive(ID, createForecastData(RUNS[0], 10, 1)), is(false));
+        assertThat(fixture.getRunCount(ID), is(0));
+        full = false;
+        assertThat(fixture.archive(ID, createForecastData(RUNS[0], 10, 1)), is(true));
+        assertThat(fixture.getRunCount(ID), is(1));
+    }
+
+    @Test
+    public void archiveKeepsRunsPerLocation() {
+        int length = BLOCK_SIZE * 2;
+        for (int i = 0; i < RUNS.length; i++) {
+            assertThat(fixture.archive(ID, createForecastData(RUNS[i], length, i + 1)), is(true));
+        }
+        for (int i = 0; i < 10; i++) {
+            assertThat(fixture.archive(10 + i, createForecastData(RUNS[i % RUNS.length], length, i)), is(true));
+            assertThat(fixture.archive(10 + i, createForecastData(RUNS[(i + 1) % RUNS.length], length, i)), is(true));
+        }
+        assertThat(fixture.getRunCount(ID), is(RUNS_PER_LOCATION));
+        assertThat(fixture.read(ID, RUNS_PER_LOCATION - 1).getModelResult(), equalTo(createModelResult(length, 2)));
+        assertThat(stores.get(STORE + ID).size(), is(1 + RUNS_PER_LOCATION * 2));
+        for (int i = 0; i < 10; i++) {
+            assertThat(fixture.getRunCount(10 + i), is(2));
+        }
+    }
+
+    @Test
+    public void readAfterRestart() throws Exception {
+        for (int i = 0; i < 6; i++) {
+            assertThat(fixture.archive(10 + i % 2, createForecastData(RUNS[i % 4], BLOCK_SIZE + i, i + 1)), is(true));
+        }
+        fixture = createFixture();
+        assertThat(fixture.getRunCount(10), is(3));
+        assertThat(fixture.getRunCount(11), is(3));
+        assertThat(fixture.read(11, 0).getModelResult(), equalTo(createModelResult(BLOCK_SIZE + 5, 6)));
+        assertThat(fixture.read(10, 2).getModelResult(), equalTo(createModelResult(BLOCK_SIZE, 1)));
+        assertThat(fixture.archive(10, createForecastData(RUNS[1], BLOCK_SIZE, 7)), is(true));
+        assertThat(fixture.read(10, 0).getModelResult(), equalTo(createModelResult(BLOCK_SIZE, 7)));
+        assertThat(fixture.read(10, 2).getModelResult(), equalTo(createModelResult(BLOCK_SIZE + 2, 3)));
+    }
+
+    @Test
+    public void readOverwrittenRun() throws Exception {
+        assertThat(fixture.archive(ID, createForecastData(RUNS[0], 10, 1)), is(true));
+        assertThat(fixture.archive(ID, createForecastData(RUNS[1], 10, 2)), is(true));
+        stores.get(STORE + ID).put(3, new byte[BLOCK_SIZE]);
+        assertThat(fixture.getRunCount(ID), is(2));
+        assertThat(fixture.read(ID, 0), is(nullValue()));
+        assertThat(fixture.read(ID, 1).getModelResult(), equalTo(createModelResult(10, 1)));
+    }
+
+    @Test
+    public void delete() throws Exception {
+        assertThat(fixture.archive(ID, createForecastData(RUNS[0], 10, 1)), is(true));
+        assertThat(fixture.archive(ID, createForecastData(RUNS[1], 10, 2)), is(true));
+        assertThat(fixture.archive(2, createForecastData(RUNS[1], 10, 3)), is(true));
+        assertThat(fixture.delete(ID), is(true));
+        assertThat(fixture.getRunCount(ID), is(0));
+        assertThat(stores.containsKey(STORE + ID), is(false));
+        assertThat(fixture.delete(ID), is(true));
+        fixture = createFixture();
+        assertThat(fixture.getRunCount(ID), is(0));
+        assertThat(fixture.getRunCount(2), is(1));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void archiveNullId() {
+        fixture.archive(null, createForecastData(RUNS[0], 10, 1));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void archiveNullData() {
+        fixture.archive(ID, null);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void readNullId() {
+        fixture.read(null, 0);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void getRunCountNullId() {
+        fixture.getRunCount(null);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void deleteNullId() {
+        fixture.delete(null);
+    }
+}
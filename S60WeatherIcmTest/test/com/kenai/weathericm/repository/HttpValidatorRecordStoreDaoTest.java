@@ -0,0 +1,221 @@
+/*
+ *  Copyright (C) 2010 Przemek Kryger
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.kenai.weathericm.repository;
+
+import com.kenai.weathericm.domain.HttpValidator;
+import java.util.Hashtable;
+import javax.microedition.rms.RecordEnumeration;
+import javax.microedition.rms.RecordStore;
+import javax.microedition.rms.RecordStoreException;
+import net.sf.microlog.core.config.PropertyConfigurator;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.core.classloader.annotations.SuppressStaticInitializationFor;
+import org.powermock.modules.junit4.PowerMockRunner;
+import org.powermock.reflect.Whitebox;
+import static org.hamcrest.Matchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.powermock.api.easymock.PowerMock.createMock;
+import static org.powermock.api.easymock.PowerMock.mockStatic;
+import static org.powermock.api.easymock.PowerMock.replayAll;
+import static org.powermock.api.easymock.PowerMock.verifyAll;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.aryEq;
+import static org.easymock.EasyMock.eq;
+
+/**
+ * Tests for {@link HttpValidatorRecordStoreDao}.
+ * @author Przemek Kryger
+ */
+@RunWith(PowerMockRunner.class)
+@SuppressStaticInitializationFor("javax.microedition.rms.RecordStore")
+@PrepareForTest({RecordStore.class, RecordEnumeration.class})
+public class HttpValidatorRecordStoreDaoTest {
+
+    private RecordStore recordStoreMock;
+    private RecordEnumeration recordEnumerationMock;
+    private HttpValidatorRecordStoreDao fixture;
+    private HttpValidator validator;
+    private byte[] validatorBytes;
+    private final static String KEY_TO_RECORD_ID = "keyToRecordId";
+
+    @BeforeClass
+    public static void setUpClass() {
+        PropertyConfigurator.configure("/testMicrolog.properties");
+    }
+
+    @Before
+    public void setUp() {
+        mockStatic(RecordStore.class);
+        recordStoreMock = createMock(RecordStore.class);
+        recordEnumerationMock = createMock(RecordEnumeration.class);
+        fixture = HttpValidatorRecordStoreDao.getInstance();
+        Whitebox.setInternalState(fixture, KEY_TO_RECORD_ID, (Hashtable) null);
+        validator = new HttpValidator("info.3", "http://a.com/img.png");
+        validator.setETag("\"abc\"");
+        validator.setLastModified("Sat, 15 May 2010 12:00:00 GMT");
+        validatorBytes = fixture.serialize(validator);
+    }
+
+    private Hashtable prepareIndex(int id) {
+        Hashtable index = new Hashtable();
+        index.put(validator.getKey(), new Integer(id));
+        Whitebox.setInternalState(fixture, KEY_TO_RECORD_ID, index);
+        return index;
+    }
+
+    @Test
+    public void getInstance() {
+        assertThat(HttpValidatorRecordStoreDao.getInstance(), is(sameInstance(fixture)));
+    }
+
+    @Test
+    public void serializeResurect() {
+        validator.setValue("2010051512");
+        HttpValidator actual = fixture.resurect(fixture.serialize(validator));
+        assertThat(actual.getKey(), equalTo(validator.getKey()));
+        assertThat(actual.getUrl(), equalTo(validator.getUrl()));
+        assertThat(actual.getETag(), equalTo(validator.getETag()));
+        assertThat(actual.getLastModified(), equalTo(validator.getLastModified()));
+        assertThat(actual.getValue(), equalTo(validator.getValue()));
+    }
+
+    @Test
+    public void serializeResurectNulls() {
+        validator.setETag(null);
+        HttpValidator actual = fixture.resurect(fixture.serialize(validator));
+        assertThat(actual.getETag(), is(nullValue()));
+        assertThat(actual.getValue(), is(nullValue()));
+    }
+
+    @Test
+    public void resurectBroken() {
+        assertThat(fixture.resurect(new byte[]{1, 2}), is(nullValue()));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void readNull() {
+        fixture.read(null);
+    }
+
+    @Test
+    public void readNotExisting() throws RecordStoreException {
+        expect(RecordStore.openRecordStore(HttpValidatorRecordStoreDao.STORE, true)).andReturn(recordStoreMock);
+        expect(recordStoreMock.enumerateRecords(null, null, false)).andReturn(recordEnumerationMock);
+        expect(recordEnumerationMock.hasNextElement()).andReturn(false);
+        recordEnumerationMock.destroy();
+        recordStoreMock.closeRecordStore();
+        replayAll();
+        HttpValidator actual = fixture.read(validator.getKey());
+        assertThat(actual, is(nullValue()));
+        verifyAll();
+    }
+
+    @Test
+    public void readScansStore() throws RecordStoreException {
+        int id = 4;
+        expect(RecordStore.openRecordStore(HttpValidatorRecordStoreDao.STORE, true)).andReturn(recordStoreMock);
+        expect(recordStoreMock.enumerateRecords(null, null, false)).andReturn(recordEnumerationMock);
+        expect(recordEnumerationMock.hasNextElement()).andReturn(true);
+        expect(recordEnumerationMock.nextRecordId()).andReturn(id);
+        expect(recordStoreMock.getRecord(id)).andReturn(validatorBytes).times(2);
+        expect(recordEnumerationMock.hasNextElement()).andReturn(false);
+        recordEnumerationMock.destroy();
+        recordStoreMock.closeRecordStore();
+        replayAll();
+        HttpValidator actual = fixture.read(validator.getKey());
+        assertThat(actual, is(notNullValue()));
+        assertThat(actual.getETag(), equalTo(validator.getETag()));
+        verifyAll();
+    }
+
+    @Test
+    public void readRecordStoreException() throws RecordStoreException {
+        expect(RecordStore.openRecordStore(HttpValidatorRecordStoreDao.STORE, true)).andThrow(new RecordStoreException());
+        replayAll();
+        HttpValidator actual = fixture.read(validator.getKey());
+        assertThat(actual, is(nullValue()));
+        verifyAll();
+    }
+
+    @Test
+    public void createOrUpdateNew() throws RecordStoreException {
+        int id = 5;
+        Hashtable index = new Hashtable();
+        Whitebox.setInternalState(fixture, KEY_TO_RECORD_ID, index);
+        expect(RecordStore.openRecordStore(HttpValidatorRecordStoreDao.STORE, true)).andReturn(recordStoreMock);
+        expect(recordStoreMock.addRecord(aryEq(validatorBytes), eq(0), eq(validatorBytes.length))).andReturn(id);
+        recordStoreMock.closeRecordStore();
+        replayAll();
+        boolean actual = fixture.createOrUpdate(validator);
+        assertThat(actual, is(true));
+        assertThat((Integer) index.get(validator.getKey()), equalTo(new Integer(id)));
+        verifyAll();
+    }
+
+    @Test
+    public void createOrUpdateExisting() throws RecordStoreException {
+        int id = 6;
+        prepareIndex(id);
+        expect(RecordStore.openRecordStore(HttpValidatorRecordStoreDao.STORE, true)).andReturn(recordStoreMock);
+        recordStoreMock.setRecord(eq(id), aryEq(validatorBytes), eq(0), eq(validatorBytes.length));
+        recordStoreMock.closeRecordStore();
+        replayAll();
+        boolean actual = fixture.createOrUpdate(validator);
+        assertThat(actual, is(true));
+        verifyAll();
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void createOrUpdateNull() {
+        fixture.createOrUpdate(null);
+    }
+
+    @Test
+    public void delete() throws RecordStoreException {
+        int id = 7;
+        Hashtable index = prepareIndex(id);
+        expect(RecordStore.openRecordStore(HttpValidatorRecordStoreDao.STORE, true)).andReturn(recordStoreMock);
+        recordStoreMock.deleteRecord(id);
+        recordStoreMock.closeRecordStore();
+        replayAll();
+        boolean actual = fixture.delete(validator.getKey());
+        assertThat(actual, is(true));
+        assertThat(index.containsKey(validator.getKey()), is(false));
+        verifyAll();
+    }
+
+    @Test
+    public void deleteNotExisting() throws RecordStoreException {
+        Whitebox.setInternalState(fixture, KEY_TO_RECORD_ID, new Hashtable());
+        expect(RecordStore.openRecordStore(HttpValidatorRecordStoreDao.STORE, true)).andReturn(recordStoreMock);
+        recordStoreMock.closeRecordStore();
+        replayAll();
+        boolean actual = fixture.delete(validator.getKey());
+        assertThat(actual, is(false));
+        verifyAll();
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void deleteNull() {
+        fixture.delete(null);
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ *  Copyright (C) 2010 Przemek Kryger
+ * 
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ * 
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.kenai.weathericm.repository;
+
+import com.kenai.weathericm.domain.MeteorogramType;
+import java.util.Hashtable;
+import javax.microedition.rms.InvalidRecordIDException;
+import javax.microedition.rms.RecordEnumeration;
+import javax.microedition.rms.RecordStore;
+import javax.microedition.rms.RecordStoreException;
+import net.sf.microlog.core.config.PropertyConfigurator;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.core.classloader.annotations.SuppressStaticInitializationFor;
+import org.powermock.modules.junit4.PowerMockRunner;
+import org.powermock.reflect.Whitebox;
+import static org.hamcrest.Matchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.powermock.api.easymock.PowerMock.createMock;
+import static org.powermock.api.easymock.PowerMock.mockStatic;
+import static org.powermock.api.easymock.PowerMock.replayAll;
+import static org.powermock.api.easymock.PowerMock.verifyAll;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.aryEq;
+import static org.easymock.EasyMock.eq;
+
+/**
+ * Tests for {@link LegendRecordStoreDao}.
+ * @author Przemek Kryger
+ */
+@RunWith(PowerMockRunner.class)
+@SuppressStaticInitializationFor("javax.microedition.rms.RecordStore")
+@PrepareForTest({RecordStore.class, RecordEnumeration.class})
+public class LegendRecordStoreDaoTest {
+
+    private RecordStore recordStoreMock;
+    private RecordEnumeration recordEnumerationMock;
+    private LegendRecordStoreDao fixture;
+    private Hashtable typeToRecordId;
+    private final static String UM_STORE = LegendRecordStoreDao.STORE_PREFIX + "UM";
+    private final static byte[] LEGEND = {1, 2, 3, 4};
+
+    @BeforeClass
+    public static void setUpClass() {
+        PropertyConfigurator.configure("/testMicrolog.properties");
+    }
+
+    @Before
+    public void setUp() {
+        mockStatic(RecordStore.class);
+        recordStoreMock = createMock(RecordStore.class);
+        recordEnumerationMock = createMock(RecordEnumeration.class);
+        fixture = LegendRecordStoreDao.getInstance();
+        typeToRecordId = Whitebox.getInternalState(fixture, "typeToRecordId");
+        typeToRecordId.clear();
+    }
+
+    @Test
+    public void getInstance() {
+        assertThat(LegendRecordStoreDao.getInstance(), is(sameInstance(fixture)));
+    }
+
+    @Test
+    public void getStoreName() {
+        assertThat(fixture.getStoreName(MeteorogramType.UM), equalTo(UM_STORE));
+        assertThat(fixture.getStoreName(MeteorogramType.COAMPS),
+                equalTo(LegendRecordStoreDao.STORE_PREFIX + "COAMPS"));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void readNull() {
+        fixture.read(null);
+    }
+
+    @Test
+    public void readEmpty() throws RecordStoreException {
+        expect(RecordStore.openRecordStore(UM_STORE, true)).andReturn(recordStoreMock);
+        expect(recordStoreMock.enumerateRecords(null, null, false)).andReturn(recordEnumerationMock);
+        expect(recordEnumerationMock.hasNextElement()).andReturn(false);
+        recordEnumerationMock.destroy();
+        recordStoreMock.closeRecordStore();
+        replayAll();
+        assertThat(fixture.read(MeteorogramType.UM), is(nullValue()));
+        assertThat(typeToRecordId.isEmpty(), is(true));
+        verifyAll();
+    }
+
+    @Test
+    public void read() throws RecordStoreException {
+        int id = 2;
+        expect(RecordStore.openRecordStore(UM_STORE, true)).andReturn(recordStoreMock);
+        expect(recordStoreMock.enumerateRecords(null, null, false)).andReturn(recordEnumerationMock);
+        expect(recordEnumerationMock.hasNextElement()).andReturn(true);
+        expect(recordEnumerationMock.nextRecordId()).andReturn(id);
+        recordEnumerationMock.destroy();
+        expect(recordStoreMock.getRecord(id)).andReturn(LEGEND);
+        recordStoreMock.closeRecordStore();
+        replayAll();
+        assertThat(fixture.read(MeteorogramType.UM), equalTo(LEGEND));
+        assertThat((Integer) typeToRecordId.get(new Integer(MeteorogramType.UM.getValue())), is(id));
+        verifyAll();
+    }
+
+    @Test
+    public void readKnownRecord() throws RecordStoreException {
+        int id = 4;
+        typeToRecordId.put(new Integer(MeteorogramType.UM.getValue()), new Integer(id));
+        expect(RecordStore.openRecordStore(UM_STORE, true)).andReturn(recordStoreMock);
+        expect(recordStoreMock.getRecord(id)).andReturn(LEGEND);
+        recordStoreMock.closeRecordStore();
+        replayAll();
+        assertThat(fixture.read(MeteorogramType.UM), equalTo(LEGEND));
+        verifyAll();
+    }
+
+    @Test
+    public void readRecordStoreException() throws RecordStoreException {
+        int id = 4;
+        typeToRecordId.put(new Integer(MeteorogramType.UM.getValue()), new Integer(id));
+        expect(RecordStore.openRecordStore(UM_STORE, true)).andReturn(recordStoreMock);
+        expect(recordStoreMock.getRecord(id)).andThrow(new InvalidRecordIDException());
+        recordStoreMock.closeRecordStore();
+        replayAll();
+        assertThat(fixture.read(MeteorogramType.UM), is(nullValue()));
+        assertThat(typeToRecordId.isEmpty(), is(true));
+        verifyAll();
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void createOrUpdateNullType() {
+        fixture.createOrUpdate(null, LEGEND);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void createOrUpdateNullLegend() {
+        fixture.createOrUpdate(MeteorogramType.UM, null);
+    }
+
+    @Test
+    public void createOrUpdateNew() throws RecordStoreException {
+        int id = 1;
+        expect(RecordStore.openRecordStore(UM_STORE, true)).andReturn(recordStoreMock);
+        expect(recordStoreMock.enumerateRecords(null, null, false)).andReturn(recordEnumerationMock);
+        expect(recordEnumerationMock.hasNextElement()).andReturn(false);
+        recordEnumerationMock.destroy();
+        expect(recordStoreMock.addRecord(aryEq(LEGEND), eq(0), eq(LEGEND.length))).andReturn(id);
+        recordStoreMock.closeRecordStore();
+        replayAll();
+        assertThat(fixture.createOrUpdate(MeteorogramType.UM, LEGEND), is(true));
+        assertThat((Integer) typeToRecordId.get(new Integer(MeteorogramType.UM.getValue())), is(id));
+        verifyAll();
+    }
+
+    @Test
+    public void createOrUpdateExisting() throws RecordStoreException {
+        int id = 3;
+        typeToRecordId.put(new Integer(MeteorogramType.UM.getValue()), new Integer(id));
+        expect(RecordStore.openRecordStore(UM_STORE, true)).andReturn(recordStoreMock);
+        recordStoreMock.setRecord(eq(id), aryEq(LEGEND), eq(0), eq(LEGEND.length));
+        recordStoreMock.closeRecordStore();
+        replayAll();
+        assertThat(fixture.createOrUpdate(MeteorogramType.UM, LEGEND), is(true));
+        verifyAll();
+    }
+
+    @Test
+    public void createOrUpdateDisappeared() throws RecordStoreException {
+        int id = 3;
+        int newId = 7;
+        typeToRecordId.put(new Integer(MeteorogramType.UM.getValue()), new Integer(id));
+        expect(RecordStore.openRecordStore(UM_STORE, true)).andReturn(recordStoreMock);
+        recordStoreMock.setRecord(eq(id), aryEq(LEGEND), eq(0), eq(LEGEND.length));
+        expectLastCall().andThrow(new InvalidRecordIDException());
+        expect(recordStoreMock.addRecord(aryEq(LEGEND), eq(0), eq(LEGEND.length))).andReturn(newId);
+        recordStoreMock.closeRecordStore();
+        replayAll();
+        assertThat(fixture.createOrUpdate(MeteorogramType.UM, LEGEND), is(true));
+        assertThat((Integer) typeToRecordId.get(new Integer(MeteorogramType.UM.getValue())), is(newId));
+        verifyAll();
+    }
+
+    @Test
+    public void createOrUpdateRecordStoreException() throws RecordStoreException {
+        expect(RecordStore.openRecordStore(UM_STORE, true)).andThrow(new RecordStoreException());
+        replayAll();
+        assertThat(fixture.createOrUpdate(MeteorogramType.UM, LEGEND), is(false));
+        verifyAll();
+    }
+}
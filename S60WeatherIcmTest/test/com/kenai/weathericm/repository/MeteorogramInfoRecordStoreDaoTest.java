@@ -20,6 +20,7 @@ package com.kenai.weathericm.repository;
 import com.kenai.weathericm.domain.MeteorogramInfo;
 import com.kenai.weathericm.domain.MeteorogramType;
 import java.util.Vector;
+import org.easymock.IAnswer;
 import javax.microedition.rms.InvalidRecordIDException;
 import javax.microedition.rms.RecordComparator;
 import javax.microedition.rms.RecordEnumeration;
@@ -29,9 +30,11 @@ import org.junit.runner.RunWith;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.core.classloader.annotations.SuppressStaticInitializationFor;
 import org.powermock.modules.junit4.PowerMockRunner;
+import org.powermock.reflect.Whitebox;
 import javax.microedition.rms.RecordStore;
 import javax.microedition.rms.RecordStoreException;
 import javax.microedition.rms.RecordStoreFullException;
+import javax.microedition.rms.RecordStoreNotOpenException;
 import net.sf.microlog.core.config.PropertyConfigurator;
 import org.junit.BeforeClass;
 import static org.junit.Assert.fail;
@@ -60,6 +63,7 @@ public class MeteorogramInfoRecordStoreDaoTest {
     private MeteorogramInfoRecordStoreDao fixture;
     private MeteorogramInfo info;
     private byte[] infoBytes;
+    private final static byte[] NEWER_VERSION_BYTES = new byte[]{1, 2, 3, 4};
 
     @BeforeClass
     public static void setUpClass() {
@@ -71,6 +75,8 @@ public class MeteorogramInfoRecordStoreDaoTest {
         mockStatic(RecordStore.class);
         recordStoreMock = createMock(RecordStore.class);
         recordEnumerationMock = createMock(RecordEnumeration.class);
+        Whitebox.setInternalState(RecordStoreSessions.class,
+                Whitebox.<RecordStoreSessions>invokeConstructor(RecordStoreSessions.class));
         fixture = MeteorogramInfoRecordStoreDao.getInstance();
         fixture.setMeteorogramInfoSerializer(new MeteorogramInfoSerializer() {
 
@@ -81,6 +87,12 @@ public class MeteorogramInfoRecordStoreDaoTest {
 
             @Override
             public MeteorogramInfo resurect(int id, byte[] infoBytes) {
+                if (infoBytes != null && infoBytes.length == NEWER_VERSION_BYTES.length) {
+                    return null;
+                }
+                if (isUpgradeNeeded(infoBytes)) {
+                    infoBytes = new byte[]{infoBytes[1], infoBytes[2]};
+                }
                 MeteorogramInfo info = new MeteorogramInfo();
                 info.setId(id);
                 if (infoBytes != null
@@ -96,6 +108,11 @@ public class MeteorogramInfoRecordStoreDaoTest {
                 return info;
             }
 
+            @Override
+            public boolean isUpgradeNeeded(byte[] infoBytes) {
+                return infoBytes != null && infoBytes.length == 3 && infoBytes[0] == 0;
+            }
+
         });
         info = new MeteorogramInfo();
         info.setName("Kraków");
@@ -123,7 +140,6 @@ public class MeteorogramInfoRecordStoreDaoTest {
                 MeteorogramInfoRecordStoreDao.STORE, true)).andReturn(recordStoreMock);
         expect(recordStoreMock.addRecord(
                 aryEq(infoBytes), eq(0), eq(infoBytes.length))).andReturn(expectedId);
-        recordStoreMock.closeRecordStore();
         replayAll();
         fixture.create(info);
         assertThat(info.isTainted(), is(false));
@@ -137,7 +153,6 @@ public class MeteorogramInfoRecordStoreDaoTest {
                 MeteorogramInfoRecordStoreDao.STORE, true)).andReturn(recordStoreMock);
         expect(recordStoreMock.addRecord(
                 aryEq(infoBytes), eq(0), eq(infoBytes.length))).andThrow(new RecordStoreFullException());
-        recordStoreMock.closeRecordStore();
         replayAll();
         fixture.create(info);
         assertThat(info.isTainted(), is(true));
@@ -167,7 +182,6 @@ public class MeteorogramInfoRecordStoreDaoTest {
         expect(RecordStore.openRecordStore(
                 MeteorogramInfoRecordStoreDao.STORE, true)).andReturn(recordStoreMock);
         recordStoreMock.setRecord(eq(id), aryEq(infoBytes), eq(0), eq(infoBytes.length));
-        recordStoreMock.closeRecordStore();
         replayAll();
         fixture.update(info);
         assertThat(info.isTainted(), is(false));
@@ -182,7 +196,6 @@ public class MeteorogramInfoRecordStoreDaoTest {
                 MeteorogramInfoRecordStoreDao.STORE, true)).andReturn(recordStoreMock);
         recordStoreMock.setRecord(eq(id), aryEq(infoBytes), eq(0), eq(infoBytes.length));
         expectLastCall().andThrow(new RecordStoreFullException());
-        recordStoreMock.closeRecordStore();
         replayAll();
         fixture.update(info);
         assertThat(info.isTainted(), is(true));
@@ -223,7 +236,6 @@ public class MeteorogramInfoRecordStoreDaoTest {
                 MeteorogramInfoRecordStoreDao.STORE, true)).andReturn(recordStoreMock);
         recordStoreMock.setRecord(eq(id), aryEq(infoBytes), eq(0), eq(infoBytes.length));
         expectLastCall().andThrow(new InvalidRecordIDException());
-        recordStoreMock.closeRecordStore();
         replayAll();
         fixture.update(info);
         assertThat(info.getId(), is(nullValue()));
@@ -238,7 +250,6 @@ public class MeteorogramInfoRecordStoreDaoTest {
                 MeteorogramInfoRecordStoreDao.STORE, true)).andReturn(recordStoreMock);
         expect(recordStoreMock.addRecord(
                 aryEq(infoBytes), eq(0), eq(infoBytes.length))).andReturn(expectedId);
-        recordStoreMock.closeRecordStore();
         replayAll();
         fixture.createOrUpdate(info);
         assertThat(info.getId(), equalTo(expectedId));
@@ -253,7 +264,6 @@ public class MeteorogramInfoRecordStoreDaoTest {
         expect(RecordStore.openRecordStore(
                 MeteorogramInfoRecordStoreDao.STORE, true)).andReturn(recordStoreMock);
         recordStoreMock.setRecord(eq(id), aryEq(infoBytes), eq(0), eq(infoBytes.length));
-        recordStoreMock.closeRecordStore();
         replayAll();
         fixture.createOrUpdate(info);
         assertThat(info.isTainted(), is(false));
@@ -277,13 +287,11 @@ public class MeteorogramInfoRecordStoreDaoTest {
         int newId = 89;
         info.setId(id);
         expect(RecordStore.openRecordStore(
-                MeteorogramInfoRecordStoreDao.STORE, true)).andReturn(recordStoreMock).times(2);
+                MeteorogramInfoRecordStoreDao.STORE, true)).andReturn(recordStoreMock);
         recordStoreMock.setRecord(eq(id), aryEq(infoBytes), eq(0), eq(infoBytes.length));
         expectLastCall().andThrow(new InvalidRecordIDException());
         expect(recordStoreMock.addRecord(
                 aryEq(infoBytes), eq(0), eq(infoBytes.length))).andReturn(newId);
-        recordStoreMock.closeRecordStore();
-        expectLastCall().times(2);
         replayAll();
         fixture.createOrUpdate(info);
         assertThat(info.getId(), equalTo(newId));
@@ -305,7 +313,6 @@ public class MeteorogramInfoRecordStoreDaoTest {
         expect(RecordStore.openRecordStore(
                 MeteorogramInfoRecordStoreDao.STORE, true)).andReturn(recordStoreMock);
         recordStoreMock.deleteRecord(id);
-        recordStoreMock.closeRecordStore();
         replayAll();
         fixture.delete(info);
         assertThat(info.getId(), is(nullValue()));
@@ -328,7 +335,6 @@ public class MeteorogramInfoRecordStoreDaoTest {
                 MeteorogramInfoRecordStoreDao.STORE, true)).andReturn(recordStoreMock);
         recordStoreMock.deleteRecord(id);
         expectLastCall().andThrow(new InvalidRecordIDException());
-        recordStoreMock.closeRecordStore();
         replayAll();
         fixture.delete(info);
         assertThat(info.getId(), is(nullValue()));
@@ -348,7 +354,6 @@ public class MeteorogramInfoRecordStoreDaoTest {
         expect(RecordStore.openRecordStore(
                 MeteorogramInfoRecordStoreDao.STORE, true)).andReturn(recordStoreMock);
         expect(recordStoreMock.getRecord(id)).andReturn(infoBytes);
-        recordStoreMock.closeRecordStore();
         replayAll();
         MeteorogramInfo actualInfo = fixture.read(id);
         assertThat(actualInfo.getId(), equalTo(id));
@@ -363,11 +368,21 @@ public class MeteorogramInfoRecordStoreDaoTest {
         infoBytes = new byte[]{10};
         int id = 34;
         expect(RecordStore.openRecordStore(
-                MeteorogramInfoRecordStoreDao.STORE, true)).andReturn(recordStoreMock).times(2);
+                MeteorogramInfoRecordStoreDao.STORE, true)).andReturn(recordStoreMock);
         expect(recordStoreMock.getRecord(id)).andReturn(infoBytes);
         recordStoreMock.deleteRecord(id);
-        recordStoreMock.closeRecordStore();
-        expectLastCall().times(2);
+        replayAll();
+        MeteorogramInfo actualInfo = fixture.read(id);
+        assertThat(actualInfo, is(nullValue()));
+        verifyAll();
+    }
+
+    @Test
+    public void readNewerVersionKept() throws RecordStoreException {
+        int id = 35;
+        expect(RecordStore.openRecordStore(
+                MeteorogramInfoRecordStoreDao.STORE, true)).andReturn(recordStoreMock);
+        expect(recordStoreMock.getRecord(id)).andReturn(NEWER_VERSION_BYTES);
         replayAll();
         MeteorogramInfo actualInfo = fixture.read(id);
         assertThat(actualInfo, is(nullValue()));
@@ -380,13 +395,69 @@ public class MeteorogramInfoRecordStoreDaoTest {
         expect(RecordStore.openRecordStore(
                 MeteorogramInfoRecordStoreDao.STORE, true)).andReturn(recordStoreMock);
         expect(recordStoreMock.getRecord(id)).andThrow(new InvalidRecordIDException());
-        recordStoreMock.closeRecordStore();
         replayAll();
         MeteorogramInfo actualInfo = fixture.read(id);
         assertThat(actualInfo, is(nullValue()));
         verifyAll();
     }
 
+    @Test
+    public void readUpgradesLegacyData() throws RecordStoreException {
+        int id = 46;
+        byte[] legacyBytes = new byte[]{0, infoBytes[0], infoBytes[1]};
+        expect(RecordStore.openRecordStore(
+                MeteorogramInfoRecordStoreDao.STORE, true)).andReturn(recordStoreMock);
+        expect(recordStoreMock.getRecord(id)).andReturn(legacyBytes);
+        recordStoreMock.setRecord(eq(id), aryEq(infoBytes), eq(0), eq(infoBytes.length));
+        replayAll();
+        MeteorogramInfo actualInfo = fixture.read(id);
+        assertThat(actualInfo.getX(), equalTo(info.getX()));
+        assertThat(actualInfo.getY(), equalTo(info.getY()));
+        assertThat(actualInfo.isTainted(), is(false));
+        verifyAll();
+    }
+
+    @Test
+    public void readUpgradeFailureKeepsLegacyData() throws RecordStoreException {
+        int id = 47;
+        byte[] legacyBytes = new byte[]{0, infoBytes[0], infoBytes[1]};
+        expect(RecordStore.openRecordStore(
+                MeteorogramInfoRecordStoreDao.STORE, true)).andReturn(recordStoreMock);
+        expect(recordStoreMock.getRecord(id)).andReturn(legacyBytes);
+        recordStoreMock.setRecord(eq(id), aryEq(infoBytes), eq(0), eq(infoBytes.length));
+        expectLastCall().andThrow(new RecordStoreFullException());
+        replayAll();
+        MeteorogramInfo actualInfo = fixture.read(id);
+        assertThat(actualInfo.getId(), equalTo(id));
+        assertThat(actualInfo.isTainted(), is(false));
+        verifyAll();
+    }
+
+    @Test
+    public void readAllUpgradesLegacyData() throws RecordStoreException {
+        int id1 = 92;
+        int id2 = 192;
+        byte[] legacyBytes = new byte[]{0, infoBytes[0], infoBytes[1]};
+        expect(RecordStore.openRecordStore(
+                MeteorogramInfoRecordStoreDao.STORE, true)).andReturn(recordStoreMock);
+        expect(recordStoreMock.enumerateRecords(
+                null, fixture.getRecordComparator(), false)).andReturn(recordEnumerationMock);
+        recordEnumerationMock.keepUpdated(true);
+        expect(recordEnumerationMock.numRecords()).andReturn(2);
+        expect(recordEnumerationMock.hasNextElement()).andReturn(Boolean.TRUE).times(2);
+        expect(recordEnumerationMock.hasNextElement()).andReturn(Boolean.FALSE);
+        expect(recordEnumerationMock.nextRecordId()).andReturn(id1);
+        expect(recordEnumerationMock.nextRecordId()).andReturn(id2);
+        expect(recordStoreMock.getRecord(id1)).andReturn(legacyBytes);
+        expect(recordStoreMock.getRecord(id2)).andReturn(infoBytes);
+        recordStoreMock.setRecord(eq(id1), aryEq(infoBytes), eq(0), eq(infoBytes.length));
+        recordEnumerationMock.destroy();
+        replayAll();
+        Vector actuals = fixture.readAll();
+        assertThat(actuals.size(), equalTo(2));
+        verifyAll();
+    }
+
     @Test
     public void readAllValid() throws RecordStoreException {
         int id1 = 90;
@@ -404,7 +475,6 @@ public class MeteorogramInfoRecordStoreDaoTest {
         expect(recordStoreMock.getRecord(id1)).andReturn(infoBytes);
         expect(recordStoreMock.getRecord(id2)).andReturn(infoBytes);
         recordEnumerationMock.destroy();
-        recordStoreMock.closeRecordStore();
         replayAll();
         Vector actuals = fixture.readAll();
         assertThat(actuals.size(), equalTo(2));
@@ -417,11 +487,119 @@ public class MeteorogramInfoRecordStoreDaoTest {
         verifyAll();
     }
 
+    @Test
+    public void readAllWithListener() throws RecordStoreException {
+        int id1 = 91;
+        int id2 = 191;
+        expect(RecordStore.openRecordStore(
+                MeteorogramInfoRecordStoreDao.STORE, true)).andReturn(recordStoreMock);
+        expect(recordStoreMock.enumerateRecords(
+                null, fixture.getRecordComparator(), false)).andReturn(recordEnumerationMock);
+        recordEnumerationMock.keepUpdated(true);
+        expect(recordEnumerationMock.numRecords()).andReturn(2);
+        expect(recordEnumerationMock.hasNextElement()).andReturn(Boolean.TRUE).times(2);
+        expect(recordEnumerationMock.hasNextElement()).andReturn(Boolean.FALSE);
+        expect(recordEnumerationMock.nextRecordId()).andReturn(id1);
+        expect(recordEnumerationMock.nextRecordId()).andReturn(id2);
+        expect(recordStoreMock.getRecord(id1)).andReturn(infoBytes);
+        expect(recordStoreMock.getRecord(id2)).andReturn(infoBytes);
+        recordEnumerationMock.destroy();
+        final Vector notified = new Vector();
+        replayAll();
+        Vector actuals = fixture.readAll(new MeteorogramInfoReadListener() {
+
+            public void readMeteorogramInfo(MeteorogramInfo info) {
+                notified.addElement(info);
+            }
+        });
+        assertThat(actuals.size(), equalTo(2));
+        assertThat(notified, equalTo(actuals));
+        verifyAll();
+    }
+
+    @Test
+    public void readAllWithListenerClosingSessions() throws RecordStoreException {
+        int id1 = 93;
+        final int id2 = 193;
+        final boolean[] closed = new boolean[]{false};
+        expect(RecordStore.openRecordStore(
+                MeteorogramInfoRecordStoreDao.STORE, true)).andReturn(recordStoreMock);
+        expect(recordStoreMock.enumerateRecords(
+                null, fixture.getRecordComparator(), false)).andReturn(recordEnumerationMock);
+        recordEnumerationMock.keepUpdated(true);
+        expect(recordEnumerationMock.numRecords()).andReturn(2);
+        expect(recordEnumerationMock.hasNextElement()).andReturn(Boolean.TRUE).times(2);
+        expect(recordEnumerationMock.hasNextElement()).andReturn(Boolean.FALSE);
+        expect(recordEnumerationMock.nextRecordId()).andReturn(id1);
+        expect(recordEnumerationMock.nextRecordId()).andReturn(id2);
+        expect(recordStoreMock.getRecord(id1)).andReturn(infoBytes);
+        expect(recordStoreMock.getRecord(id2)).andAnswer(new IAnswer<byte[]>() {
+
+            @Override
+            public byte[] answer() throws Throwable {
+                if (closed[0]) {
+                    throw new RecordStoreNotOpenException();
+                }
+                return infoBytes;
+            }
+        });
+        recordEnumerationMock.destroy();
+        recordStoreMock.closeRecordStore();
+        expectLastCall().andAnswer(new IAnswer<Object>() {
+
+            @Override
+            public Object answer() throws Throwable {
+                closed[0] = true;
+                return null;
+            }
+        });
+        replayAll();
+        Vector actuals = fixture.readAll(new MeteorogramInfoReadListener() {
+
+            public void readMeteorogramInfo(MeteorogramInfo info) {
+                RecordStoreSessions.getInstance().closeAll();
+            }
+        });
+        assertThat(actuals.size(), equalTo(2));
+        assertThat(closed[0], is(true));
+        assertThat(RecordStoreSessions.getInstance().isOpen(
+                MeteorogramInfoRecordStoreDao.STORE), is(false));
+        verifyAll();
+    }
+
+    @Test
+    public void readAllInvalidWithListener() throws RecordStoreException {
+        int id = 18;
+        expect(RecordStore.openRecordStore(
+                MeteorogramInfoRecordStoreDao.STORE, true)).andReturn(recordStoreMock);
+        expect(recordStoreMock.enumerateRecords(
+                null, fixture.getRecordComparator(), false)).andReturn(recordEnumerationMock);
+        recordEnumerationMock.keepUpdated(true);
+        expect(recordEnumerationMock.numRecords()).andReturn(1);
+        expect(recordEnumerationMock.hasNextElement()).andReturn(Boolean.TRUE);
+        expect(recordEnumerationMock.hasNextElement()).andReturn(Boolean.FALSE);
+        expect(recordEnumerationMock.nextRecordId()).andReturn(id);
+        expect(recordStoreMock.getRecord(id)).andReturn(new byte[]{10});
+        recordStoreMock.deleteRecord(id);
+        recordEnumerationMock.destroy();
+        final Vector notified = new Vector();
+        replayAll();
+        Vector infos = fixture.readAll(new MeteorogramInfoReadListener() {
+
+            public void readMeteorogramInfo(MeteorogramInfo info) {
+                notified.addElement(info);
+            }
+        });
+        assertThat(infos.size(), equalTo(0));
+        assertThat(notified.size(), equalTo(0));
+        verifyAll();
+    }
+
     @Test
     public void readAllInvalid() throws RecordStoreException {
         int id = 17;
         expect(RecordStore.openRecordStore(
-                MeteorogramInfoRecordStoreDao.STORE, true)).andReturn(recordStoreMock).times(2);
+                MeteorogramInfoRecordStoreDao.STORE, true)).andReturn(recordStoreMock);
         expect(recordStoreMock.enumerateRecords(
                 null, fixture.getRecordComparator(), false)).andReturn(recordEnumerationMock);
         recordEnumerationMock.keepUpdated(true);
@@ -432,14 +610,206 @@ public class MeteorogramInfoRecordStoreDaoTest {
         expect(recordStoreMock.getRecord(id)).andReturn(new byte[]{10});
         recordStoreMock.deleteRecord(id);
         recordEnumerationMock.destroy();
-        recordStoreMock.closeRecordStore();
-        expectLastCall().times(2);
         replayAll();
         Vector infos = fixture.readAll();
         assertThat(infos.size(), equalTo(0));
         verifyAll();
     }
 
+    @Test
+    public void readAllNewerVersionKept() throws RecordStoreException {
+        int id1 = 19;
+        int id2 = 119;
+        expect(RecordStore.openRecordStore(
+                MeteorogramInfoRecordStoreDao.STORE, true)).andReturn(recordStoreMock);
+        expect(recordStoreMock.enumerateRecords(
+                null, fixture.getRecordComparator(), false)).andReturn(recordEnumerationMock);
+        recordEnumerationMock.keepUpdated(true);
+        expect(recordEnumerationMock.numRecords()).andReturn(2);
+        expect(recordEnumerationMock.hasNextElement()).andReturn(Boolean.TRUE).times(2);
+        expect(recordEnumerationMock.hasNextElement()).andReturn(Boolean.FALSE);
+        expect(recordEnumerationMock.nextRecordId()).andReturn(id1);
+        expect(recordEnumerationMock.nextRecordId()).andReturn(id2);
+        expect(recordStoreMock.getRecord(id1)).andReturn(NEWER_VERSION_BYTES);
+        expect(recordStoreMock.getRecord(id2)).andReturn(infoBytes);
+        recordEnumerationMock.destroy();
+        replayAll();
+        Vector infos = fixture.readAll();
+        assertThat(infos.size(), equalTo(1));
+        assertThat(((MeteorogramInfo) infos.get(0)).getId(), equalTo(id2));
+        verifyAll();
+    }
+
+    @Test
+    public void storeKeptOpenBetweenOperations() throws RecordStoreException {
+        int id = 31;
+        expect(RecordStore.openRecordStore(
+                MeteorogramInfoRecordStoreDao.STORE, true)).andReturn(recordStoreMock);
+        expect(recordStoreMock.addRecord(
+                aryEq(infoBytes), eq(0), eq(infoBytes.length))).andReturn(id);
+        expect(recordStoreMock.getRecord(id)).andReturn(infoBytes);
+        recordStoreMock.deleteRecord(id);
+        replayAll();
+        fixture.create(info);
+        MeteorogramInfo actualInfo = fixture.read(id);
+        fixture.delete(actualInfo);
+        assertThat(actualInfo.getId(), is(nullValue()));
+        assertThat(RecordStoreSessions.getInstance().isOpen(
+                MeteorogramInfoRecordStoreDao.STORE), is(true));
+        verifyAll();
+    }
+
+    @Test
+    public void storeReopenedAfterCloseAll() throws RecordStoreException {
+        int id = 32;
+        expect(RecordStore.openRecordStore(
+                MeteorogramInfoRecordStoreDao.STORE, true)).andReturn(recordStoreMock).times(2);
+        expect(recordStoreMock.getRecord(id)).andReturn(infoBytes).times(2);
+        recordStoreMock.closeRecordStore();
+        replayAll();
+        fixture.read(id);
+        RecordStoreSessions.getInstance().closeAll();
+        MeteorogramInfo actualInfo = fixture.read(id);
+        assertThat(actualInfo.getId(), equalTo(id));
+        verifyAll();
+    }
+
+    @Test
+    public void storeReopenedAfterClosedHandle() throws RecordStoreException {
+        int id = 33;
+        expect(RecordStore.openRecordStore(
+                MeteorogramInfoRecordStoreDao.STORE, true)).andReturn(recordStoreMock).times(2);
+        expect(recordStoreMock.getRecord(id)).andThrow(new RecordStoreNotOpenException());
+        expect(recordStoreMock.getRecord(id)).andReturn(infoBytes);
+        replayAll();
+        assertThat(fixture.read(id), is(nullValue()));
+        assertThat(RecordStoreSessions.getInstance().isOpen(
+                MeteorogramInfoRecordStoreDao.STORE), is(false));
+        MeteorogramInfo actualInfo = fixture.read(id);
+        assertThat(actualInfo.getId(), equalTo(id));
+        verifyAll();
+    }
+
+    @Test
+    public void createOrUpdateAll() throws RecordStoreException {
+        int newId = 41;
+        int id = 42;
+        MeteorogramInfo tainted = new MeteorogramInfo();
+        tainted.setId(id);
+        tainted.setX(info.getX());
+        tainted.setY(info.getY());
+        tainted.setTainted(true);
+        MeteorogramInfo notTainted = new MeteorogramInfo();
+        notTainted.setId(43);
+        notTainted.setTainted(false);
+        Vector infos = new Vector();
+        infos.addElement(info);
+        infos.addElement(tainted);
+        infos.addElement(notTainted);
+        expect(RecordStore.openRecordStore(
+                MeteorogramInfoRecordStoreDao.STORE, true)).andReturn(recordStoreMock);
+        expect(recordStoreMock.addRecord(
+                aryEq(infoBytes), eq(0), eq(infoBytes.length))).andReturn(newId);
+        recordStoreMock.setRecord(eq(id), aryEq(infoBytes), eq(0), eq(infoBytes.length));
+        replayAll();
+        fixture.createOrUpdateAll(infos);
+        assertThat(info.getId(), equalTo(newId));
+        assertThat(info.isTainted(), is(false));
+        assertThat(tainted.isTainted(), is(false));
+        assertThat(notTainted.isTainted(), is(false));
+        verifyAll();
+    }
+
+    @Test
+    public void createOrUpdateAllNotExistingWithId() throws RecordStoreException {
+        int id = 44;
+        int newId = 45;
+        info.setId(id);
+        Vector infos = new Vector();
+        infos.addElement(info);
+        expect(RecordStore.openRecordStore(
+                MeteorogramInfoRecordStoreDao.STORE, true)).andReturn(recordStoreMock);
+        recordStoreMock.setRecord(eq(id), aryEq(infoBytes), eq(0), eq(infoBytes.length));
+        expectLastCall().andThrow(new InvalidRecordIDException());
+        expect(recordStoreMock.addRecord(
+                aryEq(infoBytes), eq(0), eq(infoBytes.length))).andReturn(newId);
+        replayAll();
+        fixture.createOrUpdateAll(infos);
+        assertThat(info.getId(), equalTo(newId));
+        assertThat(info.isTainted(), is(false));
+        verifyAll();
+    }
+
+    @Test
+    public void createOrUpdateAllEmpty() {
+        replayAll();
+        fixture.createOrUpdateAll(new Vector());
+        verifyAll();
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void createOrUpdateAllNull() {
+        replayAll();
+        fixture.createOrUpdateAll(null);
+        verifyAll();
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void createOrUpdateAllNullElement() {
+        Vector infos = new Vector();
+        infos.addElement(info);
+        infos.addElement(null);
+        replayAll();
+        fixture.createOrUpdateAll(infos);
+        verifyAll();
+    }
+
+    @Test
+    public void deleteAll() throws RecordStoreException {
+        int id1 = 51;
+        int id2 = 52;
+        MeteorogramInfo other = new MeteorogramInfo();
+        other.setId(id2);
+        info.setId(id1);
+        Vector infos = new Vector();
+        infos.addElement(info);
+        infos.addElement(other);
+        expect(RecordStore.openRecordStore(
+                MeteorogramInfoRecordStoreDao.STORE, true)).andReturn(recordStoreMock);
+        recordStoreMock.deleteRecord(id1);
+        recordStoreMock.deleteRecord(id2);
+        expectLastCall().andThrow(new InvalidRecordIDException());
+        replayAll();
+        fixture.deleteAll(infos);
+        assertThat(info.getId(), is(nullValue()));
+        assertThat(other.getId(), is(nullValue()));
+        verifyAll();
+    }
+
+    @Test
+    public void deleteAllWithoutId() {
+        MeteorogramInfo other = new MeteorogramInfo();
+        other.setId(53);
+        Vector infos = new Vector();
+        infos.addElement(other);
+        infos.addElement(info);
+        replayAll();
+        try {
+            fixture.deleteAll(infos);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException ex) {
+            assertThat(other.getId(), equalTo(53));
+        }
+        verifyAll();
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void deleteAllNull() {
+        replayAll();
+        fixture.deleteAll(null);
+        verifyAll();
+    }
+
     @Test
     public void getRecordComparator() {
         RecordComparator actual = fixture.getRecordComparator();
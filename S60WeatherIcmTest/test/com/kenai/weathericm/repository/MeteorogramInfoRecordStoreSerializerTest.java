@@ -83,10 +83,12 @@ public class MeteorogramInfoRecordStoreSerializerTest {
         int y = 2;
         MeteorogramType type = MeteorogramType.COAMPS;
         byte[] expected = new byte[]{
+            (byte) 0x81,
             0, (byte) name.length(), name.getBytes()[0],
-            0, 0, 0, (byte) x,
-            0, 0, 0, (byte) y,
-            0, 0, 0, (byte) type.getValue(),};
+            (byte) x,
+            (byte) y,
+            (byte) type.getValue(),
+            0,};
         MeteorogramInfo info = new MeteorogramInfo();
         info.setName(name);
         info.setX(x);
@@ -95,4 +97,98 @@ public class MeteorogramInfoRecordStoreSerializerTest {
         byte[] serialized = fixture.serialize(info);
         assertThat(serialized, equalTo(expected));
     }
+
+    @Test
+    public void serializeLargeCoordinates() {
+        MeteorogramInfo info = new MeteorogramInfo();
+        info.setName("b");
+        info.setX(MeteorogramInfo.MAX_X);
+        info.setY(MeteorogramInfo.MAX_Y);
+        info.setType(MeteorogramType.UM);
+        byte[] serialized = fixture.serialize(info);
+        assertThat(serialized, equalTo(new byte[]{
+                    (byte) 0x81,
+                    0, 1, (byte) 'b',
+                    (byte) 0xae, 0x03,
+                    (byte) 0xd6, 0x04,
+                    0,
+                    0,}));
+        MeteorogramInfo resurected = fixture.resurect(1, serialized);
+        assertThat(resurected.getX(), equalTo(MeteorogramInfo.MAX_X));
+        assertThat(resurected.getY(), equalTo(MeteorogramInfo.MAX_Y));
+        assertThat(resurected.isTainted(), is(false));
+    }
+
+    @Test
+    public void resurectSerialized() {
+        MeteorogramInfo info = new MeteorogramInfo();
+        info.setName("Kraków");
+        info.setX(232);
+        info.setY(466);
+        info.setType(MeteorogramType.COAMPS);
+        MeteorogramInfo resurected = fixture.resurect(40, fixture.serialize(info));
+        assertThat(resurected.getId(), equalTo(40));
+        assertThat(resurected.getName(), equalTo(info.getName()));
+        assertThat(resurected.getX(), equalTo(info.getX()));
+        assertThat(resurected.getY(), equalTo(info.getY()));
+        assertThat(resurected.getType(), equalTo(info.getType()));
+        assertThat(resurected.isTainted(), is(false));
+    }
+
+    @Test
+    public void resurectSkipsUnknownFields() {
+        byte[] data = new byte[]{
+            (byte) 0x81,
+            0, 1, (byte) 'c',
+            3,
+            4,
+            1,
+            7, 2, 9, 9,
+            8, 0,
+            0,};
+        MeteorogramInfo resurected = fixture.resurect(50, data);
+        assertThat(resurected.getName(), equalTo("c"));
+        assertThat(resurected.getX(), equalTo(3));
+        assertThat(resurected.getY(), equalTo(4));
+        assertThat(resurected.getType(), equalTo(MeteorogramType.COAMPS));
+        assertThat(resurected.isTainted(), is(false));
+    }
+
+    @Test
+    public void resurectTruncatedFields() {
+        byte[] data = new byte[]{
+            (byte) 0x81,
+            0, 1, (byte) 'c',
+            3,
+            4,
+            1,
+            7, 5, 9,};
+        MeteorogramInfo resurected = fixture.resurect(51, data);
+        assertThat(resurected.isTainted(), is(true));
+    }
+
+    @Test
+    public void resurectNewerVersion() {
+        byte[] data = new byte[]{
+            (byte) 0x82,
+            0, 1, (byte) 'c',
+            3,
+            4,
+            1,
+            0,};
+        MeteorogramInfo resurected = fixture.resurect(52, data);
+        assertThat(resurected, is(nullValue()));
+    }
+
+    @Test
+    public void isUpgradeNeeded() {
+        MeteorogramInfo info = new MeteorogramInfo();
+        info.setName("d");
+        assertThat(fixture.isUpgradeNeeded(fixture.serialize(info)), is(false));
+        assertThat(fixture.isUpgradeNeeded(new byte[]{
+                    0, 1, (byte) 'd',
+                    0, 0, 0, 0,
+                    0, 0, 0, 0,
+                    0, 0, 0, 0,}), is(true));
+    }
 }
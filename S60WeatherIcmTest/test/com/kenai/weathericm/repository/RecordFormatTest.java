@@ -0,0 +1,169 @@
+/*
+ *  Copyright (C) 2010 Przemek Kryger
+ * 
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ * 
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.kenai.weathericm.repository;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import org.junit.Before;
+import org.junit.Test;
+import static org.hamcrest.Matchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Tests for {@link RecordFormat}.
+ * @author Przemek Kryger
+ */
+public class RecordFormatTest {
+
+    private ByteArrayOutputStream baos;
+    private DataOutputStream dos;
+
+    @Before
+    public void setUp() {
+        baos = new ByteArrayOutputStream();
+        dos = new DataOutputStream(baos);
+    }
+
+    private DataInputStream written() {
+        return new DataInputStream(new ByteArrayInputStream(baos.toByteArray()));
+    }
+
+    @Test
+    public void getVersion() {
+        assertThat(RecordFormat.getVersion(new byte[]{(byte) 0x81, 0}), equalTo(1));
+        assertThat(RecordFormat.getVersion(new byte[]{(byte) 0x8f}), equalTo(15));
+        assertThat(RecordFormat.getVersion(new byte[]{0, 1, 2}), equalTo(0));
+        assertThat(RecordFormat.getVersion(new byte[]{(byte) 0x91}), equalTo(0));
+        assertThat(RecordFormat.getVersion(new byte[]{}), equalTo(0));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void getVersionNull() {
+        RecordFormat.getVersion(null);
+    }
+
+    @Test
+    public void writeReadVersion() throws IOException {
+        RecordFormat.writeVersion(dos, 3);
+        assertThat(baos.toByteArray(), equalTo(new byte[]{(byte) 0x83}));
+        RecordFormat.readVersion(written(), 3);
+    }
+
+    @Test(expected = IOException.class)
+    public void readOtherVersion() throws IOException {
+        RecordFormat.writeVersion(dos, 2);
+        RecordFormat.readVersion(written(), 1);
+    }
+
+    @Test
+    public void writeVarLong() throws IOException {
+        RecordFormat.writeVarLong(dos, 0L);
+        RecordFormat.writeVarLong(dos, 127L);
+        RecordFormat.writeVarLong(dos, 128L);
+        RecordFormat.writeVarLong(dos, 300L);
+        assertThat(baos.toByteArray(), equalTo(new byte[]{
+                    0,
+                    0x7f,
+                    (byte) 0x80, 0x01,
+                    (byte) 0xac, 0x02,}));
+    }
+
+    @Test
+    public void readVarLong() throws IOException {
+        long[] values = new long[]{0L, 1L, 127L, 128L, 16383L, 16384L,
+            Integer.MAX_VALUE, Long.MAX_VALUE};
+        for (int i = 0; i < values.length; i++) {
+            RecordFormat.writeVarLong(dos, values[i]);
+        }
+        DataInputStream dis = written();
+        for (int i = 0; i < values.length; i++) {
+            assertThat(RecordFormat.readVarLong(dis), equalTo(values[i]));
+        }
+        assertThat(dis.available(), equalTo(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void writeVarLongNegative() throws IOException {
+        RecordFormat.writeVarLong(dos, -1L);
+    }
+
+    @Test(expected = IOException.class)
+    public void readVarLongTooLong() throws IOException {
+        for (int i = 0; i < 9; i++) {
+            dos.writeByte(0x80);
+        }
+        dos.writeByte(0x01);
+        RecordFormat.readVarLong(written());
+    }
+
+    @Test(expected = IOException.class)
+    public void readVarLongTruncated() throws IOException {
+        dos.writeByte(0x80);
+        RecordFormat.readVarLong(written());
+    }
+
+    @Test(expected = IOException.class)
+    public void readVarIntOutOfRange() throws IOException {
+        RecordFormat.writeVarLong(dos, Integer.MAX_VALUE + 1L);
+        RecordFormat.readVarInt(written());
+    }
+
+    @Test
+    public void writeReadFields() throws IOException {
+        RecordFormat.writeField(dos, 5, new byte[]{1, 2});
+        RecordFormat.writeField(dos, 200, new byte[]{});
+        RecordFormat.writeEndOfFields(dos);
+        assertThat(baos.toByteArray(), equalTo(new byte[]{
+                    5, 2, 1, 2,
+                    (byte) 0xc8, 0x01, 0,
+                    0,}));
+        DataInputStream dis = written();
+        assertThat(RecordFormat.readVarInt(dis), equalTo(5));
+        assertThat(RecordFormat.readFieldValue(dis), equalTo(new byte[]{1, 2}));
+        assertThat(RecordFormat.readVarInt(dis), equalTo(200));
+        assertThat(RecordFormat.readFieldValue(dis).length, equalTo(0));
+        assertThat(RecordFormat.readVarInt(dis), equalTo(RecordFormat.END_OF_FIELDS));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void writeFieldEndTag() throws IOException {
+        RecordFormat.writeField(dos, RecordFormat.END_OF_FIELDS, new byte[]{});
+    }
+
+    @Test(expected = IOException.class)
+    public void readFieldValueTooLong() throws IOException {
+        RecordFormat.writeVarLong(dos, 3);
+        dos.writeByte(1);
+        RecordFormat.readFieldValue(written());
+    }
+
+    @Test
+    public void intBytes() throws IOException {
+        byte[] bytes = RecordFormat.toBytes(0xfedcba98);
+        assertThat(bytes, equalTo(new byte[]{(byte) 0xfe, (byte) 0xdc, (byte) 0xba, (byte) 0x98}));
+        assertThat(RecordFormat.toInt(bytes), equalTo(0xfedcba98));
+    }
+
+    @Test(expected = IOException.class)
+    public void toIntWrongLength() throws IOException {
+        RecordFormat.toInt(new byte[]{1, 2, 3});
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ *  Copyright (C) 2010 Przemek Kryger
+ * 
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ * 
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.kenai.weathericm.repository;
+
+import javax.microedition.rms.RecordStore;
+import javax.microedition.rms.RecordStoreException;
+import javax.microedition.rms.RecordStoreNotOpenException;
+import net.sf.microlog.core.config.PropertyConfigurator;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.core.classloader.annotations.SuppressStaticInitializationFor;
+import org.powermock.modules.junit4.PowerMockRunner;
+import org.powermock.reflect.Whitebox;
+import static org.hamcrest.Matchers.*;
+import static org.hamcrest.MatcherAssert.*;
+import static org.junit.Assert.fail;
+import static org.powermock.api.easymock.PowerMock.createMock;
+import static org.powermock.api.easymock.PowerMock.expectLastCall;
+import static org.powermock.api.easymock.PowerMock.mockStatic;
+import static org.powermock.api.easymock.PowerMock.replayAll;
+import static org.powermock.api.easymock.PowerMock.resetAll;
+import static org.powermock.api.easymock.PowerMock.verifyAll;
+import static org.easymock.EasyMock.expect;
+
+/**
+ * Tests for {@link RecordStoreSessions}.
+ * @author Przemek Kryger
+ */
+@RunWith(PowerMockRunner.class)
+@SuppressStaticInitializationFor("javax.microedition.rms.RecordStore")
+@PrepareForTest(RecordStore.class)
+public class RecordStoreSessionsTest {
+
+    private final static String STORE = "Store";
+    private final static String OTHER_STORE = "OtherStore";
+    private RecordStore recordStoreMock;
+    private RecordStore otherRecordStoreMock;
+    private RecordStoreSessions fixture;
+
+    @BeforeClass
+    public static void setUpClass() {
+        PropertyConfigurator.configure("/testMicrolog.properties");
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        mockStatic(RecordStore.class);
+        recordStoreMock = createMock(RecordStore.class);
+        otherRecordStoreMock = createMock(RecordStore.class);
+        fixture = Whitebox.invokeConstructor(RecordStoreSessions.class);
+    }
+
+    @Test
+    public void getInstance() {
+        RecordStoreSessions instance = RecordStoreSessions.getInstance();
+        assertThat(instance, is(not(nullValue())));
+        assertThat(RecordStoreSessions.getInstance(), is(sameInstance(instance)));
+    }
+
+    @Test
+    public void openOnce() throws RecordStoreException {
+        expect(RecordStore.openRecordStore(STORE, true)).andReturn(recordStoreMock);
+        replayAll();
+        assertThat(fixture.isOpen(STORE), is(false));
+        assertThat(fixture.open(STORE), is(recordStoreMock));
+        assertThat(fixture.open(STORE), is(recordStoreMock));
+        assertThat(fixture.isOpen(STORE), is(true));
+        verifyAll();
+    }
+
+    @Test
+    public void openFailure() throws RecordStoreException {
+        expect(RecordStore.openRecordStore(STORE, true)).andThrow(new RecordStoreException());
+        replayAll();
+        try {
+            fixture.open(STORE);
+            fail("RecordStoreException expected");
+        } catch (RecordStoreException ex) {
+            assertThat(fixture.isOpen(STORE), is(false));
+        }
+        verifyAll();
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void openNull() throws RecordStoreException {
+        replayAll();
+        fixture.open(null);
+        verifyAll();
+    }
+
+    @Test
+    public void closeAll() throws RecordStoreException {
+        expect(RecordStore.openRecordStore(STORE, true)).andReturn(recordStoreMock).times(2);
+        expect(RecordStore.openRecordStore(OTHER_STORE, true)).andReturn(otherRecordStoreMock);
+        recordStoreMock.closeRecordStore();
+        otherRecordStoreMock.closeRecordStore();
+        expectLastCall().andThrow(new RecordStoreNotOpenException());
+        replayAll();
+        fixture.release(fixture.open(STORE));
+        fixture.release(fixture.open(OTHER_STORE));
+        fixture.closeAll();
+        assertThat(fixture.isOpen(STORE), is(false));
+        assertThat(fixture.isOpen(OTHER_STORE), is(false));
+        fixture.closeAll();
+        assertThat(fixture.open(STORE), is(recordStoreMock));
+        verifyAll();
+    }
+
+    @Test
+    public void closeAllInUse() throws RecordStoreException {
+        expect(RecordStore.openRecordStore(STORE, true)).andReturn(recordStoreMock);
+        expect(RecordStore.openRecordStore(STORE, true)).andReturn(otherRecordStoreMock);
+        replayAll();
+        RecordStore store = fixture.open(STORE);
+        fixture.open(STORE);
+        fixture.closeAll();
+        assertThat(fixture.isOpen(STORE), is(false));
+        assertThat(fixture.open(STORE), is(otherRecordStoreMock));
+        fixture.release(store);
+        verifyAll();
+        resetAll();
+        recordStoreMock.closeRecordStore();
+        replayAll();
+        fixture.release(store);
+        fixture.release(store);
+        assertThat(fixture.isOpen(STORE), is(true));
+        verifyAll();
+    }
+
+    @Test
+    public void releaseNotOpen() {
+        replayAll();
+        fixture.release(recordStoreMock);
+        fixture.release(null);
+        verifyAll();
+    }
+
+    @Test
+    public void invalidate() throws RecordStoreException {
+        expect(RecordStore.openRecordStore(STORE, true)).andReturn(recordStoreMock).times(2);
+        replayAll();
+        RecordStore store = fixture.open(STORE);
+        fixture.invalidate(STORE, store);
+        fixture.invalidate(OTHER_STORE, store);
+        fixture.invalidate(null, store);
+        fixture.invalidate(STORE, null);
+        assertThat(fixture.isOpen(STORE), is(false));
+        fixture.release(store);
+        assertThat(fixture.open(STORE), is(recordStoreMock));
+        verifyAll();
+    }
+
+    @Test
+    public void invalidateOtherHandle() throws RecordStoreException {
+        expect(RecordStore.openRecordStore(STORE, true)).andReturn(recordStoreMock);
+        replayAll();
+        fixture.open(STORE);
+        fixture.invalidate(STORE, otherRecordStoreMock);
+        assertThat(fixture.isOpen(STORE), is(true));
+        assertThat(fixture.open(STORE), is(recordStoreMock));
+        verifyAll();
+    }
+}
@@ -126,6 +126,73 @@ public class AbstractStatusReporterTest {
         assertThat(listeners.contains(listener), is(false));
     }
 
+    @Test
+    public void removeAllListeners() {
+        fixture.addListener(listener);
+        fixture.addListener(new DummyListener());
+        fixture.removeAllListeners();
+        Vector listeners = fixture.getListeners();
+        assertThat(listeners, is(not(nullValue())));
+        assertThat(listeners.size(), equalTo(0));
+    }
+
+    @Test
+    public void fireStatusUpdateListenerRemovesItself() {
+        DummyListener removing = new DummyListener() {
+
+            public void statusUpdate(StatusReporter source, Status status) {
+                super.statusUpdate(source, status);
+                source.removeListener(this);
+            }
+        };
+        fixture.addListener(removing);
+        fixture.addListener(listener);
+        Status status = new Status();
+        fixture.fireStatusUpdate(status);
+        assertThat(removing.status, is(sameInstance(status)));
+        assertThat(listener.status, is(sameInstance(status)));
+        Vector listeners = fixture.getListeners();
+        assertThat(listeners.size(), equalTo(1));
+        assertThat(listeners.contains(listener), is(true));
+    }
+
+    @Test
+    public void removeListenerKeepsOrder() {
+        DummyListener first = new DummyListener();
+        DummyListener last = new DummyListener();
+        fixture.addListener(first);
+        fixture.addListener(listener);
+        fixture.addListener(last);
+        fixture.removeListener(listener);
+        Vector listeners = fixture.getListeners();
+        assertThat(listeners.size(), equalTo(2));
+        assertThat(listeners.elementAt(0), is(sameInstance((Object) first)));
+        assertThat(listeners.elementAt(1), is(sameInstance((Object) last)));
+    }
+
+    @Test
+    public void fireProgressUpdate() {
+        DummyProgressListener progressListener = new DummyProgressListener();
+        fixture.addListener(progressListener);
+        fixture.addListener(listener);
+        fixture.fireProgressUpdate(42);
+        assertThat(progressListener.source, is(sameInstance((StatusReporter) fixture)));
+        assertThat(progressListener.progress, equalTo(42));
+        assertThat(progressListener.status, is(nullValue()));
+        assertThat(listener.source, is(sameInstance((StatusReporter) fixture)));
+        assertThat(listener.status.getProgress(), equalTo(42));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void fireProgressUpdateNegative() {
+        fixture.fireProgressUpdate(-1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void fireProgressUpdateOver100() {
+        fixture.fireProgressUpdate(101);
+    }
+
     @Test
     public void fireStatusUpdate() {
         fixture.addListener(listener);
@@ -146,4 +213,14 @@ public class AbstractStatusReporterTest {
             this.status = status;
         }
     }
+
+    private class DummyProgressListener extends DummyListener implements ProgressListener {
+
+        public int progress = -1;
+
+        public void progressUpdate(StatusReporter source, int progress) {
+            this.source = source;
+            this.progress = progress;
+        }
+    }
 }
@@ -0,0 +1,108 @@
+/*
+ *  Copyright (C) 2010 Przemek Kryger
+ * 
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ * 
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.kenai.weathericm.util;
+
+import java.util.Random;
+import net.sf.microlog.core.config.PropertyConfigurator;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.hamcrest.Matchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Tests for {@link Adler32}.
+ * @author Przemek Kryger
+ */
+public class Adler32Test {
+
+    private Adler32 fixture;
+
+    @BeforeClass
+    public static void setUpClass() {
+        PropertyConfigurator.configure("/testMicrolog.properties");
+    }
+
+    @Before
+    public void setUp() {
+        fixture = new Adler32();
+    }
+
+    @Test
+    public void getValueEmpty() {
+        assertThat(fixture.getValue(), equalTo(1L));
+    }
+
+    @Test
+    public void update() {
+        byte[] data = "Wikipedia".getBytes();
+        fixture.update(data, 0, data.length);
+        assertThat(fixture.getValue(), equalTo(0x11e60398L));
+    }
+
+    @Test
+    public void updateInBlocks() {
+        byte[] data = new byte[3 * 3854 + 17];
+        new Random(7L).nextBytes(data);
+        fixture.update(data, 0, 1000);
+        fixture.update(data, 1000, 0);
+        fixture.update(data, 1000, data.length - 1000);
+        java.util.zip.Adler32 expected = new java.util.zip.Adler32();
+        expected.update(data, 0, data.length);
+        assertThat(fixture.getValue(), equalTo(expected.getValue()));
+    }
+
+    @Test
+    public void updateAllOnes() {
+        byte[] data = new byte[100000];
+        java.util.Arrays.fill(data, (byte) 0xff);
+        fixture.update(data, 0, data.length);
+        java.util.zip.Adler32 expected = new java.util.zip.Adler32();
+        expected.update(data, 0, data.length);
+        assertThat(fixture.getValue(), equalTo(expected.getValue()));
+    }
+
+    @Test
+    public void reset() {
+        byte[] data = new byte[]{1, 2, 3};
+        fixture.update(data, 0, data.length);
+        fixture.reset();
+        assertThat(fixture.getValue(), equalTo(1L));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void updateNull() {
+        fixture.update(null, 0, 0);
+    }
+
+    @Test(expected = ArrayIndexOutOfBoundsException.class)
+    public void updateOutOfRange() {
+        fixture.update(new byte[3], 2, 2);
+    }
+
+    @Test(expected = ArrayIndexOutOfBoundsException.class)
+    public void updateNegativeOffset() {
+        fixture.update(new byte[3], -1, 1);
+    }
+
+    @Test
+    public void checksum() {
+        byte[] data = "Wikipedia!".getBytes();
+        assertThat(Adler32.checksum(data, 9), equalTo(0x11e60398L));
+    }
+}
@@ -17,11 +17,23 @@
  */
 package com.kenai.weathericm.util;
 
+import com.kenai.weathericm.app.AbstractConnectorDownloader;
+import com.kenai.weathericm.app.DownloadTelemetry;
+import com.kenai.weathericm.app.LegendCache;
+import com.kenai.weathericm.app.StorageQuotaManager;
 import com.kenai.weathericm.app.MeteorogramBroker;
+import com.kenai.weathericm.repository.DownloadCheckpointDao;
+import com.kenai.weathericm.repository.DownloadCheckpointRecordStoreDao;
+import com.kenai.weathericm.repository.DownloadTelemetryDao;
+import com.kenai.weathericm.repository.DownloadTelemetryRecordStoreDao;
+import com.kenai.weathericm.repository.LegendDao;
+import com.kenai.weathericm.repository.LegendRecordStoreDao;
 import com.kenai.weathericm.repository.ForecastDataDao;
 import com.kenai.weathericm.repository.ForecastDataRecordStoreDao;
 import com.kenai.weathericm.repository.ForecastDataRecordStoreSerializer;
 import com.kenai.weathericm.repository.ForecastDataSerializer;
+import com.kenai.weathericm.repository.ForecastHistoryDao;
+import com.kenai.weathericm.repository.ForecastHistoryRecordStoreDao;
 import com.kenai.weathericm.repository.MeteorogramInfoDao;
 import com.kenai.weathericm.repository.MeteorogramInfoRecordStoreDao;
 import com.kenai.weathericm.repository.MeteorogramInfoRecordStoreSerializer;
@@ -78,6 +90,20 @@ public class AppConfiguratorTest {
         ForecastDataSerializer forecastDataSerializer = Whitebox.getInternalState(forecastDataDao, "serializer");
         assertThat(forecastDataSerializer, is(notNullValue()));
         assertThat(forecastDataSerializer, instanceOf(ForecastDataRecordStoreSerializer.class));
+        ForecastHistoryDao forecastHistoryDao = broker.getForecastHistoryDao();
+        assertThat(forecastHistoryDao, is((ForecastHistoryDao) ForecastHistoryRecordStoreDao.getInstance()));
+        ForecastDataSerializer historySerializer = Whitebox.getInternalState(forecastHistoryDao, "serializer");
+        assertThat(historySerializer, instanceOf(ForecastDataRecordStoreSerializer.class));
+        assertThat(AbstractConnectorDownloader.getDownloadCheckpointDao(),
+                is((DownloadCheckpointDao) DownloadCheckpointRecordStoreDao.getInstance()));
+        assertThat(AbstractConnectorDownloader.getDownloadPolicy(), is(notNullValue()));
+        assertThat(AbstractConnectorDownloader.getDownloadTelemetry(), is(DownloadTelemetry.getInstance()));
+        assertThat(DownloadTelemetry.getInstance().getDownloadTelemetryDao(),
+                is((DownloadTelemetryDao) DownloadTelemetryRecordStoreDao.getInstance()));
+        assertThat(LegendCache.getInstance().getLegendDao(),
+                is((LegendDao) LegendRecordStoreDao.getInstance()));
+        assertThat(StorageQuotaManager.getInstance().getForecastDataDao(), is(forecastDataDao));
+        assertThat(StorageQuotaManager.getInstance().getForecastHistoryDao(), is(forecastHistoryDao));
         verifyAll();
     }
 }
@@ -0,0 +1,149 @@
+/*
+ *  Copyright (C) 2010 Przemek Kryger
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.kenai.weathericm.util;
+
+import net.sf.microlog.core.config.PropertyConfigurator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.hamcrest.Matchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Tests for {@link BufferPool}.
+ * @author Przemek Kryger
+ */
+public class BufferPoolTest {
+
+    private BufferPool fixture;
+
+    @BeforeClass
+    public static void setUpClass() {
+        PropertyConfigurator.configure("/testMicrolog.properties");
+    }
+
+    @Before
+    public void setUp() {
+        fixture = BufferPool.getInstance();
+        fixture.clear();
+    }
+
+    @After
+    public void tearDown() {
+        fixture.clear();
+    }
+
+    @Test
+    public void getInstance() {
+        assertThat(BufferPool.getInstance(), is(sameInstance(fixture)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void obtainNegative() {
+        fixture.obtain(-1);
+    }
+
+    @Test
+    public void obtainMinimalSize() {
+        byte[] actual = fixture.obtain(10);
+        assertThat(actual.length, equalTo(BufferPool.MIN_BUFFER_SIZE));
+    }
+
+    @Test
+    public void obtainPowerOfTwo() {
+        byte[] actual = fixture.obtain(23500);
+        assertThat(actual.length, equalTo(32768));
+    }
+
+    @Test
+    public void obtainReleased() {
+        byte[] buffer = fixture.obtain(2000);
+        fixture.release(buffer);
+        byte[] actual = fixture.obtain(1500);
+        assertThat(actual, is(sameInstance(buffer)));
+    }
+
+    @Test
+    public void obtainReleasedTooSmall() {
+        byte[] buffer = fixture.obtain(1000);
+        fixture.release(buffer);
+        byte[] actual = fixture.obtain(5000);
+        assertThat(actual, is(not(sameInstance(buffer))));
+    }
+
+    @Test
+    public void obtainSmallestFitting() {
+        byte[] big = fixture.obtain(8000);
+        byte[] small = fixture.obtain(2000);
+        fixture.release(big);
+        fixture.release(small);
+        byte[] actual = fixture.obtain(1500);
+        assertThat(actual, is(sameInstance(small)));
+    }
+
+    @Test
+    public void releaseNull() {
+        fixture.release(null);
+        byte[] actual = fixture.obtain(0);
+        assertThat(actual, is(notNullValue()));
+    }
+
+    @Test
+    public void releaseTwice() {
+        byte[] buffer = fixture.obtain(1000);
+        fixture.release(buffer);
+        fixture.release(buffer);
+        byte[] first = fixture.obtain(1000);
+        byte[] second = fixture.obtain(1000);
+        assertThat(first, is(sameInstance(buffer)));
+        assertThat(second, is(not(sameInstance(buffer))));
+    }
+
+    @Test
+    public void releaseTooBig() {
+        byte[] buffer = new byte[BufferPool.MAX_POOLED_BYTES + 1];
+        fixture.release(buffer);
+        byte[] actual = fixture.obtain(BufferPool.MAX_POOLED_BYTES);
+        assertThat(actual, is(not(sameInstance(buffer))));
+    }
+
+    @Test
+    public void releaseDropsSmallest() {
+        byte[][] buffers = new byte[BufferPool.MAX_BUFFERS][];
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = fixture.obtain(BufferPool.MIN_BUFFER_SIZE);
+        }
+        for (int i = 0; i < buffers.length; i++) {
+            fixture.release(buffers[i]);
+        }
+        byte[] bigger = fixture.obtain(2 * BufferPool.MIN_BUFFER_SIZE);
+        fixture.release(bigger);
+        byte[] actual = fixture.obtain(2 * BufferPool.MIN_BUFFER_SIZE);
+        assertThat(actual, is(sameInstance(bigger)));
+    }
+
+    @Test
+    public void clear() {
+        byte[] buffer = fixture.obtain(1000);
+        fixture.release(buffer);
+        fixture.clear();
+        byte[] actual = fixture.obtain(1000);
+        assertThat(actual, is(not(sameInstance(buffer))));
+    }
+}
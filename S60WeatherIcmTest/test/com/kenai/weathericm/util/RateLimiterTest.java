@@ -0,0 +1,88 @@
+/*
+ *  Copyright (C) 2010 Przemek Kryger
+ * 
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ * 
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.kenai.weathericm.util;
+
+import net.sf.microlog.core.config.PropertyConfigurator;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.hamcrest.Matchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Tests for {@link RateLimiter}.
+ * @author Przemek Kryger
+ */
+public class RateLimiterTest {
+
+    private RateLimiter fixture;
+
+    @BeforeClass
+    public static void setUpClass() {
+        PropertyConfigurator.configure("/testMicrolog.properties");
+    }
+
+    @Before
+    public void setUp() {
+        fixture = new RateLimiter(4);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void createZero() {
+        new RateLimiter(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void createNegative() {
+        new RateLimiter(-1);
+    }
+
+    @Test
+    public void isAllowedFirst() {
+        assertThat(fixture.isAllowed(1000L), is(true));
+    }
+
+    @Test
+    public void isAllowedTooEarly() {
+        fixture.isAllowed(1000L);
+        assertThat(fixture.isAllowed(1249L), is(false));
+        assertThat(fixture.isAllowed(1100L), is(false));
+    }
+
+    @Test
+    public void isAllowedAfterInterval() {
+        fixture.isAllowed(1000L);
+        assertThat(fixture.isAllowed(1249L), is(false));
+        assertThat(fixture.isAllowed(1250L), is(true));
+        assertThat(fixture.isAllowed(1499L), is(false));
+    }
+
+    @Test
+    public void isAllowedClockBack() {
+        fixture.isAllowed(1000L);
+        assertThat(fixture.isAllowed(500L), is(true));
+        assertThat(fixture.isAllowed(600L), is(false));
+    }
+
+    @Test
+    public void reset() {
+        fixture.isAllowed(1000L);
+        fixture.reset();
+        assertThat(fixture.isAllowed(1001L), is(true));
+    }
+}
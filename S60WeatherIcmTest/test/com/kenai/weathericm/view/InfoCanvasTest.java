@@ -17,10 +17,16 @@
  */
 package com.kenai.weathericm.view;
 
+import com.kenai.weathericm.app.LegendCache;
+import com.kenai.weathericm.app.ModelResultCache;
+import com.kenai.weathericm.app.helpers.ForecastDataInMemoryDao;
 import com.kenai.weathericm.domain.ForecastData;
 import com.kenai.weathericm.domain.MeteorogramInfo;
+import com.kenai.weathericm.domain.MeteorogramType;
+import com.kenai.weathericm.repository.LegendDao;
 import javax.microedition.lcdui.Image;
 import net.sf.microlog.core.config.PropertyConfigurator;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -28,7 +34,11 @@ import org.junit.runner.RunWith;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.core.classloader.annotations.SuppressStaticInitializationFor;
 import org.powermock.modules.junit4.PowerMockRunner;
+import org.powermock.reflect.Whitebox;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
 import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
 import static org.easymock.EasyMock.eq;
 import static org.easymock.EasyMock.aryEq;
 import static org.powermock.api.easymock.PowerMock.createMock;
@@ -63,6 +73,48 @@ public class InfoCanvasTest {
                 "setImage", "setTitle");
         imageMock = createMock(Image.class);
         info = new MeteorogramInfo();
+        Whitebox.setInternalState(LegendCache.class, "instance", (LegendCache) null);
+        Whitebox.setInternalState(ModelResultCache.class, "instance", (ModelResultCache) null);
+    }
+
+    @After
+    public void tearDown() {
+        Whitebox.setInternalState(LegendCache.class, "instance", (LegendCache) null);
+        Whitebox.setInternalState(ModelResultCache.class, "instance", (ModelResultCache) null);
+    }
+
+    @Test
+    public void setInfoWithLegend() {
+        String title = "df";
+        byte[] modelResult = new byte[]{1, 2, 3};
+        final byte[] legend = new byte[]{4, 5};
+        Image legendMock = createMock(Image.class);
+        ForecastData data = new ForecastData(2010, 8, 10, 0);
+        data.setModelResult(modelResult);
+        info.setForecastData(data);
+        info.setName(title);
+        info.setType(MeteorogramType.COAMPS);
+        LegendCache.getInstance().setLegendDao(new LegendDao() {
+
+            public byte[] read(MeteorogramType type) {
+                return type == MeteorogramType.COAMPS ? legend : null;
+            }
+
+            public boolean createOrUpdate(MeteorogramType type, byte[] legend) {
+                return false;
+            }
+        });
+        mockStatic(Image.class);
+        expect(Image.createImage(aryEq(modelResult), eq(0), eq(modelResult.length))).andReturn(imageMock).times(2);
+        expect(Image.createImage(aryEq(legend), eq(0), eq(legend.length))).andReturn(legendMock);
+        fixture.setImage(imageMock, legendMock);
+        expectLastCall().times(2);
+        fixture.setTitle(title);
+        expectLastCall().times(2);
+        replayAll();
+        fixture.setInfo(info);
+        fixture.setInfo(info);
+        verifyAll();
     }
 
     @Test
@@ -82,6 +134,28 @@ public class InfoCanvasTest {
         verifyAll();
     }
 
+    @Test
+    public void setInfoWithNotLoadedData() {
+        String title = "nl";
+        byte[] modelResult = new byte[]{1, 2, 3};
+        ForecastData data = new ForecastData(2010, 8, 10, 0);
+        data.setModelResult(modelResult);
+        ForecastDataInMemoryDao dao = new ForecastDataInMemoryDao();
+        dao.create(5, data);
+        ModelResultCache.getInstance().setForecastDataDao(dao);
+        info.setId(5);
+        info.setForecastData(dao.readHeader(5));
+        info.setName(title);
+        mockStatic(Image.class);
+        expect(Image.createImage(aryEq(modelResult), eq(0), eq(modelResult.length))).andReturn(imageMock);
+        fixture.setImage(imageMock);
+        fixture.setTitle(title);
+        replayAll();
+        fixture.setInfo(info);
+        verifyAll();
+        assertThat(info.getForecastData().isModelResultLoaded(), is(true));
+    }
+
     @Test
     public void setInfoWithBrokenData() {
         String title = "xy";
@@ -112,4 +186,55 @@ public class InfoCanvasTest {
         fixture.setInfo(null);
         verifyAll();
     }
+
+    @Test
+    public void setRun() {
+        String title = "run";
+        byte[] modelResult = new byte[]{1, 2, 3};
+        ForecastData data = new ForecastData(2010, 8, 10, 6);
+        data.setModelResult(modelResult);
+        info.setName(title);
+        mockStatic(Image.class);
+        expect(Image.createImage(aryEq(modelResult), eq(0), eq(modelResult.length))).andReturn(imageMock);
+        fixture.setImage(imageMock);
+        fixture.setTitle(title + " 2010-08-10 06:00");
+        replayAll();
+        fixture.setRun(info, data, 2);
+        verifyAll();
+        assertThat(fixture.getRun(), is(2));
+    }
+
+    @Test
+    public void setInfoAfterRun() {
+        String title = "run";
+        byte[] modelResult = new byte[]{1, 2, 3};
+        ForecastData data = new ForecastData(2010, 8, 10, 6);
+        data.setModelResult(modelResult);
+        info.setName(title);
+        mockStatic(Image.class);
+        expect(Image.createImage(aryEq(modelResult), eq(0), eq(modelResult.length))).andReturn(imageMock);
+        fixture.setImage(imageMock);
+        fixture.setTitle(title + " 2010-08-10 06:00");
+        fixture.setTitle(title);
+        fixture.setImage(null);
+        replayAll();
+        fixture.setRun(info, data, 1);
+        fixture.setInfo(info);
+        verifyAll();
+        assertThat(fixture.getRun(), is(0));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void setRunNullInfo() {
+        replayAll();
+        fixture.setRun(null, new ForecastData(2010, 8, 10, 6), 1);
+        verifyAll();
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void setRunNullData() {
+        replayAll();
+        fixture.setRun(info, null, 1);
+        verifyAll();
+    }
 }
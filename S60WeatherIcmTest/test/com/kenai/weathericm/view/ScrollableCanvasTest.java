@@ -284,6 +284,70 @@ public class ScrollableCanvasTest {
         verifyAll();
     }
 
+    @Test
+    public void getSetImageWithSide() {
+        int imageWidth = 30;
+        int imageHeight = 40;
+        int sideWidth = 10;
+        int sideHeight = 50;
+        Image sideMock = createMock(Image.class);
+        fixture.repaint();
+        expect(imageMock.getHeight()).andReturn(imageHeight);
+        expect(imageMock.getWidth()).andReturn(imageWidth);
+        expect(sideMock.getHeight()).andReturn(sideHeight);
+        expect(sideMock.getWidth()).andReturn(sideWidth);
+        expect(fixture.getHeight()).andReturn(sideHeight - 1);
+        expect(fixture.getWidth()).andReturn(imageWidth + sideWidth - 1);
+        replayAll();
+        fixture.setImage(imageMock, sideMock);
+        assertThat(fixture.getImage(), is(imageMock));
+        assertThat(fixture.getSideImage(), is(sideMock));
+        Integer actualHeight = Whitebox.getInternalState(fixture, IMAGE_HEIGHT);
+        Integer actualWidth = Whitebox.getInternalState(fixture, IMAGE_WIDTH);
+        Boolean hBar = Whitebox.getInternalState(fixture, IS_H_BAR);
+        Boolean vBar = Whitebox.getInternalState(fixture, IS_V_BAR);
+        assertThat(actualHeight, equalTo(sideHeight));
+        assertThat(actualWidth, equalTo(imageWidth + sideWidth));
+        assertThat(hBar, equalTo(Boolean.TRUE));
+        assertThat(vBar, equalTo(Boolean.TRUE));
+        verifyAll();
+    }
+
+    @Test
+    public void setImageNullDropsSide() {
+        Image sideMock = createMock(Image.class);
+        fixture.repaint();
+        expect(fixture.getHeight()).andReturn(100);
+        expect(fixture.getWidth()).andReturn(100);
+        replayAll();
+        fixture.setImage(null, sideMock);
+        assertThat(fixture.getImage(), is(nullValue()));
+        assertThat(fixture.getSideImage(), is(nullValue()));
+        verifyAll();
+    }
+
+    @Test
+    public void paintWithSideImage() {
+        int width = 320;
+        int height = 240;
+        int sideWidth = 25;
+        Image sideMock = createMock(Image.class);
+        Whitebox.setInternalState(fixture, IMAGE, imageMock);
+        Whitebox.setInternalState(fixture, "sideImage", sideMock);
+        Whitebox.setInternalState(fixture, T_X, 5);
+        Whitebox.setInternalState(fixture, T_Y, 3);
+        graphicsMock.setColor(0xffffff);
+        graphicsMock.fillRect(0, 0, width, height);
+        expect(fixture.getWidth()).andReturn(width);
+        expect(fixture.getHeight()).andReturn(height);
+        expect(sideMock.getWidth()).andReturn(sideWidth);
+        graphicsMock.drawImage(sideMock, -5, -3, Graphics.TOP | Graphics.LEFT);
+        graphicsMock.drawImage(imageMock, sideWidth - 5, -3, Graphics.TOP | Graphics.LEFT);
+        replayAll();
+        fixture.paint(graphicsMock);
+        verifyAll();
+    }
+
     @Test
     public void paintNullImage() {
         int width = 320;
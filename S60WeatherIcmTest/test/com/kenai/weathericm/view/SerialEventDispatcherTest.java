@@ -0,0 +1,143 @@
+/*
+ *  Copyright (C) 2010 Przemek Kryger
+ * 
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License
+ *  as published by the Free Software Foundation; either version 2
+ *  of the License, or (at your option) any later version.
+ * 
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package com.kenai.weathericm.view;
+
+import java.util.Vector;
+import javax.microedition.lcdui.Display;
+import net.sf.microlog.core.config.PropertyConfigurator;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.core.classloader.annotations.SuppressStaticInitializationFor;
+import org.powermock.modules.junit4.PowerMockRunner;
+import static org.hamcrest.Matchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.powermock.api.easymock.PowerMock.createMock;
+import static org.powermock.api.easymock.PowerMock.replayAll;
+import static org.powermock.api.easymock.PowerMock.resetAll;
+import static org.powermock.api.easymock.PowerMock.verifyAll;
+
+/**
+ * Tests for {@link SerialEventDispatcher}.
+ * @author Przemek Kryger
+ */
+@RunWith(PowerMockRunner.class)
+@SuppressStaticInitializationFor("javax.microedition.lcdui.Display")
+@PrepareForTest(Display.class)
+public class SerialEventDispatcherTest {
+
+    private SerialEventDispatcher fixture;
+    private Display displayMock;
+    private Vector ran;
+
+    @BeforeClass
+    public static void setUpClass() {
+        PropertyConfigurator.configure("/testMicrolog.properties");
+    }
+
+    @Before
+    public void setUp() {
+        displayMock = createMock(Display.class);
+        fixture = new SerialEventDispatcher(displayMock);
+        ran = new Vector();
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void createNullDisplay() {
+        new SerialEventDispatcher(null);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void dispatchNull() {
+        fixture.dispatch(null);
+    }
+
+    @Test
+    public void dispatchSchedulesOnce() {
+        displayMock.callSerially(fixture);
+        replayAll();
+        fixture.dispatch(new Event("a"));
+        fixture.dispatch(new Event("b"));
+        fixture.dispatch(new Event("c"));
+        verifyAll();
+        assertThat(ran.size(), equalTo(0));
+    }
+
+    @Test
+    public void runBatch() {
+        displayMock.callSerially(fixture);
+        replayAll();
+        fixture.dispatch(new Event("a"));
+        fixture.dispatch(new Event("b"));
+        fixture.run();
+        verifyAll();
+        assertThat(ran.size(), equalTo(2));
+        assertThat((String) ran.elementAt(0), equalTo("a"));
+        assertThat((String) ran.elementAt(1), equalTo("b"));
+    }
+
+    @Test
+    public void dispatchAfterRun() {
+        displayMock.callSerially(fixture);
+        replayAll();
+        fixture.dispatch(new Event("a"));
+        fixture.run();
+        verifyAll();
+        resetAll();
+        displayMock.callSerially(fixture);
+        replayAll();
+        fixture.dispatch(new Event("b"));
+        fixture.run();
+        fixture.run();
+        verifyAll();
+        assertThat(ran.size(), equalTo(2));
+        assertThat((String) ran.elementAt(1), equalTo("b"));
+    }
+
+    @Test
+    public void runFailingEvent() {
+        displayMock.callSerially(fixture);
+        replayAll();
+        fixture.dispatch(new Runnable() {
+
+            public void run() {
+                throw new IllegalStateException("Failing event");
+            }
+        });
+        fixture.dispatch(new Event("a"));
+        fixture.run();
+        verifyAll();
+        assertThat(ran.size(), equalTo(1));
+        assertThat((String) ran.elementAt(0), equalTo("a"));
+    }
+
+    private class Event implements Runnable {
+
+        private final String name;
+
+        public Event(String name) {
+            this.name = name;
+        }
+
+        public void run() {
+            ran.addElement(name);
+        }
+    }
+}
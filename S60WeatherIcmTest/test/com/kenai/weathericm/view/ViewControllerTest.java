@@ -48,6 +48,7 @@ import static org.hamcrest.Matchers.*;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.easymock.EasyMock.expect;
 import static org.easymock.EasyMock.eq;
+import static org.easymock.EasyMock.isA;
 import static org.powermock.api.easymock.PowerMock.replayAll;
 import static org.powermock.api.easymock.PowerMock.verifyAll;
 import static org.powermock.api.easymock.PowerMock.constructor;
@@ -196,6 +197,67 @@ public class ViewControllerTest {
         verifyAll();
     }
 
+    @Test
+    public void readMeteorogramInfoAlreadyShown() {
+        Hashtable internalInfoToIndex = new Hashtable(2);
+        MeteorogramInfo info0 = new MeteorogramInfo();
+        MeteorogramInfo info1 = new MeteorogramInfo();
+        internalInfoToIndex.put(info0, new Integer(0));
+        internalInfoToIndex.put(info1, new Integer(1));
+        Whitebox.setInternalState(fixture, INFO_TO_INDEX_NAME, internalInfoToIndex);
+        Vector data = new Vector(2);
+        data.addElement(info0);
+        data.addElement(info1);
+        replayAll();
+        fixture.readMeteorogramInfo(data);
+        internalInfoToIndex = Whitebox.getInternalState(fixture, INFO_TO_INDEX_NAME);
+        assertThat((Integer) internalInfoToIndex.get(info0), equalTo(0));
+        assertThat((Integer) internalInfoToIndex.get(info1), equalTo(1));
+        verifyAll();
+    }
+
+    @Test
+    public void readMeteorogramInfoBatch() {
+        int position0 = 0;
+        int position1 = 1;
+        String name0 = "b";
+        String name1 = "a";
+        expect(fixture.getForecastNotAvailableImage()).andReturn(notAvaliableImage).times(2);
+        expect(mainListMock.append(name0, notAvaliableImage)).andReturn(position0);
+        expect(mainListMock.append(name1, notAvaliableImage)).andReturn(position1);
+        expect(fixture.getShowCommand()).andReturn(showCommandMock);
+        mainListMock.addCommand(showCommandMock);
+        expect(fixture.getEditCommand()).andReturn(editCommandMock);
+        mainListMock.addCommand(editCommandMock);
+        expect(fixture.getDeleteCommand()).andReturn(deleteCommandMock);
+        mainListMock.addCommand(deleteCommandMock);
+        MeteorogramInfo info0 = new MeteorogramInfo();
+        info0.setName(name0);
+        MeteorogramInfo info1 = new MeteorogramInfo();
+        info1.setName(name1);
+        Vector batch0 = new Vector(1);
+        batch0.addElement(info0);
+        Vector batch1 = new Vector(1);
+        batch1.addElement(info1);
+        replayAll();
+        fixture.readMeteorogramInfoBatch(batch0);
+        fixture.readMeteorogramInfoBatch(batch1);
+        Hashtable internalInfoToIndex = Whitebox.getInternalState(fixture, INFO_TO_INDEX_NAME);
+        assertThat(internalInfoToIndex.size(), equalTo(2));
+        assertThat((Integer) internalInfoToIndex.get(info0), equalTo(position0));
+        assertThat((Integer) internalInfoToIndex.get(info1), equalTo(position1));
+        verifyAll();
+    }
+
+    @Test
+    public void readMeteorogramInfoBatchNull() {
+        replayAll();
+        fixture.readMeteorogramInfoBatch(null);
+        Hashtable internalInfoToIndex = Whitebox.getInternalState(fixture, INFO_TO_INDEX_NAME);
+        assertThat(internalInfoToIndex.size(), equalTo(0));
+        verifyAll();
+    }
+
     @Test
     public void addedMeteorogramInfoNotInListFirst() {
         int position = 7;
@@ -236,6 +298,20 @@ public class ViewControllerTest {
         verifyAll();
     }
 
+    @Test
+    public void addedMeteorogramInfoDispatched() {
+        SerialEventDispatcher dispatcherMock = createMock(SerialEventDispatcher.class);
+        Whitebox.setInternalState(fixture, "eventDispatcher", dispatcherMock);
+        dispatcherMock.dispatch(isA(Runnable.class));
+        MeteorogramInfo info = new MeteorogramInfo();
+        info.setName("c");
+        replayAll();
+        fixture.addedMeteorogramInfo(info);
+        Hashtable internalInfoToIndex = Whitebox.getInternalState(fixture, INFO_TO_INDEX_NAME);
+        assertThat(internalInfoToIndex.isEmpty(), is(true));
+        verifyAll();
+    }
+
     @Test
     public void addedMeteorogramInfoInList() {
         Hashtable internalInfoToIndex = new Hashtable(1);
@@ -735,4 +811,20 @@ public class ViewControllerTest {
         StatusReporter task = new AbstractStatusReporter() {};
         fixture.statusUpdate(task, null);
     }
+
+    @Test
+    public void progressUpdateRateLimited() throws Exception {
+        StatusReporter task = new AbstractStatusReporter() {};
+        expectPrivate(fixture, "isDownloadWaitScreenVisible").andReturn(true);
+        waitScreenMock.setText("Downloading... (40% done)");
+        replayAll();
+        fixture.progressUpdate(task, 40);
+        fixture.progressUpdate(task, 41);
+        verifyAll();
+    }
+
+    @Test(expected= NullPointerException.class)
+    public void progressUpdateNullSource() {
+        fixture.progressUpdate(null, 50);
+    }
 }